@@ -86,10 +86,18 @@ public final class JsonUtils {
   }
 
   public static String getJsonFromObject(Object object, Class<?> mixin) {
+    return getJsonFromObject(object, mixin == null ? null : object.getClass(), mixin);
+  }
+
+  /**
+   * Transforms an object into json, applying a mixin to the given (possibly
+   * nested) target class.
+   */
+  public static String getJsonFromObject(Object object, Class<?> target, Class<?> mixin) {
     String ret = null;
     try {
       ObjectMapper mapper = new ObjectMapper(new JsonFactory());
-      mapper = addMixinsToMapper(mapper, object, mixin);
+      mapper = addMixinsToMapper(mapper, object, target, mixin);
       ret = mapper.writeValueAsString(object);
     } catch (IOException e) {
       LOGGER.error("Error transforming object '{}' to json string", object, e);
@@ -97,7 +105,8 @@ public final class JsonUtils {
     return ret;
   }
 
-  private static ObjectMapper addMixinsToMapper(ObjectMapper mapper, Object object, Class<?> mixin) {
+  private static ObjectMapper addMixinsToMapper(ObjectMapper mapper, Object object, Class<?> target,
+    Class<?> mixin) {
     if (!(object instanceof DescriptiveMetadata)) {
       if (object instanceof List<?>) {
         List<?> objectList = (List<?>) object;
@@ -110,7 +119,7 @@ public final class JsonUtils {
     }
 
     if (mixin != null) {
-      mapper.addMixIn(object.getClass(), mixin);
+      mapper.addMixIn(target, mixin);
     }
 
     return mapper;
@@ -153,6 +162,21 @@ public final class JsonUtils {
     }
   }
 
+  /**
+   * Transforms json into an object, applying a mixin to the given (possibly
+   * nested) target class.
+   */
+  public static <T> T getObjectFromJson(String json, Class<T> objectClass, Class<?> target, Class<?> mixin)
+    throws GenericException {
+    try {
+      ObjectMapper mapper = new ObjectMapper(new JsonFactory());
+      mapper.addMixIn(target, mixin);
+      return mapper.readValue(json, objectClass);
+    } catch (IOException e) {
+      throw new GenericException(JSON_ERROR_MESSAGE, e);
+    }
+  }
+
   public static <T> List<T> getListFromJson(String json, Class<T> objectClass) throws GenericException {
     try {
       ObjectMapper mapper = new ObjectMapper(new JsonFactory());
@@ -0,0 +1,80 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.utils.JsonUtils;
+import org.roda.core.data.v2.index.select.SelectedItems;
+import org.roda.core.data.v2.index.select.SelectedItemsList;
+import org.roda.core.data.v2.ip.AIP;
+import org.roda.core.data.v2.jobs.Job;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class CompactIdsTest {
+
+  private static List<String> createIds(int size) {
+    List<String> ids = new ArrayList<>();
+    for (int i = 0; i < size; i++) {
+      ids.add(UUID.randomUUID().toString());
+    }
+    return ids;
+  }
+
+  @Test
+  public void testEncodeAndDecode() throws IOException {
+    List<String> ids = createIds(10);
+    ids.addAll(Arrays.asList("not-an-uuid", "", "a\u00e7\u00e3o/\u00e9", UUID.randomUUID().toString().toUpperCase()));
+
+    Assert.assertEquals(CompactIds.decode(CompactIds.encode(ids)), ids);
+    Assert.assertTrue(CompactIds.decode(CompactIds.encode(new ArrayList<>())).isEmpty());
+  }
+
+  @Test(expectedExceptions = IOException.class)
+  public void testDecodeInvalid() throws IOException {
+    CompactIds.decode("not compact ids");
+  }
+
+  @Test
+  public void testLargeSelectionsAreCompacted() throws GenericException {
+    List<String> ids = createIds(5000);
+    Job job = new Job();
+    job.setId("job1");
+    job.setSourceObjects(SelectedItemsList.create(AIP.class, ids));
+
+    String plainJson = JsonUtils.getJsonFromObject(job);
+    String compactJson = SelectedItemsUtils.getCompactJsonFromObject(job);
+    Assert.assertTrue(compactJson.length() * 3 < plainJson.length() * 2,
+      "compact: " + compactJson.length() + ", plain: " + plainJson.length());
+
+    Job readJob = SelectedItemsUtils.getObjectFromCompactJson(compactJson, Job.class);
+    Assert.assertEquals(((SelectedItemsList<?>) readJob.getSourceObjects()).getIds(), ids);
+    Assert.assertEquals(readJob.getSourceObjects().getSelectedClass(), AIP.class.getName());
+
+    // jobs persisted before are still read
+    readJob = SelectedItemsUtils.getObjectFromCompactJson(plainJson, Job.class);
+    Assert.assertEquals(((SelectedItemsList<?>) readJob.getSourceObjects()).getIds(), ids);
+  }
+
+  @Test
+  public void testSmallSelectionsAreKeptAsLists() throws GenericException {
+    SelectedItems<AIP> selectedItems = SelectedItemsList.create(AIP.class, "aip1", "aip2");
+    String json = SelectedItemsUtils.getCompactJsonFromObject(selectedItems);
+
+    Assert.assertEquals(json, JsonUtils.getJsonFromObject(selectedItems));
+    Assert.assertEquals(SelectedItemsUtils.getObjectFromCompactJson(json, SelectedItems.class), selectedItems);
+  }
+}
@@ -0,0 +1,169 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.v2.user.User;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class LdapCacheTest {
+
+  private static User user(String name, String... roles) {
+    User user = new User(name);
+    user.setAllRoles(new HashSet<>(Arrays.asList(roles)));
+    user.setDirectRoles(new HashSet<>(Arrays.asList(roles)));
+    user.setGroups(new HashSet<>());
+    return user;
+  }
+
+  @Test
+  public void testCachedUsersAreCopies() {
+    LdapCache cache = new LdapCache(LdapCache.DEFAULT_TTL_IN_MILLIS, LdapCache.DEFAULT_MAX_USERS);
+    AtomicInteger loads = new AtomicInteger();
+
+    User first = cache.getUser("guest", () -> {
+      loads.incrementAndGet();
+      return user("guest", "browse");
+    });
+    first.setIpAddress("127.0.0.1");
+    first.addDirectRole("administration.user");
+    first.getAllRoles().add("administration.user");
+
+    User second = cache.getUser("guest", () -> {
+      loads.incrementAndGet();
+      return null;
+    });
+    Assert.assertEquals(loads.get(), 1);
+    Assert.assertNotSame(second, first);
+    Assert.assertEquals(second.getAllRoles(), Collections.singleton("browse"));
+    Assert.assertEquals(second.getDirectRoles(), Collections.singleton("browse"));
+  }
+
+  @Test
+  public void testAuthenticationIsOnlyCachedForTheSamePassword() throws GenericException {
+    LdapCache cache = new LdapCache(LdapCache.DEFAULT_TTL_IN_MILLIS, LdapCache.DEFAULT_MAX_USERS);
+    AtomicInteger binds = new AtomicInteger();
+    LdapCache.Loader<User, GenericException> bind = () -> {
+      binds.incrementAndGet();
+      return user("admin");
+    };
+    LdapCache.Loader<User, GenericException> failedBind = () -> {
+      binds.incrementAndGet();
+      throw new GenericException("invalid credentials");
+    };
+
+    cache.getAuthenticatedUser("admin", "secret", bind);
+    cache.getAuthenticatedUser("admin", "secret", bind);
+    Assert.assertEquals(binds.get(), 1);
+
+    try {
+      cache.getAuthenticatedUser("admin", "wrong", failedBind);
+      Assert.fail("A different password should be checked again");
+    } catch (GenericException e) {
+      // expected
+    }
+    Assert.assertEquals(binds.get(), 2);
+
+    // users that were only read cannot be authenticated from the cache
+    cache.getUser("guest", () -> user("guest"));
+    cache.getAuthenticatedUser("guest", "guest", bind);
+    Assert.assertEquals(binds.get(), 3);
+
+    cache.invalidateAll();
+    cache.getAuthenticatedUser("admin", "secret", bind);
+    Assert.assertEquals(binds.get(), 4);
+  }
+
+  @Test
+  public void testValuesLoadedDuringInvalidationAreNotCached() {
+    LdapCache cache = new LdapCache(LdapCache.DEFAULT_TTL_IN_MILLIS, LdapCache.DEFAULT_MAX_USERS);
+    AtomicInteger loads = new AtomicInteger();
+
+    for (int i = 0; i < 2; i++) {
+      cache.getUser("admin", () -> {
+        loads.incrementAndGet();
+        // a concurrent change to the directory
+        cache.invalidateAll();
+        return user("admin");
+      });
+    }
+    Assert.assertEquals(loads.get(), 2);
+
+    cache.getUser("admin", () -> {
+      loads.incrementAndGet();
+      return user("admin");
+    });
+    cache.getUser("admin", () -> {
+      loads.incrementAndGet();
+      return user("admin");
+    });
+    Assert.assertEquals(loads.get(), 3);
+  }
+
+  @Test
+  public void testMembershipsExpandRolesOfActiveGroups() {
+    String userDN = "uid=user,ou=users";
+    String activeDN = "cn=active,ou=groups";
+    String inactiveDN = "cn=inactive,ou=groups";
+    String nestedDN = "cn=nested,ou=groups";
+
+    Map<String, Set<String>> groupsByMember = new HashMap<>();
+    groupsByMember.put(userDN, new HashSet<>(Arrays.asList(activeDN, inactiveDN)));
+    groupsByMember.put(activeDN, Collections.singleton(nestedDN));
+    Map<String, Set<String>> rolesByMember = new HashMap<>();
+    rolesByMember.put(userDN, Collections.singleton("cn=browse,ou=roles"));
+    rolesByMember.put(activeDN, Collections.singleton("cn=ingest,ou=roles"));
+    rolesByMember.put(inactiveDN, Collections.singleton("cn=admin,ou=roles"));
+    rolesByMember.put(nestedDN, Collections.singleton("cn=search,ou=roles"));
+    Map<String, String> names = new HashMap<>();
+    names.put(activeDN, "active");
+    names.put(inactiveDN, "inactive");
+    names.put(nestedDN, "nested");
+    names.put("cn=browse,ou=roles", "browse");
+    names.put("cn=ingest,ou=roles", "ingest");
+    names.put("cn=admin,ou=roles", "admin");
+    names.put("cn=search,ou=roles", "search");
+
+    LdapCache.Memberships memberships = new LdapCache.Memberships(groupsByMember,
+      new HashSet<>(Arrays.asList(activeDN, nestedDN)), rolesByMember, names);
+
+    Assert.assertEquals(memberships.getGroups(userDN), new HashSet<>(Arrays.asList("active", "inactive")));
+    Assert.assertEquals(memberships.getDirectRoles(userDN), Collections.singleton("browse"));
+    Assert.assertEquals(memberships.getAllRoles(userDN), new HashSet<>(Arrays.asList("browse", "ingest", "search")));
+    Assert.assertTrue(memberships.getAllRoles("uid=other,ou=users").isEmpty());
+  }
+
+  @Test
+  public void testMembershipsExpire() throws InterruptedException {
+    LdapCache cache = new LdapCache(50, LdapCache.DEFAULT_MAX_USERS);
+    AtomicInteger loads = new AtomicInteger();
+    LdapCache.Loader<LdapCache.Memberships, RuntimeException> loader = () -> {
+      loads.incrementAndGet();
+      return new LdapCache.Memberships(new HashMap<>(), new HashSet<>(), new HashMap<>(), new HashMap<>());
+    };
+
+    LdapCache.Memberships memberships = cache.getMemberships(loader);
+    Assert.assertSame(cache.getMemberships(loader), memberships);
+    Assert.assertEquals(loads.get(), 1);
+
+    Thread.sleep(100);
+    Assert.assertNotSame(cache.getMemberships(loader), memberships);
+    Assert.assertEquals(loads.get(), 2);
+  }
+}
@@ -0,0 +1,84 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.roda.core.data.common.RodaConstants;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class ObjectPoolTest {
+
+  @Test
+  public void testReleasedObjectsAreReused() {
+    AtomicInteger created = new AtomicInteger();
+    ObjectPool<StringBuilder> pool = new ObjectPool<>(() -> {
+      created.incrementAndGet();
+      return new StringBuilder();
+    }, sb -> sb.setLength(0), 1);
+
+    StringBuilder first = pool.borrow();
+    first.append("dirty");
+    pool.release(first);
+
+    StringBuilder second = pool.borrow();
+    Assert.assertSame(second, first);
+    Assert.assertEquals(second.length(), 0);
+
+    // pool is empty, so a new object is created
+    StringBuilder third = pool.borrow();
+    Assert.assertNotSame(third, second);
+    Assert.assertEquals(created.get(), 2);
+
+    // only one idle object is kept
+    pool.release(second);
+    pool.release(third);
+    Assert.assertSame(pool.borrow(), second);
+    Assert.assertNotSame(pool.borrow(), third);
+  }
+
+  @Test
+  public void testObjectsThatFailToResetAreDiscarded() {
+    ObjectPool<StringBuilder> pool = new ObjectPool<>(StringBuilder::new, sb -> {
+      throw new IllegalStateException();
+    });
+
+    StringBuilder first = pool.borrow();
+    pool.release(first);
+    Assert.assertNotSame(pool.borrow(), first);
+  }
+
+  @Test
+  public void testObjectsNotKeptAreDestroyed() {
+    List<StringBuilder> destroyed = new ArrayList<>();
+    ObjectPool<StringBuilder> pool = new ObjectPool<>(StringBuilder::new, sb -> sb.setLength(0), destroyed::add, 1);
+
+    StringBuilder first = pool.borrow();
+    StringBuilder second = pool.borrow();
+    pool.release(first);
+    pool.release(second);
+    Assert.assertEquals(destroyed, Collections.singletonList(second));
+
+    StringBuilder discarded = pool.borrow();
+    pool.discard(discarded);
+    Assert.assertSame(destroyed.get(1), first);
+
+    pool.release(pool.borrow());
+    pool.close();
+    Assert.assertEquals(destroyed.size(), 3);
+
+    // objects released after the pool was closed are not kept
+    pool.release(new StringBuilder());
+    Assert.assertEquals(destroyed.size(), 4);
+  }
+}
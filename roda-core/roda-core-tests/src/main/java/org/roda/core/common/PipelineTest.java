@@ -0,0 +1,116 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.roda.core.data.common.RodaConstants;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class PipelineTest {
+
+  private static List<Integer> items(int count) {
+    return IntStream.range(0, count).boxed().collect(Collectors.toList());
+  }
+
+  @Test
+  public void testItemsGoThroughAllStages() throws InterruptedException {
+    Set<Integer> first = ConcurrentHashMap.newKeySet();
+    Set<Integer> second = ConcurrentHashMap.newKeySet();
+    List<String> completed = Collections.synchronizedList(new ArrayList<>());
+
+    new Pipeline<Integer>("test", 2).addStage("first", 3, first::add).addStage("second", 2, second::add)
+      .onStageCompleted(completed::add).run(items(100));
+
+    Assert.assertEquals(first.size(), 100);
+    Assert.assertEquals(second.size(), 100);
+    Assert.assertEquals(completed, Arrays.asList("first", "second"));
+  }
+
+  @Test
+  public void testFailedItemsLeaveThePipeline() throws InterruptedException {
+    Set<Integer> last = ConcurrentHashMap.newKeySet();
+
+    new Pipeline<Integer>("test", 1).addStage("even", 2, i -> i % 2 == 0).addStage("fails", 2, i -> {
+      if (i % 4 == 0) {
+        throw new IllegalStateException("failure");
+      }
+      return true;
+    }).addStage("last", 1, last::add).run(items(20));
+
+    Assert.assertEquals(last, IntStream.range(0, 20).filter(i -> i % 4 == 2).boxed().collect(Collectors.toSet()));
+  }
+
+  @Test
+  public void testStagesOverlap() throws InterruptedException {
+    // the second stage starts while the first one is still blocked on the
+    // last item, which would never happen if stages ran one after the other
+    CountDownLatch secondStageStarted = new CountDownLatch(1);
+    AtomicInteger timeouts = new AtomicInteger();
+
+    new Pipeline<Integer>("test", 10).addStage("first", 1, i -> {
+      if (i == 9) {
+        try {
+          if (!secondStageStarted.await(10, TimeUnit.SECONDS)) {
+            timeouts.incrementAndGet();
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      return true;
+    }).addStage("second", 1, i -> {
+      secondStageStarted.countDown();
+      return true;
+    }).run(items(10));
+
+    Assert.assertEquals(timeouts.get(), 0);
+  }
+
+  @Test
+  public void testInFlightItemsAreBounded() throws InterruptedException {
+    AtomicInteger inFlight = new AtomicInteger();
+    AtomicInteger maxInFlight = new AtomicInteger();
+
+    new Pipeline<Integer>("test", 2).addStage("fast", 4, i -> {
+      maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+      return true;
+    }).addStage("slow", 1, i -> {
+      try {
+        Thread.sleep(2);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      inFlight.decrementAndGet();
+      return true;
+    }).run(items(200));
+
+    // items in the fast stage, waiting for or in the slow one
+    Assert.assertTrue(maxInFlight.get() <= (4 + 2) + (1 + 2), "max in flight: " + maxInFlight.get());
+  }
+
+  @Test
+  public void testNoItems() throws InterruptedException {
+    List<String> completed = new ArrayList<>();
+    new Pipeline<Integer>("test", 1).addStage("first", 1, i -> true).addStage("second", 1, i -> true)
+      .onStageCompleted(completed::add).run(Collections.emptyList());
+    Assert.assertEquals(completed, Arrays.asList("first", "second"));
+  }
+}
@@ -0,0 +1,78 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import org.apache.commons.io.IOUtils;
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.TestsHelper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.storage.Binary;
+import org.roda.core.storage.DefaultBinary;
+import org.roda.core.storage.DefaultStoragePath;
+import org.roda.core.storage.StringContentPayload;
+import org.roda.core.storage.fs.FSUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class RodaUtilsTest {
+  private static final String STYLESHEET_PATH = "crosswalks/test/";
+  private static final String STYLESHEET = "<xsl:stylesheet version=\"2.0\" "
+    + "xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\"><xsl:output method=\"text\"/>"
+    + "<xsl:param name=\"title\" select=\"'default'\"/>"
+    + "<xsl:template match=\"/\"><xsl:value-of select=\"$title\"/>:<xsl:value-of select=\"/*\"/></xsl:template>"
+    + "</xsl:stylesheet>";
+
+  private static Path basePath;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    basePath = TestsHelper.createBaseTempDir(RodaUtilsTest.class, true);
+    RodaCoreFactory.instantiateTest(false, false, false, false, false, false);
+
+    Path stylesheet = RodaCoreFactory.getConfigPath().resolve(STYLESHEET_PATH).resolve("parameters.xslt");
+    Files.createDirectories(stylesheet.getParent());
+    Files.write(stylesheet, STYLESHEET.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    RodaCoreFactory.shutdown();
+    FSUtils.deletePath(basePath);
+  }
+
+  private static String apply(String content, String title) throws RODAException, IOException {
+    Binary binary = new DefaultBinary(DefaultStoragePath.parse("test", "metadata.xml"),
+      new StringContentPayload(content), (long) content.length(), false, Collections.emptyMap());
+    try (Reader reader = RodaUtils.applyMetadataStylesheet(binary, STYLESHEET_PATH, "parameters", null,
+      title == null ? Collections.emptyMap() : Collections.singletonMap("title", title))) {
+      return IOUtils.toString(reader);
+    }
+  }
+
+  @Test
+  public void testPooledTransformersStartWithTheStylesheetDefaults() throws RODAException, IOException {
+    Assert.assertEquals(apply("<a>first</a>", "set"), "set:first");
+
+    // the same transformer is reused, without the previous parameters
+    for (int i = 0; i < 3; i++) {
+      Assert.assertEquals(apply("<a>next</a>", null), "default:next");
+    }
+    Assert.assertEquals(apply("<a>last</a>", "again"), "again:last");
+  }
+}
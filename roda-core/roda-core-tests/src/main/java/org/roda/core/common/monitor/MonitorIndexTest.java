@@ -12,6 +12,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
 import java.util.Optional;
 import java.util.Random;
@@ -249,6 +250,37 @@ public class MonitorIndexTest {
     Assert.assertEquals(resultAfterRemoves, resultBeforeRemoves - 1);
   }
 
+  @Test
+  public void testIncrementalScanSeesFilesChangedInPlace() throws Exception {
+    TransferredResourcesSnapshot snapshot = new TransferredResourcesSnapshot(basePath.resolve("snapshot"));
+    Path folder = Files.createDirectory(sips.resolve("folder"));
+    Path file = Files.write(folder.resolve("file.txt"), "CONTENT".getBytes());
+    new ReindexTransferredResourcesRunnable(index, sips, Optional.empty(), snapshot, false, 10).run();
+
+    // overwriting a file does not change the modification time of its folder
+    FileTime folderLastModified = Files.getLastModifiedTime(folder);
+    Files.write(file, "CHANGED CONTENT".getBytes());
+    Files.setLastModifiedTime(folder, folderLastModified);
+    new ReindexTransferredResourcesRunnable(index, sips, Optional.empty(), snapshot, false, 10).run();
+
+    TransferredResource resource = index.retrieve(TransferredResource.class,
+      IdUtils.getTransferredResourceUUID("folder/file.txt"), new ArrayList<>());
+    Assert.assertEquals(resource.getSize(), "CHANGED CONTENT".length());
+  }
+
+  @Test
+  public void testIncrementalScanReindexesClearedIndex() throws Exception {
+    TransferredResourcesSnapshot snapshot = new TransferredResourcesSnapshot(basePath.resolve("snapshot-cleared"));
+    int fileCounter = populate(sips);
+    new ReindexTransferredResourcesRunnable(index, sips, Optional.empty(), snapshot, false, 10).run();
+    Assert.assertEquals((long) index.count(TransferredResource.class, Filter.ALL), fileCounter);
+
+    index.delete(TransferredResource.class, Filter.ALL);
+    index.commit(TransferredResource.class);
+    new ReindexTransferredResourcesRunnable(index, sips, Optional.empty(), snapshot, false, 10).run();
+    Assert.assertEquals((long) index.count(TransferredResource.class, Filter.ALL), fileCounter);
+  }
+
   private static int populate(Path basePath) throws IOException {
     Random randomno = new Random();
     int numberOfItemsByLevel = nextIntInRange(2, 3, randomno);
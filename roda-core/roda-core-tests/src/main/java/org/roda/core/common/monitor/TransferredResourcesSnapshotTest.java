@@ -0,0 +1,97 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common.monitor;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.storage.fs.FSUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class TransferredResourcesSnapshotTest {
+  private Path basePath;
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    basePath = Files.createTempDirectory(getClass().getSimpleName());
+  }
+
+  @AfterMethod
+  public void tearDown() throws Exception {
+    FSUtils.deletePath(basePath);
+  }
+
+  @Test
+  public void testOnlyChangesAreReported() {
+    TransferredResourcesSnapshot snapshot = new TransferredResourcesSnapshot(basePath.resolve("snapshot"));
+
+    long scan = snapshot.startScan();
+    Assert.assertTrue(snapshot.update("sip", false, 10, 1000, scan));
+    Assert.assertTrue(snapshot.update("sip/a.txt", true, 4, 1000, scan));
+    Assert.assertTrue(snapshot.update("sip/b.txt", true, 6, 1000, scan));
+    Assert.assertTrue(snapshot.removeUnseen(Optional.empty(), scan).isEmpty());
+
+    scan = snapshot.startScan();
+    Assert.assertTrue(snapshot.update("sip", false, 5, 2000, scan));
+    Assert.assertFalse(snapshot.update("sip/a.txt", true, 4, 1000, scan));
+    Assert.assertTrue(snapshot.update("sip/c.txt", true, 1, 2000, scan));
+    Assert.assertEquals(snapshot.removeUnseen(Optional.empty(), scan), Collections.singletonList("sip/b.txt"));
+    Assert.assertEquals(snapshot.size(), 3);
+  }
+
+  @Test
+  public void testRemoveUnseenOnlyInsideFolder() {
+    TransferredResourcesSnapshot snapshot = new TransferredResourcesSnapshot(basePath.resolve("snapshot"));
+
+    long scan = snapshot.startScan();
+    snapshot.update("sip", false, 0, 1000, scan);
+    snapshot.update("sip/a.txt", true, 0, 1000, scan);
+    snapshot.update("sip-2", false, 0, 1000, scan);
+    snapshot.update("sip-2/a.txt", true, 0, 1000, scan);
+
+    // the folder itself was deleted
+    scan = snapshot.startScan();
+    Assert.assertEquals(snapshot.removeUnseen(Optional.of("sip"), scan), Arrays.asList("sip", "sip/a.txt"));
+    Assert.assertEquals(snapshot.size(), 2);
+  }
+
+  @Test
+  public void testPersistAndLoad() {
+    Path snapshotFile = basePath.resolve("snapshot");
+    TransferredResourcesSnapshot snapshot = new TransferredResourcesSnapshot(snapshotFile);
+    long scan = snapshot.startScan();
+    snapshot.update("folder", false, 3, 1000, scan);
+    snapshot.update("folder/file-1.txt", true, 1, 1001, scan);
+    snapshot.update("folder/file-2.txt", true, 2, 1002, scan);
+    snapshot.update("other/ção.txt", true, 0, 1003, scan);
+    snapshot.persist();
+
+    TransferredResourcesSnapshot loaded = new TransferredResourcesSnapshot(snapshotFile);
+    Assert.assertEquals(loaded.size(), 4);
+    scan = loaded.startScan();
+    Assert.assertFalse(loaded.update("folder", false, 3, 1000, scan));
+    Assert.assertFalse(loaded.update("folder/file-1.txt", true, 1, 1001, scan));
+    Assert.assertFalse(loaded.update("folder/file-2.txt", true, 2, 1002, scan));
+    Assert.assertFalse(loaded.update("other/ção.txt", true, 0, 1003, scan));
+    Assert.assertTrue(loaded.removeUnseen(Optional.empty(), scan).isEmpty());
+  }
+
+  @Test
+  public void testMissingSnapshotIsEmpty() {
+    TransferredResourcesSnapshot snapshot = new TransferredResourcesSnapshot(basePath.resolve("missing"));
+    Assert.assertTrue(snapshot.isEmpty());
+  }
+}
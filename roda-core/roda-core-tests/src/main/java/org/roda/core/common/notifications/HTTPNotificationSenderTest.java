@@ -0,0 +1,171 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common.notifications;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.v2.notifications.Notification.NOTIFICATION_STATE;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class HTTPNotificationSenderTest {
+  private static final long TIMEOUT_IN_MILLIS = 20000;
+
+  private HttpServer server;
+  private String endpoint;
+  private Path spoolDirectory;
+
+  private final AtomicInteger failuresToReply = new AtomicInteger();
+  private final List<String> bodies = new CopyOnWriteArrayList<>();
+  private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+  private final Map<String, NOTIFICATION_STATE> states = new ConcurrentHashMap<>();
+  private final AtomicInteger stateBatches = new AtomicInteger();
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    failuresToReply.set(0);
+    bodies.clear();
+    clientPorts.clear();
+    states.clear();
+    stateBatches.set(0);
+
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/notify", exchange -> {
+      try (InputStream body = exchange.getRequestBody()) {
+        clientPorts.add(exchange.getRemoteAddress().getPort());
+        boolean fail = failuresToReply.getAndUpdate(failures -> Math.max(0, failures - 1)) > 0;
+        if (!fail) {
+          bodies.add(IOUtils.toString(body, StandardCharsets.UTF_8));
+        }
+        byte[] reply = (fail ? "unavailable" : "ok").getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(fail ? 503 : 200, reply.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+          out.write(reply);
+        }
+      }
+    });
+    server.setExecutor(Executors.newFixedThreadPool(4));
+    server.start();
+    endpoint = "http://127.0.0.1:" + server.getAddress().getPort() + "/notify";
+    spoolDirectory = Files.createTempDirectory("http-notifications");
+  }
+
+  @AfterMethod
+  public void tearDown() throws IOException {
+    server.stop(0);
+    FileUtils.deleteDirectory(spoolDirectory.toFile());
+  }
+
+  private HTTPNotificationSender createSender(int maxAttempts) throws IOException {
+    return new HTTPNotificationSender(spoolDirectory, 2, 10, 5000, maxAttempts, 50, 50, updates -> {
+      stateBatches.incrementAndGet();
+      states.putAll(updates);
+      return Collections.emptySet();
+    });
+  }
+
+  private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT_IN_MILLIS;
+    while (!condition.getAsBoolean()) {
+      if (System.currentTimeMillis() > deadline) {
+        Assert.fail("Condition not met in " + TIMEOUT_IN_MILLIS + " ms");
+      }
+      Thread.sleep(20);
+    }
+  }
+
+  @Test
+  public void testNotificationsAreSentThroughPooledConnections() throws IOException, InterruptedException {
+    int notifications = 50;
+    try (HTTPNotificationSender sender = createSender(3)) {
+      for (int i = 0; i < notifications; i++) {
+        sender.send("n" + i, endpoint, "{\"id\":" + i + "}");
+      }
+      awaitUntil(() -> states.size() == notifications);
+    }
+
+    // notifications that did not fit in the queue were spooled and sent later
+    Assert.assertEquals(bodies.size(), notifications);
+    Assert.assertTrue(bodies.contains("{\"id\":7}"));
+    Assert.assertTrue(states.values().stream().allMatch(NOTIFICATION_STATE.COMPLETED::equals), states.toString());
+    // connections are kept alive and reused
+    Assert.assertTrue(clientPorts.size() <= 2, "connections used: " + clientPorts.size());
+    Assert.assertTrue(stateBatches.get() < notifications, "state batches: " + stateBatches.get());
+  }
+
+  @Test
+  public void testFailedNotificationsAreRetried() throws IOException, InterruptedException {
+    failuresToReply.set(2);
+    try (HTTPNotificationSender sender = createSender(3)) {
+      sender.send("retried", endpoint, "{}");
+      awaitUntil(() -> states.containsKey("retried"));
+      Assert.assertEquals(sender.getSpoolSize(), 0);
+    }
+
+    Assert.assertEquals(states.get("retried"), NOTIFICATION_STATE.COMPLETED);
+    Assert.assertEquals(bodies.size(), 1);
+    try (Stream<Path> spooledFiles = Files.list(spoolDirectory)) {
+      Assert.assertFalse(spooledFiles.findAny().isPresent());
+    }
+  }
+
+  @Test
+  public void testNotificationsFailAfterMaxAttempts() throws IOException, InterruptedException {
+    failuresToReply.set(Integer.MAX_VALUE);
+    try (HTTPNotificationSender sender = createSender(2)) {
+      sender.send("failed", endpoint, "{}");
+      awaitUntil(() -> states.containsKey("failed"));
+    }
+
+    Assert.assertEquals(states.get("failed"), NOTIFICATION_STATE.FAILED);
+    Assert.assertTrue(bodies.isEmpty());
+  }
+
+  @Test
+  public void testSpooledNotificationsAreSentAfterRestart() throws IOException, InterruptedException {
+    failuresToReply.set(Integer.MAX_VALUE);
+    try (HTTPNotificationSender sender = new HTTPNotificationSender(spoolDirectory, 1, 10, 5000, 10, 200, 50,
+      updates -> Collections.emptySet())) {
+      sender.send("spooled", endpoint, "{\"spooled\":true}");
+      awaitUntil(() -> sender.getSpoolSize() == 1);
+    }
+
+    failuresToReply.set(0);
+    try (HTTPNotificationSender sender = createSender(10)) {
+      Assert.assertEquals(sender.getSpoolSize(), 1);
+      awaitUntil(() -> states.containsKey("spooled"));
+    }
+
+    Assert.assertEquals(states.get("spooled"), NOTIFICATION_STATE.COMPLETED);
+    Assert.assertEquals(bodies, Collections.singletonList("{\"spooled\":true}"));
+  }
+}
@@ -0,0 +1,170 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common.tools;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.storage.fs.FSUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class ParallelZipWriterTest {
+  private static Path basePath;
+  private static ExecutorService executor;
+
+  @BeforeClass
+  public static void setUp() throws IOException {
+    basePath = Files.createTempDirectory(ParallelZipWriterTest.class.getSimpleName());
+    executor = Executors.newFixedThreadPool(4);
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    executor.shutdownNow();
+    FSUtils.deletePath(basePath);
+  }
+
+  private static Map<String, byte[]> createContents() {
+    Random random = new Random(42);
+    Map<String, byte[]> contents = new LinkedHashMap<>();
+    contents.put("empty.txt", new byte[0]);
+
+    // spans several blocks, the last one partially filled
+    byte[] text = new byte[3 * ParallelZipWriter.BLOCK_SIZE + 17];
+    for (int i = 0; i < text.length; i++) {
+      text[i] = (byte) ('a' + random.nextInt(10));
+    }
+    contents.put("folder/text.txt", text);
+
+    byte[] binary = new byte[2 * ParallelZipWriter.BLOCK_SIZE];
+    random.nextBytes(binary);
+    contents.put("folder/random.jpg", binary);
+
+    contents.put("não-ascii/ção.txt", "content".getBytes(StandardCharsets.UTF_8));
+    return contents;
+  }
+
+  @Test
+  public void testZipCanBeReadBack() throws IOException {
+    Map<String, byte[]> contents = createContents();
+    Path zip = basePath.resolve("test.zip");
+
+    try (ParallelZipWriter writer = new ParallelZipWriter(Files.newOutputStream(zip), executor, 3)) {
+      writer.putDirectory("folder");
+      for (Map.Entry<String, byte[]> entry : contents.entrySet()) {
+        writer.putEntry(entry.getKey(), new ByteArrayInputStream(entry.getValue()),
+          !ZipTools.isAlreadyCompressed(entry.getKey()), entry.getValue().length);
+      }
+    }
+
+    try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+      Assert.assertEquals(zipFile.size(), contents.size() + 1);
+      Assert.assertTrue(zipFile.getEntry("folder/").isDirectory());
+      for (Map.Entry<String, byte[]> entry : contents.entrySet()) {
+        try (InputStream in = zipFile.getInputStream(zipFile.getEntry(entry.getKey()))) {
+          Assert.assertTrue(Arrays.equals(IOUtils.toByteArray(in), entry.getValue()), entry.getKey());
+        }
+      }
+    }
+
+    // streaming readers rely on the local headers and data descriptors
+    int entries = 0;
+    try (ZipInputStream in = new ZipInputStream(Files.newInputStream(zip))) {
+      ZipEntry entry;
+      while ((entry = in.getNextEntry()) != null) {
+        byte[] content = IOUtils.toByteArray(in);
+        if (!entry.isDirectory()) {
+          Assert.assertTrue(Arrays.equals(content, contents.get(entry.getName())), entry.getName());
+        }
+        entries++;
+      }
+    }
+    Assert.assertEquals(entries, contents.size() + 1);
+  }
+
+  @Test
+  public void testEntriesOfUnknownSizeHaveZip64LocalHeaders() throws IOException {
+    byte[] content = "content".getBytes(StandardCharsets.UTF_8);
+    Path zip = basePath.resolve("unknown-size.zip");
+
+    try (ParallelZipWriter writer = new ParallelZipWriter(Files.newOutputStream(zip), executor, 3)) {
+      writer.putEntry("unknown.txt", new ByteArrayInputStream(content), true);
+      writer.putEntry("known.txt", new ByteArrayInputStream(content), true, content.length);
+    }
+
+    ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(zip)).order(ByteOrder.LITTLE_ENDIAN);
+    int unknownNameLength = bytes.getShort(26);
+    int unknownExtraLength = bytes.getShort(28);
+    Assert.assertEquals(bytes.getShort(4), (short) 45);
+    Assert.assertEquals(unknownExtraLength, 20);
+    Assert.assertEquals(bytes.getShort(30 + unknownNameLength), (short) 1);
+
+    // the local header of the next entry follows the 24 byte descriptor
+    int descriptor = 30 + unknownNameLength + unknownExtraLength + compressedSize(zip, "unknown.txt");
+    Assert.assertEquals(bytes.getInt(descriptor), 0x08074b50);
+    Assert.assertEquals(bytes.getLong(descriptor + 16), content.length);
+    int known = descriptor + 24;
+    Assert.assertEquals(bytes.getInt(known), 0x04034b50);
+    Assert.assertEquals(bytes.getShort(known + 4), (short) 20);
+    Assert.assertEquals(bytes.getShort(known + 28), (short) 0);
+
+    try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+      for (String name : Arrays.asList("unknown.txt", "known.txt")) {
+        try (InputStream in = zipFile.getInputStream(zipFile.getEntry(name))) {
+          Assert.assertTrue(Arrays.equals(IOUtils.toByteArray(in), content), name);
+        }
+      }
+    }
+  }
+
+  private static int compressedSize(Path zip, String name) throws IOException {
+    try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+      return (int) zipFile.getEntry(name).getCompressedSize();
+    }
+  }
+
+  @Test
+  public void testZip64EntryCount() throws IOException {
+    int count = 70000;
+    Path zip = basePath.resolve("many.zip");
+
+    try (ParallelZipWriter writer = new ParallelZipWriter(Files.newOutputStream(zip), executor, 8)) {
+      for (int i = 0; i < count; i++) {
+        writer.putEntry("file-" + i, new ByteArrayInputStream(Integer.toString(i).getBytes()), true);
+      }
+    }
+
+    try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+      Assert.assertEquals(zipFile.size(), count);
+      try (InputStream in = zipFile.getInputStream(zipFile.getEntry("file-" + (count - 1)))) {
+        Assert.assertEquals(IOUtils.toString(in, StandardCharsets.UTF_8), Integer.toString(count - 1));
+      }
+    }
+  }
+}
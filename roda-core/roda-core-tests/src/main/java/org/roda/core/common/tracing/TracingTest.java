@@ -0,0 +1,260 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common.tracing;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.FileUtils;
+import org.roda.core.common.tracing.Tracing.Stage;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.common.RodaConstants.NodeType;
+import org.roda.core.data.v2.ip.StoragePath;
+import org.roda.core.storage.DefaultStoragePath;
+import org.roda.core.storage.StorageService;
+import org.roda.core.storage.StorageServiceWrapper;
+import org.roda.core.storage.StringContentPayload;
+import org.roda.core.storage.fs.FileStorageService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class TracingTest {
+  private static final Logger LOGGER = LoggerFactory.getLogger(TracingTest.class);
+  private static final double MAX_TRACING_OVERHEAD = 0.02;
+  private static final int BENCHMARK_ATTEMPTS = 3;
+  private static final int BENCHMARK_WARMUP_ROUNDS = 10;
+  private static final int BENCHMARK_ROUNDS = 200;
+  private static final int BENCHMARK_ITERATIONS = 1000;
+  private static final int BENCHMARK_SAMPLING_INTERVAL = 10;
+
+  @AfterMethod
+  public void disableTracing() {
+    Tracing.disable();
+  }
+
+  @Test
+  public void testSpansAreAggregatedByStageAndOperation() throws InterruptedException {
+    MetricRegistry registry = new MetricRegistry();
+    Tracing.configure(registry, 0);
+
+    try (Tracing.Scope scope = Tracing.inJob("job1")) {
+      for (int i = 0; i < 3; i++) {
+        try (Tracing.Span span = Tracing.start(Stage.STORAGE, "getBinary", "aip" + i)) {
+          Thread.sleep(1);
+        }
+      }
+      try (Tracing.Span span = Tracing.start(Stage.INDEX, "query")) {
+        // nothing to do
+      }
+    }
+
+    Histogram getBinary = registry.getHistograms().get(Tracing.getMetricName(Stage.STORAGE, "getBinary"));
+    Assert.assertEquals(getBinary.getCount(), 3);
+    Assert.assertTrue(((Tracing.SpanHistogram) getBinary).getTotalNanos() >= TimeUnit.MILLISECONDS.toNanos(3));
+    Assert.assertTrue(getBinary.getSnapshot().getMin() >= TimeUnit.MILLISECONDS.toNanos(1) * 7 / 8);
+    Assert.assertEquals(registry.getHistograms().get(Tracing.getMetricName(Stage.INDEX, "query")).getCount(), 1);
+  }
+
+  @Test
+  public void testSpansAreNotMeasuredWhenDisabled() {
+    MetricRegistry registry = new MetricRegistry();
+    Tracing.configure(registry, 0);
+    Tracing.disable();
+
+    try (Tracing.Span span = Tracing.start(Stage.MODEL, "retrieveAIP")) {
+      // nothing to do
+    }
+    Assert.assertFalse(Tracing.isEnabled());
+    Assert.assertTrue(registry.getHistograms().isEmpty());
+  }
+
+  @Test
+  public void testOperationsRecordInTheRegistryOfTheCurrentConfiguration() {
+    Tracing.Operation operation = Tracing.operation(Stage.MODEL, "retrieveAIP");
+    Assert.assertSame(Tracing.operation(Stage.MODEL, "retrieveAIP"), operation);
+
+    MetricRegistry first = new MetricRegistry();
+    Tracing.configure(first, 0);
+    operation.start("aip1").close();
+    MetricRegistry second = new MetricRegistry();
+    Tracing.configure(second, 0);
+    operation.start("aip2").close();
+    operation.start("aip3").close();
+
+    String name = Tracing.getMetricName(Stage.MODEL, "retrieveAIP");
+    Assert.assertEquals(first.getHistograms().get(name).getCount(), 1);
+    Assert.assertEquals(second.getHistograms().get(name).getCount(), 2);
+  }
+
+  @Test
+  public void testAllSpansAreCountedButOnlySampledOnesTimed() {
+    MetricRegistry registry = new MetricRegistry();
+    Tracing.configure(registry, 0, 10);
+    Tracing.Operation operation = Tracing.operation(Stage.STORAGE, "sampled");
+    for (int i = 0; i < 10000; i++) {
+      operation.start().close();
+    }
+
+    Tracing.SpanHistogram histogram = (Tracing.SpanHistogram) registry.getHistograms()
+      .get(Tracing.getMetricName(Stage.STORAGE, "sampled"));
+    Assert.assertEquals(histogram.getCount(), 10000);
+    long timed = histogram.getTimedCount();
+    Assert.assertTrue(timed > 500 && timed < 2000, "Timed " + timed + " spans");
+  }
+
+  @Test
+  public void testLatencyQuantilesAreWithinTheBucketError() {
+    LatencyReservoir reservoir = new LatencyReservoir();
+    for (long value = 1; value <= 100000; value++) {
+      reservoir.update(value * 1000);
+    }
+
+    Snapshot snapshot = reservoir.getSnapshot();
+    double maxError = 1.0 / LatencyReservoir.SUB_BUCKETS;
+    for (double quantile : new double[] {0.5, 0.75, 0.95, 0.99}) {
+      double expected = quantile * 100000 * 1000;
+      Assert.assertEquals(snapshot.getValue(quantile), expected, expected * maxError, "quantile " + quantile);
+    }
+    Assert.assertEquals(reservoir.size(), 100000);
+    Assert.assertEquals(reservoir.getTotal(), 1000L * 100000 * 100001 / 2);
+
+    for (long value : new long[] {0, 1, 7, 8, 9, 1000, 123456789, Long.MAX_VALUE}) {
+      long bucketValue = LatencyReservoir.valueOf(LatencyReservoir.bucketOf(value));
+      Assert.assertEquals(bucketValue, value, value * maxError, "value " + value);
+    }
+  }
+
+  /**
+   * Compares getting a binary from the file storage (one of the fastest traced
+   * operations) with tracing disabled and enabled with the default sampling.
+   * Runs are interleaved and the fastest round of each is kept, to leave out JIT
+   * and file system noise. As a pause (e.g. a GC) may still hit all the rounds
+   * of one of them, the comparison is attempted a few times.
+   */
+  @Test
+  public void testTracingOverheadIsSmall() throws Exception {
+    Path dir = Files.createTempDirectory("tracing");
+    try {
+      StorageService storage = new StorageServiceWrapper(new FileStorageService(dir), NodeType.TEST);
+      StoragePath binaryPath = DefaultStoragePath.parse("container", "binary");
+      storage.createContainer(DefaultStoragePath.parse("container"));
+      storage.createBinary(binaryPath, new StringContentPayload("content"), false);
+
+      double overhead = Double.MAX_VALUE;
+      for (int attempt = 0; attempt < BENCHMARK_ATTEMPTS && overhead >= MAX_TRACING_OVERHEAD; attempt++) {
+        overhead = measureTracingOverhead(storage, binaryPath);
+      }
+      Assert.assertTrue(overhead < MAX_TRACING_OVERHEAD, "Tracing overhead is " + overhead * 100 + "%");
+    } finally {
+      FileUtils.deleteDirectory(dir.toFile());
+    }
+  }
+
+  private static double measureTracingOverhead(StorageService storage, StoragePath binaryPath) throws Exception {
+    MetricRegistry registry = new MetricRegistry();
+    long disabled = Long.MAX_VALUE;
+    long enabled = Long.MAX_VALUE;
+    for (int round = -BENCHMARK_WARMUP_ROUNDS; round < BENCHMARK_ROUNDS; round++) {
+      long disabledRound;
+      long enabledRound;
+      if (round % 2 == 0) {
+        Tracing.disable();
+        disabledRound = timeGetBinary(storage, binaryPath);
+        Tracing.configure(registry, 0, BENCHMARK_SAMPLING_INTERVAL);
+        enabledRound = timeGetBinary(storage, binaryPath);
+      } else {
+        Tracing.configure(registry, 0, BENCHMARK_SAMPLING_INTERVAL);
+        enabledRound = timeGetBinary(storage, binaryPath);
+        Tracing.disable();
+        disabledRound = timeGetBinary(storage, binaryPath);
+      }
+      if (round >= 0) {
+        disabled = Math.min(disabled, disabledRound);
+        enabled = Math.min(enabled, enabledRound);
+      }
+    }
+    Assert.assertEquals(registry.getHistograms().get(Tracing.getMetricName(Stage.STORAGE, "getBinary")).getCount(),
+      (long) (BENCHMARK_WARMUP_ROUNDS + BENCHMARK_ROUNDS) * BENCHMARK_ITERATIONS);
+
+    double overhead = (enabled - disabled) / (double) disabled;
+    LOGGER.info("getBinary took {} ns without tracing and {} ns with tracing (overhead: {}%)",
+      disabled / BENCHMARK_ITERATIONS, enabled / BENCHMARK_ITERATIONS, String.format("%.2f", overhead * 100));
+    return overhead;
+  }
+
+  private static long timeGetBinary(StorageService storage, StoragePath binaryPath) throws Exception {
+    long start = System.nanoTime();
+    for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+      storage.getBinary(binaryPath);
+    }
+    return System.nanoTime() - start;
+  }
+
+  @Test
+  public void testMetricsAreWrittenInPrometheusFormat() throws IOException {
+    MetricRegistry registry = new MetricRegistry();
+    Tracing.configure(registry, 0);
+    registry.counter("IndexService.queryCache.hits").inc(5);
+    try (Tracing.Span span = Tracing.start(Stage.PLUGIN, "SiegfriedPlugin.execute")) {
+      // nothing to do
+    }
+
+    StringWriter writer = new StringWriter();
+    PrometheusFileReporter.write(registry, writer);
+    String metrics = writer.toString();
+
+    Assert.assertTrue(metrics.contains("# TYPE roda_IndexService_queryCache_hits gauge\n"), metrics);
+    Assert.assertTrue(metrics.contains("roda_IndexService_queryCache_hits 5\n"), metrics);
+    Assert.assertTrue(metrics.contains("# TYPE roda_stage_latency_seconds summary\n"), metrics);
+    Assert.assertTrue(
+      metrics.contains("roda_stage_latency_seconds{stage=\"plugin\",operation=\"SiegfriedPlugin.execute\","
+        + "quantile=\"0.5\"} "),
+      metrics);
+    Assert.assertTrue(
+      metrics.contains("roda_stage_latency_seconds_count{stage=\"plugin\",operation=\"SiegfriedPlugin.execute\"} 1\n"),
+      metrics);
+  }
+
+  @Test
+  public void testReporterReplacesTheExportFile() throws IOException {
+    MetricRegistry registry = new MetricRegistry();
+    Tracing.configure(registry, 0);
+    try (Tracing.Span span = Tracing.start(Stage.XSLT, "applyMetadataStylesheet")) {
+      // nothing to do
+    }
+
+    Path dir = Files.createTempDirectory("tracing");
+    try {
+      Path file = dir.resolve("metrics").resolve("roda.prom");
+      PrometheusFileReporter reporter = new PrometheusFileReporter(registry, file);
+      reporter.report();
+      reporter.report();
+
+      String metrics = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+      Assert.assertTrue(metrics.contains("operation=\"applyMetadataStylesheet\""), metrics);
+      try (Stream<Path> files = Files.list(file.getParent())) {
+        Assert.assertEquals(files.count(), 1);
+      }
+    } finally {
+      FileUtils.deleteDirectory(dir.toFile());
+    }
+  }
+}
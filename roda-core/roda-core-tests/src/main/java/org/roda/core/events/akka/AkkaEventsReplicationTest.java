@@ -0,0 +1,199 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.events.akka;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.roda.core.common.akka.Messages;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.v2.user.Group;
+import org.roda.core.data.v2.user.User;
+import org.roda.core.events.EventsHandler;
+import org.roda.core.model.ModelService;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.cluster.Cluster;
+import akka.cluster.Member;
+import akka.cluster.MemberStatus;
+import scala.concurrent.Await;
+import scala.concurrent.duration.Duration;
+
+/**
+ * Replicates user and group events between two cluster nodes running in this
+ * JVM.
+ */
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class AkkaEventsReplicationTest {
+  private static final String SYSTEM_NAME = "EventsSystem";
+  private static final int USERS = 2000;
+  private static final long TIMEOUT_IN_MILLIS = 60000;
+
+  private ActorSystem systemA;
+  private ActorSystem systemB;
+  private RecordingEventsHandler handlerA;
+  private RecordingEventsHandler handlerB;
+  private MetricRegistry metricsB;
+  private ActorRef actorA;
+
+  @BeforeClass
+  public void setUp() throws InterruptedException {
+    Config config = ConfigFactory.parseString("akka.actor.provider = cluster\n"
+      + "akka.actor.serializers.crdt = \"org.roda.core.events.akka.CRDTSerializer\"\n"
+      + "akka.actor.serialization-bindings {\"org.roda.core.events.akka.CRDTWrapper\" = crdt}\n"
+      + "akka.remote.netty.tcp.hostname = \"127.0.0.1\"\n" + "akka.remote.netty.tcp.port = 0\n"
+      + "akka.remote.netty.tcp.maximum-frame-size = 4194304b\n"
+      + "akka.cluster.distributed-data.gossip-interval = 200ms\n"
+      + "akka.cluster.distributed-data.notify-subscribers-interval = 50ms\n" + "akka.loglevel = ERROR\n"
+      + "akka.stdout-loglevel = OFF\n");
+
+    systemA = ActorSystem.create(SYSTEM_NAME, config);
+    systemB = ActorSystem.create(SYSTEM_NAME, config);
+    Cluster.get(systemA).join(Cluster.get(systemA).selfAddress());
+    Cluster.get(systemB).join(Cluster.get(systemA).selfAddress());
+    awaitUntil(() -> isUp(systemA, 2) && isUp(systemB, 2));
+
+    handlerA = new RecordingEventsHandler();
+    handlerB = new RecordingEventsHandler();
+    metricsB = new MetricRegistry();
+    actorA = systemA.actorOf(Props.create(AkkaEventsHandlerAndNotifierActor.class, handlerA, "WriteMajority", 3, 50,
+      500, 10, new MetricRegistry()));
+    systemB.actorOf(Props.create(AkkaEventsHandlerAndNotifierActor.class, handlerB, "WriteMajority", 3, 50, 500, 10,
+      metricsB));
+  }
+
+  @AfterClass
+  public void tearDown() throws Exception {
+    for (ActorSystem system : new ActorSystem[] {systemA, systemB}) {
+      if (system != null) {
+        Await.result(system.terminate(), Duration.create(30, TimeUnit.SECONDS));
+      }
+    }
+  }
+
+  private static boolean isUp(ActorSystem system, int nodes) {
+    int up = 0;
+    for (Member member : Cluster.get(system).state().getMembers()) {
+      if (MemberStatus.up().equals(member.status())) {
+        up++;
+      }
+    }
+    return up == nodes;
+  }
+
+  private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT_IN_MILLIS;
+    while (!condition.getAsBoolean()) {
+      if (System.currentTimeMillis() > deadline) {
+        Assert.fail("Condition not met in " + TIMEOUT_IN_MILLIS + " ms");
+      }
+      Thread.sleep(50);
+    }
+  }
+
+  @Test
+  public void testBulkChangesAreReplicatedOnce() throws InterruptedException {
+    actorA.tell(Messages.newEventGroupCreated(new Group("archivists"), "test"), ActorRef.noSender());
+    for (int i = 0; i < USERS; i++) {
+      User user = new User("user" + i);
+      actorA.tell(Messages.newEventUserCreated(user, "password" + i, "test"), ActorRef.noSender());
+      if (i % 2 == 0) {
+        // changes of the same flush window are replicated as one
+        actorA.tell(Messages.newEventUserUpdated(user, "password" + i, false, "test"), ActorRef.noSender());
+      }
+    }
+
+    awaitUntil(() -> handlerB.users.size() == USERS && handlerB.groups.contains("archivists"));
+    Assert.assertEquals(handlerB.passwords.get("user1"), "password1");
+
+    actorA.tell(Messages.newEventUserDeleted("user0", "test"), ActorRef.noSender());
+    awaitUntil(() -> handlerB.deletedUsers.contains("user0"));
+
+    // later notifications of the buckets do not apply the same changes again
+    Thread.sleep(1000);
+    Assert.assertTrue(handlerB.userApplications.get() <= USERS + USERS / 2,
+      "applied " + handlerB.userApplications.get() + " user changes");
+    Assert.assertEquals(handlerB.groupApplications.get(), 1);
+    Assert.assertEquals(handlerB.deletedUsers.size(), 1);
+
+    // the changes are not applied on the instance that made them
+    Assert.assertEquals(handlerA.userApplications.get(), 0);
+    Assert.assertTrue(handlerA.deletedUsers.isEmpty());
+
+    Assert.assertTrue(metricsB.getHistograms()
+      .get(MetricRegistry.name(AkkaEventsHandlerAndNotifierActor.class, "convergenceLagInMillis")).getCount() > 0);
+  }
+
+  private static class RecordingEventsHandler implements EventsHandler {
+    private static final long serialVersionUID = -2926716203478224370L;
+
+    private final Set<String> users = ConcurrentHashMap.newKeySet();
+    private final Map<String, String> passwords = new ConcurrentHashMap<>();
+    private final Set<String> groups = ConcurrentHashMap.newKeySet();
+    private final Set<String> deletedUsers = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger userApplications = new AtomicInteger();
+    private final AtomicInteger groupApplications = new AtomicInteger();
+
+    @Override
+    public void handleUserCreated(ModelService model, User user, String password) {
+      handleUserUpdated(model, user, password);
+    }
+
+    @Override
+    public void handleUserUpdated(ModelService model, User user, String password) {
+      userApplications.incrementAndGet();
+      users.add(user.getId());
+      passwords.put(user.getId(), password);
+    }
+
+    @Override
+    public void handleMyUserUpdated(ModelService model, User user, String password) {
+      handleUserUpdated(model, user, password);
+    }
+
+    @Override
+    public void handleUserDeleted(ModelService model, String id) {
+      deletedUsers.add(id);
+    }
+
+    @Override
+    public void handleGroupCreated(ModelService model, Group group) {
+      handleGroupUpdated(model, group);
+    }
+
+    @Override
+    public void handleGroupUpdated(ModelService model, Group group) {
+      groupApplications.incrementAndGet();
+      groups.add(group.getId());
+    }
+
+    @Override
+    public void handleGroupDeleted(ModelService model, String id) {
+      // not used
+    }
+
+    @Override
+    public void shutdown() {
+      // nothing to do
+    }
+  }
+}
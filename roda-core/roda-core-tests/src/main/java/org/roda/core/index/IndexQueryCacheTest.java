@@ -0,0 +1,129 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.index;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.util.NamedList;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.index.utils.IndexQueryCache;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class IndexQueryCacheTest {
+
+  private static final String COLLECTION = "AIP";
+
+  /**
+   * Answers every request with an empty response, optionally waiting for a
+   * latch, and counts how many requests actually reached "Solr"
+   */
+  private static class CountingSolrClient extends SolrClient {
+    private static final long serialVersionUID = 1L;
+
+    private final AtomicInteger requests = new AtomicInteger(0);
+    private final CountDownLatch release;
+
+    CountingSolrClient(CountDownLatch release) {
+      this.release = release;
+    }
+
+    @Override
+    public NamedList<Object> request(SolrRequest request, String collection) {
+      requests.incrementAndGet();
+      try {
+        release.await(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return new NamedList<>();
+    }
+
+    @Override
+    public void close() {
+      // do nothing
+    }
+
+    int getRequests() {
+      return requests.get();
+    }
+  }
+
+  private static SolrQuery createQuery(String q) {
+    SolrQuery query = new SolrQuery();
+    query.setQuery(q);
+    query.setStart(0);
+    query.setRows(10);
+    return query;
+  }
+
+  @Test
+  public void testHitsAndInvalidationOnCommit() throws Exception {
+    MetricRegistry metrics = new MetricRegistry();
+    IndexQueryCache cache = new IndexQueryCache(metrics, 60000, 100);
+    CountingSolrClient solr = new CountingSolrClient(new CountDownLatch(0));
+
+    cache.query(solr, COLLECTION, createQuery("*:*"));
+    cache.query(solr, COLLECTION, createQuery("*:*"));
+    Assert.assertEquals(solr.getRequests(), 1);
+
+    cache.invalidate(COLLECTION);
+    cache.query(solr, COLLECTION, createQuery("*:*"));
+    Assert.assertEquals(solr.getRequests(), 2);
+
+    Assert.assertEquals(metrics.counter("IndexQueryCache.hits").getCount(), 1);
+    Assert.assertEquals(metrics.counter("IndexQueryCache.misses").getCount(), 2);
+  }
+
+  @Test
+  public void testConcurrentIdenticalQueriesAreCoalesced() throws Exception {
+    MetricRegistry metrics = new MetricRegistry();
+    IndexQueryCache cache = new IndexQueryCache(metrics, 60000, 100);
+    CountDownLatch release = new CountDownLatch(1);
+    CountingSolrClient solr = new CountingSolrClient(release);
+
+    int callers = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(callers);
+    try {
+      List<Future<QueryResponse>> futures = new ArrayList<>();
+      for (int i = 0; i < callers; i++) {
+        futures.add(executor.submit(() -> cache.query(solr, COLLECTION, createQuery("title:roda"))));
+      }
+
+      // give every caller the chance to join the in-flight request
+      Thread.sleep(500);
+      release.countDown();
+
+      QueryResponse first = futures.get(0).get(10, TimeUnit.SECONDS);
+      for (Future<QueryResponse> future : futures) {
+        Assert.assertSame(future.get(10, TimeUnit.SECONDS), first);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    Assert.assertEquals(solr.getRequests(), 1);
+    Assert.assertEquals(metrics.counter("IndexQueryCache.misses").getCount(), 1);
+    Assert.assertEquals(metrics.counter("IndexQueryCache.coalesced").getCount()
+      + metrics.counter("IndexQueryCache.hits").getCount(), callers - 1);
+  }
+}
@@ -50,12 +50,14 @@ import org.roda.core.data.exceptions.RequestNotValidException;
 import org.roda.core.data.v2.index.IndexResult;
 import org.roda.core.data.v2.index.filter.EmptyKeyFilterParameter;
 import org.roda.core.data.v2.index.filter.Filter;
+import org.roda.core.data.v2.index.filter.OneOfManyFilterParameter;
 import org.roda.core.data.v2.index.filter.SimpleFilterParameter;
 import org.roda.core.data.v2.index.sort.Sorter;
 import org.roda.core.data.v2.index.sublist.Sublist;
 import org.roda.core.data.v2.ip.AIP;
 import org.roda.core.data.v2.ip.AIPState;
 import org.roda.core.data.v2.ip.IndexedAIP;
+import org.roda.core.data.v2.ip.IndexedFile;
 import org.roda.core.data.v2.ip.IndexedRepresentation;
 import org.roda.core.data.v2.ip.Permissions;
 import org.roda.core.data.v2.ip.Permissions.PermissionType;
@@ -71,6 +73,8 @@ import org.roda.core.data.v2.ri.RepresentationInformationSupport;
 import org.roda.core.data.v2.risks.IndexedRisk;
 import org.roda.core.data.v2.risks.Risk;
 import org.roda.core.data.v2.risks.Risk.SEVERITY_LEVEL;
+import org.roda.core.data.v2.risks.RiskIncidence;
+import org.roda.core.data.v2.risks.RiskIncidence.INCIDENCE_STATUS;
 import org.roda.core.data.v2.user.Group;
 import org.roda.core.data.v2.user.RODAMember;
 import org.roda.core.data.v2.user.User;
@@ -79,6 +83,7 @@ import org.roda.core.index.schema.SolrCollectionRegistry;
 import org.roda.core.index.utils.IterableIndexResult;
 import org.roda.core.index.utils.SolrUtils;
 import org.roda.core.model.ModelService;
+import org.roda.core.model.utils.ModelUtils;
 import org.roda.core.storage.DefaultStoragePath;
 import org.roda.core.storage.StorageService;
 import org.roda.core.storage.fs.FSUtils;
@@ -357,6 +362,120 @@ public class IndexServiceTest {
     model.deleteAIP(CorporaConstants.OTHER_AIP_ID);
   }
 
+  @Test
+  public void testAIPTreeDelete() throws RODAException {
+    // set up
+    model.createAIP(CorporaConstants.SOURCE_AIP_ID, corporaService,
+      DefaultStoragePath.parse(CorporaConstants.SOURCE_AIP_CONTAINER, CorporaConstants.SOURCE_AIP_ID),
+      RodaConstants.ADMIN);
+    model.createAIP(CorporaConstants.OTHER_AIP_ID, corporaService,
+      DefaultStoragePath.parse(CorporaConstants.SOURCE_AIP_CONTAINER, CorporaConstants.OTHER_AIP_ID),
+      RodaConstants.ADMIN);
+    index.commitAIPs();
+
+    List<String> aipIds = Arrays.asList(CorporaConstants.SOURCE_AIP_ID, CorporaConstants.OTHER_AIP_ID);
+    assertEquals(2L, (long) index.count(IndexedAIP.class,
+      new Filter(new OneOfManyFilterParameter(RodaConstants.AIP_ID, aipIds))));
+
+    List<String> deleted = model.deleteAIPTree(CorporaConstants.SOURCE_AIP_ID,
+      Arrays.asList(CorporaConstants.OTHER_AIP_ID));
+    assertEquals(2, deleted.size());
+    index.commitAIPs();
+
+    assertEquals(0L, (long) index.count(IndexedAIP.class,
+      new Filter(new OneOfManyFilterParameter(RodaConstants.AIP_ID, aipIds))));
+    assertEquals(0L, (long) index.count(IndexedRepresentation.class,
+      new Filter(new OneOfManyFilterParameter(RodaConstants.REPRESENTATION_AIP_ID, aipIds))));
+    assertEquals(0L, (long) index.count(IndexedFile.class,
+      new Filter(new OneOfManyFilterParameter(RodaConstants.FILE_AIP_ID, aipIds))));
+  }
+
+  @Test
+  public void testAIPTreeDeleteWithAIPMissingFromStorage() throws RODAException {
+    // set up
+    model.createAIP(CorporaConstants.SOURCE_AIP_ID, corporaService,
+      DefaultStoragePath.parse(CorporaConstants.SOURCE_AIP_CONTAINER, CorporaConstants.SOURCE_AIP_ID),
+      RodaConstants.ADMIN);
+    model.createAIP(CorporaConstants.OTHER_AIP_ID, corporaService,
+      DefaultStoragePath.parse(CorporaConstants.SOURCE_AIP_CONTAINER, CorporaConstants.OTHER_AIP_ID),
+      RodaConstants.ADMIN);
+    index.commitAIPs();
+    RodaCoreFactory.getStorageService().deleteResource(ModelUtils.getAIPStoragePath(CorporaConstants.OTHER_AIP_ID));
+
+    // the AIP missing from storage counts as deleted, so no index document is
+    // left behind
+    List<String> aipIds = Arrays.asList(CorporaConstants.SOURCE_AIP_ID, CorporaConstants.OTHER_AIP_ID);
+    List<String> deleted = model.deleteAIPTree(CorporaConstants.SOURCE_AIP_ID,
+      Arrays.asList(CorporaConstants.OTHER_AIP_ID));
+    assertEquals(2, deleted.size());
+    index.commitAIPs();
+
+    assertEquals(0L, (long) index.count(IndexedAIP.class,
+      new Filter(new OneOfManyFilterParameter(RodaConstants.AIP_ID, aipIds))));
+    assertEquals(0L, (long) index.count(IndexedRepresentation.class,
+      new Filter(new OneOfManyFilterParameter(RodaConstants.REPRESENTATION_AIP_ID, aipIds))));
+  }
+
+  @Test
+  public void testAIPStatesBatch() throws RODAException {
+    // set up
+    List<AIP> aips = new ArrayList<>();
+    aips.add(model.createAIP(CorporaConstants.SOURCE_AIP_ID, corporaService,
+      DefaultStoragePath.parse(CorporaConstants.SOURCE_AIP_CONTAINER, CorporaConstants.SOURCE_AIP_ID),
+      RodaConstants.ADMIN));
+    aips.add(model.createAIP(CorporaConstants.OTHER_AIP_ID, corporaService,
+      DefaultStoragePath.parse(CorporaConstants.SOURCE_AIP_CONTAINER, CorporaConstants.OTHER_AIP_ID),
+      RodaConstants.ADMIN));
+    index.commitAIPs();
+
+    for (AIP aip : aips) {
+      aip.setState(AIPState.UNDER_APPRAISAL);
+    }
+    assertEquals(2, model.updateAIPStates(aips, RodaConstants.ADMIN).size());
+    index.commitAIPs();
+
+    List<String> aipIds = Arrays.asList(CorporaConstants.SOURCE_AIP_ID, CorporaConstants.OTHER_AIP_ID);
+    Filter filter = new Filter(new OneOfManyFilterParameter(RodaConstants.AIP_ID, aipIds),
+      new SimpleFilterParameter(RodaConstants.INDEX_STATE, AIPState.UNDER_APPRAISAL.toString()));
+    assertEquals(2L, (long) index.count(IndexedAIP.class, filter));
+    assertEquals(0L, (long) index.count(IndexedRepresentation.class,
+      new Filter(new OneOfManyFilterParameter(RodaConstants.REPRESENTATION_AIP_ID, aipIds),
+        new SimpleFilterParameter(RodaConstants.INDEX_STATE, AIPState.ACTIVE.toString()))));
+  }
+
+  @Test
+  public void testAIPsMove() throws RODAException {
+    // set up
+    model.createAIP(CorporaConstants.SOURCE_AIP_ID, corporaService,
+      DefaultStoragePath.parse(CorporaConstants.SOURCE_AIP_CONTAINER, CorporaConstants.SOURCE_AIP_ID),
+      RodaConstants.ADMIN);
+    model.createAIP(CorporaConstants.OTHER_AIP_ID, corporaService,
+      DefaultStoragePath.parse(CorporaConstants.SOURCE_AIP_CONTAINER, CorporaConstants.OTHER_AIP_ID),
+      RodaConstants.ADMIN);
+    AIP destination = model.createAIP(null, "", new Permissions(), RodaConstants.ADMIN);
+    index.commitAIPs();
+
+    List<AIP> moved = model.moveAIPs(Arrays.asList(CorporaConstants.SOURCE_AIP_ID), destination.getId(),
+      RodaConstants.ADMIN);
+    assertEquals(1, moved.size());
+    index.commitAIPs();
+
+    IndexedAIP source = index.retrieve(IndexedAIP.class, CorporaConstants.SOURCE_AIP_ID, new ArrayList<>());
+    assertEquals(destination.getId(), source.getParentID());
+    assertEquals(Arrays.asList(destination.getId()), source.getAncestors());
+
+    List<String> descendantAncestors = Arrays.asList(CorporaConstants.SOURCE_AIP_ID, destination.getId());
+    IndexedAIP descendant = index.retrieve(IndexedAIP.class, CorporaConstants.OTHER_AIP_ID, new ArrayList<>());
+    assertEquals(descendantAncestors, descendant.getAncestors());
+
+    Filter representationFilter = new Filter(
+      new SimpleFilterParameter(RodaConstants.REPRESENTATION_AIP_ID, CorporaConstants.OTHER_AIP_ID));
+    for (IndexedRepresentation representation : index.find(IndexedRepresentation.class, representationFilter,
+      Sorter.NONE, new Sublist(0, 10), new ArrayList<>()).getResults()) {
+      assertEquals(descendantAncestors, representation.getAncestors());
+    }
+  }
+
   @Test
   public void testGetAncestors() throws RODAException {
     // set up
@@ -680,6 +799,136 @@ public class IndexServiceTest {
     }
   }
 
+  private Risk createIndexedRisk(String name) throws RODAException {
+    Risk risk = new Risk();
+    risk.setName(name);
+    risk.setIdentifiedOn(new Date());
+    risk.setIdentifiedBy("admin");
+    risk.setCategories(Collections.singletonList("test"));
+    risk.setPreMitigationSeverityLevel(SEVERITY_LEVEL.HIGH);
+    risk.setCreatedOn(new Date());
+    risk.setCreatedBy("admin");
+    risk.setUpdatedOn(new Date());
+    risk.setUpdatedBy("admin");
+    model.createRisk(risk, false);
+    index.commit(IndexedRisk.class);
+    return risk;
+  }
+
+  private static RiskIncidence createRiskIncidence(String riskId, int number) {
+    RiskIncidence incidence = new RiskIncidence();
+    incidence.setRiskId(riskId);
+    incidence.setAipId("aip" + number);
+    incidence.setObjectClass(AIP.class.getSimpleName());
+    incidence.setStatus(INCIDENCE_STATUS.UNMITIGATED);
+    incidence.setSeverity(SEVERITY_LEVEL.HIGH);
+    incidence.setDetectedBy("admin");
+    return incidence;
+  }
+
+  private void assertRiskCounters(String riskId, int incidences, int unmitigatedIncidences) throws RODAException {
+    IndexedRisk indexedRisk = index.retrieve(IndexedRisk.class, riskId, new ArrayList<>());
+    assertEquals(incidences, indexedRisk.getIncidencesCount());
+    assertEquals(unmitigatedIncidences, indexedRisk.getUnmitigatedIncidencesCount());
+  }
+
+  @Test
+  public void testRiskIncidencesBatch() throws RODAException {
+    Risk risk = createIndexedRisk("Risk name");
+
+    List<RiskIncidence> incidences = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      incidences.add(createRiskIncidence(risk.getId(), i));
+    }
+
+    // the counters are updated without committing (real-time get sees them)
+    List<RiskIncidence> created = model.createRiskIncidences(incidences, false);
+    assertEquals(3, created.size());
+    IndexedRisk indexedRisk = index.retrieve(IndexedRisk.class, risk.getId(), new ArrayList<>());
+    assertEquals(3, indexedRisk.getIncidencesCount());
+    assertEquals(3, indexedRisk.getUnmitigatedIncidencesCount());
+
+    index.commit(RiskIncidence.class);
+    assertEquals(3L, (long) index.count(RiskIncidence.class,
+      new Filter(new SimpleFilterParameter(RodaConstants.RISK_INCIDENCE_RISK_ID, risk.getId()))));
+
+    List<RiskIncidence> mitigated = created.subList(0, 2);
+    for (RiskIncidence incidence : mitigated) {
+      incidence.setStatus(INCIDENCE_STATUS.MITIGATED);
+      incidence.setMitigatedBy("admin");
+      incidence.setMitigatedOn(new Date());
+    }
+    model.updateRiskIncidences(mitigated, false);
+
+    indexedRisk = index.retrieve(IndexedRisk.class, risk.getId(), new ArrayList<>());
+    assertEquals(3, indexedRisk.getIncidencesCount());
+    assertEquals(1, indexedRisk.getUnmitigatedIncidencesCount());
+
+    RiskIncidence indexedIncidence = index.retrieve(RiskIncidence.class, mitigated.get(0).getId(), new ArrayList<>());
+    assertEquals(INCIDENCE_STATUS.MITIGATED, indexedIncidence.getStatus());
+    assertEquals("admin", indexedIncidence.getMitigatedBy());
+    assertEquals(risk.getId(), indexedIncidence.getRiskId());
+
+    // cleanup
+    for (RiskIncidence incidence : created) {
+      model.deleteRiskIncidence(incidence.getId(), false);
+    }
+    model.deleteRisk(risk.getId(), false);
+    index.commit(RiskIncidence.class, IndexedRisk.class);
+  }
+
+  @Test
+  public void testRiskIncidenceCounters() throws RODAException {
+    Risk risk = createIndexedRisk("Risk with counted incidences");
+
+    RiskIncidence incidence = model.createRiskIncidence(createRiskIncidence(risk.getId(), 0), false);
+    assertRiskCounters(risk.getId(), 1, 1);
+
+    incidence.setStatus(INCIDENCE_STATUS.MITIGATED);
+    model.updateRiskIncidence(incidence, false);
+    assertRiskCounters(risk.getId(), 1, 0);
+
+    // updating (or reindexing) an incidence does not count it again
+    model.updateRiskIncidence(incidence, false);
+    index.reindex(incidence);
+    assertRiskCounters(risk.getId(), 1, 0);
+
+    List<RiskIncidence> others = model.createRiskIncidences(
+      Arrays.asList(createRiskIncidence(risk.getId(), 1), createRiskIncidence(risk.getId(), 2)), false);
+    assertRiskCounters(risk.getId(), 3, 2);
+
+    model.deleteRiskIncidence(incidence.getId(), false);
+    assertRiskCounters(risk.getId(), 2, 2);
+
+    model.deleteRiskIncidences(others.stream().map(RiskIncidence::getId).collect(Collectors.toList()), false);
+    assertRiskCounters(risk.getId(), 0, 0);
+
+    // cleanup
+    model.deleteRisk(risk.getId(), false);
+    index.commit(RiskIncidence.class, IndexedRisk.class);
+  }
+
+  @Test
+  public void testDeleteRiskIncidencesMissingFromStorage() throws RODAException {
+    Risk risk = createIndexedRisk("Risk with a missing incidence");
+    List<RiskIncidence> incidences = model.createRiskIncidences(
+      Arrays.asList(createRiskIncidence(risk.getId(), 0), createRiskIncidence(risk.getId(), 1)), false);
+    assertRiskCounters(risk.getId(), 2, 2);
+    RodaCoreFactory.getStorageService()
+      .deleteResource(ModelUtils.getRiskIncidenceStoragePath(incidences.get(0).getId()));
+
+    List<String> ids = incidences.stream().map(RiskIncidence::getId).collect(Collectors.toList());
+    assertEquals(2, model.deleteRiskIncidences(ids, false).size());
+    assertRiskCounters(risk.getId(), 0, 0);
+    index.commit(RiskIncidence.class);
+    assertEquals(0L, (long) index.count(RiskIncidence.class,
+      new Filter(new SimpleFilterParameter(RodaConstants.RISK_INCIDENCE_RISK_ID, risk.getId()))));
+
+    // cleanup
+    model.deleteRisk(risk.getId(), false);
+    index.commit(IndexedRisk.class);
+  }
+
   @Test
   public void testRepresentationInformationIndex() throws RODAException {
     RepresentationInformation ri = new RepresentationInformation();
@@ -0,0 +1,201 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.index;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.request.CoreAdminRequest;
+
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.TestsHelper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.index.filter.Filter;
+import org.roda.core.data.v2.index.filter.SimpleFilterParameter;
+import org.roda.core.data.v2.risks.IndexedRisk;
+import org.roda.core.data.v2.risks.Risk;
+import org.roda.core.data.v2.risks.Risk.SEVERITY_LEVEL;
+import org.roda.core.index.schema.ShadowCollectionManager;
+import org.roda.core.index.utils.SolrUtils;
+import org.roda.core.model.ModelService;
+import org.roda.core.storage.fs.FSUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class ShadowCollectionManagerTest {
+  private static Path basePath;
+  private static ModelService model;
+  private static IndexService index;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    basePath = TestsHelper.createBaseTempDir(ShadowCollectionManagerTest.class, true);
+
+    boolean deploySolr = true;
+    boolean deployLdap = false;
+    boolean deployFolderMonitor = false;
+    boolean deployOrchestrator = false;
+    boolean deployPluginManager = false;
+    boolean deployDefaultResources = false;
+    RodaCoreFactory.instantiateTest(deploySolr, deployLdap, deployFolderMonitor, deployOrchestrator,
+      deployPluginManager, deployDefaultResources);
+
+    model = RodaCoreFactory.getModelService();
+    index = RodaCoreFactory.getIndexService();
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    RodaCoreFactory.shutdown();
+    FSUtils.deletePath(basePath);
+  }
+
+  @AfterMethod
+  public void cleanUp() throws RODAException {
+    index.getShadowCollections().abort(RodaConstants.INDEX_RISK);
+    index.clearIndex(RodaConstants.INDEX_RISK);
+  }
+
+  private static Risk createRisk(String name) throws RODAException {
+    Risk risk = new Risk();
+    risk.setName(name);
+    risk.setIdentifiedOn(new Date());
+    risk.setIdentifiedBy("admin");
+    risk.setCategories(Collections.singletonList("test"));
+    risk.setPreMitigationSeverityLevel(SEVERITY_LEVEL.HIGH);
+    risk.setCreatedOn(new Date());
+    risk.setCreatedBy("admin");
+    risk.setUpdatedOn(new Date());
+    risk.setUpdatedBy("admin");
+    return model.createRisk(risk, false);
+  }
+
+  private static long countRisks(String name) throws RODAException {
+    index.commit(IndexedRisk.class);
+    return index.count(IndexedRisk.class, new Filter(new SimpleFilterParameter(RodaConstants.RISK_NAME, name)));
+  }
+
+  @Test
+  public void testRebuildIsOnlyVisibleAfterComplete() throws RODAException {
+    ShadowCollectionManager shadowCollections = index.getShadowCollections();
+    createRisk("stale");
+
+    shadowCollections.begin(RodaConstants.INDEX_RISK);
+    Assert.assertTrue(shadowCollections.isRebuilding(RodaConstants.INDEX_RISK));
+    Assert.assertEquals(shadowCollections.getWriteTargets(RodaConstants.INDEX_RISK).size(), 2);
+
+    // live writes go to both collections
+    createRisk("live");
+
+    // rebuild writes only go to the shadow
+    Risk rebuilt = createRisk("rebuilt");
+    index.delete(IndexedRisk.class, Collections.singletonList(rebuilt.getId()));
+    ShadowCollectionManager.runAsRebuild(() -> index.reindex(rebuilt));
+
+    // searches keep using the live collection
+    Assert.assertEquals(countRisks("stale"), 1L);
+    Assert.assertEquals(countRisks("live"), 1L);
+    Assert.assertEquals(countRisks("rebuilt"), 0L);
+
+    shadowCollections.complete(RodaConstants.INDEX_RISK);
+    Assert.assertFalse(shadowCollections.isRebuilding(RodaConstants.INDEX_RISK));
+
+    // the stale document was never reindexed into the shadow
+    Assert.assertEquals(countRisks("stale"), 0L);
+    Assert.assertEquals(countRisks("live"), 1L);
+    Assert.assertEquals(countRisks("rebuilt"), 1L);
+  }
+
+  @Test
+  public void testCompletedShadowIsNotASecondCoreAtStartup() throws Exception {
+    ShadowCollectionManager shadowCollections = index.getShadowCollections();
+    shadowCollections.begin(RodaConstants.INDEX_RISK);
+    shadowCollections.complete(RodaConstants.INDEX_RISK);
+
+    SolrClient solr = RodaCoreFactory.getSolr();
+    Path instanceDir = Paths.get(CoreAdminRequest.getStatus(RodaConstants.INDEX_RISK, solr)
+      .getCoreStatus(RodaConstants.INDEX_RISK).get("instanceDir").toString());
+    Assert.assertFalse(Files.exists(instanceDir.resolve("core.properties")));
+
+    // at startup the instance directories of completed shadows are deleted
+    Path solrHome = Files.createDirectories(basePath.resolve("solr-home"));
+    Path completed = Files.createDirectories(solrHome.resolve(RodaConstants.INDEX_RISK + "_1"));
+    Path unfinished = Files.createDirectories(solrHome.resolve(RodaConstants.INDEX_RISK + "_2"));
+    Files.createFile(unfinished.resolve("core.properties"));
+    Path live = Files.createDirectories(solrHome.resolve(RodaConstants.INDEX_RISK));
+
+    ShadowCollectionManager.deleteStaleInstanceDirs(solrHome, Collections.singletonList(RodaConstants.INDEX_RISK));
+    Assert.assertFalse(Files.exists(completed));
+    Assert.assertTrue(Files.exists(unfinished));
+    Assert.assertTrue(Files.exists(live));
+  }
+
+  @Test
+  public void testAtomicUpdatesDoNotCreatePartialShadowDocuments() throws Exception {
+    ShadowCollectionManager shadowCollections = index.getShadowCollections();
+    Risk notRebuilt = createRisk("not rebuilt");
+    String shadow = shadowCollections.begin(RodaConstants.INDEX_RISK);
+    Risk live = createRisk("live");
+
+    Map<String, Map<String, Integer>> increments = new HashMap<>();
+    increments.put(notRebuilt.getId(), Collections.singletonMap(RodaConstants.RISK_INCIDENCES_COUNT, 1));
+    increments.put(live.getId(), Collections.singletonMap(RodaConstants.RISK_INCIDENCES_COUNT, 1));
+    Assert.assertTrue(
+      SolrUtils.incrementAll(RodaCoreFactory.getSolr(), IndexedRisk.class, increments, null).isEmpty());
+
+    SolrClient solr = RodaCoreFactory.getSolr();
+    solr.commit(shadow);
+    Assert.assertNull(solr.getById(shadow, notRebuilt.getId()));
+    Assert.assertEquals(solr.getById(shadow, live.getId()).getFieldValue(RodaConstants.RISK_INCIDENCES_COUNT), 1);
+    index.commit(IndexedRisk.class);
+    Assert.assertEquals(index.retrieve(IndexedRisk.class, notRebuilt.getId(), Collections.emptyList())
+      .getIncidencesCount(), 1);
+  }
+
+  @Test
+  public void testAbortKeepsLiveCollection() throws RODAException {
+    ShadowCollectionManager shadowCollections = index.getShadowCollections();
+    createRisk("kept");
+
+    shadowCollections.begin(RodaConstants.INDEX_RISK);
+    shadowCollections.abort(RodaConstants.INDEX_RISK);
+
+    Assert.assertFalse(shadowCollections.isRebuilding(RodaConstants.INDEX_RISK));
+    Assert.assertEquals(shadowCollections.getWriteTargets(RodaConstants.INDEX_RISK).size(), 1);
+    Assert.assertEquals(countRisks("kept"), 1L);
+  }
+
+  @Test
+  public void testRebuildFailuresAreTracked() throws RODAException {
+    ShadowCollectionManager shadowCollections = index.getShadowCollections();
+
+    // failures are only recorded while rebuilding
+    shadowCollections.recordRebuildFailure(RodaConstants.INDEX_RISK);
+    Assert.assertFalse(shadowCollections.hasRebuildFailures(RodaConstants.INDEX_RISK));
+
+    shadowCollections.begin(RodaConstants.INDEX_RISK);
+    shadowCollections.recordRebuildFailure(RodaConstants.INDEX_RISK);
+    Assert.assertTrue(shadowCollections.hasRebuildFailures(RodaConstants.INDEX_RISK));
+
+    // a new rebuild starts clean
+    shadowCollections.abort(RodaConstants.INDEX_RISK);
+    shadowCollections.begin(RodaConstants.INDEX_RISK);
+    Assert.assertFalse(shadowCollections.hasRebuildFailures(RodaConstants.INDEX_RISK));
+  }
+}
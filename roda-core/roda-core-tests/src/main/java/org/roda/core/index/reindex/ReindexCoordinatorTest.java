@@ -0,0 +1,170 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.index.reindex;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.TestsHelper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.v2.index.filter.Filter;
+import org.roda.core.data.v2.risks.IndexedRisk;
+import org.roda.core.data.v2.risks.Risk;
+import org.roda.core.data.v2.risks.Risk.SEVERITY_LEVEL;
+import org.roda.core.index.IndexService;
+import org.roda.core.model.ModelService;
+import org.roda.core.storage.fs.FSUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class ReindexCoordinatorTest {
+  private static final int NUMBER_OF_RISKS = 40;
+  private static final int NUMBER_OF_PARTITIONS = 4;
+  private static final int PARTITIONS_PER_COLLECTION = 2;
+
+  private static Path basePath;
+  private static ModelService model;
+  private static IndexService index;
+  private static List<Risk> risks = new ArrayList<>();
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    basePath = TestsHelper.createBaseTempDir(ReindexCoordinatorTest.class, true);
+
+    boolean deploySolr = true;
+    boolean deployLdap = false;
+    boolean deployFolderMonitor = false;
+    boolean deployOrchestrator = false;
+    boolean deployPluginManager = false;
+    boolean deployDefaultResources = false;
+    RodaCoreFactory.instantiateTest(deploySolr, deployLdap, deployFolderMonitor, deployOrchestrator,
+      deployPluginManager, deployDefaultResources);
+
+    model = RodaCoreFactory.getModelService();
+    index = RodaCoreFactory.getIndexService();
+
+    for (int i = 0; i < NUMBER_OF_RISKS; i++) {
+      Risk risk = new Risk();
+      risk.setName("risk " + i);
+      risk.setIdentifiedOn(new Date());
+      risk.setIdentifiedBy("admin");
+      risk.setCategories(Collections.singletonList("test"));
+      risk.setPreMitigationSeverityLevel(SEVERITY_LEVEL.HIGH);
+      risk.setCreatedOn(new Date());
+      risk.setCreatedBy("admin");
+      risk.setUpdatedOn(new Date());
+      risk.setUpdatedBy("admin");
+      risks.add(model.createRisk(risk, false));
+    }
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    RodaCoreFactory.shutdown();
+    FSUtils.deletePath(basePath);
+  }
+
+  @BeforeMethod
+  public void clearIndex() throws RODAException {
+    index.clearIndex(RodaConstants.INDEX_RISK);
+  }
+
+  private static ReindexCoordinator newCoordinator(ReindexCheckpoint checkpoint) {
+    return new ReindexCoordinator(index, model, checkpoint, NUMBER_OF_PARTITIONS, 2, PARTITIONS_PER_COLLECTION);
+  }
+
+  /**
+   * Risks are stored by id, so their partition is the hash of the id.
+   */
+  private static long countRisks(int partition) {
+    return risks.stream()
+      .filter(risk -> Math.floorMod(risk.getId().hashCode(), NUMBER_OF_PARTITIONS) == partition).count();
+  }
+
+  private static long countIndexedRisks() throws RODAException {
+    index.commit(IndexedRisk.class);
+    return index.count(IndexedRisk.class, Filter.ALL);
+  }
+
+  @Test
+  public void testEveryPartitionIsCheckpointedOnceCommitted() throws RODAException {
+    List<Integer> checkpointed = new ArrayList<>();
+    List<Long> indexedWhenCheckpointed = new ArrayList<>();
+    ReindexCheckpoint checkpoint = new ReindexCheckpoint(basePath.resolve("checkpoint1")) {
+      @Override
+      public synchronized void markCompleted(Class<?> objectClass, int partition) throws GenericException {
+        // the reindex is still running, so only search what was committed
+        try {
+          indexedWhenCheckpointed.add(index.count(IndexedRisk.class, Filter.ALL));
+        } catch (RequestNotValidException e) {
+          throw new GenericException(e);
+        }
+        checkpointed.add(partition);
+        super.markCompleted(objectClass, partition);
+      }
+    };
+
+    ReindexCoordinator coordinator = newCoordinator(checkpoint);
+    coordinator.reindex(Collections.singletonList(Risk.class));
+
+    Assert.assertEquals(coordinator.getSuccessCount(Risk.class), NUMBER_OF_RISKS);
+    Assert.assertEquals(coordinator.getFailureCount(Risk.class), 0);
+    Assert.assertEquals(countIndexedRisks(), NUMBER_OF_RISKS);
+    Assert.assertEquals(checkpointed.size(), NUMBER_OF_PARTITIONS);
+    for (int partition = 0; partition < NUMBER_OF_PARTITIONS; partition++) {
+      Assert.assertTrue(checkpoint.isCompleted(Risk.class, partition));
+    }
+
+    // the partitions of the first round were checkpointed with their risks
+    // committed and before the risks of the second round were reindexed
+    long firstRound = countRisks(0) + countRisks(1);
+    Assert.assertEquals(checkpointed.subList(0, PARTITIONS_PER_COLLECTION).stream().sorted().toArray(),
+      new Integer[] {0, 1});
+    Assert.assertEquals(indexedWhenCheckpointed.get(0).longValue(), firstRound);
+    Assert.assertEquals(indexedWhenCheckpointed.get(PARTITIONS_PER_COLLECTION).longValue(), NUMBER_OF_RISKS);
+  }
+
+  @Test
+  public void testResumeOnlyReindexesTheRemainingPartitions() throws RODAException {
+    Path checkpointFile = basePath.resolve("checkpoint2");
+    ReindexCheckpoint checkpoint = new ReindexCheckpoint(checkpointFile);
+    checkpoint.markCompleted(Risk.class, 0);
+    checkpoint.markCompleted(Risk.class, 2);
+
+    // loaded again from the file, as when resuming after a crash
+    ReindexCoordinator coordinator = newCoordinator(new ReindexCheckpoint(checkpointFile));
+    coordinator.reindex(Collections.singletonList(Risk.class));
+
+    long remaining = countRisks(1) + countRisks(3);
+    Assert.assertEquals(coordinator.getSuccessCount(Risk.class), remaining);
+    Assert.assertEquals(countIndexedRisks(), remaining);
+
+    ReindexCheckpoint resumed = new ReindexCheckpoint(checkpointFile);
+    for (int partition = 0; partition < NUMBER_OF_PARTITIONS; partition++) {
+      Assert.assertTrue(resumed.isCompleted(Risk.class, partition));
+    }
+
+    // nothing is left to reindex
+    clearIndex();
+    ReindexCoordinator completed = newCoordinator(resumed);
+    completed.reindex(Collections.singletonList(Risk.class));
+    Assert.assertEquals(completed.getSuccessCount(Risk.class), 0);
+    Assert.assertEquals(countIndexedRisks(), 0);
+  }
+}
@@ -0,0 +1,195 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.migration;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.roda.core.common.iterables.CloseableIterable;
+import org.roda.core.common.iterables.CloseableIterables;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.utils.JsonUtils;
+import org.roda.core.data.v2.IsModelObject;
+import org.roda.core.data.v2.ip.StoragePath;
+import org.roda.core.migration.ParallelMigration.MigrationEstimate;
+import org.roda.core.migration.model.RiskToVersion2;
+import org.roda.core.model.utils.ModelUtils;
+import org.roda.core.storage.DefaultStoragePath;
+import org.roda.core.storage.StorageService;
+import org.roda.core.storage.StringContentPayload;
+import org.roda.core.storage.fs.FSUtils;
+import org.roda.core.storage.fs.FileStorageService;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class ParallelMigrationTest {
+  private Path basePath;
+  private MetricRegistry metrics;
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    basePath = Files.createTempDirectory(ParallelMigrationTest.class.getSimpleName());
+    metrics = new MetricRegistry();
+  }
+
+  @AfterMethod
+  public void tearDown() throws Exception {
+    FSUtils.deletePath(basePath);
+  }
+
+  private static List<String> partitions(int count) {
+    return IntStream.range(0, count).mapToObj(i -> "p" + i).collect(Collectors.toList());
+  }
+
+  @Test
+  public void testPartitionsAreMigratedInParallel() throws GenericException {
+    TestMigration action = new TestMigration(partitions(200), 2);
+    ParallelMigration migration = new ParallelMigration(basePath, 4, 1, metrics);
+
+    migration.migrate(action, null, 2);
+
+    Assert.assertEquals(action.migrated, new HashSet<>(partitions(200)));
+    Assert.assertTrue(action.maxRunning.get() > 1, "max running: " + action.maxRunning.get());
+    Assert.assertTrue(action.maxRunning.get() <= 4, "max running: " + action.maxRunning.get());
+    Assert.assertEquals(metrics.meter(MetricRegistry.name(MigrationManager.class, "TestMigration", "migrated"))
+      .getCount(), 200L);
+    Assert.assertFalse(Files.exists(migration.getCheckpointFile(action, 2)));
+  }
+
+  @Test
+  public void testInterruptedMigrationResumes() throws GenericException, IOException {
+    TestMigration action = new TestMigration(partitions(50), 0);
+    action.failing.addAll(Arrays.asList("p5", "p7"));
+    ParallelMigration migration = new ParallelMigration(basePath, 3, 1, metrics);
+
+    try {
+      migration.migrate(action, null, 2);
+      Assert.fail("The failed partitions should have thrown an exception");
+    } catch (GenericException e) {
+      // expected
+    }
+    Assert.assertEquals(action.migrated.size(), 48);
+    Assert.assertEquals(Files.readAllLines(migration.getCheckpointFile(action, 2)).size(), 48);
+
+    action.failing.clear();
+    action.migrated.clear();
+    migration.migrate(action, null, 2);
+
+    Assert.assertEquals(action.migrated, new HashSet<>(Arrays.asList("p5", "p7")));
+    Assert.assertFalse(Files.exists(migration.getCheckpointFile(action, 2)));
+  }
+
+  @Test
+  public void testFailedItemIsNotCheckpointed() throws RODAException, IOException {
+    StorageService storage = new FileStorageService(basePath.resolve("storage"), false, null, false);
+    storage.createContainer(ModelUtils.getRiskContainerPath());
+    StoragePath validRisk = DefaultStoragePath.parse(ModelUtils.getRiskContainerPath(), "valid.json");
+    storage.createBinary(validRisk, new StringContentPayload("{\"id\":\"valid\",\"posMitigationNotes\":\"n\"}"),
+      false);
+    storage.createBinary(DefaultStoragePath.parse(ModelUtils.getRiskContainerPath(), "invalid.json"),
+      new StringContentPayload("[]"), false);
+
+    RiskToVersion2 action = new RiskToVersion2();
+    ParallelMigration migration = new ParallelMigration(basePath.resolve("migrations"), 2, 1, metrics);
+    try {
+      migration.migrate(action, storage, 2);
+      Assert.fail("The invalid risk should have failed the migration");
+    } catch (GenericException e) {
+      // expected
+    }
+
+    Assert.assertEquals(Files.readAllLines(migration.getCheckpointFile(action, 2)), Arrays.asList("valid.json"));
+    Assert.assertEquals(
+      metrics.counter(MetricRegistry.name(MigrationManager.class, "RiskToVersion2", "failed")).getCount(), 1L);
+    try (InputStream inputStream = storage.getBinary(validRisk).getContent().createInputStream()) {
+      Assert.assertTrue(JsonUtils.parseJson(inputStream).has("postMitigationNotes"));
+    }
+  }
+
+  @Test
+  public void testDryRunEstimatesWithoutMigrating() throws GenericException, IOException {
+    TestMigration action = new TestMigration(partitions(100), 5);
+    ParallelMigration migration = new ParallelMigration(basePath, 2, 1, metrics);
+    Files.write(migration.getCheckpointFile(action, 2), partitions(20));
+
+    MigrationEstimate estimate = migration.estimate(action, null, 2, 10);
+
+    Assert.assertTrue(action.migrated.isEmpty());
+    Assert.assertEquals(action.dryRuns.get(), 10);
+    Assert.assertEquals(estimate.getMigratedPartitions(), 20);
+    Assert.assertEquals(estimate.getPendingPartitions(), 80);
+    Assert.assertEquals(estimate.getSampledPartitions(), 10);
+    // 80 partitions taking 5ms each, in 2 threads
+    Assert.assertTrue(estimate.getEstimatedDurationInMillis() >= 150,
+      "estimated: " + estimate.getEstimatedDurationInMillis());
+  }
+
+  private static class TestMigration implements PartitionedMigrationAction<IsModelObject> {
+    private final List<String> partitions;
+    private final long durationInMillis;
+    private final Set<String> migrated = ConcurrentHashMap.newKeySet();
+    private final Set<String> failing = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger dryRuns = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+
+    public TestMigration(List<String> partitions, long durationInMillis) {
+      this.partitions = partitions;
+      this.durationInMillis = durationInMillis;
+    }
+
+    @Override
+    public CloseableIterable<String> listPartitions(StorageService storage) {
+      return CloseableIterables.fromList(new ArrayList<>(partitions));
+    }
+
+    @Override
+    public void migrate(StorageService storage, String partition, boolean dryRun) throws RODAException {
+      maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+      try {
+        Thread.sleep(durationInMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        running.decrementAndGet();
+      }
+
+      if (failing.contains(partition)) {
+        throw new GenericException("failing " + partition);
+      }
+      if (dryRun) {
+        dryRuns.incrementAndGet();
+      } else {
+        migrated.add(partition);
+      }
+    }
+
+    @Override
+    public boolean isToVersionValid(int toVersion) {
+      return toVersion == 2;
+    }
+  }
+}
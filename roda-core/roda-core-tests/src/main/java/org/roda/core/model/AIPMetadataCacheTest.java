@@ -0,0 +1,156 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.model;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.utils.JsonUtils;
+import org.roda.core.data.v2.ip.AIP;
+import org.roda.core.data.v2.ip.AIPState;
+import org.roda.core.data.v2.ip.Permissions;
+import org.roda.core.data.v2.ip.Permissions.PermissionType;
+import org.roda.core.data.v2.ip.Representation;
+import org.roda.core.data.v2.ip.StoragePath;
+import org.roda.core.model.utils.AIPMetadataCache;
+import org.roda.core.model.utils.ModelUtils;
+import org.roda.core.storage.DefaultStoragePath;
+import org.roda.core.storage.StorageService;
+import org.roda.core.storage.StringContentPayload;
+import org.roda.core.storage.fs.FSUtils;
+import org.roda.core.storage.fs.FileStorageService;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class AIPMetadataCacheTest {
+  private static final String AIP_ID = "aip-cache-test";
+
+  private Path basePath;
+  private StorageService storage;
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    basePath = Files.createTempDirectory(getClass().getSimpleName());
+    storage = new FileStorageService(basePath.resolve("storage"), false, null, false);
+    storage.createContainer(DefaultStoragePath.parse(RodaConstants.STORAGE_CONTAINER_AIP));
+    storage.createDirectory(ModelUtils.getAIPStoragePath(AIP_ID));
+    writeAIP("first");
+  }
+
+  @AfterMethod
+  public void tearDown() throws Exception {
+    FSUtils.deletePath(basePath);
+  }
+
+  private void writeAIP(String type) throws RODAException {
+    AIP aip = new AIP(AIP_ID, null, type, AIPState.ACTIVE, new Permissions());
+    aip.getPermissions().setUserPermissions("admin", Collections.singleton(PermissionType.READ));
+    aip.getRepresentations().add(new Representation("rep1", AIP_ID, true, "MIXED"));
+    storage.updateBinaryContent(getMetadataStoragePath(), new StringContentPayload(JsonUtils.getJsonFromObject(aip)),
+      false, true);
+  }
+
+  private StoragePath getMetadataStoragePath() throws RODAException {
+    return DefaultStoragePath.parse(ModelUtils.getAIPStoragePath(AIP_ID), RodaConstants.STORAGE_AIP_METADATA_FILENAME);
+  }
+
+  /**
+   * Makes the last write old enough to be cached.
+   */
+  private void settle() throws IOException, RODAException {
+    Path metadataPath = ((FileStorageService) storage).resolve(getMetadataStoragePath());
+    Files.setLastModifiedTime(metadataPath,
+      FileTime.fromMillis(System.currentTimeMillis() - 2 * AIPMetadataCache.SETTLE_TIME_IN_MILLIS));
+  }
+
+  @Test
+  public void testHitsReturnIndependentCopies() throws IOException, RODAException {
+    MetricRegistry metrics = new MetricRegistry();
+    AIPMetadataCache cache = new AIPMetadataCache(metrics, AIPMetadataCache.DEFAULT_MAX_SIZE_IN_BYTES, 60000);
+    settle();
+
+    AIP first = cache.get(storage, AIP_ID);
+    first.setType("changed by caller");
+    first.getPermissions().getUsers().get(PermissionType.READ).add("changed by caller");
+    first.getRepresentations().get(0).setType("changed by caller");
+    first.getRepresentations().add(new Representation("rep2", AIP_ID, false, "MIXED"));
+    first.getCreatedOn().setTime(0);
+    AIP second = cache.get(storage, AIP_ID);
+    AIP third = cache.get(storage, AIP_ID);
+
+    Assert.assertNotSame(second, first);
+    Assert.assertNotSame(third, second);
+    Assert.assertEquals(second.getId(), AIP_ID);
+    Assert.assertEquals(second.getType(), "first");
+    Assert.assertEquals(second.getPermissions().getUsers().get(PermissionType.READ), Collections.singleton("admin"));
+    Assert.assertEquals(second.getRepresentations().size(), 1);
+    Assert.assertEquals(second.getRepresentations().get(0).getType(), "MIXED");
+    Assert.assertNotEquals(second.getCreatedOn().getTime(), 0L);
+    Assert.assertEquals(metrics.counter("AIPMetadataCache.hits").getCount(), 2);
+    Assert.assertEquals(metrics.counter("AIPMetadataCache.misses").getCount(), 1);
+  }
+
+  @Test
+  public void testWritesOutsideTheCacheAreSeen() throws IOException, RODAException {
+    MetricRegistry metrics = new MetricRegistry();
+    AIPMetadataCache cache = new AIPMetadataCache(metrics, AIPMetadataCache.DEFAULT_MAX_SIZE_IN_BYTES, 60000);
+    settle();
+    Assert.assertEquals(cache.get(storage, AIP_ID).getType(), "first");
+    Assert.assertEquals(cache.get(storage, AIP_ID).getType(), "first");
+
+    // same size, written without invalidating the cache
+    writeAIP("other");
+    Assert.assertEquals(cache.get(storage, AIP_ID).getType(), "other");
+    Assert.assertEquals(metrics.counter("AIPMetadataCache.hits").getCount(), 1);
+    Assert.assertEquals(metrics.counter("AIPMetadataCache.misses").getCount(), 2);
+  }
+
+  @Test
+  public void testRecentWritesAreNotCached() throws RODAException {
+    MetricRegistry metrics = new MetricRegistry();
+    AIPMetadataCache cache = new AIPMetadataCache(metrics, AIPMetadataCache.DEFAULT_MAX_SIZE_IN_BYTES, 60000);
+    Assert.assertEquals(cache.get(storage, AIP_ID).getType(), "first");
+    Assert.assertEquals(cache.get(storage, AIP_ID).getType(), "first");
+    Assert.assertEquals(metrics.counter("AIPMetadataCache.hits").getCount(), 0);
+  }
+
+  @Test
+  public void testInvalidationAfterWrite() throws IOException, RODAException {
+    AIPMetadataCache cache = new AIPMetadataCache(new MetricRegistry(), AIPMetadataCache.DEFAULT_MAX_SIZE_IN_BYTES,
+      60000);
+    settle();
+    Assert.assertEquals(cache.get(storage, AIP_ID).getType(), "first");
+
+    writeAIP("second");
+    settle();
+    cache.invalidate(AIP_ID);
+    Assert.assertEquals(cache.get(storage, AIP_ID).getType(), "second");
+  }
+
+  @Test(expectedExceptions = NotFoundException.class)
+  public void testDeletedAIPsAreNotReturned() throws IOException, RODAException {
+    AIPMetadataCache cache = new AIPMetadataCache(new MetricRegistry(), AIPMetadataCache.DEFAULT_MAX_SIZE_IN_BYTES,
+      60000);
+    settle();
+    cache.get(storage, AIP_ID);
+
+    storage.deleteResource(getMetadataStoragePath());
+    cache.get(storage, AIP_ID);
+  }
+}
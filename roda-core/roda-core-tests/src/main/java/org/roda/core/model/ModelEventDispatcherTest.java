@@ -0,0 +1,225 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.model;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.ReturnWithExceptions;
+import org.roda.core.data.v2.ip.AIP;
+import org.roda.core.data.v2.ip.AIPState;
+import org.roda.core.data.v2.ip.Permissions;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class ModelEventDispatcherTest {
+
+  @FunctionalInterface
+  private interface AipDeletedHandler {
+    ReturnWithExceptions<Void, ModelObserver> handle(String aipId) throws Exception;
+  }
+
+  /**
+   * Observer that handles {@link ModelObserver#aipDeleted(String, boolean)}
+   * and ignores the other events.
+   */
+  private static ModelObserver observer(AipDeletedHandler handler) {
+    return (ModelObserver) Proxy.newProxyInstance(ModelObserver.class.getClassLoader(),
+      new Class<?>[] {ModelObserver.class}, (proxy, method, args) -> {
+        if ("aipDeleted".equals(method.getName())) {
+          return handler.handle((String) args[0]);
+        }
+        return null;
+      });
+  }
+
+  private static void aipDeleted(ModelEventDispatcher dispatcher, ModelObserver observer, String partition,
+    String aipId) {
+    Assert.assertTrue(
+      dispatcher.dispatch(partition, Collections.singletonList(observer), o -> o.aipDeleted(aipId, true)));
+  }
+
+  @Test
+  public void testEventsOfAPartitionKeepTheirOrder() {
+    Map<String, List<Integer>> received = new ConcurrentHashMap<>();
+    ModelObserver observer = observer(aipId -> {
+      String[] event = aipId.split(":");
+      received.computeIfAbsent(event[0], k -> Collections.synchronizedList(new ArrayList<>()))
+        .add(Integer.parseInt(event[1]));
+      return null;
+    });
+
+    try (ModelEventDispatcher dispatcher = new ModelEventDispatcher(4, 10, 10)) {
+      for (int i = 0; i < 500; i++) {
+        for (int p = 0; p < 10; p++) {
+          aipDeleted(dispatcher, observer, "aip" + p, "aip" + p + ":" + i);
+        }
+      }
+      dispatcher.flush();
+
+      Assert.assertEquals(received.size(), 10);
+      for (List<Integer> events : received.values()) {
+        Assert.assertEquals(events.size(), 500);
+        for (int i = 0; i < events.size(); i++) {
+          Assert.assertEquals(events.get(i).intValue(), i);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testFlushWaitsForDispatchedEvents() throws InterruptedException {
+    List<String> handled = Collections.synchronizedList(new ArrayList<>());
+    ModelObserver slowObserver = observer(aipId -> {
+      Thread.sleep(2);
+      handled.add(aipId);
+      return null;
+    });
+
+    try (ModelEventDispatcher dispatcher = new ModelEventDispatcher(2, 100, 10)) {
+      for (int i = 0; i < 50; i++) {
+        aipDeleted(dispatcher, slowObserver, "aip" + i, "aip" + i);
+      }
+      dispatcher.flush();
+      Assert.assertEquals(handled.size(), 50);
+
+      aipDeleted(dispatcher, slowObserver, "aip", "aip");
+      Assert.assertTrue(dispatcher.awaitQuiescence(10, TimeUnit.SECONDS));
+      Assert.assertEquals(handled.size(), 51);
+    }
+  }
+
+  @Test
+  public void testFullQueueMakesDispatchWait() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    ModelObserver blockedObserver = observer(aipId -> {
+      release.await();
+      return null;
+    });
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try (ModelEventDispatcher dispatcher = new ModelEventDispatcher(1, 1, 10)) {
+      // one event being handled and one waiting in the queue
+      aipDeleted(dispatcher, blockedObserver, "aip", "aip1");
+      aipDeleted(dispatcher, blockedObserver, "aip", "aip2");
+
+      Future<?> third = executor.submit(() -> aipDeleted(dispatcher, blockedObserver, "aip", "aip3"));
+      try {
+        third.get(200, TimeUnit.MILLISECONDS);
+        Assert.fail("Dispatch should wait while the queue is full");
+      } catch (TimeoutException e) {
+        // expected
+      }
+
+      release.countDown();
+      third.get(10, TimeUnit.SECONDS);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testFailedEventsAreKeptAndRetried() {
+    Map<String, Boolean> failing = new ConcurrentHashMap<>();
+    List<String> handled = Collections.synchronizedList(new ArrayList<>());
+    ModelObserver observer = observer(aipId -> {
+      if (failing.containsKey(aipId)) {
+        if (failing.get(aipId)) {
+          throw new IllegalStateException("failing " + aipId);
+        }
+        return new ReturnWithExceptions<Void, ModelObserver>().add(new IllegalStateException("failing " + aipId));
+      }
+      handled.add(aipId);
+      return null;
+    });
+    failing.put("aip1", true);
+    failing.put("aip3", false);
+
+    try (ModelEventDispatcher dispatcher = new ModelEventDispatcher(2, 10, 10)) {
+      for (int i = 0; i < 5; i++) {
+        aipDeleted(dispatcher, observer, "aip" + i, "aip" + i);
+      }
+      dispatcher.flush();
+
+      Assert.assertEquals(handled.size(), 3);
+      List<ModelEventDispatcher.DeadLetter> deadLetters = dispatcher.getDeadLetters();
+      Assert.assertEquals(deadLetters.size(), 2);
+      for (ModelEventDispatcher.DeadLetter deadLetter : deadLetters) {
+        Assert.assertEquals(deadLetter.getObserver(), observer);
+        Assert.assertEquals(deadLetter.getExceptions().size(), 1);
+      }
+
+      failing.clear();
+      Assert.assertEquals(dispatcher.retryDeadLetters(), 2);
+      dispatcher.flush();
+      Assert.assertEquals(handled.size(), 5);
+      Assert.assertTrue(dispatcher.getDeadLetters().isEmpty());
+    }
+  }
+
+  @Test
+  public void testObserversGetACopyOfTheNotifiedObject() throws InterruptedException {
+    CountDownLatch release = new CountDownLatch(1);
+    List<AIPState> states = Collections.synchronizedList(new ArrayList<>());
+    ModelObserver observer = (ModelObserver) Proxy.newProxyInstance(ModelObserver.class.getClassLoader(),
+      new Class<?>[] {ModelObserver.class}, (proxy, method, args) -> {
+        if ("aipUpdated".equals(method.getName())) {
+          release.await();
+          states.add(((AIP) args[0]).getState());
+        }
+        return null;
+      });
+
+    ModelObservable observable = new ModelObservable(LoggerFactory.getLogger(ModelEventDispatcherTest.class)) {
+    };
+    observable.addModelObserver(observer);
+    try (ModelEventDispatcher dispatcher = new ModelEventDispatcher(1, 10, 10)) {
+      observable.setModelEventDispatcher(dispatcher);
+      AIP aip = new AIP("aip", null, "", AIPState.UNDER_APPRAISAL, new Permissions());
+      observable.notifyAipUpdated(aip);
+
+      // changed by the caller before the observer handles the event
+      aip.setState(AIPState.ACTIVE);
+      release.countDown();
+      observable.flush();
+
+      Assert.assertEquals(states, Collections.singletonList(AIPState.UNDER_APPRAISAL));
+    }
+  }
+
+  @Test
+  public void testClosedDispatcherRejectsEvents() {
+    List<String> handled = Collections.synchronizedList(new ArrayList<>());
+    ModelObserver observer = observer(aipId -> {
+      handled.add(aipId);
+      return null;
+    });
+
+    ModelEventDispatcher dispatcher = new ModelEventDispatcher(2, 10, 10);
+    aipDeleted(dispatcher, observer, "aip1", "aip1");
+    dispatcher.close();
+
+    // pending events are sent when closing
+    Assert.assertEquals(handled.size(), 1);
+    Assert.assertFalse(
+      dispatcher.dispatch("aip2", Collections.singletonList(observer), o -> o.aipDeleted("aip2", true)));
+  }
+}
@@ -0,0 +1,129 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.TestsHelper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.index.filter.Filter;
+import org.roda.core.data.v2.index.filter.SimpleFilterParameter;
+import org.roda.core.data.v2.index.select.SelectedItemsList;
+import org.roda.core.data.v2.ip.AIP;
+import org.roda.core.data.v2.ip.AIPState;
+import org.roda.core.data.v2.ip.Permissions;
+import org.roda.core.data.v2.ip.metadata.IndexedPreservationEvent;
+import org.roda.core.data.v2.jobs.Job;
+import org.roda.core.data.v2.jobs.PluginType;
+import org.roda.core.data.v2.jobs.Report;
+import org.roda.core.index.IndexService;
+import org.roda.core.model.ModelService;
+import org.roda.core.plugins.plugins.internal.AppraisalPlugin;
+import org.roda.core.storage.fs.FSUtils;
+import org.roda.core.util.IdUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.AssertJUnit;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class AppraisalPluginTest {
+  private static final Logger LOGGER = LoggerFactory.getLogger(AppraisalPluginTest.class);
+
+  private static Path basePath;
+
+  private static ModelService model;
+  private static IndexService index;
+
+  @BeforeClass
+  public void setUp() throws Exception {
+    basePath = TestsHelper.createBaseTempDir(getClass(), true);
+
+    boolean deploySolr = true;
+    boolean deployLdap = true;
+    boolean deployFolderMonitor = true;
+    boolean deployOrchestrator = true;
+    boolean deployPluginManager = true;
+    boolean deployDefaultResources = false;
+    RodaCoreFactory.instantiateTest(deploySolr, deployLdap, deployFolderMonitor, deployOrchestrator,
+      deployPluginManager, deployDefaultResources);
+    model = RodaCoreFactory.getModelService();
+    index = RodaCoreFactory.getIndexService();
+
+    LOGGER.info("Running '{}' tests under storage {}", getClass().getName(), basePath);
+  }
+
+  @AfterClass
+  public void tearDown() throws Exception {
+    RodaCoreFactory.shutdown();
+    FSUtils.deletePath(basePath);
+  }
+
+  @Test
+  public void testReject() throws RODAException {
+    // ingest job that left one AIP waiting for appraisal
+    Job ingestJob = new Job();
+    ingestJob.setId(IdUtils.createUUID());
+    ingestJob.setName("Ingest");
+    ingestJob.setPluginType(PluginType.INGEST);
+    ingestJob.setUsername(RodaConstants.ADMIN);
+    ingestJob.getJobStats().setSourceObjectsProcessedWithSuccess(1).setOutcomeObjectsWithManualIntervention(1);
+    model.createJob(ingestJob);
+
+    String sipUUID = IdUtils.createUUID();
+    AIP aip = model.createAIP(AIPState.UNDER_APPRAISAL, null, "", new Permissions(), sipUUID,
+      Arrays.asList("sip.zip"), ingestJob.getId(), true, RodaConstants.ADMIN);
+
+    Report ingestReport = new Report();
+    ingestReport.setJobId(ingestJob.getId());
+    ingestReport.setSourceObjectId(sipUUID);
+    ingestReport.setOutcomeObjectId(aip.getId());
+    ingestReport.setId(IdUtils.getJobReportId(ingestJob.getId(), sipUUID, aip.getId()));
+    model.createOrUpdateJobReport(ingestReport, ingestJob);
+    index.commitAIPs();
+
+    // reject it
+    Map<String, String> parameters = new HashMap<>();
+    parameters.put(RodaConstants.PLUGIN_PARAMS_ACCEPT, "false");
+    parameters.put(RodaConstants.PLUGIN_PARAMS_REJECT_REASON, "Out of scope");
+    Job job = TestsHelper.executeJob(AppraisalPlugin.class, parameters, PluginType.INTERNAL,
+      SelectedItemsList.create(AIP.class, aip.getId()));
+    TestsHelper.getJobReports(index, job, true);
+
+    try {
+      model.retrieveAIP(aip.getId());
+      AssertJUnit.fail("Rejected AIP should have been deleted");
+    } catch (NotFoundException e) {
+      // expected
+    }
+
+    Job updatedIngestJob = model.retrieveJob(ingestJob.getId());
+    AssertJUnit.assertEquals(0, updatedIngestJob.getJobStats().getSourceObjectsProcessedWithSuccess());
+    AssertJUnit.assertEquals(1, updatedIngestJob.getJobStats().getSourceObjectsProcessedWithFailure());
+    AssertJUnit.assertEquals(0, updatedIngestJob.getJobStats().getOutcomeObjectsWithManualIntervention());
+
+    Report updatedIngestReport = model.retrieveJobReport(ingestJob.getId(), sipUUID, aip.getId());
+    AssertJUnit.assertEquals(1, updatedIngestReport.getReports().size());
+    AssertJUnit.assertEquals(AIPState.DELETED, updatedIngestReport.getReports().get(0).getOutcomeObjectState());
+
+    // the appraisal event is indexed even though its AIP no longer exists
+    index.commit(IndexedPreservationEvent.class);
+    AssertJUnit.assertEquals(1L, (long) index.count(IndexedPreservationEvent.class,
+      new Filter(new SimpleFilterParameter(RodaConstants.PRESERVATION_EVENT_AIP_ID, aip.getId()),
+        new SimpleFilterParameter(RodaConstants.PRESERVATION_EVENT_TYPE,
+          RodaConstants.PreservationEventType.APPRAISAL.toString()))));
+  }
+}
@@ -125,7 +125,7 @@ public class EARKSIPPluginsTest {
     TestsHelper.releaseAllLocks();
   }
 
-  private static TransferredResource createIngestCorpora(Path corporaPath, IndexService index, String sipFileInCorpora,
+  static TransferredResource createIngestCorpora(Path corporaPath, IndexService index, String sipFileInCorpora,
     String renameSipFileTo) throws IOException, NotFoundException, GenericException, IsStillUpdatingException,
     AlreadyExistsException, AuthorizationDeniedException {
     TransferredResourcesScanner f = RodaCoreFactory.getTransferredResourcesScanner();
@@ -0,0 +1,174 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.roda.core.CorporaConstants;
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.TestsHelper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.index.IndexResult;
+import org.roda.core.data.v2.index.filter.Filter;
+import org.roda.core.data.v2.index.filter.SimpleFilterParameter;
+import org.roda.core.data.v2.index.select.SelectedItemsList;
+import org.roda.core.data.v2.index.sublist.Sublist;
+import org.roda.core.data.v2.ip.AIP;
+import org.roda.core.data.v2.ip.Permissions;
+import org.roda.core.data.v2.ip.TransferredResource;
+import org.roda.core.data.v2.ip.metadata.IndexedPreservationEvent;
+import org.roda.core.data.v2.jobs.Job;
+import org.roda.core.data.v2.jobs.JobStats;
+import org.roda.core.data.v2.jobs.PluginType;
+import org.roda.core.data.v2.jobs.Report;
+import org.roda.core.index.IndexService;
+import org.roda.core.model.ModelService;
+import org.roda.core.plugins.plugins.ingest.MinimalIngestPlugin;
+import org.roda.core.storage.fs.FSUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Ingests the same SIPs step by step and in pipeline mode, which must give the
+ * same job reports and preservation events.
+ */
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class IngestPipelineTest {
+  private static final String PIPELINE_ENABLED_PROPERTY = "core.ingest.pipeline.enabled";
+  private static final int SUCCESSFUL_SIPS = 2;
+
+  private Path basePath;
+
+  private ModelService model;
+  private IndexService index;
+
+  private Path corporaPath;
+
+  @BeforeClass
+  public void setUp() throws Exception {
+    basePath = TestsHelper.createBaseTempDir(getClass(), true);
+
+    boolean deploySolr = true;
+    boolean deployLdap = true;
+    boolean deployFolderMonitor = true;
+    boolean deployOrchestrator = true;
+    boolean deployPluginManager = true;
+    boolean deployDefaultResources = false;
+    RodaCoreFactory.instantiateTest(deploySolr, deployLdap, deployFolderMonitor, deployOrchestrator,
+      deployPluginManager, deployDefaultResources);
+    model = RodaCoreFactory.getModelService();
+    index = RodaCoreFactory.getIndexService();
+
+    URL corporaURL = IngestPipelineTest.class.getResource("/corpora");
+    corporaPath = Paths.get(corporaURL.toURI());
+  }
+
+  @AfterClass
+  public void tearDown() throws Exception {
+    RodaCoreFactory.shutdown();
+    FSUtils.deletePath(basePath);
+  }
+
+  @AfterMethod
+  public void cleanUp() {
+    RodaCoreFactory.getRodaConfiguration().clearProperty(PIPELINE_ENABLED_PROPERTY);
+    TestsHelper.releaseAllLocks();
+  }
+
+  @Test
+  public void testPipelineGivesTheSameReportsAndEvents() throws RODAException, IOException {
+    IngestOutcome stepByStep = ingest(false);
+    IngestOutcome pipelined = ingest(true);
+
+    Assert.assertEquals(stepByStep.aips, SUCCESSFUL_SIPS);
+    Assert.assertEquals(stepByStep.stats, "2/1/0/3");
+    Assert.assertEquals(pipelined.aips, stepByStep.aips);
+    Assert.assertEquals(pipelined.stats, stepByStep.stats);
+    Assert.assertEquals(pipelined.reports, stepByStep.reports);
+    Assert.assertEquals(pipelined.events, stepByStep.events);
+  }
+
+  /**
+   * Ingests two SIPs that succeed and an update SIP with no AIP to update,
+   * which fails.
+   */
+  private IngestOutcome ingest(boolean pipeline) throws RODAException, IOException {
+    RodaCoreFactory.getRodaConfiguration().setProperty(PIPELINE_ENABLED_PROPERTY, pipeline);
+    String prefix = pipeline ? "pipelined_" : "step_by_step_";
+
+    List<String> resourceIds = new ArrayList<>();
+    for (int i = 0; i < SUCCESSFUL_SIPS; i++) {
+      resourceIds.add(EARKSIPPluginsTest
+        .createIngestCorpora(corporaPath, index, CorporaConstants.EARK_SIP, prefix + i + ".zip").getUUID());
+    }
+    resourceIds
+      .add(EARKSIPPluginsTest.createIngestUpdateCorpora(corporaPath, index, prefix + "update.zip").getUUID());
+
+    AIP root = model.createAIP(null, RodaConstants.AIP_TYPE_MIXED, new Permissions(), RodaConstants.ADMIN);
+    Map<String, String> parameters = new HashMap<>();
+    parameters.put(RodaConstants.PLUGIN_PARAMS_PARENT_ID, root.getId());
+    parameters.put(RodaConstants.PLUGIN_PARAMS_FORCE_PARENT_ID, "true");
+
+    Job job = TestsHelper.executeJob(MinimalIngestPlugin.class, parameters, PluginType.SIP_TO_AIP,
+      SelectedItemsList.create(TransferredResource.class, resourceIds));
+    index.commitAIPs();
+    index.commit(IndexedPreservationEvent.class);
+
+    IngestOutcome outcome = new IngestOutcome();
+    JobStats stats = job.getJobStats();
+    outcome.stats = stats.getSourceObjectsProcessedWithSuccess() + "/" + stats.getSourceObjectsProcessedWithFailure()
+      + "/" + stats.getSourceObjectsBeingProcessed() + "/" + stats.getSourceObjectsCount();
+
+    for (Report report : TestsHelper.getJobReports(index, job, false)) {
+      outcome.reports.add(describe(report));
+      if (!Report.NO_OUTCOME_OBJECT_ID.equals(report.getOutcomeObjectId())) {
+        outcome.aips++;
+        outcome.events.add(listEventTypes(report.getOutcomeObjectId()));
+      }
+    }
+    Collections.sort(outcome.reports);
+    Collections.sort(outcome.events);
+    return outcome;
+  }
+
+  /**
+   * @return the report without the ids, which differ between ingests
+   */
+  private static String describe(Report report) {
+    return report.getPluginState() + " " + report.getReports().stream()
+      .map(item -> item.getTitle() + "=" + item.getPluginState()).collect(Collectors.joining(", "));
+  }
+
+  private String listEventTypes(String aipId) throws RODAException {
+    IndexResult<IndexedPreservationEvent> events = index.find(IndexedPreservationEvent.class,
+      new Filter(new SimpleFilterParameter(RodaConstants.PRESERVATION_EVENT_AIP_ID, aipId)), null,
+      new Sublist(0, 100), Collections.emptyList());
+    return events.getResults().stream().map(IndexedPreservationEvent::getEventType).sorted()
+      .collect(Collectors.joining(", "));
+  }
+
+  private static class IngestOutcome {
+    private int aips = 0;
+    private String stats;
+    private final List<String> reports = new ArrayList<>();
+    private final List<String> events = new ArrayList<>();
+  }
+}
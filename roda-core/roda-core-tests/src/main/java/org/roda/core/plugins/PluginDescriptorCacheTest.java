@@ -0,0 +1,127 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.v2.ip.AIP;
+import org.roda.core.data.v2.ip.IndexedAIP;
+import org.roda.core.data.v2.jobs.PluginInfo;
+import org.roda.core.data.v2.jobs.PluginParameter;
+import org.roda.core.data.v2.jobs.PluginParameter.PluginParameterType;
+import org.roda.core.data.v2.jobs.PluginType;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class PluginDescriptorCacheTest {
+
+  private Path dir;
+  private Path file;
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("plugin-descriptors");
+    file = dir.resolve("plugin-descriptors.json");
+  }
+
+  @AfterMethod
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(dir.toFile());
+  }
+
+  private static PluginInfo createPluginInfo(String id) {
+    PluginParameter parameter = new PluginParameter("param", "Parameter", PluginParameterType.BOOLEAN, "true", true,
+      false, "A parameter");
+    PluginInfo pluginInfo = new PluginInfo(id, "Plugin " + id, "1.0", "A plugin", PluginType.AIP_TO_AIP,
+      Arrays.asList(RodaConstants.PLUGIN_CATEGORY_CHARACTERIZATION), Arrays.asList(parameter));
+    pluginInfo.addObjectClass(AIP.class.getName());
+    pluginInfo.addObjectClass(IndexedAIP.class.getName());
+    return pluginInfo;
+  }
+
+  @Test
+  public void testDescriptorsArePersisted() {
+    PluginDescriptorCache cache = new PluginDescriptorCache(file);
+    Assert.assertNull(cache.get("hash1"));
+    cache.put("hash1", Arrays.asList(createPluginInfo("org.example.PluginA"), createPluginInfo("org.example.PluginB")));
+    cache.save();
+
+    PluginDescriptorCache reloaded = new PluginDescriptorCache(file);
+    List<PluginInfo> descriptors = reloaded.get("hash1");
+    Assert.assertNotNull(descriptors);
+    Assert.assertEquals(descriptors.size(), 2);
+    PluginInfo pluginInfo = descriptors.get(0);
+    Assert.assertEquals(pluginInfo.getId(), "org.example.PluginA");
+    Assert.assertEquals(pluginInfo.getVersion(), "1.0");
+    Assert.assertEquals(pluginInfo.getType(), PluginType.AIP_TO_AIP);
+    Assert.assertEquals(pluginInfo.getCategories(),
+      Collections.singletonList(RodaConstants.PLUGIN_CATEGORY_CHARACTERIZATION));
+    Assert.assertEquals(pluginInfo.getParameters().get(0).getType(), PluginParameterType.BOOLEAN);
+    Assert.assertEquals(pluginInfo.getParameters().get(0).getDefaultValue(), "true");
+    Assert.assertTrue(pluginInfo.getObjectClasses().contains(IndexedAIP.class.getName()));
+  }
+
+  @Test
+  public void testRemovedJarsAreForgotten() {
+    PluginDescriptorCache cache = new PluginDescriptorCache(file);
+    cache.put("hash1", Collections.singletonList(createPluginInfo("org.example.PluginA")));
+    cache.put("hash2", Collections.singletonList(createPluginInfo("org.example.PluginB")));
+    cache.retainAll(Collections.singleton("hash2"));
+    cache.save();
+
+    PluginDescriptorCache reloaded = new PluginDescriptorCache(file);
+    Assert.assertEquals(reloaded.size(), 1);
+    Assert.assertNull(reloaded.get("hash1"));
+    Assert.assertNotNull(reloaded.get("hash2"));
+  }
+
+  @Test
+  public void testUnchangedDescriptorsAreNotRewritten() throws IOException {
+    PluginDescriptorCache cache = new PluginDescriptorCache(file);
+    cache.put("hash1", Collections.singletonList(createPluginInfo("org.example.PluginA")));
+    cache.save();
+    FileTime written = FileTime.fromMillis(0);
+    Files.setLastModifiedTime(file, written);
+
+    PluginDescriptorCache reloaded = new PluginDescriptorCache(file);
+    reloaded.retainAll(Collections.singleton("hash1"));
+    reloaded.save();
+    Assert.assertEquals(Files.getLastModifiedTime(file), written);
+  }
+
+  @Test
+  public void testCorruptedFileIsIgnored() throws IOException {
+    Files.write(file, "{ not json".getBytes(StandardCharsets.UTF_8));
+
+    PluginDescriptorCache cache = new PluginDescriptorCache(file);
+    Assert.assertEquals(cache.size(), 0);
+    cache.put("hash1", Collections.singletonList(createPluginInfo("org.example.PluginA")));
+    cache.save();
+    Assert.assertEquals(new PluginDescriptorCache(file).size(), 1);
+  }
+
+  @Test
+  public void testInMemoryCache() {
+    PluginDescriptorCache cache = new PluginDescriptorCache(null);
+    cache.put("hash1", Collections.singletonList(createPluginInfo("org.example.PluginA")));
+    cache.save();
+    Assert.assertEquals(cache.size(), 1);
+  }
+}
@@ -0,0 +1,139 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.orchestrate;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.TestsHelper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.AcquireLockTimeoutException;
+import org.roda.core.data.exceptions.LockingException;
+import org.roda.core.data.exceptions.NotLockableAtTheTimeException;
+import org.roda.core.plugins.orchestrate.akka.distributed.AkkaDistributedPlugin;
+import org.roda.core.storage.fs.FSUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigUtil;
+
+import akka.actor.ActorSystem;
+import akka.cluster.Cluster;
+import akka.cluster.Member;
+import akka.cluster.MemberStatus;
+
+/**
+ * Runs two backend nodes of the distributed orchestrator in this JVM.
+ */
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class AkkaDistributedPluginOrchestratorTest {
+  private static final int LOCK_REQUEST_TIMEOUT = 30;
+  private static final long TIMEOUT_IN_MILLIS = 60000;
+
+  private static Path basePath;
+  private static AkkaDistributedPluginOrchestrator orchestratorA;
+  private static AkkaDistributedPluginOrchestrator orchestratorB;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    basePath = TestsHelper.createBaseTempDir(AkkaDistributedPluginOrchestratorTest.class, true);
+    RodaCoreFactory.instantiateTest(false, false, false, false, false, false);
+
+    Config config = ConfigFactory
+      .parseString("akka.cluster.roles = [backend]\n" + "akka.remote.netty.tcp.hostname = \"127.0.0.1\"\n"
+        + "akka.remote.netty.tcp.port = 0\n" + "akka.persistence.journal.plugin = \"akka.persistence.journal.inmem\"\n"
+        + "akka.persistence.snapshot-store.local.dir = "
+        + ConfigUtil.quoteString(basePath.resolve("snapshots").toString()) + "\n" + "akka.loglevel = ERROR\n"
+        + "akka.stdout-loglevel = OFF\n")
+      .withFallback(ConfigFactory.load("config/orchestrator/distributed"));
+
+    ActorSystem systemA = ActorSystem.create(AkkaDistributedPlugin.SYSTEM_NAME, config);
+    ActorSystem systemB = ActorSystem.create(AkkaDistributedPlugin.SYSTEM_NAME, config);
+    Cluster.get(systemA).join(Cluster.get(systemA).selfAddress());
+    Cluster.get(systemB).join(Cluster.get(systemA).selfAddress());
+    long deadline = System.currentTimeMillis() + TIMEOUT_IN_MILLIS;
+    while (!isUp(systemA, 2) || !isUp(systemB, 2)) {
+      Assert.assertTrue(System.currentTimeMillis() < deadline, "Cluster not up in " + TIMEOUT_IN_MILLIS + " ms");
+      Thread.sleep(50);
+    }
+
+    orchestratorA = new AkkaDistributedPluginOrchestrator(systemA, null, false);
+    orchestratorB = new AkkaDistributedPluginOrchestrator(systemB, null, false);
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    for (AkkaDistributedPluginOrchestrator orchestrator : Arrays.asList(orchestratorA, orchestratorB)) {
+      if (orchestrator != null) {
+        orchestrator.shutdown();
+      }
+    }
+    RodaCoreFactory.shutdown();
+    FSUtils.deletePath(basePath);
+  }
+
+  @AfterMethod
+  public void releaseLocks() {
+    orchestratorA.releaseAllObjectLocksAsync();
+  }
+
+  private static boolean isUp(ActorSystem system, int nodes) {
+    int up = 0;
+    for (Member member : Cluster.get(system).state().getMembers()) {
+      if (MemberStatus.up().equals(member.status())) {
+        up++;
+      }
+    }
+    return up == nodes;
+  }
+
+  @Test
+  public void testObjectsLockedInOneNodeAreLockedInTheOthers() throws Exception {
+    orchestratorA.acquireObjectLock(Arrays.asList("aip1", "aip2"), LOCK_REQUEST_TIMEOUT, true, "requestA");
+
+    try {
+      orchestratorB.acquireObjectLock(Collections.singletonList("aip2"), LOCK_REQUEST_TIMEOUT, false, "requestB");
+      Assert.fail("Object locked in another node could be locked");
+    } catch (NotLockableAtTheTimeException e) {
+      // expected
+    }
+
+    // locks are reentrant for the same request, whatever the node
+    orchestratorB.acquireObjectLock(Collections.singletonList("aip1"), LOCK_REQUEST_TIMEOUT, false, "requestA");
+    orchestratorB.acquireObjectLock(Collections.singletonList("aip3"), LOCK_REQUEST_TIMEOUT, false, "requestB");
+
+    CompletableFuture<Void> waiting = CompletableFuture.runAsync(() -> {
+      try {
+        orchestratorB.acquireObjectLock(Collections.singletonList("aip2"), LOCK_REQUEST_TIMEOUT, true, "requestB");
+      } catch (LockingException e) {
+        throw new CompletionException(e);
+      }
+    });
+    Thread.sleep(500);
+    Assert.assertFalse(waiting.isDone());
+
+    orchestratorA.releaseObjectLockAsync(Collections.emptyList(), "requestA");
+    waiting.get(LOCK_REQUEST_TIMEOUT, TimeUnit.SECONDS);
+  }
+
+  @Test(expectedExceptions = AcquireLockTimeoutException.class)
+  public void testLockRequestsTimeOut() throws LockingException {
+    orchestratorA.acquireObjectLock(Collections.singletonList("aip4"), LOCK_REQUEST_TIMEOUT, true, "requestA");
+    orchestratorB.acquireObjectLock(Collections.singletonList("aip4"), 1, true, "requestB");
+  }
+}
@@ -0,0 +1,37 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.orchestrate.akka.distributed;
+
+import java.nio.file.Paths;
+
+import org.roda.core.data.common.RodaConstants;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class WorkLocalityTest {
+
+  @Test
+  public void testLocalVolumesOfDifferentNodesAreDifferent() {
+    Assert.assertNotEquals(WorkLocality.of("ext4", "/dev/sda1", "node1"),
+      WorkLocality.of("ext4", "/dev/sda1", "node2"));
+    Assert.assertEquals(WorkLocality.of("ext4", "/dev/sda1", "node1"), "node1:/dev/sda1");
+  }
+
+  @Test
+  public void testNetworkVolumesAreTheSameInAllNodes() {
+    Assert.assertEquals(WorkLocality.of("nfs4", "server:/export", "node1"),
+      WorkLocality.of("nfs4", "server:/export", "node2"));
+    Assert.assertEquals(WorkLocality.of("nfs4", "server:/export", "node1"), "nfs4:server:/export");
+  }
+
+  @Test
+  public void testLocalityOfMissingPathIsTheOneOfItsParent() {
+    Assert.assertEquals(WorkLocality.of(Paths.get("target", "does", "not", "exist")), WorkLocality.of(Paths.get("")));
+  }
+}
@@ -0,0 +1,142 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.orchestrate.akka.distributed;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.plugins.orchestrate.akka.distributed.Master.Work;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class WorkStateTest {
+  private static final Set<String> VOLUME_A = Collections.singleton("volumeA");
+  private static final Set<String> VOLUME_B = Collections.singleton("volumeB");
+  private static final Set<String> SERVED = new HashSet<>(Arrays.asList("volumeA", "volumeB"));
+
+  private static WorkState stateWith(Work... works) {
+    WorkState state = new WorkState();
+    for (Work work : works) {
+      state.update(new WorkState.WorkAccepted(work));
+    }
+    return state;
+  }
+
+  @Test
+  public void testWorkIsGivenToWorkersOfItsLocality() {
+    WorkState state = stateWith(new Work("1", "job", "volumeA"), new Work("2", "job", "volumeB"),
+      new Work("3", "job", "volumeA"));
+
+    Assert.assertEquals(state.nextWork(VOLUME_B, SERVED).workId, "2");
+    Assert.assertEquals(state.nextWork(VOLUME_A, SERVED).workId, "1");
+
+    state.update(new WorkState.WorkStarted("1"));
+    Assert.assertEquals(state.nextWork(VOLUME_A, SERVED).workId, "3");
+    state.update(new WorkState.WorkStarted("2"));
+    // work of other served localities is left to their workers
+    Assert.assertNull(state.nextWork(VOLUME_B, SERVED));
+    Assert.assertTrue(state.hasWork());
+  }
+
+  @Test
+  public void testWorkOfUnservedLocalitiesIsGivenToAnyWorker() {
+    WorkState state = stateWith(new Work("1", "job", "volumeA"), new Work("2", "job", "volumeC"),
+      new Work("3", "job"));
+
+    Assert.assertEquals(state.nextWork(VOLUME_B, SERVED).workId, "2");
+    state.update(new WorkState.WorkStarted("2"));
+    Assert.assertEquals(state.nextWork(VOLUME_B, SERVED).workId, "3");
+
+    // without workers of volumeA any worker can do its work
+    Assert.assertEquals(state.nextWork(VOLUME_B, VOLUME_B).workId, "1");
+  }
+
+  @Test
+  public void testWorkOfLostWorkersIsRequeued() {
+    WorkState state = stateWith(new Work("1", "job", "volumeA"), new Work("2", "job", "volumeA"));
+    state.update(new WorkState.WorkStarted("2"));
+    Assert.assertTrue(state.isInProgress("2"));
+
+    state.update(new WorkState.WorkerTimedOut("2"));
+    Assert.assertFalse(state.isInProgress("2"));
+    Assert.assertEquals(state.getPendingWorkCount(), 2);
+
+    state.update(new WorkState.WorkStarted("2"));
+    state.update(new WorkState.WorkCompleted("2", "result"));
+    Assert.assertTrue(state.isDone("2"));
+    Assert.assertTrue(state.isAccepted("2"));
+    Assert.assertEquals(state.getWorkInProgressCount(), 0);
+  }
+
+  @Test
+  public void testFailedWorkIsRequeuedAndCounted() {
+    WorkState state = stateWith(new Work("1", "job", "volumeA"));
+    state.update(new WorkState.WorkStarted("1"));
+    state.update(new WorkState.WorkerFailed("1"));
+    Assert.assertFalse(state.isInProgress("1"));
+    Assert.assertEquals(state.getFailureCount("1"), 1);
+    Assert.assertEquals(state.nextWork(VOLUME_A, SERVED).workId, "1");
+
+    state.update(new WorkState.WorkStarted("1"));
+    state.update(new WorkState.WorkerFailed("1"));
+    Assert.assertEquals(state.getFailureCount("1"), 2);
+
+    state.update(new WorkState.WorkStarted("1"));
+    state.update(new WorkState.WorkCompleted("1", "result"));
+    Assert.assertTrue(state.isDone("1"));
+    Assert.assertEquals(state.getFailureCount("1"), 0);
+  }
+
+  @Test
+  public void testDoneWorkIdsAreBounded() {
+    WorkState state = new WorkState();
+    for (int i = 0; i < WorkState.MAX_DONE_WORK_IDS + 10; i++) {
+      String workId = Integer.toString(i);
+      state.update(new WorkState.WorkAccepted(new Work(workId, "job")));
+      state.update(new WorkState.WorkStarted(workId));
+      state.update(new WorkState.WorkCompleted(workId, null));
+    }
+
+    Assert.assertFalse(state.isDone("0"));
+    Assert.assertTrue(state.isDone("10"));
+    Assert.assertTrue(state.isDone(Integer.toString(WorkState.MAX_DONE_WORK_IDS + 9)));
+  }
+
+  @Test
+  public void testSnapshotIsIndependentAndSerializable() throws IOException, ClassNotFoundException {
+    WorkState state = stateWith(new Work("1", "job", "volumeA"), new Work("2", "job", "volumeB"));
+    state.update(new WorkState.WorkStarted("1"));
+
+    WorkState snapshot = state.copy();
+    state.update(new WorkState.WorkCompleted("1", "result"));
+    Assert.assertTrue(snapshot.isInProgress("1"));
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(snapshot);
+    }
+    WorkState recovered;
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      recovered = (WorkState) in.readObject();
+    }
+
+    Assert.assertTrue(recovered.isInProgress("1"));
+    Assert.assertEquals(recovered.nextWork(VOLUME_B, SERVED).workId, "2");
+    recovered.update(new WorkState.WorkCompleted("1", "result"));
+    Assert.assertTrue(recovered.isDone("1"));
+  }
+}
@@ -0,0 +1,323 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.plugins.antivirus;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.storage.fs.FSUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class ClamdAntiVirusTest {
+  private static final String SIGNATURE = "FAKE-VIRUS-SIGNATURE";
+
+  private static Path basePath;
+  private static FakeClamd clamd;
+
+  @BeforeClass
+  public static void setUp() throws IOException {
+    basePath = Files.createTempDirectory(ClamdAntiVirusTest.class.getSimpleName());
+    clamd = new FakeClamd();
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    clamd.close();
+    FSUtils.deletePath(basePath);
+  }
+
+  private static Path createFolder(String name, int cleanFiles, String... infectedFiles) throws IOException {
+    Path folder = Files.createDirectories(basePath.resolve(name).resolve("data"));
+    for (int i = 0; i < cleanFiles; i++) {
+      Files.write(folder.resolve("file-" + i + ".txt"), ("clean content " + i).getBytes(StandardCharsets.UTF_8));
+    }
+    for (String infectedFile : infectedFiles) {
+      Files.write(folder.resolve(infectedFile), ("some content " + SIGNATURE).getBytes(StandardCharsets.UTF_8));
+    }
+    return folder.getParent();
+  }
+
+  private static ClamdClient createClient(int maxInFlight) {
+    return new ClamdClient("localhost", clamd.getPort(), 10000, 2, maxInFlight, 60000);
+  }
+
+  @Test
+  public void testStreamScanReusesSessions() throws IOException {
+    Path clean = createFolder("clean", 25);
+    Path infected = createFolder("infected", 10, "virus.exe", "other.doc");
+
+    try (ClamdClient client = createClient(4)) {
+      ClamdAntiVirus antiVirus = new ClamdAntiVirus(client, ClamdAntiVirus.Mode.STREAM, 7);
+      int sessionsBefore = clamd.sessions.get();
+
+      VirusCheckResult result = antiVirus.checkForVirus(clean);
+      Assert.assertTrue(result.isClean(), result.getReport());
+      Assert.assertTrue(result.getReport().contains("Scanned files: 25"), result.getReport());
+
+      result = antiVirus.checkForVirus(infected);
+      Assert.assertFalse(result.isClean());
+      Assert.assertTrue(result.getReport().contains("virus.exe: Fake.Virus FOUND"), result.getReport());
+      Assert.assertTrue(result.getReport().contains("other.doc: Fake.Virus FOUND"), result.getReport());
+      Assert.assertTrue(result.getReport().contains("Infected files: 2"), result.getReport());
+
+      // all batches of both scans went through the same session
+      Assert.assertEquals(clamd.sessions.get() - sessionsBefore, 1);
+    }
+  }
+
+  @Test
+  public void testStreamScanKeepsOrder() throws IOException {
+    Path folder = createFolder("order", 20, "infected.bin");
+    List<Path> files;
+    try (Stream<Path> stream = Files.list(folder.resolve("data"))) {
+      files = stream.sorted().collect(Collectors.toList());
+    }
+
+    try (ClamdClient client = createClient(3)) {
+      List<ClamdClient.ScanResult> results = client.streamScan(files);
+      Assert.assertEquals(results.size(), files.size());
+      for (int i = 0; i < files.size(); i++) {
+        Assert.assertEquals(results.get(i).getPath(), files.get(i).toString());
+        Assert.assertEquals(results.get(i).isInfected(), files.get(i).endsWith("infected.bin"));
+      }
+    }
+  }
+
+  @Test
+  public void testStreamScanRecoversFromClosedSession() throws IOException {
+    Path folder = createFolder("closed-session", 5);
+
+    try (ClamdClient client = createClient(2)) {
+      ClamdAntiVirus antiVirus = new ClamdAntiVirus(client, ClamdAntiVirus.Mode.STREAM, 100);
+      Assert.assertTrue(antiVirus.checkForVirus(folder).isClean());
+
+      // like clamd does after IdleTimeout
+      clamd.closeAllConnections();
+      Assert.assertTrue(antiVirus.checkForVirus(folder).isClean());
+    }
+  }
+
+  @Test
+  public void testStreamSizeLimitExceeded() throws IOException {
+    Path folder = createFolder("size-limit", 3);
+    Files.write(folder.resolve("data").resolve("large.bin"), new byte[1000]);
+
+    clamd.maxStreamLength = 100;
+    try (ClamdClient client = createClient(1)) {
+      VirusCheckResult result = new ClamdAntiVirus(client, ClamdAntiVirus.Mode.STREAM, 100).checkForVirus(folder);
+      Assert.assertFalse(result.isClean());
+      Assert.assertTrue(result.getReport().contains("large.bin: File is larger than clamd StreamMaxLength"),
+        result.getReport());
+      Assert.assertTrue(result.getReport().contains("Scanned files: 4"), result.getReport());
+      Assert.assertTrue(result.getReport().contains("Infected files: 0"), result.getReport());
+      Assert.assertTrue(result.getReport().contains("Total errors: 1"), result.getReport());
+    } finally {
+      clamd.maxStreamLength = Integer.MAX_VALUE;
+    }
+  }
+
+  @Test
+  public void testMultiScan() throws IOException {
+    Path clean = createFolder("multiscan-clean", 5);
+    Path infected = createFolder("multiscan-infected", 5, "virus.exe");
+
+    try (ClamdClient client = createClient(1)) {
+      ClamdAntiVirus antiVirus = new ClamdAntiVirus(client, ClamdAntiVirus.Mode.MULTISCAN, 1);
+      Assert.assertTrue(antiVirus.checkForVirus(clean).isClean());
+
+      VirusCheckResult result = antiVirus.checkForVirus(infected);
+      Assert.assertFalse(result.isClean());
+      Assert.assertTrue(result.getReport().contains("virus.exe: Fake.Virus FOUND"), result.getReport());
+    }
+  }
+
+  @Test
+  public void testVersion() {
+    try (ClamdClient client = createClient(1)) {
+      int connectionsBefore = clamd.connections.size();
+      Assert.assertEquals(new ClamdAntiVirus(client, ClamdAntiVirus.Mode.STREAM, 1).getVersion(), FakeClamd.VERSION);
+      Assert.assertEquals(new ClamdAntiVirus(client, ClamdAntiVirus.Mode.STREAM, 1).getVersion(), FakeClamd.VERSION);
+      // the version is only requested once
+      Assert.assertEquals(clamd.connections.size() - connectionsBefore, 1);
+      Assert.assertTrue(client.ping());
+    }
+  }
+
+  @Test(expectedExceptions = RuntimeException.class)
+  public void testDaemonNotAvailable() throws IOException {
+    int port;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    try (ClamdClient client = new ClamdClient("localhost", port)) {
+      new ClamdAntiVirus(client, ClamdAntiVirus.Mode.STREAM, 1).checkForVirus(createFolder("unavailable", 1));
+    }
+  }
+
+  /**
+   * In-JVM daemon implementing the subset of the clamd protocol used by
+   * {@link ClamdClient}. Files containing {@link #SIGNATURE} are infected.
+   */
+  private static class FakeClamd implements AutoCloseable {
+    static final String VERSION = "ClamAV 0.0.0/1/Fake";
+
+    private final ServerSocket serverSocket;
+    private final List<Socket> connections = new CopyOnWriteArrayList<>();
+    final AtomicInteger sessions = new AtomicInteger();
+    /** Like clamd StreamMaxLength */
+    volatile int maxStreamLength = Integer.MAX_VALUE;
+
+    FakeClamd() throws IOException {
+      serverSocket = new ServerSocket(0);
+      Thread acceptor = new Thread(() -> {
+        while (!serverSocket.isClosed()) {
+          try {
+            Socket socket = serverSocket.accept();
+            connections.add(socket);
+            Thread handler = new Thread(() -> handle(socket));
+            handler.setDaemon(true);
+            handler.start();
+          } catch (IOException e) {
+            // closed
+          }
+        }
+      });
+      acceptor.setDaemon(true);
+      acceptor.start();
+    }
+
+    int getPort() {
+      return serverSocket.getLocalPort();
+    }
+
+    void closeAllConnections() throws IOException {
+      for (Socket socket : connections) {
+        socket.close();
+      }
+      connections.clear();
+    }
+
+    private void handle(Socket socket) {
+      try (Socket s = socket) {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+        OutputStream out = s.getOutputStream();
+        boolean session = false;
+        int id = 0;
+        String command;
+        while ((command = readCommand(in)) != null) {
+          String prefix = session ? (++id) + ": " : "";
+          if ("IDSESSION".equals(command)) {
+            session = true;
+            sessions.incrementAndGet();
+          } else if ("END".equals(command)) {
+            return;
+          } else if ("PING".equals(command)) {
+            reply(out, prefix + "PONG");
+          } else if ("VERSION".equals(command)) {
+            reply(out, prefix + VERSION);
+          } else if ("INSTREAM".equals(command)) {
+            byte[] content = readStream(in);
+            if (content.length > maxStreamLength) {
+              reply(out, prefix + "INSTREAM size limit exceeded. ERROR");
+              return;
+            }
+            reply(out, prefix + "stream: " + scan(content));
+          } else if (command.startsWith("MULTISCAN ")) {
+            multiScan(out, Paths.get(command.substring("MULTISCAN ".length())));
+            return;
+          } else {
+            reply(out, "UNKNOWN COMMAND");
+            return;
+          }
+          if (!session) {
+            return;
+          }
+        }
+      } catch (IOException e) {
+        // connection closed
+      }
+    }
+
+    private static String readCommand(DataInputStream in) throws IOException {
+      // only null terminated commands ("z" prefix) are supported
+      if (in.read() != 'z') {
+        return null;
+      }
+      ByteArrayOutputStream command = new ByteArrayOutputStream();
+      int b;
+      while ((b = in.read()) > 0) {
+        command.write(b);
+      }
+      return new String(command.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readStream(DataInputStream in) throws IOException {
+      ByteArrayOutputStream content = new ByteArrayOutputStream();
+      int length;
+      while ((length = in.readInt()) > 0) {
+        byte[] chunk = new byte[length];
+        in.readFully(chunk);
+        content.write(chunk);
+      }
+      return content.toByteArray();
+    }
+
+    private static String scan(byte[] content) {
+      return new String(content, StandardCharsets.UTF_8).contains(SIGNATURE) ? "Fake.Virus FOUND" : "OK";
+    }
+
+    private static void multiScan(OutputStream out, Path path) throws IOException {
+      boolean found = false;
+      try (Stream<Path> files = Files.walk(path)) {
+        for (Path file : files.filter(Files::isRegularFile).collect(Collectors.toList())) {
+          String result = scan(Files.readAllBytes(file));
+          if (!"OK".equals(result)) {
+            reply(out, file + ": " + result);
+            found = true;
+          }
+        }
+      }
+      if (!found) {
+        reply(out, path + ": OK");
+      }
+    }
+
+    private static void reply(OutputStream out, String reply) throws IOException {
+      byte[] bytes = reply.getBytes(StandardCharsets.UTF_8);
+      // null terminated
+      out.write(Arrays.copyOf(bytes, bytes.length + 1));
+      out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      serverSocket.close();
+      closeAllConnections();
+    }
+  }
+}
@@ -0,0 +1,133 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.plugins.base;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.TestsHelper;
+import org.roda.core.common.PremisV3Utils;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.v2.ip.AIP;
+import org.roda.core.data.v2.ip.AIPState;
+import org.roda.core.data.v2.ip.File;
+import org.roda.core.data.v2.ip.Permissions;
+import org.roda.core.data.v2.ip.metadata.PreservationMetadata.PreservationMetadataType;
+import org.roda.core.model.ModelService;
+import org.roda.core.storage.StringContentPayload;
+import org.roda.core.storage.fs.FSUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class InventoryReportWriterTest {
+  private static Path basePath;
+
+  @BeforeClass
+  public static void setUp() throws IOException {
+    basePath = Files.createTempDirectory(InventoryReportWriterTest.class.getSimpleName());
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    FSUtils.deletePath(basePath);
+  }
+
+  @Test
+  public void testRowsFromSeveralProducers() throws Exception {
+    Path output = basePath.resolve("producers.csv");
+    int producers = 4;
+    int rowsPerProducer = 5000;
+
+    ExecutorService executor = Executors.newFixedThreadPool(producers);
+    try (InventoryReportWriter writer = new InventoryReportWriter(output, Arrays.asList("producer", "row"), 10)) {
+      List<Future<?>> results = new ArrayList<>();
+      for (int p = 0; p < producers; p++) {
+        String producer = "p" + p;
+        results.add(executor.submit(() -> {
+          for (int i = 0; i < rowsPerProducer; i++) {
+            writer.write(Arrays.asList(producer, Integer.toString(i)));
+          }
+          return null;
+        }));
+      }
+      for (Future<?> result : results) {
+        result.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    List<String> lines = Files.readAllLines(output);
+    Assert.assertEquals(lines.size(), 1 + producers * rowsPerProducer);
+    Assert.assertEquals(lines.get(0), "producer,row");
+
+    // the rows of each producer keep their order
+    Map<String, Integer> nextRow = new HashMap<>();
+    for (String line : lines.subList(1, lines.size())) {
+      String[] row = line.split(",");
+      int expected = nextRow.getOrDefault(row[0], 0);
+      Assert.assertEquals(Integer.parseInt(row[1]), expected);
+      nextRow.put(row[0], expected + 1);
+    }
+    Assert.assertEquals(nextRow.size(), producers);
+  }
+
+  @Test
+  public void testFileInfoFromPremis() throws Exception {
+    // files read from the model (not from the index) take their properties from PREMIS
+    Path rodaHome = TestsHelper.createBaseTempDir(getClass(), true);
+    RodaCoreFactory.instantiateTest(false, false, false, false, false, false);
+    try {
+      ModelService model = RodaCoreFactory.getModelService();
+      AIP aip = model.createAIP(AIPState.ACTIVE, null, "", new Permissions(), false, RodaConstants.ADMIN);
+      model.createRepresentation(aip.getId(), "rep", true, "", false, RodaConstants.ADMIN);
+      File file = model.createFile(aip.getId(), "rep", Collections.emptyList(), "file.pdf",
+        new StringContentPayload("abcdef"), false);
+
+      gov.loc.premis.v3.File premisFile = PremisV3Utils
+        .binaryToFile(PremisV3Utils.createBaseFile(file, model, Arrays.asList("MD5")), false);
+      PremisV3Utils.updateFileFormat(premisFile, "Portable Document Format", "1.4", "fmt/18", "application/pdf");
+      model.createPreservationMetadata(PreservationMetadataType.FILE, aip.getId(), "rep", file.getPath(),
+        file.getId(), PremisV3Utils.fileToBinary(premisFile), false);
+
+      List<String> fields = Arrays.asList(InventoryReportPlugin.CSV_FIELD_FILE_ID, InventoryReportPlugin.CSV_FIELD_SIZE,
+        InventoryReportPlugin.CSV_FIELD_FORMAT_PRONOM, InventoryReportPlugin.CSV_FIELD_FORMAT_MIMETYPE);
+      Assert.assertEquals(
+        InventoryReportPluginUtils.retrieveFileInfo(fields, file, aip, model, RodaCoreFactory.getStorageService()),
+        Arrays.asList("file.pdf", "6", "fmt/18", "application/pdf"));
+    } finally {
+      RodaCoreFactory.shutdown();
+      FSUtils.deletePath(rodaHome);
+    }
+  }
+
+  @Test
+  public void testWriterOfJob() throws IOException {
+    Path output = basePath.resolve("job.csv");
+    InventoryReportWriter.open("job", output, null, 1);
+    InventoryReportWriter.get("job").writeAll(Arrays.asList(Arrays.asList("a", "b,c"), Arrays.asList("d", "")));
+    InventoryReportWriter.close("job");
+
+    Assert.assertNull(InventoryReportWriter.get("job"));
+    Assert.assertEquals(Files.readAllLines(output), Arrays.asList("a,\"b,c\"", "d,"));
+  }
+}
@@ -0,0 +1,130 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.plugins.characterization;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Enumeration;
+import java.util.Iterator;
+
+import org.roda.core.data.common.RodaConstants;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.JsonNode;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class SiegfriedOutputReaderTest {
+  private static final String HEADER = "{\"siegfried\":\"1.7.8\",\"scandate\":\"2019-01-01T00:00:00Z\","
+    + "\"identifiers\":[{\"name\":\"pronom\",\"details\":\"DROID_SignatureFile_V94.xml\"}],\"files\":[";
+  private static final String FOOTER = "]}";
+
+  private static String file(String name, String puid) {
+    return "{\"filename\":\"" + name + "\",\"filesize\":10,\"errors\":\"\",\"matches\":[{\"ns\":\"pronom\",\"id\":\""
+      + puid + "\",\"format\":\"Format\",\"version\":\"1\",\"mime\":\"text/plain\",\"basis\":[],\"warning\":\"\"}]}";
+  }
+
+  private static SiegfriedOutputReader reader(String json) throws IOException {
+    return new SiegfriedOutputReader(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  public void testReadFiles() throws IOException {
+    String json = HEADER + file("/data/a.txt", "x-fmt/111") + "," + file("/data/b.pdf", "fmt/276") + FOOTER;
+
+    try (SiegfriedOutputReader reader = reader(json)) {
+      JsonNode file = reader.nextFile();
+      Assert.assertEquals(file.get("filename").asText(), "/data/a.txt");
+      Assert.assertEquals(file.get("matches").get(0).get("id").asText(), "x-fmt/111");
+
+      file = reader.nextFile();
+      Assert.assertEquals(file.get("filename").asText(), "/data/b.pdf");
+
+      Assert.assertNull(reader.nextFile());
+      Assert.assertNull(reader.nextFile());
+    }
+  }
+
+  @Test
+  public void testFieldsAfterFilesAreSkipped() throws IOException {
+    String json = "{\"files\":[" + file("/data/a.txt", "x-fmt/111") + "],\"extra\":{\"files\":[{\"x\":1}]}}";
+
+    try (SiegfriedOutputReader reader = reader(json)) {
+      Assert.assertNotNull(reader.nextFile());
+      Assert.assertNull(reader.nextFile());
+    }
+  }
+
+  @Test
+  public void testNoFiles() throws IOException {
+    try (SiegfriedOutputReader reader = reader(HEADER + FOOTER)) {
+      Assert.assertNull(reader.nextFile());
+    }
+  }
+
+  @Test(expectedExceptions = JsonParseException.class)
+  public void testInvalidOutput() throws IOException {
+    try (SiegfriedOutputReader reader = reader("sf: error: file not found")) {
+      reader.nextFile();
+    }
+  }
+
+  @Test
+  public void testOutputIsReadIncrementally() throws IOException {
+    // far more output than could be kept in memory, generated as it is read
+    int count = 200000;
+    Iterator<InputStream> parts = new Iterator<InputStream>() {
+      private int i = -1;
+
+      @Override
+      public boolean hasNext() {
+        return i <= count;
+      }
+
+      @Override
+      public InputStream next() {
+        String part;
+        if (i < 0) {
+          part = HEADER;
+        } else if (i == count) {
+          part = FOOTER;
+        } else {
+          part = (i > 0 ? "," : "") + file("/data/file-" + i + ".txt", "x-fmt/111");
+        }
+        i++;
+        return new ByteArrayInputStream(part.getBytes(StandardCharsets.UTF_8));
+      }
+    };
+    Enumeration<InputStream> enumeration = new Enumeration<InputStream>() {
+      @Override
+      public boolean hasMoreElements() {
+        return parts.hasNext();
+      }
+
+      @Override
+      public InputStream nextElement() {
+        return parts.next();
+      }
+    };
+
+    int read = 0;
+    try (SiegfriedOutputReader reader = new SiegfriedOutputReader(new SequenceInputStream(enumeration))) {
+      JsonNode file;
+      while ((file = reader.nextFile()) != null) {
+        Assert.assertEquals(file.get("filename").asText(), "/data/file-" + read + ".txt");
+        read++;
+      }
+    }
+    Assert.assertEquals(read, count);
+    Assert.assertFalse(parts.hasNext());
+  }
+}
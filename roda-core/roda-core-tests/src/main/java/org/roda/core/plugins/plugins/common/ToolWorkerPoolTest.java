@@ -0,0 +1,210 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.plugins.common;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.util.CommandException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class ToolWorkerPoolTest {
+
+  private static List<String> javaCommand(String... arguments) {
+    List<String> command = new ArrayList<>(Arrays.asList(
+      Paths.get(System.getProperty("java.home"), "bin", "java").toString(), "-cp",
+      System.getProperty("java.class.path"), TestTool.class.getName()));
+    command.addAll(Arrays.asList(arguments));
+    return command;
+  }
+
+  private static ToolWorkerPool createPool(int maxWorkers, long timeoutInMillis, int maxRequests) {
+    return new ToolWorkerPool("test", javaCommand(), maxWorkers, timeoutInMillis, 60000, maxRequests);
+  }
+
+  @Test
+  public void testWorkersAreReused() throws CommandException {
+    try (ToolWorkerPool pool = createPool(1, 30000, 1000)) {
+      Assert.assertEquals(pool.execute(Arrays.asList("echo", "a b", "c"), null).trim(), "a b|c");
+
+      Set<String> workers = new HashSet<>();
+      for (int i = 0; i < 10; i++) {
+        workers.add(pool.execute(Collections.singletonList("id"), null));
+      }
+      Assert.assertEquals(workers.size(), 1);
+    }
+  }
+
+  @Test
+  public void testOutputLinesAreNotMistakenForTheEndOfTheReply() throws CommandException {
+    try (ToolWorkerPool pool = createPool(1, 30000, 1000)) {
+      String worker = pool.execute(Collections.singletonList("id"), null);
+      String output = pool.execute(Arrays.asList("lines", "OK", "", "ERROR not really", "PONG"), null);
+      Assert.assertEquals(output.split(System.lineSeparator(), -1),
+        new String[] {"OK", "", "ERROR not really", "PONG", ""});
+      Assert.assertEquals(pool.execute(Collections.singletonList("id"), null), worker);
+    }
+  }
+
+  @Test
+  public void testWorkersWithUnexpectedRepliesAreReplaced() throws CommandException {
+    try (ToolWorkerPool pool = createPool(1, 30000, 1000)) {
+      String worker = pool.execute(Collections.singletonList("id"), null);
+      Assert.assertEquals(pool.execute(Collections.singletonList("unframed"), javaCommand("once")).trim(),
+        "one shot");
+      Assert.assertNotEquals(pool.execute(Collections.singletonList("id"), null), worker);
+    }
+  }
+
+  @Test
+  public void testWorkersAreReplacedAfterMaxRequests() throws CommandException {
+    try (ToolWorkerPool pool = createPool(1, 30000, 2)) {
+      Set<String> workers = new HashSet<>();
+      for (int i = 0; i < 4; i++) {
+        workers.add(pool.execute(Collections.singletonList("id"), null));
+      }
+      Assert.assertEquals(workers.size(), 2);
+    }
+  }
+
+  @Test
+  public void testConcurrencyIsLimited() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(6);
+    try (ToolWorkerPool pool = createPool(2, 30000, 1000)) {
+      List<Future<String>> results = new ArrayList<>();
+      for (int i = 0; i < 12; i++) {
+        results.add(executor.submit(() -> pool.execute(Arrays.asList("sleep", "20"), null)));
+      }
+      Set<String> workers = new HashSet<>();
+      for (Future<String> result : results) {
+        workers.add(result.get());
+      }
+      Assert.assertTrue(workers.size() <= 2, "workers used: " + workers);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testErrorsKeepTheWorker() throws CommandException {
+    try (ToolWorkerPool pool = createPool(1, 30000, 1000)) {
+      String worker = pool.execute(Collections.singletonList("id"), null);
+      try {
+        pool.execute(Arrays.asList("fail", "unsupported format"), null);
+        Assert.fail("The error reply should have thrown an exception");
+      } catch (CommandException e) {
+        Assert.assertTrue(e.getMessage().contains("unsupported format"), e.getMessage());
+        Assert.assertEquals(e.getOutput().trim(), "failing");
+      }
+      Assert.assertEquals(pool.execute(Collections.singletonList("id"), null), worker);
+    }
+  }
+
+  @Test
+  public void testTimedOutWorkersAreReplaced() throws CommandException {
+    try (ToolWorkerPool pool = createPool(1, 2000, 1000)) {
+      String worker = pool.execute(Collections.singletonList("id"), null);
+      try {
+        pool.execute(Arrays.asList("sleep", "60000"), javaCommand("once"));
+        Assert.fail("The request should have timed out");
+      } catch (CommandException e) {
+        // expected, and without running the fallback command
+      }
+      Assert.assertNotEquals(pool.execute(Collections.singletonList("id"), null), worker);
+    }
+  }
+
+  @Test
+  public void testFallbackToOneShotExecution() throws CommandException {
+    try (ToolWorkerPool pool = new ToolWorkerPool("missing", Collections.singletonList("/nonexistent/tool-worker"))) {
+      Assert.assertEquals(pool.execute(Collections.singletonList("id"), javaCommand("once")).trim(), "one shot");
+    }
+
+    try (ToolWorkerPool pool = createPool(1, 30000, 1000)) {
+      Assert.assertEquals(pool.execute(Collections.singletonList("exit"), javaCommand("once")).trim(), "one shot");
+      Assert.assertNotNull(pool.execute(Collections.singletonList("id"), null));
+    }
+  }
+
+  /**
+   * Tool used by the tests, as a worker or (with the {@code once} argument) as
+   * a one-shot command.
+   */
+  public static class TestTool {
+    public static void main(String[] args) throws IOException, InterruptedException {
+      if (args.length > 0 && "once".equals(args[0])) {
+        System.out.println("one shot");
+        return;
+      }
+
+      String id = ManagementFactory.getRuntimeMXBean().getName();
+      BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+      String line;
+      while ((line = in.readLine()) != null) {
+        String[] request = line.split(ToolWorkerPool.ARGUMENT_SEPARATOR);
+        switch (request[0]) {
+          case ToolWorkerPool.PING:
+            System.out.println(ToolWorkerPool.PONG);
+            break;
+          case "echo":
+            System.out.println(
+              ToolWorkerPool.OUTPUT + " " + String.join("|", Arrays.copyOfRange(request, 1, request.length)));
+            System.out.println(ToolWorkerPool.OK);
+            break;
+          case "lines":
+            // each argument in its own line, as output by the tool
+            for (int i = 1; i < request.length; i++) {
+              System.out
+                .println(request[i].isEmpty() ? ToolWorkerPool.OUTPUT : ToolWorkerPool.OUTPUT + " " + request[i]);
+            }
+            System.out.println(ToolWorkerPool.OK);
+            break;
+          case "id":
+            System.out.println(ToolWorkerPool.OUTPUT + " " + id);
+            System.out.println(ToolWorkerPool.OK);
+            break;
+          case "sleep":
+            Thread.sleep(Long.parseLong(request[1]));
+            System.out.println(ToolWorkerPool.OUTPUT + " " + id);
+            System.out.println(ToolWorkerPool.OK);
+            break;
+          case "fail":
+            System.out.println(ToolWorkerPool.OUTPUT + " failing");
+            System.out.println(ToolWorkerPool.ERROR + " " + request[1]);
+            break;
+          case "unframed":
+            System.out.println("not a reply line");
+            System.out.println(ToolWorkerPool.OK);
+            break;
+          case "exit":
+            System.exit(1);
+            break;
+          default:
+            System.out.println(ToolWorkerPool.ERROR + " unknown request");
+        }
+        System.out.flush();
+      }
+    }
+  }
+}
@@ -38,6 +38,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -79,6 +80,7 @@ import org.reflections.Reflections;
 import org.reflections.scanners.ResourcesScanner;
 import org.reflections.util.ClasspathHelper;
 import org.reflections.util.ConfigurationBuilder;
+import org.roda.core.common.ConfigurationFileCache;
 import org.roda.core.common.LdapUtility;
 import org.roda.core.common.Messages;
 import org.roda.core.common.PremisV3Utils;
@@ -87,6 +89,11 @@ import org.roda.core.common.UserUtility;
 import org.roda.core.common.iterables.CloseableIterable;
 import org.roda.core.common.monitor.TransferUpdateStatus;
 import org.roda.core.common.monitor.TransferredResourcesScanner;
+import org.roda.core.common.monitor.TransferredResourcesWatcher;
+import org.roda.core.common.notifications.HTTPNotificationProcessor;
+import org.roda.core.common.notifications.HTTPNotificationSender;
+import org.roda.core.common.tracing.PrometheusFileReporter;
+import org.roda.core.common.tracing.Tracing;
 import org.roda.core.data.common.RodaConstants;
 import org.roda.core.data.common.RodaConstants.NodeType;
 import org.roda.core.data.common.RodaConstants.OrchestratorType;
@@ -124,16 +131,23 @@ import org.roda.core.events.EventsManager;
 import org.roda.core.events.EventsNotifier;
 import org.roda.core.index.IndexService;
 import org.roda.core.index.schema.Field;
+import org.roda.core.index.schema.ShadowCollectionManager;
 import org.roda.core.index.schema.SolrBootstrapUtils;
 import org.roda.core.index.schema.SolrCollectionRegistry;
 import org.roda.core.index.utils.SolrUtils;
 import org.roda.core.migration.MigrationManager;
+import org.roda.core.model.ModelEventDispatcher;
 import org.roda.core.model.ModelObserver;
 import org.roda.core.model.ModelService;
+import org.roda.core.model.utils.AIPMetadataCache;
 import org.roda.core.plugins.PluginManager;
 import org.roda.core.plugins.PluginManagerException;
 import org.roda.core.plugins.PluginOrchestrator;
+import org.roda.core.plugins.orchestrate.AkkaDistributedPluginOrchestrator;
 import org.roda.core.plugins.orchestrate.AkkaEmbeddedPluginOrchestrator;
+import org.roda.core.plugins.plugins.antivirus.ClamdAntiVirus;
+import org.roda.core.plugins.plugins.antivirus.ClamdClient;
+import org.roda.core.plugins.plugins.common.ToolWorkerPool;
 import org.roda.core.storage.DefaultStoragePath;
 import org.roda.core.storage.Resource;
 import org.roda.core.storage.StorageService;
@@ -199,6 +213,7 @@ public class RodaCoreFactory {
   // Metrics related objects
   private static MetricRegistry metricsRegistry;
   private static JmxReporter jmxMetricsReporter;
+  private static PrometheusFileReporter prometheusMetricsReporter;
 
   // Orchestrator related objects
   private static PluginManager pluginManager;
@@ -207,20 +222,29 @@ public class RodaCoreFactory {
   // Events related
   private static EventsManager eventsManager;
 
+  // Notifications related
+  private static HTTPNotificationSender httpNotificationSender = null;
+
+  // Antivirus related
+  private static ClamdClient clamdClient = null;
+
   private static LdapUtility ldapUtility;
   private static Path rodaApacheDSDataDirectory = null;
 
   // TransferredResources related objects
   private static TransferredResourcesScanner transferredResourcesScanner;
+  private static TransferredResourcesWatcher transferredResourcesWatcher;
 
   // Configuration related objects
   private static CompositeConfiguration rodaConfiguration = null;
   private static List<String> configurationFiles = null;
 
   // Caches
-  private static CacheLoader<Pair<String, String>, Optional<Schema>> RODA_SCHEMAS_LOADER = new SchemasCacheLoader();
-  private static LoadingCache<Pair<String, String>, Optional<Schema>> RODA_SCHEMAS_CACHE = CacheBuilder.newBuilder()
-    .build(RODA_SCHEMAS_LOADER);
+  private static ConfigurationFileCache<Pair<String, String>, Optional<Schema>> RODA_SCHEMAS_CACHE;
+  static {
+    RODA_SCHEMAS_CACHE = new ConfigurationFileCache<>(new SchemasCacheLoader(),
+      pair -> Collections.singletonList(SchemasCacheLoader.getSchemaPath(pair)));
+  }
 
   private static LoadingCache<Locale, Messages> I18N_CACHE = CacheBuilder.newBuilder()
     .build(new CacheLoader<Locale, Messages>() {
@@ -465,6 +489,9 @@ public class RodaCoreFactory {
         instantiateDefaultObjects();
         LOGGER.debug("Finished instantiating default objects");
 
+        warmUpXMLCaches();
+        LOGGER.debug("Finished warming up XML caches");
+
         // instantiate plugin manager
         // 20160920 hsilva: this must be the last thing to be instantiated as
         // problems may araise when instantiating objects at the same time the
@@ -642,6 +669,20 @@ public class RodaCoreFactory {
       jmxMetricsReporter = JmxReporter.forRegistry(metricsRegistry).inDomain("RODA").build();
       jmxMetricsReporter.start();
     }
+
+    if (getRodaConfiguration().getBoolean("core.tracing.enabled", false)) {
+      Tracing.configure(metricsRegistry,
+        getRodaConfigurationAsInt(0, "core", "tracing", "slow_span_threshold_in_millis"),
+        getRodaConfigurationAsInt(10, "core", "tracing", "sampling_interval"));
+    }
+
+    String prometheusFile = getRodaConfigurationAsString("core", "tracing", "export", "file");
+    if (StringUtils.isNotBlank(prometheusFile)) {
+      prometheusMetricsReporter = new PrometheusFileReporter(metricsRegistry,
+        getRodaHomePath().resolve(prometheusFile));
+      prometheusMetricsReporter.start(getRodaConfigurationAsInt(60, "core", "tracing", "export", "interval_in_seconds"),
+        TimeUnit.SECONDS);
+    }
   }
 
   private static Path determineRodaHomePath() {
@@ -749,6 +790,40 @@ public class RodaCoreFactory {
 
   }
 
+  /**
+   * Compiles the stylesheets and schemas of the configured descriptive
+   * metadata types so that the first ingests and metadata views do not pay for
+   * it
+   */
+  private static void warmUpXMLCaches() {
+    if (!getRodaConfiguration().getBoolean("core.xml.warmup.enabled", true)) {
+      return;
+    }
+
+    long start = System.currentTimeMillis();
+    for (String typeAndVersion : getRodaConfigurationAsList("core.xml.warmup.metadata_types")) {
+      String metadataType = typeAndVersion;
+      String metadataVersion = null;
+      int separatorIndex = typeAndVersion.indexOf(RodaConstants.METADATA_VERSION_SEPARATOR);
+      if (separatorIndex > 0) {
+        metadataType = typeAndVersion.substring(0, separatorIndex);
+        metadataVersion = typeAndVersion.substring(separatorIndex + 1);
+      }
+
+      try {
+        RodaUtils.precompileMetadataStylesheet(RodaConstants.CORE_CROSSWALKS_INGEST, metadataType, metadataVersion);
+        RodaUtils.precompileMetadataStylesheet(RodaConstants.CROSSWALKS_DISSEMINATION_HTML_PATH, metadataType,
+          metadataVersion);
+      } catch (GenericException e) {
+        LOGGER.warn("Could not precompile stylesheets of metadata type {}", typeAndVersion, e);
+      }
+      getRodaSchema(metadataType, metadataVersion);
+    }
+    getRodaSchema("premis-v2-0", null);
+
+    LOGGER.info("Warmed up XML caches in {} ms", System.currentTimeMillis() - start);
+  }
+
   private static void instantiateDefaultObjects() {
     if (INSTANTIATE_DEFAULT_RESOURCES) {
       try (CloseableIterable<Resource> resources = getStorageService()
@@ -944,6 +1019,19 @@ public class RodaCoreFactory {
     storage = new StorageServiceWrapper(instantiateStorage(), nodeType);
     LOGGER.debug("Finished instantiating storage...");
     model = new ModelService(storage, eventsManager, nodeType, instanceId);
+    if (getRodaConfiguration().getBoolean("core.model.aip_cache.enabled", false)) {
+      model.setAIPMetadataCache(new AIPMetadataCache(metricsRegistry,
+        getRodaConfiguration().getLong("core.model.aip_cache.max_size_bytes",
+          AIPMetadataCache.DEFAULT_MAX_SIZE_IN_BYTES),
+        getRodaConfiguration().getLong("core.model.aip_cache.ttl_ms", AIPMetadataCache.DEFAULT_TTL_IN_MILLIS)));
+    }
+    if (getRodaConfiguration().getBoolean("core.model.observers.async.enabled", false)) {
+      model.setModelEventDispatcher(new ModelEventDispatcher(
+        getRodaConfiguration().getInt("core.model.observers.async.workers", ModelEventDispatcher.DEFAULT_WORKERS),
+        getRodaConfiguration().getInt("core.model.observers.async.queue_size", ModelEventDispatcher.DEFAULT_QUEUE_SIZE),
+        getRodaConfiguration().getInt("core.model.observers.async.dead_letter_size",
+          ModelEventDispatcher.DEFAULT_DEAD_LETTER_SIZE)));
+    }
     LOGGER.debug("Finished instantiating model...");
   }
 
@@ -1125,13 +1213,21 @@ public class RodaCoreFactory {
         copyFilesFromClasspath(RodaConstants.CORE_CONFIG_FOLDER + "/" + RodaConstants.CORE_INDEX_FOLDER + "/"
           + SolrUtils.COMMON + "/" + SolrUtils.CONF + "/", commonConf, true);
 
+        // cores rebuilt into a shadow collection keep their data elsewhere
+        Properties aliases = ShadowCollectionManager.readEmbeddedAliases(indexDataPath);
+        ShadowCollectionManager.deleteStaleInstanceDirs(solrHome, SolrCollectionRegistry.registryIndexNames());
+
         for (String collection : SolrCollectionRegistry.registryIndexNames()) {
           Path collectionPath = solrHome.resolve(collection);
           FSUtils.copy(commonConf, collectionPath.resolve(SolrUtils.CONF), true);
 
           // create core.properties
-          Files.write(collectionPath.resolve("core.properties"),
-            ("name=" + collection).getBytes(StandardCharsets.UTF_8));
+          String coreProperties = "name=" + collection;
+          if (aliases.containsKey(collection)) {
+            coreProperties += "\ndataDir="
+              + indexDataPath.resolve(aliases.getProperty(collection)).toString().replace("\\", "/");
+          }
+          Files.write(collectionPath.resolve("core.properties"), coreProperties.getBytes(StandardCharsets.UTF_8));
         }
 
         FSUtils.deletePathQuietly(commonConf);
@@ -1257,9 +1353,20 @@ public class RodaCoreFactory {
       copyFilesFromClasspath(RodaConstants.CORE_CONFIG_FOLDER + "/" + RodaConstants.CORE_INDEX_FOLDER + "/"
         + SolrUtils.COMMON + "/" + SolrUtils.CONF + "/", commonConf, true);
 
+      Map<String, String> aliases = cloudSolrClient.getZkStateReader().getAliases().getCollectionAliasMap();
+      boolean useAliases = getRodaConfiguration().getBoolean("core.index.reindex.shadow_collections", false);
+
       for (String collection : SolrCollectionRegistry.registryIndexNames()) {
-        if (!existingCollections.contains(collection)) {
-          createCollection(cloudSolrClient, collection, commonConf);
+        if (!existingCollections.contains(collection) && !aliases.containsKey(collection)) {
+          if (useAliases) {
+            // address the collection through an alias so it can later be
+            // rebuilt into a shadow collection and switched atomically
+            String physicalCollection = ShadowCollectionManager.createPhysicalName(collection);
+            createCollection(cloudSolrClient, physicalCollection, collection, commonConf);
+            CollectionAdminRequest.createAlias(collection, physicalCollection).process(cloudSolrClient);
+          } else {
+            createCollection(cloudSolrClient, collection, collection, commonConf);
+          }
         }
       }
 
@@ -1268,7 +1375,8 @@ public class RodaCoreFactory {
     }
   }
 
-  private static void createCollection(CloudSolrClient cloudSolrClient, String collection, Path configPath) {
+  private static void createCollection(CloudSolrClient cloudSolrClient, String collection, String configName,
+    Path configPath) {
 
     try {
       LOGGER.info("Creating SOLR collection {}", collection);
@@ -1276,9 +1384,10 @@ public class RodaCoreFactory {
       int numShards = getEnvInt("SOLR_NUM_SHARDS", 1);
       int numReplicas = getEnvInt("SOLR_REPLICATION_FACTOR", 1);
 
-      cloudSolrClient.getZkStateReader().getZkClient().upConfig(configPath, collection);
+      cloudSolrClient.getZkStateReader().getZkClient().upConfig(configPath, configName);
 
-      Create createCollection = CollectionAdminRequest.createCollection(collection, collection, numShards, numReplicas);
+      Create createCollection = CollectionAdminRequest.createCollection(collection, configName, numShards,
+        numReplicas);
       createCollection.setMaxShardsPerNode(getEnvInt("SOLR_MAX_SHARDS_PER_NODE", 1));
       createCollection.setAutoAddReplicas(getEnvBoolean("SOLR_AUTO_ADD_REPLICAS", false));
 
@@ -1339,6 +1448,10 @@ public class RodaCoreFactory {
     OrchestratorType orchestratorType = getOrchestratorType();
     if (orchestratorType == OrchestratorType.AKKA) {
       pluginOrchestrator = new AkkaEmbeddedPluginOrchestrator();
+    } else if (orchestratorType == OrchestratorType.AKKA_DISTRIBUTED) {
+      pluginOrchestrator = new AkkaDistributedPluginOrchestrator(
+        getRodaConfiguration().getString("core.orchestrator.distributed.hostname", "localhost"),
+        getRodaConfiguration().getString("core.orchestrator.distributed.port", "2552"));
     } else {
       LOGGER.error("Orchestrator type '{}' is invalid or not supported. No plugin orchestrator will be started!",
         orchestratorType);
@@ -1375,6 +1488,20 @@ public class RodaCoreFactory {
 
   public static void shutdown() {
     if (instantiated) {
+      synchronized (RodaCoreFactory.class) {
+        if (httpNotificationSender != null) {
+          httpNotificationSender.close();
+          httpNotificationSender = null;
+        }
+        if (clamdClient != null) {
+          clamdClient.close();
+          clamdClient = null;
+        }
+      }
+      if (model != null && model.getModelEventDispatcher() != null) {
+        // send the pending model events before the observers are stopped
+        model.getModelEventDispatcher().close();
+      }
       if (INSTANTIATE_SOLR) {
         try {
           solr.close();
@@ -1391,15 +1518,23 @@ public class RodaCoreFactory {
       if (INSTANTIATE_PLUGIN_ORCHESTRATOR) {
         pluginOrchestrator.shutdown();
       }
+      if (transferredResourcesWatcher != null) {
+        transferredResourcesWatcher.stop();
+      }
+      ToolWorkerPool.shutdownAll();
       if (nodeType == NodeType.TEST) {
         // final cleanup
         FSUtils.deletePathQuietly(workingDirectoryPath);
       }
 
-      // stop jmx metrics reporter
+      // stop metrics reporters
       if (getSystemProperty("com.sun.management.jmxremote", null) != null) {
         jmxMetricsReporter.stop();
       }
+      if (prometheusMetricsReporter != null) {
+        prometheusMetricsReporter.stop();
+      }
+      Tracing.disable();
 
       // delete resources that are no longer needed
       toDeleteDuringShutdown.forEach(e -> FSUtils.deletePathQuietly(e));
@@ -1564,6 +1699,18 @@ public class RodaCoreFactory {
 
       transferredResourcesScanner = new TransferredResourcesScanner(transferredResourcesFolderPath, getIndexService(),
         nodeType);
+
+      if (nodeType == NodeType.MASTER) {
+        TransferredResourcesWatcher.Mode watcherMode = TransferredResourcesWatcher.Mode.valueOf(
+          getConfigurationString("core.transferred_resources.watcher.mode", "none").toUpperCase());
+        long pollInterval = getRodaConfiguration().getLong("core.transferred_resources.watcher.poll_interval_ms",
+          TransferredResourcesWatcher.DEFAULT_POLL_INTERVAL_IN_MILLIS);
+        long quietPeriod = getRodaConfiguration().getLong("core.transferred_resources.watcher.quiet_period_ms",
+          TransferredResourcesWatcher.DEFAULT_QUIET_PERIOD_IN_MILLIS);
+        transferredResourcesWatcher = new TransferredResourcesWatcher(transferredResourcesScanner, watcherMode,
+          pollInterval, quietPeriod);
+        transferredResourcesWatcher.start();
+      }
     } catch (final Exception e) {
       LOGGER.error("Error starting Transferred Resources Scanner: " + e.getMessage(), e);
       instantiatedWithoutErrors = false;
@@ -1611,6 +1758,41 @@ public class RodaCoreFactory {
     return eventsManager;
   }
 
+  /**
+   * Returns the sender of the HTTP notifications, creating it on first use.
+   */
+  public static synchronized HTTPNotificationSender getHTTPNotificationSender() throws IOException {
+    if (httpNotificationSender == null) {
+      Path spoolDirectory = getDataPath().resolve(getRodaConfiguration()
+        .getString("core.notification.http.spool_directory", HTTPNotificationSender.DEFAULT_SPOOL_DIRECTORY));
+      httpNotificationSender = new HTTPNotificationSender(spoolDirectory,
+        getRodaConfigurationAsInt(HTTPNotificationSender.DEFAULT_WORKERS, "core", "notification", "http", "workers"),
+        getRodaConfigurationAsInt(HTTPNotificationSender.DEFAULT_QUEUE_SIZE, "core", "notification", "http",
+          "queue_size"),
+        getRodaConfiguration().getInt(RodaConstants.NOTIFICATION_HTTP_TIMEOUT,
+          HTTPNotificationSender.DEFAULT_TIMEOUT_IN_MILLIS),
+        getRodaConfigurationAsInt(HTTPNotificationSender.DEFAULT_MAX_ATTEMPTS, "core", "notification", "http",
+          "max_attempts"),
+        getRodaConfiguration().getLong("core.notification.http.initial_retry_delay_in_millis",
+          HTTPNotificationSender.DEFAULT_INITIAL_RETRY_DELAY_IN_MILLIS),
+        getRodaConfiguration().getLong("core.notification.http.state_flush_interval_in_millis",
+          HTTPNotificationSender.DEFAULT_STATE_FLUSH_INTERVAL_IN_MILLIS),
+        states -> HTTPNotificationProcessor.updateNotificationStates(model, index, states));
+    }
+    return httpNotificationSender;
+  }
+
+  /**
+   * Returns the client of the clamd daemon, creating it on first use, so that
+   * all antivirus plugin instances share the same pool of connections.
+   */
+  public static synchronized ClamdClient getClamdClient() {
+    if (clamdClient == null) {
+      clamdClient = ClamdAntiVirus.createClient(getRodaConfiguration());
+    }
+    return clamdClient;
+  }
+
   public static TransferredResourcesScanner getTransferredResourcesScanner() {
     return transferredResourcesScanner;
   }
@@ -1643,6 +1825,10 @@ public class RodaCoreFactory {
     return dataPath;
   }
 
+  public static Path getIndexDataPath() {
+    return indexDataPath;
+  }
+
   public static Path getStoragePath() {
     return storagePath;
   }
@@ -1873,6 +2059,7 @@ public class RodaCoreFactory {
     rodaPropertiesCache.clear();
     rodaSharedConfigurationPropertiesCache = null;
     RODA_SCHEMAS_CACHE.invalidateAll();
+    RodaUtils.clearStylesheetCaches();
     I18N_CACHE.invalidateAll();
     SHARED_PROPERTIES_CACHE.invalidateAll();
     processPreservationEventTypeProperties();
@@ -2192,7 +2379,7 @@ public class RodaCoreFactory {
     System.err.println("\tantivirus");
     System.err.println("\tpremisskeleton");
     System.err.println("\treset admin");
-    System.err.println("\tmigrate model");
+    System.err.println("\tmigrate model [dry-run]");
     System.err.println("\tmigrate index");
   }
 
@@ -2204,6 +2391,7 @@ public class RodaCoreFactory {
   private static void printMigrateUsage() {
     System.err.println("Migrate command parameters:");
     System.err.println("\tmodel - performs model related migrations.");
+    System.err.println("\tmodel dry-run - estimates the duration of model related migrations.");
   }
 
   private static void mainMasterTasks(final List<String> args) throws GenericException, RequestNotValidException {
@@ -2247,8 +2435,9 @@ public class RodaCoreFactory {
         final String migrateParam = migrateParams.get(0);
         MigrationManager migrationManager = new MigrationManager(RodaCoreFactory.dataPath);
         if ("model".equals(migrateParam)) {
+          boolean dryRun = migrateParams.size() > 1 && "dry-run".equals(migrateParams.get(1));
           migrationManager.setupModelMigrations();
-          migrationManager.performModelMigrations();
+          migrationManager.performModelMigrations(dryRun);
         } else {
           printMigrateUsage();
         }
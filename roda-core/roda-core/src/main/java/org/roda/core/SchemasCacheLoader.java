@@ -25,6 +25,27 @@ import com.google.common.cache.CacheLoader;
 public class SchemasCacheLoader extends CacheLoader<Pair<String, String>, Optional<Schema>> {
   @Override
   public Optional<Schema> load(Pair<String, String> pair) throws Exception {
+    String schemaPath = getSchemaPath(pair);
+
+    InputStream schemaStream = RodaCoreFactory.getConfigurationFileAsStream(RodaCoreFactory.getConfigPath(), schemaPath);
+
+    Schema xmlSchema = null;
+    try {
+      SchemaFactory schemaFactory = SchemaFactory.newInstance(RodaConstants.W3C_XML_SCHEMA_NS_URI);
+      schemaFactory.setResourceResolver(new ResourceResolver());
+      xmlSchema = schemaFactory.newSchema(new StreamSource(schemaStream));
+    } finally {
+      RodaUtils.closeQuietly(schemaStream);
+    }
+
+    return Optional.ofNullable(xmlSchema);
+  }
+
+  /**
+   * @return the path, relative to the configuration directory, of the schema
+   *         of the given metadata type and version
+   */
+  public static String getSchemaPath(Pair<String, String> pair) {
     String metadataType = pair.getFirst();
     String metadataTypeLowerCase = metadataType.toLowerCase();
     String metadataVersion = pair.getSecond();
@@ -41,19 +62,6 @@ public class SchemasCacheLoader extends CacheLoader<Pair<String, String>, Option
       schemaFileName = metadataTypeLowerCase + ".xsd";
     }
 
-    String schemaPath = RodaConstants.CORE_SCHEMAS_FOLDER + "/" + schemaFileName;
-
-    InputStream schemaStream = RodaCoreFactory.getConfigurationFileAsStream(RodaCoreFactory.getConfigPath(), schemaPath);
-
-    Schema xmlSchema = null;
-    try {
-      SchemaFactory schemaFactory = SchemaFactory.newInstance(RodaConstants.W3C_XML_SCHEMA_NS_URI);
-      schemaFactory.setResourceResolver(new ResourceResolver());
-      xmlSchema = schemaFactory.newSchema(new StreamSource(schemaStream));
-    } finally {
-      RodaUtils.closeQuietly(schemaStream);
-    }
-
-    return Optional.ofNullable(xmlSchema);
+    return RodaConstants.CORE_SCHEMAS_FOLDER + "/" + schemaFileName;
   }
 }
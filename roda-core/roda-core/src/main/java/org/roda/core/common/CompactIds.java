@@ -0,0 +1,148 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+/**
+ * Compact encoding of lists of ids, used to persist large selections of items.
+ * Ids that are UUIDs take 16 bytes and the others are kept as UTF-8, and the
+ * result is deflated and encoded in Base64.
+ */
+public final class CompactIds {
+  /** Lists with less ids than this are kept as plain json arrays */
+  public static final int COMPACT_THRESHOLD = 100;
+
+  private static final int VERSION = 1;
+  private static final byte UUID_ID = 0;
+  private static final byte STRING_ID = 1;
+  private static final int UUID_LENGTH = 36;
+
+  private CompactIds() {
+    // do nothing
+  }
+
+  public static String encode(List<String> ids) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+      out.writeByte(VERSION);
+      out.writeInt(ids.size());
+      for (String id : ids) {
+        UUID uuid = toUUID(id);
+        if (uuid != null) {
+          out.writeByte(UUID_ID);
+          out.writeLong(uuid.getMostSignificantBits());
+          out.writeLong(uuid.getLeastSignificantBits());
+        } else {
+          out.writeByte(STRING_ID);
+          out.writeUTF(id);
+        }
+      }
+    } catch (IOException e) {
+      // writing to memory does not fail
+      throw new IllegalStateException(e);
+    }
+    return Base64.getEncoder().encodeToString(bytes.toByteArray());
+  }
+
+  public static List<String> decode(String encoded) throws IOException {
+    byte[] bytes;
+    try {
+      bytes = Base64.getDecoder().decode(encoded);
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Ids are not properly encoded", e);
+    }
+
+    try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(bytes)))) {
+      int version = in.readByte();
+      if (version != VERSION) {
+        throw new IOException("Unknown encoding version of ids: " + version);
+      }
+      int size = in.readInt();
+      List<String> ids = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        byte type = in.readByte();
+        if (type == UUID_ID) {
+          ids.add(new UUID(in.readLong(), in.readLong()).toString());
+        } else {
+          ids.add(in.readUTF());
+        }
+      }
+      return ids;
+    }
+  }
+
+  /**
+   * @return the UUID, if the id is a UUID in its canonical form, or
+   *         <code>null</code> otherwise
+   */
+  private static UUID toUUID(String id) {
+    if (id == null || id.length() != UUID_LENGTH) {
+      return null;
+    }
+    try {
+      UUID uuid = UUID.fromString(id);
+      return uuid.toString().equals(id) ? uuid : null;
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Writes lists with {@link #COMPACT_THRESHOLD} or more ids in the compact
+   * encoding.
+   */
+  public static class Serializer extends JsonSerializer<List<String>> {
+    @Override
+    public void serialize(List<String> ids, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+      if (ids.size() >= COMPACT_THRESHOLD && !ids.contains(null)) {
+        gen.writeString(encode(ids));
+      } else {
+        gen.writeStartArray();
+        for (String id : ids) {
+          gen.writeString(id);
+        }
+        gen.writeEndArray();
+      }
+    }
+  }
+
+  /**
+   * Reads lists of ids either in the compact encoding or as plain json arrays.
+   */
+  public static class Deserializer extends JsonDeserializer<List<String>> {
+    @Override
+    public List<String> deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+      if (p.getCurrentToken() == JsonToken.VALUE_STRING) {
+        return decode(p.getText());
+      } else {
+        return p.readValueAs(new TypeReference<List<String>>() {
+        });
+      }
+    }
+  }
+}
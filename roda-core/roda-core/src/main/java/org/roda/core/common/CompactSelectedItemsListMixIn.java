@@ -0,0 +1,26 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common;
+
+import java.util.List;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * Persists the ids of large
+ * {@link org.roda.core.data.v2.index.select.SelectedItemsList}s using
+ * {@link CompactIds}.
+ */
+public abstract class CompactSelectedItemsListMixIn {
+  @JsonSerialize(using = CompactIds.Serializer.class)
+  public abstract List<String> getIds();
+
+  @JsonDeserialize(using = CompactIds.Deserializer.class)
+  public abstract void setIds(List<String> ids);
+}
@@ -0,0 +1,127 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+import org.roda.core.RodaCoreFactory;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+/**
+ * Size-bounded, non-expiring cache of objects compiled from configuration
+ * files (e.g. stylesheets and XML schemas).
+ *
+ * <p>
+ * Each entry remembers the last modification time of the configuration files
+ * it may have been compiled from (files that do not exist, and are therefore
+ * loaded from the classpath, are also remembered). At most once every
+ * {@code checkIntervalInMillis} those files are checked again and, if any of
+ * them was created, changed or deleted, the entry is compiled again.
+ * </p>
+ */
+public class ConfigurationFileCache<K, V> {
+  public static final long DEFAULT_MAXIMUM_SIZE = 500;
+  public static final long DEFAULT_CHECK_INTERVAL_IN_MILLIS = 10000;
+
+  private final LoadingCache<K, CachedValue<V>> cache;
+  private final long checkIntervalInMillis;
+
+  /**
+   * @param sourceFiles
+   *          returns the configuration files (relative to the configuration
+   *          directory) the value of a key may be compiled from
+   */
+  public ConfigurationFileCache(CacheLoader<K, V> loader, Function<K, List<String>> sourceFiles, long maximumSize,
+    long checkIntervalInMillis) {
+    this.checkIntervalInMillis = checkIntervalInMillis;
+    this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize).build(new CacheLoader<K, CachedValue<V>>() {
+      @Override
+      public CachedValue<V> load(K key) throws Exception {
+        // take the modification times before compiling so that a change made
+        // while compiling is detected on the next check
+        Map<Path, Long> modificationTimes = getModificationTimes(sourceFiles.apply(key));
+        return new CachedValue<>(loader.load(key), modificationTimes);
+      }
+    });
+  }
+
+  public ConfigurationFileCache(CacheLoader<K, V> loader, Function<K, List<String>> sourceFiles) {
+    this(loader, sourceFiles, DEFAULT_MAXIMUM_SIZE, DEFAULT_CHECK_INTERVAL_IN_MILLIS);
+  }
+
+  public V get(K key) throws ExecutionException {
+    CachedValue<V> cached = cache.get(key);
+    if (cached.isOutdated(checkIntervalInMillis)) {
+      cache.asMap().remove(key, cached);
+      cached = cache.get(key);
+    }
+    return cached.value;
+  }
+
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  private static Map<Path, Long> getModificationTimes(List<String> sourceFiles) {
+    Map<Path, Long> modificationTimes = new HashMap<>();
+    Path configPath = RodaCoreFactory.getConfigPath();
+    if (configPath != null) {
+      for (String sourceFile : sourceFiles) {
+        Path path = configPath.resolve(sourceFile);
+        modificationTimes.put(path, getModificationTime(path));
+      }
+    }
+    return modificationTimes;
+  }
+
+  private static long getModificationTime(Path path) {
+    try {
+      return Files.exists(path) ? Files.getLastModifiedTime(path).toMillis() : -1;
+    } catch (IOException e) {
+      return -1;
+    }
+  }
+
+  private static class CachedValue<V> {
+    private final V value;
+    private final Map<Path, Long> modificationTimes;
+    private volatile long lastCheck;
+
+    CachedValue(V value, Map<Path, Long> modificationTimes) {
+      this.value = value;
+      this.modificationTimes = modificationTimes;
+      this.lastCheck = System.currentTimeMillis();
+    }
+
+    boolean isOutdated(long checkIntervalInMillis) {
+      long now = System.currentTimeMillis();
+      if (now - lastCheck < checkIntervalInMillis) {
+        return false;
+      }
+
+      lastCheck = now;
+      for (Entry<Path, Long> entry : modificationTimes.entrySet()) {
+        if (getModificationTime(entry.getKey()) != entry.getValue()) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+}
@@ -7,18 +7,17 @@
  */
 package org.roda.core.common;
 
-import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
-import org.apache.commons.io.IOUtils;
 import org.roda.core.common.iterables.CloseableIterable;
+import org.roda.core.common.tools.ParallelZipWriter;
 import org.roda.core.common.tools.ZipEntryInfo;
 import org.roda.core.common.tools.ZipTools;
 import org.roda.core.data.exceptions.AuthorizationDeniedException;
@@ -47,6 +46,18 @@ public class DownloadUtils {
   }
 
   public static ConsumesOutputStream download(final StorageService storage, final Resource resource, String name)
+    throws GenericException, RequestNotValidException, NotFoundException, AuthorizationDeniedException {
+    return download(storage, resource, name, Collections.emptySet());
+  }
+
+  /**
+   * @param alreadyCompressed
+   *          paths, relative to the resource and separated by "/", of files
+   *          that are already compressed (e.g. according to their format) and
+   *          are stored in the zip as they are
+   */
+  public static ConsumesOutputStream download(final StorageService storage, final Resource resource, String name,
+    Set<String> alreadyCompressed)
     throws GenericException, RequestNotValidException, NotFoundException, AuthorizationDeniedException {
     ConsumesOutputStream stream;
     final StoragePath storagePath = resource.getStoragePath();
@@ -60,8 +71,7 @@ public class DownloadUtils {
         @Override
         public void consumeOutputStream(OutputStream out) throws IOException {
 
-          try (BufferedOutputStream bos = new BufferedOutputStream(out);
-            ZipOutputStream zos = new ZipOutputStream(bos);
+          try (ParallelZipWriter zip = ZipTools.createZipWriter(out);
             CloseableIterable<Resource> resources = storage.listResourcesUnderDirectory(storagePath, true);) {
             int basePathSize = storagePath.asList().size();
 
@@ -72,18 +82,15 @@ public class DownloadUtils {
 
               if (r.isDirectory()) {
                 // adding a directory
-                entryPath += ZIP_PATH_DELIMITER;
-                zos.putNextEntry(new ZipEntry(entryPath));
-                zos.closeEntry();
+                zip.putDirectory(entryPath);
               } else {
                 // adding a file
-                ZipEntry entry = new ZipEntry(entryPath);
-                zos.putNextEntry(entry);
+                boolean compress = !alreadyCompressed.contains(entryPath) && !ZipTools.isAlreadyCompressed(entryPath);
                 Binary binary = storage.getBinary(r.getStoragePath());
                 try (InputStream inputStream = binary.getContent().createInputStream()) {
-                  IOUtils.copy(inputStream, zos);
+                  Long size = binary.getSizeInBytes();
+                  zip.putEntry(entryPath, inputStream, compress, size != null ? size : ParallelZipWriter.UNKNOWN_SIZE);
                 }
-                zos.closeEntry();
               }
             }
           } catch (GenericException | RequestNotValidException | NotFoundException | AuthorizationDeniedException e) {
@@ -0,0 +1,231 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.roda.core.data.v2.user.User;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Cache of the information {@link LdapUtility} reads on almost every request:
+ * the users (with their groups and roles) and the memberships of all groups
+ * and roles, used to expand the groups and roles of a user without searching
+ * the directory.
+ *
+ * <p>
+ * Users that authenticated successfully are kept with a salted digest of their
+ * password, so the same credentials are accepted again without a new bind
+ * until the entry expires or is invalidated. Every change to the directory
+ * must be followed by {@link #invalidateAll()}; values loaded while a change
+ * happened are not cached.
+ * </p>
+ */
+public class LdapCache {
+  public static final long DEFAULT_TTL_IN_MILLIS = 60000;
+  public static final long DEFAULT_MAX_USERS = 1000;
+
+  private static final String DIGEST_ALGORITHM = "SHA-256";
+
+  private final Cache<String, CachedUser> users;
+  private final long ttlInMillis;
+  private final byte[] salt = new byte[16];
+  private final AtomicLong generation = new AtomicLong();
+  private volatile Memberships memberships = null;
+
+  public LdapCache(long ttlInMillis, long maxUsers) {
+    this.ttlInMillis = ttlInMillis;
+    this.users = CacheBuilder.newBuilder().maximumSize(maxUsers).expireAfterWrite(ttlInMillis, TimeUnit.MILLISECONDS)
+      .build();
+    new SecureRandom().nextBytes(salt);
+  }
+
+  @FunctionalInterface
+  public interface Loader<T, E extends Exception> {
+    T load() throws E;
+  }
+
+  /**
+   * @return a copy of the cached user or of the user loaded, which may be null
+   */
+  public <E extends Exception> User getUser(String username, Loader<User, E> loader) throws E {
+    CachedUser cached = users.getIfPresent(username);
+    if (cached != null) {
+      return copy(cached.user);
+    }
+
+    long loadGeneration = generation.get();
+    User user = loader.load();
+    if (user != null) {
+      put(username, new CachedUser(copy(user), null), loadGeneration);
+    }
+    return user;
+  }
+
+  /**
+   * Returns (a copy of) the cached user if it authenticated before with the
+   * same password, otherwise authenticates it with the given loader (which
+   * must fail if the credentials are not valid).
+   */
+  public <E extends Exception> User getAuthenticatedUser(String username, String password, Loader<User, E> loader)
+    throws E {
+    byte[] credentials = digest(password);
+    CachedUser cached = users.getIfPresent(username);
+    if (cached != null && cached.credentials != null && MessageDigest.isEqual(cached.credentials, credentials)) {
+      return copy(cached.user);
+    }
+
+    long loadGeneration = generation.get();
+    User user = loader.load();
+    if (user != null) {
+      put(username, new CachedUser(copy(user), credentials), loadGeneration);
+    }
+    return user;
+  }
+
+  private void put(String username, CachedUser cachedUser, long loadGeneration) {
+    synchronized (generation) {
+      if (loadGeneration == generation.get()) {
+        users.put(username, cachedUser);
+      }
+    }
+  }
+
+  public <E extends Exception> Memberships getMemberships(Loader<Memberships, E> loader) throws E {
+    Memberships current = memberships;
+    if (current != null && System.currentTimeMillis() - current.loadedOn < ttlInMillis) {
+      return current;
+    }
+
+    long loadGeneration = generation.get();
+    Memberships loaded = loader.load();
+    synchronized (generation) {
+      if (loadGeneration == generation.get()) {
+        memberships = loaded;
+      }
+    }
+    return loaded;
+  }
+
+  /**
+   * Must be called after (not before) users, groups or roles are changed.
+   */
+  public void invalidateAll() {
+    synchronized (generation) {
+      generation.incrementAndGet();
+      memberships = null;
+      users.invalidateAll();
+    }
+  }
+
+  private static User copy(User user) {
+    User copy = new User(user);
+    copy.setAllRoles(user.getAllRoles() != null ? new HashSet<>(user.getAllRoles()) : null);
+    copy.setDirectRoles(user.getDirectRoles() != null ? new HashSet<>(user.getDirectRoles()) : null);
+    copy.setGroups(user.getGroups() != null ? new HashSet<>(user.getGroups()) : null);
+    return copy;
+  }
+
+  private byte[] digest(String password) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+      digest.update(salt);
+      return digest.digest(password.getBytes(StandardCharsets.UTF_8));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static class CachedUser {
+    private final User user;
+    private final byte[] credentials;
+
+    public CachedUser(User user, byte[] credentials) {
+      this.user = user;
+      this.credentials = credentials;
+    }
+  }
+
+  /**
+   * Groups and roles of each member (user or group), by normalized DN.
+   */
+  public static class Memberships {
+    private final Map<String, Set<String>> groupsByMember;
+    private final Set<String> activeGroups;
+    private final Map<String, Set<String>> rolesByMember;
+    private final Map<String, String> names;
+    private final long loadedOn = System.currentTimeMillis();
+
+    /**
+     * @param groupsByMember
+     *          DNs of the groups each member DN belongs to
+     * @param activeGroups
+     *          DNs of the active groups
+     * @param rolesByMember
+     *          DNs of the roles each member DN directly has
+     * @param names
+     *          name of each group and role DN
+     */
+    public Memberships(Map<String, Set<String>> groupsByMember, Set<String> activeGroups,
+      Map<String, Set<String>> rolesByMember, Map<String, String> names) {
+      this.groupsByMember = groupsByMember;
+      this.activeGroups = activeGroups;
+      this.rolesByMember = rolesByMember;
+      this.names = names;
+    }
+
+    public Set<String> getGroups(String memberDN) {
+      return toNames(groupsByMember.getOrDefault(memberDN, Collections.emptySet()));
+    }
+
+    public Set<String> getDirectRoles(String memberDN) {
+      return toNames(rolesByMember.getOrDefault(memberDN, Collections.emptySet()));
+    }
+
+    /**
+     * @return the direct roles of the member and the roles of the active groups
+     *         it belongs to
+     */
+    public Set<String> getAllRoles(String memberDN) {
+      Set<String> roles = new HashSet<>();
+      addAllRoles(memberDN, roles, new HashSet<>());
+      return toNames(roles);
+    }
+
+    private void addAllRoles(String memberDN, Set<String> roles, Set<String> visited) {
+      if (!visited.add(memberDN)) {
+        return;
+      }
+      roles.addAll(rolesByMember.getOrDefault(memberDN, Collections.emptySet()));
+      for (String groupDN : groupsByMember.getOrDefault(memberDN, Collections.emptySet())) {
+        if (activeGroups.contains(groupDN)) {
+          addAllRoles(groupDN, roles, visited);
+        }
+      }
+    }
+
+    private Set<String> toNames(Set<String> dns) {
+      Set<String> ret = new HashSet<>();
+      for (String dn : dns) {
+        ret.add(names.getOrDefault(dn, dn));
+      }
+      return ret;
+    }
+  }
+}
@@ -16,8 +16,10 @@ import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.HashSet;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.io.FileUtils;
@@ -29,6 +31,7 @@ import org.apache.directory.api.ldap.model.entry.Attribute;
 import org.apache.directory.api.ldap.model.entry.DefaultEntry;
 import org.apache.directory.api.ldap.model.entry.DefaultModification;
 import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Modification;
 import org.apache.directory.api.ldap.model.entry.ModificationOperation;
 import org.apache.directory.api.ldap.model.entry.Value;
 import org.apache.directory.api.ldap.model.exception.LdapAuthenticationException;
@@ -42,6 +45,7 @@ import org.apache.directory.api.ldap.model.filter.FilterParser;
 import org.apache.directory.api.ldap.model.ldif.LdifEntry;
 import org.apache.directory.api.ldap.model.ldif.LdifReader;
 import org.apache.directory.api.ldap.model.message.AliasDerefMode;
+import org.apache.directory.api.ldap.model.message.ModifyRequest;
 import org.apache.directory.api.ldap.model.message.ModifyRequestImpl;
 import org.apache.directory.api.ldap.model.message.SearchScope;
 import org.apache.directory.api.ldap.model.name.Dn;
@@ -148,6 +152,10 @@ public class LdapUtility {
   private static final String RODA_DUMMY_USER = "cn=roda,ou=system,dc=roda,dc=org";
 
   private static final int CACHE_SIZE = RodaCoreFactory.getRodaConfiguration().getInt("core.ldap.cacheSize", 100);
+  private static final long LDAP_CACHE_TTL = RodaCoreFactory.getRodaConfiguration().getLong("core.ldap.cache.ttl",
+    LdapCache.DEFAULT_TTL_IN_MILLIS);
+  private static final long LDAP_CACHE_MAX_USERS = RodaCoreFactory.getRodaConfiguration()
+    .getLong("core.ldap.cache.max_users", LdapCache.DEFAULT_MAX_USERS);
   // for backwards compatibility by default define JDBM backend
   private static final String LDAP_BACKEND = RodaCoreFactory.getRodaConfiguration().getString("core.ldap.backend",
     RodaConstants.CORE_LDAP_BACKEND_JDBM);
@@ -235,6 +243,9 @@ public class LdapUtility {
 
   private PartitionFactory partitionFactory;
 
+  /** Users and memberships read from the directory, cleared on every change. */
+  private final LdapCache cache = new LdapCache(LDAP_CACHE_TTL, LDAP_CACHE_MAX_USERS);
+
   /**
    * Constructs a new LdapUtility class with the given parameters.
    *
@@ -311,6 +322,14 @@ public class LdapUtility {
     this.rodaAdministratorsDN = rodaAdministratorsDN;
   }
 
+  /**
+   * Clears the cached users and memberships, e.g. after the directory was
+   * changed without using this class.
+   */
+  public void invalidateCache() {
+    cache.invalidateAll();
+  }
+
   /**
    * Stop the directory service and LDAP server if it is running.
    *
@@ -392,7 +411,7 @@ public class LdapUtility {
     final Rdn rdn = dn.getRdn();
     final Entry entryRoda = service.newEntry(dn).add(OBJECT_CLASS, objectClasses).add(rdn.getType(), rdn.getValue());
     try {
-      session.add(entryRoda);
+      add(session, entryRoda);
     } catch (LdapEntryAlreadyExistsException e) {
       LOGGER.debug("Error injecting the context entry for {}: {}", dnString, e.getMessage());
     }
@@ -409,25 +428,11 @@ public class LdapUtility {
   public List<User> getUsers() throws GenericException {
     try {
       final CoreSession session = service.getAdminSession();
+      final LdapCache.Memberships memberships = getMemberships(session);
       final List<Entry> entries = searchEntries(session, ldapPeopleDN, UID);
       final List<User> users = new ArrayList<>();
       for (Entry entry : entries) {
-
-        final User user = getUserFromEntry(entry);
-
-        // Add all roles assigned to this user
-        final Set<String> memberRoles = getMemberRoles(session, getUserDN(user.getName()));
-        user.setAllRoles(memberRoles);
-
-        // Add direct roles assigned to this user
-        for (String role : getMemberDirectRoles(session, getUserDN(user.getName()))) {
-          user.addDirectRole(role);
-        }
-
-        // Add groups to which this user belongs
-        user.setGroups(getUserGroups(session, user.getName()));
-
-        users.add(user);
+        users.add(setUserRolesAndGroups(memberships, getUserFromEntry(entry)));
       }
 
       return users;
@@ -452,7 +457,11 @@ public class LdapUtility {
    */
   public User getUser(final String name) throws GenericException {
     try {
-      return getUser(service.getAdminSession(), name);
+      return cache.getUser(name, () -> {
+        final CoreSession session = service.getAdminSession();
+        final User user = getUserFromEntry(session.lookup(new Dn(getUserDN(name))));
+        return setUserRolesAndGroups(getMemberships(session), user);
+      });
     } catch (final LdapException e) {
       throw new GenericException("Error getting user " + name, e);
     }
@@ -510,7 +519,7 @@ public class LdapUtility {
 
     try {
       final CoreSession session = service.getAdminSession();
-      session.add(getEntryFromUser(user));
+      add(session, getEntryFromUser(user));
       setMemberDirectRoles(session, getUserDN(user.getName()), user.getDirectRoles());
       setMemberGroups(session, getUserDN(user.getName()), user.getGroups());
 
@@ -651,17 +660,18 @@ public class LdapUtility {
     try {
 
       final CoreSession session = service.getAdminSession();
+      final LdapCache.Memberships memberships = getMemberships(session);
       final List<Entry> entries = searchEntries(session, ldapGroupsDN, CN);
       final List<Group> groups = new ArrayList<>();
       for (Entry entry : entries) {
         final Group group = getGroupFromEntry(entry);
+        final String groupDN = normalizeDN(getGroupDN(group.getName()));
 
         // Add all roles assigned to this group
-        final Set<String> memberRoles = getMemberRoles(session, getGroupDN(group.getName()));
-        group.setAllRoles(memberRoles);
+        group.setAllRoles(memberships.getAllRoles(groupDN));
 
         // Add direct roles assigned to this group
-        for (String role : getMemberDirectRoles(session, getGroupDN(group.getName()))) {
+        for (String role : memberships.getDirectRoles(groupDN)) {
           group.addDirectRole(role);
         }
 
@@ -726,7 +736,7 @@ public class LdapUtility {
       entry.add(UNIQUE_MEMBER, RODA_DUMMY_USER);
 
       final CoreSession session = service.getAdminSession();
-      session.add(entry);
+      add(session, entry);
 
       setMemberDirectRoles(session, getGroupDN(group.getName()), group.getDirectRoles());
 
@@ -819,13 +829,17 @@ public class LdapUtility {
 
     try {
 
-      // Try to get a session using username and password.
-      // Use this session to retrieve user's direct attributes.
-      final CoreSession userSession = service.getSession(new Dn(getUserDN(username)), password.getBytes());
-      final Entry entry = userSession.lookup(new Dn(getUserDN(username)));
-      final User user = getUserFromEntry(entry);
-      // Use the admin session to get the user roles and groups
-      return setUserRolesAndGroups(service.getAdminSession(), user);
+      // Users that authenticated before with the same password are not bound
+      // again until they expire from the cache
+      return cache.getAuthenticatedUser(username, password, () -> {
+        // Try to get a session using username and password.
+        // Use this session to retrieve user's direct attributes.
+        final CoreSession userSession = service.getSession(new Dn(getUserDN(username)), password.getBytes());
+        final Entry entry = userSession.lookup(new Dn(getUserDN(username)));
+        final User user = getUserFromEntry(entry);
+        // Use the admin session to get the user roles and groups
+        return setUserRolesAndGroups(getMemberships(service.getAdminSession()), user);
+      });
 
     } catch (final LdapAuthenticationException e) {
       throw new AuthenticationDeniedException(e.getMessage(), e);
@@ -1106,7 +1120,7 @@ public class LdapUtility {
       entryRole.add(CN, roleName);
       entryRole.add(ROLE_OCCUPANT, rodaAdministratorsDN);
       try {
-        session.add(entryRole);
+        add(session, entryRole);
       } catch (final LdapEntryAlreadyExistsException e) {
         // Assign role to RODA administrators group
         final Set<String> roles = getMemberDirectRoles(session, this.rodaAdministratorsDN);
@@ -1182,33 +1196,122 @@ public class LdapUtility {
     ModifyRequestImpl modifyRequestImpl = new ModifyRequestImpl();
     modifyRequestImpl.setName(new Dn("cn=nis,ou=schema"));
     modifyRequestImpl.replace("m-disabled", "FALSE");
-    session.modify(modifyRequestImpl);
+    modify(session, modifyRequestImpl);
 
     // change admin password
     modifyRequestImpl = new ModifyRequestImpl();
     modifyRequestImpl.setName(new Dn(this.ldapAdminDN));
     modifyRequestImpl.replace(USER_PASSWORD, this.ldapAdminPassword);
-    session.modify(modifyRequestImpl);
+    modify(session, modifyRequestImpl);
 
     return rodaPartition;
   }
 
-  private User setUserRolesAndGroups(final CoreSession session, final User user) throws LdapException {
+  private User setUserRolesAndGroups(final LdapCache.Memberships memberships, final User user) {
+    final String userDN = normalizeDN(getUserDN(user.getName()));
+
     // Add all roles assigned to this user
-    final Set<String> memberRoles = getMemberRoles(session, getUserDN(user.getName()));
-    user.setAllRoles(memberRoles);
+    user.setAllRoles(memberships.getAllRoles(userDN));
 
     // Add direct roles assigned to this user
-    for (String role : getMemberDirectRoles(session, getUserDN(user.getName()))) {
+    for (String role : memberships.getDirectRoles(userDN)) {
       user.addDirectRole(role);
     }
 
     // Add all groups to which this user belongs
-    user.setGroups(getUserGroups(session, user.getName()));
+    user.setGroups(memberships.getGroups(userDN));
 
     return user;
   }
 
+  private LdapCache.Memberships getMemberships(final CoreSession session) throws LdapException {
+    return cache.getMemberships(() -> loadMemberships(session));
+  }
+
+  /**
+   * Reads the members of all groups and roles with two searches, instead of
+   * searching the groups and roles of each user or group.
+   */
+  private LdapCache.Memberships loadMemberships(final CoreSession session) throws LdapException {
+    final Map<String, Set<String>> groupsByMember = new HashMap<>();
+    final Set<String> activeGroups = new HashSet<>();
+    final Map<String, Set<String>> rolesByMember = new HashMap<>();
+    final Map<String, String> names = new HashMap<>();
+
+    for (Entry entry : searchEntries(session, getGroupsDN(), CN)) {
+      final String groupDN = normalizeDN(entry.getDn().getName());
+      names.put(groupDN, getFirstNameFromDN(entry.getDn()));
+      if ("0".equals(getEntryAttributeAsString(entry, SHADOW_INACTIVE))) {
+        activeGroups.add(groupDN);
+      }
+      addMemberships(entry, UNIQUE_MEMBER, groupDN, groupsByMember);
+    }
+
+    for (Entry entry : searchEntries(session, getRolesDN(), CN)) {
+      final String roleDN = normalizeDN(entry.getDn().getName());
+      names.put(roleDN, getFirstNameFromDN(entry.getDn()));
+      addMemberships(entry, ROLE_OCCUPANT, roleDN, rolesByMember);
+    }
+
+    return new LdapCache.Memberships(groupsByMember, activeGroups, rolesByMember, names);
+  }
+
+  private void addMemberships(final Entry entry, final String attributeName, final String dn,
+    final Map<String, Set<String>> membershipsByMember) {
+    final Attribute attribute = entry.get(attributeName);
+    if (attribute != null) {
+      for (Value<?> value : attribute) {
+        membershipsByMember.computeIfAbsent(normalizeDN(value.toString()), k -> new HashSet<>()).add(dn);
+      }
+    }
+  }
+
+  /**
+   * Returns the normalized form of a DN, so that DNs written differently (e.g.
+   * with other case or spacing) can be compared.
+   */
+  private String normalizeDN(final String dn) {
+    try {
+      return new Dn(service.getSchemaManager(), dn).getNormName();
+    } catch (final LdapInvalidDnException e) {
+      LOGGER.debug("Could not normalize DN {}", dn, e);
+      return dn.toLowerCase();
+    }
+  }
+
+  private void add(final CoreSession session, final Entry entry) throws LdapException {
+    try {
+      session.add(entry);
+    } finally {
+      cache.invalidateAll();
+    }
+  }
+
+  private void modify(final CoreSession session, final ModifyRequest modifyRequest) throws LdapException {
+    try {
+      session.modify(modifyRequest);
+    } finally {
+      cache.invalidateAll();
+    }
+  }
+
+  private void modify(final CoreSession session, final Dn dn, final Modification... modifications)
+    throws LdapException {
+    try {
+      session.modify(dn, modifications);
+    } finally {
+      cache.invalidateAll();
+    }
+  }
+
+  private void delete(final CoreSession session, final Dn dn) throws LdapException {
+    try {
+      session.delete(dn);
+    } finally {
+      cache.invalidateAll();
+    }
+  }
+
   private User getUser(final CoreSession session, final String username) throws LdapException {
 
     final Entry entry = session.lookup(new Dn(getUserDN(username)));
@@ -1317,13 +1420,14 @@ public class LdapUtility {
     final Entry entry = session.lookup(new Dn(getGroupDN(name)));
 
     final Group group = getGroupFromEntry(entry);
+    final LdapCache.Memberships memberships = getMemberships(session);
+    final String groupDN = normalizeDN(getGroupDN(name));
 
     // Add all roles assigned to this group
-    final Set<String> memberRoles = getMemberRoles(session, getGroupDN(name));
-    group.setAllRoles(memberRoles);
+    group.setAllRoles(memberships.getAllRoles(groupDN));
 
     // Add direct roles assigned to this group
-    for (String role : getMemberDirectRoles(session, getGroupDN(name))) {
+    for (String role : memberships.getDirectRoles(groupDN)) {
       group.addDirectRole(role);
     }
 
@@ -1408,8 +1512,8 @@ public class LdapUtility {
       for (String memberName : modifiedGroup.getUsers()) {
         entry.add(UNIQUE_MEMBER, getUserDN(memberName));
       }
-      session.delete(entry.getDn());
-      session.add(entry);
+      delete(session, entry.getDn());
+      add(session, entry);
 
       setMemberDirectRoles(session, groupDN, modifiedGroup.getDirectRoles());
 
@@ -1543,8 +1647,8 @@ public class LdapUtility {
           modifiedUserEntry.add(oldEntry.get(USER_PASSWORD));
         }
       }
-      session.delete(modifiedUserEntry.getDn());
-      session.add(modifiedUserEntry);
+      delete(session, modifiedUserEntry.getDn());
+      add(session, modifiedUserEntry);
 
       if (newPassword != null) {
         modifyUserPassword(session, modifiedUser.getName(), newPassword);
@@ -1591,7 +1695,7 @@ public class LdapUtility {
 
     final String passwordDigest = new String(PasswordUtil.createStoragePassword(password, algorithm));
 
-    session.modify(new Dn(getUserDN(username)),
+    modify(session, new Dn(getUserDN(username)),
       new DefaultModification(ModificationOperation.REPLACE_ATTRIBUTE, USER_PASSWORD, passwordDigest));
   }
 
@@ -1608,7 +1712,7 @@ public class LdapUtility {
     final ModifyRequestImpl modifyRequestImpl = new ModifyRequestImpl();
     modifyRequestImpl.setName(entry.getDn());
     modifyRequestImpl.replace(attribute);
-    session.modify(modifyRequestImpl);
+    modify(session, modifyRequestImpl);
   }
 
   private void removeMemberFromRoleOrGroup(final CoreSession session, final String dn, final String memberDN,
@@ -1620,7 +1724,7 @@ public class LdapUtility {
       final ModifyRequestImpl modifyRequestImpl = new ModifyRequestImpl();
       modifyRequestImpl.setName(entry.getDn());
       modifyRequestImpl.replace(attribute);
-      session.modify(modifyRequestImpl);
+      modify(session, modifyRequestImpl);
     }
   }
 
@@ -1636,7 +1740,7 @@ public class LdapUtility {
     for (String roleDN : directMemberRolesDN) {
       removeMemberFromRoleOrGroup(session, roleDN, memberDN, ROLE_OCCUPANT);
     }
-    session.delete(new Dn(memberDN));
+    delete(session, new Dn(memberDN));
   }
 
   /**
@@ -2019,7 +2123,7 @@ public class LdapUtility {
       for (LdifEntry ldifEntry : entries) {
         final DefaultEntry newEntry = new DefaultEntry(this.service.getSchemaManager(), ldifEntry.getEntry());
         LOGGER.debug("LDIF entry: {}", newEntry);
-        this.service.getAdminSession().add(newEntry);
+        add(this.service.getAdminSession(), newEntry);
       }
     }
   }
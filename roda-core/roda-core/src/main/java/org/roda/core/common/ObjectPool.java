@@ -0,0 +1,106 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Thread-safe pool of objects that are expensive to create and cannot be used
+ * by more than one thread at a time (e.g. XML validators and XSLT
+ * transformers). Objects are created on demand and at most
+ * {@code maxIdle} of them are kept for reuse; the others are destroyed when
+ * released, as are the idle ones when the pool is closed.
+ */
+public class ObjectPool<T> implements AutoCloseable {
+  public static final int DEFAULT_MAX_IDLE = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+  private final BlockingQueue<T> idle;
+  private final Supplier<T> factory;
+  private final Consumer<T> reset;
+  private final Consumer<T> destroy;
+  private volatile boolean closed = false;
+
+  /**
+   * @param reset
+   *          called on each object before it is returned to the pool
+   * @param destroy
+   *          called on each object that is not kept by the pool (e.g. to free
+   *          native resources)
+   */
+  public ObjectPool(Supplier<T> factory, Consumer<T> reset, Consumer<T> destroy, int maxIdle) {
+    this.idle = new ArrayBlockingQueue<>(Math.max(1, maxIdle));
+    this.factory = factory;
+    this.reset = reset;
+    this.destroy = destroy;
+  }
+
+  public ObjectPool(Supplier<T> factory, Consumer<T> reset, int maxIdle) {
+    this(factory, reset, object -> {
+      // nothing to free
+    }, maxIdle);
+  }
+
+  public ObjectPool(Supplier<T> factory, Consumer<T> reset) {
+    this(factory, reset, DEFAULT_MAX_IDLE);
+  }
+
+  public T borrow() {
+    T object = idle.poll();
+    return object != null ? object : factory.get();
+  }
+
+  /**
+   * Returns the object to the pool. Must not be called for objects left in an
+   * unknown state (e.g. after an unexpected exception), which must be
+   * {@link #discard(Object) discarded} instead.
+   */
+  public void release(T object) {
+    try {
+      reset.accept(object);
+    } catch (RuntimeException e) {
+      // do not reuse objects that could not be reset
+      discard(object);
+      return;
+    }
+
+    if (closed || !idle.offer(object)) {
+      discard(object);
+    } else if (closed) {
+      // closed while the object was being returned
+      destroyIdle();
+    }
+  }
+
+  public void discard(T object) {
+    try {
+      destroy.accept(object);
+    } catch (RuntimeException e) {
+      // nothing else can be done with it
+    }
+  }
+
+  /**
+   * Destroys the idle objects. Objects released afterwards are destroyed
+   * instead of being kept.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    destroyIdle();
+  }
+
+  private void destroyIdle() {
+    T object;
+    while ((object = idle.poll()) != null) {
+      discard(object);
+    }
+  }
+}
@@ -0,0 +1,209 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs items through a sequence of stages, each item moving to the next stage
+ * as soon as it leaves the previous one (instead of every item finishing a
+ * stage before any of them starts the next one).
+ *
+ * <p>
+ * Each stage has its own number of worker threads and a bounded queue: when a
+ * stage is full, the stage before it waits, so the number of items in flight
+ * is bounded. An item whose stage logic returns false (or throws) leaves the
+ * pipeline. Once no more items can reach a stage, the stage completed listener
+ * is called, always in stage order.
+ * </p>
+ */
+public class Pipeline<T> {
+  private static final Logger LOGGER = LoggerFactory.getLogger(Pipeline.class);
+
+  @FunctionalInterface
+  public interface StageLogic<T> {
+    /**
+     * @return false if the item must not continue to the next stages
+     */
+    boolean process(T item);
+  }
+
+  private final String name;
+  private final int queueSize;
+  private final List<Stage<T>> stages = new ArrayList<>();
+  private Consumer<String> stageCompletedListener = stageName -> {
+    // do nothing
+  };
+
+  // items that may still reach (or are in) each stage
+  private int[] pending;
+  private int nextStageToComplete;
+  private CountDownLatch done;
+
+  /**
+   * @param queueSize
+   *          how many items may wait for each stage, besides the ones being
+   *          processed
+   */
+  public Pipeline(String name, int queueSize) {
+    this.name = name;
+    this.queueSize = Math.max(0, queueSize);
+  }
+
+  public Pipeline<T> addStage(String stageName, int concurrency, StageLogic<T> logic) {
+    stages.add(new Stage<>(stageName, Math.max(1, concurrency), logic));
+    return this;
+  }
+
+  public Pipeline<T> onStageCompleted(Consumer<String> listener) {
+    this.stageCompletedListener = listener;
+    return this;
+  }
+
+  /**
+   * Runs all items through the stages, returning once all of them left the
+   * pipeline. Must not be called concurrently.
+   */
+  public void run(Iterable<T> items) throws InterruptedException {
+    List<T> list = new ArrayList<>();
+    items.forEach(list::add);
+
+    pending = new int[stages.size()];
+    for (int i = 0; i < pending.length; i++) {
+      pending[i] = list.size();
+    }
+    nextStageToComplete = 0;
+    done = new CountDownLatch(1);
+
+    List<ExecutorService> executors = new ArrayList<>();
+    for (Stage<T> stage : stages) {
+      stage.permits = new Semaphore(stage.concurrency + queueSize);
+      stage.executor = Executors.newFixedThreadPool(stage.concurrency, new StageThreadFactory(name, stage.name));
+      executors.add(stage.executor);
+    }
+
+    try {
+      completeStages();
+      for (T item : list) {
+        submit(0, item);
+      }
+      done.await();
+    } finally {
+      for (ExecutorService executor : executors) {
+        executor.shutdownNow();
+      }
+    }
+  }
+
+  private void submit(int stageIndex, T item) throws InterruptedException {
+    Stage<T> stage = stages.get(stageIndex);
+    stage.permits.acquire();
+    try {
+      stage.executor.execute(() -> process(stageIndex, item));
+    } catch (RuntimeException e) {
+      stage.permits.release();
+      throw e;
+    }
+  }
+
+  private void process(int stageIndex, T item) {
+    Stage<T> stage = stages.get(stageIndex);
+    boolean proceed;
+    try {
+      proceed = stage.logic.process(item);
+    } catch (Throwable e) {
+      LOGGER.error("Unexpected error in stage '{}' of pipeline '{}'", stage.name, name, e);
+      proceed = false;
+    } finally {
+      stage.permits.release();
+    }
+
+    int nextStage = stageIndex + 1;
+    if (proceed && nextStage < stages.size()) {
+      leave(stageIndex, stageIndex + 1);
+      try {
+        submit(nextStage, item);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        leave(nextStage, stages.size());
+      } catch (RuntimeException e) {
+        // the pipeline is shutting down
+        leave(nextStage, stages.size());
+      }
+    } else {
+      leave(stageIndex, proceed ? stageIndex + 1 : stages.size());
+    }
+  }
+
+  /**
+   * The item will no longer reach the stages from {@code fromStage}
+   * (inclusive) to {@code toStage} (exclusive).
+   */
+  private synchronized void leave(int fromStage, int toStage) {
+    for (int i = fromStage; i < toStage; i++) {
+      pending[i]--;
+    }
+    completeStages();
+  }
+
+  private synchronized void completeStages() {
+    while (nextStageToComplete < stages.size() && pending[nextStageToComplete] == 0) {
+      String stageName = stages.get(nextStageToComplete).name;
+      nextStageToComplete++;
+      try {
+        stageCompletedListener.accept(stageName);
+      } catch (RuntimeException e) {
+        LOGGER.error("Error notifying completion of stage '{}' of pipeline '{}'", stageName, name, e);
+      }
+    }
+    if (nextStageToComplete == stages.size()) {
+      done.countDown();
+    }
+  }
+
+  private static class Stage<T> {
+    private final String name;
+    private final int concurrency;
+    private final StageLogic<T> logic;
+    private Semaphore permits;
+    private ExecutorService executor;
+
+    Stage(String name, int concurrency, StageLogic<T> logic) {
+      this.name = name;
+      this.concurrency = concurrency;
+      this.logic = logic;
+    }
+  }
+
+  private static class StageThreadFactory implements ThreadFactory {
+    private final String prefix;
+    private final AtomicInteger counter = new AtomicInteger();
+
+    StageThreadFactory(String pipelineName, String stageName) {
+      this.prefix = pipelineName + "-" + stageName + "-";
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
@@ -17,12 +17,11 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Optional;
 
 import javax.xml.transform.Source;
 import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
-import javax.xml.validation.SchemaFactory;
-import javax.xml.validation.Validator;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.solr.common.SolrInputDocument;
@@ -95,7 +94,6 @@ public final class PremisV3Utils {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(PremisV3Utils.class);
   private static final String FIXITY_ORIGINATOR = "RODA";
-  private static final String W3C_XML_SCHEMA_NS_URI = "http://www.w3.org/2001/XMLSchema";
 
   /** Private empty constructor */
   private PremisV3Utils() {
@@ -119,17 +117,17 @@ public final class PremisV3Utils {
   }
 
   public static boolean isPremisV2(Binary binary) throws IOException, SAXException {
+    Optional<Schema> schema = RodaCoreFactory.getRodaSchema("premis-v2-0", null);
+    if (!schema.isPresent()) {
+      throw new SAXException("Could not load PREMIS v2 schema");
+    }
+
     boolean premisV2 = true;
-    try (InputStream inputStream = binary.getContent().createInputStream();
-      InputStream schemaStream = RodaCoreFactory.getConfigurationFileAsStream("schemas/premis-v2-0.xsd")) {
+    try (InputStream inputStream = binary.getContent().createInputStream()) {
       Source xmlFile = new StreamSource(inputStream);
-      SchemaFactory schemaFactory = SchemaFactory.newInstance(W3C_XML_SCHEMA_NS_URI);
-      Schema schema = schemaFactory.newSchema(new StreamSource(schemaStream));
-      Validator validator = schema.newValidator();
       RodaErrorHandler errorHandler = new RodaErrorHandler();
-      validator.setErrorHandler(errorHandler);
       try {
-        validator.validate(xmlFile);
+        RodaUtils.validate(schema.get(), xmlFile, errorHandler);
         List<SAXParseException> errors = errorHandler.getErrors();
         if (!errors.isEmpty()) {
           premisV2 = false;
@@ -24,13 +24,13 @@ import java.nio.file.attribute.BasicFileAttributes;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.xml.transform.OutputKeys;
@@ -41,16 +41,21 @@ import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.sax.SAXSource;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.Validator;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.BOMInputStream;
 import org.apache.commons.lang3.tuple.Triple;
 import org.roda.core.RodaCoreFactory;
+import org.roda.core.common.tracing.Tracing;
+import org.roda.core.common.tracing.Tracing.Stage;
 import org.roda.core.data.common.RodaConstants;
 import org.roda.core.data.exceptions.GenericException;
 import org.roda.core.storage.Binary;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xml.sax.ErrorHandler;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
@@ -71,27 +76,39 @@ import net.sf.saxon.s9api.XsltTransformer;
 
 public class RodaUtils {
   private static final Logger LOGGER = LoggerFactory.getLogger(RodaUtils.class);
+  private static final Tracing.Operation APPLY_STYLESHEET = Tracing.operation(Stage.XSLT, "applyStylesheet");
+  private static final Tracing.Operation APPLY_METADATA_STYLESHEET = Tracing.operation(Stage.XSLT,
+    "applyMetadataStylesheet");
+  private static final Tracing.Operation APPLY_EVENT_STYLESHEET = Tracing.operation(Stage.XSLT, "applyEventStylesheet");
 
   private static final Processor PROCESSOR = new Processor(false);
 
-  private static final LoadingCache<Triple<String, String, String>, XsltExecutable> CACHE = CacheBuilder.newBuilder()
-    .expireAfterWrite(1, TimeUnit.MINUTES).build(new CacheLoader<Triple<String, String, String>, XsltExecutable>() {
-
+  private static final ConfigurationFileCache<Triple<String, String, String>, CompiledStylesheet> CACHE;
+  static {
+    CACHE = new ConfigurationFileCache<>(new CacheLoader<Triple<String, String, String>, CompiledStylesheet>() {
       @Override
-      public XsltExecutable load(Triple<String, String, String> key) throws Exception {
+      public CompiledStylesheet load(Triple<String, String, String> key) throws Exception {
         String basePath = key.getLeft();
         String metadataType = key.getMiddle();
         String metadataVersion = key.getRight();
-        return createMetadataTransformer(basePath, metadataType, metadataVersion);
+        return new CompiledStylesheet(createMetadataTransformer(basePath, metadataType, metadataVersion));
       }
+    }, key -> getMetadataStylesheetPaths(key.getLeft(), key.getMiddle(), key.getRight()));
+  }
 
-    });
+  private static final ConfigurationFileCache<String, CompiledStylesheet> EVENT_CACHE = new ConfigurationFileCache<>(
+    new CacheLoader<String, CompiledStylesheet>() {
+      @Override
+      public CompiledStylesheet load(String path) throws Exception {
+        return new CompiledStylesheet(createEventTransformer(path));
+      }
+    }, Collections::singletonList);
 
-  private static final LoadingCache<String, XsltExecutable> EVENT_CACHE = CacheBuilder.newBuilder()
-    .expireAfterWrite(1, TimeUnit.MINUTES).build(new CacheLoader<String, XsltExecutable>() {
+  private static final LoadingCache<Schema, ObjectPool<Validator>> VALIDATOR_POOLS = CacheBuilder.newBuilder()
+    .weakKeys().build(new CacheLoader<Schema, ObjectPool<Validator>>() {
       @Override
-      public XsltExecutable load(String path) throws Exception {
-        return createEventTransformer(path);
+      public ObjectPool<Validator> load(Schema schema) {
+        return new ObjectPool<>(schema::newValidator, Validator::reset);
       }
     });
 
@@ -186,28 +203,30 @@ public class RodaUtils {
    */
   public static void applyStylesheet(Reader xsltReader, Reader fileReader, Map<String, String> parameters,
     Writer result) throws IOException, TransformerException {
+    try (Tracing.Span span = APPLY_STYLESHEET.start()) {
 
-    TransformerFactory factory = new net.sf.saxon.TransformerFactoryImpl();
-    factory.setURIResolver(new RodaURIFileResolver());
-    Source xsltSource = new StreamSource(xsltReader);
-    Transformer transformer = factory.newTransformer(xsltSource);
-    for (Entry<String, String> parameter : parameters.entrySet()) {
-      transformer.setParameter(parameter.getKey(), parameter.getValue());
-    }
-    try {
-      XMLReader xmlReader = XMLReaderFactory.createXMLReader();
-      xmlReader.setEntityResolver(new RodaEntityResolver());
-      InputSource source = new InputSource(fileReader);
-      Source text = new SAXSource(xmlReader, source);
-      transformer.transform(text, new StreamResult(result));
-    } catch (SAXException se) {
-      LOGGER.error(se.getMessage(), se);
+      TransformerFactory factory = new net.sf.saxon.TransformerFactoryImpl();
+      factory.setURIResolver(new RodaURIFileResolver());
+      Source xsltSource = new StreamSource(xsltReader);
+      Transformer transformer = factory.newTransformer(xsltSource);
+      for (Entry<String, String> parameter : parameters.entrySet()) {
+        transformer.setParameter(parameter.getKey(), parameter.getValue());
+      }
+      try {
+        XMLReader xmlReader = XMLReaderFactory.createXMLReader();
+        xmlReader.setEntityResolver(new RodaEntityResolver());
+        InputSource source = new InputSource(fileReader);
+        Source text = new SAXSource(xmlReader, source);
+        transformer.transform(text, new StreamResult(result));
+      } catch (SAXException se) {
+        LOGGER.error(se.getMessage(), se);
+      }
     }
   }
 
   public static Reader applyMetadataStylesheet(Binary binary, String basePath, String metadataType,
     String metadataVersion, Map<String, String> parameters) throws GenericException {
-    try (
+    try (Tracing.Span span = APPLY_METADATA_STYLESHEET.start(binary.getStoragePath());
       Reader descMetadataReader = new InputStreamReader(new BOMInputStream(binary.getContent().createInputStream()))) {
 
       XMLReader xmlReader = XMLReaderFactory.createXMLReader();
@@ -215,9 +234,10 @@ public class RodaUtils {
       InputSource source = new InputSource(descMetadataReader);
       Source text = new SAXSource(xmlReader, source);
 
-      XsltExecutable xsltExecutable = CACHE.get(Triple.of(basePath, metadataType, metadataVersion));
+      CompiledStylesheet stylesheet = CACHE.get(Triple.of(basePath, metadataType, metadataVersion));
+      ObjectPool<XsltTransformer> pool = stylesheet.getTransformerPool();
 
-      XsltTransformer transformer = xsltExecutable.load();
+      XsltTransformer transformer = pool.borrow();
       CharArrayWriter transformerResult = new CharArrayWriter();
 
       transformer.setSource(text);
@@ -230,6 +250,7 @@ public class RodaUtils {
       }
 
       transformer.transform();
+      pool.release(transformer);
 
       return new CharArrayReader(transformerResult.toCharArray());
 
@@ -241,7 +262,7 @@ public class RodaUtils {
 
   public static Reader applyEventStylesheet(Binary binary, boolean onlyDetails, Map<String, String> translations,
     String path) throws GenericException {
-    try (
+    try (Tracing.Span span = APPLY_EVENT_STYLESHEET.start(binary.getStoragePath());
       Reader descMetadataReader = new InputStreamReader(new BOMInputStream(binary.getContent().createInputStream()))) {
 
       XMLReader xmlReader = XMLReaderFactory.createXMLReader();
@@ -249,9 +270,10 @@ public class RodaUtils {
       InputSource source = new InputSource(descMetadataReader);
       Source text = new SAXSource(xmlReader, source);
 
-      XsltExecutable xsltExecutable = EVENT_CACHE.get(path);
+      CompiledStylesheet stylesheet = EVENT_CACHE.get(path);
+      ObjectPool<XsltTransformer> pool = stylesheet.getTransformerPool();
 
-      XsltTransformer transformer = xsltExecutable.load();
+      XsltTransformer transformer = pool.borrow();
       CharArrayWriter transformerResult = new CharArrayWriter();
 
       transformer.setSource(text);
@@ -267,6 +289,7 @@ public class RodaUtils {
       }
 
       transformer.transform();
+      pool.release(transformer);
       return new CharArrayReader(transformerResult.toCharArray());
     } catch (IOException | SAXException | ExecutionException | SaxonApiException e) {
       LOGGER.error(e.getMessage(), e);
@@ -274,6 +297,53 @@ public class RodaUtils {
     }
   }
 
+  /**
+   * Compiles, if not already compiled, the stylesheet used to transform
+   * metadata of the given type and version.
+   */
+  public static void precompileMetadataStylesheet(String basePath, String metadataType, String metadataVersion)
+    throws GenericException {
+    try {
+      CACHE.get(Triple.of(basePath, metadataType, metadataVersion));
+    } catch (ExecutionException e) {
+      throw new GenericException("Could not compile stylesheet at basePath=" + basePath + ", metadataType="
+        + metadataType + ", metadataVersion=" + metadataVersion, e);
+    }
+  }
+
+  public static void clearStylesheetCaches() {
+    CACHE.invalidateAll();
+    EVENT_CACHE.invalidateAll();
+  }
+
+  /**
+   * Validates the source against the schema reusing, if possible, a previously
+   * created validator.
+   */
+  public static void validate(Schema schema, Source source, ErrorHandler errorHandler)
+    throws SAXException, IOException {
+    ObjectPool<Validator> pool = VALIDATOR_POOLS.getUnchecked(schema);
+    Validator validator = pool.borrow();
+    validator.setErrorHandler(errorHandler);
+    validator.validate(source);
+    pool.release(validator);
+  }
+
+  private static List<String> getMetadataStylesheetPaths(String basePath, String metadataType,
+    String metadataVersion) {
+    List<String> paths = new ArrayList<>();
+    if (metadataType != null) {
+      String lowerCaseMetadataType = metadataType.toLowerCase();
+      if (metadataVersion != null) {
+        paths.add(
+          basePath + lowerCaseMetadataType + RodaConstants.METADATA_VERSION_SEPARATOR + metadataVersion + ".xslt");
+      }
+      paths.add(basePath + lowerCaseMetadataType + ".xslt");
+    }
+    paths.add(basePath + "plain.xslt");
+    return paths;
+  }
+
   protected static XsltExecutable createMetadataTransformer(String basePath, String metadataType,
     String metadataVersion) throws SaxonApiException, GenericException {
     InputStream transformerStream = null;
@@ -385,4 +455,26 @@ public class RodaUtils {
     return size.get();
   }
 
+  /**
+   * A compiled stylesheet plus a pool of transformers ready to run it. Saxon
+   * transformers keep the parameters, source and destination set on them, so
+   * they are cleared when a transformer is returned: the next use starts with
+   * the stylesheet defaults and the previous document and result are not kept
+   * alive by the pool.
+   */
+  private static class CompiledStylesheet {
+    private final ObjectPool<XsltTransformer> transformers;
+
+    CompiledStylesheet(XsltExecutable executable) {
+      this.transformers = new ObjectPool<>(executable::load, transformer -> {
+        transformer.clearParameters();
+        transformer.setSource(null);
+        transformer.setDestination(null);
+      });
+    }
+
+    ObjectPool<XsltTransformer> getTransformerPool() {
+      return transformers;
+    }
+  }
 }
@@ -8,7 +8,9 @@
 package org.roda.core.common;
 
 import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.utils.JsonUtils;
 import org.roda.core.data.v2.IsRODAObject;
+import org.roda.core.data.v2.index.select.SelectedItemsList;
 
 public class SelectedItemsUtils {
 
@@ -26,4 +28,21 @@ public class SelectedItemsUtils {
     }
     return classToReturn;
   }
+
+  /**
+   * Transforms an object (e.g. a job) into json, encoding the ids of large
+   * {@link SelectedItemsList}s with {@link CompactIds}.
+   */
+  public static String getCompactJsonFromObject(Object object) {
+    return JsonUtils.getJsonFromObject(object, SelectedItemsList.class, CompactSelectedItemsListMixIn.class);
+  }
+
+  /**
+   * Transforms json written by {@link #getCompactJsonFromObject(Object)}, or
+   * plain json, into an object.
+   */
+  public static <T> T getObjectFromCompactJson(String json, Class<T> objectClass) throws GenericException {
+    return JsonUtils.getObjectFromJson(json, objectClass, SelectedItemsList.class,
+      CompactSelectedItemsListMixIn.class);
+  }
 }
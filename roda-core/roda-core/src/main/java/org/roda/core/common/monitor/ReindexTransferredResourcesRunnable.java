@@ -8,54 +8,103 @@
 package org.roda.core.common.monitor;
 
 import java.io.IOException;
-import java.nio.file.FileVisitOption;
-import java.nio.file.FileVisitResult;
-import java.nio.file.FileVisitor;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.roda.core.RodaCoreFactory;
 import org.roda.core.data.common.RodaConstants;
 import org.roda.core.data.exceptions.AuthorizationDeniedException;
 import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.exceptions.ReturnWithExceptions;
 import org.roda.core.data.v2.index.filter.Filter;
 import org.roda.core.data.v2.index.filter.NotSimpleFilterParameter;
 import org.roda.core.data.v2.index.filter.SimpleFilterParameter;
 import org.roda.core.data.v2.ip.TransferredResource;
 import org.roda.core.index.IndexService;
 import org.roda.core.index.utils.SolrUtils;
+import org.roda.core.util.IdUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.Lists;
+
+/**
+ * Indexes the transferred resources of a folder (or of the whole transfer
+ * area).
+ *
+ * <p>
+ * When a {@link TransferredResourcesSnapshot} is given, every folder is still
+ * listed but only the resources that were added, changed (size or
+ * modification time) or deleted since they were last indexed are sent to the
+ * index, in batches. Otherwise, or when a full rescan is requested, every
+ * resource is indexed again and the ones not found by the scan are deleted
+ * from the index.
+ * </p>
+ */
 public class ReindexTransferredResourcesRunnable implements Runnable {
   private static final Logger LOGGER = LoggerFactory.getLogger(ReindexTransferredResourcesRunnable.class);
 
+  public static final int DEFAULT_BATCH_SIZE = 1000;
+
   private Path basePath;
   private Optional<String> folderRelativePath;
   private IndexService index;
+  private TransferredResourcesSnapshot snapshot;
+  private boolean fullRescan;
+  private int batchSize;
+
+  // state of the running scan
+  private boolean incremental;
+  private long scanId;
+  private Date lastScanDate;
+  private List<TransferredResource> batch;
+  private long sent;
 
   public ReindexTransferredResourcesRunnable(IndexService index, Path basePath, Optional<String> folderRelativePath) {
+    this(index, basePath, folderRelativePath, null, true, DEFAULT_BATCH_SIZE);
+  }
+
+  public ReindexTransferredResourcesRunnable(IndexService index, Path basePath, Optional<String> folderRelativePath,
+    TransferredResourcesSnapshot snapshot, boolean fullRescan, int batchSize) {
     this.basePath = basePath;
     this.index = index;
     this.folderRelativePath = folderRelativePath;
+    this.snapshot = snapshot;
+    this.fullRescan = fullRescan;
+    this.batchSize = Math.max(1, batchSize);
   }
 
   @Override
   public void run() {
 
     long start = System.currentTimeMillis();
-    Date lastScanDate = new Date();
+    lastScanDate = new Date();
     RodaCoreFactory.setTransferredResourcesScannerUpdateStatus(folderRelativePath, true);
 
     try {
-      EnumSet<FileVisitOption> opts = EnumSet.of(FileVisitOption.FOLLOW_LINKS);
+      // the previous size is needed to update the sizes of the parent folders
+      long previousSize = 0;
+      if (snapshot != null && folderRelativePath.isPresent()) {
+        previousSize = snapshot.getSize(folderRelativePath.get()).orElse(0L);
+      }
+
+      incremental = isIncremental();
+      scanId = snapshot != null ? snapshot.startScan() : 0;
+      batch = new ArrayList<>();
+      sent = 0;
+
       Path path;
       if (folderRelativePath.isPresent()) {
         path = basePath.resolve(Paths.get(folderRelativePath.get()));
@@ -63,85 +112,189 @@ public class ReindexTransferredResourcesRunnable implements Runnable {
         path = basePath;
       }
 
-      LOGGER.info("Start indexing transferred resources {}", path);
-      Files.walkFileTree(path, opts, Integer.MAX_VALUE, new FileVisitor<Path>() {
+      LOGGER.info("Start {} indexing transferred resources {}", incremental ? "incremental" : "full", path);
+      long size = 0;
+      if (Files.exists(path)) {
+        BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        if (attrs.isDirectory()) {
+          size = scanFolder(path, attrs, new HashSet<>());
+        } else {
+          size = scanFile(path, attrs);
+        }
+      }
 
-        ArrayDeque<BasicFileAttributes> actualDirectoryAttributesStack = new ArrayDeque<>();
-        ArrayDeque<Long> fileSizeStack = new ArrayDeque<>();
+      if (snapshot != null && folderRelativePath.isPresent() && size != previousSize) {
+        updateParentFolderSizes(folderRelativePath.get(), size - previousSize);
+      }
 
-        @Override
-        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
-          actualDirectoryAttributesStack.push(attrs);
-          fileSizeStack.push(0L);
-          return FileVisitResult.CONTINUE;
-        }
+      flush();
 
-        @Override
-        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-          try {
-            long size = Files.size(file);
-            long actualSize = fileSizeStack.pop();
-            fileSizeStack.push(actualSize + size);
-            TransferredResource resource = TransferredResourcesScanner.createTransferredResource(file, attrs, size,
-              basePath, lastScanDate);
-            index.create(TransferredResource.class, resource);
-          } catch (NoSuchFileException | AuthorizationDeniedException e) {
-            // can be a broken symlink (do nothing)
-            // can be unauthorized action (do nothing)
-          }
+      int deleted = 0;
+      if (incremental) {
+        deleted = deleteRemoved(snapshot.removeUnseen(folderRelativePath, scanId));
+      } else {
+        index.commit(TransferredResource.class);
 
-          return FileVisitResult.CONTINUE;
+        Filter filter;
+        if (!folderRelativePath.isPresent()) {
+          filter = new Filter(new NotSimpleFilterParameter(RodaConstants.TRANSFERRED_RESOURCE_LAST_SCAN_DATE,
+            SolrUtils.formatDateWithMillis(lastScanDate)));
+        } else {
+          filter = new Filter(
+            new SimpleFilterParameter(RodaConstants.TRANSFERRED_RESOURCE_ANCESTORS, folderRelativePath.get()),
+            new NotSimpleFilterParameter(RodaConstants.TRANSFERRED_RESOURCE_LAST_SCAN_DATE,
+              SolrUtils.formatDateWithMillis(lastScanDate)));
         }
 
-        @Override
-        public FileVisitResult visitFileFailed(Path file, IOException exc) {
-          return FileVisitResult.CONTINUE;
+        index.delete(TransferredResource.class, filter);
+        if (snapshot != null) {
+          snapshot.removeUnseen(folderRelativePath, scanId);
         }
+      }
+
+      index.commit(TransferredResource.class);
+      if (snapshot != null) {
+        snapshot.persist();
+      }
+      LOGGER.info("End indexing Transferred Resources ({} indexed, {} deleted). Time elapsed: {} seconds", sent,
+        deleted, (System.currentTimeMillis() - start) / 1000);
+    } catch (IOException | GenericException | RequestNotValidException | RuntimeException
+      | AuthorizationDeniedException e) {
+      LOGGER.error("Error reindexing Transferred Resources", e);
+      if (snapshot != null) {
+        // the index may now be out of sync with the snapshot
+        snapshot.clear(folderRelativePath);
+      }
+    } finally {
+      RodaCoreFactory.setTransferredResourcesScannerUpdateStatus(folderRelativePath, false);
+    }
+  }
+
+  /**
+   * Scans a folder and everything under it. Folders are listed even if their
+   * modification time did not change, as it does not change when their files
+   * are changed in place.
+   *
+   * @return the total size of the files under the folder
+   */
+  private long scanFolder(Path folder, BasicFileAttributes attrs, Set<Object> ancestorKeys)
+    throws IOException, AuthorizationDeniedException {
+    Object key = attrs.fileKey();
+    if (key != null && !ancestorKeys.add(key)) {
+      // symbolic link to one of its ancestors
+      return 0;
+    }
 
-        @Override
-        public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
-          if (!dir.equals(basePath)) {
-            BasicFileAttributes actualDirectoryAttributes = actualDirectoryAttributesStack.pop();
-            long fileSize = fileSizeStack.pop();
-            TransferredResource resource = TransferredResourcesScanner.createTransferredResource(dir,
-              actualDirectoryAttributes, fileSize, basePath, lastScanDate);
-
-            if (!fileSizeStack.isEmpty()) {
-              long actualSize = fileSizeStack.pop();
-              fileSizeStack.push(actualSize + fileSize);
-            }
-
-            try {
-              index.create(TransferredResource.class, resource);
-            } catch (AuthorizationDeniedException e) {
-              // do nothing & carry on
-            }
+    long size = 0;
+    try (DirectoryStream<Path> children = Files.newDirectoryStream(folder)) {
+      for (Path child : children) {
+        try {
+          BasicFileAttributes childAttrs = Files.readAttributes(child, BasicFileAttributes.class);
+          if (childAttrs.isDirectory()) {
+            size += scanFolder(child, childAttrs, ancestorKeys);
+          } else {
+            size += scanFile(child, childAttrs);
           }
+        } catch (NoSuchFileException | AuthorizationDeniedException e) {
+          // can be a broken symlink (do nothing)
+          // can be unauthorized action (do nothing)
+        }
+      }
+    } finally {
+      if (key != null) {
+        ancestorKeys.remove(key);
+      }
+    }
+
+    if (!folder.equals(basePath) && hasChanged(folder, false, size, attrs)) {
+      try {
+        addToBatch(TransferredResourcesScanner.createTransferredResource(folder, attrs, size, basePath, lastScanDate));
+      } catch (AuthorizationDeniedException e) {
+        // do nothing & carry on
+      }
+    }
+    return size;
+  }
+
+  private long scanFile(Path file, BasicFileAttributes attrs) throws IOException, AuthorizationDeniedException {
+    long size = attrs.size();
+    if (hasChanged(file, true, size, attrs)) {
+      addToBatch(TransferredResourcesScanner.createTransferredResource(file, attrs, size, basePath, lastScanDate));
+    }
+    return size;
+  }
 
-          return FileVisitResult.CONTINUE;
+  /**
+   * Adds the change of size of a scanned folder (or file) to the folders above
+   * it, which were not scanned.
+   */
+  private void updateParentFolderSizes(String relativePath, long sizeDifference)
+    throws IOException, AuthorizationDeniedException {
+    Path parent = basePath.resolve(relativePath).getParent();
+    while (parent != null && parent.startsWith(basePath) && !parent.equals(basePath)) {
+      String parentRelativePath = basePath.relativize(parent).toString();
+      Optional<Long> parentSize = snapshot.getSize(parentRelativePath);
+      if (parentSize.isPresent() && Files.exists(parent)) {
+        long size = parentSize.get() + sizeDifference;
+        BasicFileAttributes attrs = Files.readAttributes(parent, BasicFileAttributes.class);
+        if (hasChanged(parent, false, size, attrs)) {
+          addToBatch(TransferredResourcesScanner.createTransferredResource(parent, attrs, size, basePath,
+            lastScanDate));
         }
-      });
+      }
+      parent = parent.getParent();
+    }
+  }
 
-      index.commit(TransferredResource.class);
+  private void addToBatch(TransferredResource resource) throws IOException, AuthorizationDeniedException {
+    batch.add(resource);
+    if (batch.size() >= batchSize) {
+      flush();
+    }
+  }
 
-      Filter filter;
-      if (!folderRelativePath.isPresent()) {
-        filter = new Filter(new NotSimpleFilterParameter(RodaConstants.TRANSFERRED_RESOURCE_LAST_SCAN_DATE,
-          SolrUtils.formatDateWithMillis(lastScanDate)));
-      } else {
-        filter = new Filter(
-          new SimpleFilterParameter(RodaConstants.TRANSFERRED_RESOURCE_ANCESTORS, folderRelativePath.get()),
-          new NotSimpleFilterParameter(RodaConstants.TRANSFERRED_RESOURCE_LAST_SCAN_DATE,
-            SolrUtils.formatDateWithMillis(lastScanDate)));
+  private boolean isIncremental() throws GenericException, RequestNotValidException {
+    if (snapshot == null) {
+      return false;
+    }
+
+    // without a snapshot (e.g. first scan) or without any indexed resource
+    // (e.g. index was cleared) there is no way to know what must be deleted
+    if (!fullRescan && !snapshot.isEmpty() && index.count(TransferredResource.class, Filter.ALL) > 0) {
+      return true;
+    }
+
+    // the snapshot does not match the index, so everything is indexed again
+    snapshot.clear(folderRelativePath);
+    return false;
+  }
+
+  private boolean hasChanged(Path path, boolean file, long size, BasicFileAttributes attrs) {
+    if (snapshot == null) {
+      return true;
+    }
+
+    String relativePath = basePath.relativize(path).toString();
+    return snapshot.update(relativePath, file, size, attrs.lastModifiedTime().toMillis(), scanId) || !incremental;
+  }
+
+  private void flush() throws IOException, AuthorizationDeniedException {
+    if (!batch.isEmpty()) {
+      ReturnWithExceptions<Void, IndexService> ret = index.createAll(TransferredResource.class, batch);
+      sent += batch.size();
+      batch.clear();
+      if (!ret.getExceptions().isEmpty()) {
+        throw new IOException("Could not index transferred resources", ret.getExceptions().get(0));
       }
+    }
+  }
 
-      index.delete(TransferredResource.class, filter);
-      index.commit(TransferredResource.class);
-      LOGGER.info("End indexing Transferred Resources. Time elapsed: {} seconds",
-        (System.currentTimeMillis() - start) / 1000);
-      RodaCoreFactory.setTransferredResourcesScannerUpdateStatus(folderRelativePath, false);
-    } catch (IOException | GenericException | RuntimeException | AuthorizationDeniedException e) {
-      LOGGER.error("Error reindexing Transferred Resources", e);
+  private int deleteRemoved(List<String> relativePaths)
+    throws GenericException, RequestNotValidException, AuthorizationDeniedException {
+    for (List<String> partition : Lists.partition(relativePaths, batchSize)) {
+      List<String> uuids = partition.stream().map(IdUtils::getTransferredResourceUUID).collect(Collectors.toList());
+      index.delete(TransferredResource.class, uuids);
     }
+    return relativePaths.size();
   }
-}
\ No newline at end of file
+}
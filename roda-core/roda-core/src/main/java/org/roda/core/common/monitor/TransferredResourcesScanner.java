@@ -24,6 +24,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -53,17 +54,25 @@ import org.slf4j.LoggerFactory;
 
 public class TransferredResourcesScanner {
   private static final Logger LOGGER = LoggerFactory.getLogger(TransferredResourcesScanner.class);
+  private static final String SNAPSHOT_FILE_EXTENSION = ".snapshot";
   private static final List<String> fieldsToReturn = Arrays.asList(RodaConstants.INDEX_UUID,
     RodaConstants.TRANSFERRED_RESOURCE_RELATIVEPATH);
 
+  private static final Map<Path, TransferredResourcesSnapshot> SNAPSHOTS = new ConcurrentHashMap<>();
+
   private final Path basePath;
   private IndexService index;
   private NodeType nodeType;
+  private TransferredResourcesSnapshot snapshot;
 
   public TransferredResourcesScanner(Path basePath, IndexService index, NodeType nodeType) {
     this.basePath = basePath;
     this.index = index;
     this.nodeType = nodeType;
+    // scanners of the same folder must share the snapshot
+    Path snapshotFile = basePath.toAbsolutePath().normalize()
+      .resolveSibling(basePath.getFileName() + SNAPSHOT_FILE_EXTENSION);
+    this.snapshot = SNAPSHOTS.computeIfAbsent(snapshotFile, TransferredResourcesSnapshot::new);
   }
 
   public void commit() throws GenericException, AuthorizationDeniedException {
@@ -233,14 +242,35 @@ public class TransferredResourcesScanner {
     index.commit(TransferredResource.class);
   }
 
+  public TransferredResourcesSnapshot getSnapshot() {
+    return snapshot;
+  }
+
+  /**
+   * Sends to the index the resources of the folder (or of the whole transfer
+   * area) that were added, changed or deleted since the last scan.
+   */
   public void updateTransferredResources(Optional<String> folderRelativePath, boolean waitToFinish)
     throws IsStillUpdatingException, GenericException, AuthorizationDeniedException {
+    updateTransferredResources(folderRelativePath, waitToFinish, false);
+  }
+
+  /**
+   * @param fullRescan
+   *          if true, all resources of the folder (or of the whole transfer
+   *          area) are indexed again, even if they did not change since the
+   *          last scan
+   */
+  public void updateTransferredResources(Optional<String> folderRelativePath, boolean waitToFinish,
+    boolean fullRescan) throws IsStillUpdatingException, GenericException, AuthorizationDeniedException {
     RodaCoreFactory.checkIfWriteIsAllowedAndIfFalseThrowException(nodeType);
 
     if (!RodaCoreFactory.getTransferredResourcesScannerUpdateStatus(folderRelativePath)) {
       if (index != null) {
+        int batchSize = RodaCoreFactory.getRodaConfiguration().getInt("core.transferred_resources.scan.batch_size",
+          ReindexTransferredResourcesRunnable.DEFAULT_BATCH_SIZE);
         ReindexTransferredResourcesRunnable reindexRunnable = new ReindexTransferredResourcesRunnable(index, basePath,
-          folderRelativePath);
+          folderRelativePath, snapshot, fullRescan, batchSize);
 
         if (waitToFinish) {
           reindexRunnable.run();
@@ -0,0 +1,233 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common.monitor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * State (size and modification time) of every transferred resource as it was
+ * last sent to the index, used to only send added, changed or deleted
+ * resources on the next scan.
+ *
+ * <p>
+ * The snapshot is kept in memory and persisted, sorted and with the common
+ * prefix of consecutive paths removed, to a gzipped file. A missing or
+ * unreadable file simply results in an empty snapshot, i.e. in a full scan.
+ * </p>
+ */
+public class TransferredResourcesSnapshot {
+  private static final Logger LOGGER = LoggerFactory.getLogger(TransferredResourcesSnapshot.class);
+
+  private static final int FORMAT_VERSION = 1;
+  private static final byte FLAG_FILE = 1;
+
+  private final Path snapshotFile;
+  private final ConcurrentSkipListMap<String, State> states = new ConcurrentSkipListMap<>();
+  private final AtomicLong scanCounter = new AtomicLong();
+  private final Object persistLock = new Object();
+
+  public TransferredResourcesSnapshot(Path snapshotFile) {
+    this.snapshotFile = snapshotFile;
+    load();
+  }
+
+  /**
+   * @return an identifier, greater than all the previous ones, to mark the
+   *         resources seen by a new scan
+   */
+  public long startScan() {
+    return scanCounter.incrementAndGet();
+  }
+
+  /**
+   * Marks the resource as seen by the scan.
+   *
+   * @return true if the resource is new or changed since it was last indexed
+   */
+  public boolean update(String relativePath, boolean file, long size, long lastModified, long scanId) {
+    State state = states.get(relativePath);
+    if (state != null && state.file == file && state.size == size && state.lastModified == lastModified) {
+      state.markSeen(scanId);
+      return false;
+    }
+
+    State newState = new State(file, size, lastModified);
+    newState.markSeen(scanId);
+    states.put(relativePath, newState);
+    return true;
+  }
+
+  /**
+   * Removes the given folder, if it was not seen, and the resources under it
+   * (or everywhere if absent) that were not seen by the scan nor by any scan
+   * started after it.
+   *
+   * @return the relative paths of the removed resources
+   */
+  public List<String> removeUnseen(Optional<String> folderRelativePath, long scanId) {
+    List<String> removed = new ArrayList<>();
+    if (folderRelativePath.isPresent()) {
+      removeUnseen(folderRelativePath.get(), states.get(folderRelativePath.get()), scanId, removed);
+    }
+    for (Entry<String, State> entry : getFolder(folderRelativePath).entrySet()) {
+      removeUnseen(entry.getKey(), entry.getValue(), scanId, removed);
+    }
+    return removed;
+  }
+
+  private void removeUnseen(String relativePath, State state, long scanId, List<String> removed) {
+    if (state != null && state.lastSeen < scanId && states.remove(relativePath, state)) {
+      removed.add(relativePath);
+    }
+  }
+
+  /**
+   * Forgets the given folder (or everything if absent), so that its resources
+   * are indexed again on the next scan.
+   */
+  public void clear(Optional<String> folderRelativePath) {
+    if (folderRelativePath.isPresent()) {
+      states.remove(folderRelativePath.get());
+      getFolder(folderRelativePath).clear();
+    } else {
+      states.clear();
+    }
+  }
+
+  public Optional<Long> getSize(String relativePath) {
+    State state = states.get(relativePath);
+    return state == null ? Optional.empty() : Optional.of(state.size);
+  }
+
+  public boolean isEmpty() {
+    return states.isEmpty();
+  }
+
+  public int size() {
+    return states.size();
+  }
+
+  private NavigableMap<String, State> getFolder(Optional<String> folderRelativePath) {
+    if (folderRelativePath.isPresent()) {
+      // '0' is the character after '/', so this is everything under the folder
+      return states.subMap(folderRelativePath.get() + "/", true, folderRelativePath.get() + "0", false);
+    } else {
+      return states;
+    }
+  }
+
+  public void persist() {
+    if (snapshotFile == null) {
+      return;
+    }
+
+    synchronized (persistLock) {
+      Path temp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+      try {
+        Files.createDirectories(snapshotFile.getParent());
+        try (DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(temp))))) {
+          out.writeInt(FORMAT_VERSION);
+          String previous = "";
+          for (Map.Entry<String, State> entry : states.entrySet()) {
+            String path = entry.getKey();
+            State state = entry.getValue();
+            int shared = commonPrefixLength(previous, path);
+            out.writeBoolean(true);
+            out.writeShort(shared);
+            out.writeUTF(path.substring(shared));
+            out.writeByte(state.file ? FLAG_FILE : 0);
+            out.writeLong(state.size);
+            out.writeLong(state.lastModified);
+            previous = path;
+          }
+          out.writeBoolean(false);
+        }
+        Files.move(temp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException e) {
+        LOGGER.warn("Could not persist transferred resources snapshot to {}", snapshotFile, e);
+      }
+    }
+  }
+
+  private void load() {
+    if (snapshotFile == null) {
+      return;
+    }
+
+    try (DataInputStream in = new DataInputStream(
+      new BufferedInputStream(new GZIPInputStream(Files.newInputStream(snapshotFile))))) {
+      if (in.readInt() != FORMAT_VERSION) {
+        LOGGER.info("Ignoring transferred resources snapshot with unknown format {}", snapshotFile);
+        return;
+      }
+
+      String previous = "";
+      while (in.readBoolean()) {
+        String path = previous.substring(0, in.readUnsignedShort()) + in.readUTF();
+        boolean file = in.readByte() == FLAG_FILE;
+        states.put(path, new State(file, in.readLong(), in.readLong()));
+        previous = path;
+      }
+    } catch (NoSuchFileException e) {
+      // no snapshot yet
+    } catch (IOException | RuntimeException e) {
+      LOGGER.warn("Could not load transferred resources snapshot {}, a full scan will be done", snapshotFile, e);
+      states.clear();
+    }
+  }
+
+  private static int commonPrefixLength(String a, String b) {
+    int max = Math.min(Math.min(a.length(), b.length()), 0xFFFF);
+    int i = 0;
+    while (i < max && a.charAt(i) == b.charAt(i)) {
+      i++;
+    }
+    return i;
+  }
+
+  private static class State {
+    private final boolean file;
+    private final long size;
+    private final long lastModified;
+    private volatile long lastSeen;
+
+    State(boolean file, long size, long lastModified) {
+      this.file = file;
+      this.size = size;
+      this.lastModified = lastModified;
+    }
+
+    synchronized void markSeen(long scanId) {
+      if (scanId > lastSeen) {
+        lastSeen = scanId;
+      }
+    }
+  }
+}
@@ -0,0 +1,259 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common.monitor;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.roda.core.data.exceptions.AuthorizationDeniedException;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.IsStillUpdatingException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the transferred resources index up to date with the transfer area.
+ *
+ * <p>
+ * In {@link Mode#WATCH} mode every folder of the transfer area is registered
+ * in a {@link WatchService} and, once no more events arrive for a while, the
+ * created, changed or deleted resources are incrementally scanned. If the file
+ * system cannot be watched (e.g. network file systems or too many folders for
+ * the inotify limits) or in {@link Mode#POLL} mode, the whole transfer area is
+ * periodically compared with the last snapshot instead. In both modes only the
+ * resources that changed are sent to the index (see
+ * {@link ReindexTransferredResourcesRunnable}).
+ * </p>
+ */
+public class TransferredResourcesWatcher implements Runnable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(TransferredResourcesWatcher.class);
+
+  public static final long DEFAULT_POLL_INTERVAL_IN_MILLIS = 300000;
+  public static final long DEFAULT_QUIET_PERIOD_IN_MILLIS = 2000;
+
+  /** Relative path that stands for the whole transfer area */
+  private static final String WHOLE_TRANSFER_AREA = "";
+
+  public enum Mode {
+    NONE, WATCH, POLL
+  }
+
+  private final TransferredResourcesScanner scanner;
+  private final Path basePath;
+  private final Mode mode;
+  private final long pollIntervalInMillis;
+  private final long quietPeriodInMillis;
+
+  private final Map<WatchKey, Path> watchedFolders = new HashMap<>();
+  private final TreeSet<String> pending = new TreeSet<>();
+  private WatchService watchService;
+  private Thread thread;
+  private volatile boolean running = false;
+
+  public TransferredResourcesWatcher(TransferredResourcesScanner scanner, Mode mode, long pollIntervalInMillis,
+    long quietPeriodInMillis) {
+    this.scanner = scanner;
+    this.basePath = scanner.getBasePath();
+    this.mode = mode;
+    this.pollIntervalInMillis = pollIntervalInMillis;
+    this.quietPeriodInMillis = quietPeriodInMillis;
+  }
+
+  public synchronized void start() {
+    if (mode != Mode.NONE && !running) {
+      running = true;
+      thread = new Thread(this, "TransferredResourcesWatcher");
+      thread.setDaemon(true);
+      thread.start();
+    }
+  }
+
+  public synchronized void stop() {
+    running = false;
+    if (thread != null) {
+      thread.interrupt();
+      thread = null;
+    }
+  }
+
+  @Override
+  public void run() {
+    boolean watching = mode == Mode.WATCH && startWatching();
+
+    // catch up with the changes made while nobody was watching
+    pending.add(WHOLE_TRANSFER_AREA);
+    scanPending();
+
+    try {
+      while (running) {
+        if (watching) {
+          watching = waitForEvents();
+        } else {
+          Thread.sleep(pollIntervalInMillis);
+          pending.add(WHOLE_TRANSFER_AREA);
+        }
+        scanPending();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      stopWatching();
+    }
+  }
+
+  private boolean startWatching() {
+    try {
+      watchService = FileSystems.getDefault().newWatchService();
+      registerAll(basePath);
+      LOGGER.info("Watching {} folders of the transfer area {}", watchedFolders.size(), basePath);
+      return true;
+    } catch (IOException | UnsupportedOperationException e) {
+      LOGGER.warn("Cannot watch the transfer area {}, it will be scanned every {} ms instead", basePath,
+        pollIntervalInMillis, e);
+      stopWatching();
+      return false;
+    }
+  }
+
+  private void stopWatching() {
+    if (watchService != null) {
+      try {
+        watchService.close();
+      } catch (IOException e) {
+        LOGGER.debug("Error closing transfer area watch service", e);
+      }
+      watchService = null;
+      watchedFolders.clear();
+    }
+  }
+
+  private void registerAll(Path start) throws IOException {
+    Files.walkFileTree(start, EnumSet.noneOf(FileVisitOption.class), Integer.MAX_VALUE,
+      new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+          WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+          watchedFolders.put(key, dir);
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException exc) {
+          return FileVisitResult.CONTINUE;
+        }
+      });
+  }
+
+  /**
+   * Collects events until none arrives during the quiet period (or, if there
+   * are paths waiting to be scanned again, until the quiet period passes).
+   *
+   * @return false if the transfer area can no longer be watched
+   */
+  private boolean waitForEvents() throws InterruptedException {
+    try {
+      WatchKey key = pending.isEmpty() ? watchService.take()
+        : watchService.poll(quietPeriodInMillis, TimeUnit.MILLISECONDS);
+      while (key != null && running) {
+        processEvents(key);
+        key = watchService.poll(quietPeriodInMillis, TimeUnit.MILLISECONDS);
+      }
+      return true;
+    } catch (ClosedWatchServiceException | IOException e) {
+      LOGGER.warn("Stopped watching the transfer area {}, it will be scanned every {} ms instead", basePath,
+        pollIntervalInMillis, e);
+      stopWatching();
+      pending.add(WHOLE_TRANSFER_AREA);
+      return false;
+    }
+  }
+
+  private void processEvents(WatchKey key) throws IOException {
+    Path folder = watchedFolders.get(key);
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW || folder == null) {
+        // some events were lost
+        pending.add(WHOLE_TRANSFER_AREA);
+      } else {
+        Path child = folder.resolve((Path) event.context());
+        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+          && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+          registerAll(child);
+        }
+        pending.add(basePath.relativize(child).toString());
+      }
+    }
+
+    if (!key.reset()) {
+      watchedFolders.remove(key);
+    }
+  }
+
+  /**
+   * Scans the pending paths, skipping those under another pending path.
+   * Paths that cannot be scanned now (because they are already being scanned)
+   * are kept for the next time.
+   */
+  private void scanPending() {
+    pending.removeIf(this::hasPendingAncestor);
+    Iterator<String> iterator = pending.iterator();
+    while (iterator.hasNext() && running) {
+      String relativePath = iterator.next();
+
+      Optional<String> folder = WHOLE_TRANSFER_AREA.equals(relativePath) ? Optional.empty()
+        : Optional.of(relativePath);
+      try {
+        scanner.updateTransferredResources(folder, true);
+        iterator.remove();
+      } catch (IsStillUpdatingException e) {
+        LOGGER.debug("Transferred resources {} are still being updated, trying again later", relativePath);
+      } catch (GenericException | AuthorizationDeniedException | RuntimeException e) {
+        LOGGER.error("Error updating transferred resources {}", relativePath, e);
+        iterator.remove();
+      }
+    }
+  }
+
+  private boolean hasPendingAncestor(String relativePath) {
+    if (WHOLE_TRANSFER_AREA.equals(relativePath)) {
+      return false;
+    }
+    if (pending.contains(WHOLE_TRANSFER_AREA)) {
+      return true;
+    }
+
+    int index = relativePath.lastIndexOf('/');
+    while (index > 0) {
+      if (pending.contains(relativePath.substring(0, index))) {
+        return true;
+      }
+      index = relativePath.lastIndexOf('/', index - 1);
+    }
+    return false;
+  }
+}
@@ -7,31 +7,32 @@
  */
 package org.roda.core.common.notifications;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
-import org.apache.http.HttpStatus;
-import org.apache.http.client.config.RequestConfig;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.ContentType;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.roda.core.RodaCoreFactory;
-import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.AuthorizationDeniedException;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.ReturnWithExceptions;
 import org.roda.core.data.utils.JsonUtils;
 import org.roda.core.data.v2.jobs.Job;
 import org.roda.core.data.v2.notifications.Notification;
 import org.roda.core.data.v2.notifications.Notification.NOTIFICATION_STATE;
+import org.roda.core.index.IndexService;
 import org.roda.core.model.ModelService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Sends the notification to an HTTP endpoint. The notification is sent
+ * asynchronously by the {@link HTTPNotificationSender}, which updates its state
+ * once it is sent (or fails).
+ */
 public class HTTPNotificationProcessor implements NotificationProcessor {
   private static final Logger LOGGER = LoggerFactory.getLogger(HTTPNotificationProcessor.class);
   public static final String JOB_KEY = "job";
@@ -52,15 +53,12 @@ public class HTTPNotificationProcessor implements NotificationProcessor {
       String content = createNotificationContent(job);
       notification.setBody(content);
       if (endpoint != null) {
-        LOGGER.debug("Sending notification via HTTP ...");
-        int timeout = RodaCoreFactory.getRodaConfiguration().getInt(RodaConstants.NOTIFICATION_HTTP_TIMEOUT, 10000);
-        boolean success = post(endpoint, content, timeout);
-
-        if (success) {
-          LOGGER.debug("Notification sent");
-          notification.setState(NOTIFICATION_STATE.COMPLETED);
-        } else {
-          LOGGER.debug("Notification not sent");
+        LOGGER.debug("Queueing notification to be sent via HTTP ...");
+        try {
+          RodaCoreFactory.getHTTPNotificationSender().send(notification.getId(), endpoint, content);
+          notification.setState(NOTIFICATION_STATE.CREATED);
+        } catch (IOException e) {
+          LOGGER.error("Could not queue notification to be sent via HTTP", e);
           notification.setState(NOTIFICATION_STATE.FAILED);
         }
       } else {
@@ -76,55 +74,35 @@ public class HTTPNotificationProcessor implements NotificationProcessor {
     return JsonUtils.getJsonFromObject(job);
   }
 
-  private boolean post(String endpoint, String content, int timeout) {
-    boolean success = true;
-    RequestConfig requestConfig = RequestConfig.custom().setSocketTimeout(timeout).setConnectTimeout(timeout)
-      .setConnectionRequestTimeout(timeout).build();
-
-    try (CloseableHttpClient httpclient = HttpClients.createDefault()) {
-      HttpPost httppost = new HttpPost(endpoint);
-      httppost.setConfig(requestConfig);
-      httppost
-        .setEntity(new StringEntity(content, ContentType.create("application/json", RodaConstants.DEFAULT_ENCODING)));
-
-      HttpResponse response = httpclient.execute(httppost);
-      if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
-        success = false;
-      } else {
-        HttpEntity entity = response.getEntity();
-        String responseTxt = processEntity(entity);
-        LOGGER.debug("HTTP response: {}", responseTxt);
+  /**
+   * Updates the state of the notifications, indexing them all together.
+   *
+   * @return ids of the notifications that are not stored (yet)
+   */
+  public static Set<String> updateNotificationStates(ModelService model, IndexService index,
+    Map<String, NOTIFICATION_STATE> states) {
+    Set<String> notFound = new HashSet<>();
+    List<Notification> updated = new ArrayList<>();
+    for (Map.Entry<String, NOTIFICATION_STATE> state : states.entrySet()) {
+      try {
+        Notification notification = model.retrieveNotification(state.getKey());
+        notification.setState(state.getValue());
+        updated.add(model.updateNotification(notification, false));
+      } catch (NotFoundException e) {
+        notFound.add(state.getKey());
+      } catch (GenericException | AuthorizationDeniedException e) {
+        LOGGER.error("Error updating the state of notification {}", state.getKey(), e);
       }
-    } catch (IOException e) {
-      LOGGER.debug("HTTP POST error: {}", e.getMessage());
-      success = false;
     }
 
-    return success;
-  }
-
-  // FIXME 20160905 hsilva: is this method really needed? and, is this the best
-  // way to implement it (30 lines)?
-  private String processEntity(HttpEntity entity) {
-    String responseTxt = null;
-    if (entity != null) {
-      try (InputStream is = entity.getContent()) {
-        StringBuilder sb = new StringBuilder();
-        String line;
-
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(is))) {
-          while ((line = br.readLine()) != null) {
-            sb.append(line);
-          }
-        } catch (IOException e) {
-          // do nothing
-        }
-
-        responseTxt = sb.toString();
-      } catch (UnsupportedOperationException | IOException e1) {
-        // do nothing
+    try {
+      ReturnWithExceptions<Void, IndexService> ret = index.createAll(Notification.class, updated);
+      if (!ret.isEmpty()) {
+        LOGGER.error("Error indexing the state of {} notifications", updated.size(), ret.getExceptions().get(0));
       }
+    } catch (AuthorizationDeniedException e) {
+      LOGGER.error("Error indexing the state of {} notifications", updated.size(), e);
     }
-    return responseTxt;
+    return notFound;
   }
 }
@@ -0,0 +1,461 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common.notifications;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.utils.JsonUtils;
+import org.roda.core.data.v2.notifications.Notification.NOTIFICATION_STATE;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends the HTTP notifications asynchronously, so that jobs do not wait for the
+ * notification endpoints.
+ *
+ * Notifications are queued in a bounded queue and posted by a few worker
+ * threads through a shared, pooled HTTP client (connections are kept alive and
+ * reused). Notifications that could not be sent, or that did not fit in the
+ * queue, are written to a spool directory and retried with exponential
+ * backoff, also after a restart. The final state of each notification
+ * (completed or failed) is handed, in batches, to a {@link StateListener}.
+ */
+public class HTTPNotificationSender implements Closeable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(HTTPNotificationSender.class);
+
+  public static final String DEFAULT_SPOOL_DIRECTORY = "http-notifications-spool";
+  public static final int DEFAULT_WORKERS = 2;
+  public static final int DEFAULT_QUEUE_SIZE = 1000;
+  public static final int DEFAULT_TIMEOUT_IN_MILLIS = 10000;
+  public static final int DEFAULT_MAX_ATTEMPTS = 10;
+  public static final long DEFAULT_INITIAL_RETRY_DELAY_IN_MILLIS = 5000;
+  public static final long DEFAULT_STATE_FLUSH_INTERVAL_IN_MILLIS = 1000;
+
+  private static final long MAX_RETRY_DELAY_IN_MILLIS = TimeUnit.HOURS.toMillis(1);
+  private static final int MAX_STATE_UPDATE_ATTEMPTS = 60;
+  private static final String SPOOL_FILE_EXTENSION = ".json";
+
+  private final Path spoolDirectory;
+  private final int maxAttempts;
+  private final long initialRetryDelayInMillis;
+  private final StateListener stateListener;
+
+  private final PoolingHttpClientConnectionManager connectionManager;
+  private final CloseableHttpClient httpClient;
+  private final BlockingQueue<Delivery> queue;
+  private final List<Thread> workers = new ArrayList<>();
+  private final ScheduledExecutorService scheduler;
+
+  /** Next attempt time of the spooled deliveries, by notification id */
+  private final Map<String, Long> spooled = new ConcurrentHashMap<>();
+  /** Ids of the deliveries in the queue or being sent */
+  private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+  private final Map<String, NOTIFICATION_STATE> pendingStates = new HashMap<>();
+  private final Map<String, Integer> pendingStateAttempts = new HashMap<>();
+
+  private volatile boolean closed = false;
+
+  /**
+   * @param spoolDirectory
+   *          directory where the notifications to retry are kept
+   * @param workers
+   *          number of threads (and of pooled connections) sending
+   *          notifications
+   * @param queueSize
+   *          number of notifications waiting to be sent, the others are
+   *          spooled
+   * @param timeoutInMillis
+   *          connect and read timeout of each request
+   * @param maxAttempts
+   *          number of attempts before a notification fails
+   * @param initialRetryDelayInMillis
+   *          delay before the first retry, doubled for every other retry
+   * @param stateFlushIntervalInMillis
+   *          interval between the batches of states sent to the listener
+   */
+  public HTTPNotificationSender(Path spoolDirectory, int workers, int queueSize, int timeoutInMillis,
+    int maxAttempts, long initialRetryDelayInMillis, long stateFlushIntervalInMillis, StateListener stateListener)
+    throws IOException {
+    this.spoolDirectory = spoolDirectory;
+    this.maxAttempts = Math.max(1, maxAttempts);
+    this.initialRetryDelayInMillis = Math.max(1, initialRetryDelayInMillis);
+    this.stateListener = stateListener;
+
+    Files.createDirectories(spoolDirectory);
+    loadSpool();
+
+    int threads = Math.max(1, workers);
+    connectionManager = new PoolingHttpClientConnectionManager();
+    connectionManager.setMaxTotal(threads);
+    connectionManager.setDefaultMaxPerRoute(threads);
+    RequestConfig requestConfig = RequestConfig.custom().setSocketTimeout(timeoutInMillis)
+      .setConnectTimeout(timeoutInMillis).setConnectionRequestTimeout(timeoutInMillis).build();
+    httpClient = HttpClients.custom().setConnectionManager(connectionManager).setDefaultRequestConfig(requestConfig)
+      .evictIdleConnections(1, TimeUnit.MINUTES).build();
+
+    queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+    for (int i = 0; i < threads; i++) {
+      Thread worker = new Thread(this::work, "http-notification-sender-" + i);
+      worker.setDaemon(true);
+      worker.start();
+      this.workers.add(worker);
+    }
+
+    scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "http-notification-scheduler");
+      thread.setDaemon(true);
+      return thread;
+    });
+    long flushInterval = Math.max(1, stateFlushIntervalInMillis);
+    scheduler.scheduleWithFixedDelay(this::requeueDueDeliveries, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    scheduler.scheduleWithFixedDelay(this::flushStates, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Queues a notification to be posted to the endpoint, without waiting for it
+   * to be sent.
+   */
+  public void send(String notificationId, String endpoint, String content) {
+    Delivery delivery = new Delivery(notificationId, endpoint, content);
+    inFlight.add(notificationId);
+    if (closed || !queue.offer(delivery)) {
+      LOGGER.debug("HTTP notification queue is full, spooling notification {}", notificationId);
+      inFlight.remove(notificationId);
+      spool(delivery, System.currentTimeMillis());
+    }
+  }
+
+  private void work() {
+    while (!closed || !queue.isEmpty()) {
+      Delivery delivery;
+      try {
+        delivery = queue.poll(100, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+
+      if (delivery != null) {
+        try {
+          deliver(delivery);
+        } finally {
+          inFlight.remove(delivery.getNotificationId());
+        }
+      }
+    }
+  }
+
+  private void deliver(Delivery delivery) {
+    delivery.setAttempts(delivery.getAttempts() + 1);
+    if (post(delivery.getEndpoint(), delivery.getContent())) {
+      LOGGER.debug("Notification {} sent", delivery.getNotificationId());
+      unspool(delivery.getNotificationId());
+      addState(delivery.getNotificationId(), NOTIFICATION_STATE.COMPLETED);
+    } else if (delivery.getAttempts() >= maxAttempts) {
+      LOGGER.warn("Notification {} not sent to {} after {} attempts", delivery.getNotificationId(),
+        delivery.getEndpoint(), delivery.getAttempts());
+      unspool(delivery.getNotificationId());
+      addState(delivery.getNotificationId(), NOTIFICATION_STATE.FAILED);
+    } else {
+      long delay = getRetryDelay(delivery.getAttempts());
+      LOGGER.debug("Notification {} not sent, retrying in {} ms", delivery.getNotificationId(), delay);
+      spool(delivery, System.currentTimeMillis() + delay);
+    }
+  }
+
+  private long getRetryDelay(int attempts) {
+    int doublings = Math.min(attempts - 1, 30);
+    return Math.min(initialRetryDelayInMillis << doublings, MAX_RETRY_DELAY_IN_MILLIS);
+  }
+
+  private boolean post(String endpoint, String content) {
+    HttpPost httppost = new HttpPost(endpoint);
+    httppost
+      .setEntity(new StringEntity(content, ContentType.create("application/json", RodaConstants.DEFAULT_ENCODING)));
+
+    try (CloseableHttpResponse response = httpClient.execute(httppost)) {
+      // the response must be consumed for the connection to be reused
+      HttpEntity entity = response.getEntity();
+      String responseTxt = entity != null ? EntityUtils.toString(entity) : null;
+      int status = response.getStatusLine().getStatusCode();
+      LOGGER.debug("HTTP response {}: {}", status, responseTxt);
+      return status >= 200 && status < 300;
+    } catch (IOException | RuntimeException e) {
+      LOGGER.debug("HTTP POST error: {}", e.getMessage());
+      return false;
+    }
+  }
+
+  /***************** Spool related *****************/
+  /**********************************************************/
+
+  private Path getSpoolFile(String notificationId) {
+    return spoolDirectory.resolve(notificationId + SPOOL_FILE_EXTENSION);
+  }
+
+  private void loadSpool() throws IOException {
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(spoolDirectory, "*" + SPOOL_FILE_EXTENSION)) {
+      for (Path file : files) {
+        try {
+          Delivery delivery = JsonUtils.readObjectFromFile(file, Delivery.class);
+          spooled.put(delivery.getNotificationId(), delivery.getNextAttemptInMillis());
+        } catch (GenericException e) {
+          LOGGER.error("Could not read spooled notification {}", file, e);
+        }
+      }
+    }
+    if (!spooled.isEmpty()) {
+      LOGGER.info("{} HTTP notifications waiting to be retried", spooled.size());
+    }
+  }
+
+  private void spool(Delivery delivery, long nextAttemptInMillis) {
+    delivery.setNextAttemptInMillis(nextAttemptInMillis);
+    Path file = getSpoolFile(delivery.getNotificationId());
+    Path temp = spoolDirectory.resolve(delivery.getNotificationId() + ".tmp");
+    try {
+      Files.write(temp, JsonUtils.getJsonFromObject(delivery).getBytes(StandardCharsets.UTF_8));
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      spooled.put(delivery.getNotificationId(), nextAttemptInMillis);
+    } catch (IOException e) {
+      LOGGER.error("Could not spool notification {}, it will not be retried", delivery.getNotificationId(), e);
+      addState(delivery.getNotificationId(), NOTIFICATION_STATE.FAILED);
+    }
+  }
+
+  private void unspool(String notificationId) {
+    if (spooled.remove(notificationId) != null) {
+      try {
+        Files.deleteIfExists(getSpoolFile(notificationId));
+      } catch (IOException e) {
+        LOGGER.warn("Could not delete spooled notification {}", notificationId, e);
+      }
+    }
+  }
+
+  private void requeueDueDeliveries() {
+    long now = System.currentTimeMillis();
+    for (Map.Entry<String, Long> entry : spooled.entrySet()) {
+      String notificationId = entry.getKey();
+      if (closed) {
+        return;
+      } else if (entry.getValue() <= now && inFlight.add(notificationId)) {
+        try {
+          Delivery delivery = JsonUtils.readObjectFromFile(getSpoolFile(notificationId), Delivery.class);
+          if (!queue.offer(delivery)) {
+            // try again on the next run
+            inFlight.remove(notificationId);
+            return;
+          }
+        } catch (GenericException | RuntimeException e) {
+          LOGGER.error("Could not read spooled notification {}, discarding it", notificationId, e);
+          inFlight.remove(notificationId);
+          unspool(notificationId);
+          addState(notificationId, NOTIFICATION_STATE.FAILED);
+        }
+      }
+    }
+  }
+
+  /***************** State related *****************/
+  /**********************************************************/
+
+  private void addState(String notificationId, NOTIFICATION_STATE state) {
+    synchronized (pendingStates) {
+      pendingStates.put(notificationId, state);
+    }
+  }
+
+  private void flushStates() {
+    Map<String, NOTIFICATION_STATE> states;
+    synchronized (pendingStates) {
+      if (pendingStates.isEmpty()) {
+        return;
+      }
+      states = new HashMap<>(pendingStates);
+      pendingStates.clear();
+    }
+
+    Set<String> notUpdated;
+    try {
+      notUpdated = stateListener.updateStates(states);
+    } catch (RuntimeException e) {
+      LOGGER.error("Error updating the state of {} notifications", states.size(), e);
+      notUpdated = states.keySet();
+    }
+
+    // e.g. the notification is being sent before it is stored, retry later
+    synchronized (pendingStates) {
+      for (Map.Entry<String, NOTIFICATION_STATE> state : states.entrySet()) {
+        String notificationId = state.getKey();
+        int attempts = pendingStateAttempts.getOrDefault(notificationId, 0) + 1;
+        if (!notUpdated.contains(notificationId)) {
+          pendingStateAttempts.remove(notificationId);
+        } else if (attempts >= MAX_STATE_UPDATE_ATTEMPTS) {
+          LOGGER.warn("Could not update the state of notification {} to {}", notificationId, state.getValue());
+          pendingStateAttempts.remove(notificationId);
+        } else {
+          pendingStateAttempts.put(notificationId, attempts);
+          pendingStates.putIfAbsent(notificationId, state.getValue());
+        }
+      }
+    }
+  }
+
+  public int getQueueSize() {
+    return queue.size();
+  }
+
+  public int getSpoolSize() {
+    return spooled.size();
+  }
+
+  /**
+   * Stops sending notifications, waiting for the ones being sent. The queued
+   * notifications are spooled to be sent after a restart.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    scheduler.shutdown();
+    try {
+      scheduler.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    List<Delivery> remaining = new ArrayList<>();
+    queue.drainTo(remaining);
+    for (Delivery delivery : remaining) {
+      spool(delivery, System.currentTimeMillis());
+      inFlight.remove(delivery.getNotificationId());
+    }
+
+    for (Thread worker : workers) {
+      try {
+        worker.join(TimeUnit.SECONDS.toMillis(10));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    flushStates();
+    try {
+      httpClient.close();
+    } catch (IOException e) {
+      LOGGER.warn("Error closing HTTP client", e);
+    }
+    connectionManager.close();
+  }
+
+  /**
+   * Receives the final states of the notifications.
+   */
+  @FunctionalInterface
+  public interface StateListener {
+    /**
+     * @return ids of the notifications whose state could not be updated yet
+     *         (e.g. because they are not stored yet), which are tried again
+     *         in the next batch
+     */
+    Set<String> updateStates(Map<String, NOTIFICATION_STATE> states);
+  }
+
+  /**
+   * A notification to send, as kept in the spool.
+   */
+  public static class Delivery implements Serializable {
+    private static final long serialVersionUID = 4726532084116263021L;
+
+    private String notificationId;
+    private String endpoint;
+    private String content;
+    private int attempts = 0;
+    private long nextAttemptInMillis = 0;
+
+    public Delivery() {
+      // used by json deserialization
+    }
+
+    public Delivery(String notificationId, String endpoint, String content) {
+      this.notificationId = notificationId;
+      this.endpoint = endpoint;
+      this.content = content;
+    }
+
+    public String getNotificationId() {
+      return notificationId;
+    }
+
+    public void setNotificationId(String notificationId) {
+      this.notificationId = notificationId;
+    }
+
+    public String getEndpoint() {
+      return endpoint;
+    }
+
+    public void setEndpoint(String endpoint) {
+      this.endpoint = endpoint;
+    }
+
+    public String getContent() {
+      return content;
+    }
+
+    public void setContent(String content) {
+      this.content = content;
+    }
+
+    public int getAttempts() {
+      return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+      this.attempts = attempts;
+    }
+
+    public long getNextAttemptInMillis() {
+      return nextAttemptInMillis;
+    }
+
+    public void setNextAttemptInMillis(long nextAttemptInMillis) {
+      this.nextAttemptInMillis = nextAttemptInMillis;
+    }
+  }
+}
@@ -0,0 +1,483 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common.tools;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.roda.core.common.ObjectPool;
+
+/**
+ * Writes a ZIP archive straight to an output stream, deflating the entries in
+ * parallel.
+ *
+ * <p>
+ * Entry contents are split into blocks that are deflated independently by an
+ * executor (each block is primed with the end of the previous one and all but
+ * the last are sync-flushed, so the concatenated blocks form a single deflate
+ * stream, as pigz does) and written in order as soon as they are ready. Only a
+ * bounded number of blocks is kept in memory and nothing is written to
+ * temporary files. Sizes and CRCs are written in data descriptors and Zip64
+ * records are added when the archive or an entry exceeds 4 GB or there are
+ * more than 65535 entries.
+ * </p>
+ *
+ * <p>
+ * Streaming readers only expect 8 byte sizes in a data descriptor if the local
+ * header has a Zip64 extra field, so that must be decided before the entry is
+ * written: entries whose size is unknown, or that may exceed 4 GB, get both.
+ * As the JDK {@link java.util.zip.ZipInputStream} instead picks the descriptor
+ * format from the actual sizes, small entries should be added with their size.
+ * </p>
+ *
+ * <p>
+ * Entries that should not be compressed (e.g. formats that are already
+ * compressed) are written as deflate stored blocks, which only costs a copy,
+ * because stored entries with data descriptors are not supported by every
+ * streaming reader.
+ * </p>
+ */
+public class ParallelZipWriter implements Closeable {
+  public static final int BLOCK_SIZE = 1024 * 1024;
+  public static final long UNKNOWN_SIZE = -1;
+
+  private static final int DICTIONARY_SIZE = 32 * 1024;
+
+  private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+  private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+  private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+  private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+  private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+  private static final int END_SIGNATURE = 0x06054b50;
+
+  private static final short VERSION = 20;
+  private static final short VERSION_ZIP64 = 45;
+  private static final short FLAG_DATA_DESCRIPTOR = 1 << 3;
+  private static final short FLAG_UTF8 = 1 << 11;
+  private static final short METHOD_STORED = 0;
+  private static final short METHOD_DEFLATED = 8;
+  private static final short ZIP64_EXTRA_ID = 1;
+  private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+  private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+  private static final int ZIP64_LOCAL_EXTRA_LENGTH = 20;
+
+  private final OutputStream out;
+  private final ExecutorService executor;
+  private final int maxBlocksInFlight;
+  private final int dosTime;
+
+  // deflaters hold native memory until ended, so they are only pooled while
+  // this archive is written
+  private final ObjectPool<Deflater> deflaters;
+  private final ObjectPool<Deflater> storers;
+
+  private final byte[] readBuffer = new byte[BLOCK_SIZE];
+  private final Deque<PendingWrite> pending = new ArrayDeque<>();
+  private final List<Entry> entries = new ArrayList<>();
+  private int blocksInFlight = 0;
+  private long written = 0;
+  private boolean finished = false;
+  private boolean failed = false;
+
+  /**
+   * @param maxBlocksInFlight
+   *          maximum number of blocks being deflated or waiting to be written,
+   *          which bounds the memory used to about twice as many megabytes
+   */
+  public ParallelZipWriter(OutputStream out, ExecutorService executor, int maxBlocksInFlight) {
+    this.out = new BufferedOutputStream(out, 64 * 1024);
+    this.executor = executor;
+    this.maxBlocksInFlight = Math.max(1, maxBlocksInFlight);
+    this.dosTime = toDosTime(System.currentTimeMillis());
+    this.deflaters = new ObjectPool<>(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true), Deflater::reset,
+      Deflater::end, this.maxBlocksInFlight);
+    this.storers = new ObjectPool<>(() -> new Deflater(Deflater.NO_COMPRESSION, true), Deflater::reset,
+      Deflater::end, this.maxBlocksInFlight);
+  }
+
+  /**
+   * Adds an entry of unknown size with the contents of the input stream, which
+   * is read until its end but not closed.
+   */
+  public void putEntry(String name, InputStream in, boolean compress) throws IOException {
+    putEntry(name, in, compress, UNKNOWN_SIZE);
+  }
+
+  /**
+   * Adds an entry with the contents of the input stream, which is read until
+   * its end but not closed.
+   *
+   * @param size
+   *          the number of bytes in the input stream or {@link #UNKNOWN_SIZE}
+   */
+  public void putEntry(String name, InputStream in, boolean compress, long size) throws IOException {
+    try {
+      deflateEntry(name, in, compress, size < 0 || mayNeedZip64(size));
+    } catch (IOException | RuntimeException e) {
+      failed = true;
+      cancelPending();
+      throw e;
+    }
+  }
+
+  /**
+   * Stored blocks add 5 bytes for every 64 KB and deflating incompressible data
+   * adds about as much, so a margin of 1/1024 is enough.
+   */
+  private static boolean mayNeedZip64(long size) {
+    return size + (size >> 10) + 1024 >= ZIP64_MAGIC;
+  }
+
+  private void deflateEntry(String name, InputStream in, boolean compress, boolean zip64) throws IOException {
+    Entry entry = new Entry(name, METHOD_DEFLATED, (short) (FLAG_DATA_DESCRIPTOR | FLAG_UTF8));
+    entry.zip64 = zip64;
+    enqueue(() -> writeLocalHeader(entry));
+
+    ObjectPool<Deflater> pool = compress ? deflaters : storers;
+    CRC32 crc = new CRC32();
+    long size = 0;
+    byte[] previous = null;
+    byte[] current = readBlock(in);
+    while (true) {
+      byte[] next = current.length == BLOCK_SIZE ? readBlock(in) : null;
+      boolean last = next == null || next.length == 0;
+
+      crc.update(current, 0, current.length);
+      size += current.length;
+      Future<byte[]> deflated = executor.submit(new DeflateTask(pool, previous, current, last));
+      enqueueBlock(entry, deflated);
+
+      if (last) {
+        break;
+      }
+      previous = current;
+      current = next;
+    }
+
+    entry.crc = crc.getValue();
+    entry.size = size;
+    enqueue(() -> writeDataDescriptor(entry));
+    entries.add(entry);
+  }
+
+  public void putDirectory(String name) throws IOException {
+    Entry entry = new Entry(name.endsWith("/") ? name : name + "/", METHOD_STORED, FLAG_UTF8);
+    enqueue(() -> writeLocalHeader(entry));
+    entries.add(entry);
+  }
+
+  /**
+   * Waits for all entries to be written and writes the central directory. The
+   * underlying output stream is flushed but not closed.
+   */
+  public void finish() throws IOException {
+    if (!finished) {
+      finished = true;
+      while (!pending.isEmpty()) {
+        writeNext();
+      }
+      writeCentralDirectory();
+      out.flush();
+    }
+  }
+
+  /**
+   * Finishes the archive, unless adding an entry failed, and closes the
+   * underlying output stream.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      if (!failed) {
+        finish();
+      }
+    } finally {
+      cancelPending();
+      // deflaters still in use by cancelled blocks are ended when released
+      deflaters.close();
+      storers.close();
+      out.close();
+    }
+  }
+
+  private byte[] readBlock(InputStream in) throws IOException {
+    int length = 0;
+    while (length < BLOCK_SIZE) {
+      int read = in.read(readBuffer, length, BLOCK_SIZE - length);
+      if (read < 0) {
+        break;
+      }
+      length += read;
+    }
+    return Arrays.copyOf(readBuffer, length);
+  }
+
+  private void enqueue(PendingWrite write) throws IOException {
+    if (finished || failed) {
+      throw new IOException("ZIP already finished");
+    }
+    pending.add(write);
+  }
+
+  private void enqueueBlock(Entry entry, Future<byte[]> deflated) throws IOException {
+    enqueue(new BlockWrite(entry, deflated));
+    blocksInFlight++;
+    while (blocksInFlight > maxBlocksInFlight) {
+      writeNext();
+    }
+  }
+
+  private void writeNext() throws IOException {
+    PendingWrite write = pending.poll();
+    try {
+      write.write();
+    } catch (IOException | RuntimeException e) {
+      failed = true;
+      cancelPending();
+      throw e;
+    }
+  }
+
+  private void cancelPending() {
+    for (PendingWrite write : pending) {
+      if (write instanceof BlockWrite) {
+        ((BlockWrite) write).deflated.cancel(true);
+      }
+    }
+    pending.clear();
+    blocksInFlight = 0;
+  }
+
+  private void write(byte[] bytes) throws IOException {
+    out.write(bytes);
+    written += bytes.length;
+  }
+
+  private void writeLocalHeader(Entry entry) throws IOException {
+    entry.offset = written;
+    int extraLength = entry.zip64 ? ZIP64_LOCAL_EXTRA_LENGTH : 0;
+    ByteBuffer header = newBuffer(30 + entry.name.length + extraLength);
+    header.putInt(LOCAL_HEADER_SIGNATURE).putShort(entry.zip64 ? VERSION_ZIP64 : VERSION).putShort(entry.flags)
+      .putShort(entry.method).putInt(dosTime);
+    // sizes and CRC are in the data descriptor (or zero for directories)
+    int sizes = entry.zip64 ? (int) ZIP64_MAGIC : 0;
+    header.putInt(0).putInt(sizes).putInt(sizes);
+    header.putShort((short) entry.name.length).putShort((short) extraLength).put(entry.name);
+    if (entry.zip64) {
+      header.putShort(ZIP64_EXTRA_ID).putShort((short) (ZIP64_LOCAL_EXTRA_LENGTH - 4)).putLong(0).putLong(0);
+    }
+    write(header.array());
+  }
+
+  private void writeDataDescriptor(Entry entry) throws IOException {
+    boolean zip64 = entry.zip64;
+    if (!zip64 && (entry.size >= ZIP64_MAGIC || entry.compressedSize >= ZIP64_MAGIC)) {
+      throw new IOException("Entry " + entry.getName() + " is larger than its declared size");
+    }
+    ByteBuffer descriptor = newBuffer(zip64 ? 24 : 16);
+    descriptor.putInt(DATA_DESCRIPTOR_SIGNATURE).putInt((int) entry.crc);
+    if (zip64) {
+      descriptor.putLong(entry.compressedSize).putLong(entry.size);
+    } else {
+      descriptor.putInt((int) entry.compressedSize).putInt((int) entry.size);
+    }
+    write(descriptor.array());
+  }
+
+  private void writeCentralDirectory() throws IOException {
+    long start = written;
+    for (Entry entry : entries) {
+      boolean sizesZip64 = entry.size >= ZIP64_MAGIC || entry.compressedSize >= ZIP64_MAGIC;
+      boolean offsetZip64 = entry.offset >= ZIP64_MAGIC;
+      int extraLength = (sizesZip64 ? 16 : 0) + (offsetZip64 ? 8 : 0);
+      if (extraLength > 0) {
+        extraLength += 4;
+      }
+      short version = entry.zip64 || extraLength > 0 ? VERSION_ZIP64 : VERSION;
+
+      ByteBuffer header = newBuffer(46 + entry.name.length + extraLength);
+      header.putInt(CENTRAL_HEADER_SIGNATURE).putShort(version).putShort(version).putShort(entry.flags)
+        .putShort(entry.method).putInt(dosTime).putInt((int) entry.crc);
+      header.putInt((int) (sizesZip64 ? ZIP64_MAGIC : entry.compressedSize));
+      header.putInt((int) (sizesZip64 ? ZIP64_MAGIC : entry.size));
+      header.putShort((short) entry.name.length).putShort((short) extraLength);
+      // comment length, disk number, internal and external attributes
+      header.putShort((short) 0).putShort((short) 0).putShort((short) 0).putInt(0);
+      header.putInt((int) (offsetZip64 ? ZIP64_MAGIC : entry.offset));
+      header.put(entry.name);
+      if (extraLength > 0) {
+        header.putShort(ZIP64_EXTRA_ID).putShort((short) (extraLength - 4));
+        if (sizesZip64) {
+          header.putLong(entry.size).putLong(entry.compressedSize);
+        }
+        if (offsetZip64) {
+          header.putLong(entry.offset);
+        }
+      }
+      write(header.array());
+    }
+    long size = written - start;
+
+    int count = entries.size();
+    if (count >= ZIP64_MAGIC_COUNT || start >= ZIP64_MAGIC || size >= ZIP64_MAGIC) {
+      long zip64EndOffset = written;
+      ByteBuffer zip64End = newBuffer(56 + 20);
+      zip64End.putInt(ZIP64_END_SIGNATURE).putLong(44).putShort(VERSION_ZIP64).putShort(VERSION_ZIP64).putInt(0)
+        .putInt(0).putLong(count).putLong(count).putLong(size).putLong(start);
+      zip64End.putInt(ZIP64_LOCATOR_SIGNATURE).putInt(0).putLong(zip64EndOffset).putInt(1);
+      write(zip64End.array());
+    }
+
+    ByteBuffer end = newBuffer(22);
+    end.putInt(END_SIGNATURE).putShort((short) 0).putShort((short) 0);
+    end.putShort((short) Math.min(count, ZIP64_MAGIC_COUNT)).putShort((short) Math.min(count, ZIP64_MAGIC_COUNT));
+    end.putInt((int) Math.min(size, ZIP64_MAGIC)).putInt((int) Math.min(start, ZIP64_MAGIC)).putShort((short) 0);
+    write(end.array());
+  }
+
+  private static ByteBuffer newBuffer(int size) {
+    return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  private static int toDosTime(long time) {
+    Calendar calendar = Calendar.getInstance();
+    calendar.setTimeInMillis(time);
+    int year = calendar.get(Calendar.YEAR);
+    if (year < 1980) {
+      return (1 << 21) | (1 << 16);
+    }
+    return (year - 1980) << 25 | (calendar.get(Calendar.MONTH) + 1) << 21 | calendar.get(Calendar.DAY_OF_MONTH) << 16
+      | calendar.get(Calendar.HOUR_OF_DAY) << 11 | calendar.get(Calendar.MINUTE) << 5
+      | calendar.get(Calendar.SECOND) >> 1;
+  }
+
+  private interface PendingWrite {
+    void write() throws IOException;
+  }
+
+  private class BlockWrite implements PendingWrite {
+    private final Entry entry;
+    private final Future<byte[]> deflated;
+
+    BlockWrite(Entry entry, Future<byte[]> deflated) {
+      this.entry = entry;
+      this.deflated = deflated;
+    }
+
+    @Override
+    public void write() throws IOException {
+      blocksInFlight--;
+      try {
+        byte[] bytes = deflated.get();
+        ParallelZipWriter.this.write(bytes);
+        entry.compressedSize += bytes.length;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while deflating " + entry.getName(), e);
+      } catch (ExecutionException e) {
+        throw new IOException("Could not deflate " + entry.getName(), e.getCause());
+      }
+    }
+  }
+
+  private static class DeflateTask implements Callable<byte[]> {
+    private final ObjectPool<Deflater> deflaters;
+    private final byte[] previous;
+    private final byte[] input;
+    private final boolean last;
+
+    DeflateTask(ObjectPool<Deflater> deflaters, byte[] previous, byte[] input, boolean last) {
+      this.deflaters = deflaters;
+      this.previous = previous;
+      this.input = input;
+      this.last = last;
+    }
+
+    @Override
+    public byte[] call() {
+      Deflater deflater = deflaters.borrow();
+      byte[] deflated;
+      try {
+        deflated = deflate(deflater);
+      } catch (RuntimeException e) {
+        deflaters.discard(deflater);
+        throw e;
+      }
+      deflaters.release(deflater);
+      return deflated;
+    }
+
+    private byte[] deflate(Deflater deflater) {
+      if (previous != null) {
+        int dictionaryLength = Math.min(DICTIONARY_SIZE, previous.length);
+        deflater.setDictionary(previous, previous.length - dictionaryLength, dictionaryLength);
+      }
+      deflater.setInput(input);
+
+      byte[] output = new byte[input.length + input.length / 16 + 64];
+      int length = 0;
+      if (last) {
+        deflater.finish();
+        while (!deflater.finished()) {
+          if (length == output.length) {
+            output = Arrays.copyOf(output, output.length * 2);
+          }
+          length += deflater.deflate(output, length, output.length - length);
+        }
+      } else {
+        while (true) {
+          length += deflater.deflate(output, length, output.length - length, Deflater.SYNC_FLUSH);
+          if (length < output.length) {
+            break;
+          }
+          output = Arrays.copyOf(output, output.length * 2);
+        }
+      }
+      return Arrays.copyOf(output, length);
+    }
+  }
+
+  private static class Entry {
+    private final byte[] name;
+    private final short method;
+    private final short flags;
+    private long offset;
+    private long crc;
+    private long size;
+    private long compressedSize;
+    private boolean zip64 = false;
+
+    Entry(String name, short method, short flags) {
+      this.name = name.getBytes(StandardCharsets.UTF_8);
+      this.method = method;
+      this.flags = flags;
+    }
+
+    String getName() {
+      return new String(name, StandardCharsets.UTF_8);
+    }
+  }
+}
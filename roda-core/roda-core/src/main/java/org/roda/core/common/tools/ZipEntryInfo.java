@@ -24,6 +24,8 @@ public class ZipEntryInfo {
 
   private final ContentPayload payload;
 
+  private boolean compress = true;
+
   /**
    * Create a new zip entry info
    * 
@@ -59,4 +61,17 @@ public class ZipEntryInfo {
     return payload;
   }
 
+  /**
+   * @return false if the entry is already compressed and should be stored in
+   *         the zip as it is
+   */
+  public boolean isCompress() {
+    return compress;
+  }
+
+  public ZipEntryInfo setCompress(boolean compress) {
+    this.compress = compress;
+    return this;
+  }
+
 }
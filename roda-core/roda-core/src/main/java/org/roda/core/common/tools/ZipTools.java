@@ -10,11 +10,23 @@ package org.roda.core.common.tools;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.apache.commons.io.IOUtils;
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.io.FilenameUtils;
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.storage.ContentPayload;
 
 /**
  * Tools to handle Zips
@@ -24,45 +36,115 @@ import org.apache.commons.io.IOUtils;
  */
 public class ZipTools {
 
+  private static final List<String> DEFAULT_ALREADY_COMPRESSED_EXTENSIONS = Arrays.asList("zip", "gz", "tgz", "bz2",
+    "xz", "7z", "rar", "jar", "jpg", "jpeg", "jp2", "png", "gif", "mp3", "mp4", "m4a", "m4v", "mov", "mkv", "webm",
+    "ogg", "docx", "xlsx", "pptx", "odt", "ods", "odp", "epub");
+
   private ZipTools() {
     // do nothing
   }
 
   /**
-   * Zip a list of files into an output stream
+   * Zip a list of files into an output stream, which is closed at the end
    * 
    * @param files
    * @param out
    * @throws IOException
    */
-  public static void zip(List<ZipEntryInfo> files, OutputStream out) throws IOException {
-    ZipOutputStream zos = new ZipOutputStream(out);
-
-    for (ZipEntryInfo file : files) {
-      ZipEntry entry = new ZipEntry(file.getName());
-      zos.putNextEntry(entry);
-      InputStream inputStream = file.getPayload().createInputStream();
-      sendToZip(inputStream, zos);
-      IOUtils.closeQuietly(inputStream);
-      zos.closeEntry();
+  public static void zip(Iterable<ZipEntryInfo> files, OutputStream out) throws IOException {
+    try (ParallelZipWriter zip = createZipWriter(out)) {
+      for (ZipEntryInfo file : files) {
+        try (InputStream inputStream = file.getPayload().createInputStream()) {
+          zip.putEntry(file.getName(), inputStream, file.isCompress() && !isAlreadyCompressed(file.getName()),
+            getSize(file.getPayload()));
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the size of the payload if it is a local file, otherwise
+   *         {@link ParallelZipWriter#UNKNOWN_SIZE}
+   */
+  private static long getSize(ContentPayload payload) {
+    try {
+      URI uri = payload.getURI();
+      if ("file".equals(uri.getScheme())) {
+        return Files.size(Paths.get(uri));
+      }
+    } catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+      // size is unknown
     }
+    return ParallelZipWriter.UNKNOWN_SIZE;
+  }
 
-    IOUtils.closeQuietly(zos);
-    IOUtils.closeQuietly(out);
+  /**
+   * Creates a writer that deflates entries using the shared ZIP thread pool
+   * (see {@code core.zip.threads}).
+   */
+  public static ParallelZipWriter createZipWriter(OutputStream out) {
+    return new ParallelZipWriter(out, Deflaters.EXECUTOR, 2 * Deflaters.THREADS);
   }
 
-  private static void sendToZip(InputStream in, ZipOutputStream zos) throws IOException {
-    byte[] buffer = new byte[4096];
-    int retval;
+  /**
+   * @return true if the file extension is one of the formats that are stored
+   *         in ZIPs without being compressed again (see
+   *         {@code core.zip.store.extensions})
+   */
+  public static boolean isAlreadyCompressed(String fileName) {
+    String extension = FilenameUtils.getExtension(fileName).toLowerCase(Locale.ROOT);
+    return !extension.isEmpty() && AlreadyCompressedFormats.EXTENSIONS.contains(extension);
+  }
 
-    do {
-      retval = in.read(buffer, 0, 4096);
-      if (retval != -1) {
-        zos.write(buffer, 0, retval);
+  /**
+   * @return true if the PRONOM identifier is one of the formats that are
+   *         stored in ZIPs without being compressed again (see
+   *         {@code core.zip.store.pronom})
+   */
+  public static boolean isAlreadyCompressedFormat(String pronom) {
+    return pronom != null && AlreadyCompressedFormats.PRONOMS.contains(pronom);
+  }
+
+  public static Set<String> getAlreadyCompressedFormats() {
+    return AlreadyCompressedFormats.PRONOMS;
+  }
+
+  private static class Deflaters {
+    private static final int THREADS = getThreads();
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+      private final AtomicInteger counter = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "zip-deflater-" + counter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
       }
-    } while (retval != -1);
+    });
 
-    in.close();
+    private static int getThreads() {
+      int threads = Runtime.getRuntime().availableProcessors();
+      Configuration configuration = RodaCoreFactory.getRodaConfiguration();
+      if (configuration != null) {
+        threads = configuration.getInt("core.zip.threads", threads);
+      }
+      return Math.max(1, threads);
+    }
+  }
 
+  private static class AlreadyCompressedFormats {
+    private static final Set<String> EXTENSIONS = new HashSet<>();
+    private static final Set<String> PRONOMS = new HashSet<>();
+
+    static {
+      Configuration configuration = RodaCoreFactory.getRodaConfiguration();
+      if (configuration != null) {
+        Arrays.stream(configuration.getStringArray("core.zip.store.extensions"))
+          .forEach(e -> EXTENSIONS.add(e.toLowerCase(Locale.ROOT)));
+        PRONOMS.addAll(Arrays.asList(configuration.getStringArray("core.zip.store.pronom")));
+      } else {
+        EXTENSIONS.addAll(DEFAULT_ALREADY_COMPRESSED_EXTENSIONS);
+      }
+    }
   }
 }
@@ -0,0 +1,90 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common.tracing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.WeightedSnapshot;
+import com.codahale.metrics.WeightedSnapshot.WeightedSample;
+
+/**
+ * Reservoir of latencies (in nanoseconds) that only counts them in fixed
+ * logarithmic buckets, so an update is two atomic increments with no locking,
+ * allocation or clock reading.
+ *
+ * <p>
+ * Each power of two is split in {@link #SUB_BUCKETS} buckets, so quantiles have
+ * a relative error below 1/{@link #SUB_BUCKETS}. Unlike the sliding window
+ * reservoirs, values are kept since the reservoir was created.
+ * </p>
+ */
+final class LatencyReservoir implements Reservoir {
+  private static final int SUB_BUCKET_BITS = 3;
+  static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+  private final LongAdder total = new LongAdder();
+
+  @Override
+  public int size() {
+    long size = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      size += buckets.get(i);
+    }
+    return (int) Math.min(size, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public void update(long value) {
+    long positiveValue = Math.max(value, 0);
+    buckets.incrementAndGet(bucketOf(positiveValue));
+    total.add(positiveValue);
+  }
+
+  public long getTotal() {
+    return total.sum();
+  }
+
+  @Override
+  public Snapshot getSnapshot() {
+    List<WeightedSample> samples = new ArrayList<>();
+    for (int i = 0; i < BUCKETS; i++) {
+      long count = buckets.get(i);
+      if (count > 0) {
+        samples.add(new WeightedSample(valueOf(i), count));
+      }
+    }
+    return new WeightedSnapshot(samples);
+  }
+
+  static int bucketOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+  }
+
+  /**
+   * @return the middle of the values counted in the bucket
+   */
+  static long valueOf(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = bucket / SUB_BUCKETS - 1;
+    long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+    return lowest + ((1L << shift) >>> 1);
+  }
+}
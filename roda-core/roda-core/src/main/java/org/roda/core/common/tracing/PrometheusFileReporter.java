@@ -0,0 +1,184 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common.tracing;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.ScheduledReporter;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
+/**
+ * Periodically writes all metrics to a file in the Prometheus text format, to
+ * be collected by e.g. the textfile collector of the Prometheus node exporter.
+ *
+ * <p>
+ * The tracing histograms (see {@link Tracing}) are written as a single
+ * summary, <code>roda_stage_latency_seconds</code>, labelled by stage and
+ * operation. The other metrics are written under their (sanitized) names,
+ * prefixed by <code>roda_</code>.
+ * </p>
+ */
+public class PrometheusFileReporter extends ScheduledReporter {
+  private static final Logger LOGGER = LoggerFactory.getLogger(PrometheusFileReporter.class);
+
+  private static final String NAME_PREFIX = "roda_";
+  private static final String STAGE_LATENCY_NAME = NAME_PREFIX + "stage_latency_seconds";
+  private static final double[] QUANTILES = {0.5, 0.75, 0.95, 0.99};
+  private static final double SECONDS_IN_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private final Path file;
+
+  public PrometheusFileReporter(MetricRegistry registry, Path file) {
+    super(registry, "prometheus-file-reporter", MetricFilter.ALL, TimeUnit.SECONDS, TimeUnit.SECONDS);
+    this.file = file;
+  }
+
+  @Override
+  public void report(SortedMap<String, Gauge> gauges, SortedMap<String, Counter> counters,
+    SortedMap<String, Histogram> histograms, SortedMap<String, Meter> meters, SortedMap<String, Timer> timers) {
+    try {
+      Files.createDirectories(file.toAbsolutePath().getParent());
+      Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+      try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+        write(writer, gauges, counters, histograms, meters, timers);
+      }
+      // the file must be replaced atomically so it is never read half written
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      LOGGER.warn("Could not write metrics to {}", file, e);
+    }
+  }
+
+  /**
+   * Writes all the metrics of the registry in the Prometheus text format.
+   */
+  public static void write(MetricRegistry registry, Writer writer) throws IOException {
+    write(writer, registry.getGauges(), registry.getCounters(), registry.getHistograms(), registry.getMeters(),
+      registry.getTimers());
+  }
+
+  private static void write(Writer writer, SortedMap<String, Gauge> gauges, SortedMap<String, Counter> counters,
+    SortedMap<String, Histogram> histograms, SortedMap<String, Meter> meters, SortedMap<String, Timer> timers)
+    throws IOException {
+    for (Map.Entry<String, Gauge> gauge : gauges.entrySet()) {
+      Object value = gauge.getValue().getValue();
+      if (value instanceof Number || value instanceof Boolean) {
+        String name = sanitize(gauge.getKey());
+        writeType(writer, name, "gauge");
+        writeSample(writer, name, "", value instanceof Boolean ? (((Boolean) value) ? 1 : 0)
+          : ((Number) value).doubleValue());
+      }
+    }
+
+    for (Map.Entry<String, Counter> counter : counters.entrySet()) {
+      String name = sanitize(counter.getKey());
+      writeType(writer, name, "gauge");
+      writeSample(writer, name, "", counter.getValue().getCount());
+    }
+
+    for (Map.Entry<String, Meter> meter : meters.entrySet()) {
+      String name = sanitize(meter.getKey()) + "_total";
+      writeType(writer, name, "counter");
+      writeSample(writer, name, "", meter.getValue().getCount());
+    }
+
+    boolean stageLatencyTypeWritten = false;
+    String stagePrefix = Tracing.METRIC_PREFIX + ".";
+    for (Map.Entry<String, Histogram> histogram : histograms.entrySet()) {
+      String[] stageAndOperation = histogram.getKey().startsWith(stagePrefix)
+        ? histogram.getKey().substring(stagePrefix.length()).split("\\.", 2)
+        : new String[0];
+      Histogram value = histogram.getValue();
+
+      if (value instanceof Tracing.SpanHistogram && stageAndOperation.length == 2) {
+        if (!stageLatencyTypeWritten) {
+          writer.write("# HELP " + STAGE_LATENCY_NAME + " Latency of the operations of each processing stage\n");
+          writeType(writer, STAGE_LATENCY_NAME, "summary");
+          stageLatencyTypeWritten = true;
+        }
+        String labels = "stage=\"" + escape(stageAndOperation[0]) + "\",operation=\"" + escape(stageAndOperation[1])
+          + "\"";
+        double sum = ((Tracing.SpanHistogram) value).getTotalNanos() / SECONDS_IN_NANOS;
+        writeSummary(writer, STAGE_LATENCY_NAME, labels, value.getSnapshot(), SECONDS_IN_NANOS, value.getCount(), sum);
+      } else {
+        String name = sanitize(histogram.getKey());
+        writeType(writer, name, "summary");
+        writeSummary(writer, name, "", value.getSnapshot(), 1, value.getCount(), null);
+      }
+    }
+
+    for (Map.Entry<String, Timer> timer : timers.entrySet()) {
+      String name = sanitize(timer.getKey()) + "_seconds";
+      writeType(writer, name, "summary");
+      writeSummary(writer, name, "", timer.getValue().getSnapshot(), SECONDS_IN_NANOS, timer.getValue().getCount(),
+        null);
+    }
+  }
+
+  private static void writeSummary(Writer writer, String name, String labels, Snapshot snapshot, double divisor,
+    long count, Double sum) throws IOException {
+    String labelsPrefix = labels.isEmpty() ? "" : labels + ",";
+    for (double quantile : QUANTILES) {
+      writeSample(writer, name, labelsPrefix + "quantile=\"" + quantile + "\"", snapshot.getValue(quantile) / divisor);
+    }
+    if (sum != null) {
+      writeSample(writer, name + "_sum", labels, sum);
+    }
+    writeSample(writer, name + "_count", labels, count);
+  }
+
+  private static void writeType(Writer writer, String name, String type) throws IOException {
+    writer.write("# TYPE " + name + " " + type + "\n");
+  }
+
+  private static void writeSample(Writer writer, String name, String labels, double value) throws IOException {
+    writer.write(name);
+    if (!labels.isEmpty()) {
+      writer.write("{" + labels + "}");
+    }
+    writer.write(" " + format(value) + "\n");
+  }
+
+  private static String format(double value) {
+    if (Double.isNaN(value)) {
+      return "NaN";
+    } else if (Double.isInfinite(value)) {
+      return value > 0 ? "+Inf" : "-Inf";
+    } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+      return Long.toString((long) value);
+    } else {
+      return Double.toString(value);
+    }
+  }
+
+  static String sanitize(String name) {
+    return NAME_PREFIX + name.replaceAll("[^a-zA-Z0-9_:]", "_");
+  }
+
+  private static String escape(String labelValue) {
+    return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+}
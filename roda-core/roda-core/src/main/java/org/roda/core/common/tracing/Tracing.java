@@ -0,0 +1,319 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common.tracing;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Lightweight tracing of the main processing stages, to know where the time
+ * of a job goes.
+ *
+ * <p>
+ * A span measures one run of an {@link Operation} of a {@link Stage} and must
+ * be closed when the operation ends. Operations are looked up once and kept,
+ * e.g.
+ * </p>
+ *
+ * <pre>
+ * private static final Tracing.Operation GET_BINARY = Tracing.operation(Stage.STORAGE, "getBinary");
+ * ...
+ * try (Tracing.Span span = GET_BINARY.start(storagePath)) {
+ *   ...
+ * }
+ * </pre>
+ *
+ * <p>
+ * Spans are aggregated into one latency histogram per stage and operation,
+ * registered in the metric registry as
+ * <code>tracing.&lt;stage&gt;.&lt;operation&gt;</code>. All spans are
+ * counted, but only one in each sampling interval is timed, as reading the
+ * clock twice adds a few percent to the fastest operations being traced. The
+ * histograms only count latencies in logarithmic buckets (see
+ * {@link LatencyReservoir}). Timed spans slower than the configured threshold
+ * are logged with the id of their object and of the job running in the thread
+ * (see {@link #inJob(String)}). Until tracing is configured (or after it is
+ * disabled) spans are a shared no-op.
+ * </p>
+ */
+public final class Tracing {
+  private static final Logger LOGGER = LoggerFactory.getLogger(Tracing.class);
+
+  public static final String METRIC_PREFIX = "tracing";
+
+  public enum Stage {
+    MODEL, STORAGE, INDEX, XSLT, TOOL, PLUGIN;
+
+    public String getMetricName() {
+      return name().toLowerCase(Locale.ENGLISH);
+    }
+  }
+
+  private static final Span NOOP_SPAN = new Span(null, null, null, null);
+  private static final ThreadLocal<String> JOB_ID = new ThreadLocal<>();
+  private static final Map<Stage, Map<String, Operation>> OPERATIONS = new EnumMap<>(Stage.class);
+
+  static {
+    for (Stage stage : Stage.values()) {
+      OPERATIONS.put(stage, new ConcurrentHashMap<>());
+    }
+  }
+
+  private static volatile Tracer tracer = null;
+
+  private Tracing() {
+    // do nothing
+  }
+
+  /**
+   * Configures tracing to time all spans.
+   * 
+   * @param slowSpanThresholdInMillis
+   *          spans taking longer are logged, 0 to log none
+   */
+  public static void configure(MetricRegistry metricRegistry, long slowSpanThresholdInMillis) {
+    configure(metricRegistry, slowSpanThresholdInMillis, 1);
+  }
+
+  /**
+   * @param slowSpanThresholdInMillis
+   *          timed spans taking longer are logged, 0 to log none
+   * @param samplingInterval
+   *          on average one in this number of spans is timed, 1 to time all
+   */
+  public static void configure(MetricRegistry metricRegistry, long slowSpanThresholdInMillis, int samplingInterval) {
+    tracer = new Tracer(metricRegistry, slowSpanThresholdInMillis, Math.max(samplingInterval, 1));
+  }
+
+  public static void disable() {
+    tracer = null;
+  }
+
+  public static boolean isEnabled() {
+    return tracer != null;
+  }
+
+  /**
+   * Gets the operation of the stage with the given name, to be kept by the
+   * caller (e.g. in a static field) and used to start its spans.
+   */
+  public static Operation operation(Stage stage, String name) {
+    Map<String, Operation> stageOperations = OPERATIONS.get(stage);
+    Operation operation = stageOperations.get(name);
+    if (operation == null) {
+      operation = stageOperations.computeIfAbsent(name, k -> new Operation(stage, name));
+    }
+    return operation;
+  }
+
+  /**
+   * Starts a span of an operation whose name is only known at run time (e.g.
+   * the plugin being executed). As it looks the operation up, operations that
+   * run often should rather be kept and started with
+   * {@link Operation#start(Object)}.
+   */
+  public static Span start(Stage stage, String operation) {
+    return start(stage, operation, null);
+  }
+
+  /**
+   * @param objectId
+   *          id of the object the operation works on, only converted to string
+   *          if the span is logged
+   */
+  public static Span start(Stage stage, String operation, Object objectId) {
+    if (tracer == null) {
+      return NOOP_SPAN;
+    }
+    return operation(stage, operation).start(objectId);
+  }
+
+  /**
+   * Associates the spans started by the current thread, until the returned
+   * scope is closed, to the given job.
+   */
+  public static Scope inJob(String jobId) {
+    String previous = JOB_ID.get();
+    JOB_ID.set(jobId);
+    return () -> {
+      if (previous != null) {
+        JOB_ID.set(previous);
+      } else {
+        JOB_ID.remove();
+      }
+    };
+  }
+
+  public static String getMetricName(Stage stage, String operation) {
+    return MetricRegistry.name(METRIC_PREFIX, stage.getMetricName(), operation);
+  }
+
+  @FunctionalInterface
+  public interface Scope extends AutoCloseable {
+    @Override
+    void close();
+  }
+
+  public static final class Operation {
+    private final Stage stage;
+    private final String name;
+    private final String metricName;
+    // histogram of the current tracer, replaced when tracing is configured again
+    private volatile Recording recording = null;
+
+    private Operation(Stage stage, String name) {
+      this.stage = stage;
+      this.name = name;
+      this.metricName = getMetricName(stage, name);
+    }
+
+    public Span start() {
+      return start(null);
+    }
+
+    /**
+     * @param objectId
+     *          id of the object the operation works on, only converted to
+     *          string if the span is logged
+     */
+    public Span start(Object objectId) {
+      Tracer current = tracer;
+      if (current == null) {
+        return NOOP_SPAN;
+      }
+      SpanHistogram histogram = getHistogram(current);
+      histogram.spans.increment();
+      if (current.samplingInterval > 1 && ThreadLocalRandom.current().nextInt(current.samplingInterval) != 0) {
+        return NOOP_SPAN;
+      }
+      return new Span(current, this, histogram, objectId);
+    }
+
+    private SpanHistogram getHistogram(Tracer current) {
+      Recording currentRecording = recording;
+      if (currentRecording == null || currentRecording.tracer != current) {
+        currentRecording = startRecording(current);
+      }
+      return currentRecording.histogram;
+    }
+
+    private synchronized Recording startRecording(Tracer current) {
+      if (recording == null || recording.tracer != current) {
+        recording = new Recording(current, current.register(metricName));
+      }
+      return recording;
+    }
+  }
+
+  private static final class Recording {
+    private final Tracer tracer;
+    private final SpanHistogram histogram;
+
+    private Recording(Tracer tracer, SpanHistogram histogram) {
+      this.tracer = tracer;
+      this.histogram = histogram;
+    }
+  }
+
+  public static final class Span implements AutoCloseable {
+    private final Tracer tracer;
+    private final Operation operation;
+    private final SpanHistogram histogram;
+    private final Object objectId;
+    private final long startNanos;
+
+    private Span(Tracer tracer, Operation operation, SpanHistogram histogram, Object objectId) {
+      this.tracer = tracer;
+      this.operation = operation;
+      this.histogram = histogram;
+      this.objectId = objectId;
+      this.startNanos = tracer != null ? System.nanoTime() : 0;
+    }
+
+    @Override
+    public void close() {
+      if (tracer != null) {
+        tracer.record(this, System.nanoTime() - startNanos);
+      }
+    }
+  }
+
+  /**
+   * Latency histogram (in nanoseconds) of the timed spans of an operation. Its
+   * count is the number of all spans and it also estimates their total time,
+   * exported as the sum of the latency summary.
+   */
+  public static final class SpanHistogram extends Histogram {
+    private final LatencyReservoir reservoir;
+    private final LongAdder spans = new LongAdder();
+
+    public SpanHistogram() {
+      this(new LatencyReservoir());
+    }
+
+    private SpanHistogram(LatencyReservoir reservoir) {
+      super(reservoir);
+      this.reservoir = reservoir;
+    }
+
+    @Override
+    public long getCount() {
+      return spans.sum();
+    }
+
+    public long getTimedCount() {
+      return super.getCount();
+    }
+
+    public long getTotalNanos() {
+      long timed = getTimedCount();
+      return timed == 0 ? 0 : Math.round(reservoir.getTotal() * ((double) getCount() / timed));
+    }
+  }
+
+  private static final class Tracer {
+    private final MetricRegistry metricRegistry;
+    private final long slowSpanThresholdInNanos;
+    private final int samplingInterval;
+
+    private Tracer(MetricRegistry metricRegistry, long slowSpanThresholdInMillis, int samplingInterval) {
+      this.metricRegistry = metricRegistry;
+      this.slowSpanThresholdInNanos = TimeUnit.MILLISECONDS.toNanos(slowSpanThresholdInMillis);
+      this.samplingInterval = samplingInterval;
+    }
+
+    private void record(Span span, long durationInNanos) {
+      span.histogram.update(durationInNanos);
+
+      if (slowSpanThresholdInNanos > 0 && durationInNanos > slowSpanThresholdInNanos) {
+        LOGGER.info("Slow {} operation {} took {} ms (job: {}, object: {})", span.operation.stage.getMetricName(),
+          span.operation.name, TimeUnit.NANOSECONDS.toMillis(durationInNanos), JOB_ID.get(), span.objectId);
+      }
+    }
+
+    private SpanHistogram register(String name) {
+      try {
+        return metricRegistry.register(name, new SpanHistogram());
+      } catch (IllegalArgumentException e) {
+        // already registered by a previous configuration
+        return (SpanHistogram) metricRegistry.getMetrics().get(name);
+      }
+    }
+  }
+}
@@ -22,12 +22,12 @@ import javax.xml.transform.Source;
 import javax.xml.transform.sax.SAXSource;
 import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
-import javax.xml.validation.Validator;
 
 import org.apache.commons.io.input.BOMInputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.roda.core.RodaCoreFactory;
 import org.roda.core.common.RodaEntityResolver;
+import org.roda.core.common.RodaUtils;
 import org.roda.core.data.common.RodaConstants;
 import org.roda.core.data.exceptions.AuthorizationDeniedException;
 import org.roda.core.data.exceptions.GenericException;
@@ -280,9 +280,7 @@ public class ValidationUtils {
           InputSource inputSource = new InputSource(inputStreamReader);
           Source source = new SAXSource(xmlReader, inputSource);
 
-          Validator validator = xmlSchema.get().newValidator();
-          validator.setErrorHandler(errorHandler);
-          validator.validate(source);
+          RodaUtils.validate(xmlSchema.get(), source, errorHandler);
           ret.setValid(errorHandler.getErrors().isEmpty());
           for (SAXParseException saxParseException : errorHandler.getErrors()) {
             ret.addIssue(convertSAXParseException(saxParseException));
@@ -330,11 +328,9 @@ public class ValidationUtils {
     if (xmlSchema.isPresent()) {
       try (InputStream inputStream = binary.getContent().createInputStream()) {
         Source xmlFile = new StreamSource(inputStream);
-        Validator validator = xmlSchema.get().newValidator();
         RodaErrorHandler errorHandler = new RodaErrorHandler();
-        validator.setErrorHandler(errorHandler);
         try {
-          validator.validate(xmlFile);
+          RodaUtils.validate(xmlSchema.get(), xmlFile, errorHandler);
           report.setValid(errorHandler.getErrors().isEmpty());
           for (SAXParseException saxParseException : errorHandler.getErrors()) {
             report.addIssue(convertSAXParseException(saxParseException));
@@ -72,8 +72,15 @@ public class AkkaEventsHandlerAndNotifier extends AbstractEventsHandler implemen
     String writeConsistency = RodaCoreFactory.getProperty("core.events.akka.writeConsistency", "");
     int writeConsistencyTimeoutInSeconds = RodaCoreFactory
       .getProperty("core.events.akka.writeConsistencyTimeoutInSeconds", 3);
+    int flushWindowInMillis = RodaCoreFactory.getProperty("core.events.akka.flushWindowInMillis",
+      AkkaEventsHandlerAndNotifierActor.DEFAULT_FLUSH_WINDOW_IN_MILLIS);
+    int maxBatchSize = RodaCoreFactory.getProperty("core.events.akka.maxBatchSize",
+      AkkaEventsHandlerAndNotifierActor.DEFAULT_MAX_BATCH_SIZE);
+    int buckets = RodaCoreFactory.getProperty("core.events.akka.buckets",
+      AkkaEventsHandlerAndNotifierActor.DEFAULT_BUCKETS);
     return eventsSystem.actorOf(Props.create(AkkaEventsHandlerAndNotifierActor.class, (EventsHandler) this,
-      writeConsistency, writeConsistencyTimeoutInSeconds), "eventsNotifierAndHandlerActor");
+      writeConsistency, writeConsistencyTimeoutInSeconds, flushWindowInMillis, maxBatchSize, buckets,
+      RodaCoreFactory.getMetrics()), "eventsNotifierAndHandlerActor");
   }
 
   @Override
@@ -7,12 +7,14 @@
  */
 package org.roda.core.events.akka;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import org.roda.core.RodaCoreFactory;
@@ -25,15 +27,19 @@ import org.roda.core.common.akka.Messages.EventUserUpdated;
 import org.roda.core.data.v2.user.Group;
 import org.roda.core.data.v2.user.User;
 import org.roda.core.events.EventsHandler;
+import org.roda.core.model.ModelService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+
 import akka.actor.AbstractActor;
 import akka.actor.ActorRef;
+import akka.actor.Cancellable;
 import akka.cluster.Cluster;
 import akka.cluster.ddata.DistributedData;
-import akka.cluster.ddata.GSet;
-import akka.cluster.ddata.GSetKey;
 import akka.cluster.ddata.Key;
 import akka.cluster.ddata.ORMap;
 import akka.cluster.ddata.Replicator.Changed;
@@ -44,12 +50,38 @@ import akka.cluster.ddata.Replicator.UpdateSuccess;
 import akka.cluster.ddata.Replicator.WriteAll;
 import akka.cluster.ddata.Replicator.WriteConsistency;
 import akka.cluster.ddata.Replicator.WriteMajority;
-import scala.Option;
 import scala.concurrent.duration.Duration;
+import scala.concurrent.duration.FiniteDuration;
 
+/**
+ * Replicates user and group changes to the other RODA instances through Akka
+ * Distributed Data and applies the changes made by the other instances.
+ *
+ * <p>
+ * Local changes are buffered for a flush window (or until there are
+ * <code>maxBatchSize</code> of them), keeping only the last change of each
+ * object, and are then written with a single update per bucket. Objects are
+ * spread over a fixed number of buckets, each an {@link ORMap} (a delta CRDT),
+ * so a bulk change results in a few updates whose deltas are gossiped instead
+ * of one replicated key per object.
+ * </p>
+ *
+ * <p>
+ * Each instance remembers the version of every object it has applied, so when
+ * a bucket changes only the objects with new versions are applied (groups
+ * before users, deletions last) and repeated notifications are ignored. Own
+ * changes are also remembered until the bucket shows them, as notifications
+ * sent before that must neither restore an object deleted here nor delete one
+ * just written here.
+ * </p>
+ */
 public class AkkaEventsHandlerAndNotifierActor extends AbstractActor {
   private static final Logger LOGGER = LoggerFactory.getLogger(AkkaEventsHandlerAndNotifierActor.class);
 
+  public static final int DEFAULT_FLUSH_WINDOW_IN_MILLIS = 100;
+  public static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+  public static final int DEFAULT_BUCKETS = 100;
+
   private static final String CACHE_PREFIX = "cache-";
   private static final String USER_KEY_PREFIX = "user-";
   private static final String GROUP_KEY_PREFIX = "group-";
@@ -61,16 +93,48 @@ public class AkkaEventsHandlerAndNotifierActor extends AbstractActor {
   private EventsHandler eventsHandler;
   private String instanceSenderId;
 
-  private final Key<GSet<ObjectKey>> objectKeysKey = GSetKey.create("objectKeys");
-  private Set<ObjectKey> objectKeys = new HashSet<>();
-
   private final WriteConsistency writeConsistency;
+  private final FiniteDuration flushWindow;
+  private final int maxBatchSize;
+  private final int buckets;
+
+  /** Last change of each object not yet replicated (null for deletions). */
+  private Map<String, CRDTWrapper> pendingChanges = new LinkedHashMap<>();
+  private Cancellable flushTask = null;
+  /** Version of each object applied (or replicated) by this instance. */
+  private final Map<String, Map<String, CRDTWrapper>> appliedByBucket = new HashMap<>();
+  /** Versions written by this instance not yet seen in their bucket. */
+  private final Map<String, Map<String, CRDTWrapper>> writtenByBucket = new HashMap<>();
+  /** Time of the deletions made by this instance not yet seen in their bucket. */
+  private final Map<String, Map<String, Long>> deletedByBucket = new HashMap<>();
+
+  private final Histogram convergenceLag;
+  private final Histogram batchSize;
+  private final Counter replicatedChanges;
+  private final Counter appliedChanges;
 
   public AkkaEventsHandlerAndNotifierActor(final EventsHandler eventsHandler, final String writeConsistency,
     final int writeConsistencyTimeoutInSeconds) {
+    this(eventsHandler, writeConsistency, writeConsistencyTimeoutInSeconds, DEFAULT_FLUSH_WINDOW_IN_MILLIS,
+      DEFAULT_MAX_BATCH_SIZE, DEFAULT_BUCKETS, RodaCoreFactory.getMetrics());
+  }
+
+  public AkkaEventsHandlerAndNotifierActor(final EventsHandler eventsHandler, final String writeConsistency,
+    final int writeConsistencyTimeoutInSeconds, final int flushWindowInMillis, final int maxBatchSize,
+    final int buckets, final MetricRegistry metricRegistry) {
     this.eventsHandler = eventsHandler;
     this.instanceSenderId = self().toString();
     this.writeConsistency = instantiateWriteConsistency(writeConsistency, writeConsistencyTimeoutInSeconds);
+    this.flushWindow = Duration.create(Math.max(flushWindowInMillis, 1), TimeUnit.MILLISECONDS);
+    this.maxBatchSize = Math.max(maxBatchSize, 1);
+    this.buckets = Math.max(buckets, 1);
+
+    MetricRegistry metrics = metricRegistry != null ? metricRegistry : new MetricRegistry();
+    String prefix = MetricRegistry.name(AkkaEventsHandlerAndNotifierActor.class);
+    this.convergenceLag = metrics.histogram(MetricRegistry.name(prefix, "convergenceLagInMillis"));
+    this.batchSize = metrics.histogram(MetricRegistry.name(prefix, "batchSize"));
+    this.replicatedChanges = metrics.counter(MetricRegistry.name(prefix, "replicatedChanges"));
+    this.appliedChanges = metrics.counter(MetricRegistry.name(prefix, "appliedChanges"));
   }
 
   private WriteConsistency instantiateWriteConsistency(String writeConsistency,
@@ -85,8 +149,14 @@ public class AkkaEventsHandlerAndNotifierActor extends AbstractActor {
 
   @Override
   public void preStart() {
-    Subscribe<GSet<ObjectKey>> subscribe = new Subscribe<>(objectKeysKey, getSelf());
-    replicator.tell(subscribe, ActorRef.noSender());
+    for (int bucket = 0; bucket < buckets; bucket++) {
+      replicator.tell(new Subscribe<>(new ObjectKey(CACHE_PREFIX + bucket), getSelf()), ActorRef.noSender());
+    }
+  }
+
+  @Override
+  public void postStop() {
+    flush();
   }
 
   @Override
@@ -96,8 +166,8 @@ public class AkkaEventsHandlerAndNotifierActor extends AbstractActor {
       .match(EventGroupCreated.class, e -> handleGroupCreated(e))
       .match(EventGroupUpdated.class, e -> handleGroupUpdated(e))
       .match(EventGroupDeleted.class, e -> handleGroupDeleted(e)).match(Changed.class, c -> handleChanged(c))
-      .match(UpdateSuccess.class, e -> handleUpdateSuccess(e)).match(UpdateFailure.class, e -> handleUpdateFailure(e))
-      .matchAny(msg -> {
+      .match(Flush.class, f -> flush()).match(UpdateSuccess.class, e -> handleUpdateSuccess(e))
+      .match(UpdateFailure.class, e -> handleUpdateFailure(e)).matchAny(msg -> {
         LOGGER.warn("Received unknown message '{}'", msg);
       }).build();
   }
@@ -108,65 +178,122 @@ public class AkkaEventsHandlerAndNotifierActor extends AbstractActor {
   }
 
   private void handleUpdateFailure(UpdateFailure e) {
-    // LOGGER.info("handleUpdateFailure '{}'", e);
-    // FIXME 20180925 hsilva: what to do???
+    // the update was applied locally and will still be gossiped
+    LOGGER.debug("Update did not reach the desired write consistency: {}", e);
   }
 
   private void handleChanged(Changed<?> e) {
-    if (e.key().equals(objectKeysKey)) {
-      handleObjectKeysChanged((Changed<GSet<ObjectKey>>) e);
-    } else if (e.key() instanceof ObjectKey) {
-      handleObjectChanged((Changed<ORMap<String, CRDTWrapper>>) e);
+    if (e.key() instanceof ObjectKey) {
+      handleObjectsChanged((Changed<ORMap<String, CRDTWrapper>>) e);
     }
   }
 
-  private void handleObjectKeysChanged(Changed<GSet<ObjectKey>> e) {
-    Set<ObjectKey> newKeys = e.dataValue().getElements();
-    Set<ObjectKey> keysToSubscribe = new HashSet<>(newKeys);
-    keysToSubscribe.removeAll(objectKeys);
-    keysToSubscribe.forEach(keyToSubscribe -> {
-      // subscribe to get notifications of when objects with this name are
-      // added or removed
-      replicator.tell(new Subscribe<>(keyToSubscribe, self()), self());
-    });
-    objectKeys = newKeys;
+  private void handleObjectsChanged(Changed<ORMap<String, CRDTWrapper>> e) {
+    Map<String, CRDTWrapper> entries = e.dataValue().getEntries();
+    Map<String, CRDTWrapper> applied = appliedByBucket.computeIfAbsent(e.key().id(), k -> new HashMap<>());
+
+    List<CRDTWrapper> changedGroups = new ArrayList<>();
+    List<CRDTWrapper> changedUsers = new ArrayList<>();
+    List<String> deletedUsers = new ArrayList<>();
+    List<String> deletedGroups = new ArrayList<>();
+
+    // notifications sent before an own change reached the bucket do not show it
+    Map<String, CRDTWrapper> written = writtenByBucket.computeIfAbsent(e.key().id(), k -> new HashMap<>());
+    written.entrySet().removeIf(own -> isSeen(entries.get(own.getKey()), own.getValue()));
+    Map<String, Long> deleted = deletedByBucket.computeIfAbsent(e.key().id(), k -> new HashMap<>());
+    deleted.keySet().retainAll(entries.keySet());
+
+    for (Map.Entry<String, CRDTWrapper> entry : entries.entrySet()) {
+      CRDTWrapper wrapper = entry.getValue();
+      Long deletedAt = deleted.get(entry.getKey());
+      if (deletedAt != null) {
+        if (wrapper.getTimeinmillis() <= deletedAt) {
+          // notification older than the deletion made here
+          continue;
+        }
+        deleted.remove(entry.getKey());
+      }
 
-    // 20180925 hsilva: to improve GC
-    keysToSubscribe = null;
-  }
+      CRDTWrapper previous = applied.get(entry.getKey());
+      if (previous != null && (isSameVersion(previous, wrapper)
+        || wrapper.getTimeinmillis() < previous.getTimeinmillis())) {
+        // already applied or older than what was applied (stale notification)
+        continue;
+      }
 
-  private void handleObjectChanged(Changed<ORMap<String, CRDTWrapper>> e) {
-    String objectId = e.key().id().replaceFirst(CACHE_PREFIX, "");
-    Option<CRDTWrapper> option = e.dataValue().get(objectId);
-    if (option.isDefined()) {
-      CRDTWrapper wrapper = (CRDTWrapper) option.get();
+      applied.put(entry.getKey(), wrapper);
       if (!wrapper.getInstanceId().equals(instanceSenderId)) {
-        if (objectId.startsWith(USER_KEY_PREFIX)) {
-          String password = getUserPasswordFromRodaUserOtherInfoMap(wrapper);
-          if (!wrapper.isUpdate()) {
-            eventsHandler.handleUserCreated(RodaCoreFactory.getModelService(), (User) wrapper.getRodaObject(),
-              password);
-          } else {
-            eventsHandler.handleUserUpdated(RodaCoreFactory.getModelService(), (User) wrapper.getRodaObject(),
-              password);
-          }
-        } else if (objectId.startsWith(GROUP_KEY_PREFIX)) {
-          if (!wrapper.isUpdate()) {
-            eventsHandler.handleGroupCreated(RodaCoreFactory.getModelService(), (Group) wrapper.getRodaObject());
-          } else {
-            eventsHandler.handleGroupUpdated(RodaCoreFactory.getModelService(), (Group) wrapper.getRodaObject());
-          }
+        if (entry.getKey().startsWith(USER_KEY_PREFIX)) {
+          changedUsers.add(wrapper);
+        } else if (entry.getKey().startsWith(GROUP_KEY_PREFIX)) {
+          changedGroups.add(wrapper);
         }
       }
-    } else {
-      // this is a deletion
-      if (objectId.startsWith(USER_KEY_PREFIX)) {
-        eventsHandler.handleUserDeleted(RodaCoreFactory.getModelService(), objectId.replaceFirst(USER_KEY_PREFIX, ""));
-      } else if (objectId.startsWith(GROUP_KEY_PREFIX)) {
-        eventsHandler.handleGroupDeleted(RodaCoreFactory.getModelService(),
-          objectId.replaceFirst(GROUP_KEY_PREFIX, ""));
+    }
+
+    Iterator<String> appliedKeys = applied.keySet().iterator();
+    while (appliedKeys.hasNext()) {
+      String objectKey = appliedKeys.next();
+      if (!entries.containsKey(objectKey) && !written.containsKey(objectKey)) {
+        // this is a deletion
+        appliedKeys.remove();
+        if (objectKey.startsWith(USER_KEY_PREFIX)) {
+          deletedUsers.add(objectKey.replaceFirst(USER_KEY_PREFIX, ""));
+        } else if (objectKey.startsWith(GROUP_KEY_PREFIX)) {
+          deletedGroups.add(objectKey.replaceFirst(GROUP_KEY_PREFIX, ""));
+        }
       }
     }
+
+    applyChanges(changedGroups, changedUsers, deletedUsers, deletedGroups);
+  }
+
+  /**
+   * Applies the changes of the other instances, groups first so the users that
+   * belong to them can be created.
+   */
+  private void applyChanges(List<CRDTWrapper> changedGroups, List<CRDTWrapper> changedUsers,
+    List<String> deletedUsers, List<String> deletedGroups) {
+    ModelService model = RodaCoreFactory.getModelService();
+    long now = System.currentTimeMillis();
+
+    for (CRDTWrapper wrapper : changedGroups) {
+      if (!wrapper.isUpdate()) {
+        eventsHandler.handleGroupCreated(model, (Group) wrapper.getRodaObject());
+      } else {
+        eventsHandler.handleGroupUpdated(model, (Group) wrapper.getRodaObject());
+      }
+      convergenceLag.update(Math.max(now - wrapper.getTimeinmillis(), 0));
+    }
+
+    for (CRDTWrapper wrapper : changedUsers) {
+      String password = getUserPasswordFromRodaUserOtherInfoMap(wrapper);
+      if (!wrapper.isUpdate()) {
+        eventsHandler.handleUserCreated(model, (User) wrapper.getRodaObject(), password);
+      } else {
+        eventsHandler.handleUserUpdated(model, (User) wrapper.getRodaObject(), password);
+      }
+      convergenceLag.update(Math.max(now - wrapper.getTimeinmillis(), 0));
+    }
+
+    for (String id : deletedUsers) {
+      eventsHandler.handleUserDeleted(model, id);
+    }
+
+    for (String id : deletedGroups) {
+      eventsHandler.handleGroupDeleted(model, id);
+    }
+
+    appliedChanges.inc(changedGroups.size() + changedUsers.size() + deletedUsers.size() + deletedGroups.size());
+  }
+
+  private static boolean isSeen(CRDTWrapper current, CRDTWrapper own) {
+    return current != null && current.getTimeinmillis() >= own.getTimeinmillis();
+  }
+
+  private static boolean isSameVersion(CRDTWrapper wrapper, CRDTWrapper other) {
+    return wrapper.getTimeinmillis() == other.getTimeinmillis()
+      && wrapper.getInstanceId().equals(other.getInstanceId());
   }
 
   private void handleUserCreated(EventUserCreated e) {
@@ -214,33 +341,87 @@ public class AkkaEventsHandlerAndNotifierActor extends AbstractActor {
   }
 
   private void putObjectInCache(String key, CRDTWrapper value) {
-    ObjectKey objectKey = dataKey(key);
-    if (!objectKeys.contains(objectKey)) {
-      Update<GSet<ObjectKey>> update1 = new Update<>(objectKeysKey, GSet.create(), writeConsistency,
-        curr -> curr.add(objectKey));
-      replicator.tell(update1, self());
-    }
-
-    Update<ORMap<String, CRDTWrapper>> update = new Update<ORMap<String, CRDTWrapper>>(dataKey(key), ORMap.create(),
-      writeConsistency, curr -> curr.put(cluster, key, value));
-    replicator.tell(update, self());
+    addPendingChange(key, value);
   }
 
   private void evictObjectFromCache(String key) {
-    ObjectKey objectKey = dataKey(key);
-    if (!objectKeys.contains(objectKey)) {
-      Update<GSet<ObjectKey>> update1 = new Update<>(objectKeysKey, GSet.create(), writeConsistency,
-        curr -> curr.add(objectKey));
-      replicator.tell(update1, self());
+    addPendingChange(key, null);
+  }
+
+  private void addPendingChange(String key, CRDTWrapper value) {
+    // only the last change of an object needs to be replicated
+    pendingChanges.remove(key);
+    pendingChanges.put(key, value);
+
+    if (pendingChanges.size() >= maxBatchSize) {
+      flush();
+    } else if (flushTask == null) {
+      flushTask = context().system().scheduler().scheduleOnce(flushWindow, self(), Flush.INSTANCE,
+        context().dispatcher(), self());
+    }
+  }
+
+  private void flush() {
+    if (flushTask != null) {
+      flushTask.cancel();
+      flushTask = null;
+    }
+    if (pendingChanges.isEmpty()) {
+      return;
+    }
+
+    long now = System.currentTimeMillis();
+    Map<ObjectKey, Map<String, CRDTWrapper>> changesByBucket = new HashMap<>();
+    for (Map.Entry<String, CRDTWrapper> change : pendingChanges.entrySet()) {
+      changesByBucket.computeIfAbsent(dataKey(change.getKey()), k -> new LinkedHashMap<>()).put(change.getKey(),
+        change.getValue());
     }
 
-    Update<ORMap<String, CRDTWrapper>> update = new Update<>(objectKey, ORMap.create(), writeConsistency,
-      curr -> curr.remove(cluster, key));
-    replicator.tell(update, self());
+    for (Map.Entry<ObjectKey, Map<String, CRDTWrapper>> bucketChanges : changesByBucket.entrySet()) {
+      ObjectKey bucketKey = bucketChanges.getKey();
+      Map<String, CRDTWrapper> changes = bucketChanges.getValue();
+
+      // own changes must not be applied again when the bucket changes
+      Map<String, CRDTWrapper> applied = appliedByBucket.computeIfAbsent(bucketKey.id(), k -> new HashMap<>());
+      Map<String, CRDTWrapper> written = writtenByBucket.computeIfAbsent(bucketKey.id(), k -> new HashMap<>());
+      Map<String, Long> deleted = deletedByBucket.computeIfAbsent(bucketKey.id(), k -> new HashMap<>());
+      for (Map.Entry<String, CRDTWrapper> change : changes.entrySet()) {
+        if (change.getValue() != null) {
+          applied.put(change.getKey(), change.getValue());
+          written.put(change.getKey(), change.getValue());
+          deleted.remove(change.getKey());
+        } else {
+          applied.remove(change.getKey());
+          written.remove(change.getKey());
+          deleted.put(change.getKey(), now);
+        }
+      }
+
+      Update<ORMap<String, CRDTWrapper>> update = new Update<>(bucketKey, ORMap.create(), writeConsistency,
+        curr -> applyChanges(curr, changes));
+      replicator.tell(update, self());
+    }
+
+    batchSize.update(pendingChanges.size());
+    replicatedChanges.inc(pendingChanges.size());
+    pendingChanges = new LinkedHashMap<>();
+  }
+
+  private ORMap<String, CRDTWrapper> applyChanges(ORMap<String, CRDTWrapper> current,
+    Map<String, CRDTWrapper> changes) {
+    ORMap<String, CRDTWrapper> updated = current;
+    for (Map.Entry<String, CRDTWrapper> change : changes.entrySet()) {
+      if (change.getValue() != null) {
+        updated = updated.put(cluster, change.getKey(), change.getValue());
+      } else {
+        updated = updated.remove(cluster, change.getKey());
+      }
+    }
+    return updated;
   }
 
   private ObjectKey dataKey(String entryKey) {
-    return new ObjectKey(CACHE_PREFIX + entryKey);
+    return new ObjectKey(CACHE_PREFIX + Math.abs(entryKey.hashCode() % buckets));
   }
 
   public static class ObjectKey extends Key<ORMap<String, CRDTWrapper>> {
@@ -250,4 +431,8 @@ public class AkkaEventsHandlerAndNotifierActor extends AbstractActor {
       super(eventKey);
     }
   }
-}
\ No newline at end of file
+
+  private static final class Flush {
+    private static final Flush INSTANCE = new Flush();
+  }
+}
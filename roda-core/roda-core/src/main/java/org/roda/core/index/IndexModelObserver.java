@@ -13,8 +13,11 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.xpath.XPathExpressionException;
@@ -32,8 +35,11 @@ import org.roda.core.data.exceptions.ReturnWithExceptions;
 import org.roda.core.data.utils.JsonUtils;
 import org.roda.core.data.v2.IsModelObject;
 import org.roda.core.data.v2.common.OptionalWithCause;
+import org.roda.core.data.v2.common.Pair;
 import org.roda.core.data.v2.index.IsIndexed;
 import org.roda.core.data.v2.index.filter.Filter;
+import org.roda.core.data.v2.index.filter.OneOfManyFilterParameter;
+import org.roda.core.data.v2.index.filter.OrFiltersParameters;
 import org.roda.core.data.v2.index.filter.SimpleFilterParameter;
 import org.roda.core.data.v2.ip.AIP;
 import org.roda.core.data.v2.ip.AIPState;
@@ -62,6 +68,7 @@ import org.roda.core.data.v2.ri.RepresentationInformation;
 import org.roda.core.data.v2.risks.IndexedRisk;
 import org.roda.core.data.v2.risks.Risk;
 import org.roda.core.data.v2.risks.RiskIncidence;
+import org.roda.core.data.v2.risks.RiskIncidence.INCIDENCE_STATUS;
 import org.roda.core.data.v2.user.Group;
 import org.roda.core.data.v2.user.RODAMember;
 import org.roda.core.data.v2.user.User;
@@ -84,6 +91,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.SAXException;
 
+import com.google.common.collect.Lists;
+
 /**
  * 
  * @author Luis Faria <lfaria@keep.pt>
@@ -92,6 +101,10 @@ import org.xml.sax.SAXException;
 public class IndexModelObserver implements ModelObserver {
   private static final Logger LOGGER = LoggerFactory.getLogger(IndexModelObserver.class);
 
+  /** Keeps queries with several values below Solr's default maxBooleanClauses */
+  private static final int MAX_VALUES_PER_QUERY = 500;
+  private static final int ATOMIC_UPDATES_BATCH_SIZE = 1000;
+
   private final SolrClient index;
   private final ModelService model;
 
@@ -306,6 +319,97 @@ public class IndexModelObserver implements ModelObserver {
     return ret;
   }
 
+  @Override
+  public ReturnWithExceptions<Void, ModelObserver> aipsStateUpdated(List<AIP> aips) {
+    ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
+    AtomicUpdates aipUpdates = new AtomicUpdates(IndexedAIP.class, ret);
+    AtomicUpdates representationUpdates = new AtomicUpdates(IndexedRepresentation.class, ret);
+    AtomicUpdates fileUpdates = new AtomicUpdates(IndexedFile.class, ret);
+    AtomicUpdates eventUpdates = new AtomicUpdates(IndexedPreservationEvent.class, ret);
+
+    for (AIP aip : aips) {
+      Map<String, Object> state = Collections.singletonMap(RodaConstants.INDEX_STATE,
+        SolrUtils.formatEnum(aip.getState()));
+      aipUpdates.add(aip.getId(), state);
+
+      for (Representation representation : aip.getRepresentations()) {
+        representationUpdates.add(IdUtils.getRepresentationId(representation), state);
+
+        try (CloseableIterable<OptionalWithCause<File>> allFiles = model.listFilesUnder(aip.getId(),
+          representation.getId(), true)) {
+          for (OptionalWithCause<File> file : allFiles) {
+            if (file.isPresent()) {
+              fileUpdates.add(IdUtils.getFileId(file.get()), state);
+            } else {
+              LOGGER.error("Cannot do a partial update on File", file.getCause());
+              ret.add(file.getCause());
+            }
+          }
+        } catch (AuthorizationDeniedException | IOException | NotFoundException | GenericException
+          | RequestNotValidException e) {
+          LOGGER.error("Cannot do a partial update", e);
+          ret.add(e);
+        }
+      }
+
+      try (CloseableIterable<OptionalWithCause<PreservationMetadata>> preservationMetadata = model
+        .listPreservationMetadata(aip.getId(), true)) {
+        for (OptionalWithCause<PreservationMetadata> opm : preservationMetadata) {
+          if (opm.isPresent()) {
+            PreservationMetadata pm = opm.get();
+            if (pm.getType().equals(PreservationMetadataType.EVENT)) {
+              Map<String, Object> fieldsToUpdate = new HashMap<>();
+              fieldsToUpdate.put(RodaConstants.INDEX_STATE, SolrUtils.formatEnum(aip.getState()));
+              fieldsToUpdate.put(RodaConstants.PRESERVATION_EVENT_AIP_ID, pm.getAipId());
+              fieldsToUpdate.put(RodaConstants.INDEX_ID, pm.getId());
+              eventUpdates.add(pm.getId(), fieldsToUpdate);
+            }
+          } else {
+            LOGGER.error("Cannot index premis event", opm.getCause());
+            ret.add(opm.getCause());
+          }
+        }
+      } catch (RequestNotValidException | NotFoundException | GenericException | AuthorizationDeniedException
+        | IOException e) {
+        LOGGER.error("Cannot index preservation events", e);
+        ret.add(e);
+      }
+    }
+
+    aipUpdates.flush();
+    representationUpdates.flush();
+    fileUpdates.flush();
+    eventUpdates.flush();
+    return ret;
+  }
+
+  /**
+   * Collects atomic updates to the documents of a collection and sends them to
+   * the index in batches.
+   */
+  private class AtomicUpdates {
+    private final Class<? extends IsIndexed> indexClass;
+    private final ReturnWithExceptions<Void, ModelObserver> ret;
+    private final Map<String, Map<String, Object>> fieldsByUUID = new HashMap<>();
+
+    public AtomicUpdates(Class<? extends IsIndexed> indexClass, ReturnWithExceptions<Void, ModelObserver> ret) {
+      this.indexClass = indexClass;
+      this.ret = ret;
+    }
+
+    public void add(String uuid, Map<String, Object> fields) {
+      fieldsByUUID.put(uuid, fields);
+      if (fieldsByUUID.size() >= ATOMIC_UPDATES_BATCH_SIZE) {
+        flush();
+      }
+    }
+
+    public void flush() {
+      SolrUtils.updateAll(index, indexClass, fieldsByUUID, (ModelObserver) IndexModelObserver.this).addTo(ret);
+      fieldsByUUID.clear();
+    }
+  }
+
   private ReturnWithExceptions<Void, ModelObserver> representationsStateUpdated(final AIP aip) {
     ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
     for (Representation representation : aip.getRepresentations()) {
@@ -413,84 +517,95 @@ public class IndexModelObserver implements ModelObserver {
 
   @Override
   public ReturnWithExceptions<Void, ModelObserver> aipMoved(AIP aip, String oldParentId, String newParentId) {
+    LOGGER.debug("Reindexing aip {} moved from {} to {}", aip.getId(), oldParentId, newParentId);
+    return aipsMoved(Collections.singletonList(aip), newParentId);
+  }
+
+  @Override
+  public ReturnWithExceptions<Void, ModelObserver> aipsMoved(List<AIP> aips, String newParentId) {
     ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
+    AtomicUpdates aipUpdates = new AtomicUpdates(IndexedAIP.class, ret);
+    AtomicUpdates representationUpdates = new AtomicUpdates(IndexedRepresentation.class, ret);
+    AtomicUpdates fileUpdates = new AtomicUpdates(IndexedFile.class, ret);
+
     try {
-      LOGGER.debug("Reindexing moved aip {}", aip.getId());
       List<String> topAncestors = SolrUtils.getAncestors(newParentId, model);
+      Map<String, List<String>> ancestorsByAIP = new HashMap<>();
+
+      for (AIP aip : aips) {
+        Map<String, Object> updatedFields = new HashMap<>();
+        updatedFields.put(RodaConstants.AIP_PARENT_ID, newParentId);
+        updatedFields.put(RodaConstants.AIP_ANCESTORS, topAncestors);
+        aipUpdates.add(aip.getId(), updatedFields);
+        ancestorsByAIP.put(aip.getId(), topAncestors);
+      }
 
-      Map<String, Object> updatedFields = new HashMap<>();
-      updatedFields.put(RodaConstants.AIP_PARENT_ID, newParentId);
-      updatedFields.put(RodaConstants.AIP_ANCESTORS, topAncestors);
-      SolrUtils.update(index, IndexedAIP.class, aip.getId(), updatedFields, (ModelObserver) this).addTo(ret);
-
-      if (ret.isEmpty()) {
-        updateRepresentationAndFileAncestors(aip, topAncestors).addTo(ret);
-
-        LOGGER.debug("Finding descendants of moved aip {}", aip.getId());
-        Filter filter = new Filter(new SimpleFilterParameter(RodaConstants.AIP_ANCESTORS, aip.getId()),
+      // the ancestors of the descendants are rebased from the index, without
+      // walking each subtree in the model
+      Set<String> movedIds = new HashSet<>(ancestorsByAIP.keySet());
+      List<String> aipFields = Arrays.asList(RodaConstants.INDEX_UUID, RodaConstants.AIP_ANCESTORS);
+      for (List<String> ids : Lists.partition(new ArrayList<>(movedIds), MAX_VALUES_PER_QUERY)) {
+        LOGGER.debug("Finding descendants of {} moved aips", ids.size());
+        Filter filter = new Filter(new OneOfManyFilterParameter(RodaConstants.AIP_ANCESTORS, ids),
           new SimpleFilterParameter(RodaConstants.AIP_GHOST, Boolean.FALSE.toString()));
-        List<String> aipFields = Arrays.asList(RodaConstants.INDEX_UUID, RodaConstants.AIP_PARENT_ID,
-          RodaConstants.AIP_HAS_REPRESENTATIONS);
+        try (IterableIndexResult<IndexedAIP> descendants = new IterableIndexResult<>(index, IndexedAIP.class, filter,
+          null, false, aipFields)) {
+          for (IndexedAIP descendant : descendants) {
+            if (!ancestorsByAIP.containsKey(descendant.getId())) {
+              List<String> ancestors = rebaseAncestors(descendant.getAncestors(), movedIds, topAncestors);
+              aipUpdates.add(descendant.getId(), Collections.singletonMap(RodaConstants.AIP_ANCESTORS, ancestors));
+              ancestorsByAIP.put(descendant.getId(), ancestors);
+            }
+          }
+        }
+      }
 
-        List<IndexedAIP> items = new ArrayList<>();
-        try (IterableIndexResult<IndexedAIP> childrenResults = new IterableIndexResult<>(index, IndexedAIP.class,
-          filter, null, false, aipFields)) {
-          childrenResults.forEach(items::add);
+      List<String> fields = Arrays.asList(RodaConstants.INDEX_UUID, RodaConstants.REPRESENTATION_AIP_ID);
+      for (List<String> ids : Lists.partition(new ArrayList<>(ancestorsByAIP.keySet()), MAX_VALUES_PER_QUERY)) {
+        Filter filter = new Filter(new OneOfManyFilterParameter(RodaConstants.REPRESENTATION_AIP_ID, ids));
+        try (IterableIndexResult<IndexedRepresentation> representations = new IterableIndexResult<>(index,
+          IndexedRepresentation.class, filter, null, false, fields)) {
+          for (IndexedRepresentation representation : representations) {
+            representationUpdates.add(representation.getUUID(), Collections
+              .singletonMap(RodaConstants.REPRESENTATION_ANCESTORS, ancestorsByAIP.get(representation.getAipId())));
+          }
         }
 
-        for (IndexedAIP item : items) {
-          try {
-            LOGGER.debug("Reindexing aip {} descendant {}", aip.getId(), item.getId());
-            List<String> ancestors = SolrUtils.getAncestors(item.getParentID(), model);
-            SolrUtils.update(index, IndexedAIP.class, aip.getId(),
-              Collections.singletonMap(RodaConstants.AIP_ANCESTORS, ancestors), (ModelObserver) this).addTo(ret);
-
-            // update representation and file ancestors information
-            if (item.getHasRepresentations()) {
-              AIP aipModel = model.retrieveAIP(item.getId());
-              updateRepresentationAndFileAncestors(aipModel, ancestors).addTo(ret);
-            }
-          } catch (NotFoundException e) {
-            LOGGER.error("Error indexing moved AIP {} from {} to {}", aip.getId(), oldParentId, newParentId, e);
-            ret.add(e);
+        filter = new Filter(new OneOfManyFilterParameter(RodaConstants.FILE_AIP_ID, ids));
+        try (IterableIndexResult<IndexedFile> files = new IterableIndexResult<>(index, IndexedFile.class, filter, null,
+          false, Arrays.asList(RodaConstants.INDEX_UUID, RodaConstants.FILE_AIP_ID))) {
+          for (IndexedFile file : files) {
+            fileUpdates.add(file.getUUID(),
+              Collections.singletonMap(RodaConstants.FILE_ANCESTORS, ancestorsByAIP.get(file.getAipId())));
           }
         }
       }
     } catch (RequestNotValidException | GenericException | AuthorizationDeniedException | IOException e) {
-      LOGGER.error("Error indexing moved AIP {} from {} to {}", aip.getId(), oldParentId, newParentId, e);
+      LOGGER.error("Error indexing {} AIPs moved to {}", aips.size(), newParentId, e);
       ret.add(e);
     }
 
+    aipUpdates.flush();
+    representationUpdates.flush();
+    fileUpdates.flush();
     return ret;
   }
 
-  private ReturnWithExceptions<Void, ModelObserver> updateRepresentationAndFileAncestors(AIP aip,
-    List<String> ancestors) {
-    ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
-
-    for (Representation representation : aip.getRepresentations()) {
-      SolrUtils.update(index, IndexedRepresentation.class, IdUtils.getRepresentationId(representation),
-        Collections.singletonMap(RodaConstants.REPRESENTATION_ANCESTORS, ancestors), (ModelObserver) this).addTo(ret);
-
-      if (ret.isEmpty()) {
-        try (CloseableIterable<OptionalWithCause<File>> allFiles = model.listFilesUnder(aip.getId(),
-          representation.getId(), true)) {
-          for (OptionalWithCause<File> oFile : allFiles) {
-            if (oFile.isPresent()) {
-              File file = oFile.get();
-              SolrUtils.update(index, IndexedFile.class, IdUtils.getFileId(file),
-                Collections.singletonMap(RodaConstants.FILE_ANCESTORS, ancestors), (ModelObserver) this).addTo(ret);
-            }
-          }
-        } catch (RequestNotValidException | GenericException | AuthorizationDeniedException | IOException
-          | NotFoundException e) {
-          LOGGER.error("Error updating file ancestors", e);
-          ret.add(e);
-        }
+  /**
+   * Replaces the ancestors above the nearest moved AIP with the ancestors of
+   * its new parent.
+   */
+  private static List<String> rebaseAncestors(List<String> oldAncestors, Set<String> movedIds,
+    List<String> topAncestors) {
+    List<String> ancestors = new ArrayList<>();
+    for (String ancestor : oldAncestors) {
+      ancestors.add(ancestor);
+      if (movedIds.contains(ancestor)) {
+        break;
       }
     }
-
-    return ret;
+    ancestors.addAll(topAncestors);
+    return ancestors;
   }
 
   @Override
@@ -509,6 +624,35 @@ public class IndexModelObserver implements ModelObserver {
     return ret;
   }
 
+  @Override
+  public ReturnWithExceptions<Void, ModelObserver> aipTreeDeleted(String aipId, List<String> descendantIds) {
+    ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
+
+    // AIPs, representations and files know their ancestors
+    deleteTreeFromIndex(IndexedAIP.class, RodaConstants.AIP_ID, RodaConstants.AIP_ANCESTORS, aipId).addTo(ret);
+    deleteTreeFromIndex(IndexedRepresentation.class, RodaConstants.REPRESENTATION_AIP_ID,
+      RodaConstants.REPRESENTATION_ANCESTORS, aipId).addTo(ret);
+    deleteTreeFromIndex(IndexedFile.class, RodaConstants.FILE_AIP_ID, RodaConstants.FILE_ANCESTORS, aipId).addTo(ret);
+
+    // while preservation events and incidences only know their AIP
+    List<String> aipIds = new ArrayList<>(descendantIds);
+    aipIds.add(aipId);
+    for (List<String> ids : Lists.partition(aipIds, MAX_VALUES_PER_QUERY)) {
+      deleteDocumentsFromIndex(IndexedPreservationEvent.class, RodaConstants.PRESERVATION_EVENT_AIP_ID, ids)
+        .addTo(ret);
+      deleteDocumentsFromIndex(RiskIncidence.class, RodaConstants.RISK_INCIDENCE_AIP_ID, ids).addTo(ret);
+    }
+
+    return ret;
+  }
+
+  private <T extends IsIndexed> ReturnWithExceptions<Void, ModelObserver> deleteTreeFromIndex(Class<T> classToDelete,
+    String aipIdField, String ancestorsField, String aipId) {
+    Filter filter = new Filter(new OrFiltersParameters(Arrays.asList(new SimpleFilterParameter(aipIdField, aipId),
+      new SimpleFilterParameter(ancestorsField, aipId))));
+    return SolrUtils.delete(index, classToDelete, filter, (ModelObserver) this);
+  }
+
   @Override
   public ReturnWithExceptions<Void, ModelObserver> descriptiveMetadataCreated(DescriptiveMetadata descriptiveMetadata) {
     ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
@@ -724,6 +868,36 @@ public class IndexModelObserver implements ModelObserver {
     return ret;
   }
 
+  @Override
+  public ReturnWithExceptions<Void, ModelObserver> preservationEventsCreated(List<PreservationMetadata> events) {
+    ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
+    Map<String, AIP> aips = new HashMap<>();
+    List<Pair<PreservationMetadata, IndexingAdditionalInfo>> documents = new ArrayList<>(events.size());
+
+    for (PreservationMetadata pm : events) {
+      AIP aip = null;
+      if (pm.getAipId() != null) {
+        aip = aips.get(pm.getAipId());
+        if (aip == null) {
+          try {
+            aip = model.retrieveAIP(pm.getAipId());
+            aips.put(aip.getId(), aip);
+          } catch (NotFoundException e) {
+            // e.g. the AIP was rejected, its events are indexed without the AIP info
+            LOGGER.warn("Indexing preservation event {} of AIP {} that no longer exists", pm.getId(), pm.getAipId());
+          } catch (RequestNotValidException | GenericException | AuthorizationDeniedException e) {
+            LOGGER.error("Error indexing preservation events", e);
+            ret.add(e);
+          }
+        }
+      }
+      documents.add(Pair.of(pm, new PreservationEventCollection.Info(aip)));
+    }
+
+    SolrUtils.createAll2(index, (ModelObserver) this, IndexedPreservationEvent.class, documents).addTo(ret);
+    return ret;
+  }
+
   @Override
   public ReturnWithExceptions<Void, ModelObserver> preservationMetadataUpdated(
     PreservationMetadata preservationMetadata) {
@@ -839,6 +1013,12 @@ public class IndexModelObserver implements ModelObserver {
     return SolrUtils.delete(index, classToDelete, new Filter(new SimpleFilterParameter(fieldName, fieldValue)), this);
   }
 
+  private <T extends IsIndexed> ReturnWithExceptions<Void, ModelObserver> deleteDocumentsFromIndex(
+    Class<T> classToDelete, String fieldName, List<String> fieldValues) {
+    return SolrUtils.delete(index, classToDelete, new Filter(new OneOfManyFilterParameter(fieldName, fieldValues)),
+      (ModelObserver) this);
+  }
+
   private <T extends IsIndexed> ReturnWithExceptions<Void, ModelObserver> deleteDocumentsFromIndex(
     Class<T> classToDelete, String fieldName, String fieldValue, boolean commit) {
     return SolrUtils.delete(index, classToDelete, new Filter(new SimpleFilterParameter(fieldName, fieldValue)), this,
@@ -989,12 +1169,170 @@ public class IndexModelObserver implements ModelObserver {
   @Override
   public ReturnWithExceptions<Void, ModelObserver> riskIncidenceCreatedOrUpdated(RiskIncidence riskIncidence,
     boolean commit) {
-    return SolrUtils.create(index, RiskIncidence.class, riskIncidence, this, commit);
+    ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
+
+    // the previous version, if any, is needed to know how the counters change
+    Map<String, RiskIncidence> previousIncidences = retrieveIndexedIncidences(
+      Collections.singletonList(riskIncidence.getId()), ret);
+    SolrUtils.create(index, RiskIncidence.class, riskIncidence, (ModelObserver) this, false).addTo(ret);
+
+    Map<String, Map<String, Integer>> counters = new HashMap<>();
+    if (previousIncidences != null) {
+      RiskIncidence previous = previousIncidences.get(riskIncidence.getId());
+      if (previous != null) {
+        addToRiskCounters(counters, previous.getRiskId(), -1, isUnmitigated(previous.getStatus()) ? -1 : 0);
+      }
+      addToRiskCounters(counters, riskIncidence.getRiskId(), 1, isUnmitigated(riskIncidence.getStatus()) ? 1 : 0);
+    }
+    updateRiskCounters(counters, commit).addTo(ret);
+    return ret;
+  }
+
+  @Override
+  public ReturnWithExceptions<Void, ModelObserver> riskIncidencesCreated(List<RiskIncidence> riskIncidences,
+    boolean commit) {
+    ReturnWithExceptions<Void, ModelObserver> ret = SolrUtils.createAll(index, RiskIncidence.class, riskIncidences,
+      (ModelObserver) this);
+
+    Map<String, Map<String, Integer>> counters = new HashMap<>();
+    for (RiskIncidence incidence : riskIncidences) {
+      addToRiskCounters(counters, incidence.getRiskId(), 1, isUnmitigated(incidence.getStatus()) ? 1 : 0);
+    }
+    updateRiskCounters(counters, commit).addTo(ret);
+    return ret;
+  }
+
+  @Override
+  public ReturnWithExceptions<Void, ModelObserver> riskIncidencesUpdated(List<RiskIncidence> riskIncidences,
+    boolean commit) {
+    ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
+
+    // the previous status is needed to know how the counters change
+    List<String> ids = riskIncidences.stream().map(RiskIncidence::getId).collect(Collectors.toList());
+    Map<String, RiskIncidence> previousIncidences = retrieveIndexedIncidences(ids, ret);
+    if (previousIncidences == null) {
+      previousIncidences = Collections.emptyMap();
+    }
+
+    Map<String, Map<String, Object>> fieldsByUUID = new HashMap<>();
+    Map<String, Map<String, Integer>> counters = new HashMap<>();
+    for (RiskIncidence incidence : riskIncidences) {
+      Map<String, Object> fields = new HashMap<>();
+      fields.put(RodaConstants.RISK_INCIDENCE_DESCRIPTION, incidence.getDescription());
+      fields.put(RodaConstants.RISK_INCIDENCE_STATUS, incidence.getStatus().toString());
+      fields.put(RodaConstants.RISK_INCIDENCE_SEVERITY, incidence.getSeverity().toString());
+      fields.put(RodaConstants.RISK_INCIDENCE_MITIGATED_ON, SolrUtils.formatDate(incidence.getMitigatedOn()));
+      fields.put(RodaConstants.RISK_INCIDENCE_MITIGATED_BY, incidence.getMitigatedBy());
+      fields.put(RodaConstants.RISK_INCIDENCE_MITIGATED_DESCRIPTION, incidence.getMitigatedDescription());
+      fieldsByUUID.put(incidence.getId(), fields);
+
+      RiskIncidence previous = previousIncidences.get(incidence.getId());
+      if (previous != null) {
+        addToRiskCounters(counters, previous.getRiskId(), -1, isUnmitigated(previous.getStatus()) ? -1 : 0);
+        addToRiskCounters(counters, previous.getRiskId(), 1, isUnmitigated(incidence.getStatus()) ? 1 : 0);
+      }
+    }
+
+    SolrUtils.updateAll(index, RiskIncidence.class, fieldsByUUID, (ModelObserver) this).addTo(ret);
+    updateRiskCounters(counters, commit).addTo(ret);
+    return ret;
+  }
+
+  /**
+   * Retrieves, with real-time get, the risk and status of the given incidences
+   * as they are in the index.
+   *
+   * @return the indexed incidences by id or {@code null} if they could not be
+   *         retrieved (the error is added to {@code ret})
+   */
+  private Map<String, RiskIncidence> retrieveIndexedIncidences(List<String> riskIncidenceIds,
+    ReturnWithExceptions<Void, ModelObserver> ret) {
+    try {
+      Map<String, RiskIncidence> indexedIncidences = new HashMap<>();
+      for (RiskIncidence indexed : SolrUtils.retrieve(index, RiskIncidence.class, riskIncidenceIds, Arrays.asList(
+        RodaConstants.INDEX_UUID, RodaConstants.RISK_INCIDENCE_RISK_ID, RodaConstants.RISK_INCIDENCE_STATUS))) {
+        indexedIncidences.put(indexed.getId(), indexed);
+      }
+      return indexedIncidences;
+    } catch (GenericException e) {
+      LOGGER.error("Error retrieving risk incidences to update the risk counters", e);
+      ret.add(e);
+      return null;
+    }
+  }
+
+  private static boolean isUnmitigated(INCIDENCE_STATUS status) {
+    return INCIDENCE_STATUS.UNMITIGATED.equals(status);
+  }
+
+  private static void addToRiskCounters(Map<String, Map<String, Integer>> counters, String riskId, int incidences,
+    int unmitigatedIncidences) {
+    if (riskId != null) {
+      Map<String, Integer> riskCounters = counters.computeIfAbsent(riskId, k -> new HashMap<>());
+      riskCounters.merge(RodaConstants.RISK_INCIDENCES_COUNT, incidences, Integer::sum);
+      riskCounters.merge(RodaConstants.RISK_UNMITIGATED_INCIDENCES_COUNT, unmitigatedIncidences, Integer::sum);
+    }
+  }
+
+  /**
+   * Adds the given differences to the incidence counters of the risks, with
+   * atomic increments that do not need the incidences to be visible to
+   * searches, so nothing has to be committed (batches of incidences share a
+   * partition, so their increments are applied in order).
+   */
+  private ReturnWithExceptions<Void, ModelObserver> updateRiskCounters(Map<String, Map<String, Integer>> counters,
+    boolean commit) {
+    ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
+    counters.values().removeIf(riskCounters -> riskCounters.values().stream().allMatch(count -> count == 0));
+
+    if (!counters.isEmpty()) {
+      try {
+        // risks not in the index (e.g. already deleted) must not be recreated by
+        // the increment, real-time get also finds the ones not yet committed
+        List<String> existingRisks = SolrUtils.retrieve(index, IndexedRisk.class, new ArrayList<>(counters.keySet()),
+          Arrays.asList(RodaConstants.INDEX_UUID)).stream().map(IndexedRisk::getUUID).collect(Collectors.toList());
+        counters.keySet().retainAll(existingRisks);
+        SolrUtils.incrementAll(index, IndexedRisk.class, counters, (ModelObserver) this).addTo(ret);
+      } catch (GenericException e) {
+        LOGGER.error("Error updating risk incidence counters", e);
+        ret.add(e);
+      }
+    }
+
+    if (commit) {
+      try {
+        SolrUtils.commit(index, RiskIncidence.class, IndexedRisk.class);
+      } catch (GenericException e) {
+        LOGGER.error("Error committing risk incidences", e);
+        ret.add(e);
+      }
+    }
+
+    return ret;
   }
 
   @Override
   public ReturnWithExceptions<Void, ModelObserver> riskIncidenceDeleted(String riskIncidenceId, boolean commit) {
-    return SolrUtils.delete(index, RiskIncidence.class, Arrays.asList(riskIncidenceId), this, commit);
+    return riskIncidencesDeleted(Collections.singletonList(riskIncidenceId), commit);
+  }
+
+  @Override
+  public ReturnWithExceptions<Void, ModelObserver> riskIncidencesDeleted(List<String> riskIncidenceIds,
+    boolean commit) {
+    ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
+
+    // the deleted incidences must be retrieved before they leave the index
+    Map<String, RiskIncidence> deletedIncidences = retrieveIndexedIncidences(riskIncidenceIds, ret);
+    SolrUtils.delete(index, RiskIncidence.class, riskIncidenceIds, (ModelObserver) this, false).addTo(ret);
+
+    Map<String, Map<String, Integer>> counters = new HashMap<>();
+    if (deletedIncidences != null) {
+      for (RiskIncidence deleted : deletedIncidences.values()) {
+        addToRiskCounters(counters, deleted.getRiskId(), -1, isUnmitigated(deleted.getStatus()) ? -1 : 0);
+      }
+    }
+    updateRiskCounters(counters, commit).addTo(ret);
+    return ret;
   }
 
   @Override
@@ -13,6 +13,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Serializable;
 import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
@@ -24,6 +25,7 @@ import org.apache.commons.configuration.Configuration;
 import org.apache.commons.io.IOUtils;
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
 import org.roda.core.RodaCoreFactory;
 import org.roda.core.common.ReturnWithExceptionsWrapper;
 import org.roda.core.common.iterables.CloseableIterable;
@@ -72,6 +74,8 @@ import org.roda.core.data.v2.risks.IndexedRisk;
 import org.roda.core.data.v2.risks.Risk;
 import org.roda.core.data.v2.risks.RiskIncidence;
 import org.roda.core.data.v2.user.User;
+import org.roda.core.index.schema.ShadowCollectionManager;
+import org.roda.core.index.utils.IndexQueryCache;
 import org.roda.core.index.utils.IndexResultIterator;
 import org.roda.core.index.utils.IterableIndexResult;
 import org.roda.core.index.utils.SolrUtils;
@@ -96,6 +100,7 @@ public class IndexService {
   private final ModelService model;
   private final IndexModelObserver observer;
   private final NodeType nodeType;
+  private final ShadowCollectionManager shadowCollections;
 
   public IndexService(SolrClient index, ModelService model, MetricRegistry metricRegistry,
     Configuration rodaConfiguration, NodeType nodeType) {
@@ -108,6 +113,13 @@ public class IndexService {
     model.addModelObserver(observer);
 
     configIterableIndexResult(metricRegistry, rodaConfiguration);
+    configQueryCache(metricRegistry, rodaConfiguration);
+
+    Optional<Path> embeddedDataPath = index instanceof EmbeddedSolrServer
+      ? Optional.ofNullable(RodaCoreFactory.getIndexDataPath())
+      : Optional.empty();
+    shadowCollections = new ShadowCollectionManager(index, embeddedDataPath);
+    SolrUtils.injectShadowCollections(shadowCollections);
   }
 
   private void configIterableIndexResult(MetricRegistry metricRegistry, Configuration rodaConfiguration) {
@@ -123,6 +135,17 @@ public class IndexService {
       rodaConfiguration.getInt("core.index_result.sleep", IndexResultIterator.DEFAULT_SLEEP_BETWEEN_RETRIES));
   }
 
+  private void configQueryCache(MetricRegistry metricRegistry, Configuration rodaConfiguration) {
+    if (rodaConfiguration.getBoolean("core.index.query_cache.enabled", false)) {
+      SolrUtils.injectQueryCache(new IndexQueryCache(metricRegistry,
+        rodaConfiguration.getLong("core.index.query_cache.ttl_ms", IndexQueryCache.DEFAULT_TTL_IN_MILLIS),
+        rodaConfiguration.getLong("core.index.query_cache.max_entries",
+          IndexQueryCache.DEFAULT_MAX_ENTRIES_PER_COLLECTION)));
+    } else {
+      SolrUtils.injectQueryCache(null);
+    }
+  }
+
   public IndexedAIP getParent(IndexedAIP aip, User user, List<String> fieldsToReturn)
     throws NotFoundException, GenericException, AuthorizationDeniedException {
     return SolrUtils.retrieve(getSolrClient(), IndexedAIP.class, aip.getParentID(), user, fieldsToReturn);
@@ -471,6 +494,7 @@ public class IndexService {
     String query = RodaConstants.LOG_DATETIME + ":[* TO " + dateString + "]";
     getSolrClient().deleteByQuery(RodaConstants.INDEX_ACTION_LOG, query);
     getSolrClient().commit(RodaConstants.INDEX_ACTION_LOG);
+    SolrUtils.invalidateQueryCache(RodaConstants.INDEX_ACTION_LOG);
   }
 
   public <T extends IsRODAObject> void reindexAll(StorageService storage, Class<T> objectClass)
@@ -481,7 +505,7 @@ public class IndexService {
     if (AIP.class.equals(objectClass)) {
       reindexAIPs();
     } else if (TransferredResource.class.equals(objectClass)) {
-      RodaCoreFactory.getTransferredResourcesScanner().updateTransferredResources(Optional.empty(), true);
+      RodaCoreFactory.getTransferredResourcesScanner().updateTransferredResources(Optional.empty(), true, true);
     } else {
       StoragePath containerPath = ModelUtils.getContainerPath(objectClass);
       try (CloseableIterable<Resource> listResourcesUnderDirectory = storage.listResourcesUnderContainer(containerPath,
@@ -552,6 +576,7 @@ public class IndexService {
     try {
       getSolrClient().deleteByQuery(indexName, "*:*");
       getSolrClient().commit(indexName);
+      SolrUtils.invalidateQueryCache(indexName);
     } catch (SolrServerException | IOException e) {
       LOGGER.error("Error cleaning up index {}", indexName, e);
       throw new GenericException("Error cleaning up index " + indexName, e);
@@ -574,6 +599,7 @@ public class IndexService {
       getSolrClient().deleteByQuery(indexName,
         RodaConstants.PRESERVATION_EVENT_OBJECT_CLASS + ":" + PreservationMetadataEventClass.REPOSITORY.toString());
       getSolrClient().commit(indexName);
+      SolrUtils.invalidateQueryCache(indexName);
     } catch (SolrServerException | IOException e) {
       LOGGER.error("Error cleaning up index {}", indexName, e);
       throw new GenericException("Error cleaning up index " + indexName, e);
@@ -588,6 +614,7 @@ public class IndexService {
       getSolrClient().deleteByQuery(indexName, "*:* -" + RodaConstants.PRESERVATION_EVENT_OBJECT_CLASS + ":"
         + PreservationMetadataEventClass.REPOSITORY.toString());
       getSolrClient().commit(indexName);
+      SolrUtils.invalidateQueryCache(indexName);
     } catch (SolrServerException | IOException e) {
       LOGGER.error("Error cleaning up index {}", indexName, e);
       throw new GenericException("Error cleaning up index " + indexName, e);
@@ -625,6 +652,8 @@ public class IndexService {
       }
     }
 
+    // model events may still be waiting to be indexed
+    model.flush();
     SolrUtils.commit(getSolrClient(), classToCommit);
   }
 
@@ -683,10 +712,21 @@ public class IndexService {
     SolrUtils.create(getSolrClient(), classToCreate, instance, this);
   }
 
+  public <T extends IsIndexed, M extends IsModelObject> ReturnWithExceptions<Void, IndexService> createAll(
+    Class<T> classToCreate, List<M> instances) throws AuthorizationDeniedException {
+    RodaCoreFactory.checkIfWriteIsAllowedAndIfFalseThrowException(nodeType);
+
+    return SolrUtils.createAll(getSolrClient(), classToCreate, instances, this);
+  }
+
   public SolrClient getSolrClient() {
     return solrClient;
   }
 
+  public ShadowCollectionManager getShadowCollections() {
+    return shadowCollections;
+  }
+
   public <T extends IsIndexed> CloseableIterable<OptionalWithCause<T>> list(Class<T> listClass,
     List<String> fieldsToReturn) throws RequestNotValidException, GenericException {
     int counter = count(listClass, Filter.ALL).intValue();
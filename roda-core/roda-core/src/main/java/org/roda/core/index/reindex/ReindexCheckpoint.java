@@ -0,0 +1,107 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.index.reindex;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.storage.fs.FSUtils;
+
+/**
+ * Keeps track, on a local file, of the reindex partitions that were already
+ * completed so that an interrupted reindex can be resumed.
+ *
+ * <p>
+ * Each line of the file holds one completed partition
+ * (<code>&lt;class name&gt; &lt;partition&gt;</code>) or the shadow
+ * collection a collection is being rebuilt into
+ * (<code>@shadow &lt;collection&gt; &lt;shadow&gt;</code>). Lines are only
+ * appended, so a crash can at most lose the line being written.
+ * </p>
+ */
+public class ReindexCheckpoint {
+
+  private static final String SEPARATOR = " ";
+  private static final String SHADOW_PREFIX = "@shadow";
+
+  private final Path file;
+  private final Set<String> completed = Collections.synchronizedSet(new HashSet<>());
+  private final Map<String, String> shadows = new ConcurrentHashMap<>();
+
+  public ReindexCheckpoint(Path file) throws GenericException {
+    this.file = file;
+    try {
+      Files.createDirectories(file.getParent());
+      if (FSUtils.exists(file)) {
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+          String[] split = line.trim().split(SEPARATOR);
+          if (split.length == 3 && SHADOW_PREFIX.equals(split[0])) {
+            shadows.put(split[1], split[2]);
+          } else if (!line.trim().isEmpty()) {
+            completed.add(line.trim());
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new GenericException("Could not load reindex checkpoint " + file, e);
+    }
+  }
+
+  public boolean isCompleted(Class<?> objectClass, int partition) {
+    return completed.contains(key(objectClass, partition));
+  }
+
+  public synchronized void markCompleted(Class<?> objectClass, int partition) throws GenericException {
+    String key = key(objectClass, partition);
+    append(key);
+    completed.add(key);
+  }
+
+  public Map<String, String> getShadows() {
+    return Collections.unmodifiableMap(shadows);
+  }
+
+  public synchronized void recordShadow(String collection, String shadow) throws GenericException {
+    if (!shadow.equals(shadows.get(collection))) {
+      append(SHADOW_PREFIX + SEPARATOR + collection + SEPARATOR + shadow);
+      shadows.put(collection, shadow);
+    }
+  }
+
+  public boolean isEmpty() {
+    return completed.isEmpty() && shadows.isEmpty();
+  }
+
+  public synchronized void clear() {
+    completed.clear();
+    shadows.clear();
+    FSUtils.deletePathQuietly(file);
+  }
+
+  private void append(String line) throws GenericException {
+    try {
+      Files.write(file, (line + "\n").getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+        StandardOpenOption.APPEND, StandardOpenOption.DSYNC);
+    } catch (IOException e) {
+      throw new GenericException("Could not update reindex checkpoint " + file, e);
+    }
+  }
+
+  private static String key(Class<?> objectClass, int partition) {
+    return objectClass.getName() + SEPARATOR + partition;
+  }
+}
@@ -0,0 +1,450 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.index.reindex;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.roda.core.common.iterables.CloseableIterable;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotSupportedException;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.exceptions.ReturnWithExceptions;
+import org.roda.core.data.v2.IsModelObject;
+import org.roda.core.data.v2.IsRODAObject;
+import org.roda.core.data.v2.LiteRODAObject;
+import org.roda.core.data.v2.common.OptionalWithCause;
+import org.roda.core.data.v2.index.IsIndexed;
+import org.roda.core.data.v2.ip.AIP;
+import org.roda.core.data.v2.ip.DIP;
+import org.roda.core.data.v2.jobs.Job;
+import org.roda.core.data.v2.notifications.Notification;
+import org.roda.core.data.v2.ri.RepresentationInformation;
+import org.roda.core.data.v2.risks.Risk;
+import org.roda.core.data.v2.risks.RiskIncidence;
+import org.roda.core.index.IndexService;
+import org.roda.core.index.schema.ShadowCollectionManager;
+import org.roda.core.index.schema.SolrCollectionRegistry;
+import org.roda.core.model.LiteRODAObjectFactory;
+import org.roda.core.model.ModelObserver;
+import org.roda.core.model.ModelService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reindexes RODA entities by splitting each class into storage key partitions
+ * (a stable hash of the object id) and running the partitions concurrently.
+ *
+ * <p>
+ * All classes share one bounded thread pool and each collection never has
+ * more than {@code partitionsPerCollection} workers running at the same time,
+ * so a huge class (e.g. AIPs) does not starve the others. Completed
+ * partitions are recorded in a {@link ReindexCheckpoint}, so running the
+ * coordinator again with the same checkpoint skips them.
+ * </p>
+ *
+ * <p>
+ * The pending partitions of each class are reindexed in rounds of
+ * {@code partitionsPerCollection} partitions: the storage container of the
+ * class is listed once per round and the objects of the round partitions are
+ * dispatched to the workers of that class. When they are all reindexed, the
+ * collection is committed and the round partitions are recorded as completed
+ * right away, so a crash only loses the rounds in progress. A partition is
+ * only recorded as completed if none of its objects failed, so resuming
+ * retries it.
+ * </p>
+ *
+ * <p>
+ * When using shadow collections, the partitions are indexed into new shadow
+ * collections (see {@link ShadowCollectionManager}) while the live ones keep
+ * serving searches, and the live collections are only switched to the shadows
+ * once every partition has been reindexed without errors.
+ * </p>
+ */
+public class ReindexCoordinator {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ReindexCoordinator.class);
+
+  public static final int DEFAULT_NUMBER_OF_PARTITIONS = 16;
+  public static final int DEFAULT_NUMBER_OF_THREADS = 8;
+  public static final int DEFAULT_PARTITIONS_PER_COLLECTION = 4;
+
+  private static final int QUEUE_CAPACITY = 1000;
+  private static final LiteRODAObject END_OF_LISTING = new LiteRODAObject("");
+
+  private static final List<Class<? extends IsRODAObject>> SUPPORTED_CLASSES = Arrays.asList(AIP.class, DIP.class,
+    RepresentationInformation.class, Notification.class, Risk.class, RiskIncidence.class, Job.class);
+
+  private final IndexService index;
+  private final ModelService model;
+  private final ReindexCheckpoint checkpoint;
+  private final int numberOfPartitions;
+  private final int numberOfThreads;
+  private final int partitionsPerCollection;
+  private final boolean useShadowCollections;
+
+  private final Map<Class<? extends IsRODAObject>, AtomicLong> successes = new LinkedHashMap<>();
+  private final Map<Class<? extends IsRODAObject>, AtomicLong> failures = new LinkedHashMap<>();
+
+  public ReindexCoordinator(IndexService index, ModelService model, ReindexCheckpoint checkpoint,
+    int numberOfPartitions, int numberOfThreads, int partitionsPerCollection) {
+    this(index, model, checkpoint, numberOfPartitions, numberOfThreads, partitionsPerCollection, false);
+  }
+
+  public ReindexCoordinator(IndexService index, ModelService model, ReindexCheckpoint checkpoint,
+    int numberOfPartitions, int numberOfThreads, int partitionsPerCollection, boolean useShadowCollections) {
+    this.index = index;
+    this.model = model;
+    this.checkpoint = checkpoint;
+    this.numberOfPartitions = Math.max(1, numberOfPartitions);
+    this.numberOfThreads = Math.max(1, numberOfThreads);
+    this.partitionsPerCollection = Math.max(1, partitionsPerCollection);
+    this.useShadowCollections = useShadowCollections;
+  }
+
+  public static boolean isSupported(Class<? extends IsRODAObject> objectClass) {
+    return SUPPORTED_CLASSES.contains(objectClass);
+  }
+
+  /**
+   * Reindexes all objects of the given classes and blocks until all partitions
+   * are finished. Classes that are not {@link #isSupported(Class)} are ignored.
+   */
+  public void reindex(List<Class<? extends IsRODAObject>> classes) throws GenericException {
+    List<String> shadowedCollections = useShadowCollections ? beginShadows(classes) : Collections.emptyList();
+
+    List<ClassReindex> reindexes = new ArrayList<>();
+    for (Class<? extends IsRODAObject> objectClass : classes) {
+      if (!isSupported(objectClass)) {
+        continue;
+      }
+
+      successes.put(objectClass, new AtomicLong());
+      failures.put(objectClass, new AtomicLong());
+      Set<Integer> pending = new HashSet<>();
+      for (int partition = 0; partition < numberOfPartitions; partition++) {
+        if (checkpoint.isCompleted(objectClass, partition)) {
+          LOGGER.debug("Skipping already reindexed partition {} of {}", partition, objectClass.getSimpleName());
+        } else {
+          pending.add(partition);
+        }
+      }
+
+      if (!pending.isEmpty()) {
+        reindexes.add(new ClassReindex(objectClass, pending));
+      }
+    }
+
+    LOGGER.info("Reindexing {} classes using {} threads", reindexes.size(), numberOfThreads);
+    // the listers commit and checkpoint each round before ending the listing,
+    // so once all workers are done every round has been checkpointed
+    CountDownLatch done = new CountDownLatch(reindexes.size() * partitionsPerCollection);
+    List<RODAException> errors = Collections.synchronizedList(new ArrayList<>());
+    List<Thread> listers = new ArrayList<>();
+    ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+    try {
+      for (ClassReindex reindex : reindexes) {
+        // listers have their own threads so that a full queue never holds a
+        // pool thread that the workers of the same class would need
+        Thread lister = new Thread(() -> reindex.listRounds(errors),
+          "reindex-lister-" + reindex.objectClass.getSimpleName());
+        lister.setDaemon(true);
+        lister.start();
+        listers.add(lister);
+
+        for (int i = 0; i < partitionsPerCollection; i++) {
+          executor.execute(() -> {
+            try {
+              reindex.consume(errors);
+            } finally {
+              done.countDown();
+            }
+          });
+        }
+      }
+
+      done.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new GenericException("Interrupted while waiting for reindex partitions", e);
+    } finally {
+      executor.shutdownNow();
+      listers.forEach(Thread::interrupt);
+    }
+
+    if (!errors.isEmpty()) {
+      // shadows are kept, and still receive live writes, so the reindex can be
+      // resumed without restarting RODA
+      throw new GenericException("Error reindexing " + errors.size() + " partition(s), first error: "
+        + errors.get(0).getMessage());
+    }
+
+    for (String collection : shadowedCollections) {
+      index.getShadowCollections().complete(collection);
+    }
+  }
+
+  public long getSuccessCount(Class<? extends IsRODAObject> objectClass) {
+    AtomicLong count = successes.get(objectClass);
+    return count == null ? 0 : count.get();
+  }
+
+  public long getFailureCount(Class<? extends IsRODAObject> objectClass) {
+    AtomicLong count = failures.get(objectClass);
+    return count == null ? 0 : count.get();
+  }
+
+  /**
+   * Starts (or keeps) rebuilding the collections of the given classes into
+   * shadow collections. A checkpoint can only be resumed if its shadows are
+   * still active; otherwise they have missed writes and the whole reindex
+   * starts over.
+   */
+  private List<String> beginShadows(List<Class<? extends IsRODAObject>> classes) throws GenericException {
+    ShadowCollectionManager shadowCollections = index.getShadowCollections();
+    Set<String> collections = new LinkedHashSet<>();
+    for (Class<? extends IsRODAObject> objectClass : classes) {
+      if (isSupported(objectClass)) {
+        collections.addAll(ShadowCollectionManager
+          .getRebuildableCollections(SolrCollectionRegistry.giveRespectiveIndexClass(objectClass)));
+      }
+    }
+
+    Map<String, String> recorded = checkpoint.getShadows();
+    boolean resumable = collections.stream()
+      .allMatch(c -> recorded.containsKey(c) && shadowCollections.getShadow(c).orElse("").equals(recorded.get(c)));
+
+    if (!resumable && !checkpoint.isEmpty()) {
+      LOGGER.warn("Reindex checkpoint cannot be resumed into shadow collections, starting over");
+      for (Map.Entry<String, String> entry : recorded.entrySet()) {
+        if (!shadowCollections.getShadow(entry.getKey()).isPresent()) {
+          shadowCollections.discard(entry.getValue());
+        }
+      }
+      checkpoint.clear();
+    }
+
+    List<String> ret = new ArrayList<>();
+    for (String collection : collections) {
+      checkpoint.recordShadow(collection, shadowCollections.begin(collection));
+      ret.add(collection);
+    }
+    return ret;
+  }
+
+  private int getPartition(LiteRODAObject lite) {
+    String[] split = lite.getInfo().split(LiteRODAObjectFactory.SEPARATOR_REGEX);
+    String storageKey = split.length > 1 ? split[1] : lite.getInfo();
+    return Math.floorMod(storageKey.hashCode(), numberOfPartitions);
+  }
+
+  private void commit(Class<? extends IsRODAObject> objectClass) throws RODAException {
+    Class<? extends IsIndexed> indexClass = SolrCollectionRegistry.giveRespectiveIndexClass(objectClass);
+    index.commit(true, indexClass);
+  }
+
+  private static String getCollectionName(Class<? extends IsRODAObject> objectClass) throws GenericException {
+    try {
+      return SolrCollectionRegistry.getIndexName(SolrCollectionRegistry.giveRespectiveIndexClass(objectClass));
+    } catch (NotSupportedException e) {
+      throw new GenericException(e);
+    }
+  }
+
+  /**
+   * The reindex of the pending partitions of one class: each round lists its
+   * storage container once and feeds a bounded queue consumed by the class
+   * workers.
+   */
+  private class ClassReindex {
+    private final Class<? extends IsRODAObject> objectClass;
+    private final List<Set<Integer>> rounds = new ArrayList<>();
+    private final BlockingQueue<LiteRODAObject> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Map<Integer, AtomicLong> partitionFailures = new ConcurrentHashMap<>();
+    // objects queued in the current round that are not reindexed yet
+    private final Object inFlightLock = new Object();
+    private long inFlight = 0;
+
+    ClassReindex(Class<? extends IsRODAObject> objectClass, Set<Integer> pending) {
+      this.objectClass = objectClass;
+      Set<Integer> round = new HashSet<>();
+      for (int partition : new TreeSet<>(pending)) {
+        round.add(partition);
+        if (round.size() == partitionsPerCollection) {
+          rounds.add(round);
+          round = new HashSet<>();
+        }
+      }
+      if (!round.isEmpty()) {
+        rounds.add(round);
+      }
+    }
+
+    void listRounds(List<RODAException> errors) {
+      try {
+        for (int i = 0; i < rounds.size(); i++) {
+          Set<Integer> round = rounds.get(i);
+          boolean listed = list(round, i == 0, errors);
+          awaitRound();
+          try {
+            commit(objectClass);
+            checkpointPartitions(round, listed, errors);
+          } catch (RODAException e) {
+            LOGGER.error("Error committing reindex of {}", objectClass.getSimpleName(), e);
+            errors.add(e);
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        for (int i = 0; i < partitionsPerCollection; i++) {
+          if (!queue.offer(END_OF_LISTING)) {
+            try {
+              queue.put(END_OF_LISTING);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+              break;
+            }
+          }
+        }
+      }
+    }
+
+    /**
+     * @return if the whole container was listed, so that the round partitions
+     *         can be checkpointed
+     */
+    private boolean list(Set<Integer> round, boolean firstRound, List<RODAException> errors)
+      throws InterruptedException {
+      boolean listed = true;
+      try (CloseableIterable<OptionalWithCause<LiteRODAObject>> lites = model.listLite(objectClass)) {
+        for (OptionalWithCause<LiteRODAObject> lite : lites) {
+          if (!lite.isPresent()) {
+            // its partition is unknown, so no partition can be checkpointed
+            LOGGER.error("Cannot reindex object", lite.getCause());
+            if (firstRound) {
+              failures.get(objectClass).incrementAndGet();
+            }
+            listed = false;
+          } else if (round.contains(getPartition(lite.get()))) {
+            synchronized (inFlightLock) {
+              inFlight++;
+            }
+            queue.put(lite.get());
+          }
+        }
+      } catch (RODAException | IOException | RuntimeException e) {
+        LOGGER.error("Error listing {} to reindex", objectClass.getSimpleName(), e);
+        listed = false;
+        errors.add(new GenericException("Error listing " + objectClass.getSimpleName() + " to reindex", e));
+      }
+      return listed;
+    }
+
+    private void awaitRound() throws InterruptedException {
+      synchronized (inFlightLock) {
+        while (inFlight > 0) {
+          inFlightLock.wait();
+        }
+      }
+    }
+
+    void consume(List<RODAException> errors) {
+      try {
+        if (useShadowCollections) {
+          ShadowCollectionManager.runAsRebuild(this::reindexQueued);
+        } else {
+          reindexQueued();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (RuntimeException e) {
+        LOGGER.error("Unexpected error reindexing {}", objectClass.getSimpleName(), e);
+        errors.add(new GenericException(e));
+      }
+    }
+
+    private void reindexQueued() throws InterruptedException {
+      for (LiteRODAObject lite = queue.take(); lite != END_OF_LISTING; lite = queue.take()) {
+        boolean indexed = false;
+        try {
+          indexed = reindexObject(lite);
+        } catch (RuntimeException e) {
+          LOGGER.error("Unexpected error reindexing {}", lite.getInfo(), e);
+        } finally {
+          if (indexed) {
+            successes.get(objectClass).incrementAndGet();
+          } else {
+            failures.get(objectClass).incrementAndGet();
+            partitionFailures.computeIfAbsent(getPartition(lite), p -> new AtomicLong()).incrementAndGet();
+          }
+
+          synchronized (inFlightLock) {
+            if (--inFlight == 0) {
+              inFlightLock.notifyAll();
+            }
+          }
+        }
+      }
+    }
+
+    private boolean reindexObject(LiteRODAObject lite) {
+      OptionalWithCause<IsModelObject> object = model.retrieveObjectFromLite(lite);
+      if (object.isPresent()) {
+        ReturnWithExceptions<Void, ModelObserver> ret = index.reindex(object.get());
+        if (ret.isEmpty()) {
+          return true;
+        } else {
+          LOGGER.error("Error reindexing {}: {}", lite.getInfo(), ret.getExceptions());
+        }
+      } else {
+        LOGGER.error("Cannot retrieve object {} to reindex", lite.getInfo(), object.getCause());
+      }
+      return false;
+    }
+
+    /**
+     * Records the round partitions without failures as completed and reports
+     * the others as errors, so that resuming the reindex retries them.
+     */
+    private void checkpointPartitions(Set<Integer> round, boolean listed, List<RODAException> errors) {
+      for (int partition : round) {
+        AtomicLong partitionFailure = partitionFailures.get(partition);
+        if (!listed) {
+          errors.add(new GenericException(
+            "Partition " + partition + " of " + objectClass.getSimpleName() + " could not be fully listed"));
+        } else if (partitionFailure != null) {
+          errors.add(new GenericException("Partition " + partition + " of " + objectClass.getSimpleName() + " had "
+            + partitionFailure.get() + " failure(s)"));
+        } else {
+          try {
+            checkpoint.markCompleted(objectClass, partition);
+          } catch (RODAException e) {
+            LOGGER.error("Error checkpointing partition {} of {}", partition, objectClass.getSimpleName(), e);
+            errors.add(e);
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,400 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.index.schema;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.CloudSolrClient;
+import org.apache.solr.client.solrj.request.CollectionAdminRequest;
+import org.apache.solr.client.solrj.request.CoreAdminRequest;
+import org.apache.solr.client.solrj.response.CoreAdminResponse;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.cloud.DocCollection;
+import org.apache.solr.common.cloud.ZkStateReader;
+import org.apache.solr.common.params.CoreAdminParams.CoreAdminAction;
+import org.apache.solr.common.util.NamedList;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.AlreadyExistsException;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotSupportedException;
+import org.roda.core.data.v2.IsModelObject;
+import org.roda.core.data.v2.index.IsIndexed;
+import org.roda.core.storage.fs.FSUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Manages versioned shadow collections used to rebuild an index without
+ * taking the live one offline.
+ *
+ * <p>
+ * While a collection is being rebuilt every write to it is also sent to its
+ * shadow (dual-write), unless the current thread is running as part of the
+ * rebuild itself (see {@link #runAsRebuild(RebuildTask)}), in which case it
+ * only goes to the shadow. When the rebuild is completed the logical name is
+ * atomically pointed at the shadow and the old physical collection is dropped.
+ * </p>
+ *
+ * <p>
+ * On SolrCloud logical names are collection aliases and the flip is a
+ * CREATEALIAS. On standalone Solr (embedded or HTTP) the flip is a core SWAP;
+ * for embedded Solr the physical data directory of each core is also recorded
+ * in an aliases file that is read when the cores are created at startup.
+ * </p>
+ */
+public class ShadowCollectionManager {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ShadowCollectionManager.class);
+
+  public static final String EMBEDDED_ALIASES_FILE = "aliases.properties";
+
+  private static final String VERSION_SEPARATOR = "_";
+  private static final String CORE_PROPERTIES = "core.properties";
+  private static final ThreadLocal<Boolean> REBUILD_ONLY = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+  private final SolrClient client;
+  private final Optional<Path> embeddedDataPath;
+  private final Map<String, String> shadows = new ConcurrentHashMap<>();
+  private final Set<String> failedRebuilds = ConcurrentHashMap.newKeySet();
+
+  @FunctionalInterface
+  public interface RebuildTask<E extends Exception> {
+    void run() throws E;
+  }
+
+  /**
+   * @param embeddedDataPath
+   *          the directory holding the embedded Solr data directories (and the
+   *          aliases file) or empty if Solr is not embedded
+   */
+  public ShadowCollectionManager(SolrClient client, Optional<Path> embeddedDataPath) {
+    this.client = client;
+    this.embeddedDataPath = embeddedDataPath;
+  }
+
+  public static String createPhysicalName(String collection) {
+    return collection + VERSION_SEPARATOR + new SimpleDateFormat("yyyyMMddHHmmssSSS").format(new Date());
+  }
+
+  /**
+   * Runs the task so that writes done by the current thread to collections
+   * being rebuilt only go to their shadows.
+   */
+  public static <E extends Exception> void runAsRebuild(RebuildTask<E> task) throws E {
+    boolean previous = REBUILD_ONLY.get();
+    REBUILD_ONLY.set(Boolean.TRUE);
+    try {
+      task.run();
+    } finally {
+      REBUILD_ONLY.set(previous);
+    }
+  }
+
+  public boolean isRebuilding(String collection) {
+    return shadows.containsKey(collection);
+  }
+
+  public boolean isShadow(String physicalCollection) {
+    return shadows.containsValue(physicalCollection);
+  }
+
+  public Optional<String> getShadow(String collection) {
+    return Optional.ofNullable(shadows.get(collection));
+  }
+
+  /**
+   * Records that some objects could not be written to the shadow of the
+   * collection, so the rebuild must not be completed.
+   */
+  public void recordRebuildFailure(String collection) {
+    if (shadows.containsKey(collection)) {
+      failedRebuilds.add(collection);
+    }
+  }
+
+  public boolean hasRebuildFailures(String collection) {
+    return failedRebuilds.contains(collection);
+  }
+
+  /**
+   * @return the physical collections that a write to the given collection
+   *         should go to
+   */
+  public List<String> getWriteTargets(String collection) {
+    String shadow = shadows.get(collection);
+    if (shadow == null) {
+      return Collections.singletonList(collection);
+    } else if (REBUILD_ONLY.get()) {
+      return Collections.singletonList(shadow);
+    } else {
+      List<String> targets = new ArrayList<>(2);
+      targets.add(collection);
+      targets.add(shadow);
+      return targets;
+    }
+  }
+
+  /**
+   * Starts rebuilding a collection into a new, empty, shadow collection. If the
+   * collection is already being rebuilt, its current shadow is kept.
+   *
+   * @return the name of the shadow collection
+   */
+  public synchronized String begin(String collection) throws GenericException {
+    String current = shadows.get(collection);
+    if (current != null) {
+      return current;
+    }
+
+    String shadow = createPhysicalName(collection);
+    LOGGER.info("Rebuilding collection {} into {}", collection, shadow);
+    if (client instanceof CloudSolrClient) {
+      createCloudShadow((CloudSolrClient) client, collection, shadow);
+    } else {
+      createCoreShadow(collection, shadow);
+    }
+
+    SolrCollection<? extends IsIndexed, ? extends IsModelObject> solrCollection = getSolrCollection(collection);
+    if (solrCollection != null) {
+      SolrBootstrapUtils.bootstrapCollection(client, solrCollection, shadow);
+    }
+
+    failedRebuilds.remove(collection);
+    shadows.put(collection, shadow);
+    return shadow;
+  }
+
+  /**
+   * Points the collection at its shadow and drops the previous physical
+   * collection.
+   */
+  public synchronized void complete(String collection) throws GenericException {
+    String shadow = shadows.get(collection);
+    if (shadow == null) {
+      throw new GenericException("Collection " + collection + " is not being rebuilt");
+    }
+
+    try {
+      client.commit(shadow);
+      if (client instanceof CloudSolrClient) {
+        CloudSolrClient cloud = (CloudSolrClient) client;
+        Optional<String> previous = resolveAlias(cloud, collection);
+        CollectionAdminRequest.createAlias(collection, shadow).process(cloud);
+        shadows.remove(collection);
+        failedRebuilds.remove(collection);
+        if (previous.isPresent()) {
+          CollectionAdminRequest.deleteCollection(previous.get()).process(cloud);
+        }
+      } else {
+        Path shadowInstanceDir = getInstanceDir(shadow);
+        CoreAdminRequest swap = new CoreAdminRequest();
+        swap.setAction(CoreAdminAction.SWAP);
+        swap.setCoreName(collection);
+        swap.setOtherCoreName(shadow);
+        swap.process(client);
+        shadows.remove(collection);
+        failedRebuilds.remove(collection);
+
+        // after the swap, the shadow name refers to the old core
+        CoreAdminRequest.unloadCore(shadow, true, true, client);
+        if (embeddedDataPath.isPresent()) {
+          updateEmbeddedAlias(collection, shadow);
+          // the swap persisted the collection name in the core.properties of
+          // the shadow, but embedded cores are created at startup in the
+          // instance directory named after the collection, so this one would
+          // be a second core with the same name
+          Files.deleteIfExists(shadowInstanceDir.resolve(CORE_PROPERTIES));
+        }
+      }
+      LOGGER.info("Collection {} now points to {}", collection, shadow);
+    } catch (SolrServerException | SolrException | IOException e) {
+      throw new GenericException("Error switching collection " + collection + " to " + shadow, e);
+    }
+  }
+
+  /**
+   * Stops rebuilding the collection and drops the shadow collection.
+   */
+  public synchronized void abort(String collection) {
+    failedRebuilds.remove(collection);
+    String shadow = shadows.remove(collection);
+    if (shadow != null) {
+      discard(shadow);
+    }
+  }
+
+  /**
+   * Drops a shadow collection left behind by a rebuild that did not complete,
+   * e.g. because RODA was restarted in the middle of it. Such a shadow cannot
+   * be resumed as it missed the writes done while it was not active.
+   */
+  public void discard(String shadow) {
+    if (shadows.containsValue(shadow)) {
+      LOGGER.warn("Not discarding shadow collection {} as it is being rebuilt", shadow);
+      return;
+    }
+
+    try {
+      if (client instanceof CloudSolrClient) {
+        CollectionAdminRequest.deleteCollection(shadow).process(client);
+      } else {
+        CoreAdminRequest.unloadCore(shadow, true, true, client);
+      }
+    } catch (SolrServerException | SolrException | IOException e) {
+      LOGGER.error("Error deleting shadow collection {}", shadow, e);
+    }
+  }
+
+  /**
+   * @return the collections that are rebuilt when reindexing the given class.
+   *         Preservation events are left out as that collection also holds
+   *         repository events, which are not rebuilt by a reindex.
+   */
+  public static List<String> getRebuildableCollections(Class<? extends IsIndexed> indexClass)
+    throws GenericException {
+    try {
+      List<String> collections = new ArrayList<>(SolrCollectionRegistry.getCommitIndexNames(indexClass));
+      collections.remove(RodaConstants.INDEX_PRESERVATION_EVENTS);
+      return collections;
+    } catch (NotSupportedException e) {
+      throw new GenericException(e);
+    }
+  }
+
+  /**
+   * Reads the data directory of each embedded core, as recorded when a
+   * rebuild of that core was completed.
+   */
+  public static Properties readEmbeddedAliases(Path dataPath) {
+    Properties aliases = new Properties();
+    Path file = dataPath.resolve(EMBEDDED_ALIASES_FILE);
+    if (FSUtils.exists(file)) {
+      try (InputStream in = Files.newInputStream(file)) {
+        aliases.load(in);
+      } catch (IOException e) {
+        LOGGER.error("Error reading embedded Solr aliases from {}", file, e);
+      }
+    }
+    return aliases;
+  }
+
+  /**
+   * Deletes the instance directories of the embedded cores that were rebuilt
+   * into a shadow collection, which are no longer used once the core of the
+   * collection is created again at startup. Shadows of rebuilds that did not
+   * complete still have their core.properties and are left to
+   * {@link #discard(String)}.
+   */
+  public static void deleteStaleInstanceDirs(Path solrHome, Collection<String> collections) {
+    try (DirectoryStream<Path> instanceDirs = Files.newDirectoryStream(solrHome, Files::isDirectory)) {
+      for (Path instanceDir : instanceDirs) {
+        String name = instanceDir.getFileName().toString();
+        boolean isShadow = collections.stream()
+          .anyMatch(collection -> name.matches(Pattern.quote(collection + VERSION_SEPARATOR) + "\\d+"));
+        if (isShadow && !FSUtils.exists(instanceDir.resolve(CORE_PROPERTIES))) {
+          FSUtils.deletePathQuietly(instanceDir);
+        }
+      }
+    } catch (IOException e) {
+      LOGGER.error("Error deleting stale Solr instance directories from {}", solrHome, e);
+    }
+  }
+
+  private void updateEmbeddedAlias(String collection, String shadow) throws IOException {
+    Path dataPath = embeddedDataPath.get();
+    Properties aliases = readEmbeddedAliases(dataPath);
+    aliases.setProperty(collection, shadow);
+    Path tmp = Files.createTempFile(dataPath, EMBEDDED_ALIASES_FILE, ".tmp");
+    try (OutputStream out = Files.newOutputStream(tmp)) {
+      aliases.store(out, "Physical data directory of each RODA collection");
+    }
+    Files.move(tmp, dataPath.resolve(EMBEDDED_ALIASES_FILE), StandardCopyOption.REPLACE_EXISTING,
+      StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static Optional<String> resolveAlias(CloudSolrClient cloud, String collection) {
+    ZkStateReader zkStateReader = cloud.getZkStateReader();
+    return Optional.ofNullable(zkStateReader.getAliases().getCollectionAliasMap().get(collection));
+  }
+
+  private static void createCloudShadow(CloudSolrClient cloud, String collection, String shadow)
+    throws GenericException {
+    Optional<String> physical = resolveAlias(cloud, collection);
+    if (!physical.isPresent()) {
+      throw new GenericException("Collection " + collection
+        + " is not addressed through an alias, it cannot be rebuilt into a shadow collection");
+    }
+
+    try {
+      DocCollection live = cloud.getZkStateReader().getClusterState().getCollection(physical.get());
+      int numShards = live.getSlices().size();
+      int numReplicas = live.getReplicationFactor() != null ? live.getReplicationFactor() : 1;
+      // the config set keeps the name of the logical collection
+      CollectionAdminRequest.createCollection(shadow, collection, numShards, numReplicas).process(cloud);
+    } catch (SolrServerException | SolrException | IOException e) {
+      throw new GenericException("Error creating shadow collection " + shadow, e);
+    }
+  }
+
+  private void createCoreShadow(String collection, String shadow) throws GenericException {
+    try {
+      Path instanceDir = getInstanceDir(collection);
+      Path shadowInstanceDir = instanceDir.resolveSibling(shadow);
+      FSUtils.copy(instanceDir.resolve("conf"), shadowInstanceDir.resolve("conf"), true);
+
+      CoreAdminRequest.Create create = new CoreAdminRequest.Create();
+      create.setCoreName(shadow);
+      create.setInstanceDir(shadowInstanceDir.toString());
+      if (embeddedDataPath.isPresent()) {
+        create.setDataDir(embeddedDataPath.get().resolve(shadow).toString());
+      }
+      create.process(client);
+    } catch (SolrServerException | SolrException | IOException | AlreadyExistsException e) {
+      throw new GenericException("Error creating shadow core " + shadow, e);
+    }
+  }
+
+  private Path getInstanceDir(String core) throws GenericException, SolrServerException, IOException {
+    CoreAdminResponse status = CoreAdminRequest.getStatus(core, client);
+    NamedList<Object> coreStatus = status.getCoreStatus(core);
+    if (coreStatus == null || coreStatus.get("instanceDir") == null) {
+      throw new GenericException("Could not find core " + core);
+    }
+    return Paths.get(coreStatus.get("instanceDir").toString());
+  }
+
+  private static SolrCollection<? extends IsIndexed, ? extends IsModelObject> getSolrCollection(String collection) {
+    for (SolrCollection<? extends IsIndexed, ? extends IsModelObject> solrCollection : SolrCollectionRegistry
+      .registry()) {
+      if (solrCollection.getIndexName().equals(collection)) {
+        return solrCollection;
+      }
+    }
+    return null;
+  }
+}
@@ -70,11 +70,20 @@ public class SolrBootstrapUtils {
 
   private static <T extends IsIndexed, M extends IsModelObject> void bootstrapCollection(SolrClient client,
     SolrCollection<T, M> collection) throws GenericException {
+    bootstrapCollection(client, collection, collection.getIndexName());
+  }
+
+  /**
+   * Bootstraps the schema of a collection into a physical collection with a
+   * different name, e.g. a shadow collection used while rebuilding the index.
+   */
+  public static <T extends IsIndexed, M extends IsModelObject> void bootstrapCollection(SolrClient client,
+    SolrCollection<T, M> collection, String collectionName) throws GenericException {
 
     // check if fields already exist, only create if they do not
-    Map<String, Field> fields = getFields(client, collection.getIndexName());
-    Map<String, DynamicField> dynamicFields = getDynamicFields(client, collection.getIndexName());
-    Set<CopyField> copyFields = getCopyFields(client, collection.getIndexName());
+    Map<String, Field> fields = getFields(client, collectionName);
+    Map<String, DynamicField> dynamicFields = getDynamicFields(client, collectionName);
+    Set<CopyField> copyFields = getCopyFields(client, collectionName);
 
     SchemaBuilder b = new SchemaBuilder();
     collection.getFields().forEach(f -> {
@@ -85,7 +94,7 @@ public class SolrBootstrapUtils {
         // to default values, should only compare attributes that are not
         // Optional.empty()
         LOGGER.warn("Field {} of collection {} should be updated. Existing: {}. Required: {}", f.getName(),
-          collection.getIndexName(), fields.get(f.getName()), f);
+          collectionName, fields.get(f.getName()), f);
       }
     });
 
@@ -100,16 +109,16 @@ public class SolrBootstrapUtils {
         b.addDynamicField(df);
       } else if (!dynamicFields.get(df.getName()).isEquivalentTo(df)) {
         LOGGER.warn("Dynamic field {} of collection {} should be updated. Existing: {}. Required: {}", df.getName(),
-          collection.getIndexName(), dynamicFields.get(df.getName()), df);
+          collectionName, dynamicFields.get(df.getName()), df);
       }
     });
 
     // XXX find fields that could be removed/pruned?
 
     if (!b.isEmpty()) {
-      b.build(client, collection.getIndexName());
+      b.build(client, collectionName);
     } else {
-      LOGGER.info("Collection {} is up to date", collection.getIndexName());
+      LOGGER.info("Collection {} is up to date", collectionName);
     }
   }
 
@@ -13,6 +13,7 @@ import java.util.List;
 
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrInputDocument;
+import org.roda.core.common.SelectedItemsUtils;
 import org.roda.core.data.common.RodaConstants;
 import org.roda.core.data.exceptions.AuthorizationDeniedException;
 import org.roda.core.data.exceptions.GenericException;
@@ -122,7 +123,7 @@ public class JobCollection extends AbstractSolrCollection<Job, Job> {
     doc.addField(RodaConstants.JOB_PLUGIN_TYPE, job.getPluginType().toString());
     doc.addField(RodaConstants.JOB_PLUGIN, job.getPlugin());
     doc.addField(RodaConstants.JOB_PLUGIN_PARAMETERS, JsonUtils.getJsonFromObject(job.getPluginParameters()));
-    doc.addField(RodaConstants.JOB_SOURCE_OBJECTS, JsonUtils.getJsonFromObject(job.getSourceObjects()));
+    doc.addField(RodaConstants.JOB_SOURCE_OBJECTS, SelectedItemsUtils.getCompactJsonFromObject(job.getSourceObjects()));
     doc.addField(RodaConstants.JOB_OUTCOME_OBJECTS_CLASS, job.getOutcomeObjectsClass());
     doc.addField(RodaConstants.JOB_HAS_FAILURES,
       jobStats.getSourceObjectsProcessedWithFailure() > 0
@@ -169,7 +170,7 @@ public class JobCollection extends AbstractSolrCollection<Job, Job> {
 
     try {
       if (fieldsToReturn.isEmpty() || fieldsToReturn.contains(RodaConstants.JOB_SOURCE_OBJECTS)) {
-        job.setSourceObjects(JsonUtils.getObjectFromJson(
+        job.setSourceObjects(SelectedItemsUtils.getObjectFromCompactJson(
           SolrUtils.objectToString(doc.get(RodaConstants.JOB_SOURCE_OBJECTS), ""), SelectedItems.class));
       }
     } catch (GenericException e) {
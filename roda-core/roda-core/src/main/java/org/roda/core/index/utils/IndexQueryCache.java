@@ -0,0 +1,182 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.index.utils;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Short-lived cache of Solr query responses used by the find & count methods
+ * of {@link SolrUtils}.
+ *
+ * <p>
+ * Entries are keyed on the collection plus the normalised query parameters
+ * (which already include the permission filter query built from the user id
+ * and groups). Concurrent identical requests are coalesced into a single Solr
+ * call and all entries of a collection are dropped whenever that collection is
+ * committed.
+ * </p>
+ */
+public class IndexQueryCache {
+  private static final Logger LOGGER = LoggerFactory.getLogger(IndexQueryCache.class);
+
+  public static final long DEFAULT_TTL_IN_MILLIS = 2000;
+  public static final long DEFAULT_MAX_ENTRIES_PER_COLLECTION = 1000;
+
+  private final long ttlInMillis;
+  private final long maxEntriesPerCollection;
+
+  private final Map<String, Cache<String, QueryResponse>> caches = new ConcurrentHashMap<>();
+  private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+  private final Map<String, CompletableFuture<QueryResponse>> inFlight = new ConcurrentHashMap<>();
+
+  private final Counter hits;
+  private final Counter misses;
+  private final Counter coalesced;
+  private final Counter invalidations;
+
+  public IndexQueryCache(MetricRegistry metricRegistry, long ttlInMillis, long maxEntriesPerCollection) {
+    this.ttlInMillis = ttlInMillis;
+    this.maxEntriesPerCollection = maxEntriesPerCollection;
+
+    String prefix = IndexQueryCache.class.getSimpleName();
+    this.hits = metricRegistry.counter(MetricRegistry.name(prefix, "hits"));
+    this.misses = metricRegistry.counter(MetricRegistry.name(prefix, "misses"));
+    this.coalesced = metricRegistry.counter(MetricRegistry.name(prefix, "coalesced"));
+    this.invalidations = metricRegistry.counter(MetricRegistry.name(prefix, "invalidations"));
+    String hitRatioName = MetricRegistry.name(prefix, "hitRatio");
+    metricRegistry.remove(hitRatioName);
+    metricRegistry.register(hitRatioName, (Gauge<Double>) this::getHitRatio);
+  }
+
+  /**
+   * Executes the query or, if an identical one was answered recently or is
+   * being answered right now, reuses that response. The returned response must
+   * be treated as read-only as it may be shared between callers.
+   */
+  public QueryResponse query(SolrClient index, String collection, SolrQuery query)
+    throws SolrServerException, IOException {
+    String key = normalise(query);
+    Cache<String, QueryResponse> cache = getCollectionCache(collection);
+
+    QueryResponse cached = cache.getIfPresent(key);
+    if (cached != null) {
+      hits.inc();
+      return cached;
+    }
+
+    String flightKey = collection + "\u0000" + key;
+    CompletableFuture<QueryResponse> future = new CompletableFuture<>();
+    CompletableFuture<QueryResponse> existing = inFlight.putIfAbsent(flightKey, future);
+    if (existing != null) {
+      coalesced.inc();
+      return await(existing);
+    }
+
+    misses.inc();
+    long generation = getGeneration(collection).get();
+    try {
+      QueryResponse response = index.query(collection, query);
+      // a commit while the query was running means the response may be stale
+      if (generation == getGeneration(collection).get()) {
+        cache.put(key, response);
+      }
+      future.complete(response);
+      return response;
+    } catch (SolrServerException | IOException | RuntimeException e) {
+      future.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(flightKey, future);
+    }
+  }
+
+  public void invalidate(String collection) {
+    getGeneration(collection).incrementAndGet();
+    Cache<String, QueryResponse> cache = caches.get(collection);
+    if (cache != null) {
+      cache.invalidateAll();
+    }
+    invalidations.inc();
+    LOGGER.trace("Invalidated query cache of collection {}", collection);
+  }
+
+  public void invalidateAll() {
+    caches.keySet().forEach(this::invalidate);
+  }
+
+  public double getHitRatio() {
+    long served = hits.getCount() + coalesced.getCount();
+    long total = served + misses.getCount();
+    return total == 0 ? 0.0 : (double) served / total;
+  }
+
+  private Cache<String, QueryResponse> getCollectionCache(String collection) {
+    return caches.computeIfAbsent(collection, c -> CacheBuilder.newBuilder()
+      .expireAfterWrite(ttlInMillis, TimeUnit.MILLISECONDS).maximumSize(maxEntriesPerCollection).build());
+  }
+
+  private AtomicLong getGeneration(String collection) {
+    return generations.computeIfAbsent(collection, c -> new AtomicLong());
+  }
+
+  private static QueryResponse await(CompletableFuture<QueryResponse> future) throws SolrServerException, IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SolrServerException(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof SolrServerException) {
+        throw (SolrServerException) cause;
+      } else if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else {
+        throw new SolrServerException(cause);
+      }
+    }
+  }
+
+  /**
+   * Builds a key that does not depend on the order in which the query
+   * parameters were set.
+   */
+  private static String normalise(SolrQuery query) {
+    StringBuilder key = new StringBuilder();
+    for (String name : new TreeSet<>(query.getParameterNames())) {
+      String[] values = query.getParams(name);
+      if (values != null) {
+        key.append(name).append('=').append(Arrays.toString(values)).append('&');
+      }
+    }
+    return key.toString();
+  }
+}
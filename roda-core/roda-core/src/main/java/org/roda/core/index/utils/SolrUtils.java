@@ -18,6 +18,7 @@ import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.EnumMap;
 import java.util.HashMap;
@@ -59,6 +60,8 @@ import org.apache.solr.handler.loader.XMLLoader;
 import org.roda.core.common.MetadataFileUtils;
 import org.roda.core.common.RodaUtils;
 import org.roda.core.common.UserUtility;
+import org.roda.core.common.tracing.Tracing;
+import org.roda.core.common.tracing.Tracing.Stage;
 import org.roda.core.data.common.RodaConstants;
 import org.roda.core.data.common.RodaConstants.DateGranularity;
 import org.roda.core.data.exceptions.AuthorizationDeniedException;
@@ -114,6 +117,7 @@ import org.roda.core.data.v2.ri.RepresentationInformationRelation;
 import org.roda.core.data.v2.user.User;
 import org.roda.core.index.IndexingAdditionalInfo;
 import org.roda.core.index.schema.SolrCollection;
+import org.roda.core.index.schema.ShadowCollectionManager;
 import org.roda.core.index.schema.SolrCollectionRegistry;
 import org.roda.core.model.ModelService;
 import org.roda.core.model.utils.ModelUtils;
@@ -134,11 +138,21 @@ public class SolrUtils {
   private static final Logger LOGGER = LoggerFactory.getLogger(SolrUtils.class);
 
   private static final String DEFAULT_QUERY_PARSER_OPERATOR = "AND";
+  private static final String VERSION_FIELD = "_version_";
   private static final Set<String> NON_REPEATABLE_FIELDS = new HashSet<>(Arrays.asList(RodaConstants.AIP_TITLE,
     RodaConstants.AIP_LEVEL, RodaConstants.AIP_DATE_INITIAL, RodaConstants.AIP_DATE_FINAL));
 
+  private static final Tracing.Operation RETRIEVE = Tracing.operation(Stage.INDEX, "retrieve");
+  private static final Tracing.Operation QUERY = Tracing.operation(Stage.INDEX, "query");
+  private static final Tracing.Operation COMMIT = Tracing.operation(Stage.INDEX, "commit");
+  private static final Tracing.Operation CREATE = Tracing.operation(Stage.INDEX, "create");
+  private static final Tracing.Operation CREATE_ALL = Tracing.operation(Stage.INDEX, "createAll");
+
   private static Map<String, List<String>> liteFieldsForEachClass = new HashMap<>();
 
+  private static IndexQueryCache QUERY_CACHE = null;
+  private static ShadowCollectionManager SHADOW_COLLECTIONS = null;
+
   public static final String COMMON = "common";
   public static final String CONF = "conf";
   public static final String SCHEMA = "managed-schema";
@@ -177,7 +191,7 @@ public class SolrUtils {
     }
 
     T ret;
-    try {
+    try (Tracing.Span span = RETRIEVE.start(id)) {
       SolrDocument doc = index.getById(SolrCollectionRegistry.getIndexName(classToRetrieve), id);
       if (doc != null) {
         ret = SolrCollectionRegistry.fromSolrDocument(classToRetrieve, doc, fieldsToReturn);
@@ -229,7 +243,7 @@ public class SolrUtils {
     parseAndConfigureFacets(facets, query);
 
     try {
-      QueryResponse response = index.query(SolrCollectionRegistry.getIndexName(classToRetrieve), query);
+      QueryResponse response = query(index, SolrCollectionRegistry.getIndexName(classToRetrieve), query);
       ret = queryResponseToIndexResult(response, classToRetrieve, facets, fieldsToReturn);
     } catch (SolrServerException | IOException | NotSupportedException e) {
       throw new GenericException("Could not query index", e);
@@ -323,7 +337,7 @@ public class SolrUtils {
     }
 
     try {
-      QueryResponse response = index.query(SolrCollectionRegistry.getIndexName(classToRetrieve), query);
+      QueryResponse response = query(index, SolrCollectionRegistry.getIndexName(classToRetrieve), query);
       ret = queryResponseToIndexResult(response, classToRetrieve, facets, fieldsToReturn);
     } catch (SolrServerException | IOException | NotSupportedException e) {
       throw new GenericException("Could not query index", e);
@@ -336,11 +350,74 @@ public class SolrUtils {
     return ret;
   }
 
+  public static void injectQueryCache(IndexQueryCache queryCache) {
+    QUERY_CACHE = queryCache;
+  }
+
+  public static void invalidateQueryCache(String... collections) {
+    if (QUERY_CACHE != null) {
+      for (String collection : collections) {
+        QUERY_CACHE.invalidate(collection);
+      }
+    }
+  }
+
+  public static void injectShadowCollections(ShadowCollectionManager shadowCollections) {
+    SHADOW_COLLECTIONS = shadowCollections;
+  }
+
   /*
    * "Internal" helper methods
    * ____________________________________________________________________________________________________________________
    */
 
+  private static List<String> getWriteTargets(String collection) {
+    if (SHADOW_COLLECTIONS != null) {
+      return SHADOW_COLLECTIONS.getWriteTargets(collection);
+    } else {
+      return Collections.singletonList(collection);
+    }
+  }
+
+  /**
+   * Sends atomic updates to the write targets of the collection. A shadow
+   * collection only gets the updates of the documents it already has, as the
+   * others would be created there with just the updated fields; they are left
+   * to the rebuild, which writes whole documents.
+   */
+  private static void addPartialDocuments(SolrClient index, String collection, List<SolrInputDocument> documents)
+    throws SolrServerException, IOException {
+    for (String target : getWriteTargets(collection)) {
+      if (SHADOW_COLLECTIONS != null && SHADOW_COLLECTIONS.isShadow(target)) {
+        for (SolrInputDocument document : documents) {
+          SolrInputDocument existing = document.deepCopy();
+          // a positive version only matches an existing document
+          existing.setField(VERSION_FIELD, 1L);
+          try {
+            index.add(target, existing);
+          } catch (SolrException e) {
+            if (e.code() != SolrException.ErrorCode.CONFLICT.code) {
+              throw e;
+            }
+          }
+        }
+      } else {
+        index.add(target, documents);
+      }
+    }
+  }
+
+  private static QueryResponse query(SolrClient index, String collection, SolrQuery query)
+    throws SolrServerException, IOException {
+    try (Tracing.Span span = QUERY.start(collection)) {
+      if (QUERY_CACHE != null) {
+        return QUERY_CACHE.query(index, collection, query);
+      } else {
+        return index.query(collection, query);
+      }
+    }
+  }
+
   private static <T> boolean hasPermissionFilters(Class<T> resultClass) {
     return HasPermissionFilters.class.isAssignableFrom(resultClass);
   }
@@ -1166,10 +1243,18 @@ public class SolrUtils {
     boolean softCommit = true;
 
     for (String collection : collections) {
-      try {
+      try (Tracing.Span span = COMMIT.start(collection)) {
         index.commit(collection, waitFlush, waitSearcher, softCommit);
+        if (SHADOW_COLLECTIONS != null) {
+          Optional<String> shadow = SHADOW_COLLECTIONS.getShadow(collection);
+          if (shadow.isPresent()) {
+            index.commit(shadow.get(), waitFlush, waitSearcher, softCommit);
+          }
+        }
       } catch (SolrServerException | IOException | SolrException e) {
         LOGGER.error("Error commiting into collection: {}", collection, e);
+      } finally {
+        invalidateQueryCache(collection);
       }
     }
   }
@@ -1197,8 +1282,10 @@ public class SolrUtils {
     ReturnWithExceptions<Void, S> ret = new ReturnWithExceptions<>(source);
 
     if (instance != null) {
-      try {
-        index.add(classToCreate, instance);
+      try (Tracing.Span span = CREATE.start(classToCreate)) {
+        for (String collection : getWriteTargets(classToCreate)) {
+          index.add(collection, instance);
+        }
       } catch (SolrServerException | IOException | SolrException e) {
         LOGGER.error("Error adding document to index", e);
         ret.add(e);
@@ -1212,10 +1299,12 @@ public class SolrUtils {
     SolrClient index, S source, Class<I> indexClass, M object, IndexingAdditionalInfo utils) {
     ReturnWithExceptions<Void, S> ret = new ReturnWithExceptions<>(source);
     if (object != null) {
-      try {
+      try (Tracing.Span span = CREATE.start(indexClass.getSimpleName())) {
         SolrInputDocument solrDocument = SolrCollectionRegistry.toSolrDocument(indexClass, object, utils);
         if (solrDocument != null) {
-          index.add(SolrCollectionRegistry.getIndexName(indexClass), solrDocument);
+          for (String collection : getWriteTargets(SolrCollectionRegistry.getIndexName(indexClass))) {
+            index.add(collection, solrDocument);
+          }
         }
 
       } catch (GenericException | NotSupportedException | RequestNotValidException | NotFoundException
@@ -1259,6 +1348,75 @@ public class SolrUtils {
     return ret;
   }
 
+  /**
+   * Adds all instances to the index in a single request per collection.
+   */
+  public static <T extends IsIndexed, M extends IsModelObject, S extends Object> ReturnWithExceptions<Void, S> createAll(
+    SolrClient index, Class<T> classToCreate, List<M> instances, S source) {
+    ReturnWithExceptions<Void, S> ret = new ReturnWithExceptions<>(source);
+    if (instances.isEmpty()) {
+      return ret;
+    }
+
+    try (Tracing.Span span = CREATE_ALL.start(classToCreate.getSimpleName())) {
+      List<SolrInputDocument> documents = new ArrayList<>(instances.size());
+      for (M instance : instances) {
+        SolrInputDocument document = SolrCollectionRegistry.toSolrDocument(classToCreate, instance);
+        if (document != null) {
+          documents.add(document);
+        }
+      }
+
+      if (!documents.isEmpty()) {
+        for (String collection : getWriteTargets(SolrCollectionRegistry.getIndexName(classToCreate))) {
+          index.add(collection, documents);
+        }
+      }
+    } catch (NotSupportedException | GenericException | RequestNotValidException | NotFoundException
+      | AuthorizationDeniedException | SolrServerException | IOException | SolrException e) {
+      LOGGER.error("Error adding documents to index", e);
+      ret.add(e);
+    }
+
+    return ret;
+  }
+
+  /**
+   * Adds all objects, each with its own additional indexing information, to the
+   * index in a single request per collection.
+   */
+  public static <I extends IsIndexed, M extends IsModelObject, S extends Object> ReturnWithExceptions<Void, S> createAll2(
+    SolrClient index, S source, Class<I> indexClass, List<Pair<M, IndexingAdditionalInfo>> objects) {
+    ReturnWithExceptions<Void, S> ret = new ReturnWithExceptions<>(source);
+    List<SolrInputDocument> documents = new ArrayList<>(objects.size());
+    for (Pair<M, IndexingAdditionalInfo> object : objects) {
+      try {
+        SolrInputDocument document = SolrCollectionRegistry.toSolrDocument(indexClass, object.getFirst(),
+          object.getSecond());
+        if (document != null) {
+          documents.add(document);
+        }
+      } catch (GenericException | NotSupportedException | RequestNotValidException | NotFoundException
+        | AuthorizationDeniedException e) {
+        LOGGER.error("Error creating document to add to index", e);
+        ret.add(e);
+      }
+    }
+
+    if (!documents.isEmpty()) {
+      try {
+        for (String collection : getWriteTargets(SolrCollectionRegistry.getIndexName(indexClass))) {
+          index.add(collection, documents);
+        }
+      } catch (NotSupportedException | SolrServerException | IOException | SolrException e) {
+        LOGGER.error("Error adding documents to index", e);
+        ret.add(e);
+      }
+    }
+
+    return ret;
+  }
+
   public static <T extends IsIndexed, S extends Object> ReturnWithExceptions<Void, S> update(SolrClient index,
     Class<T> classToCreate, String uuid, Map<String, Object> fields, S source) {
     ReturnWithExceptions<Void, S> ret = new ReturnWithExceptions<>();
@@ -1266,14 +1424,74 @@ public class SolrUtils {
     doc.addField(RodaConstants.INDEX_UUID, uuid);
     fields.entrySet().forEach(e -> doc.addField(e.getKey(), set(e.getValue())));
     try {
-      create(index, SolrCollectionRegistry.getIndexName(classToCreate), doc, source).addTo(ret);
-    } catch (NotSupportedException e) {
+      addPartialDocuments(index, SolrCollectionRegistry.getIndexName(classToCreate), Collections.singletonList(doc));
+    } catch (NotSupportedException | SolrServerException | IOException | SolrException e) {
       LOGGER.error("Error adding document to index", e);
       ret.add(e);
     }
     return ret;
   }
 
+  /**
+   * Atomically updates the fields of several documents, given by uuid, in a
+   * single request per collection. The documents must already exist in the
+   * index.
+   */
+  public static <T extends IsIndexed, S extends Object> ReturnWithExceptions<Void, S> updateAll(SolrClient index,
+    Class<T> classToUpdate, Map<String, Map<String, Object>> fieldsByUUID, S source) {
+    ReturnWithExceptions<Void, S> ret = new ReturnWithExceptions<>(source);
+    if (fieldsByUUID.isEmpty()) {
+      return ret;
+    }
+
+    List<SolrInputDocument> documents = new ArrayList<>(fieldsByUUID.size());
+    for (Entry<String, Map<String, Object>> entry : fieldsByUUID.entrySet()) {
+      SolrInputDocument doc = new SolrInputDocument();
+      doc.addField(RodaConstants.INDEX_UUID, entry.getKey());
+      entry.getValue().forEach((field, value) -> doc.addField(field, set(value)));
+      documents.add(doc);
+    }
+
+    try {
+      addPartialDocuments(index, SolrCollectionRegistry.getIndexName(classToUpdate), documents);
+    } catch (NotSupportedException | SolrServerException | IOException | SolrException e) {
+      LOGGER.error("Error updating documents in index", e);
+      ret.add(e);
+    }
+
+    return ret;
+  }
+
+  /**
+   * Atomically increments (or decrements, if negative) numeric fields of
+   * several documents, given by uuid, in a single request per collection. The
+   * documents must already exist in the index, but need not be committed.
+   */
+  public static <T extends IsIndexed, S extends Object> ReturnWithExceptions<Void, S> incrementAll(SolrClient index,
+    Class<T> classToUpdate, Map<String, Map<String, Integer>> incrementsByUUID, S source) {
+    ReturnWithExceptions<Void, S> ret = new ReturnWithExceptions<>(source);
+    if (incrementsByUUID.isEmpty()) {
+      return ret;
+    }
+
+    List<SolrInputDocument> documents = new ArrayList<>(incrementsByUUID.size());
+    for (Entry<String, Map<String, Integer>> entry : incrementsByUUID.entrySet()) {
+      SolrInputDocument doc = new SolrInputDocument();
+      doc.addField(RodaConstants.INDEX_UUID, entry.getKey());
+      entry.getValue().forEach((field, increment) -> doc.addField(field, Collections.singletonMap("inc", increment)));
+      documents.add(doc);
+    }
+
+    try {
+      addPartialDocuments(index, SolrCollectionRegistry.getIndexName(classToUpdate), documents);
+    } catch (NotSupportedException | SolrServerException | IOException | SolrException e) {
+      LOGGER.error("Error updating documents in index", e);
+      ret.add(e);
+    }
+
+    return ret;
+  }
+
   private static Map<String, Object> set(Object value) {
     Map<String, Object> fieldModifier = new HashMap<>(1);
     // 20160511 this workaround fixes solr wrong behaviour with partial update
@@ -1552,7 +1770,9 @@ public class SolrUtils {
     Class<T> classToDelete, List<String> ids, S source, boolean commit) {
     ReturnWithExceptions<Void, S> ret = new ReturnWithExceptions<>();
     try {
-      index.deleteById(SolrCollectionRegistry.getIndexName(classToDelete), ids);
+      for (String collection : getWriteTargets(SolrCollectionRegistry.getIndexName(classToDelete))) {
+        index.deleteById(collection, ids);
+      }
       if (commit) {
         commit(index, classToDelete);
       }
@@ -1573,7 +1793,10 @@ public class SolrUtils {
     Class<T> classToDelete, Filter filter, S source, boolean commit) {
     ReturnWithExceptions<Void, S> ret = new ReturnWithExceptions<>();
     try {
-      index.deleteByQuery(SolrCollectionRegistry.getIndexName(classToDelete), parseFilter(filter));
+      String query = parseFilter(filter);
+      for (String collection : getWriteTargets(SolrCollectionRegistry.getIndexName(classToDelete))) {
+        index.deleteByQuery(collection, query);
+      }
 
       if (commit) {
         commit(index, classToDelete);
@@ -1590,7 +1813,10 @@ public class SolrUtils {
   public static <T extends IsIndexed> void deleteByQuery(SolrClient index, String classToDelete, Filter filter)
     throws GenericException, RequestNotValidException {
     try {
-      index.deleteByQuery(classToDelete, parseFilter(filter));
+      String query = parseFilter(filter);
+      for (String collection : getWriteTargets(classToDelete)) {
+        index.deleteByQuery(collection, query);
+      }
     } catch (SolrServerException | SolrException | IOException e) {
       throw new GenericException("Could not delete items", e);
     }
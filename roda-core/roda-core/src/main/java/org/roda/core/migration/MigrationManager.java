@@ -50,12 +50,14 @@ import org.slf4j.LoggerFactory;
 public class MigrationManager {
   private static final Logger LOGGER = LoggerFactory.getLogger(MigrationManager.class);
 
+  private Path dataFolder;
   private Path modelInfoFile;
   // map<model class, workflow>
   private Map<String, MigrationWorkflow> modelMigrations = new HashMap<>();
 
   public MigrationManager(Path dataFolder) {
     super();
+    this.dataFolder = dataFolder;
     this.modelInfoFile = dataFolder.resolve("model.json");
   }
 
@@ -190,6 +192,20 @@ public class MigrationManager {
   }
 
   public void performModelMigrations() throws GenericException {
+    performModelMigrations(false);
+  }
+
+  /**
+   * Performs the model migrations needed by the installed model classes
+   * versions. Partitioned migrations run in parallel and, if interrupted, resume
+   * from where they stopped the next time this method is invoked.
+   * 
+   * @param dryRun
+   *          if true, nothing is changed and the duration of each migration is
+   *          estimated instead
+   */
+  public void performModelMigrations(boolean dryRun) throws GenericException {
+    ParallelMigration parallelMigration = ParallelMigration.fromConfiguration(dataFolder);
     ModelInfo modelInfo = JsonUtils.getObjectFromJson(modelInfoFile, ModelInfo.class);
 
     // perform migrations
@@ -216,8 +232,24 @@ public class MigrationManager {
 
         LOGGER.info("Migrating to version {} using class '{}'", toVersion, migrationClass.getName());
         try {
+          MigrationAction<?> migrationAction = migrationClass.newInstance();
+          if (dryRun) {
+            if (migrationAction instanceof PartitionedMigrationAction) {
+              parallelMigration.estimate((PartitionedMigrationAction<?>) migrationAction,
+                RodaCoreFactory.getStorageService(), toVersion, ParallelMigration.getDryRunSampleSize());
+            } else {
+              LOGGER.info("Migration action class '{}' does not support dry-run", migrationClass.getName());
+            }
+            continue;
+          }
+
           // migrate
-          migrationClass.newInstance().migrate(RodaCoreFactory.getStorageService());
+          if (migrationAction instanceof PartitionedMigrationAction) {
+            parallelMigration.migrate((PartitionedMigrationAction<?>) migrationAction,
+              RodaCoreFactory.getStorageService(), toVersion);
+          } else {
+            migrationAction.migrate(RodaCoreFactory.getStorageService());
+          }
           LOGGER.info("Migrated with success to version {}", toVersion);
 
           // update class specific version after successful migration
@@ -236,7 +268,9 @@ public class MigrationManager {
     }
 
     // update model info. file
-    JsonUtils.writeObjectToFile(modelInfo, modelInfoFile);
+    if (!dryRun) {
+      JsonUtils.writeObjectToFile(modelInfo, modelInfoFile);
+    }
   }
 
   private boolean isIndexMigrationNecessary(SolrClient solrClient, Optional<Path> tempIndexConfigsPath)
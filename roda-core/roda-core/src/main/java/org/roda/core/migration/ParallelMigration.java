@@ -0,0 +1,325 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.migration;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.configuration.Configuration;
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.common.iterables.CloseableIterable;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.storage.StorageService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Runs a {@link PartitionedMigrationAction} migrating its partitions in a
+ * bounded thread pool.
+ *
+ * Each migrated partition is appended to a checkpoint file (one per action and
+ * version) so that, if the migration is interrupted or some partitions fail,
+ * running it again only migrates the partitions that are missing. The
+ * checkpoint file is removed when all partitions are migrated.
+ */
+public class ParallelMigration {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ParallelMigration.class);
+
+  public static final String CHECKPOINT_FOLDER = "migrations";
+  public static final int DEFAULT_DRY_RUN_SAMPLE_SIZE = 100;
+  public static final int DEFAULT_PROGRESS_INTERVAL_IN_SECONDS = 30;
+
+  private final Path checkpointFolder;
+  private final int threads;
+  private final int progressIntervalInSeconds;
+  private final MetricRegistry metrics;
+
+  public ParallelMigration(Path checkpointFolder, int threads, int progressIntervalInSeconds,
+    MetricRegistry metrics) {
+    this.checkpointFolder = checkpointFolder;
+    this.threads = Math.max(1, threads);
+    this.progressIntervalInSeconds = Math.max(1, progressIntervalInSeconds);
+    this.metrics = metrics != null ? metrics : new MetricRegistry();
+  }
+
+  /**
+   * Creates the parallel migration using the {@code core.migration.*}
+   * properties, keeping checkpoints inside the given data folder.
+   */
+  public static ParallelMigration fromConfiguration(Path dataFolder) {
+    int threads = Runtime.getRuntime().availableProcessors();
+    int progressInterval = DEFAULT_PROGRESS_INTERVAL_IN_SECONDS;
+    Configuration configuration = RodaCoreFactory.getRodaConfiguration();
+    if (configuration != null) {
+      threads = configuration.getInt("core.migration.threads", threads);
+      progressInterval = configuration.getInt("core.migration.progress_interval", progressInterval);
+    }
+    return new ParallelMigration(dataFolder.resolve(CHECKPOINT_FOLDER), threads, progressInterval,
+      RodaCoreFactory.getMetrics());
+  }
+
+  public static int getDryRunSampleSize() {
+    Configuration configuration = RodaCoreFactory.getRodaConfiguration();
+    return configuration != null
+      ? configuration.getInt("core.migration.dry_run.sample_size", DEFAULT_DRY_RUN_SAMPLE_SIZE)
+      : DEFAULT_DRY_RUN_SAMPLE_SIZE;
+  }
+
+  public Path getCheckpointFile(PartitionedMigrationAction<?> action, int toVersion) {
+    return checkpointFolder.resolve(action.getClass().getSimpleName() + "-v" + toVersion + ".done");
+  }
+
+  /**
+   * Migrates all partitions of the action that were not migrated by a previous
+   * (interrupted) execution.
+   *
+   * @throws GenericException
+   *           if some partitions could not be migrated, in which case the
+   *           checkpoint file is kept so that the next execution resumes the
+   *           migration
+   */
+  public void migrate(PartitionedMigrationAction<?> action, StorageService storage, int toVersion)
+    throws GenericException {
+    String actionName = action.getClass().getSimpleName();
+    Path checkpointFile = getCheckpointFile(action, toVersion);
+    Set<String> migrated = readCheckpoint(checkpointFile);
+    if (!migrated.isEmpty()) {
+      LOGGER.info("Resuming migration '{}', {} partitions were already migrated", actionName, migrated.size());
+    }
+
+    Meter migratedMeter = metrics.meter(MetricRegistry.name(MigrationManager.class, actionName, "migrated"));
+    Counter failedCounter = metrics.counter(MetricRegistry.name(MigrationManager.class, actionName, "failed"));
+    AtomicLong migratedCount = new AtomicLong();
+    AtomicInteger failedCount = new AtomicInteger();
+
+    ScheduledExecutorService progress = Executors
+      .newSingleThreadScheduledExecutor(threadFactory("migration-progress-" + actionName));
+    progress.scheduleAtFixedRate(
+      () -> LOGGER.info("Migration '{}': {} partitions migrated ({} per second), {} failed", actionName,
+        migratedCount.get(), String.format("%.1f", migratedMeter.getOneMinuteRate()), failedCount.get()),
+      progressIntervalInSeconds, progressIntervalInSeconds, TimeUnit.SECONDS);
+
+    try {
+      Files.createDirectories(checkpointFolder);
+      try (
+        BufferedWriter checkpoint = Files.newBufferedWriter(checkpointFile, StandardCharsets.UTF_8,
+          StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        CloseableIterable<String> partitions = action.listPartitions(storage)) {
+
+        run(actionName, partitions.iterator(), Integer.MAX_VALUE, partition -> !migrated.contains(partition),
+          partition -> {
+            action.migrate(storage, partition, false);
+            synchronized (checkpoint) {
+              checkpoint.write(partition);
+              checkpoint.newLine();
+              checkpoint.flush();
+            }
+            migratedCount.incrementAndGet();
+            migratedMeter.mark();
+          }, partition -> {
+            failedCount.incrementAndGet();
+            failedCounter.inc();
+          });
+      }
+    } catch (IOException | RODAException e) {
+      throw new GenericException("Error running migration '" + actionName + "'", e);
+    } finally {
+      progress.shutdownNow();
+    }
+
+    LOGGER.info("Migration '{}' finished: {} partitions migrated, {} previously migrated, {} failed", actionName,
+      migratedCount.get(), migrated.size(), failedCount.get());
+
+    if (failedCount.get() > 0) {
+      throw new GenericException("Migration '" + actionName + "' could not migrate " + failedCount.get()
+        + " partitions, run it again to retry them");
+    }
+
+    try {
+      Files.deleteIfExists(checkpointFile);
+    } catch (IOException e) {
+      LOGGER.warn("Could not delete migration checkpoint file {}", checkpointFile, e);
+    }
+  }
+
+  /**
+   * Estimates the duration of the migration by counting the partitions still
+   * to migrate and timing a dry-run of a sample of them, without changing the
+   * storage.
+   */
+  public MigrationEstimate estimate(PartitionedMigrationAction<?> action, StorageService storage, int toVersion,
+    int sampleSize) throws GenericException {
+    String actionName = action.getClass().getSimpleName();
+    Set<String> migrated = readCheckpoint(getCheckpointFile(action, toVersion));
+    AtomicInteger sampled = new AtomicInteger();
+    int pending = 0;
+    long elapsed;
+
+    try (CloseableIterable<String> partitions = action.listPartitions(storage)) {
+      Iterator<String> iterator = partitions.iterator();
+      long start = System.nanoTime();
+      run(actionName, iterator, Math.max(0, sampleSize), partition -> !migrated.contains(partition), partition -> {
+        action.migrate(storage, partition, true);
+        sampled.incrementAndGet();
+      }, partition -> sampled.incrementAndGet());
+      elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+      // the sample is taken from the beginning of the partitions
+      pending = sampled.get();
+      while (iterator.hasNext()) {
+        if (!migrated.contains(iterator.next())) {
+          pending++;
+        }
+      }
+    } catch (IOException | RODAException e) {
+      throw new GenericException("Error estimating migration '" + actionName + "'", e);
+    }
+
+    long estimated = sampled.get() > 0 ? elapsed * pending / sampled.get() : 0;
+    MigrationEstimate estimate = new MigrationEstimate(pending, migrated.size(), sampled.get(), estimated);
+    LOGGER.info("Migration '{}' dry-run: {}", actionName, estimate);
+    return estimate;
+  }
+
+  private void run(String actionName, Iterator<String> partitions, int limit, PartitionFilter filter,
+    PartitionTask task, PartitionTask onFailure) throws GenericException {
+    ExecutorService executor = Executors.newFixedThreadPool(threads, threadFactory("migration-" + actionName));
+    // bounds the partitions waiting to be migrated
+    Semaphore permits = new Semaphore(threads * 2);
+    int submitted = 0;
+
+    try {
+      while (submitted < limit && partitions.hasNext()) {
+        String partition = partitions.next();
+        if (!filter.accept(partition)) {
+          continue;
+        }
+
+        permits.acquire();
+        submitted++;
+        executor.execute(() -> {
+          try {
+            task.run(partition);
+          } catch (Exception e) {
+            LOGGER.error("Error migrating partition '{}' with '{}'", partition, actionName, e);
+            try {
+              onFailure.run(partition);
+            } catch (Exception e1) {
+              LOGGER.error("Error handling migration failure of partition '{}'", partition, e1);
+            }
+          } finally {
+            permits.release();
+          }
+        });
+      }
+
+      executor.shutdown();
+      while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+        LOGGER.debug("Waiting for the migration '{}' of the remaining partitions", actionName);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new GenericException("Migration '" + actionName + "' was interrupted", e);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static Set<String> readCheckpoint(Path checkpointFile) throws GenericException {
+    Set<String> migrated = new HashSet<>();
+    if (Files.exists(checkpointFile)) {
+      try {
+        for (String line : Files.readAllLines(checkpointFile, StandardCharsets.UTF_8)) {
+          if (!line.isEmpty()) {
+            migrated.add(line);
+          }
+        }
+      } catch (IOException e) {
+        throw new GenericException("Could not read migration checkpoint file " + checkpointFile, e);
+      }
+    }
+    return migrated;
+  }
+
+  private static ThreadFactory threadFactory(String name) {
+    AtomicInteger count = new AtomicInteger();
+    return runnable -> {
+      Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  @FunctionalInterface
+  private interface PartitionFilter {
+    boolean accept(String partition);
+  }
+
+  @FunctionalInterface
+  private interface PartitionTask {
+    void run(String partition) throws Exception;
+  }
+
+  public static class MigrationEstimate {
+    private final int pendingPartitions;
+    private final int migratedPartitions;
+    private final int sampledPartitions;
+    private final long estimatedDurationInMillis;
+
+    public MigrationEstimate(int pendingPartitions, int migratedPartitions, int sampledPartitions,
+      long estimatedDurationInMillis) {
+      this.pendingPartitions = pendingPartitions;
+      this.migratedPartitions = migratedPartitions;
+      this.sampledPartitions = sampledPartitions;
+      this.estimatedDurationInMillis = estimatedDurationInMillis;
+    }
+
+    public int getPendingPartitions() {
+      return pendingPartitions;
+    }
+
+    public int getMigratedPartitions() {
+      return migratedPartitions;
+    }
+
+    public int getSampledPartitions() {
+      return sampledPartitions;
+    }
+
+    public long getEstimatedDurationInMillis() {
+      return estimatedDurationInMillis;
+    }
+
+    @Override
+    public String toString() {
+      return pendingPartitions + " partitions to migrate (" + migratedPartitions + " already migrated), estimated "
+        + TimeUnit.MILLISECONDS.toSeconds(estimatedDurationInMillis) + "s based on a sample of " + sampledPartitions
+        + " partitions";
+    }
+  }
+}
@@ -0,0 +1,48 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.migration;
+
+import java.io.IOException;
+
+import org.roda.core.common.iterables.CloseableIterable;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.IsModelObject;
+import org.roda.core.storage.StorageService;
+
+/**
+ * Migration action that can be split in independent partitions (e.g. one per
+ * AIP), so that {@link ParallelMigration} can migrate them concurrently and
+ * resume an interrupted migration.
+ */
+public interface PartitionedMigrationAction<T extends IsModelObject> extends MigrationAction<T> {
+
+  /**
+   * @return the ids of the partitions to migrate
+   */
+  public CloseableIterable<String> listPartitions(StorageService storage) throws RODAException;
+
+  /**
+   * Migrates a partition, which must be possible to migrate again if the
+   * migration is interrupted before it ends.
+   * 
+   * @param dryRun
+   *          if true, does all the work except changing the storage
+   */
+  public void migrate(StorageService storage, String partition, boolean dryRun) throws RODAException;
+
+  @Override
+  public default void migrate(StorageService storage) throws RODAException {
+    try (CloseableIterable<String> partitions = listPartitions(storage)) {
+      for (String partition : partitions) {
+        migrate(storage, partition, false);
+      }
+    } catch (IOException e) {
+      throw new RODAException(e);
+    }
+  }
+}
@@ -15,18 +15,16 @@ import java.util.List;
 import org.apache.xmlbeans.XmlException;
 import org.roda.core.common.PremisV3Utils;
 import org.roda.core.common.iterables.CloseableIterable;
+import org.roda.core.common.iterables.CloseableIterables;
 import org.roda.core.data.common.RodaConstants;
-import org.roda.core.data.exceptions.AlreadyExistsException;
-import org.roda.core.data.exceptions.AuthorizationDeniedException;
 import org.roda.core.data.exceptions.GenericException;
 import org.roda.core.data.exceptions.NotFoundException;
-import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.exceptions.RODAException;
 import org.roda.core.data.utils.URNUtils;
 import org.roda.core.data.v2.ip.StoragePath;
 import org.roda.core.data.v2.ip.metadata.PreservationMetadata;
 import org.roda.core.data.v2.ip.metadata.PreservationMetadata.PreservationMetadataType;
-import org.roda.core.data.v2.validation.ValidationException;
-import org.roda.core.migration.MigrationAction;
+import org.roda.core.migration.PartitionedMigrationAction;
 import org.roda.core.model.utils.ModelUtils;
 import org.roda.core.storage.Binary;
 import org.roda.core.storage.ContentPayload;
@@ -39,49 +37,59 @@ import org.slf4j.LoggerFactory;
 import gov.loc.premis.v3.File;
 import gov.loc.premis.v3.ObjectIdentifierComplexType;
 
-public class PreservationMetadataFileToVersion2 implements MigrationAction<PreservationMetadata> {
+public class PreservationMetadataFileToVersion2 implements PartitionedMigrationAction<PreservationMetadata> {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(PreservationMetadataFileToVersion2.class);
 
   @Override
-  public void migrate(StorageService storage) {
-    try (
-      CloseableIterable<Resource> aips = storage.listResourcesUnderDirectory(ModelUtils.getAIPContainerPath(), false)) {
-
-      for (Resource aip : aips) {
-        try (CloseableIterable<Resource> representations = storage.listResourcesUnderDirectory(
-          ModelUtils.getRepresentationsContainerPath(aip.getStoragePath().getName()), false)) {
-
-          for (Resource representation : representations) {
-            StoragePath pmPath = DefaultStoragePath.parse(representation.getStoragePath(),
-              RodaConstants.STORAGE_DIRECTORY_METADATA, RodaConstants.STORAGE_DIRECTORY_PRESERVATION);
-
-            try (CloseableIterable<Resource> pms = storage.listResourcesUnderDirectory(pmPath, true)) {
-              for (Resource pm : pms) {
-                if (!pm.isDirectory() && pm instanceof Binary && pm.getStoragePath().getName()
-                  .startsWith(URNUtils.getPremisPrefix(PreservationMetadataType.FILE))) {
-                  Binary binary = (Binary) pm;
-                  migrate(storage, binary);
-                }
+  public CloseableIterable<String> listPartitions(StorageService storage) throws RODAException {
+    CloseableIterable<Resource> aips = storage.listResourcesUnderDirectory(ModelUtils.getAIPContainerPath(), false);
+    return CloseableIterables.transform(aips, aip -> aip.getStoragePath().getName());
+  }
+
+  @Override
+  public void migrate(StorageService storage, String aipId, boolean dryRun) throws RODAException {
+    // the remaining files are migrated even if one fails, the partition is only
+    // checkpointed when all of them are
+    List<StoragePath> failed = new ArrayList<>();
+    try (CloseableIterable<Resource> representations = storage
+      .listResourcesUnderDirectory(ModelUtils.getRepresentationsContainerPath(aipId), false)) {
+
+      for (Resource representation : representations) {
+        StoragePath pmPath = DefaultStoragePath.parse(representation.getStoragePath(),
+          RodaConstants.STORAGE_DIRECTORY_METADATA, RodaConstants.STORAGE_DIRECTORY_PRESERVATION);
+
+        try (CloseableIterable<Resource> pms = storage.listResourcesUnderDirectory(pmPath, true)) {
+          for (Resource pm : pms) {
+            if (!pm.isDirectory() && pm instanceof Binary
+              && pm.getStoragePath().getName().startsWith(URNUtils.getPremisPrefix(PreservationMetadataType.FILE))) {
+              Binary binary = (Binary) pm;
+              try {
+                migrateBinary(storage, binary, dryRun);
+              } catch (XmlException | IOException | RODAException e) {
+                LOGGER.error("Could not migrate preservation metadata file {}", binary.getStoragePath(), e);
+                failed.add(binary.getStoragePath());
               }
-            } catch (NotFoundException | GenericException | AuthorizationDeniedException | RequestNotValidException
-              | IOException e) {
-              LOGGER.warn("Could not find preservation metadata files", e);
             }
           }
-
-        } catch (NotFoundException | GenericException | AuthorizationDeniedException | RequestNotValidException
-          | IOException e) {
-          LOGGER.warn("Could not find representations", e);
+        } catch (NotFoundException e) {
+          // representation without preservation metadata
         }
       }
-    } catch (NotFoundException | GenericException | AuthorizationDeniedException | RequestNotValidException
-      | IOException e) {
-      LOGGER.warn("Could not find AIPs", e);
+
+    } catch (NotFoundException e) {
+      // AIP without representations
+    } catch (IOException e) {
+      throw new GenericException("Could not list the preservation metadata files of AIP " + aipId, e);
+    }
+
+    if (!failed.isEmpty()) {
+      throw new GenericException("Could not migrate " + failed.size() + " preservation metadata files of AIP " + aipId);
     }
   }
 
-  private void migrate(StorageService storage, Binary binary) {
+  private void migrateBinary(StorageService storage, Binary binary, boolean dryRun)
+    throws XmlException, IOException, RODAException {
     try (InputStream inputStream = binary.getContent().createInputStream()) {
       StoragePath oldStoragePath = binary.getStoragePath();
 
@@ -107,15 +115,16 @@ public class PreservationMetadataFileToVersion2 implements MigrationAction<Prese
       }
 
       StoragePath newStoragePath = DefaultStoragePath.parse(pathList);
+      if (dryRun) {
+        return;
+      }
+
       storage.move(storage, oldStoragePath, newStoragePath);
 
       ContentPayload newPremis = PremisV3Utils.fileToBinary(file);
       boolean asReference = false;
       boolean createIfNotExists = false;
       storage.updateBinaryContent(newStoragePath, newPremis, asReference, createIfNotExists);
-    } catch (XmlException | GenericException | IOException | ValidationException | NotFoundException
-      | RequestNotValidException | AuthorizationDeniedException | AlreadyExistsException e) {
-      LOGGER.error("Could not migrate preservation metadata file {}", binary.getStoragePath(), e);
     }
   }
 
@@ -13,24 +13,24 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.roda.core.common.iterables.CloseableIterable;
+import org.roda.core.common.iterables.CloseableIterables;
+import org.roda.core.data.exceptions.GenericException;
 import org.roda.core.data.exceptions.RODAException;
 import org.roda.core.data.utils.JsonUtils;
+import org.roda.core.data.v2.ip.StoragePath;
 import org.roda.core.data.v2.risks.Risk;
-import org.roda.core.migration.MigrationAction;
+import org.roda.core.migration.PartitionedMigrationAction;
 import org.roda.core.model.utils.ModelUtils;
 import org.roda.core.storage.Binary;
+import org.roda.core.storage.DefaultStoragePath;
 import org.roda.core.storage.Resource;
 import org.roda.core.storage.StorageService;
 import org.roda.core.storage.StringContentPayload;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
-public class RiskToVersion2 implements MigrationAction<Risk> {
-
-  private static final Logger LOGGER = LoggerFactory.getLogger(RiskToVersion2.class);
+public class RiskToVersion2 implements PartitionedMigrationAction<Risk> {
 
   private static final Map<String, String> MAPPING = new HashMap<>();
 
@@ -43,37 +43,33 @@ public class RiskToVersion2 implements MigrationAction<Risk> {
   }
 
   @Override
-  public void migrate(StorageService storage) throws RODAException {
-    try (CloseableIterable<Resource> risks = storage.listResourcesUnderDirectory(ModelUtils.getRiskContainerPath(),
-      false)) {
-      for (Resource resource : risks) {
-        if (!resource.isDirectory() && resource instanceof Binary) {
-          Binary binary = (Binary) resource;
-          migrate(storage, binary);
-        }
-      }
-    } catch (IOException e) {
-      throw new RODAException(e);
-    }
+  public CloseableIterable<String> listPartitions(StorageService storage) throws RODAException {
+    CloseableIterable<Resource> risks = storage.listResourcesUnderDirectory(ModelUtils.getRiskContainerPath(), false);
+    return CloseableIterables.transform(CloseableIterables.filter(risks, r -> !r.isDirectory() && r instanceof Binary),
+      risk -> risk.getStoragePath().getName());
   }
 
-  private void migrate(StorageService storage, Binary binary) {
+  @Override
+  public void migrate(StorageService storage, String riskFile, boolean dryRun) throws RODAException {
+    StoragePath riskPath = DefaultStoragePath.parse(ModelUtils.getRiskContainerPath(), riskFile);
+    Binary binary = storage.getBinary(riskPath);
     try (InputStream inputStream = binary.getContent().createInputStream()) {
       JsonNode json = JsonUtils.parseJson(inputStream);
       if (json instanceof ObjectNode) {
         ObjectNode obj = (ObjectNode) json;
         obj = JsonUtils.refactor(obj, MAPPING);
 
-        StringContentPayload payload = new StringContentPayload(JsonUtils.getJsonFromNode(obj));
-        boolean asReference = false;
-        boolean createIfNotExists = false;
-        storage.updateBinaryContent(binary.getStoragePath(), payload, asReference, createIfNotExists);
+        if (!dryRun) {
+          StringContentPayload payload = new StringContentPayload(JsonUtils.getJsonFromNode(obj));
+          boolean asReference = false;
+          boolean createIfNotExists = false;
+          storage.updateBinaryContent(riskPath, payload, asReference, createIfNotExists);
+        }
       } else {
-        LOGGER.error("Could not migrate risk {} because the JSON is not an object node", binary.getStoragePath());
+        throw new GenericException("Could not migrate risk " + riskFile + " because the JSON is not an object node");
       }
-
-    } catch (IOException | RODAException e) {
-      LOGGER.error("Could not migrate risk {}", binary.getStoragePath(), e);
+    } catch (IOException e) {
+      throw new GenericException("Could not migrate risk " + riskFile, e);
     }
   }
 
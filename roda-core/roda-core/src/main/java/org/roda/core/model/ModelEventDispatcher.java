@@ -0,0 +1,358 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.model;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+import org.roda.core.data.exceptions.ReturnWithExceptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Dispatches the model events to the observers asynchronously, so that model
+ * changes do not wait for the observers (e.g. the index) to handle them.
+ *
+ * Events are partitioned by a key (the AIP id for AIPs and their contents, the
+ * object id otherwise) and each partition is handled by a single worker, so
+ * the events of the same object reach the observers in the order they
+ * happened. Each worker has a bounded queue and dispatching an event waits
+ * while the queue of its partition is full.
+ *
+ * Observer failures do not stop the dispatching: the failed events are kept as
+ * {@link DeadLetter}s, which can be retried with {@link #retryDeadLetters()}.
+ * Callers that need to read what they have just written use {@link #flush()}.
+ */
+public class ModelEventDispatcher implements Closeable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ModelEventDispatcher.class);
+
+  public static final int DEFAULT_WORKERS = 4;
+  public static final int DEFAULT_QUEUE_SIZE = 1000;
+  public static final int DEFAULT_DEAD_LETTER_SIZE = 1000;
+
+  private final Worker[] workers;
+  private final int deadLetterSize;
+  private final Deque<DeadLetter> deadLetters = new ArrayDeque<>();
+  private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+  private boolean closed = false;
+
+  public ModelEventDispatcher() {
+    this(DEFAULT_WORKERS, DEFAULT_QUEUE_SIZE, DEFAULT_DEAD_LETTER_SIZE);
+  }
+
+  public ModelEventDispatcher(int workers, int queueSize, int deadLetterSize) {
+    this.workers = new Worker[Math.max(1, workers)];
+    this.deadLetterSize = Math.max(0, deadLetterSize);
+    for (int i = 0; i < this.workers.length; i++) {
+      this.workers[i] = new Worker(i, Math.max(1, queueSize));
+    }
+  }
+
+  /**
+   * Queues an event to be sent to the observers, waiting if the queue of its
+   * partition is full.
+   *
+   * @return false if the event was not queued (the dispatcher is closed or the
+   *         event comes from an observer, which could wait for itself) and
+   *         must be sent synchronously
+   */
+  public boolean dispatch(String partitionKey, List<ModelObserver> observers,
+    Function<ModelObserver, ReturnWithExceptions<?, ?>> event) {
+    if (isWorkerThread()) {
+      return false;
+    }
+
+    closeLock.readLock().lock();
+    try {
+      if (closed) {
+        return false;
+      }
+      workers[partition(partitionKey)].queue(new Event(partitionKey, observers, event));
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      LOGGER.warn("Interrupted while dispatching model event of '{}', sending it synchronously", partitionKey);
+      return false;
+    } finally {
+      closeLock.readLock().unlock();
+    }
+  }
+
+  private boolean isWorkerThread() {
+    for (Worker worker : workers) {
+      if (worker.thread == Thread.currentThread()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private int partition(String partitionKey) {
+    return partitionKey == null ? 0 : Math.floorMod(partitionKey.hashCode(), workers.length);
+  }
+
+  /**
+   * Waits until all the events dispatched before this call were sent to the
+   * observers.
+   */
+  public void flush() {
+    if (isWorkerThread()) {
+      return;
+    }
+
+    long[] dispatched = new long[workers.length];
+    for (int i = 0; i < workers.length; i++) {
+      dispatched[i] = workers[i].getDispatched();
+    }
+
+    try {
+      for (int i = 0; i < workers.length; i++) {
+        workers[i].awaitProcessed(dispatched[i], Long.MAX_VALUE);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      LOGGER.warn("Interrupted while flushing model events");
+    }
+  }
+
+  /**
+   * Waits until there are no events waiting to be sent to the observers.
+   *
+   * @return true if all events were sent, false if the timeout elapsed first
+   */
+  public boolean awaitQuiescence(long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    boolean quiescent = false;
+    while (!quiescent) {
+      quiescent = true;
+      for (Worker worker : workers) {
+        long dispatched = worker.getDispatched();
+        long remaining = deadline - System.nanoTime();
+        if (!worker.awaitProcessed(dispatched, remaining)) {
+          return false;
+        }
+      }
+
+      // check that no events were dispatched while waiting
+      for (Worker worker : workers) {
+        if (worker.getProcessed() < worker.getDispatched()) {
+          quiescent = false;
+        }
+      }
+    }
+    return true;
+  }
+
+  public List<DeadLetter> getDeadLetters() {
+    synchronized (deadLetters) {
+      return new ArrayList<>(deadLetters);
+    }
+  }
+
+  /**
+   * Dispatches again the events that failed, to the observers they failed in.
+   *
+   * @return the number of events dispatched again
+   */
+  public int retryDeadLetters() {
+    List<DeadLetter> retry;
+    synchronized (deadLetters) {
+      retry = new ArrayList<>(deadLetters);
+      deadLetters.clear();
+    }
+
+    for (DeadLetter deadLetter : retry) {
+      List<ModelObserver> observer = Collections.singletonList(deadLetter.getObserver());
+      if (!dispatch(deadLetter.getPartitionKey(), observer, deadLetter.event)) {
+        new Event(deadLetter.getPartitionKey(), observer, deadLetter.event).run();
+      }
+    }
+    return retry.size();
+  }
+
+  private void addDeadLetter(Event event, ModelObserver observer, List<Exception> exceptions) {
+    LOGGER.error("Error sending model event of '{}' to observer {}", event.partitionKey,
+      observer.getClass().getSimpleName(), exceptions.get(0));
+    synchronized (deadLetters) {
+      if (deadLetterSize == 0) {
+        return;
+      }
+      if (deadLetters.size() >= deadLetterSize) {
+        DeadLetter dropped = deadLetters.removeFirst();
+        LOGGER.warn("Too many failed model events, dropping the oldest one (of '{}')", dropped.getPartitionKey());
+      }
+      deadLetters.addLast(new DeadLetter(event.partitionKey, observer, event.event, exceptions));
+    }
+  }
+
+  /**
+   * Sends the queued events to the observers and stops the workers. Events
+   * dispatched afterwards are not accepted.
+   */
+  @Override
+  public void close() {
+    closeLock.writeLock().lock();
+    try {
+      if (closed) {
+        return;
+      }
+      closed = true;
+    } finally {
+      closeLock.writeLock().unlock();
+    }
+
+    flush();
+    for (Worker worker : workers) {
+      worker.thread.interrupt();
+    }
+  }
+
+  private class Event implements Runnable {
+    private final String partitionKey;
+    private final List<ModelObserver> observers;
+    private final Function<ModelObserver, ReturnWithExceptions<?, ?>> event;
+
+    public Event(String partitionKey, List<ModelObserver> observers,
+      Function<ModelObserver, ReturnWithExceptions<?, ?>> event) {
+      this.partitionKey = partitionKey;
+      this.observers = observers;
+      this.event = event;
+    }
+
+    @Override
+    public void run() {
+      for (ModelObserver observer : observers) {
+        try {
+          ReturnWithExceptions<?, ?> ret = event.apply(observer);
+          if (ret != null && !ret.getExceptions().isEmpty()) {
+            addDeadLetter(this, observer, ret.getExceptions());
+          }
+        } catch (Exception e) {
+          addDeadLetter(this, observer, Collections.singletonList(e));
+        }
+      }
+    }
+  }
+
+  private class Worker implements Runnable {
+    private final BlockingQueue<Event> queue;
+    private final Thread thread;
+    private long dispatched = 0;
+    private long processed = 0;
+
+    public Worker(int index, int queueSize) {
+      this.queue = new ArrayBlockingQueue<>(queueSize);
+      this.thread = new Thread(this, "model-event-dispatcher-" + index);
+      this.thread.setDaemon(true);
+      this.thread.start();
+    }
+
+    public void queue(Event event) throws InterruptedException {
+      // the lock ensures events are queued in the order they are counted
+      synchronized (queue) {
+        queue.put(event);
+        synchronized (this) {
+          dispatched++;
+        }
+      }
+    }
+
+    public synchronized long getDispatched() {
+      return dispatched;
+    }
+
+    public synchronized long getProcessed() {
+      return processed;
+    }
+
+    public synchronized boolean awaitProcessed(long count, long timeoutInNanos) throws InterruptedException {
+      long deadline = System.nanoTime() + timeoutInNanos;
+      while (processed < count) {
+        if (timeoutInNanos == Long.MAX_VALUE) {
+          wait();
+        } else {
+          long remaining = deadline - System.nanoTime();
+          if (remaining <= 0) {
+            return false;
+          }
+          TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public void run() {
+      while (true) {
+        Event event;
+        try {
+          event = queue.take();
+        } catch (InterruptedException e) {
+          // only interrupted when closed, after all events were processed
+          return;
+        }
+
+        try {
+          event.run();
+        } finally {
+          synchronized (this) {
+            processed++;
+            notifyAll();
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Model event that failed in an observer.
+   */
+  public static class DeadLetter {
+    private final String partitionKey;
+    private final ModelObserver observer;
+    private final Function<ModelObserver, ReturnWithExceptions<?, ?>> event;
+    private final List<Exception> exceptions;
+    private final Date date;
+
+    public DeadLetter(String partitionKey, ModelObserver observer,
+      Function<ModelObserver, ReturnWithExceptions<?, ?>> event, List<Exception> exceptions) {
+      this.partitionKey = partitionKey;
+      this.observer = observer;
+      this.event = event;
+      this.exceptions = exceptions;
+      this.date = new Date();
+    }
+
+    public String getPartitionKey() {
+      return partitionKey;
+    }
+
+    public ModelObserver getObserver() {
+      return observer;
+    }
+
+    public List<Exception> getExceptions() {
+      return exceptions;
+    }
+
+    public Date getDate() {
+      return date;
+    }
+  }
+}
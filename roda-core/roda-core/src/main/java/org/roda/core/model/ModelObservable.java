@@ -9,10 +9,14 @@ package org.roda.core.model;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 import org.roda.core.common.ReturnWithExceptionsWrapper;
+import org.roda.core.data.exceptions.GenericException;
 import org.roda.core.data.exceptions.ReturnWithExceptions;
+import org.roda.core.data.utils.JsonUtils;
 import org.roda.core.data.v2.ip.AIP;
 import org.roda.core.data.v2.ip.DIP;
 import org.roda.core.data.v2.ip.DIPFile;
@@ -33,15 +37,57 @@ import org.roda.core.data.v2.user.User;
 import org.slf4j.Logger;
 
 public abstract class ModelObservable {
+  /** Batches of risk incidences span several AIPs, so they share a partition */
+  private static final String RISK_INCIDENCES_PARTITION_KEY = "risk-incidences";
+  /** Likewise for batches of changes to several AIPs */
+  private static final String AIP_BATCHES_PARTITION_KEY = "aip-batches";
+
   private final List<ModelObserver> observers;
   private Logger logger;
+  private ModelEventDispatcher eventDispatcher = null;
 
   public ModelObservable(Logger logger) {
     super();
-    this.observers = new ArrayList<>();
+    this.observers = new CopyOnWriteArrayList<>();
     this.logger = logger;
   }
 
+  /**
+   * Sets the dispatcher that sends the events to the observers asynchronously
+   * or, if null, makes them be sent synchronously (the default). When
+   * asynchronous, observer errors are not returned by the notify methods but
+   * kept as dead letters in the dispatcher.
+   */
+  public void setModelEventDispatcher(ModelEventDispatcher eventDispatcher) {
+    this.eventDispatcher = eventDispatcher;
+  }
+
+  public ModelEventDispatcher getModelEventDispatcher() {
+    return eventDispatcher;
+  }
+
+  /**
+   * Waits until the events notified before this call were handled by the
+   * observers (e.g. indexed), which they already are if the events are sent
+   * synchronously.
+   */
+  public void flush() {
+    ModelEventDispatcher dispatcher = eventDispatcher;
+    if (dispatcher != null) {
+      dispatcher.flush();
+    }
+  }
+
+  /**
+   * Waits until all notified events were handled by the observers.
+   *
+   * @return false if the timeout elapsed before
+   */
+  public boolean awaitQuiescence(long timeout, TimeUnit unit) throws InterruptedException {
+    ModelEventDispatcher dispatcher = eventDispatcher;
+    return dispatcher == null || dispatcher.awaitQuiescence(timeout, unit);
+  }
+
   public void addModelObserver(ModelObserver observer) {
     observers.add(observer);
   }
@@ -50,7 +96,50 @@ public abstract class ModelObservable {
     observers.remove(observer);
   }
 
-  private ReturnWithExceptionsWrapper notifyObserversSafely(Function<ModelObserver, ReturnWithExceptions<?, ?>> func) {
+  private static String partitionKey(String aipId, String id) {
+    return aipId != null ? aipId : id;
+  }
+
+  /**
+   * Asynchronous observers handle an event after the caller goes on and may
+   * change the object (e.g. the AIP, job or report of a running job), so they
+   * get a copy of it.
+   */
+  private <T> T snapshot(T object, Class<T> objectClass) {
+    if (eventDispatcher == null || object == null) {
+      return object;
+    }
+
+    String json = JsonUtils.getJsonFromObject(object);
+    if (json != null) {
+      try {
+        return JsonUtils.getObjectFromJson(json, objectClass);
+      } catch (GenericException e) {
+        logger.warn("Could not copy {} {} to notify the observers", objectClass.getSimpleName(), object, e);
+      }
+    }
+    return object;
+  }
+
+  private <T> List<T> snapshots(List<T> objects, Class<T> objectClass) {
+    if (eventDispatcher == null) {
+      return objects;
+    }
+
+    List<T> snapshots = new ArrayList<>(objects.size());
+    for (T object : objects) {
+      snapshots.add(snapshot(object, objectClass));
+    }
+    return snapshots;
+  }
+
+  private ReturnWithExceptionsWrapper notifyObserversSafely(String partitionKey,
+    Function<ModelObserver, ReturnWithExceptions<?, ?>> func) {
+    ModelEventDispatcher dispatcher = eventDispatcher;
+    if (dispatcher != null && dispatcher.dispatch(partitionKey, observers, func)) {
+      return new ReturnWithExceptionsWrapper();
+    }
+
     ReturnWithExceptionsWrapper wrapper = new ReturnWithExceptionsWrapper();
     for (ModelObserver observer : observers) {
       try {
@@ -64,195 +153,253 @@ public abstract class ModelObservable {
   }
 
   public ReturnWithExceptionsWrapper notifyAipCreated(AIP aip) {
-    return notifyObserversSafely(observer -> observer.aipCreated(aip));
+    AIP snapshot = snapshot(aip, AIP.class);
+    return notifyObserversSafely(aip.getId(), observer -> observer.aipCreated(snapshot));
   }
 
   public ReturnWithExceptionsWrapper notifyAipUpdated(AIP aip) {
-    return notifyObserversSafely(observer -> observer.aipUpdated(aip));
+    AIP snapshot = snapshot(aip, AIP.class);
+    return notifyObserversSafely(aip.getId(), observer -> observer.aipUpdated(snapshot));
   }
 
   public ReturnWithExceptionsWrapper notifyAipMoved(AIP aip, String oldParentId, String newParentId) {
-    return notifyObserversSafely(observer -> observer.aipMoved(aip, oldParentId, newParentId));
+    AIP snapshot = snapshot(aip, AIP.class);
+    return notifyObserversSafely(aip.getId(), observer -> observer.aipMoved(snapshot, oldParentId, newParentId));
+  }
+
+  public ReturnWithExceptionsWrapper notifyAipsMoved(List<AIP> aips, String newParentId) {
+    List<AIP> snapshots = snapshots(aips, AIP.class);
+    return notifyObserversSafely(AIP_BATCHES_PARTITION_KEY, observer -> observer.aipsMoved(snapshots, newParentId));
   }
 
   public ReturnWithExceptionsWrapper notifyAipStateUpdated(AIP aip) {
-    return notifyObserversSafely(observer -> observer.aipStateUpdated(aip));
+    AIP snapshot = snapshot(aip, AIP.class);
+    return notifyObserversSafely(aip.getId(), observer -> observer.aipStateUpdated(snapshot));
+  }
+
+  public ReturnWithExceptionsWrapper notifyAipsStateUpdated(List<AIP> aips) {
+    List<AIP> snapshots = snapshots(aips, AIP.class);
+    return notifyObserversSafely(AIP_BATCHES_PARTITION_KEY, observer -> observer.aipsStateUpdated(snapshots));
   }
 
   public ReturnWithExceptionsWrapper notifyAipDeleted(String aipId) {
-    return notifyObserversSafely(observer -> observer.aipDeleted(aipId, true));
+    return notifyObserversSafely(aipId, observer -> observer.aipDeleted(aipId, true));
+  }
+
+  public ReturnWithExceptionsWrapper notifyAipTreeDeleted(String aipId, List<String> descendantIds) {
+    return notifyObserversSafely(aipId, observer -> observer.aipTreeDeleted(aipId, descendantIds));
   }
 
   public ReturnWithExceptionsWrapper notifyDescriptiveMetadataCreated(DescriptiveMetadata descriptiveMetadata) {
-    return notifyObserversSafely(observer -> observer.descriptiveMetadataCreated(descriptiveMetadata));
+    return notifyObserversSafely(descriptiveMetadata.getAipId(),
+      observer -> observer.descriptiveMetadataCreated(descriptiveMetadata));
   }
 
   public ReturnWithExceptionsWrapper notifyDescriptiveMetadataUpdated(DescriptiveMetadata descriptiveMetadata) {
-    return notifyObserversSafely(observer -> observer.descriptiveMetadataUpdated(descriptiveMetadata));
+    return notifyObserversSafely(descriptiveMetadata.getAipId(),
+      observer -> observer.descriptiveMetadataUpdated(descriptiveMetadata));
   }
 
   public ReturnWithExceptionsWrapper notifyDescriptiveMetadataDeleted(String aipId, String representationId,
     String descriptiveMetadataBinaryId) {
-    return notifyObserversSafely(
+    return notifyObserversSafely(aipId,
       observer -> observer.descriptiveMetadataDeleted(aipId, representationId, descriptiveMetadataBinaryId));
   }
 
   public ReturnWithExceptionsWrapper notifyRepresentationCreated(Representation representation) {
-    return notifyObserversSafely(observer -> observer.representationCreated(representation));
+    return notifyObserversSafely(representation.getAipId(), observer -> observer.representationCreated(representation));
   }
 
   public ReturnWithExceptionsWrapper notifyRepresentationUpdated(Representation representation) {
-    return notifyObserversSafely(observer -> observer.representationUpdated(representation));
+    return notifyObserversSafely(representation.getAipId(), observer -> observer.representationUpdated(representation));
   }
 
   public ReturnWithExceptionsWrapper notifyRepresentationDeleted(String aipId, String representationId) {
-    return notifyObserversSafely(observer -> observer.representationDeleted(aipId, representationId, true));
+    return notifyObserversSafely(aipId, observer -> observer.representationDeleted(aipId, representationId, true));
   }
 
   public ReturnWithExceptionsWrapper notifyFileCreated(File file) {
-    return notifyObserversSafely(observer -> observer.fileCreated(file));
+    return notifyObserversSafely(file.getAipId(), observer -> observer.fileCreated(file));
   }
 
   public ReturnWithExceptionsWrapper notifyFileUpdated(File file) {
-    return notifyObserversSafely(observer -> observer.fileUpdated(file));
+    return notifyObserversSafely(file.getAipId(), observer -> observer.fileUpdated(file));
   }
 
   public ReturnWithExceptionsWrapper notifyFileDeleted(String aipId, String representationId,
     List<String> fileDirectoryPath, String fileId) {
-    return notifyObserversSafely(
+    return notifyObserversSafely(aipId,
       observer -> observer.fileDeleted(aipId, representationId, fileDirectoryPath, fileId, true));
   }
 
   public ReturnWithExceptionsWrapper notifyLogEntryCreated(LogEntry entry) {
-    return notifyObserversSafely(observer -> observer.logEntryCreated(entry));
+    return notifyObserversSafely(entry.getId(), observer -> observer.logEntryCreated(entry));
   }
 
   public ReturnWithExceptionsWrapper notifyUserCreated(User user) {
-    return notifyObserversSafely(observer -> observer.userCreated(user));
+    return notifyObserversSafely(user.getId(), observer -> observer.userCreated(user));
   }
 
   public ReturnWithExceptionsWrapper notifyUserUpdated(User user) {
-    return notifyObserversSafely(observer -> observer.userUpdated(user));
+    return notifyObserversSafely(user.getId(), observer -> observer.userUpdated(user));
   }
 
   public ReturnWithExceptionsWrapper notifyUserDeleted(String userID) {
-    return notifyObserversSafely(observer -> observer.userDeleted(userID));
+    return notifyObserversSafely(userID, observer -> observer.userDeleted(userID));
   }
 
   public ReturnWithExceptionsWrapper notifyGroupCreated(Group group) {
-    return notifyObserversSafely(observer -> observer.groupCreated(group));
+    return notifyObserversSafely(group.getId(), observer -> observer.groupCreated(group));
   }
 
   public ReturnWithExceptionsWrapper notifyGroupUpdated(Group group) {
-    return notifyObserversSafely(observer -> observer.groupUpdated(group));
+    return notifyObserversSafely(group.getId(), observer -> observer.groupUpdated(group));
   }
 
   public ReturnWithExceptionsWrapper notifyGroupDeleted(String groupID) {
-    return notifyObserversSafely(observer -> observer.groupDeleted(groupID));
+    return notifyObserversSafely(groupID, observer -> observer.groupDeleted(groupID));
   }
 
   public ReturnWithExceptionsWrapper notifyPreservationMetadataCreated(
     PreservationMetadata preservationMetadataBinary) {
-    return notifyObserversSafely(observer -> observer.preservationMetadataCreated(preservationMetadataBinary));
+    return notifyObserversSafely(
+      partitionKey(preservationMetadataBinary.getAipId(), preservationMetadataBinary.getId()),
+      observer -> observer.preservationMetadataCreated(preservationMetadataBinary));
+  }
+
+  public ReturnWithExceptionsWrapper notifyPreservationEventsCreated(List<PreservationMetadata> events) {
+    return notifyObserversSafely(AIP_BATCHES_PARTITION_KEY, observer -> observer.preservationEventsCreated(events));
   }
 
   public ReturnWithExceptionsWrapper notifyPreservationMetadataUpdated(
     PreservationMetadata preservationMetadataBinary) {
-    return notifyObserversSafely(observer -> observer.preservationMetadataUpdated(preservationMetadataBinary));
+    return notifyObserversSafely(
+      partitionKey(preservationMetadataBinary.getAipId(), preservationMetadataBinary.getId()),
+      observer -> observer.preservationMetadataUpdated(preservationMetadataBinary));
   }
 
   public ReturnWithExceptionsWrapper notifyPreservationMetadataDeleted(PreservationMetadata pm) {
-    return notifyObserversSafely(observer -> observer.preservationMetadataDeleted(pm));
+    return notifyObserversSafely(partitionKey(pm.getAipId(), pm.getId()),
+      observer -> observer.preservationMetadataDeleted(pm));
   }
 
   public ReturnWithExceptionsWrapper notifyOtherMetadataCreated(OtherMetadata otherMetadataBinary) {
-    return notifyObserversSafely(observer -> observer.otherMetadataCreated(otherMetadataBinary));
+    return notifyObserversSafely(otherMetadataBinary.getAipId(),
+      observer -> observer.otherMetadataCreated(otherMetadataBinary));
   }
 
   public ReturnWithExceptionsWrapper notifyJobCreatedOrUpdated(Job job, boolean reindexJobReports) {
-    return notifyObserversSafely(observer -> observer.jobCreatedOrUpdated(job, reindexJobReports));
+    Job snapshot = snapshot(job, Job.class);
+    return notifyObserversSafely(job.getId(), observer -> observer.jobCreatedOrUpdated(snapshot, reindexJobReports));
   }
 
   public ReturnWithExceptionsWrapper notifyJobDeleted(String jobId) {
-    return notifyObserversSafely(observer -> observer.jobDeleted(jobId));
+    return notifyObserversSafely(jobId, observer -> observer.jobDeleted(jobId));
   }
 
   public ReturnWithExceptionsWrapper notifyJobReportCreatedOrUpdated(Report jobReport, Job cachedJob) {
-    return notifyObserversSafely(observer -> observer.jobReportCreatedOrUpdated(jobReport, cachedJob));
+    // partitioned by report, as when it is deleted
+    Report snapshot = snapshot(jobReport, Report.class);
+    Job jobSnapshot = snapshot(cachedJob, Job.class);
+    return notifyObserversSafely(jobReport.getId(),
+      observer -> observer.jobReportCreatedOrUpdated(snapshot, jobSnapshot));
   }
 
   public ReturnWithExceptionsWrapper notifyJobReportDeleted(String jobReportId) {
-    return notifyObserversSafely(observer -> observer.jobReportDeleted(jobReportId));
+    return notifyObserversSafely(jobReportId, observer -> observer.jobReportDeleted(jobReportId));
   }
 
   public ReturnWithExceptionsWrapper notifyAipPermissionsUpdated(AIP aip) {
-    return notifyObserversSafely(observer -> observer.aipPermissionsUpdated(aip));
+    AIP snapshot = snapshot(aip, AIP.class);
+    return notifyObserversSafely(aip.getId(), observer -> observer.aipPermissionsUpdated(snapshot));
   }
 
   public ReturnWithExceptionsWrapper notifyDipPermissionsUpdated(DIP dip) {
-    return notifyObserversSafely(observer -> observer.dipPermissionsUpdated(dip));
+    return notifyObserversSafely(dip.getId(), observer -> observer.dipPermissionsUpdated(dip));
   }
 
   public ReturnWithExceptionsWrapper notifyTransferredResourceDeleted(String transferredResourceID) {
-    return notifyObserversSafely(observer -> observer.transferredResourceDeleted(transferredResourceID));
+    return notifyObserversSafely(transferredResourceID,
+      observer -> observer.transferredResourceDeleted(transferredResourceID));
   }
 
   public ReturnWithExceptionsWrapper notifyRiskCreatedOrUpdated(Risk risk, int incidences, boolean commit) {
-    return notifyObserversSafely(observer -> observer.riskCreatedOrUpdated(risk, incidences, commit));
+    return notifyObserversSafely(risk.getId(), observer -> observer.riskCreatedOrUpdated(risk, incidences, commit));
   }
 
   public ReturnWithExceptionsWrapper notifyRiskDeleted(String riskId, boolean commit) {
-    return notifyObserversSafely(observer -> observer.riskDeleted(riskId, commit));
+    return notifyObserversSafely(riskId, observer -> observer.riskDeleted(riskId, commit));
   }
 
   public ReturnWithExceptionsWrapper notifyRiskIncidenceCreatedOrUpdated(RiskIncidence riskIncidence, boolean commit) {
-    return notifyObserversSafely(observer -> observer.riskIncidenceCreatedOrUpdated(riskIncidence, commit));
+    return notifyObserversSafely(partitionKey(riskIncidence.getAipId(), riskIncidence.getId()),
+      observer -> observer.riskIncidenceCreatedOrUpdated(riskIncidence, commit));
+  }
+
+  /**
+   * Notifies a batch of new incidences as a single event, so they are indexed
+   * together and the counters of their risks are updated once.
+   */
+  public ReturnWithExceptionsWrapper notifyRiskIncidencesCreated(List<RiskIncidence> riskIncidences, boolean commit) {
+    return notifyObserversSafely(RISK_INCIDENCES_PARTITION_KEY,
+      observer -> observer.riskIncidencesCreated(riskIncidences, commit));
+  }
+
+  public ReturnWithExceptionsWrapper notifyRiskIncidencesUpdated(List<RiskIncidence> riskIncidences, boolean commit) {
+    return notifyObserversSafely(RISK_INCIDENCES_PARTITION_KEY,
+      observer -> observer.riskIncidencesUpdated(riskIncidences, commit));
   }
 
   public ReturnWithExceptionsWrapper notifyRiskIncidenceDeleted(String riskIncidenceId, boolean commit) {
-    return notifyObserversSafely(observer -> observer.riskIncidenceDeleted(riskIncidenceId, commit));
+    return notifyObserversSafely(riskIncidenceId, observer -> observer.riskIncidenceDeleted(riskIncidenceId, commit));
+  }
+
+  public ReturnWithExceptionsWrapper notifyRiskIncidencesDeleted(List<String> riskIncidenceIds, boolean commit) {
+    return notifyObserversSafely(RISK_INCIDENCES_PARTITION_KEY,
+      observer -> observer.riskIncidencesDeleted(riskIncidenceIds, commit));
   }
 
   public ReturnWithExceptionsWrapper notifyRepresentationInformationCreatedOrUpdated(RepresentationInformation ri,
     boolean commit) {
-    return notifyObserversSafely(observer -> observer.representationInformationCreatedOrUpdated(ri, commit));
+    return notifyObserversSafely(ri.getId(),
+      observer -> observer.representationInformationCreatedOrUpdated(ri, commit));
   }
 
   public ReturnWithExceptionsWrapper notifyRepresentationInformationDeleted(String representationInformationId,
     boolean commit) {
-    return notifyObserversSafely(
+    return notifyObserversSafely(representationInformationId,
       observer -> observer.representationInformationDeleted(representationInformationId, commit));
   }
 
   public ReturnWithExceptionsWrapper notifyNotificationCreatedOrUpdated(Notification notification) {
-    return notifyObserversSafely(observer -> observer.notificationCreatedOrUpdated(notification));
+    return notifyObserversSafely(notification.getId(), observer -> observer.notificationCreatedOrUpdated(notification));
   }
 
   public ReturnWithExceptionsWrapper notifyNotificationDeleted(String notificationId) {
-    return notifyObserversSafely(observer -> observer.notificationDeleted(notificationId));
+    return notifyObserversSafely(notificationId, observer -> observer.notificationDeleted(notificationId));
   }
 
   public ReturnWithExceptionsWrapper notifyDIPCreated(DIP dip, boolean commit) {
-    return notifyObserversSafely(observer -> observer.dipCreated(dip, commit));
+    return notifyObserversSafely(dip.getId(), observer -> observer.dipCreated(dip, commit));
   }
 
   public ReturnWithExceptionsWrapper notifyDIPUpdated(DIP dip, boolean commit) {
-    return notifyObserversSafely(observer -> observer.dipUpdated(dip, commit));
+    return notifyObserversSafely(dip.getId(), observer -> observer.dipUpdated(dip, commit));
   }
 
   public ReturnWithExceptionsWrapper notifyDIPDeleted(String dipId, boolean commit) {
-    return notifyObserversSafely(observer -> observer.dipDeleted(dipId, commit));
+    return notifyObserversSafely(dipId, observer -> observer.dipDeleted(dipId, commit));
   }
 
   public ReturnWithExceptionsWrapper notifyDIPFileCreated(DIPFile file) {
-    return notifyObserversSafely(observer -> observer.dipFileCreated(file));
+    return notifyObserversSafely(file.getDipId(), observer -> observer.dipFileCreated(file));
   }
 
   public ReturnWithExceptionsWrapper notifyDIPFileUpdated(DIPFile file) {
-    return notifyObserversSafely(observer -> observer.dipFileUpdated(file));
+    return notifyObserversSafely(file.getDipId(), observer -> observer.dipFileUpdated(file));
   }
 
   public ReturnWithExceptionsWrapper notifyDIPFileDeleted(String dipId, List<String> path, String fileId) {
-    return notifyObserversSafely(observer -> observer.dipFileDeleted(dipId, path, fileId));
+    return notifyObserversSafely(dipId, observer -> observer.dipFileDeleted(dipId, path, fileId));
   }
 }
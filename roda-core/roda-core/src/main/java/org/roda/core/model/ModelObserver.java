@@ -36,10 +36,16 @@ public interface ModelObserver {
 
   public ReturnWithExceptions<Void, ModelObserver> aipStateUpdated(AIP aip);
 
+  public ReturnWithExceptions<Void, ModelObserver> aipsStateUpdated(List<AIP> aips);
+
   public ReturnWithExceptions<Void, ModelObserver> aipMoved(AIP aip, String oldParentId, String newParentId);
 
+  public ReturnWithExceptions<Void, ModelObserver> aipsMoved(List<AIP> aips, String newParentId);
+
   public ReturnWithExceptions<Void, ModelObserver> aipDeleted(String aipId, boolean deleteIncidences);
 
+  public ReturnWithExceptions<Void, ModelObserver> aipTreeDeleted(String aipId, List<String> descendantIds);
+
   public ReturnWithExceptions<Void, ModelObserver> descriptiveMetadataCreated(
     DescriptiveMetadata descriptiveMetadataBinary);
 
@@ -80,6 +86,8 @@ public interface ModelObserver {
   public ReturnWithExceptions<Void, ModelObserver> preservationMetadataCreated(
     PreservationMetadata preservationMetadataBinary);
 
+  public ReturnWithExceptions<Void, ModelObserver> preservationEventsCreated(List<PreservationMetadata> events);
+
   public ReturnWithExceptions<Void, ModelObserver> preservationMetadataUpdated(
     PreservationMetadata preservationMetadataBinary);
 
@@ -109,8 +117,17 @@ public interface ModelObserver {
   public ReturnWithExceptions<Void, ModelObserver> riskIncidenceCreatedOrUpdated(RiskIncidence riskIncidence,
     boolean commit);
 
+  public ReturnWithExceptions<Void, ModelObserver> riskIncidencesCreated(List<RiskIncidence> riskIncidences,
+    boolean commit);
+
+  public ReturnWithExceptions<Void, ModelObserver> riskIncidencesUpdated(List<RiskIncidence> riskIncidences,
+    boolean commit);
+
   public ReturnWithExceptions<Void, ModelObserver> riskIncidenceDeleted(String riskIncidenceId, boolean commit);
 
+  public ReturnWithExceptions<Void, ModelObserver> riskIncidencesDeleted(List<String> riskIncidenceIds,
+    boolean commit);
+
   public ReturnWithExceptions<Void, ModelObserver> representationInformationCreatedOrUpdated(
     RepresentationInformation ri, boolean commit);
 
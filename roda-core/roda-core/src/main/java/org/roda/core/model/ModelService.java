@@ -36,12 +36,15 @@ import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.roda.core.RodaCoreFactory;
 import org.roda.core.common.PremisV3Utils;
+import org.roda.core.common.SelectedItemsUtils;
 import org.roda.core.common.UserUtility;
 import org.roda.core.common.dips.DIPUtils;
 import org.roda.core.common.iterables.CloseableIterable;
 import org.roda.core.common.iterables.CloseableIterables;
 import org.roda.core.common.monitor.TransferredResourcesScanner;
 import org.roda.core.common.notifications.NotificationProcessor;
+import org.roda.core.common.tracing.Tracing;
+import org.roda.core.common.tracing.Tracing.Stage;
 import org.roda.core.common.validation.ValidationUtils;
 import org.roda.core.data.common.RodaConstants;
 import org.roda.core.data.common.RodaConstants.NodeType;
@@ -98,6 +101,7 @@ import org.roda.core.data.v2.validation.ValidationReport;
 import org.roda.core.events.EventsManager;
 import org.roda.core.model.iterables.LogEntryFileSystemIterable;
 import org.roda.core.model.iterables.LogEntryStorageIterable;
+import org.roda.core.model.utils.AIPMetadataCache;
 import org.roda.core.model.utils.ModelUtils;
 import org.roda.core.model.utils.ResourceListUtils;
 import org.roda.core.model.utils.ResourceParseUtils;
@@ -131,12 +135,15 @@ public class ModelService extends ModelObservable {
 
   private static final DateTimeFormatter LOG_NAME_DATE_FORMAT = DateTimeFormatter.ISO_LOCAL_DATE;
   private static final boolean FAIL_IF_NO_DESCRIPTIVE_METADATA_SCHEMA = false;
+  private static final Tracing.Operation RETRIEVE_AIP = Tracing.operation(Stage.MODEL, "retrieveAIP");
+  private static final Tracing.Operation UPDATE_AIP_METADATA = Tracing.operation(Stage.MODEL, "updateAIPMetadata");
   private final StorageService storage;
   private final EventsManager eventsManager;
   private final NodeType nodeType;
   private Object logFileLock = new Object();
   private String instanceId = "";
   private long entryLogLineNumber = -1;
+  private AIPMetadataCache aipMetadataCache = null;
 
   public ModelService(StorageService storage, EventsManager eventsManager, NodeType nodeType, String instanceId) {
     super(LOGGER);
@@ -200,6 +207,20 @@ public class ModelService extends ModelObservable {
     return storage;
   }
 
+  /**
+   * Caches the AIP metadata returned by {@link #retrieveAIP(String)}, or stops
+   * caching it if <code>null</code>.
+   */
+  public void setAIPMetadataCache(AIPMetadataCache aipMetadataCache) {
+    this.aipMetadataCache = aipMetadataCache;
+  }
+
+  private void invalidateAIPMetadataCache(String aipId) {
+    if (aipMetadataCache != null) {
+      aipMetadataCache.invalidate(aipId);
+    }
+  }
+
   /***************** AIP related *****************/
   /***********************************************/
 
@@ -215,6 +236,7 @@ public class ModelService extends ModelObservable {
       RodaConstants.STORAGE_AIP_METADATA_FILENAME);
     boolean asReference = false;
     storage.createBinary(metadataStoragePath, new StringContentPayload(json), asReference);
+    invalidateAIPMetadataCache(aip.getId());
   }
 
   private void updateAIPMetadata(AIP aip)
@@ -224,12 +246,15 @@ public class ModelService extends ModelObservable {
 
   private void updateAIPMetadata(AIP aip, StoragePath storagePath)
     throws GenericException, NotFoundException, RequestNotValidException, AuthorizationDeniedException {
-    String json = JsonUtils.getJsonFromObject(aip);
-    DefaultStoragePath metadataStoragePath = DefaultStoragePath.parse(storagePath,
-      RodaConstants.STORAGE_AIP_METADATA_FILENAME);
-    boolean asReference = false;
-    boolean createIfNotExists = true;
-    storage.updateBinaryContent(metadataStoragePath, new StringContentPayload(json), asReference, createIfNotExists);
+    try (Tracing.Span span = UPDATE_AIP_METADATA.start(aip.getId())) {
+      String json = JsonUtils.getJsonFromObject(aip);
+      DefaultStoragePath metadataStoragePath = DefaultStoragePath.parse(storagePath,
+        RodaConstants.STORAGE_AIP_METADATA_FILENAME);
+      boolean asReference = false;
+      boolean createIfNotExists = true;
+      storage.updateBinaryContent(metadataStoragePath, new StringContentPayload(json), asReference, createIfNotExists);
+    }
+    invalidateAIPMetadataCache(aip.getId());
   }
 
   public CloseableIterable<OptionalWithCause<AIP>> listAIPs()
@@ -241,7 +266,13 @@ public class ModelService extends ModelObservable {
 
   public AIP retrieveAIP(String aipId)
     throws RequestNotValidException, NotFoundException, GenericException, AuthorizationDeniedException {
-    return ResourceParseUtils.getAIPMetadata(getStorage(), aipId);
+    try (Tracing.Span span = RETRIEVE_AIP.start(aipId)) {
+      if (aipMetadataCache != null) {
+        return aipMetadataCache.get(getStorage(), aipId);
+      } else {
+        return ResourceParseUtils.getAIPMetadata(getStorage(), aipId);
+      }
+    }
   }
 
   /**
@@ -276,6 +307,7 @@ public class ModelService extends ModelObservable {
 
     if (validationReport.isValid()) {
       storage.copy(sourceStorage, sourcePath, ModelUtils.getAIPStoragePath(aipId));
+      invalidateAIPMetadataCache(aipId);
       Directory newDirectory = storage.getDirectory(ModelUtils.getAIPStoragePath(aipId));
 
       aip = ResourceParseUtils.getAIPMetadata(getStorage(), newDirectory.getStoragePath());
@@ -439,6 +471,7 @@ public class ModelService extends ModelObservable {
       storage.deleteResource(aipPath);
 
       storage.copy(sourceStorage, sourcePath, aipPath);
+      invalidateAIPMetadataCache(aipId);
       Directory directoryUpdated = storage.getDirectory(aipPath);
 
       aip = ResourceParseUtils.getAIPMetadata(getStorage(), directoryUpdated.getStoragePath());
@@ -475,6 +508,35 @@ public class ModelService extends ModelObservable {
     return aip;
   }
 
+  /**
+   * Updates the state of several AIPs, sending the changes of the whole batch
+   * to the index together.
+   *
+   * @return the AIPs that were updated
+   */
+  public List<AIP> updateAIPStates(List<AIP> aips, String updatedBy)
+    throws GenericException, AuthorizationDeniedException {
+    RodaCoreFactory.checkIfWriteIsAllowedAndIfFalseThrowException(nodeType);
+
+    List<AIP> updated = new ArrayList<>(aips.size());
+    Date updatedOn = new Date();
+    for (AIP aip : aips) {
+      try {
+        aip.setUpdatedBy(updatedBy);
+        aip.setUpdatedOn(updatedOn);
+        updateAIPMetadata(aip);
+        updated.add(aip);
+      } catch (GenericException | NotFoundException | RequestNotValidException | AuthorizationDeniedException e) {
+        LOGGER.error("Error updating the state of AIP {}", aip.getId(), e);
+      }
+    }
+
+    if (!updated.isEmpty()) {
+      notifyAipsStateUpdated(updated).failOnError();
+    }
+    return updated;
+  }
+
   public AIP moveAIP(String aipId, String parentId, String updatedBy)
     throws GenericException, NotFoundException, RequestNotValidException, AuthorizationDeniedException {
     RodaCoreFactory.checkIfWriteIsAllowedAndIfFalseThrowException(nodeType);
@@ -496,15 +558,97 @@ public class ModelService extends ModelObservable {
     return aip;
   }
 
+  /**
+   * Moves several AIPs under the same parent. The metadata of each AIP is
+   * updated and then the index of all of them, and of their descendants, is
+   * updated together.
+   *
+   * @return the AIPs that were moved
+   */
+  public List<AIP> moveAIPs(List<String> aipIds, String parentId, String updatedBy)
+    throws GenericException, AuthorizationDeniedException {
+    RodaCoreFactory.checkIfWriteIsAllowedAndIfFalseThrowException(nodeType);
+
+    List<AIP> moved = new ArrayList<>(aipIds.size());
+    Date updatedOn = new Date();
+    for (String aipId : aipIds) {
+      if (aipId.equals(parentId)) {
+        LOGGER.error("Cannot set itself as its parent: {}", aipId);
+        continue;
+      }
+
+      try {
+        AIP aip = ResourceParseUtils.getAIPMetadata(getStorage(), aipId);
+        aip.setParentId(parentId);
+        aip.setUpdatedOn(updatedOn);
+        aip.setUpdatedBy(updatedBy);
+        updateAIPMetadata(aip);
+        moved.add(aip);
+      } catch (GenericException | NotFoundException | RequestNotValidException | AuthorizationDeniedException e) {
+        LOGGER.error("Error moving AIP {} to {}", aipId, parentId, e);
+      }
+    }
+
+    if (!moved.isEmpty()) {
+      notifyAipsMoved(moved, parentId).failOnError();
+    }
+    return moved;
+  }
+
   public void deleteAIP(String aipId)
     throws RequestNotValidException, NotFoundException, GenericException, AuthorizationDeniedException {
     RodaCoreFactory.checkIfWriteIsAllowedAndIfFalseThrowException(nodeType);
 
     StoragePath aipPath = ModelUtils.getAIPStoragePath(aipId);
     storage.deleteResource(aipPath);
+    invalidateAIPMetadataCache(aipId);
     notifyAipDeleted(aipId).failOnError();
   }
 
+  /**
+   * Deletes an AIP and all its descendants. Each AIP directory is moved to the
+   * trash with a single storage operation and, if all could be deleted, the
+   * whole tree is removed from the index with one delete by query per
+   * collection.
+   *
+   * @param descendantIds
+   *          the ids of all the AIPs under the AIP
+   * @return the ids of the AIPs that were deleted (or were already missing
+   *         from storage)
+   */
+  public List<String> deleteAIPTree(String aipId, List<String> descendantIds)
+    throws GenericException, AuthorizationDeniedException {
+    RodaCoreFactory.checkIfWriteIsAllowedAndIfFalseThrowException(nodeType);
+
+    List<String> aipIds = new ArrayList<>(descendantIds);
+    aipIds.add(aipId);
+    List<String> deleted = new ArrayList<>(aipIds.size());
+    for (String id : aipIds) {
+      try {
+        storage.deleteResource(ModelUtils.getAIPStoragePath(id));
+        deleted.add(id);
+      } catch (NotFoundException e) {
+        // already gone from storage, so it must also leave the index
+        LOGGER.warn("AIP {} was already deleted from storage", id);
+        deleted.add(id);
+      } catch (GenericException | RequestNotValidException | AuthorizationDeniedException e) {
+        LOGGER.error("Error deleting AIP {} from storage", id, e);
+      }
+      invalidateAIPMetadataCache(id);
+    }
+
+    if (deleted.size() == aipIds.size()) {
+      notifyAipTreeDeleted(aipId, descendantIds).failOnError();
+    } else {
+      // the AIPs left in storage must stay in the index
+      for (String id : deleted) {
+        notifyAipDeleted(id).failOnError();
+      }
+    }
+
+    return deleted;
+  }
+
   private ValidationReport isAIPvalid(ModelService model, Directory directory,
     boolean failIfNoDescriptiveMetadataSchema)
     throws GenericException, RequestNotValidException, NotFoundException, AuthorizationDeniedException {
@@ -1219,15 +1363,18 @@ public class ModelService extends ModelObservable {
       outcomeDetail, agentName, notify);
   }
 
-  public void createUpdateAIPEvent(String aipId, String representationId, List<String> filePath, String fileId,
-    PreservationEventType eventType, String eventDescription, PluginState outcomeState, String outcomeText,
-    String outcomeDetail, String agentName, boolean notify) {
-    createEvent(aipId, representationId, filePath, fileId, eventType, eventDescription, null, null, outcomeState,
+  public PreservationMetadata createUpdateAIPEvent(String aipId, String representationId, List<String> filePath,
+    String fileId, PreservationEventType eventType, String eventDescription, PluginState outcomeState,
+    String outcomeText, String outcomeDetail, String agentName, boolean notify) {
+    return createEvent(aipId, representationId, filePath, fileId, eventType, eventDescription, null, null, outcomeState,
       outcomeText, outcomeDetail, agentName, notify);
   }
 
-  public void createEvent(String aipId, String representationId, List<String> filePath, String fileId,
-    PreservationEventType eventType, String eventDescription, List<LinkingIdentifier> sources,
+  /**
+   * @return the created event or <code>null</code> if it could not be created
+   */
+  public PreservationMetadata createEvent(String aipId, String representationId, List<String> filePath,
+    String fileId, PreservationEventType eventType, String eventDescription, List<LinkingIdentifier> sources,
     List<LinkingIdentifier> targets, PluginState outcomeState, String outcomeText, String outcomeDetail,
     String agentName, boolean notify) {
     try {
@@ -1237,16 +1384,17 @@ public class ModelService extends ModelObservable {
           .append("\n").append(outcomeDetail);
       }
 
-      createEvent(aipId, representationId, filePath, fileId, eventType, eventDescription, sources, targets,
+      return createEvent(aipId, representationId, filePath, fileId, eventType, eventDescription, sources, targets,
         outcomeState, builder.toString(), "", Arrays.asList(IdUtils.getUserAgentId(agentName)), notify);
     } catch (ValidationException | AlreadyExistsException | GenericException | NotFoundException
       | RequestNotValidException | AuthorizationDeniedException e1) {
       LOGGER.error("Could not create an event for: " + eventDescription, e1);
+      return null;
     }
   }
 
-  public void createEvent(String aipId, String representationId, List<String> filePath, String fileId,
-    PreservationEventType eventType, String eventDescription, List<LinkingIdentifier> sources,
+  public PreservationMetadata createEvent(String aipId, String representationId, List<String> filePath,
+    String fileId, PreservationEventType eventType, String eventDescription, List<LinkingIdentifier> sources,
     List<LinkingIdentifier> targets, PluginState outcomeState, String outcomeDetail, String outcomeExtension,
     List<String> agentIds, boolean notify) throws GenericException, ValidationException, NotFoundException,
     RequestNotValidException, AuthorizationDeniedException, AlreadyExistsException {
@@ -1258,15 +1406,17 @@ public class ModelService extends ModelObservable {
 
     if (eventType.equals(PreservationEventType.DELETION)) {
       if (aipId != null && representationId == null) {
-        createPreservationMetadata(PreservationMetadataType.EVENT, id, null, null, null, null, premisEvent, notify);
+        return createPreservationMetadata(PreservationMetadataType.EVENT, id, null, null, null, null, premisEvent,
+          notify);
       } else if (representationId != null && fileId == null) {
-        createPreservationMetadata(PreservationMetadataType.EVENT, id, aipId, null, null, null, premisEvent, notify);
-      } else {
-        createPreservationMetadata(PreservationMetadataType.EVENT, id, aipId, representationId, null, null, premisEvent,
+        return createPreservationMetadata(PreservationMetadataType.EVENT, id, aipId, null, null, null, premisEvent,
           notify);
+      } else {
+        return createPreservationMetadata(PreservationMetadataType.EVENT, id, aipId, representationId, null, null,
+          premisEvent, notify);
       }
     } else {
-      createPreservationMetadata(PreservationMetadataType.EVENT, id, aipId, representationId, filePath, fileId,
+      return createPreservationMetadata(PreservationMetadataType.EVENT, id, aipId, representationId, filePath, fileId,
         premisEvent, notify);
     }
   }
@@ -2183,8 +2333,9 @@ public class ModelService extends ModelObservable {
     throws RequestNotValidException, GenericException, NotFoundException, AuthorizationDeniedException {
     RodaCoreFactory.checkIfWriteIsAllowedAndIfFalseThrowException(nodeType);
 
-    // create or update job in storage
-    String jobAsJson = JsonUtils.getJsonFromObject(job);
+    // create or update job in storage (large lists of source objects are kept
+    // compact as the job is rewritten on every update)
+    String jobAsJson = SelectedItemsUtils.getCompactJsonFromObject(job);
     StoragePath jobPath = ModelUtils.getJobStoragePath(job.getId());
     storage.updateBinaryContent(jobPath, new StringContentPayload(jobAsJson), false, true);
 
@@ -2199,7 +2350,8 @@ public class ModelService extends ModelObservable {
     Job ret;
 
     try (InputStream inputStream = binary.getContent().createInputStream()) {
-      ret = JsonUtils.getObjectFromJson(inputStream, Job.class);
+      ret = SelectedItemsUtils.getObjectFromCompactJson(IOUtils.toString(inputStream, RodaConstants.DEFAULT_ENCODING),
+        Job.class);
     } catch (IOException | GenericException e) {
       throw new GenericException("Error reading job: " + jobId, e);
     }
@@ -2450,6 +2602,70 @@ public class ModelService extends ModelObservable {
     return riskIncidence;
   }
 
+  /**
+   * Creates several risk incidences as a single batch: they are indexed
+   * together and the incidence counters of their risks are updated once.
+   *
+   * @return the created incidences, i.e. without the ones that could not be
+   *         stored
+   */
+  public List<RiskIncidence> createRiskIncidences(List<RiskIncidence> riskIncidences, boolean commit)
+    throws GenericException, AuthorizationDeniedException {
+    RodaCoreFactory.checkIfWriteIsAllowedAndIfFalseThrowException(nodeType);
+
+    List<RiskIncidence> created = new ArrayList<>(riskIncidences.size());
+    Date detectedOn = new Date();
+    for (RiskIncidence riskIncidence : riskIncidences) {
+      try {
+        riskIncidence.setId(IdUtils.createUUID());
+        riskIncidence.setDetectedOn(detectedOn);
+
+        String riskIncidenceAsJson = JsonUtils.getJsonFromObject(riskIncidence);
+        StoragePath riskIncidencePath = ModelUtils.getRiskIncidenceStoragePath(riskIncidence.getId());
+        storage.createBinary(riskIncidencePath, new StringContentPayload(riskIncidenceAsJson), false);
+        created.add(riskIncidence);
+      } catch (GenericException | RequestNotValidException | AuthorizationDeniedException | NotFoundException
+        | AlreadyExistsException e) {
+        LOGGER.error("Error creating risk incidence in storage", e);
+      }
+    }
+
+    if (!created.isEmpty()) {
+      notifyRiskIncidencesCreated(created, commit).failOnError();
+    }
+    return created;
+  }
+
+  /**
+   * Updates several risk incidences as a single batch: their status, severity,
+   * description and mitigation are updated in the index together and the
+   * incidence counters of their risks are updated once.
+   *
+   * @return the updated incidences, i.e. without the ones that could not be
+   *         stored
+   */
+  public List<RiskIncidence> updateRiskIncidences(List<RiskIncidence> riskIncidences, boolean commit)
+    throws GenericException, AuthorizationDeniedException {
+    RodaCoreFactory.checkIfWriteIsAllowedAndIfFalseThrowException(nodeType);
+
+    List<RiskIncidence> updated = new ArrayList<>(riskIncidences.size());
+    for (RiskIncidence riskIncidence : riskIncidences) {
+      try {
+        String riskIncidenceAsJson = JsonUtils.getJsonFromObject(riskIncidence);
+        StoragePath riskIncidencePath = ModelUtils.getRiskIncidenceStoragePath(riskIncidence.getId());
+        storage.updateBinaryContent(riskIncidencePath, new StringContentPayload(riskIncidenceAsJson), false, false);
+        updated.add(riskIncidence);
+      } catch (GenericException | RequestNotValidException | AuthorizationDeniedException | NotFoundException e) {
+        LOGGER.error("Error updating risk incidence in storage", e);
+      }
+    }
+
+    if (!updated.isEmpty()) {
+      notifyRiskIncidencesUpdated(updated, commit).failOnError();
+    }
+    return updated;
+  }
+
   public void deleteRiskIncidence(String riskIncidenceId, boolean commit)
     throws GenericException, NotFoundException, AuthorizationDeniedException, RequestNotValidException {
     RodaCoreFactory.checkIfWriteIsAllowedAndIfFalseThrowException(nodeType);
@@ -2459,6 +2675,37 @@ public class ModelService extends ModelObservable {
     notifyRiskIncidenceDeleted(riskIncidenceId, commit).failOnError();
   }
 
+  /**
+   * Deletes several risk incidences, removing them from the index with a single
+   * request that also decrements the incidence counters of their risks.
+   *
+   * @return the ids of the incidences that were deleted (or were already
+   *         missing from storage)
+   */
+  public List<String> deleteRiskIncidences(List<String> riskIncidenceIds, boolean commit)
+    throws GenericException, AuthorizationDeniedException {
+    RodaCoreFactory.checkIfWriteIsAllowedAndIfFalseThrowException(nodeType);
+
+    List<String> deleted = new ArrayList<>(riskIncidenceIds.size());
+    for (String riskIncidenceId : riskIncidenceIds) {
+      try {
+        storage.deleteResource(ModelUtils.getRiskIncidenceStoragePath(riskIncidenceId));
+        deleted.add(riskIncidenceId);
+      } catch (NotFoundException e) {
+        // already gone from storage, so it must also leave the index
+        LOGGER.warn("Risk incidence {} was already deleted from storage", riskIncidenceId);
+        deleted.add(riskIncidenceId);
+      } catch (GenericException | RequestNotValidException | AuthorizationDeniedException e) {
+        LOGGER.error("Error deleting risk incidence {} from storage", riskIncidenceId, e);
+      }
+    }
+
+    if (!deleted.isEmpty()) {
+      notifyRiskIncidencesDeleted(deleted, commit).failOnError();
+    }
+    return deleted;
+  }
+
   public RiskIncidence retrieveRiskIncidence(String incidenceId)
     throws RequestNotValidException, GenericException, NotFoundException, AuthorizationDeniedException {
 
@@ -2503,6 +2750,16 @@ public class ModelService extends ModelObservable {
   }
 
   public Notification updateNotification(Notification notification)
+    throws GenericException, NotFoundException, AuthorizationDeniedException {
+    return updateNotification(notification, true);
+  }
+
+  /**
+   * @param notify
+   *          false if the observers are not to be notified, e.g. when many
+   *          notifications are updated and indexed together
+   */
+  public Notification updateNotification(Notification notification, boolean notify)
     throws GenericException, NotFoundException, AuthorizationDeniedException {
     RodaCoreFactory.checkIfWriteIsAllowedAndIfFalseThrowException(nodeType);
 
@@ -2515,7 +2772,9 @@ public class ModelService extends ModelObservable {
       throw new GenericException(e);
     }
 
-    notifyNotificationCreatedOrUpdated(notification).failOnError();
+    if (notify) {
+      notifyNotificationCreatedOrUpdated(notification).failOnError();
+    }
     return notification;
   }
 
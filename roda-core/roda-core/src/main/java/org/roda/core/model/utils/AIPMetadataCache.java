@@ -0,0 +1,315 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.model.utils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.UnaryOperator;
+
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.AuthorizationDeniedException;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.v2.ip.AIP;
+import org.roda.core.data.v2.ip.AIPFormat;
+import org.roda.core.data.v2.ip.Permissions;
+import org.roda.core.data.v2.ip.Permissions.PermissionType;
+import org.roda.core.data.v2.ip.Relationship;
+import org.roda.core.data.v2.ip.Representation;
+import org.roda.core.data.v2.ip.metadata.DescriptiveMetadata;
+import org.roda.core.storage.DefaultStoragePath;
+import org.roda.core.storage.StorageService;
+import org.roda.core.storage.StorageServiceWrapper;
+import org.roda.core.storage.fs.FileStorageService;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Read-through cache of AIP metadata (aip.json) used by
+ * {@link org.roda.core.model.ModelService#retrieveAIP(String)}.
+ *
+ * <p>
+ * The parsed AIP is cached (bounded by the size of its JSON) together with the
+ * modification time, size and file key of aip.json. Every hit checks them
+ * against the file, so a change written by another node or directly to the
+ * storage is seen on the next retrieval, and each caller gets its own deep
+ * copy of the AIP that it can change freely. Files changed less than
+ * {@link #SETTLE_TIME_IN_MILLIS} ago are not cached, as a second change within
+ * the file system timestamp granularity could keep the same attributes.
+ * </p>
+ *
+ * <p>
+ * Writes made through the model must still be followed by
+ * {@link #invalidate(String)}; each AIP id maps to a version stamp that is
+ * bumped on invalidation and a value read from storage is only cached if the
+ * stamp did not change meanwhile, so a concurrent writer never leaves a stale
+ * entry behind. AIPs are only cached when the storage is a
+ * {@link FileStorageService}.
+ * </p>
+ */
+public class AIPMetadataCache {
+  public static final long DEFAULT_MAX_SIZE_IN_BYTES = 32L * 1024 * 1024;
+  public static final long DEFAULT_TTL_IN_MILLIS = 60000;
+  public static final long SETTLE_TIME_IN_MILLIS = 2000;
+
+  private static final int NUMBER_OF_STRIPES = 1024;
+
+  private final Cache<String, Entry> cache;
+  private final AtomicLongArray versions = new AtomicLongArray(NUMBER_OF_STRIPES);
+  private final Object[] locks = new Object[NUMBER_OF_STRIPES];
+
+  private final Counter hits;
+  private final Counter misses;
+
+  public AIPMetadataCache(MetricRegistry metricRegistry, long maxSizeInBytes, long ttlInMillis) {
+    this.cache = CacheBuilder.newBuilder().maximumWeight(maxSizeInBytes)
+      .weigher((String aipId, Entry entry) -> aipId.length() + entry.weight)
+      .expireAfterWrite(ttlInMillis, TimeUnit.MILLISECONDS).build();
+    for (int i = 0; i < NUMBER_OF_STRIPES; i++) {
+      locks[i] = new Object();
+    }
+
+    String prefix = AIPMetadataCache.class.getSimpleName();
+    this.hits = metricRegistry.counter(MetricRegistry.name(prefix, "hits"));
+    this.misses = metricRegistry.counter(MetricRegistry.name(prefix, "misses"));
+    String hitRatioName = MetricRegistry.name(prefix, "hitRatio");
+    metricRegistry.remove(hitRatioName);
+    metricRegistry.register(hitRatioName, (Gauge<Double>) this::getHitRatio);
+  }
+
+  public AIP get(StorageService storage, String aipId)
+    throws RequestNotValidException, GenericException, NotFoundException, AuthorizationDeniedException {
+    Path metadataPath = getMetadataPath(storage, aipId);
+    if (metadataPath == null) {
+      return ResourceParseUtils.getAIPMetadata(storage, aipId, ModelUtils.getAIPStoragePath(aipId));
+    }
+
+    // the attributes are read before the content, so a change made while
+    // reading is seen by the next retrieval
+    Stamp stamp = Stamp.of(metadataPath);
+    Entry entry = cache.getIfPresent(aipId);
+    if (entry != null && entry.stamp.equals(stamp)) {
+      hits.inc();
+      return copy(entry.aip);
+    }
+
+    misses.inc();
+    int stripe = stripe(aipId);
+    long version = versions.get(stripe);
+    String json = ResourceParseUtils.getAIPMetadataJson(storage, ModelUtils.getAIPStoragePath(aipId));
+    AIP aip = ResourceParseUtils.parseAIPMetadata(aipId, json);
+    synchronized (locks[stripe]) {
+      if (version == versions.get(stripe)) {
+        if (stamp != null && stamp.isSettled()) {
+          cache.put(aipId, new Entry(copy(aip), stamp, json.length()));
+        } else {
+          cache.invalidate(aipId);
+        }
+      }
+    }
+
+    return aip;
+  }
+
+  /**
+   * Must be called after (not before) the AIP metadata was changed or deleted
+   * in storage.
+   */
+  public void invalidate(String aipId) {
+    int stripe = stripe(aipId);
+    synchronized (locks[stripe]) {
+      versions.incrementAndGet(stripe);
+      cache.invalidate(aipId);
+    }
+  }
+
+  public void invalidateAll() {
+    for (int i = 0; i < NUMBER_OF_STRIPES; i++) {
+      synchronized (locks[i]) {
+        versions.incrementAndGet(i);
+      }
+    }
+    cache.invalidateAll();
+  }
+
+  public double getHitRatio() {
+    long total = hits.getCount() + misses.getCount();
+    return total == 0 ? 0 : (double) hits.getCount() / total;
+  }
+
+  private static int stripe(String aipId) {
+    return Math.floorMod(aipId.hashCode(), NUMBER_OF_STRIPES);
+  }
+
+  private static Path getMetadataPath(StorageService storage, String aipId) throws RequestNotValidException {
+    StorageService unwrapped = storage;
+    while (unwrapped instanceof StorageServiceWrapper) {
+      unwrapped = ((StorageServiceWrapper) unwrapped).getWrappedStorageService();
+    }
+
+    if (unwrapped instanceof FileStorageService) {
+      return ((FileStorageService) unwrapped).resolve(
+        DefaultStoragePath.parse(ModelUtils.getAIPStoragePath(aipId), RodaConstants.STORAGE_AIP_METADATA_FILENAME));
+    } else {
+      return null;
+    }
+  }
+
+  private static AIP copy(AIP aip) {
+    AIP copy = new AIP(aip.getId(), aip.getParentId(), aip.getType(), aip.getState(),
+      copyPermissions(aip.getPermissions()), copyList(aip.getDescriptiveMetadata(), AIPMetadataCache::copy),
+      copyList(aip.getRepresentations(), AIPMetadataCache::copy), copyFormat(aip.getFormat()),
+      copyList(aip.getRelationships(), AIPMetadataCache::copy), copyDate(aip.getCreatedOn()), aip.getCreatedBy(),
+      copyDate(aip.getUpdatedOn()), aip.getUpdatedBy());
+    if (aip.getGhost() != null) {
+      copy.setGhost(aip.getGhost());
+    }
+    copy.setIngestSIPUUID(aip.getIngestSIPUUID()).setIngestSIPIds(copyList(aip.getIngestSIPIds(), id -> id))
+      .setIngestJobId(aip.getIngestJobId()).setIngestUpdateJobIds(copyList(aip.getIngestUpdateJobIds(), id -> id));
+    return copy;
+  }
+
+  private static Representation copy(Representation representation) {
+    Representation copy = new Representation(representation.getId(), representation.getAipId(),
+      representation.isOriginal(), representation.getType(),
+      copyList(representation.getDescriptiveMetadata(), AIPMetadataCache::copy));
+    copy.setRepresentationStates(copyList(representation.getRepresentationStates(), state -> state));
+    copy.setCreatedOn(copyDate(representation.getCreatedOn()));
+    copy.setCreatedBy(representation.getCreatedBy());
+    copy.setUpdatedOn(copyDate(representation.getUpdatedOn()));
+    copy.setUpdatedBy(representation.getUpdatedBy());
+    return copy;
+  }
+
+  private static DescriptiveMetadata copy(DescriptiveMetadata descriptiveMetadata) {
+    return new DescriptiveMetadata(descriptiveMetadata.getId(), descriptiveMetadata.getAipId(),
+      descriptiveMetadata.getRepresentationId(), descriptiveMetadata.getType(), descriptiveMetadata.getVersion());
+  }
+
+  private static Relationship copy(Relationship relationship) {
+    return new Relationship(relationship.getRelationType(), relationship.getRelationName(),
+      relationship.getRelationObject());
+  }
+
+  private static AIPFormat copyFormat(AIPFormat format) {
+    return format == null ? null : new AIPFormat(format.getName(), format.getVersion());
+  }
+
+  private static Permissions copyPermissions(Permissions permissions) {
+    if (permissions == null) {
+      return null;
+    }
+
+    Permissions copy = new Permissions();
+    copy.setUsers(copyPermissionMap(permissions.getUsers()));
+    copy.setGroups(copyPermissionMap(permissions.getGroups()));
+    return copy;
+  }
+
+  private static Map<PermissionType, Set<String>> copyPermissionMap(Map<PermissionType, Set<String>> permissionMap) {
+    if (permissionMap == null) {
+      return null;
+    }
+
+    Map<PermissionType, Set<String>> copy = new EnumMap<>(PermissionType.class);
+    permissionMap.forEach((type, names) -> copy.put(type, names == null ? null : new HashSet<>(names)));
+    return copy;
+  }
+
+  private static <T> List<T> copyList(List<T> list, UnaryOperator<T> copier) {
+    if (list == null) {
+      return null;
+    }
+
+    List<T> copy = new ArrayList<>(list.size());
+    for (T item : list) {
+      copy.add(item == null ? null : copier.apply(item));
+    }
+    return copy;
+  }
+
+  private static Date copyDate(Date date) {
+    return date == null ? null : new Date(date.getTime());
+  }
+
+  private static final class Entry {
+    private final AIP aip;
+    private final Stamp stamp;
+    private final int weight;
+
+    private Entry(AIP aip, Stamp stamp, int weight) {
+      this.aip = aip;
+      this.stamp = stamp;
+      this.weight = weight;
+    }
+  }
+
+  private static final class Stamp {
+    private final FileTime lastModifiedTime;
+    private final long size;
+    private final Object fileKey;
+
+    private Stamp(BasicFileAttributes attributes) {
+      this.lastModifiedTime = attributes.lastModifiedTime();
+      this.size = attributes.size();
+      this.fileKey = attributes.fileKey();
+    }
+
+    /**
+     * @return the stamp of the file or {@code null} if its attributes could
+     *         not be read (e.g. it does not exist)
+     */
+    private static Stamp of(Path path) {
+      try {
+        return new Stamp(Files.readAttributes(path, BasicFileAttributes.class));
+      } catch (IOException e) {
+        return null;
+      }
+    }
+
+    private boolean isSettled() {
+      return lastModifiedTime.toMillis() < System.currentTimeMillis() - SETTLE_TIME_IN_MILLIS;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Stamp)) {
+        return false;
+      }
+      Stamp other = (Stamp) obj;
+      return size == other.size && lastModifiedTime.equals(other.lastModifiedTime)
+        && Objects.equals(fileKey, other.fileKey);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(lastModifiedTime, size, fileKey);
+    }
+  }
+}
@@ -23,6 +23,7 @@ import java.util.function.Function;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.roda.core.RodaCoreFactory;
+import org.roda.core.common.SelectedItemsUtils;
 import org.roda.core.common.iterables.CloseableIterable;
 import org.roda.core.common.iterables.CloseableIterables;
 import org.roda.core.data.common.RodaConstants;
@@ -244,7 +245,8 @@ public class ResourceParseUtils {
     Binary binary = (Binary) resource;
     try (InputStream inputStream = binary.getContent().createInputStream()) {
       String jsonString = IOUtils.toString(inputStream, RodaConstants.DEFAULT_ENCODING);
-      T ret = JsonUtils.getObjectFromJson(jsonString, objectClass);
+      // jobs may have their source objects compacted
+      T ret = SelectedItemsUtils.getObjectFromCompactJson(jsonString, objectClass);
       return ret;
     }
   }
@@ -358,24 +360,31 @@ public class ResourceParseUtils {
 
   public static AIP getAIPMetadata(StorageService storage, String aipId, StoragePath storagePath)
     throws RequestNotValidException, GenericException, NotFoundException, AuthorizationDeniedException {
+    return parseAIPMetadata(aipId, getAIPMetadataJson(storage, storagePath));
+  }
 
+  public static String getAIPMetadataJson(StorageService storage, StoragePath storagePath)
+    throws RequestNotValidException, GenericException, NotFoundException, AuthorizationDeniedException {
     DefaultStoragePath metadataStoragePath = DefaultStoragePath.parse(storagePath,
       RodaConstants.STORAGE_AIP_METADATA_FILENAME);
     Binary binary = storage.getBinary(metadataStoragePath);
 
-    String json;
-    AIP aip = null;
     try (InputStream inputStream = binary.getContent().createInputStream()) {
-      json = IOUtils.toString(inputStream, Charset.forName(RodaConstants.DEFAULT_ENCODING));
-      aip = JsonUtils.getObjectFromJson(json, AIP.class);
+      return IOUtils.toString(inputStream, Charset.forName(RodaConstants.DEFAULT_ENCODING));
+    } catch (IOException e) {
+      throw new GenericException("Could not read AIP metadata at " + metadataStoragePath, e);
+    }
+  }
 
+  public static AIP parseAIPMetadata(String aipId, String json) throws GenericException {
+    try {
+      AIP aip = JsonUtils.getObjectFromJson(json, AIP.class);
       // Setting information that does not come in JSON
       aip.setId(aipId);
-    } catch (IOException | GenericException e) {
-      throw new GenericException("Could not parse AIP metadata of " + aipId + " at " + metadataStoragePath, e);
+      return aip;
+    } catch (GenericException e) {
+      throw new GenericException("Could not parse AIP metadata of " + aipId, e);
     }
-
-    return aip;
   }
 
   public static DIP getDIPMetadata(StorageService storage, StoragePath storagePath)
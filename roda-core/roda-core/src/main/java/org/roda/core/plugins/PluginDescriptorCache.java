@@ -0,0 +1,120 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.utils.JsonUtils;
+import org.roda.core.data.v2.jobs.PluginInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Information of the plugins of each external plugin jar, keyed by the hash of
+ * the jar contents and persisted in a file, so that the plugins of a known jar
+ * can be listed without being instantiated.
+ */
+public class PluginDescriptorCache {
+  private static final Logger LOGGER = LoggerFactory.getLogger(PluginDescriptorCache.class);
+
+  private final Path file;
+  private final Map<String, List<PluginInfo>> descriptors = new ConcurrentHashMap<>();
+  private volatile boolean changed = false;
+
+  /**
+   * @param file
+   *          file where the descriptors are persisted, <code>null</code> to
+   *          keep them only in memory
+   */
+  public PluginDescriptorCache(Path file) {
+    this.file = file;
+    if (file != null && Files.exists(file)) {
+      try {
+        Descriptors persisted = JsonUtils.readObjectFromFile(file, Descriptors.class);
+        if (persisted.getJars() != null) {
+          descriptors.putAll(persisted.getJars());
+        }
+      } catch (GenericException | RuntimeException e) {
+        LOGGER.warn("Could not read plugin descriptors from {}, plugins will be inspected again", file, e);
+      }
+    }
+  }
+
+  /**
+   * @return the descriptors of the plugins of the jar or <code>null</code> if
+   *         the jar is not known
+   */
+  public List<PluginInfo> get(String jarHash) {
+    return descriptors.get(jarHash);
+  }
+
+  public void put(String jarHash, List<PluginInfo> jarDescriptors) {
+    descriptors.put(jarHash, new ArrayList<>(jarDescriptors));
+    changed = true;
+  }
+
+  /**
+   * Forgets the jars that are no longer installed.
+   */
+  public void retainAll(Set<String> jarHashes) {
+    if (descriptors.keySet().retainAll(jarHashes)) {
+      changed = true;
+    }
+  }
+
+  public int size() {
+    return descriptors.size();
+  }
+
+  /**
+   * Persists the descriptors, if they changed since they were read.
+   */
+  public synchronized void save() {
+    if (file == null || !changed) {
+      return;
+    }
+
+    Descriptors persisted = new Descriptors();
+    persisted.setJars(new HashMap<>(descriptors));
+    Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+    try {
+      Files.createDirectories(file.toAbsolutePath().getParent());
+      Files.write(temp, JsonUtils.getJsonFromObject(persisted).getBytes(StandardCharsets.UTF_8));
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      changed = false;
+    } catch (IOException e) {
+      LOGGER.warn("Could not save plugin descriptors to {}", file, e);
+    }
+  }
+
+  public static class Descriptors implements Serializable {
+    private static final long serialVersionUID = -1739503316325632085L;
+
+    private Map<String, List<PluginInfo>> jars = new HashMap<>();
+
+    public Map<String, List<PluginInfo>> getJars() {
+      return jars;
+    }
+
+    public void setJars(Map<String, List<PluginInfo>> jars) {
+      this.jars = jars;
+    }
+  }
+}
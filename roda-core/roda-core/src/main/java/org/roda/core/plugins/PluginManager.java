@@ -30,6 +30,13 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.jar.Attributes;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
@@ -40,6 +47,7 @@ import org.apache.commons.configuration.ConfigurationException;
 import org.reflections.Reflections;
 import org.roda.core.RodaCoreFactory;
 import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.GenericException;
 import org.roda.core.data.v2.IsRODAObject;
 import org.roda.core.data.v2.ip.AIP;
 import org.roda.core.data.v2.ip.DIP;
@@ -74,6 +82,8 @@ public class PluginManager {
   private static final Logger LOGGER = LoggerFactory.getLogger(PluginManager.class);
 
   private static final int LOAD_PLUGINS_MAX_CYCLES = 100;
+  private static final String JAR_HASH_ALGORITHM = "SHA-256";
+  private static final String PLUGIN_DESCRIPTORS_FILE = "plugin-descriptors.json";
 
   private static Path RODA_CONFIG_PATH = null;
   private static Path RODA_PLUGINS_PATH = null;
@@ -82,10 +92,13 @@ public class PluginManager {
   private static String RODA_PLUGIN_MANIFEST_KEY_DEPENDS = "RODA-Plugin-Depends";
 
   private Timer loadPluginsTimer = null;
-  private Map<Path, JarPlugins> jarPluginCache = new HashMap<>();
-  private Map<String, ClassLoader> jarPluginClassloaderCache = new HashMap<>();
+  private ExecutorService loadPluginsExecutor = null;
+  private PluginDescriptorCache pluginDescriptorCache = new PluginDescriptorCache(null);
+  private Map<Path, JarPlugins> jarPluginCache = new ConcurrentHashMap<>();
+  private Map<String, ClassLoader> jarPluginClassloaderCache = new ConcurrentHashMap<>();
   private Map<String, Plugin<? extends IsRODAObject>> internalPluginChache = new HashMap<>();
-  private Map<String, Plugin<? extends IsRODAObject>> externalPluginChache = new HashMap<>();
+  private Map<String, ExternalPlugin> externalPluginChache = new ConcurrentHashMap<>();
+  private Map<String, PluginInfo> internalPluginInfos = new ConcurrentHashMap<>();
   private Map<PluginType, List<PluginInfo>> pluginInfoPerType = new EnumMap<>(PluginType.class);
   private Map<String, Set<Class>> pluginObjectClasses = new HashMap<>();
   private Map<Class, List<PluginInfo>> pluginInfoPerObjectClass = new HashMap<>();
@@ -132,8 +145,9 @@ public class PluginManager {
   public <T extends IsRODAObject> void registerPlugin(Plugin<T> plugin) throws PluginException {
     try {
       plugin.init();
-      externalPluginChache.put(plugin.getClass().getName(), plugin);
-      processAndCachePluginInformation(plugin);
+      PluginInfo pluginInfo = describePlugin(plugin);
+      externalPluginChache.put(plugin.getClass().getName(), new ExternalPlugin(pluginInfo, null, null, plugin));
+      processAndCachePluginInformation(pluginInfo);
       LOGGER.debug("Plugin added dynamically started {} (version {})", plugin.getName(), plugin.getVersion());
     } catch (Throwable e) {
       // 20170123 hsilva: it is required to catch Throwable as there are some
@@ -144,14 +158,20 @@ public class PluginManager {
   }
 
   /**
-   * Returns all {@link Plugin}s present in all jars.
+   * Returns all {@link Plugin}s present in all jars, instantiating the
+   * external plugins that were not used yet.
    * 
    * @return a {@link List} of {@link Plugin}s.
    */
   public List<Plugin<? extends IsRODAObject>> getPlugins() {
     List<Plugin<? extends IsRODAObject>> plugins = new ArrayList<>();
     plugins.addAll(internalPluginChache.values());
-    plugins.addAll(externalPluginChache.values());
+    for (ExternalPlugin externalPlugin : externalPluginChache.values()) {
+      Plugin<? extends IsRODAObject> plugin = externalPlugin.getPlugin();
+      if (plugin != null) {
+        plugins.add(plugin);
+      }
+    }
     return plugins;
   }
 
@@ -161,7 +181,10 @@ public class PluginManager {
    * @return a {@link List} of {@link PluginInfo}s.
    */
   public List<PluginInfo> getPluginsInfo() {
-    return getPlugins().stream().map(e -> getPluginInfo(e)).collect(Collectors.toList());
+    List<PluginInfo> ret = new ArrayList<>();
+    ret.addAll(internalPluginInfos.values());
+    externalPluginChache.values().forEach(externalPlugin -> ret.add(externalPlugin.pluginInfo));
+    return ret;
   }
 
   public List<PluginInfo> getPluginsInfo(PluginType pluginType) {
@@ -226,9 +249,10 @@ public class PluginManager {
 
     boolean internalPluginTakesPrecedence = RodaCoreFactory.getRodaConfiguration()
       .getBoolean("core.plugins.internal.take_precedence_over_external", true);
-    Plugin<? extends IsRODAObject> cachedExternalPlugin = externalPluginChache.get(pluginID);
-    if ((plugin == null || !internalPluginTakesPrecedence) && cachedExternalPlugin != null) {
-      plugin = cachedExternalPlugin.cloneMe();
+    ExternalPlugin cachedExternalPlugin = externalPluginChache.get(pluginID);
+    if ((plugin == null || !internalPluginTakesPrecedence) && cachedExternalPlugin != null
+      && cachedExternalPlugin.getPlugin() != null) {
+      plugin = cachedExternalPlugin.getPlugin().cloneMe();
     }
 
     return plugin;
@@ -239,17 +263,21 @@ public class PluginManager {
   }
 
   /**
+   * Returns the information of a plugin, without instantiating it.
+   * 
    * @param pluginID
    * 
    * @return {@link PluginInfo} or <code>null</code>.
    */
   public PluginInfo getPluginInfo(String pluginID) {
-    Plugin<? extends IsRODAObject> plugin = getPlugin(pluginID);
-    if (plugin != null) {
-      return getPluginInfo(plugin);
-    } else {
-      return null;
+    boolean internalPluginTakesPrecedence = RodaCoreFactory.getRodaConfiguration()
+      .getBoolean("core.plugins.internal.take_precedence_over_external", true);
+    ExternalPlugin cachedExternalPlugin = externalPluginChache.get(pluginID);
+    if (cachedExternalPlugin != null
+      && (!internalPluginTakesPrecedence || !internalPluginInfos.containsKey(pluginID))) {
+      return cachedExternalPlugin.pluginInfo;
     }
+    return internalPluginInfos.get(pluginID);
   }
 
   /**
@@ -263,16 +291,33 @@ public class PluginManager {
       this.loadPluginsTimer.cancel();
     }
 
+    if (this.loadPluginsExecutor != null) {
+      this.loadPluginsExecutor.shutdownNow();
+    }
+
     for (JarPlugins jarPlugins : this.jarPluginCache.values()) {
-      for (Plugin<? extends IsRODAObject> plugin : jarPlugins.plugins) {
-        if (plugin != null) {
-          plugin.shutdown();
-        }
+      for (ExternalPlugin plugin : jarPlugins.plugins) {
+        plugin.shutdown();
       }
     }
   }
 
   private void init() {
+    int threads = RodaCoreFactory.getRodaConfigurationAsInt(Runtime.getRuntime().availableProcessors(), "core",
+      "plugins", "external", "loading_threads");
+    AtomicInteger threadNumber = new AtomicInteger();
+    this.loadPluginsExecutor = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+      Thread thread = new Thread(r, "plugin-loader-" + threadNumber.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    if (RodaCoreFactory.getDataPath() != null && RodaCoreFactory.getRodaConfiguration()
+      .getBoolean("core.plugins.external.descriptor_cache.enabled", true)) {
+      this.pluginDescriptorCache = new PluginDescriptorCache(
+        RodaCoreFactory.getDataPath().resolve(PLUGIN_DESCRIPTORS_FILE));
+    }
+
     // load, for the first time, all the plugins (internal & external)
     loadPlugins();
 
@@ -285,9 +330,16 @@ public class PluginManager {
     LOGGER.info("{} init OK", getClass().getSimpleName());
   }
 
-  private <T extends IsRODAObject> PluginInfo getPluginInfo(Plugin<T> plugin) {
-    return new PluginInfo(plugin.getClass().getName(), plugin.getName(), plugin.getVersion(), plugin.getDescription(),
-      plugin.getType(), plugin.getCategories(), plugin.getParameters());
+  /**
+   * Gets the information of a plugin, including the classes of the objects it
+   * can process (and their indexed counterparts).
+   */
+  private static <T extends IsRODAObject> PluginInfo describePlugin(Plugin<T> plugin) {
+    PluginInfo pluginInfo = new PluginInfo(plugin.getClass().getName(), plugin.getName(), plugin.getVersion(),
+      plugin.getDescription(), plugin.getType(), plugin.getCategories(), plugin.getParameters());
+    getObjectClassesWithCounterparts(plugin.getObjectClasses())
+      .forEach(objectClass -> pluginInfo.addObjectClass(objectClass.getName()));
+    return pluginInfo;
   }
 
   private void loadPlugins() {
@@ -325,40 +377,37 @@ public class PluginManager {
 
       // process each folder inside the plugins folder (except shared &
       // disabled)
-      List<PluginLoadInfo> pluginLoadInfos = new ArrayList<>();
+      List<PluginJar> pluginJars = new ArrayList<>();
 
       try (DirectoryStream<Path> pluginsFolders = Files.newDirectoryStream(RODA_PLUGINS_PATH,
         path -> Files.isDirectory(path)
           && !RodaConstants.CORE_PLUGINS_SHARED_FOLDER.equals(path.getFileName().toString())
           && !RodaConstants.CORE_PLUGINS_DISABLED_FOLDER.equals(path.getFileName().toString()))) {
         for (Path pluginFolder : pluginsFolders) {
-          pluginLoadInfos.addAll(loadExternalPluginFolder(sharedJarURLs, pluginFolder));
+          pluginJars.addAll(loadExternalPluginFolder(sharedJarURLs, pluginFolder));
         }
       }
 
+      // read the manifests and hash the jars in parallel
+      List<PluginLoadInfo> pluginLoadInfos = runInParallel(pluginJars, this::addJarToPluginToBeLoaded);
+
       for (int i = 0; i < LOAD_PLUGINS_MAX_CYCLES && !pluginLoadInfos.isEmpty(); i++) {
         LOGGER.debug("Running cycle for loading plugins & their dependencies (i = {})", i);
 
-        // process plugins that do not have dependencies on other plugins
-        pluginLoadInfos.stream().filter(p -> p.pluginDependencies.isEmpty()).forEach(p -> loadPlugin(p));
-        pluginLoadInfos.removeIf(p -> p.pluginDependencies.isEmpty());
-
-        // load plugins that have dependencies that are all loaded
-        List<PluginLoadInfo> pluginWithDeps = pluginLoadInfos.stream().filter(p -> !p.pluginDependencies.isEmpty())
+        // load, in parallel, the plugins whose dependencies are all loaded
+        List<PluginLoadInfo> pluginsToLoad = pluginLoadInfos.stream()
+          .filter(p -> p.pluginDependencies.stream().allMatch(this::isPluginDependencyLoaded))
           .collect(Collectors.toList());
-        for (PluginLoadInfo pluginLoadInfo : pluginWithDeps) {
-          boolean allLoaded = true;
-          for (String dependency : pluginLoadInfo.pluginDependencies) {
-            if (!isPluginDependencyLoaded(dependency)) {
-              allLoaded = false;
-              break;
-            }
-          }
+        if (pluginsToLoad.isEmpty()) {
+          break;
+        }
+        pluginLoadInfos.removeAll(pluginsToLoad);
 
-          if (allLoaded) {
-            loadPlugin(pluginLoadInfo);
-            pluginLoadInfos.remove(pluginLoadInfo);
-          }
+        // the configuration is not thread safe, so the plugin properties are
+        // loaded before
+        pluginsToLoad.stream().filter(p -> !isAlreadyLoaded(p)).forEach(this::loadPluginProperties);
+        for (LoadedJar loadedJar : runInParallel(pluginsToLoad, this::loadPlugin)) {
+          cacheLoadedJar(loadedJar);
         }
       }
 
@@ -372,24 +421,70 @@ public class PluginManager {
 
       }
 
+      pluginDescriptorCache
+        .retainAll(jarPluginCache.values().stream().map(jarPlugins -> jarPlugins.hash).collect(Collectors.toSet()));
+      pluginDescriptorCache.save();
     } catch (IOException e) {
       LOGGER.error("Error while instantiating external plugins", e);
     }
   }
 
+  /**
+   * Applies the function to all the items, using the plugin loading threads.
+   *
+   * @return the results, in the order of the items, except the
+   *         <code>null</code> ones
+   */
+  private <T, R> List<R> runInParallel(List<T> items, Function<T, R> function) {
+    List<Future<R>> futures = new ArrayList<>();
+    for (T item : items) {
+      futures.add(loadPluginsExecutor.submit(() -> function.apply(item)));
+    }
+
+    List<R> results = new ArrayList<>();
+    for (Future<R> future : futures) {
+      try {
+        R result = future.get();
+        if (result != null) {
+          results.add(result);
+        }
+      } catch (ExecutionException e) {
+        LOGGER.error("Error while loading external plugins", e.getCause());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        LOGGER.warn("Interrupted while loading external plugins");
+        break;
+      }
+    }
+    return results;
+  }
+
+  private class PluginJar {
+    Path jarPath;
+    List<URL> classpath;
+    List<Path> pluginProperties;
+
+    public PluginJar(Path jarPath, List<URL> classpath, List<Path> pluginProperties) {
+      this.jarPath = jarPath;
+      this.classpath = classpath;
+      this.pluginProperties = pluginProperties;
+    }
+  }
+
   private class PluginLoadInfo {
     Path jarPath;
-    JarFile jar;
     List<URL> jarClasspath;
     List<String> pluginClassNames;
     List<String> pluginDependencies;
     List<Path> pluginProperties;
+    long lastModified;
+    long size;
+    String hash;
 
-    public PluginLoadInfo(Path jarPath, JarFile jar, List<URL> jarClasspath, List<String> pluginClassNames,
+    public PluginLoadInfo(Path jarPath, List<URL> jarClasspath, List<String> pluginClassNames,
       List<String> pluginDepends, List<Path> pluginProperties) {
       super();
       this.jarPath = jarPath;
-      this.jar = jar;
       this.jarClasspath = jarClasspath;
       this.pluginClassNames = pluginClassNames;
       this.pluginDependencies = pluginDepends;
@@ -398,11 +493,23 @@ public class PluginManager {
 
   }
 
-  private List<PluginLoadInfo> loadExternalPluginFolder(List<URL> sharedJarURLs, Path pluginFolder) {
+  private class LoadedJar {
+    PluginLoadInfo loadInfo;
+    ClassLoader classloader;
+    List<ExternalPlugin> plugins;
+
+    public LoadedJar(PluginLoadInfo loadInfo, ClassLoader classloader, List<ExternalPlugin> plugins) {
+      this.loadInfo = loadInfo;
+      this.classloader = classloader;
+      this.plugins = plugins;
+    }
+  }
+
+  private List<PluginJar> loadExternalPluginFolder(List<URL> sharedJarURLs, Path pluginFolder) {
     LOGGER.debug("Processing plugin folder '{}'", pluginFolder);
     List<Path> pluginJarFiles = new ArrayList<>();
     List<URL> classpath = new ArrayList<>(sharedJarURLs);
-    List<PluginLoadInfo> pluginLoadInfos = new ArrayList<>();
+    List<PluginJar> pluginJars = new ArrayList<>();
     List<Path> pluginProperties = new ArrayList<>();
 
     // add dependencies to classpath
@@ -438,16 +545,17 @@ public class PluginManager {
     }
 
     for (Path jarFile : pluginJarFiles) {
-      addJarToPluginToBeLoaded(jarFile, classpath, pluginLoadInfos, pluginProperties);
+      pluginJars.add(new PluginJar(jarFile, classpath, pluginProperties));
     }
 
-    return pluginLoadInfos;
+    return pluginJars;
 
   }
 
-  private void addJarToPluginToBeLoaded(Path jarPath, List<URL> classpath, List<PluginLoadInfo> pluginLoadInfos,
-    List<Path> pluginProperties) {
-    List<URL> jarClasspath = new ArrayList<>(classpath);
+  private PluginLoadInfo addJarToPluginToBeLoaded(PluginJar pluginJar) {
+    Path jarPath = pluginJar.jarPath;
+    List<URL> jarClasspath = new ArrayList<>(pluginJar.classpath);
+    PluginLoadInfo pluginLoadInfo = null;
 
     try (JarFile jar = new JarFile(jarPath.toFile())) {
       // add own jar to classpath
@@ -475,13 +583,38 @@ public class PluginManager {
           pluginDepends.addAll(Arrays.asList(pluginClassNamesDependsString.split("\\s+")));
         }
 
-        pluginLoadInfos
-          .add(new PluginLoadInfo(jarPath, jar, jarClasspath, pluginClassNames, pluginDepends, pluginProperties));
-
+        pluginLoadInfo = new PluginLoadInfo(jarPath, jarClasspath, pluginClassNames, pluginDepends,
+          pluginJar.pluginProperties);
+        hashJar(pluginLoadInfo);
       }
-    } catch (IOException e) {
+    } catch (IOException | GenericException e) {
       LOGGER.error("Error loading plugin from {}", jarPath.getFileName(), e);
+      pluginLoadInfo = null;
     }
+
+    return pluginLoadInfo;
+  }
+
+  /**
+   * Hashes the contents of the jar, unless its modification date and size did
+   * not change since it was loaded.
+   */
+  private void hashJar(PluginLoadInfo p) throws IOException, GenericException {
+    BasicFileAttributes attrs = Files.readAttributes(p.jarPath, BasicFileAttributes.class);
+    p.lastModified = attrs.lastModifiedTime().toMillis();
+    p.size = attrs.size();
+
+    JarPlugins jarPlugins = jarPluginCache.get(p.jarPath);
+    if (jarPlugins != null && jarPlugins.lastModified == p.lastModified && jarPlugins.size == p.size) {
+      p.hash = jarPlugins.hash;
+    } else {
+      p.hash = FSUtils.computeContentDigest(p.jarPath, JAR_HASH_ALGORITHM);
+    }
+  }
+
+  private boolean isAlreadyLoaded(PluginLoadInfo p) {
+    JarPlugins jarPlugins = jarPluginCache.get(p.jarPath);
+    return jarPlugins != null && jarPlugins.hash.equals(p.hash);
   }
 
   private boolean isPluginDependencyLoaded(String pluginDependencyRegex) {
@@ -525,79 +658,105 @@ public class PluginManager {
     return sharedJarURLs;
   }
 
-  private void loadPlugin(PluginLoadInfo p) {
-    BasicFileAttributes attrs;
-    try {
-      attrs = Files.readAttributes(p.jarPath, BasicFileAttributes.class);
+  private void loadPluginProperties(PluginLoadInfo p) {
+    for (Path propertiesFile : p.pluginProperties) {
+      try {
+        RodaCoreFactory.addExternalConfiguration(propertiesFile);
+      } catch (ConfigurationException e) {
+        LOGGER.warn("Could not load plugin configuration: " + propertiesFile, e);
+      }
+    }
+  }
 
-      if (jarPluginCache.containsKey(p.jarPath)
-        && attrs.lastModifiedTime().toMillis() == jarPluginCache.get(p.jarPath).lastModified) {
-        LOGGER.debug("{} is already loaded", p.jarPath.getFileName());
-      } else {
-        // The Plugin doesn't exist or the modification date is
-        // different.
+  /**
+   * Creates the classloader of the jar and its plugins. The plugins of jars
+   * whose descriptors are cached are only instantiated when first used, the
+   * others are instantiated and initialized now, to get their descriptors.
+   *
+   * @return the loaded jar or <code>null</code> if its contents did not change
+   *         since it was loaded
+   */
+  private LoadedJar loadPlugin(PluginLoadInfo p) {
+    JarPlugins jarPlugins = jarPluginCache.get(p.jarPath);
+    if (jarPlugins != null && jarPlugins.hash.equals(p.hash)) {
+      LOGGER.debug("{} is already loaded", p.jarPath.getFileName());
+      jarPlugins.lastModified = p.lastModified;
+      jarPlugins.size = p.size;
+      return null;
+    }
 
-        // Let's create Plugin classloader
-        ClassLoader classloader;
+    // The Plugin doesn't exist or its contents are different.
 
-        if (p.pluginDependencies.isEmpty()) {
-          classloader = new URLClassLoader(p.jarClasspath.toArray(new URL[] {}), getClass().getClassLoader());
-        } else {
-          CompoundClassLoader c = new CompoundClassLoader();
-          c.addLoader(new URLClassLoader(p.jarClasspath.toArray(new URL[] {}), getClass().getClassLoader()));
+    // Let's create Plugin classloader
+    ClassLoader classloader;
 
-          p.pluginDependencies.forEach(d -> c.addLoader(getPluginClassLoader(d)));
+    if (p.pluginDependencies.isEmpty()) {
+      classloader = new URLClassLoader(p.jarClasspath.toArray(new URL[] {}), getClass().getClassLoader());
+    } else {
+      CompoundClassLoader c = new CompoundClassLoader();
+      c.addLoader(new URLClassLoader(p.jarClasspath.toArray(new URL[] {}), getClass().getClassLoader()));
 
-          classloader = c;
-        }
+      p.pluginDependencies.forEach(d -> c.addLoader(getPluginClassLoader(d)));
 
-        // Let's load Plugin properties
-        for (Path propertiesFile : p.pluginProperties) {
-          try {
-            RodaCoreFactory.addExternalConfiguration(propertiesFile);
-          } catch (ConfigurationException e) {
-            LOGGER.warn("Could not load plugin configuration: " + propertiesFile, e);
-          }
-        }
+      classloader = c;
+    }
 
-        // Let's load the Plugin
-        List<Plugin<? extends IsRODAObject>> plugins = loadPlugin(p.jarPath, p.pluginClassNames, classloader);
-        if (!plugins.isEmpty()) {
-          LOGGER.info("'{}' (is new? {}) is not loaded or modification dates differ. Inspecting Jar...",
-            p.jarPath.getFileName(), jarPluginCache.containsKey(p.jarPath));
+    List<ExternalPlugin> plugins = new ArrayList<>();
+    List<PluginInfo> descriptors = pluginDescriptorCache.get(p.hash);
+    if (descriptors != null) {
+      LOGGER.debug("'{}' is known, its plugins will be started when first used", p.jarPath.getFileName());
+      for (PluginInfo pluginInfo : descriptors) {
+        if (!blacklistedPlugins.contains(pluginInfo.getId())) {
+          plugins.add(new ExternalPlugin(pluginInfo, p.jarPath, classloader, null));
         }
-        for (Plugin<? extends IsRODAObject> plugin : plugins) {
-          try {
-            if (plugin != null && !blacklistedPlugins.contains(plugin.getClass().getName())) {
-              plugin.init();
-              externalPluginChache.put(plugin.getClass().getName(), plugin);
-              processAndCachePluginInformation(plugin);
-              LOGGER.info("Plugin started '{}' (version {})", plugin.getName(), plugin.getVersion());
-            } else {
-              LOGGER.trace("'{}' is not a Plugin", p.jarPath.getFileName());
-            }
-
-            synchronized (jarPluginCache) {
-              if (jarPluginCache.get(p.jarPath) != null) {
-                JarPlugins jarPlugins = jarPluginCache.get(p.jarPath);
-                jarPlugins.plugins = new ArrayList<>();
-                jarPlugins.plugins.add(plugin);
-                jarPlugins.lastModified = attrs.lastModifiedTime().toMillis();
-              } else {
-                jarPluginCache.put(p.jarPath, new JarPlugins(plugin, attrs.lastModifiedTime().toMillis()));
-              }
-            }
-          } catch (Exception | LinkageError e) {
-            LOGGER.error("Plugin failed to initialize: {}", p.jarPath, e);
+      }
+    } else {
+      // Let's load the Plugin
+      List<Plugin<?>> loadedPlugins = loadPlugin(p.jarPath, p.pluginClassNames, classloader);
+      if (!loadedPlugins.isEmpty()) {
+        LOGGER.info("'{}' (is new? {}) is not loaded or its contents differ. Inspecting Jar...",
+          p.jarPath.getFileName(), jarPlugins == null);
+      }
+
+      // descriptors are only cached if all plugins of the jar started
+      boolean allStarted = loadedPlugins.size() == p.pluginClassNames.size();
+      descriptors = new ArrayList<>();
+      for (Plugin<?> plugin : loadedPlugins) {
+        try {
+          if (!blacklistedPlugins.contains(plugin.getClass().getName())) {
+            plugin.init();
+            PluginInfo pluginInfo = describePlugin(plugin);
+            descriptors.add(pluginInfo);
+            plugins.add(new ExternalPlugin(pluginInfo, p.jarPath, classloader, plugin));
+            LOGGER.info("Plugin started '{}' (version {})", plugin.getName(), plugin.getVersion());
+          } else {
+            allStarted = false;
           }
+        } catch (Exception | LinkageError e) {
+          allStarted = false;
+          LOGGER.error("Plugin failed to initialize: {}", p.jarPath, e);
         }
+      }
 
-        // Let's cache Plugin classloader
-        jarPluginClassloaderCache.put(getPluginClassLoaderCacheKey(p.jarPath), classloader);
+      if (allStarted) {
+        pluginDescriptorCache.put(p.hash, descriptors);
       }
-    } catch (IOException e1) {
-      LOGGER.error("Plugin failed to initialize: {}", p.jarPath, e1);
     }
+
+    return new LoadedJar(p, classloader, plugins);
+  }
+
+  private void cacheLoadedJar(LoadedJar loadedJar) {
+    PluginLoadInfo p = loadedJar.loadInfo;
+    for (ExternalPlugin plugin : loadedJar.plugins) {
+      externalPluginChache.put(plugin.pluginInfo.getId(), plugin);
+      processAndCachePluginInformation(plugin.pluginInfo);
+    }
+
+    jarPluginCache.put(p.jarPath, new JarPlugins(loadedJar.plugins, p.lastModified, p.size, p.hash));
+
+    // Let's cache Plugin classloader
+    jarPluginClassloaderCache.put(getPluginClassLoaderCacheKey(p.jarPath), loadedJar.classloader);
   }
 
   private void loadInternalPlugins() {
@@ -613,8 +772,10 @@ public class PluginManager {
         try {
           Plugin<? extends IsRODAObject> p = (Plugin<?>) ClassLoaderUtility.createObject(plugin.getName());
           p.init();
+          PluginInfo pluginInfo = describePlugin(p);
           internalPluginChache.put(plugin.getName(), p);
-          processAndCachePluginInformation(p);
+          internalPluginInfos.put(plugin.getName(), pluginInfo);
+          processAndCachePluginInformation(pluginInfo);
         } catch (ClassNotFoundException | InstantiationException | IllegalAccessException | PluginException
           | RuntimeException e) {
           LOGGER.error("Unable to instantiate plugin '{}'", plugin.getName(), e);
@@ -624,10 +785,8 @@ public class PluginManager {
     internalPluginStarted = true;
   }
 
-  private <T extends IsRODAObject> void processAndCachePluginInformation(Plugin<T> plugin) {
-
-    // cache plugin > objectClasses
-    Set<Class> objectClasses = new HashSet<>(plugin.getObjectClasses());
+  private static Set<Class> getObjectClassesWithCounterparts(List<? extends Class> pluginObjectClasses) {
+    Set<Class> objectClasses = new HashSet<>(pluginObjectClasses);
     if (objectClasses.contains(AIP.class)) {
       objectClasses.add(IndexedAIP.class);
     } else if (objectClasses.contains(IndexedAIP.class)) {
@@ -658,12 +817,24 @@ public class PluginManager {
     } else if (objectClasses.contains(IndexedReport.class)) {
       objectClasses.add(Report.class);
     }
-    pluginObjectClasses.put(plugin.getClass().getName(), objectClasses);
+    return objectClasses;
+  }
+
+  private void processAndCachePluginInformation(PluginInfo pluginInfo) {
+
+    // cache plugin > objectClasses
+    Set<Class> objectClasses = new HashSet<>();
+    for (String objectClass : pluginInfo.getObjectClasses()) {
+      try {
+        objectClasses.add(Class.forName(objectClass));
+      } catch (ClassNotFoundException e) {
+        LOGGER.warn("Unknown object class {} of plugin {}", objectClass, pluginInfo.getId());
+      }
+    }
+    pluginObjectClasses.put(pluginInfo.getId(), objectClasses);
 
     // cache plugintype > plugininfos
-    PluginInfo pluginInfo = getPluginInfo(plugin.getClass().getName());
-    objectClasses.stream().forEach(objectClass -> pluginInfo.addObjectClass(objectClass.getName()));
-    PluginType pluginType = plugin.getType();
+    PluginType pluginType = pluginInfo.getType();
     if (pluginInfoPerType.get(pluginType) == null) {
       List<PluginInfo> list = new ArrayList<>();
       list.add(pluginInfo);
@@ -673,7 +844,7 @@ public class PluginManager {
     }
 
     // cache objectClass > plugininfos
-    for (Class class1 : getPluginObjectClasses(plugin)) {
+    for (Class class1 : objectClasses) {
       if (pluginInfoPerObjectClass.get(class1) == null) {
         List<PluginInfo> list = new ArrayList<>();
         list.add(pluginInfo);
@@ -724,12 +895,10 @@ public class PluginManager {
 
         for (Entry<Path, JarPlugins> jarEntry : jarPluginCache.entrySet()) {
           Path jarFile = jarEntry.getKey();
-          List<Plugin<?>> plugins = jarEntry.getValue().plugins;
-          if (!plugins.isEmpty()) {
-            for (Plugin<?> plugin : plugins) {
-              LOGGER.debug("- {}", jarFile.getFileName());
-              LOGGER.debug("--- {} - {} - {}", plugin.getName(), plugin.getVersion(), plugin.getDescription());
-            }
+          for (ExternalPlugin plugin : jarEntry.getValue().plugins) {
+            LOGGER.debug("- {}", jarFile.getFileName());
+            LOGGER.debug("--- {} - {} - {}", plugin.pluginInfo.getName(), plugin.pluginInfo.getVersion(),
+              plugin.pluginInfo.getDescription());
           }
         }
       }
@@ -737,12 +906,61 @@ public class PluginManager {
   }
 
   protected class JarPlugins {
-    protected List<Plugin<?>> plugins = new ArrayList<>();
+    protected List<ExternalPlugin> plugins;
     private long lastModified = 0;
+    private long size = 0;
+    private String hash;
 
-    JarPlugins(Plugin<?> plugin, long lastModified) {
-      plugins.add(plugin);
+    JarPlugins(List<ExternalPlugin> plugins, long lastModified, long size, String hash) {
+      this.plugins = plugins;
       this.lastModified = lastModified;
+      this.size = size;
+      this.hash = hash;
+    }
+  }
+
+  /**
+   * An external plugin, which is only instantiated and initialized when first
+   * used.
+   */
+  protected class ExternalPlugin {
+    private final PluginInfo pluginInfo;
+    private final Path jarPath;
+    private final ClassLoader classloader;
+    private Plugin<? extends IsRODAObject> plugin;
+    private boolean failed = false;
+
+    ExternalPlugin(PluginInfo pluginInfo, Path jarPath, ClassLoader classloader,
+      Plugin<? extends IsRODAObject> plugin) {
+      this.pluginInfo = pluginInfo;
+      this.jarPath = jarPath;
+      this.classloader = classloader;
+      this.plugin = plugin;
+    }
+
+    /**
+     * @return the plugin or <code>null</code> if it could not be started
+     */
+    synchronized Plugin<? extends IsRODAObject> getPlugin() {
+      if (plugin == null && !failed) {
+        try {
+          Object object = classloader.loadClass(pluginInfo.getId()).newInstance();
+          Plugin<? extends IsRODAObject> loadedPlugin = (Plugin<?>) object;
+          loadedPlugin.init();
+          plugin = loadedPlugin;
+          LOGGER.info("Plugin started '{}' (version {})", plugin.getName(), plugin.getVersion());
+        } catch (Exception | LinkageError e) {
+          failed = true;
+          LOGGER.error("Plugin failed to initialize: {}", jarPath, e);
+        }
+      }
+      return plugin;
+    }
+
+    synchronized void shutdown() {
+      if (plugin != null) {
+        plugin.shutdown();
+      }
     }
   }
 
@@ -7,28 +7,78 @@
  */
 package org.roda.core.plugins.orchestrate;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import org.apache.commons.lang3.StringUtils;
+import org.roda.core.RodaCoreFactory;
 import org.roda.core.common.akka.Messages.JobPartialUpdate;
+import org.roda.core.common.akka.Messages.JobStateDetailsUpdated;
+import org.roda.core.common.akka.Messages.JobStateUpdated;
+import org.roda.core.common.iterables.CloseableIterable;
+import org.roda.core.common.tracing.Tracing;
+import org.roda.core.common.tracing.Tracing.Stage;
+import org.roda.core.data.exceptions.AcquireLockTimeoutException;
+import org.roda.core.data.exceptions.GenericException;
 import org.roda.core.data.exceptions.JobAlreadyStartedException;
 import org.roda.core.data.exceptions.JobException;
 import org.roda.core.data.exceptions.LockingException;
+import org.roda.core.data.exceptions.NotLockableAtTheTimeException;
+import org.roda.core.data.exceptions.RODAException;
 import org.roda.core.data.v2.IsRODAObject;
+import org.roda.core.data.v2.LiteRODAObject;
+import org.roda.core.data.v2.common.OptionalWithCause;
 import org.roda.core.data.v2.index.IsIndexed;
 import org.roda.core.data.v2.index.filter.Filter;
+import org.roda.core.data.v2.index.select.SelectedItems;
+import org.roda.core.data.v2.index.select.SelectedItemsAll;
+import org.roda.core.data.v2.index.select.SelectedItemsFilter;
+import org.roda.core.data.v2.index.select.SelectedItemsList;
+import org.roda.core.data.v2.index.select.SelectedItemsNone;
+import org.roda.core.data.v2.ip.File;
+import org.roda.core.data.v2.ip.Representation;
 import org.roda.core.data.v2.jobs.Job;
+import org.roda.core.data.v2.jobs.Job.JOB_STATE;
 import org.roda.core.index.IndexService;
+import org.roda.core.index.utils.IterableIndexResult;
+import org.roda.core.index.utils.SolrUtils;
+import org.roda.core.model.LiteRODAObjectFactory;
 import org.roda.core.model.ModelService;
+import org.roda.core.model.utils.ModelUtils;
 import org.roda.core.plugins.Plugin;
 import org.roda.core.plugins.PluginOrchestrator;
 import org.roda.core.plugins.orchestrate.akka.distributed.AkkaDistributedPlugin;
+import org.roda.core.plugins.orchestrate.akka.distributed.AkkaDistributedPluginWorker;
 import org.roda.core.plugins.orchestrate.akka.distributed.Frontend;
 import org.roda.core.plugins.orchestrate.akka.distributed.Master;
+import org.roda.core.plugins.orchestrate.akka.distributed.Master.Work;
+import org.roda.core.plugins.orchestrate.akka.distributed.ObjectLockManager;
+import org.roda.core.plugins.orchestrate.akka.distributed.PluginBlock;
+import org.roda.core.plugins.orchestrate.akka.distributed.WorkLocality;
+import org.roda.core.plugins.orchestrate.akka.distributed.WorkResultListener;
+import org.roda.core.plugins.plugins.PluginHelper;
 import org.roda.core.storage.StorageService;
+import org.roda.core.util.IdUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigUtil;
 
 import akka.actor.ActorIdentity;
 import akka.actor.ActorPath;
@@ -41,52 +91,122 @@ import akka.actor.PoisonPill;
 import akka.actor.Props;
 import akka.cluster.singleton.ClusterSingletonManager;
 import akka.cluster.singleton.ClusterSingletonManagerSettings;
+import akka.cluster.singleton.ClusterSingletonProxy;
+import akka.cluster.singleton.ClusterSingletonProxySettings;
 import akka.dispatch.OnFailure;
 import akka.dispatch.OnSuccess;
 import akka.pattern.Patterns;
 import akka.persistence.journal.leveldb.SharedLeveldbJournal;
 import akka.persistence.journal.leveldb.SharedLeveldbStore;
 import akka.util.Timeout;
+import scala.concurrent.Await;
 import scala.concurrent.Future;
 import scala.concurrent.duration.Duration;
-import scala.concurrent.duration.FiniteDuration;
 
+/**
+ * Orchestrator that runs the plugin blocks of the jobs in the worker nodes of
+ * an Akka cluster (enabled with {@code core.orchestrator.type =
+ * AKKA_DISTRIBUTED}).
+ *
+ * The node where a job is executed runs its lifecycle: it calls
+ * {@link Plugin#beforeAllExecute(IndexService, ModelService, StorageService)},
+ * submits the blocks of objects to the {@link Master}, updates the job
+ * information with the results of the blocks as they arrive and, when all are
+ * done, calls
+ * {@link Plugin#afterAllExecute(IndexService, ModelService, StorageService)}
+ * and sets the final state of the job. Results are published by the master at
+ * most once, so a job whose results were lost must be stopped.
+ *
+ * Object locks are kept by an {@link ObjectLockManager} that runs as a cluster
+ * singleton, so an object locked in one node is locked in all of them.
+ */
 /*
  * Based on 
  * > http://www.typesafe.com/activator/template/akka-distributed-workers
  * > https://github.com/typesafehub/activator-akka-distributed-workers-java 
  * */
 public class AkkaDistributedPluginOrchestrator extends AkkaDistributedPlugin implements PluginOrchestrator {
+  private static final Logger LOGGER = LoggerFactory.getLogger(AkkaDistributedPluginOrchestrator.class);
+
+  private static final String ROLE = "backend";
+
   private final IndexService index;
   private final ModelService model;
   private final StorageService storage;
   private final ActorSystem clusterSystem;
   private final ActorRef frontend;
-
+  private final ActorRef lockManager;
+  private AkkaDistributedPluginWorker localWorker = null;
+
+  /** Work submitted by this node waiting for its result, by work id */
+  private final Map<String, CompletableFuture<Object>> pendingWork = new ConcurrentHashMap<>();
+  private final Map<String, JobExecution> runningJobs = new ConcurrentHashMap<>();
+  private final ExecutorService jobsExecutor = Executors
+    .newFixedThreadPool(JobsHelper.getMaxNumberOfJobsInParallel());
+
+  /**
+   * Starts a backend node and, if {@code
+   * core.orchestrator.distributed.local_worker} is true (the default), a
+   * worker in this node.
+   */
   public AkkaDistributedPluginOrchestrator(String hostname, String port) {
+    this(ActorSystem.create(SYSTEM_NAME, createConfig(hostname, port)),
+      ActorPaths.fromString("akka.tcp://" + SYSTEM_NAME + "@" + hostname + ":" + port + "/user/store"), true);
+    if (RodaCoreFactory.getRodaConfiguration().getBoolean("core.orchestrator.distributed.local_worker", true)) {
+      localWorker = new AkkaDistributedPluginWorker(hostname, port, hostname, "0");
+    }
+  }
+  /**
+   * Starts a backend node (running the master if it is the oldest node of the
+   * cluster) in the given actor system, e.g. to have several nodes in the same
+   * JVM.
+   *
+   * @param sharedJournalPath
+   *          path of the shared journal store, or <code>null</code> to use
+   *          the journal configured in the actor system (e.g. in memory)
+   * @param startSharedJournal
+   *          start the shared journal store in this node
+   */
+  public AkkaDistributedPluginOrchestrator(ActorSystem clusterSystem, ActorPath sharedJournalPath,
+    boolean startSharedJournal) {
     super();
     index = getIndex();
     model = getModel();
     storage = getStorage();
+    this.clusterSystem = clusterSystem;
 
-    String role = "backend";
-    String systemName = "ClusterSystem";
-    String systemPath = systemName + "@" + hostname + ":" + port;
-    Config conf = ConfigFactory.parseString("akka.cluster.roles=[" + role + "]")
-      .withFallback(ConfigFactory.parseString("akka.cluster.seed-nodes=[\"akka.tcp://" + systemPath + "\"]"))
-      .withFallback(ConfigFactory.parseString("akka.remote.netty.tcp.hostname=" + hostname))
-      .withFallback(ConfigFactory.parseString("akka.remote.netty.tcp.port=" + port))
-      .withFallback(ConfigFactory.load("config/orchestrator/application"));
-
-    clusterSystem = ActorSystem.create(systemName, conf);
+    if (sharedJournalPath != null) {
+      startupSharedJournal(getClusterSystem(), startSharedJournal, sharedJournalPath);
+    }
 
-    startupSharedJournal(getClusterSystem(), true, ActorPaths.fromString("akka.tcp://" + systemPath + "/user/store"));
+    getClusterSystem().actorOf(
+      ClusterSingletonManager.props(Master.props(getWorkTimeout(), getSnapshotInterval(), getMaxAttempts()),
+        PoisonPill.getInstance(),
+        ClusterSingletonManagerSettings.create(getClusterSystem()).withRole(ROLE)),
+      "master");
 
-    FiniteDuration workTimeout = Duration.create(10, "seconds");
-    getClusterSystem().actorOf(ClusterSingletonManager.props(Master.props(workTimeout), PoisonPill.getInstance(),
-      ClusterSingletonManagerSettings.create(getClusterSystem()).withRole(role)), "master");
+    getClusterSystem().actorOf(ClusterSingletonManager.props(ObjectLockManager.props(getLockTimeout()),
+      PoisonPill.getInstance(), ClusterSingletonManagerSettings.create(getClusterSystem()).withRole(ROLE)),
+      "lockManager");
+    lockManager = getClusterSystem().actorOf(ClusterSingletonProxy.props("/user/lockManager",
+      ClusterSingletonProxySettings.create(getClusterSystem()).withRole(ROLE)), "lockManagerProxy");
 
     frontend = clusterSystem.actorOf(Props.create(Frontend.class), "frontend");
+    clusterSystem.actorOf(Props.create(WorkResultListener.class, pendingWork), "workResultListener");
+  }
+
+  private static Config createConfig(String hostname, String port) {
+    String systemPath = SYSTEM_NAME + "@" + hostname + ":" + port;
+    Path persistencePath = RodaCoreFactory.getDataPath().resolve("orchestrator");
+    return ConfigFactory.parseString("akka.cluster.roles=[" + ROLE + "]")
+      .withFallback(ConfigFactory.parseString("akka.cluster.seed-nodes=[\"akka.tcp://" + systemPath + "\"]"))
+      .withFallback(ConfigFactory.parseString("akka.remote.netty.tcp.hostname=" + hostname))
+      .withFallback(ConfigFactory.parseString("akka.remote.netty.tcp.port=" + port))
+      .withFallback(ConfigFactory.parseString("akka.persistence.journal.leveldb-shared.store.dir="
+        + ConfigUtil.quoteString(persistencePath.resolve("journal").toString())))
+      .withFallback(ConfigFactory.parseString("akka.persistence.snapshot-store.local.dir="
+        + ConfigUtil.quoteString(persistencePath.resolve("snapshots").toString())))
+      .withFallback(ConfigFactory.load("config/orchestrator/distributed"));
   }
 
   private static void startupSharedJournal(final ActorSystem system, boolean startStore, final ActorPath path) {
@@ -135,33 +255,212 @@ public class AkkaDistributedPluginOrchestrator extends AkkaDistributedPlugin imp
 
   @Override
   public void shutdown() {
-    // do nothing
+    jobsExecutor.shutdownNow();
+    List<ActorSystem> systems = new ArrayList<>();
+    if (localWorker != null) {
+      systems.add(localWorker.getWorkerSystem());
+    }
+    systems.add(clusterSystem);
+
+    for (ActorSystem system : systems) {
+      LOGGER.info("Going to shutdown {} actor system", system.name());
+      system.terminate();
+      try {
+        Await.result(system.whenTerminated(), Duration.create(30, "seconds"));
+      } catch (TimeoutException e) {
+        LOGGER.warn("{} actor system shutdown wait timed out, continuing...", system.name());
+      } catch (Exception e) {
+        LOGGER.error("Error while shutting down {} actor system", system.name(), e);
+      }
+    }
   }
 
   @Override
-  public <T extends IsRODAObject, T1 extends IsIndexed> void runPluginFromIndex(Object context, Class<T1> classToActOn,
-    Filter filter, Plugin<T> plugin) {
-    // do nothing
+  public void executeJob(Job job, boolean async) throws JobAlreadyStartedException {
+    LOGGER.info("Adding job '{}' ({}) to be executed in the cluster", job.getName(), job.getId());
+    Plugin<? extends IsRODAObject> plugin = RodaCoreFactory.getPluginManager().getPlugin(job.getPlugin());
+    if (plugin == null) {
+      JobsHelper.updateJobState(job, model, JOB_STATE.FAILED_TO_COMPLETE, Optional.of("Plugin is NULL"));
+      return;
+    }
+    JobsHelper.setPluginParameters(plugin, job);
+
+    JobExecution execution = new JobExecution();
+    if (runningJobs.putIfAbsent(job.getId(), execution) != null) {
+      LOGGER.info("Job '{}' ({}) is already queued to be executed", job.getName(), job.getId());
+      throw new JobAlreadyStartedException();
+    }
+
+    if (async) {
+      jobsExecutor.execute(() -> runJob(job, plugin, execution));
+    } else {
+      runJob(job, plugin, execution);
+    }
+  }
+
+  private <T extends IsRODAObject> void runJob(Job job, Plugin<T> plugin, JobExecution execution) {
+    String jobId = job.getId();
+    JobsHelper.updateJobState(plugin, model, JOB_STATE.STARTED, Optional.empty());
+    JobsHelper.createJobWorkingDirectory(jobId);
+
+    JOB_STATE state = JOB_STATE.COMPLETED;
+    Optional<String> stateDetails = Optional.empty();
+    try {
+      try (Tracing.Scope scope = Tracing.inJob(jobId);
+        Tracing.Span span = Tracing.start(Stage.PLUGIN, plugin.getClass().getSimpleName() + ".beforeAllExecute")) {
+        plugin.beforeAllExecute(index, model, storage);
+      }
+
+      submitJob(job, plugin, execution);
+      JobsHelper.updateJobObjectsCount(plugin, model, (long) execution.objectsCount);
+      waitForResults(plugin, execution);
+
+      if (execution.stopping) {
+        state = JOB_STATE.STOPPED;
+      } else if (execution.inError) {
+        state = JOB_STATE.FAILED_TO_COMPLETE;
+      } else {
+        try (Tracing.Scope scope = Tracing.inJob(jobId);
+          Tracing.Span span = Tracing.start(Stage.PLUGIN, plugin.getClass().getSimpleName() + ".afterAllExecute")) {
+          plugin.afterAllExecute(index, model, storage);
+        }
+        JobsHelper.cleanJobObjects(job, model, index);
+      }
+    } catch (RODAException | RuntimeException | InterruptedException e) {
+      if (execution.stopping) {
+        state = JOB_STATE.STOPPED;
+      } else {
+        LOGGER.error("Error executing job '{}' ({}) in the cluster", job.getName(), jobId, e);
+        state = JOB_STATE.FAILED_TO_COMPLETE;
+        stateDetails = Optional.of(e.getClass().getName() + ": " + e.getMessage());
+      }
+    } finally {
+      execution.cancel(pendingWork);
+    }
+
+    LOGGER.info("Setting job '{}' ({}) state to {}", job.getName(), jobId, state);
+    JobsHelper.updateJobState(plugin, model, state, stateDetails);
+    JobsHelper.deleteJobWorkingDirectory(jobId);
+    runningJobs.remove(jobId);
+  }
+
+  private <T extends IsRODAObject> void submitJob(Job job, Plugin<T> plugin, JobExecution execution)
+    throws RODAException {
+    SelectedItems<?> sourceObjects = job.getSourceObjects();
+    if (sourceObjects instanceof SelectedItemsAll<?>) {
+      Class<IsRODAObject> objectClass = JobsHelper.getSelectedClassFromString(sourceObjects.getSelectedClass());
+      runPluginOnAllObjects(execution, plugin, (Class<T>) objectClass);
+    } else if (sourceObjects instanceof SelectedItemsNone<?>) {
+      runPlugin(execution, plugin);
+    } else if (sourceObjects instanceof SelectedItemsList<?>) {
+      Class<IsRODAObject> objectClass = JobsHelper.getSelectedClassFromString(sourceObjects.getSelectedClass());
+      runPluginOnObjects(execution, plugin, (Class<T>) ModelUtils.giveRespectiveModelClass(objectClass),
+        ((SelectedItemsList<?>) sourceObjects).getIds());
+    } else if (sourceObjects instanceof SelectedItemsFilter<?>) {
+      Class<IsIndexed> objectClass = JobsHelper.getIsIndexedSelectedClassFromString(sourceObjects.getSelectedClass());
+      runPluginFromIndex(execution, objectClass, ((SelectedItemsFilter<?>) sourceObjects).getFilter(), plugin);
+    }
+    if (execution.inError) {
+      throw new GenericException("Could not submit all the work of the job to the cluster");
+    }
+  }
+
+  /**
+   * Waits for the results of the work of the job, updating the job
+   * information as they arrive. Work that failed in every attempt counts as
+   * objects processed with failure and sets the job in error.
+   */
+  private <T extends IsRODAObject> void waitForResults(Plugin<T> plugin, JobExecution execution)
+    throws InterruptedException {
+    SimpleJobPluginInfo jobPluginInfo = new SimpleJobPluginInfo();
+    jobPluginInfo.setSourceObjectsCount(execution.objectsCount);
+
+    for (Map.Entry<String, CompletableFuture<Object>> work : execution.work.entrySet()) {
+      Object result;
+      try {
+        result = work.getValue().get();
+      } catch (CancellationException e) {
+        // the job is stopping
+        return;
+      } catch (ExecutionException e) {
+        result = new Master.WorkFailure(e.getMessage());
+      }
+
+      if (result instanceof JobPluginInfo) {
+        jobPluginInfo.incrementObjectsProcessedWithSuccess(
+          ((JobPluginInfo) result).getSourceObjectsProcessedWithSuccess());
+        jobPluginInfo.incrementObjectsProcessedWithFailure(
+          ((JobPluginInfo) result).getSourceObjectsProcessedWithFailure());
+      } else if (result instanceof Master.WorkFailure) {
+        jobPluginInfo.incrementObjectsProcessedWithFailure(execution.workSize.get(work.getKey()));
+        execution.inError = true;
+        JobsHelper.updateJobStateDetails(plugin, model, Optional.of(((Master.WorkFailure) result).reason));
+      }
+
+      jobPluginInfo.setCompletionPercentage(execution.objectsCount == 0 ? 100
+        : Math.round(((jobPluginInfo.getSourceObjectsProcessedWithSuccess()
+          + jobPluginInfo.getSourceObjectsProcessedWithFailure()) * 100) / execution.objectsCount));
+      JobsHelper.updateJobInformation(plugin, model, jobPluginInfo);
+    }
+
+    jobPluginInfo.finalizeInfo();
+    JobsHelper.updateJobInformation(plugin, model, jobPluginInfo);
   }
 
   @Override
-  public <T extends IsRODAObject> void runPlugin(Object context, Plugin<T> plugin) {
-    // do nothing
+  public <T extends IsRODAObject, T1 extends IsIndexed> void runPluginFromIndex(Object context, Class<T1> classToActOn,
+    Filter filter, Plugin<T> plugin) {
+    LOGGER.info("Starting {} in the cluster", plugin.getName());
+    BlockSubmitter<T> submitter = new BlockSubmitter<>(context, plugin,
+      (Class<T>) ModelUtils.giveRespectiveModelClass(classToActOn));
+    int blockSize = JobsHelper.getBlockSize(plugin);
+
+    try (IterableIndexResult<T1> result = index.findAll(classToActOn, filter,
+      SolrUtils.getClassLiteFields(classToActOn))) {
+      List<T1> indexObjects = new ArrayList<>();
+      for (T1 indexObject : result) {
+        indexObjects.add(indexObject);
+        if (indexObjects.size() == blockSize) {
+          submitter.addAll(JobsHelper.getObjectsFromIndexObjects(model, submitter.objectClass, indexObjects));
+          indexObjects = new ArrayList<>();
+        }
+      }
+      if (!indexObjects.isEmpty()) {
+        submitter.addAll(JobsHelper.getObjectsFromIndexObjects(model, submitter.objectClass, indexObjects));
+      }
+      submitter.flush();
+    } catch (RODAException | IOException e) {
+      LOGGER.error("Error running plugin from index ({}) in the cluster", classToActOn.getSimpleName(), e);
+      submitter.failed(e);
+    }
   }
 
   @Override
-  public void executeJob(Job job, boolean async) throws JobAlreadyStartedException {
-    // do nothing
+  public <T extends IsRODAObject> void runPlugin(Object context, Plugin<T> plugin) {
+    LOGGER.info("Starting {} in the cluster", plugin.getName());
+    BlockSubmitter<T> submitter = new BlockSubmitter<>(context, plugin, null);
+    try {
+      submitter.submit(Collections.emptyList(), null);
+    } catch (GenericException e) {
+      LOGGER.error("Error running plugin in the cluster", e);
+      submitter.failed(e);
+    }
   }
 
   @Override
   public void stopJobAsync(Job job) {
-    // do nothing
+    JobExecution execution = runningJobs.get(job.getId());
+    if (execution != null) {
+      // the work already given to the workers is not interrupted
+      JobsHelper.updateJobState(job, model, JOB_STATE.STOPPING, Optional.empty());
+      execution.stopping = true;
+      execution.cancel(pendingWork);
+    }
   }
 
   @Override
   public void cleanUnfinishedJobsAsync() {
-    // do nothing
+    JobsHelper.cleanUnfinishedJobs(model, index);
   }
 
   @Override
@@ -172,47 +471,236 @@ public class AkkaDistributedPluginOrchestrator extends AkkaDistributedPlugin imp
   @Override
   public <T extends IsRODAObject> void updateJobInformationAsync(Plugin<T> plugin, JobPluginInfo jobPluginInfo)
     throws JobException {
-    // do nothing
+    // do nothing, the job information is updated with the results of its work
   }
 
   @Override
   public <T extends IsRODAObject> void updateJobAsync(Plugin<T> plugin, JobPartialUpdate partialUpdate) {
-    // do nothing
+    if (partialUpdate instanceof JobStateUpdated) {
+      if (((JobStateUpdated) partialUpdate).getState() == JOB_STATE.FAILED_TO_COMPLETE) {
+        setJobInError(PluginHelper.getJobId(plugin));
+      }
+      JobsHelper.updateJobStateDetails(plugin, model, ((JobStateUpdated) partialUpdate).getStateDatails());
+    } else if (partialUpdate instanceof JobStateDetailsUpdated) {
+      JobsHelper.updateJobStateDetails(plugin, model, ((JobStateDetailsUpdated) partialUpdate).getStateDatails());
+    }
   }
 
   @Override
   public <T extends IsRODAObject> void runPluginOnAllObjects(Object context, Plugin<T> plugin, Class<T> objectClass) {
-    // do nothing
+    LOGGER.info("Starting {} in the cluster", plugin.getName());
+    BlockSubmitter<T> submitter = new BlockSubmitter<>(context, plugin, objectClass);
+
+    try (CloseableIterable<OptionalWithCause<LiteRODAObject>> objects = model.listLite(objectClass)) {
+      for (OptionalWithCause<LiteRODAObject> lite : objects) {
+        if (lite.isPresent()) {
+          OptionalWithCause<T> object = LiteRODAObjectFactory.get(model, lite.get());
+          if (object.isPresent()) {
+            submitter.add(object.get());
+          } else {
+            LOGGER.error("Cannot process object", object.getCause());
+          }
+        } else {
+          LOGGER.error("Cannot process object", lite.getCause());
+        }
+      }
+      submitter.flush();
+    } catch (RODAException | IOException e) {
+      LOGGER.error("Error running plugin on all objects ({}) in the cluster", objectClass.getSimpleName(), e);
+      submitter.failed(e);
+    }
   }
 
+  /**
+   * Splits the objects in blocks (of the plugin block size) of objects in the
+   * same storage locality and submits them to the cluster, to be done by the
+   * workers of that locality.
+   */
   @Override
   public <T extends IsRODAObject> void runPluginOnObjects(Object context, Plugin<T> plugin, Class<T> objectClass,
     List<String> uuids) {
-    // do nothing
+    LOGGER.info("Starting {} in the cluster", plugin.getName());
+    BlockSubmitter<T> submitter = new BlockSubmitter<>(context, plugin, objectClass);
+    int blockSize = JobsHelper.getBlockSize(plugin);
+
+    try {
+      for (int i = 0; i < uuids.size(); i += blockSize) {
+        submitter.addAll(JobsHelper.getObjectsFromUUID(model, index, objectClass,
+          uuids.subList(i, Math.min(i + blockSize, uuids.size()))));
+      }
+      submitter.flush();
+    } catch (RODAException e) {
+      LOGGER.error("Error running plugin on RODA Objects ({}) in the cluster", objectClass.getSimpleName(), e);
+      submitter.failed(e);
+    }
+  }
+
+  private static String getUUID(IsRODAObject object) {
+    if (object instanceof Representation) {
+      return IdUtils.getRepresentationId((Representation) object);
+    } else if (object instanceof File) {
+      return IdUtils.getFileId((File) object);
+    } else if (object instanceof IsIndexed) {
+      return ((IsIndexed) object).getUUID();
+    } else {
+      return object.getId();
+    }
+  }
+
+  /**
+   * Sends the block to the master (through the frontend), waiting until it is
+   * accepted, and adds its work to the job execution (if any).
+   */
+  private void submit(PluginBlock block, String locality, JobExecution execution) throws GenericException {
+    Work work = new Work(IdUtils.createUUID(), block, locality);
+    CompletableFuture<Object> result = new CompletableFuture<>();
+    // registered before submitting, as the result may arrive before the ack
+    pendingWork.put(work.workId, result);
+    Timeout timeout = new Timeout(JobsHelper.getSyncTimeout(), TimeUnit.SECONDS);
+    try {
+      Object reply = Await.result(Patterns.ask(frontend, work, timeout), timeout.duration());
+      if (!(reply instanceof Frontend.Ok)) {
+        throw new GenericException("Work " + work.workId + " was not accepted by the master");
+      }
+    } catch (GenericException e) {
+      pendingWork.remove(work.workId);
+      throw e;
+    } catch (Exception e) {
+      pendingWork.remove(work.workId);
+      throw new GenericException("Error submitting work " + work.workId, e);
+    }
+
+    if (execution != null) {
+      execution.work.put(work.workId, result);
+      execution.workSize.put(work.workId, block.objectIds.size());
+      execution.objectsCount += block.objectIds.size();
+    } else {
+      // nobody waits for the result
+      pendingWork.remove(work.workId);
+    }
   }
 
   @Override
   public void setJobInError(String jobId) {
-    // do nothing
+    JobExecution execution = runningJobs.get(jobId);
+    if (execution != null) {
+      execution.inError = true;
+    }
   }
 
   @Override
   public void acquireObjectLock(List<String> lites, int timeoutInSeconds, boolean waitForLockIfLocked,
     String requestUuid) throws LockingException {
-    // TODO Auto-generated method stub
+    Timeout timeout = new Timeout(Duration.create(timeoutInSeconds, "seconds"));
+
+    if (StringUtils.isBlank(requestUuid)) {
+      throw new LockingException("One must provide valid (i.e. non blank) request uuid!");
+    }
 
+    Object result = null;
+    Future<Object> future = Patterns.ask(lockManager,
+      new ObjectLockManager.AcquireLock(lites, waitForLockIfLocked, timeoutInSeconds, requestUuid), timeout);
+    try {
+      result = Await.result(future, timeout.duration());
+    } catch (Exception e) {
+      LOGGER.error("Unable to acquire locks for the objects being processed '{}'", lites, e);
+      throw new AcquireLockTimeoutException("Unable to acquire locks for the objects being processed '" + lites + "'");
+    }
+
+    if (result instanceof ObjectLockManager.NotLockable) {
+      throw new NotLockableAtTheTimeException(
+        "Not lockable at the time due to requester not willing to await to obtain the lock!");
+    }
   }
 
   @Override
   public void releaseObjectLockAsync(List<String> lites, String requestUuid) {
-    // TODO Auto-generated method stub
-
+    lockManager.tell(new ObjectLockManager.ReleaseLock(lites, requestUuid), ActorRef.noSender());
   }
 
   @Override
   public void releaseAllObjectLocksAsync() {
-    // TODO Auto-generated method stub
+    lockManager.tell(ObjectLockManager.ReleaseAllLocks.INSTANCE, ActorRef.noSender());
+  }
+
+  /**
+   * Work submitted for a job being executed in this node.
+   */
+  private static final class JobExecution {
+    /** Result of each work, by work id */
+    private final Map<String, CompletableFuture<Object>> work = new ConcurrentHashMap<>();
+    /** Number of objects of each work, by work id */
+    private final Map<String, Integer> workSize = new ConcurrentHashMap<>();
+    private int objectsCount = 0;
+    private volatile boolean stopping = false;
+    private volatile boolean inError = false;
+
+    private void cancel(Map<String, CompletableFuture<Object>> pendingWork) {
+      for (Map.Entry<String, CompletableFuture<Object>> entry : work.entrySet()) {
+        pendingWork.remove(entry.getKey());
+        entry.getValue().cancel(false);
+      }
+    }
+  }
+
+  /**
+   * Groups the objects in blocks of the same storage locality, submitting
+   * each block when it is full. If the context is a {@link JobExecution}, the
+   * work is added to it.
+   */
+  private final class BlockSubmitter<T extends IsRODAObject> {
+    private final JobExecution execution;
+    private final Plugin<T> plugin;
+    private final Class<T> objectClass;
+    private final int blockSize;
+    private final Path storagePath = RodaCoreFactory.getStoragePath();
+    private final Map<String, List<String>> blocks = new HashMap<>();
+
+    private BlockSubmitter(Object context, Plugin<T> plugin, Class<T> objectClass) {
+      this.execution = context instanceof JobExecution ? (JobExecution) context : null;
+      this.plugin = plugin;
+      this.objectClass = objectClass;
+      this.blockSize = JobsHelper.getBlockSize(plugin);
+    }
 
+    private void addAll(List<T> objects) throws GenericException {
+      for (T object : objects) {
+        add(object);
+      }
+    }
+
+    private void add(T object) throws GenericException {
+      String locality = WorkLocality.of(storagePath, object);
+      List<String> block = blocks.computeIfAbsent(locality, k -> new ArrayList<>());
+      block.add(getUUID(object));
+      if (block.size() == blockSize) {
+        submit(blocks.remove(locality), locality);
+      }
+    }
+
+    private void flush() throws GenericException {
+      for (Map.Entry<String, List<String>> block : new ArrayList<>(blocks.entrySet())) {
+        submit(block.getValue(), block.getKey());
+      }
+      blocks.clear();
+    }
+
+    private void submit(List<String> objectIds, String locality) throws GenericException {
+      if (execution != null && execution.stopping) {
+        throw new GenericException("Job is stopping");
+      }
+      AkkaDistributedPluginOrchestrator.this.submit(new PluginBlock(plugin.getClass().getName(),
+        plugin.getParameterValues(), objectClass == null ? null : objectClass.getName(), objectIds), locality,
+        execution);
+    }
+
+    private void failed(Exception e) {
+      if (execution != null) {
+        execution.inError = true;
+        JobsHelper.updateJobStateDetails(plugin, model,
+          Optional.of(e.getClass().getName() + ": " + e.getMessage()));
+      }
+    }
   }
 
 }
@@ -7,7 +7,6 @@
  */
 package org.roda.core.plugins.orchestrate;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -24,10 +23,7 @@ import org.roda.core.common.akka.Messages;
 import org.roda.core.common.akka.Messages.JobPartialUpdate;
 import org.roda.core.common.akka.Messages.JobStateUpdated;
 import org.roda.core.common.iterables.CloseableIterable;
-import org.roda.core.data.common.RodaConstants;
 import org.roda.core.data.exceptions.AcquireLockTimeoutException;
-import org.roda.core.data.exceptions.AuthorizationDeniedException;
-import org.roda.core.data.exceptions.GenericException;
 import org.roda.core.data.exceptions.InvalidParameterException;
 import org.roda.core.data.exceptions.JobAlreadyStartedException;
 import org.roda.core.data.exceptions.JobException;
@@ -36,14 +32,12 @@ import org.roda.core.data.exceptions.JobIsStoppingException;
 import org.roda.core.data.exceptions.LockingException;
 import org.roda.core.data.exceptions.NotFoundException;
 import org.roda.core.data.exceptions.NotLockableAtTheTimeException;
-import org.roda.core.data.exceptions.RequestNotValidException;
 import org.roda.core.data.v2.IsRODAObject;
 import org.roda.core.data.v2.LiteOptionalWithCause;
 import org.roda.core.data.v2.LiteRODAObject;
 import org.roda.core.data.v2.common.OptionalWithCause;
 import org.roda.core.data.v2.index.IsIndexed;
 import org.roda.core.data.v2.index.filter.Filter;
-import org.roda.core.data.v2.index.select.SelectedItemsList;
 import org.roda.core.data.v2.jobs.Job;
 import org.roda.core.data.v2.jobs.Job.JOB_STATE;
 import org.roda.core.data.v2.jobs.PluginType;
@@ -57,11 +51,10 @@ import org.roda.core.plugins.Plugin;
 import org.roda.core.plugins.PluginOrchestrator;
 import org.roda.core.plugins.orchestrate.akka.AkkaJobsManager;
 import org.roda.core.plugins.plugins.PluginHelper;
-import org.roda.core.plugins.plugins.internal.CleanUnfinishedJobsPlugin;
-import org.roda.core.util.IdUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.Lists;
 import com.typesafe.config.Config;
 
 import akka.actor.ActorRef;
@@ -205,31 +198,32 @@ public class AkkaEmbeddedPluginOrchestrator implements PluginOrchestrator {
       ActorRef jobActor = (ActorRef) context;
       ActorRef jobStateInfoActor = getJobContextInformation(plugin);
       int blockSize = JobsHelper.getBlockSize(plugin);
-      List<T> objects = JobsHelper.getObjectsFromUUID(model, index, objectClass, uuids);
-      Iterator<T> iter = objects.iterator();
       Plugin<T> innerPlugin;
 
       jobStateInfoActor.tell(Messages.newPluginBeforeAllExecuteIsReady(plugin), jobActor);
 
-      List<T> block = new ArrayList<>();
-      while (iter.hasNext()) {
-        noObjectsOrchestrated = false;
-        if (block.size() == blockSize) {
-          innerPlugin = getNewPluginInstanceAndInitJobPluginInfo(plugin, objectClass, blockSize, jobActor);
-          jobStateInfoActor.tell(Messages.newPluginExecuteIsReady(innerPlugin,
-            LiteRODAObjectFactory.transformIntoLiteWithCause(model, block)), jobActor);
-          block = new ArrayList<>();
+      // objects are retrieved one block at a time, so that large selections are
+      // not all loaded before the first block is dispatched
+      for (List<String> blockUuids : Lists.partition(uuids, blockSize)) {
+        List<T> block;
+        try {
+          block = JobsHelper.getObjectsFromUUID(model, index, objectClass, blockUuids);
+        } catch (NotFoundException e) {
+          LOGGER.debug("None of the {} of a block could be retrieved", objectClass.getSimpleName(), e);
+          continue;
         }
-        block.add(iter.next());
-      }
 
-      if (!block.isEmpty()) {
+        noObjectsOrchestrated = false;
         innerPlugin = getNewPluginInstanceAndInitJobPluginInfo(plugin, objectClass, block.size(), jobActor);
         jobStateInfoActor.tell(
           Messages.newPluginExecuteIsReady(innerPlugin, LiteRODAObjectFactory.transformIntoLiteWithCause(model, block)),
           jobActor);
       }
 
+      if (noObjectsOrchestrated && !uuids.isEmpty()) {
+        throw new NotFoundException("Could not retrieve the " + objectClass.getSimpleName());
+      }
+
       jobStateInfoActor.tell(Messages.newJobInitEnded(getJobPluginInfo(plugin), noObjectsOrchestrated), jobActor);
 
     } catch (JobIsStoppingException | JobInErrorException e) {
@@ -411,33 +405,7 @@ public class AkkaEmbeddedPluginOrchestrator implements PluginOrchestrator {
 
   @Override
   public void cleanUnfinishedJobsAsync() {
-    List<String> unfinishedJobsIdsList = new ArrayList<>();
-    try (IterableIndexResult<Job> result = JobsHelper.findUnfinishedJobs(index)) {
-      // set all jobs state to TO_BE_CLEANED
-      for (Job job : result) {
-        unfinishedJobsIdsList.add(job.getId());
-        Job jobToUpdate = model.retrieveJob(job.getId());
-        jobToUpdate.setState(JOB_STATE.TO_BE_CLEANED);
-        model.createOrUpdateJob(jobToUpdate);
-      }
-
-      if (!unfinishedJobsIdsList.isEmpty()) {
-        // create job to clean the unfinished jobs
-        Job job = new Job();
-        job.setId(IdUtils.createUUID());
-        job.setName("Clean unfinished jobs during startup");
-        job.setSourceObjects(SelectedItemsList.create(Job.class, unfinishedJobsIdsList));
-        job.setPlugin(CleanUnfinishedJobsPlugin.class.getCanonicalName());
-        job.setPluginType(PluginType.INTERNAL);
-        job.setUsername(RodaConstants.ADMIN);
-
-        RodaCoreFactory.getModelService().createJob(job);
-        RodaCoreFactory.getPluginOrchestrator().executeJob(job, true);
-      }
-    } catch (JobAlreadyStartedException | GenericException | RequestNotValidException | NotFoundException
-      | AuthorizationDeniedException | IOException e) {
-      LOGGER.error("Error while creating Job for cleaning unfinished jobs", e);
-    }
+    JobsHelper.cleanUnfinishedJobs(model, index);
   }
 
   @Override
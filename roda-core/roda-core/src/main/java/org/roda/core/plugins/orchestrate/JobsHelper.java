@@ -27,6 +27,7 @@ import org.roda.core.data.common.RodaConstants.NodeType;
 import org.roda.core.data.exceptions.AuthorizationDeniedException;
 import org.roda.core.data.exceptions.GenericException;
 import org.roda.core.data.exceptions.InvalidParameterException;
+import org.roda.core.data.exceptions.JobAlreadyStartedException;
 import org.roda.core.data.exceptions.NotFoundException;
 import org.roda.core.data.exceptions.RODAException;
 import org.roda.core.data.exceptions.RequestNotValidException;
@@ -35,6 +36,7 @@ import org.roda.core.data.v2.index.IsIndexed;
 import org.roda.core.data.v2.index.filter.Filter;
 import org.roda.core.data.v2.index.filter.OneOfManyFilterParameter;
 import org.roda.core.data.v2.index.filter.SimpleFilterParameter;
+import org.roda.core.data.v2.index.select.SelectedItemsList;
 import org.roda.core.data.v2.ip.AIP;
 import org.roda.core.data.v2.ip.AIPState;
 import org.roda.core.data.v2.ip.File;
@@ -45,12 +47,15 @@ import org.roda.core.data.v2.ip.Representation;
 import org.roda.core.data.v2.jobs.Job;
 import org.roda.core.data.v2.jobs.Job.JOB_STATE;
 import org.roda.core.data.v2.jobs.JobStats;
+import org.roda.core.data.v2.jobs.PluginType;
 import org.roda.core.index.IndexService;
 import org.roda.core.index.utils.IterableIndexResult;
 import org.roda.core.model.ModelService;
 import org.roda.core.plugins.Plugin;
 import org.roda.core.plugins.plugins.PluginHelper;
+import org.roda.core.plugins.plugins.internal.CleanUnfinishedJobsPlugin;
 import org.roda.core.storage.fs.FSUtils;
+import org.roda.core.util.IdUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -406,6 +411,40 @@ public final class JobsHelper {
     return index.findAll(Job.class, filter, Collections.emptyList());
   }
 
+  /**
+   * Sets the unfinished jobs (e.g. of a previous execution of RODA) to be
+   * cleaned and starts a job to clean them.
+   */
+  public static void cleanUnfinishedJobs(ModelService model, IndexService index) {
+    List<String> unfinishedJobsIdsList = new ArrayList<>();
+    try (IterableIndexResult<Job> result = findUnfinishedJobs(index)) {
+      // set all jobs state to TO_BE_CLEANED
+      for (Job job : result) {
+        unfinishedJobsIdsList.add(job.getId());
+        Job jobToUpdate = model.retrieveJob(job.getId());
+        jobToUpdate.setState(JOB_STATE.TO_BE_CLEANED);
+        model.createOrUpdateJob(jobToUpdate);
+      }
+
+      if (!unfinishedJobsIdsList.isEmpty()) {
+        // create job to clean the unfinished jobs
+        Job job = new Job();
+        job.setId(IdUtils.createUUID());
+        job.setName("Clean unfinished jobs during startup");
+        job.setSourceObjects(SelectedItemsList.create(Job.class, unfinishedJobsIdsList));
+        job.setPlugin(CleanUnfinishedJobsPlugin.class.getCanonicalName());
+        job.setPluginType(PluginType.INTERNAL);
+        job.setUsername(RodaConstants.ADMIN);
+
+        model.createJob(job);
+        RodaCoreFactory.getPluginOrchestrator().executeJob(job, true);
+      }
+    } catch (JobAlreadyStartedException | GenericException | RequestNotValidException | NotFoundException
+      | AuthorizationDeniedException | IOException e) {
+      LOGGER.error("Error while creating Job for cleaning unfinished jobs", e);
+    }
+  }
+
   public static void cleanJobObjects(Job job, ModelService model, IndexService index) {
     if (RodaCoreFactory.getNodeType() == NodeType.MASTER) {
       // find all AIPs that should be removed
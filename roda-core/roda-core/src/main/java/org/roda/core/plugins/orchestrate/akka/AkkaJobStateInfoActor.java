@@ -12,6 +12,8 @@ import java.util.Optional;
 
 import org.roda.core.common.akka.AkkaBaseActor;
 import org.roda.core.common.akka.Messages;
+import org.roda.core.common.tracing.Tracing;
+import org.roda.core.common.tracing.Tracing.Stage;
 import org.roda.core.data.exceptions.AuthorizationDeniedException;
 import org.roda.core.data.exceptions.GenericException;
 import org.roda.core.data.exceptions.JobException;
@@ -238,7 +240,11 @@ public class AkkaJobStateInfoActor extends AkkaBaseActor {
     Messages.PluginBeforeAllExecuteIsReady message = (Messages.PluginBeforeAllExecuteIsReady) msg;
     markMessageProcessingAsStarted(message);
     try {
-      message.getPlugin().beforeAllExecute(getIndex(), getModel(), getStorage());
+      try (Tracing.Scope scope = Tracing.inJob(PluginHelper.getJobId(plugin));
+        Tracing.Span span = Tracing.start(Stage.PLUGIN,
+          message.getPlugin().getClass().getSimpleName() + ".beforeAllExecute")) {
+        message.getPlugin().beforeAllExecute(getIndex(), getModel(), getStorage());
+      }
       // do nothing because if all goes good, the next messages are of type
       // PluginExecuteIsReady
     } catch (Throwable e) {
@@ -11,11 +11,14 @@ import java.util.List;
 
 import org.roda.core.common.akka.AkkaBaseActor;
 import org.roda.core.common.akka.Messages;
+import org.roda.core.common.tracing.Tracing;
+import org.roda.core.common.tracing.Tracing.Stage;
 import org.roda.core.data.v2.IsRODAObject;
 import org.roda.core.data.v2.LiteOptionalWithCause;
 import org.roda.core.index.IndexService;
 import org.roda.core.model.ModelService;
 import org.roda.core.plugins.Plugin;
+import org.roda.core.plugins.plugins.PluginHelper;
 import org.roda.core.storage.StorageService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -53,7 +56,10 @@ public class AkkaWorkerActor extends AkkaBaseActor {
     message.logProcessingStarted();
     Plugin<IsRODAObject> messagePlugin = message.getPlugin();
     try {
-      messagePlugin.execute(index, model, storage, objectsToBeProcessed);
+      try (Tracing.Scope scope = Tracing.inJob(PluginHelper.getJobId(messagePlugin));
+        Tracing.Span span = Tracing.start(Stage.PLUGIN, messagePlugin.getClass().getSimpleName() + ".execute")) {
+        messagePlugin.execute(index, model, storage, objectsToBeProcessed);
+      }
       getSender().tell(Messages.newPluginExecuteIsDone(messagePlugin, false), getSelf());
     } catch (Throwable e) {
       // 20170120 hsilva: it is required to catch Throwable as there are some
@@ -81,7 +87,10 @@ public class AkkaWorkerActor extends AkkaBaseActor {
     message.logProcessingStarted();
     Plugin<?> plugin = message.getPlugin();
     try {
-      plugin.afterAllExecute(index, model, storage);
+      try (Tracing.Scope scope = Tracing.inJob(PluginHelper.getJobId(plugin));
+        Tracing.Span span = Tracing.start(Stage.PLUGIN, plugin.getClass().getSimpleName() + ".afterAllExecute")) {
+        plugin.afterAllExecute(index, model, storage);
+      }
       getSender().tell(Messages.newPluginAfterAllExecuteIsDone(plugin, false), getSelf());
     } catch (Throwable e) {
       // 20170120 hsilva: it is required to catch Throwable as there are some
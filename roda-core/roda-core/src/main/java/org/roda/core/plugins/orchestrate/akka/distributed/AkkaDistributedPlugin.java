@@ -7,7 +7,12 @@
  */
 package org.roda.core.plugins.orchestrate.akka.distributed;
 
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.roda.core.RodaCoreFactory;
 import org.roda.core.index.IndexService;
@@ -15,7 +20,14 @@ import org.roda.core.model.ModelService;
 import org.roda.core.plugins.Plugin;
 import org.roda.core.storage.StorageService;
 
+import scala.concurrent.duration.Duration;
+import scala.concurrent.duration.FiniteDuration;
+
 public class AkkaDistributedPlugin {
+  public static final String SYSTEM_NAME = "ClusterSystem";
+  public static final int DEFAULT_WORK_TIMEOUT_IN_SECONDS = 10;
+  public static final int DEFAULT_LOCK_TIMEOUT_IN_SECONDS = 600;
+
   private final StorageService storage;
   private final ModelService model;
   private final IndexService index;
@@ -38,6 +50,54 @@ public class AkkaDistributedPlugin {
     return index;
   }
 
+  /**
+   * Time without heartbeats after which the work of a worker is given to
+   * other workers.
+   */
+  public static FiniteDuration getWorkTimeout() {
+    return Duration.create(RodaCoreFactory.getRodaConfigurationAsInt(DEFAULT_WORK_TIMEOUT_IN_SECONDS, "core",
+      "orchestrator", "distributed", "work_timeout"), TimeUnit.SECONDS);
+  }
+
+  public static int getSnapshotInterval() {
+    return RodaCoreFactory.getRodaConfigurationAsInt(Master.DEFAULT_SNAPSHOT_INTERVAL, "core", "orchestrator",
+      "distributed", "snapshot_interval");
+  }
+
+  /**
+   * Number of times a work is given to a worker before its failure is
+   * reported.
+   */
+  public static int getMaxAttempts() {
+    return RodaCoreFactory.getRodaConfigurationAsInt(Master.DEFAULT_MAX_ATTEMPTS, "core", "orchestrator",
+      "distributed", "max_attempts");
+  }
+
+  /**
+   * Time after which an object lock that was not released is released.
+   */
+  public static FiniteDuration getLockTimeout() {
+    return Duration.create(RodaCoreFactory.getRodaConfigurationAsInt(DEFAULT_LOCK_TIMEOUT_IN_SECONDS, "core",
+      "orchestrator", "lock_timeout"), TimeUnit.SECONDS);
+  }
+
+  /**
+   * Storage localities of this node: the configured ones or, by default, the
+   * volume of the local storage.
+   */
+  public static Set<String> getLocalities() {
+    Set<String> localities = new HashSet<>(
+      RodaCoreFactory.getRodaConfigurationAsList("core", "orchestrator", "distributed", "localities"));
+    Path storagePath = RodaCoreFactory.getStoragePath();
+    if (localities.isEmpty() && storagePath != null) {
+      String locality = WorkLocality.of(storagePath);
+      if (locality != null) {
+        localities.add(locality);
+      }
+    }
+    return Collections.unmodifiableSet(localities);
+  }
+
   public class PluginMessage<T> {
     private List<? extends T> list;
     private Plugin<? extends T> plugin;
@@ -7,6 +7,8 @@
  */
 package org.roda.core.plugins.orchestrate.akka.distributed;
 
+import java.util.Set;
+
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
 
@@ -15,6 +17,7 @@ import akka.actor.ActorSystem;
 import akka.actor.Props;
 import akka.cluster.client.ClusterClient;
 import akka.cluster.client.ClusterClientSettings;
+import scala.concurrent.duration.FiniteDuration;
 
 public class AkkaDistributedPluginWorker extends AkkaDistributedPlugin {
   // INFO this uses a single threaded worker (as opposite to
@@ -24,22 +27,45 @@ public class AkkaDistributedPluginWorker extends AkkaDistributedPlugin {
   private ActorRef worker;
 
   public AkkaDistributedPluginWorker(String clusterHostname, String clusterPort, String hostname, String port) {
-    super();
+    this(ActorSystem.create("WorkerSystem", createConfig(clusterHostname, clusterPort, hostname, port)),
+      getLocalities(), getWorkTimeout());
+  }
 
-    String clusterSystemName = "ClusterSystem";
-    String clusterSystemPath = clusterSystemName + "@" + clusterHostname + ":" + clusterPort;
+  /**
+   * Starts a worker in the given actor system (which must be configured with
+   * the cluster client initial contacts), e.g. to have several workers in the
+   * same JVM.
+   *
+   * @param localities
+   *          storage localities the worker has local access to
+   * @param workTimeout
+   *          the work timeout of the master, the worker sends heartbeats at a
+   *          third of it
+   */
+  public AkkaDistributedPluginWorker(ActorSystem workerSystem, Set<String> localities, FiniteDuration workTimeout) {
+    super();
+    this.workerSystem = workerSystem;
+    clusterClient = workerSystem.actorOf(ClusterClient.props(ClusterClientSettings.create(workerSystem)),
+      "clusterClient");
+    worker = workerSystem.actorOf(
+      Worker.props(clusterClient, Props.create(WorkExecutor.class), workTimeout.div(3), localities), "worker");
+  }
 
-    Config conf = ConfigFactory.parseString("akka.remote.netty.tcp.hostname=" + hostname)
+  private static Config createConfig(String clusterHostname, String clusterPort, String hostname, String port) {
+    String clusterSystemPath = SYSTEM_NAME + "@" + clusterHostname + ":" + clusterPort;
+    return ConfigFactory.parseString("akka.remote.netty.tcp.hostname=" + hostname)
       .withFallback(ConfigFactory.parseString("akka.remote.netty.tcp.port=" + port))
       .withFallback(ConfigFactory.parseString(
         "akka.cluster.client.initial-contacts=[\"akka.tcp://" + clusterSystemPath + "/system/receptionist\"]"))
       .withFallback(ConfigFactory.load("config/orchestrator/worker"));
+  }
 
-    workerSystem = ActorSystem.create("WorkerSystem", conf);
+  public ActorSystem getWorkerSystem() {
+    return workerSystem;
+  }
 
-    clusterClient = workerSystem.actorOf(ClusterClient.props(ClusterClientSettings.create(workerSystem)),
-      "clusterClient");
-    worker = workerSystem.actorOf(Worker.props(clusterClient, Props.create(WorkExecutor.class)), "worker");
+  public ActorRef getWorker() {
+    return worker;
   }
 
 }
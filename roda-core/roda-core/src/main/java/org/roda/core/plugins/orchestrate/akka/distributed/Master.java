@@ -9,8 +9,10 @@ package org.roda.core.plugins.orchestrate.akka.distributed;
 
 import java.io.Serializable;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 
 import org.roda.core.plugins.orchestrate.akka.distributed.MasterWorkerProtocol.RegisterWorker;
 import org.roda.core.plugins.orchestrate.akka.distributed.MasterWorkerProtocol.WorkFailed;
@@ -34,32 +36,70 @@ import akka.cluster.pubsub.DistributedPubSubMediator;
 import akka.event.Logging;
 import akka.event.LoggingAdapter;
 import akka.japi.Procedure;
+import akka.persistence.DeleteMessagesFailure;
+import akka.persistence.DeleteMessagesSuccess;
+import akka.persistence.DeleteSnapshotsFailure;
+import akka.persistence.DeleteSnapshotsSuccess;
+import akka.persistence.RecoveryCompleted;
+import akka.persistence.SaveSnapshotFailure;
+import akka.persistence.SaveSnapshotSuccess;
+import akka.persistence.SnapshotOffer;
+import akka.persistence.SnapshotSelectionCriteria;
 import akka.persistence.UntypedPersistentActor;
 import scala.collection.JavaConversions;
 import scala.concurrent.duration.Deadline;
 import scala.concurrent.duration.FiniteDuration;
 
+/**
+ * Keeps the work to be done (e.g. plugin blocks) and hands it to the workers
+ * that ask for it, preferring the workers that have local access to the
+ * storage locality of the work (see {@link Work#locality}).
+ *
+ * The work state is persisted as {@link WorkDomainEvent}s and a snapshot of it
+ * is saved every {@code snapshotInterval} events, so that recovery only
+ * replays the events after the last snapshot. Work of workers that stop
+ * sending heartbeats for longer than {@code workTimeout} is given to other
+ * workers. Work that fails is given to a worker again until it has failed
+ * {@code maxAttempts} times, then its result is a {@link WorkFailure}.
+ */
 public class Master extends UntypedPersistentActor {
 
   public static final String RESULTS_TOPIC = "results";
+  public static final int DEFAULT_SNAPSHOT_INTERVAL = 1000;
+  public static final int DEFAULT_MAX_ATTEMPTS = 3;
 
   private final FiniteDuration workTimeout;
+  private final int snapshotInterval;
+  private final int maxAttempts;
   private final ActorRef mediator = DistributedPubSub.get(getContext().system()).mediator();
   private final LoggingAdapter log = Logging.getLogger(getContext().system(), this);
   private final Cancellable cleanupTask;
 
   private HashMap<String, WorkerState> workers = new HashMap<>();
   private WorkState workState = new WorkState();
+  private int eventsSinceSnapshot = 0;
+  /** Work in progress when the master was recovered, by deadline to be done. */
+  private Map<String, Deadline> recoveredWorkInProgress = new HashMap<>();
 
-  public Master(FiniteDuration workTimeout) {
+  public Master(FiniteDuration workTimeout, int snapshotInterval, int maxAttempts) {
     this.workTimeout = workTimeout;
+    this.snapshotInterval = Math.max(1, snapshotInterval);
+    this.maxAttempts = Math.max(1, maxAttempts);
     ClusterClientReceptionist.get(getContext().system()).registerService(getSelf());
     this.cleanupTask = getContext().system().scheduler().schedule(workTimeout.div(2), workTimeout.div(2), getSelf(),
       CleanupTick, getContext().dispatcher(), getSelf());
   }
 
   public static Props props(FiniteDuration workTimeout) {
-    return Props.create(Master.class, workTimeout);
+    return props(workTimeout, DEFAULT_SNAPSHOT_INTERVAL);
+  }
+
+  public static Props props(FiniteDuration workTimeout, int snapshotInterval) {
+    return props(workTimeout, snapshotInterval, DEFAULT_MAX_ATTEMPTS);
+  }
+
+  public static Props props(FiniteDuration workTimeout, int snapshotInterval, int maxAttempts) {
+    return Props.create(Master.class, workTimeout, snapshotInterval, maxAttempts);
   }
 
   @Override
@@ -67,11 +107,19 @@ public class Master extends UntypedPersistentActor {
     cleanupTask.cancel();
   }
 
+  private Set<String> getServedLocalities() {
+    Set<String> localities = new HashSet<>();
+    for (WorkerState state : workers.values()) {
+      localities.addAll(state.localities);
+    }
+    return localities;
+  }
+
   private void notifyWorkers() {
     if (workState.hasWork()) {
-      // could pick a few random instead of all
+      Set<String> servedLocalities = getServedLocalities();
       for (WorkerState state : workers.values()) {
-        if (state.status.isIdle())
+        if (state.status.isIdle() && workState.nextWork(state.localities, servedLocalities) != null)
           state.ref.tell(WorkIsReady.getInstance(), getSelf());
       }
     }
@@ -150,18 +198,23 @@ public class Master extends UntypedPersistentActor {
   private static final class WorkerState {
     public final ActorRef ref;
     public final WorkerStatus status;
+    public final Set<String> localities;
+    /** Deadline for the next heartbeat of the worker. */
+    public final Deadline heartbeatDeadline;
 
-    private WorkerState(ActorRef ref, WorkerStatus status) {
+    private WorkerState(ActorRef ref, WorkerStatus status, Set<String> localities, Deadline heartbeatDeadline) {
       this.ref = ref;
       this.status = status;
+      this.localities = localities;
+      this.heartbeatDeadline = heartbeatDeadline;
     }
 
-    private WorkerState copyWithRef(ActorRef ref) {
-      return new WorkerState(ref, this.status);
+    private WorkerState copyWithHeartbeat(ActorRef ref, Set<String> localities, Deadline heartbeatDeadline) {
+      return new WorkerState(ref, this.status, localities, heartbeatDeadline);
     }
 
     private WorkerState copyWithStatus(WorkerStatus status) {
-      return new WorkerState(this.ref, status);
+      return new WorkerState(this.ref, status, this.localities, this.heartbeatDeadline);
     }
 
     @Override
@@ -190,7 +243,7 @@ public class Master extends UntypedPersistentActor {
 
     @Override
     public String toString() {
-      return "WorkerState{" + "ref=" + ref + ", status=" + status + '}';
+      return "WorkerState{" + "ref=" + ref + ", status=" + status + ", localities=" + localities + '}';
     }
   }
 
@@ -205,15 +258,25 @@ public class Master extends UntypedPersistentActor {
     private static final long serialVersionUID = -6540053444379684588L;
     public final String workId;
     public final Object job;
+    /**
+     * Storage locality (volume) of the objects of the work, or
+     * <code>null</code> if any worker can do it equally well.
+     */
+    public final String locality;
 
     public Work(String workId, Object job) {
+      this(workId, job, null);
+    }
+
+    public Work(String workId, Object job, String locality) {
       this.workId = workId;
       this.job = job;
+      this.locality = locality;
     }
 
     @Override
     public String toString() {
-      return "Work{" + "workId='" + workId + '\'' + ", job=" + job + '}';
+      return "Work{" + "workId='" + workId + '\'' + ", job=" + job + ", locality=" + locality + '}';
     }
   }
 
@@ -234,6 +297,24 @@ public class Master extends UntypedPersistentActor {
     }
   }
 
+  /**
+   * Result of a work that failed in every attempt.
+   */
+  public static final class WorkFailure implements Serializable {
+    private static final long serialVersionUID = 4402478630245290218L;
+
+    public final String reason;
+
+    public WorkFailure(String reason) {
+      this.reason = reason;
+    }
+
+    @Override
+    public String toString() {
+      return "WorkFailure{" + "reason='" + reason + '\'' + '}';
+    }
+  }
+
   public static final class Ack implements Serializable {
     private static final long serialVersionUID = 2755321297242195103L;
     final String workId;
@@ -250,9 +331,20 @@ public class Master extends UntypedPersistentActor {
 
   @Override
   public void onReceiveRecover(Object arg0) throws Exception {
-    if (arg0 instanceof WorkDomainEvent) {
-      workState = workState.updated((WorkDomainEvent) arg0);
-      log.info("Replayed {}", arg0.getClass().getSimpleName());
+    if (arg0 instanceof SnapshotOffer) {
+      workState = (WorkState) ((SnapshotOffer) arg0).snapshot();
+      log.info("Recovered work state from snapshot: {}", workState);
+    } else if (arg0 instanceof WorkDomainEvent) {
+      workState.update((WorkDomainEvent) arg0);
+      eventsSinceSnapshot++;
+      log.debug("Replayed {}", arg0.getClass().getSimpleName());
+    } else if (arg0 instanceof RecoveryCompleted) {
+      log.info("Recovered work state: {}", workState);
+      // the workers of the work in progress are unknown, so if they do not
+      // report it done in time it is given to other workers
+      for (String workId : workState.getWorkInProgressIds()) {
+        recoveredWorkInProgress.put(workId, workTimeout.fromNow());
+      }
     }
   }
 
@@ -267,16 +359,41 @@ public class Master extends UntypedPersistentActor {
 
   }
 
+  /**
+   * Persists the event and, after it is persisted, updates the work state and
+   * calls the handler.
+   */
+  private <E extends WorkDomainEvent> void persistEvent(E event, Procedure<E> handler) {
+    persist(event, new Procedure<E>() {
+      @Override
+      public void apply(E persisted) throws Exception {
+        workState.update(persisted);
+        handler.apply(persisted);
+        eventsSinceSnapshot++;
+        if (eventsSinceSnapshot >= snapshotInterval) {
+          eventsSinceSnapshot = 0;
+          saveSnapshot(workState.copy());
+        }
+      }
+    });
+  }
+
   @Override
   public void onReceiveCommand(Object cmd) throws Exception {
     if (cmd instanceof RegisterWorker) {
       String workerId = ((RegisterWorker) cmd).workerId;
+      Set<String> localities = ((RegisterWorker) cmd).localities;
       if (workers.containsKey(workerId)) {
-        workers.put(workerId, workers.get(workerId).copyWithRef(getSender()));
+        WorkerState state = workers.get(workerId).copyWithHeartbeat(getSender(), localities, workTimeout.fromNow());
+        if (state.status.isBusy()) {
+          // the worker is alive, so it is still working
+          state = state.copyWithStatus(new Busy(state.status.getWorkId(), workTimeout.fromNow()));
+        }
+        workers.put(workerId, state);
       } else {
-        log.info("Worker registered: {}", workerId);
-        workers.put(workerId, new WorkerState(getSender(), Idle.instance));
-        if (workState.hasWork()) {
+        log.info("Worker registered: {} (localities {})", workerId, localities);
+        workers.put(workerId, new WorkerState(getSender(), Idle.instance, localities, workTimeout.fromNow()));
+        if (workState.nextWork(localities, getServedLocalities()) != null) {
           getSender().tell(WorkIsReady.getInstance(), getSelf());
         }
       }
@@ -285,17 +402,19 @@ public class Master extends UntypedPersistentActor {
         final String workerId = ((WorkerRequestsWork) cmd).workerId;
         final WorkerState state = workers.get(workerId);
         if (state != null && state.status.isIdle()) {
-          final Work work = workState.nextWork();
-          persist(new WorkState.WorkStarted(work.workId), new Procedure<WorkState.WorkStarted>() {
-            @Override
-            public void apply(WorkStarted event) throws Exception {
-              workState = workState.updated(event);
-              log.info("Giving worker {} some work {}", workerId, event.workId);
-              workers.put(workerId, state.copyWithStatus(new Busy(event.workId, workTimeout.fromNow())));
-              getSender().tell(work, getSelf());
-
-            }
-          });
+          final Work work = workState.nextWork(state.localities, getServedLocalities());
+          if (work != null) {
+            // busy before persisting, so the work is not given twice
+            workers.put(workerId, state.copyWithStatus(new Busy(work.workId, workTimeout.fromNow())));
+            final ActorRef sender = getSender();
+            persistEvent(new WorkState.WorkStarted(work.workId), new Procedure<WorkState.WorkStarted>() {
+              @Override
+              public void apply(WorkStarted event) throws Exception {
+                log.info("Giving worker {} some work {}", workerId, event.workId);
+                sender.tell(work, getSelf());
+              }
+            });
+          }
         }
       }
     } else if (cmd instanceof WorkIsDone) {
@@ -308,11 +427,10 @@ public class Master extends UntypedPersistentActor {
       } else {
         log.info("Work {} is done by worker {}", workId, workerId);
         changeWorkerToIdle(workerId, workId);
-        persist(new WorkState.WorkCompleted(workId, ((WorkIsDone) cmd).result),
+        persistEvent(new WorkState.WorkCompleted(workId, ((WorkIsDone) cmd).result),
           new Procedure<WorkState.WorkCompleted>() {
             @Override
             public void apply(WorkCompleted event) throws Exception {
-              workState = workState.updated(event);
               mediator.tell(
                 new DistributedPubSubMediator.Publish(RESULTS_TOPIC, new WorkResult(event.workId, event.result)),
                 getSelf());
@@ -323,16 +441,30 @@ public class Master extends UntypedPersistentActor {
     } else if (cmd instanceof WorkFailed) {
       final String workId = ((WorkFailed) cmd).workId;
       final String workerId = ((WorkFailed) cmd).workerId;
+      final String reason = ((WorkFailed) cmd).reason;
       if (workState.isInProgress(workId)) {
-        log.info("Work {} failed by worker {}", workId, workerId);
         changeWorkerToIdle(workerId, workId);
-        persist(new WorkState.WorkerFailed(workId), new Procedure<WorkState.WorkerFailed>() {
-          @Override
-          public void apply(WorkerFailed event) throws Exception {
-            workState = workState.updated(event);
-            notifyWorkers();
-          }
-        });
+        if (workState.getFailureCount(workId) + 1 < maxAttempts) {
+          log.info("Work {} failed by worker {}, giving it to a worker again: {}", workId, workerId, reason);
+          persistEvent(new WorkState.WorkerFailed(workId), new Procedure<WorkState.WorkerFailed>() {
+            @Override
+            public void apply(WorkerFailed event) throws Exception {
+              notifyWorkers();
+            }
+          });
+        } else {
+          log.warning("Work {} failed {} times, the last by worker {}: {}", workId, maxAttempts, workerId, reason);
+          persistEvent(new WorkState.WorkCompleted(workId, new WorkFailure(reason)),
+            new Procedure<WorkState.WorkCompleted>() {
+              @Override
+              public void apply(WorkCompleted event) throws Exception {
+                mediator.tell(
+                  new DistributedPubSubMediator.Publish(RESULTS_TOPIC, new WorkResult(event.workId, event.result)),
+                  getSelf());
+                notifyWorkers();
+              }
+            });
+        }
       }
     } else if (cmd instanceof Work) {
       final String workId = ((Work) cmd).workId;
@@ -341,12 +473,11 @@ public class Master extends UntypedPersistentActor {
         getSender().tell(new Ack(workId), getSelf());
       } else {
         log.info("Accepted work: {}", workId);
-        persist(new WorkState.WorkAccepted((Work) cmd), new Procedure<WorkState.WorkAccepted>() {
+        persistEvent(new WorkState.WorkAccepted((Work) cmd), new Procedure<WorkState.WorkAccepted>() {
           @Override
           public void apply(WorkAccepted event) throws Exception {
             // Ack back to original sender
             getSender().tell(new Ack(event.work.workId), getSelf());
-            workState = workState.updated(event);
             notifyWorkers();
           }
         });
@@ -357,28 +488,69 @@ public class Master extends UntypedPersistentActor {
         Map.Entry<String, WorkerState> entry = iterator.next();
         String workerId = entry.getKey();
         WorkerState state = entry.getValue();
-        if (state.status.isBusy()) {
-          if (state.status.getDeadLine().isOverdue()) {
-            log.info("Work timed out: {}", state.status.getWorkId());
-            workers.remove(workerId);
-            persist(new WorkState.WorkerTimedOut(state.status.getWorkId()), new Procedure<WorkState.WorkerTimedOut>() {
+        if (state.status.isBusy() && state.status.getDeadLine().isOverdue()) {
+          log.info("Work timed out: {} (worker {})", state.status.getWorkId(), workerId);
+          iterator.remove();
+          persistEvent(new WorkState.WorkerTimedOut(state.status.getWorkId()),
+            new Procedure<WorkState.WorkerTimedOut>() {
               @Override
               public void apply(WorkerTimedOut event) throws Exception {
-                workState = workState.updated(event);
                 notifyWorkers();
               }
             });
-          }
+        } else if (state.status.isIdle() && state.heartbeatDeadline.isOverdue()) {
+          log.info("Worker {} stopped sending heartbeats, removing it", workerId);
+          iterator.remove();
         }
       }
+
+      Iterator<Map.Entry<String, Deadline>> recovered = recoveredWorkInProgress.entrySet().iterator();
+      while (recovered.hasNext()) {
+        Map.Entry<String, Deadline> entry = recovered.next();
+        if (!workState.isInProgress(entry.getKey()) || isWorkerBusyWith(entry.getKey())) {
+          recovered.remove();
+        } else if (entry.getValue().isOverdue()) {
+          log.info("Work timed out after recovery: {}", entry.getKey());
+          recovered.remove();
+          persistEvent(new WorkState.WorkerTimedOut(entry.getKey()), new Procedure<WorkState.WorkerTimedOut>() {
+            @Override
+            public void apply(WorkerTimedOut event) throws Exception {
+              notifyWorkers();
+            }
+          });
+        }
+      }
+    } else if (cmd instanceof SaveSnapshotSuccess) {
+      // events and snapshots before the last snapshot are no longer needed
+      long sequenceNr = ((SaveSnapshotSuccess) cmd).metadata().sequenceNr();
+      deleteMessages(sequenceNr);
+      deleteSnapshots(SnapshotSelectionCriteria.create(sequenceNr - 1, Long.MAX_VALUE));
+    } else if (cmd instanceof SaveSnapshotFailure) {
+      log.error(((SaveSnapshotFailure) cmd).cause(), "Could not save snapshot of the work state");
+    } else if (cmd instanceof DeleteMessagesSuccess || cmd instanceof DeleteSnapshotsSuccess) {
+      // do nothing
+    } else if (cmd instanceof DeleteMessagesFailure) {
+      log.warning("Could not delete events before the last snapshot: {}", ((DeleteMessagesFailure) cmd).cause());
+    } else if (cmd instanceof DeleteSnapshotsFailure) {
+      log.warning("Could not delete old snapshots: {}", ((DeleteSnapshotsFailure) cmd).cause());
     } else {
       unhandled(cmd);
     }
   }
 
+  private boolean isWorkerBusyWith(String workId) {
+    for (WorkerState state : workers.values()) {
+      if (state.status.isBusy() && state.status.getWorkId().equals(workId)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   private void changeWorkerToIdle(String workerId, String workId) {
-    if (workers.get(workerId).status.isBusy()) {
-      workers.put(workerId, workers.get(workerId).copyWithStatus(new Idle()));
+    WorkerState state = workers.get(workerId);
+    if (state != null && state.status.isBusy()) {
+      workers.put(workerId, state.copyWithStatus(Idle.getInstance()));
     }
   }
 }
@@ -8,22 +8,35 @@
 package org.roda.core.plugins.orchestrate.akka.distributed;
 
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.Set;
 
 public abstract class MasterWorkerProtocol {
 
   // Messages from/to Workers
 
+  /**
+   * Sent periodically by each worker, so that the master knows the worker is
+   * alive (and also while it is working).
+   */
   public static final class RegisterWorker implements Serializable {
     private static final long serialVersionUID = 1958015449276995915L;
     public final String workerId;
+    /** Storage localities (volumes) the worker has local access to. */
+    public final Set<String> localities;
 
     public RegisterWorker(String workerId) {
+      this(workerId, Collections.emptySet());
+    }
+
+    public RegisterWorker(String workerId, Set<String> localities) {
       this.workerId = workerId;
+      this.localities = localities;
     }
 
     @Override
     public String toString() {
-      return "RegisterWorker{" + "workerId='" + workerId + '\'' + '}';
+      return "RegisterWorker{" + "workerId='" + workerId + '\'' + ", localities=" + localities + '}';
     }
   }
 
@@ -64,15 +77,18 @@ public abstract class MasterWorkerProtocol {
 
     public final String workerId;
     public final String workId;
+    public final String reason;
 
-    public WorkFailed(String workerId, String workId) {
+    public WorkFailed(String workerId, String workId, String reason) {
       this.workerId = workerId;
       this.workId = workId;
+      this.reason = reason;
     }
 
     @Override
     public String toString() {
-      return "WorkFailed{" + "workerId='" + workerId + '\'' + ", workId='" + workId + '\'' + '}';
+      return "WorkFailed{" + "workerId='" + workerId + '\'' + ", workId='" + workId + '\'' + ", reason='" + reason
+        + '\'' + '}';
     }
   }
 
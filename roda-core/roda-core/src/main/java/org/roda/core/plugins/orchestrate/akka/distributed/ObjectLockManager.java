@@ -0,0 +1,292 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.orchestrate.akka.distributed;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import akka.actor.ActorRef;
+import akka.actor.Cancellable;
+import akka.actor.Props;
+import akka.actor.UntypedActor;
+import akka.event.Logging;
+import akka.event.LoggingAdapter;
+import scala.concurrent.duration.Deadline;
+import scala.concurrent.duration.Duration;
+import scala.concurrent.duration.FiniteDuration;
+
+/**
+ * Keeps the object locks of the cluster, so that two nodes do not process the
+ * same object (e.g. an AIP) at the same time. It runs as a cluster singleton
+ * in the backend nodes, which send the lock requests to it through a proxy.
+ *
+ * Locks work as the ones of the embedded orchestrator: they are reentrant for
+ * the same request uuid, a request may wait for locked objects until its
+ * timeout and locks that are not released within {@code lockTimeout} are
+ * released. Locks are kept in memory, so they are lost if the singleton moves
+ * to another node.
+ */
+public class ObjectLockManager extends UntypedActor {
+  private static final FiniteDuration TICK_INTERVAL = Duration.create(2, TimeUnit.SECONDS);
+
+  private final LoggingAdapter log = Logging.getLogger(getContext().system(), this);
+  private final FiniteDuration lockTimeout;
+  private final Cancellable tickTask;
+
+  // <Lite, LockInfo>
+  private Map<String, LockInfo> objectsLocked = new HashMap<>();
+  // <RequestUUID, List<Lite>>
+  private Map<String, List<String>> requestUuidLites = new HashMap<>();
+  private List<WaitingRequest> waitingRequests = new ArrayList<>();
+
+  public ObjectLockManager(FiniteDuration lockTimeout) {
+    this.lockTimeout = lockTimeout;
+    this.tickTask = getContext().system().scheduler().schedule(TICK_INTERVAL, TICK_INTERVAL, getSelf(),
+      Tick.INSTANCE, getContext().dispatcher(), getSelf());
+  }
+
+  public static Props props(FiniteDuration lockTimeout) {
+    return Props.create(ObjectLockManager.class, lockTimeout);
+  }
+
+  @Override
+  public void postStop() {
+    tickTask.cancel();
+  }
+
+  @Override
+  public void onReceive(Object message) {
+    if (message instanceof AcquireLock) {
+      handleAcquireLock((AcquireLock) message);
+    } else if (message instanceof ReleaseLock) {
+      unlock((ReleaseLock) message);
+      processWaitingRequests();
+    } else if (message instanceof ReleaseAllLocks) {
+      objectsLocked = new HashMap<>();
+      requestUuidLites = new HashMap<>();
+      waitingRequests = new ArrayList<>();
+    } else if (message == Tick.INSTANCE) {
+      releaseExpiredLocks();
+      processWaitingRequests();
+    } else {
+      unhandled(message);
+    }
+  }
+
+  private void handleAcquireLock(AcquireLock request) {
+    if (areObjectsLockable(request)) {
+      lock(request, getSender());
+    } else if (request.waitForLockIfLocked) {
+      waitingRequests.add(new WaitingRequest(request, getSender()));
+    } else {
+      getSender().tell(NotLockable.INSTANCE, getSelf());
+    }
+  }
+
+  private void processWaitingRequests() {
+    for (Iterator<WaitingRequest> iterator = waitingRequests.iterator(); iterator.hasNext();) {
+      WaitingRequest waiting = iterator.next();
+      if (waiting.deadline.isOverdue()) {
+        log.warning("Deleting lock request for objects '{}' as it timed out", waiting.request.lites);
+        iterator.remove();
+      } else if (areObjectsLockable(waiting.request)) {
+        lock(waiting.request, waiting.sender);
+        iterator.remove();
+      }
+    }
+  }
+
+  private boolean areObjectsLockable(AcquireLock request) {
+    for (String lite : request.lites) {
+      LockInfo lockInfo = objectsLocked.get(lite);
+      if (lockInfo != null && !lockInfo.requestUuid.equals(request.requestUuid)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void lock(AcquireLock request, ActorRef sender) {
+    for (String lite : request.lites) {
+      LockInfo lockInfo = objectsLocked.get(lite);
+      if (lockInfo != null) {
+        lockInfo.reentrantAmount++;
+        lockInfo.refreshDeadline();
+      } else {
+        objectsLocked.put(lite, new LockInfo(request.requestUuid));
+        requestUuidLites.computeIfAbsent(request.requestUuid, key -> new ArrayList<>()).add(lite);
+      }
+    }
+    sender.tell(LockAcquired.INSTANCE, getSelf());
+  }
+
+  private void unlock(ReleaseLock request) {
+    if (request.lites.isEmpty()) {
+      for (String lite : requestUuidLites.getOrDefault(request.requestUuid, Collections.emptyList())) {
+        objectsLocked.remove(lite);
+      }
+      requestUuidLites.remove(request.requestUuid);
+      return;
+    }
+
+    for (String lite : request.lites) {
+      LockInfo lockInfo = objectsLocked.get(lite);
+      if (lockInfo == null) {
+        log.warning("Trying to remove lock from object '{}' whose lock does not exist!", lite);
+      } else if (!lockInfo.requestUuid.equals(request.requestUuid)) {
+        log.warning("Trying to remove lock from object '{}' whose lock wasn't created by this requester (uuid={})",
+          lite, request.requestUuid);
+      } else if (lockInfo.reentrantAmount > 0) {
+        lockInfo.reentrantAmount--;
+        lockInfo.refreshDeadline();
+      } else {
+        objectsLocked.remove(lite);
+        List<String> lites = requestUuidLites.get(request.requestUuid);
+        lites.remove(lite);
+        if (lites.isEmpty()) {
+          requestUuidLites.remove(request.requestUuid);
+        }
+      }
+    }
+  }
+
+  private void releaseExpiredLocks() {
+    for (Iterator<Map.Entry<String, LockInfo>> it = objectsLocked.entrySet().iterator(); it.hasNext();) {
+      Map.Entry<String, LockInfo> lock = it.next();
+      if (lock.getValue().deadline.isOverdue()) {
+        log.warning("Releasing lock for object '{}' due to lock timeout ({}; no lock release was issued)",
+          lock.getKey(), lockTimeout);
+        it.remove();
+        List<String> lites = requestUuidLites.get(lock.getValue().requestUuid);
+        if (lites != null) {
+          lites.remove(lock.getKey());
+        }
+      }
+    }
+  }
+
+  private final class LockInfo {
+    private final String requestUuid;
+    private int reentrantAmount = 0;
+    private Deadline deadline;
+
+    private LockInfo(String requestUuid) {
+      this.requestUuid = requestUuid;
+      refreshDeadline();
+    }
+
+    private void refreshDeadline() {
+      deadline = lockTimeout.fromNow();
+    }
+  }
+
+  private static final class WaitingRequest {
+    private final AcquireLock request;
+    private final ActorRef sender;
+    private final Deadline deadline;
+
+    private WaitingRequest(AcquireLock request, ActorRef sender) {
+      this.request = request;
+      this.sender = sender;
+      this.deadline = Duration.create(request.timeoutInSeconds, TimeUnit.SECONDS).fromNow();
+    }
+  }
+
+  public static final class AcquireLock implements Serializable {
+    private static final long serialVersionUID = 2913474851035519437L;
+
+    private final List<String> lites;
+    private final boolean waitForLockIfLocked;
+    private final int timeoutInSeconds;
+    private final String requestUuid;
+
+    public AcquireLock(List<String> lites, boolean waitForLockIfLocked, int timeoutInSeconds, String requestUuid) {
+      this.lites = new ArrayList<>(lites);
+      this.waitForLockIfLocked = waitForLockIfLocked;
+      this.timeoutInSeconds = timeoutInSeconds;
+      this.requestUuid = requestUuid;
+    }
+
+    @Override
+    public String toString() {
+      return "AcquireLock [lites=" + lites + ", waitForLockIfLocked=" + waitForLockIfLocked + ", timeoutInSeconds="
+        + timeoutInSeconds + ", requestUuid=" + requestUuid + "]";
+    }
+  }
+
+  public static final class ReleaseLock implements Serializable {
+    private static final long serialVersionUID = -6380734290937622188L;
+
+    private final List<String> lites;
+    private final String requestUuid;
+
+    /**
+     * @param lites
+     *          the objects to release or an empty list to release all the
+     *          objects locked by the request
+     */
+    public ReleaseLock(List<String> lites, String requestUuid) {
+      this.lites = new ArrayList<>(lites);
+      this.requestUuid = requestUuid;
+    }
+
+    @Override
+    public String toString() {
+      return "ReleaseLock [lites=" + lites + ", requestUuid=" + requestUuid + "]";
+    }
+  }
+
+  public static final class ReleaseAllLocks implements Serializable {
+    private static final long serialVersionUID = 5009185432207532905L;
+    public static final ReleaseAllLocks INSTANCE = new ReleaseAllLocks();
+
+    private ReleaseAllLocks() {
+      // do nothing
+    }
+
+    private Object readResolve() {
+      return INSTANCE;
+    }
+  }
+
+  public static final class LockAcquired implements Serializable {
+    private static final long serialVersionUID = -1830307245618335530L;
+    public static final LockAcquired INSTANCE = new LockAcquired();
+
+    private LockAcquired() {
+      // do nothing
+    }
+
+    private Object readResolve() {
+      return INSTANCE;
+    }
+  }
+
+  public static final class NotLockable implements Serializable {
+    private static final long serialVersionUID = 8472285093186232571L;
+    public static final NotLockable INSTANCE = new NotLockable();
+
+    private NotLockable() {
+      // do nothing
+    }
+
+    private Object readResolve() {
+      return INSTANCE;
+    }
+  }
+
+  private static final class Tick {
+    private static final Tick INSTANCE = new Tick();
+  }
+}
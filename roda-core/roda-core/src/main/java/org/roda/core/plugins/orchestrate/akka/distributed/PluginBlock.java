@@ -0,0 +1,42 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.orchestrate.akka.distributed;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A block of objects to be processed by a plugin in a worker node (the job of
+ * a {@link Master.Work}), referencing the plugin and the objects by id so it
+ * can be sent to other nodes.
+ */
+public final class PluginBlock implements Serializable {
+  private static final long serialVersionUID = -2410393004361728437L;
+
+  public final String pluginId;
+  public final Map<String, String> parameters;
+  /** Class name of the objects, or <code>null</code> if there are none. */
+  public final String objectClass;
+  public final List<String> objectIds;
+
+  public PluginBlock(String pluginId, Map<String, String> parameters, String objectClass, List<String> objectIds) {
+    this.pluginId = pluginId;
+    this.parameters = new HashMap<>(parameters);
+    this.objectClass = objectClass;
+    this.objectIds = new ArrayList<>(objectIds);
+  }
+
+  @Override
+  public String toString() {
+    return "PluginBlock{" + "pluginId='" + pluginId + '\'' + ", objectClass='" + objectClass + '\'' + ", objects="
+      + objectIds.size() + '}';
+  }
+}
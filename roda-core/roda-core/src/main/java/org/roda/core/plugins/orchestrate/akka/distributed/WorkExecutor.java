@@ -7,24 +7,76 @@
  */
 package org.roda.core.plugins.orchestrate.akka.distributed;
 
+import java.util.Collections;
+import java.util.List;
+
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.common.tracing.Tracing;
+import org.roda.core.common.tracing.Tracing.Stage;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.IsRODAObject;
+import org.roda.core.data.v2.LiteOptionalWithCause;
+import org.roda.core.index.IndexService;
+import org.roda.core.model.LiteRODAObjectFactory;
+import org.roda.core.model.ModelService;
+import org.roda.core.plugins.Plugin;
+import org.roda.core.plugins.orchestrate.JobPluginInfo;
+import org.roda.core.plugins.orchestrate.JobsHelper;
+import org.roda.core.plugins.orchestrate.SimpleJobPluginInfo;
+import org.roda.core.plugins.plugins.PluginHelper;
+import org.roda.core.storage.StorageService;
+
 import akka.actor.UntypedActor;
 import akka.event.Logging;
 import akka.event.LoggingAdapter;
 
+/**
+ * Executes the {@link PluginBlock}s given to its {@link Worker}, replying with
+ * the {@link JobPluginInfo} of the block (i.e. its objects processed
+ * with success and with failure). Errors are thrown, so the worker reports the
+ * work as failed and the master may give it to another worker.
+ */
 public class WorkExecutor extends UntypedActor {
 
   private LoggingAdapter log = Logging.getLogger(getContext().system(), this);
 
   @Override
-  public void onReceive(Object message) {
-    if (message instanceof Integer) {
-      Integer n = (Integer) message;
-      int n2 = n.intValue() * n.intValue();
-      String result = n + " * " + n + " = " + n2;
-      log.info("Produced result {}", result);
-      getSender().tell(new Worker.WorkComplete(result), getSelf());
+  public void onReceive(Object message) throws Exception {
+    if (message instanceof PluginBlock) {
+      PluginBlock block = (PluginBlock) message;
+      getSender().tell(new Worker.WorkComplete(execute(block)), getSelf());
     } else {
-      // TODO
+      unhandled(message);
+    }
+  }
+
+  private JobPluginInfo execute(PluginBlock block) throws RODAException {
+    ModelService model = RodaCoreFactory.getModelService();
+    IndexService index = RodaCoreFactory.getIndexService();
+    StorageService storage = RodaCoreFactory.getStorageService();
+
+    Plugin<IsRODAObject> plugin = RodaCoreFactory.getPluginManager().getPlugin(block.pluginId, IsRODAObject.class);
+    if (plugin == null) {
+      throw new IllegalArgumentException("Plugin " + block.pluginId + " is not available in this node");
+    }
+    plugin.setParameterValues(block.parameters);
+
+    List<LiteOptionalWithCause> objects = Collections.emptyList();
+    if (block.objectClass != null) {
+      Class<IsRODAObject> objectClass = JobsHelper.getSelectedClassFromString(block.objectClass);
+      objects = LiteRODAObjectFactory.transformIntoLiteWithCause(model,
+        JobsHelper.getObjectsFromUUID(model, index, objectClass, block.objectIds));
+    }
+
+    SimpleJobPluginInfo jobPluginInfo = new SimpleJobPluginInfo();
+    jobPluginInfo.setSourceObjectsCount(objects.size());
+    plugin.injectJobPluginInfo(jobPluginInfo);
+
+    log.info("Executing {}", block);
+    try (Tracing.Scope scope = Tracing.inJob(PluginHelper.getJobId(plugin));
+      Tracing.Span span = Tracing.start(Stage.PLUGIN, plugin.getClass().getSimpleName() + ".execute")) {
+      plugin.execute(index, model, storage, objects);
     }
+    return jobPluginInfo;
   }
 }
@@ -0,0 +1,122 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.orchestrate.akka.distributed;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.v2.IsRODAObject;
+import org.roda.core.data.v2.ip.AIP;
+import org.roda.core.data.v2.ip.File;
+import org.roda.core.data.v2.ip.Representation;
+import org.roda.core.model.utils.ModelUtils;
+import org.roda.core.storage.fs.FSUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Storage locality of the work: the file system volume where the AIP of the
+ * objects is stored. A network volume is identified by its type and source
+ * (e.g. <code>nfs4:server:/export</code>), so nodes that mount it report the
+ * same locality, and a local volume by the host name and its device (e.g.
+ * <code>node1:/dev/sda1</code>), as only that node has access to it.
+ */
+public final class WorkLocality {
+  private static final Logger LOGGER = LoggerFactory.getLogger(WorkLocality.class);
+
+  private static final Set<String> NETWORK_FILE_SYSTEM_TYPES = new HashSet<>(Arrays.asList("nfs", "nfs4", "cifs",
+    "smb", "smbfs", "smb3", "ceph", "glusterfs", "fuse.glusterfs", "fuse.sshfs", "lustre", "gpfs", "ocfs2", "gfs2",
+    "beegfs", "afs"));
+
+  private static String hostname = null;
+
+  private WorkLocality() {
+    // do nothing
+  }
+
+  /**
+   * @return the locality of the object or <code>null</code> if it is not (in)
+   *         an AIP
+   */
+  public static String of(Path storagePath, IsRODAObject object) {
+    String aipId = null;
+    if (object instanceof AIP) {
+      aipId = object.getId();
+    } else if (object instanceof Representation) {
+      aipId = ((Representation) object).getAipId();
+    } else if (object instanceof File) {
+      aipId = ((File) object).getAipId();
+    }
+
+    if (aipId == null) {
+      return null;
+    }
+
+    try {
+      return of(FSUtils.getEntityPath(storagePath, ModelUtils.getAIPStoragePath(aipId)));
+    } catch (RequestNotValidException e) {
+      LOGGER.warn("Could not get the locality of AIP {}", aipId, e);
+      return null;
+    }
+  }
+
+  /**
+   * @return the volume of the path (or of its closest existing parent) or
+   *         <code>null</code> if it could not be determined
+   */
+  public static String of(Path path) {
+    Path existing = path.toAbsolutePath();
+    while (existing != null && !Files.exists(existing)) {
+      existing = existing.getParent();
+    }
+
+    if (existing != null) {
+      try {
+        FileStore store = Files.getFileStore(existing);
+        return of(store.type(), store.name(), getHostname());
+      } catch (IOException e) {
+        LOGGER.warn("Could not get the volume of {}", path, e);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return the volume of a file system of the given type and name (i.e. its
+   *         source, as the device or the exported path) mounted in the given
+   *         host
+   */
+  public static String of(String type, String name, String host) {
+    if (NETWORK_FILE_SYSTEM_TYPES.contains(type)) {
+      return type + ":" + name;
+    } else {
+      return host + ":" + name;
+    }
+  }
+
+  private static synchronized String getHostname() {
+    if (hostname == null) {
+      try {
+        hostname = InetAddress.getLocalHost().getHostName();
+      } catch (UnknownHostException e) {
+        LOGGER.warn("Could not get the host name, local volumes will not be told apart from the ones of other nodes",
+          e);
+        hostname = "localhost";
+      }
+    }
+    return hostname;
+  }
+}
@@ -0,0 +1,47 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.orchestrate.akka.distributed;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import akka.actor.ActorRef;
+import akka.actor.UntypedActor;
+import akka.cluster.pubsub.DistributedPubSub;
+import akka.cluster.pubsub.DistributedPubSubMediator;
+
+/**
+ * Listens to the results published by the {@link Master} and completes the
+ * futures of the work submitted by this node (results of other nodes' work are
+ * ignored).
+ */
+public class WorkResultListener extends UntypedActor {
+
+  private final Map<String, CompletableFuture<Object>> pendingWork;
+
+  public WorkResultListener(Map<String, CompletableFuture<Object>> pendingWork) {
+    this.pendingWork = pendingWork;
+    ActorRef mediator = DistributedPubSub.get(getContext().system()).mediator();
+    mediator.tell(new DistributedPubSubMediator.Subscribe(Master.RESULTS_TOPIC, getSelf()), getSelf());
+  }
+
+  @Override
+  public void onReceive(Object message) {
+    if (message instanceof Master.WorkResult) {
+      Master.WorkResult workResult = (Master.WorkResult) message;
+      CompletableFuture<Object> future = pendingWork.remove(workResult.workId);
+      if (future != null) {
+        future.complete(workResult.result);
+      }
+    } else if (message instanceof DistributedPubSubMediator.SubscribeAck) {
+      // do nothing
+    } else {
+      unhandled(message);
+    }
+  }
+}
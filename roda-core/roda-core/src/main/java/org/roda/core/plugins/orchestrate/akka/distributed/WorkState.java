@@ -9,119 +9,130 @@ package org.roda.core.plugins.orchestrate.akka.distributed;
 
 import java.io.Serializable;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentLinkedDeque;
 
 import org.roda.core.plugins.orchestrate.akka.distributed.Master.Work;
 
-public final class WorkState {
+/**
+ * State of the work handled by the {@link Master}, rebuilt from the persisted
+ * {@link WorkDomainEvent}s (or from a snapshot of it followed by the events
+ * persisted after the snapshot).
+ *
+ * The state is changed in place by {@link #update(WorkDomainEvent)}, so
+ * snapshots must be taken from a {@link #copy()}.
+ */
+public final class WorkState implements Serializable {
+  private static final long serialVersionUID = 3452271853127464021L;
 
+  /** Number of done work ids kept to acknowledge repeated submissions. */
+  public static final int MAX_DONE_WORK_IDS = 10000;
+
+  private final LinkedHashMap<String, Work> pendingWork;
   private final Map<String, Work> workInProgress;
-  private final Set<String> acceptedWorkIds;
-  private final Set<String> doneWorkIds;
-  private final ConcurrentLinkedDeque<Work> pendingWork;
+  private final LinkedHashSet<String> doneWorkIds;
+  /** Number of times each pending or in progress work has failed. */
+  private final Map<String, Integer> failures;
 
-  public WorkState updated(WorkDomainEvent event) {
-    WorkState newState = null;
+  public WorkState() {
+    pendingWork = new LinkedHashMap<>();
+    workInProgress = new HashMap<>();
+    doneWorkIds = new LinkedHashSet<>();
+    failures = new HashMap<>();
+  }
+
+  private WorkState(WorkState workState) {
+    pendingWork = new LinkedHashMap<>(workState.pendingWork);
+    workInProgress = new HashMap<>(workState.workInProgress);
+    doneWorkIds = new LinkedHashSet<>(workState.doneWorkIds);
+    failures = new HashMap<>(workState.failures);
+  }
+
+  public WorkState copy() {
+    return new WorkState(this);
+  }
+
+  public void update(WorkDomainEvent event) {
     if (event instanceof WorkAccepted) {
-      return new WorkState(this, (WorkAccepted) event);
+      Work work = ((WorkAccepted) event).work;
+      pendingWork.put(work.workId, work);
     } else if (event instanceof WorkStarted) {
-      return new WorkState(this, (WorkStarted) event);
+      String workId = ((WorkStarted) event).workId;
+      Work work = pendingWork.remove(workId);
+      if (work == null) {
+        throw new IllegalArgumentException("WorkStarted for work " + workId + " which is not pending");
+      }
+      workInProgress.put(workId, work);
     } else if (event instanceof WorkCompleted) {
-      return new WorkState(this, (WorkCompleted) event);
+      String workId = ((WorkCompleted) event).workId;
+      workInProgress.remove(workId);
+      failures.remove(workId);
+      doneWorkIds.add(workId);
+      if (doneWorkIds.size() > MAX_DONE_WORK_IDS) {
+        Iterator<String> iterator = doneWorkIds.iterator();
+        iterator.next();
+        iterator.remove();
+      }
     } else if (event instanceof WorkerFailed) {
-      return new WorkState(this, (WorkerFailed) event);
+      String workId = ((WorkerFailed) event).workId;
+      failures.merge(workId, 1, Integer::sum);
+      requeue(workId);
     } else if (event instanceof WorkerTimedOut) {
-      return new WorkState(this, (WorkerTimedOut) event);
+      requeue(((WorkerTimedOut) event).workId);
     }
-    return newState;
   }
 
-  public WorkState() {
-    workInProgress = new HashMap<>();
-    acceptedWorkIds = new HashSet<>();
-    doneWorkIds = new HashSet<>();
-    pendingWork = new ConcurrentLinkedDeque<>();
+  private void requeue(String workId) {
+    Work work = workInProgress.remove(workId);
+    if (work != null) {
+      pendingWork.put(workId, work);
+    }
   }
 
-  private WorkState(WorkState workState, WorkAccepted workAccepted) {
-    ConcurrentLinkedDeque<Work> tmp_pendingWork = new ConcurrentLinkedDeque<>(workState.pendingWork);
-    Set<String> tmp_acceptedWorkIds = new HashSet<>(workState.acceptedWorkIds);
-    tmp_pendingWork.addLast(workAccepted.work);
-    tmp_acceptedWorkIds.add(workAccepted.work.workId);
-    workInProgress = new HashMap<>(workState.workInProgress);
-    acceptedWorkIds = tmp_acceptedWorkIds;
-    doneWorkIds = new HashSet<>(workState.doneWorkIds);
-    pendingWork = tmp_pendingWork;
-
+  /**
+   * Returns the oldest pending work that should be given to a worker in the
+   * given localities: preferably work of those localities, otherwise work
+   * whose locality is not served by any worker (or that has no locality).
+   *
+   * @param localities
+   *          the localities of the worker asking for work
+   * @param servedLocalities
+   *          the localities of all registered workers
+   * @return the work or <code>null</code> if there is no work for the worker
+   */
+  public Work nextWork(Set<String> localities, Set<String> servedLocalities) {
+    Work fallback = null;
+    for (Work work : pendingWork.values()) {
+      if (work.locality != null && localities.contains(work.locality)) {
+        return work;
+      } else if (fallback == null && (work.locality == null || !servedLocalities.contains(work.locality))) {
+        fallback = work;
+      }
+    }
+    return fallback;
   }
 
-  public WorkState(WorkState workState, WorkStarted workStarted) {
-    ConcurrentLinkedDeque<Work> tmp_pendingWork = new ConcurrentLinkedDeque<>(workState.pendingWork);
-    Map<String, Work> tmp_workInProgress = new HashMap<>(workState.workInProgress);
-
-    Work work = tmp_pendingWork.removeFirst();
-    if (!work.workId.equals(workStarted.workId)) {
-      throw new IllegalArgumentException("WorkStarted expected workId " + work.workId + "==" + workStarted.workId);
-    }
-    tmp_workInProgress.put(work.workId, work);
-
-    workInProgress = tmp_workInProgress;
-    acceptedWorkIds = new HashSet<>(workState.acceptedWorkIds);
-    doneWorkIds = new HashSet<>(workState.doneWorkIds);
-    pendingWork = tmp_pendingWork;
-  }
-
-  public WorkState(WorkState workState, WorkCompleted workCompleted) {
-    Map<String, Work> tmp_workInProgress = new HashMap<>(workState.workInProgress);
-    Set<String> tmp_doneWorkIds = new HashSet<>(workState.doneWorkIds);
-    tmp_workInProgress.remove(workCompleted.workId);
-    tmp_doneWorkIds.add(workCompleted.workId);
-    workInProgress = tmp_workInProgress;
-    acceptedWorkIds = new HashSet<>(workState.acceptedWorkIds);
-    doneWorkIds = tmp_doneWorkIds;
-    pendingWork = new ConcurrentLinkedDeque<>(workState.pendingWork);
-  }
-
-  public WorkState(WorkState workState, WorkerFailed workerFailed) {
-    Map<String, Work> tmp_workInProgress = new HashMap<>(workState.workInProgress);
-    ConcurrentLinkedDeque<Work> tmp_pendingWork = new ConcurrentLinkedDeque<>(workState.pendingWork);
-    tmp_pendingWork.addLast(workState.workInProgress.get(workerFailed.workId));
-    tmp_workInProgress.remove(workerFailed.workId);
-    workInProgress = tmp_workInProgress;
-    acceptedWorkIds = new HashSet<>(workState.acceptedWorkIds);
-    doneWorkIds = new HashSet<>(workState.doneWorkIds);
-    pendingWork = tmp_pendingWork;
-  }
-
-  public WorkState(WorkState workState, WorkerTimedOut workerTimedOut) {
-    Map<String, Work> tmp_workInProgress = new HashMap<>(workState.workInProgress);
-    ConcurrentLinkedDeque<Work> tmp_pendingWork = new ConcurrentLinkedDeque<>(workState.pendingWork);
-    tmp_pendingWork.addLast(workState.workInProgress.get(workerTimedOut.workId));
-    tmp_workInProgress.remove(workerTimedOut.workId);
-    workInProgress = tmp_workInProgress;
-    acceptedWorkIds = new HashSet<>(workState.acceptedWorkIds);
-    doneWorkIds = new HashSet<>(workState.doneWorkIds);
-    pendingWork = tmp_pendingWork;
+  public boolean hasWork() {
+    return !pendingWork.isEmpty();
   }
 
-  @Override
-  public String toString() {
-    return Integer.toString(acceptedWorkIds.size());
+  public int getPendingWorkCount() {
+    return pendingWork.size();
   }
 
-  public Work nextWork() {
-    return pendingWork.getFirst();
+  public int getWorkInProgressCount() {
+    return workInProgress.size();
   }
 
-  public boolean hasWork() {
-    return !pendingWork.isEmpty();
+  public Set<String> getWorkInProgressIds() {
+    return new LinkedHashSet<>(workInProgress.keySet());
   }
 
   public boolean isAccepted(String workId) {
-    return acceptedWorkIds.contains(workId);
+    return pendingWork.containsKey(workId) || workInProgress.containsKey(workId) || doneWorkIds.contains(workId);
   }
 
   public boolean isInProgress(String workId) {
@@ -132,6 +143,16 @@ public final class WorkState {
     return doneWorkIds.contains(workId);
   }
 
+  public int getFailureCount(String workId) {
+    return failures.getOrDefault(workId, 0);
+  }
+
+  @Override
+  public String toString() {
+    return "WorkState{pending=" + pendingWork.size() + ", inProgress=" + workInProgress.size() + ", done="
+      + doneWorkIds.size() + '}';
+  }
+
   public interface WorkDomainEvent {
 
   }
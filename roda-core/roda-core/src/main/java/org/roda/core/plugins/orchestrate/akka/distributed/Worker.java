@@ -12,6 +12,8 @@ import static akka.actor.SupervisorStrategy.restart;
 import static akka.actor.SupervisorStrategy.stop;
 
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.Set;
 
 import org.roda.core.plugins.orchestrate.akka.distributed.Master.Ack;
 import org.roda.core.plugins.orchestrate.akka.distributed.Master.Work;
@@ -50,15 +52,29 @@ public class Worker extends UntypedActor {
   private final Cancellable registerTask;
   private String currentWorkId = null;
 
-  public Worker(ActorRef clusterClient, Props workExecutorProps, FiniteDuration registerInterval) {
+  /**
+   * @param registerInterval
+   *          interval between registrations, which the master also uses as
+   *          heartbeats, so it must be shorter than the master work timeout
+   * @param localities
+   *          storage localities (volumes) this worker has local access to
+   */
+  public Worker(ActorRef clusterClient, Props workExecutorProps, FiniteDuration registerInterval,
+    Set<String> localities) {
     this.clusterClient = clusterClient;
     this.workExecutor = getContext().watch(getContext().actorOf(workExecutorProps, "exec"));
     this.registerTask = getContext().system().scheduler().schedule(Duration.Zero(), registerInterval, clusterClient,
-      new SendToAll("/user/master/singleton", new RegisterWorker(workerId)), getContext().dispatcher(), getSelf());
+      new SendToAll("/user/master/singleton", new RegisterWorker(workerId, localities)), getContext().dispatcher(),
+      getSelf());
+  }
+
+  public static Props props(ActorRef clusterClient, Props workExecutorProps, FiniteDuration registerInterval,
+    Set<String> localities) {
+    return Props.create(Worker.class, clusterClient, workExecutorProps, registerInterval, localities);
   }
 
   public static Props props(ActorRef clusterClient, Props workExecutorProps, FiniteDuration registerInterval) {
-    return Props.create(Worker.class, clusterClient, workExecutorProps, registerInterval);
+    return props(clusterClient, workExecutorProps, registerInterval, Collections.emptySet());
   }
 
   public static Props props(ActorRef clusterClient, Props workExecutorProps) {
@@ -81,7 +97,7 @@ public class Worker extends UntypedActor {
           return stop();
         } else if (t instanceof Exception) {
           if (currentWorkId != null) {
-            sendToMaster(new WorkFailed(workerId, workId()));
+            sendToMaster(new WorkFailed(workerId, workId(), t.getClass().getName() + ": " + t.getMessage()));
           }
           getContext().become(idle);
           return restart();
@@ -13,6 +13,8 @@ import java.util.Arrays;
 import java.util.List;
 
 import org.roda.core.RodaCoreFactory;
+import org.roda.core.common.tracing.Tracing;
+import org.roda.core.common.tracing.Tracing.Stage;
 import org.roda.core.util.CommandException;
 import org.roda.core.util.CommandUtility;
 import org.slf4j.Logger;
@@ -27,6 +29,7 @@ import org.slf4j.LoggerFactory;
 public class AVGAntiVirus implements AntiVirus {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(AVGAntiVirus.class);
+  private static final Tracing.Operation SCAN = Tracing.operation(Stage.TOOL, "avg");
 
   /**
    * no errors
@@ -111,7 +114,10 @@ public class AVGAntiVirus implements AntiVirus {
       }
       command.add(path.toString());
       // Arrays.asList(clamavBin, clamavParams, path.toString());
-      String commandOutput = CommandUtility.execute(command, true);
+      String commandOutput;
+      try (Tracing.Span span = SCAN.start(path)) {
+        commandOutput = CommandUtility.execute(command, true);
+      }
       result.setClean(true);
       result.setReport(commandOutput);
     } catch (CommandException e) {
@@ -0,0 +1,172 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.plugins.antivirus;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.apache.commons.configuration.Configuration;
+import org.roda.core.RodaCoreFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Clam anti-virus that talks directly to the clamd daemon (see
+ * {@link ClamdClient}) instead of running a command for each AIP.
+ *
+ * <p>
+ * In {@code stream} mode the files are sent through the socket, so the daemon
+ * may run in another machine or container. In {@code multiscan} mode only the
+ * path is sent and the daemon reads the files itself.
+ * </p>
+ */
+public class ClamdAntiVirus implements AntiVirus {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ClamdAntiVirus.class);
+
+  private static final String CONFIG_PREFIX = "core.plugins.internal.virus_check.clamd.";
+  public static final int DEFAULT_BATCH_SIZE = 100;
+
+  public enum Mode {
+    STREAM, MULTISCAN
+  }
+
+  private final ClamdClient client;
+  private final Mode mode;
+  private final int batchSize;
+
+  /**
+   * Uses the clamd client shared by all plugin instances (see
+   * {@link RodaCoreFactory#getClamdClient()}).
+   */
+  public ClamdAntiVirus() {
+    Configuration configuration = RodaCoreFactory.getRodaConfiguration();
+    this.client = RodaCoreFactory.getClamdClient();
+    if (configuration == null) {
+      this.mode = Mode.STREAM;
+      this.batchSize = DEFAULT_BATCH_SIZE;
+    } else {
+      this.mode = Mode.valueOf(configuration.getString(CONFIG_PREFIX + "mode", Mode.STREAM.name()).toUpperCase());
+      this.batchSize = configuration.getInt(CONFIG_PREFIX + "batch_size", DEFAULT_BATCH_SIZE);
+    }
+  }
+
+  public ClamdAntiVirus(ClamdClient client, Mode mode, int batchSize) {
+    this.client = client;
+    this.mode = mode;
+    this.batchSize = Math.max(1, batchSize);
+  }
+
+  /**
+   * Performs a virus check on the specified path. Like {@code clamscan -i},
+   * the report lists the infected files (and the files that could not be
+   * scanned) followed by a summary.
+   *
+   * @throws RuntimeException
+   *           if the daemon could not be reached.
+   * @see AntiVirus
+   */
+  @Override
+  public VirusCheckResult checkForVirus(Path path) throws RuntimeException {
+    LOGGER.debug("Executing virus scan in {} using clamd at {}", path, client.getAddress());
+
+    try {
+      ScanSummary summary = new ScanSummary();
+      if (mode == Mode.MULTISCAN) {
+        summary.addAll(client.multiScan(path));
+      } else {
+        scanFiles(path, summary);
+      }
+      return new VirusCheckResult(summary.isClean(), summary.getReport());
+    } catch (IOException e) {
+      throw new RuntimeException("Error executing virus scan using clamd at " + client.getAddress(), e);
+    }
+  }
+
+  /**
+   * Creates a clamd client using the connection settings in the configuration
+   * (or the defaults if there is no configuration).
+   */
+  public static ClamdClient createClient(Configuration configuration) {
+    if (configuration == null) {
+      return new ClamdClient("localhost", ClamdClient.DEFAULT_PORT);
+    }
+    return new ClamdClient(configuration.getString(CONFIG_PREFIX + "host", "localhost"),
+      configuration.getInt(CONFIG_PREFIX + "port", ClamdClient.DEFAULT_PORT),
+      configuration.getInt(CONFIG_PREFIX + "timeout", ClamdClient.DEFAULT_TIMEOUT_IN_MILLIS),
+      configuration.getInt(CONFIG_PREFIX + "max_connections", ClamdClient.DEFAULT_MAX_CONNECTIONS),
+      configuration.getInt(CONFIG_PREFIX + "max_in_flight", ClamdClient.DEFAULT_MAX_IN_FLIGHT),
+      configuration.getLong(CONFIG_PREFIX + "max_idle", ClamdClient.DEFAULT_MAX_IDLE_IN_MILLIS));
+  }
+
+  private void scanFiles(Path path, ScanSummary summary) throws IOException {
+    try (Stream<Path> files = Files.walk(path)) {
+      Iterator<Path> iterator = files.filter(Files::isRegularFile).iterator();
+      List<Path> batch = new ArrayList<>(batchSize);
+      while (iterator.hasNext()) {
+        batch.add(iterator.next());
+        if (batch.size() >= batchSize || !iterator.hasNext()) {
+          summary.addAll(client.streamScan(batch));
+          summary.scanned += batch.size();
+          batch.clear();
+        }
+      }
+    }
+  }
+
+  @Override
+  public String getVersion() {
+    try {
+      return client.version();
+    } catch (IOException e) {
+      LOGGER.debug("Could not get clamd version", e);
+      return "1.0";
+    }
+  }
+
+  private static class ScanSummary {
+    private final StringBuilder report = new StringBuilder();
+    private int scanned = 0;
+    private int infected = 0;
+    private int errors = 0;
+
+    void addAll(List<ClamdClient.ScanResult> results) {
+      for (ClamdClient.ScanResult result : results) {
+        if (result.isInfected()) {
+          infected++;
+        } else if (!result.isClean()) {
+          errors++;
+        }
+        if (!result.isClean()) {
+          report.append(result).append('\n');
+        }
+      }
+    }
+
+    boolean isClean() {
+      return infected == 0 && errors == 0;
+    }
+
+    String getReport() {
+      StringBuilder ret = new StringBuilder(report);
+      ret.append("\n----------- SCAN SUMMARY -----------\n");
+      if (scanned > 0) {
+        ret.append("Scanned files: ").append(scanned).append('\n');
+      }
+      ret.append("Infected files: ").append(infected).append('\n');
+      if (errors > 0) {
+        ret.append("Total errors: ").append(errors).append('\n');
+      }
+      return ret.toString();
+    }
+  }
+}
@@ -0,0 +1,481 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.plugins.antivirus;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Client of the clamd daemon protocol (see {@code man clamd}).
+ *
+ * <p>
+ * Files are streamed to the daemon with {@code INSTREAM} commands inside
+ * {@code IDSESSION} sessions, so one connection is reused for many files and
+ * several files are in flight at the same time (the daemon scans them in
+ * parallel and replies with the request number). Idle sessions are kept in a
+ * pool and discarded once the daemon may have closed them (see clamd
+ * {@code IdleTimeout}). {@code MULTISCAN} asks the daemon to scan a whole
+ * folder in a single request, which requires the daemon to see the same file
+ * system.
+ * </p>
+ */
+public class ClamdClient implements Closeable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ClamdClient.class);
+
+  public static final int DEFAULT_PORT = 3310;
+  public static final int DEFAULT_TIMEOUT_IN_MILLIS = 60000;
+  public static final int DEFAULT_MAX_CONNECTIONS = 4;
+  public static final int DEFAULT_MAX_IN_FLIGHT = 8;
+  /** Sessions idle for longer are not reused (clamd closes them after 30s) */
+  public static final long DEFAULT_MAX_IDLE_IN_MILLIS = 20000;
+
+  private static final int CHUNK_SIZE = 64 * 1024;
+  private static final char DELIMITER = '\0';
+  private static final String OK = "OK";
+  private static final String FOUND = "FOUND";
+  private static final String ERROR = "ERROR";
+  private static final String SIZE_LIMIT_EXCEEDED = "INSTREAM size limit exceeded";
+  /** Failed version requests are not repeated before this interval */
+  private static final long VERSION_RETRY_INTERVAL_IN_MILLIS = 60000;
+
+  private final String host;
+  private final int port;
+  private final int timeoutInMillis;
+  private final int maxInFlight;
+  private final long maxIdleInMillis;
+
+  private final Semaphore connections;
+  private final Deque<Session> idleSessions = new LinkedList<>();
+  private volatile boolean closed = false;
+
+  private String version = null;
+  private long versionFailedAt = 0;
+
+  public ClamdClient(String host, int port, int timeoutInMillis, int maxConnections, int maxInFlight,
+    long maxIdleInMillis) {
+    this.host = host;
+    this.port = port;
+    this.timeoutInMillis = timeoutInMillis;
+    this.maxInFlight = Math.max(1, maxInFlight);
+    this.maxIdleInMillis = maxIdleInMillis;
+    this.connections = new Semaphore(Math.max(1, maxConnections), true);
+  }
+
+  public ClamdClient(String host, int port) {
+    this(host, port, DEFAULT_TIMEOUT_IN_MILLIS, DEFAULT_MAX_CONNECTIONS, DEFAULT_MAX_IN_FLIGHT,
+      DEFAULT_MAX_IDLE_IN_MILLIS);
+  }
+
+  public String getAddress() {
+    return host + ":" + port;
+  }
+
+  /**
+   * Returns the daemon version. It is only requested once, as it is needed
+   * every time the plugin version is shown.
+   */
+  public synchronized String version() throws IOException {
+    if (version == null) {
+      if (System.currentTimeMillis() - versionFailedAt < VERSION_RETRY_INTERVAL_IN_MILLIS) {
+        throw new IOException("clamd at " + getAddress() + " was not available a moment ago");
+      }
+      try {
+        version = sendCommand("VERSION").get(0);
+      } catch (IOException e) {
+        versionFailedAt = System.currentTimeMillis();
+        throw e;
+      }
+    }
+    return version;
+  }
+
+  public boolean ping() {
+    try {
+      return "PONG".equals(sendCommand("PING").get(0));
+    } catch (IOException e) {
+      LOGGER.debug("clamd at {} did not reply to ping", getAddress(), e);
+      return false;
+    }
+  }
+
+  /**
+   * Asks the daemon to scan the given file or folder, using all its threads.
+   * The path must be accessible by the daemon.
+   *
+   * @return one reply for each infected file or error, or a single OK reply if
+   *         nothing was found
+   */
+  public List<ScanResult> multiScan(Path path) throws IOException {
+    List<ScanResult> results = new ArrayList<>();
+    for (String reply : sendCommand("MULTISCAN " + path.toAbsolutePath())) {
+      int separator = reply.lastIndexOf(": ");
+      if (separator < 0) {
+        results.add(new ScanResult(path.toString(), reply));
+      } else {
+        results.add(new ScanResult(reply.substring(0, separator), reply.substring(separator + 2)));
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Streams the files to the daemon, reusing a pooled session and keeping up
+   * to {@code maxInFlight} files waiting for a reply.
+   *
+   * @return the result of each file, in the same order
+   */
+  public List<ScanResult> streamScan(List<Path> files) throws IOException {
+    Map<Path, ScanResult> results = new LinkedHashMap<>();
+    if (files.isEmpty()) {
+      return new ArrayList<>();
+    }
+
+    acquireConnection();
+    try {
+      while (!results.keySet().containsAll(files)) {
+        Session session = pollIdleSession();
+        boolean reused = session != null;
+        if (!reused) {
+          session = openSession();
+        }
+
+        int previousResults = results.size();
+        try {
+          streamScan(session, files, results);
+          if (session.failed) {
+            // clamd closes the session after some errors
+            session.closeQuietly();
+          } else {
+            releaseSession(session);
+          }
+        } catch (IOException e) {
+          session.closeQuietly();
+          if (!reused && results.size() == previousResults) {
+            throw e;
+          }
+          // the daemon closed an idle session or after an error, scans are
+          // idempotent so the files without a result are sent again
+          LOGGER.debug("clamd session failed, retrying the remaining files with a new one", e);
+        }
+      }
+    } finally {
+      connections.release();
+    }
+
+    List<ScanResult> ordered = new ArrayList<>();
+    for (Path file : files) {
+      ordered.add(results.get(file));
+    }
+    return ordered;
+  }
+
+  private void streamScan(Session session, List<Path> files, Map<Path, ScanResult> results) throws IOException {
+    Map<Integer, Path> inFlight = new LinkedHashMap<>();
+
+    for (Path file : files) {
+      if (results.containsKey(file)) {
+        continue;
+      }
+      if (inFlight.size() >= maxInFlight) {
+        session.out.flush();
+        readStreamReply(session, inFlight, results);
+      }
+      try (InputStream in = Files.newInputStream(file)) {
+        inFlight.put(session.startCommand("INSTREAM"), file);
+        session.stream(in);
+      } catch (SocketException e) {
+        // clamd replies and closes the connection when a file is larger than
+        // StreamMaxLength, so read the replies that were already sent
+        readPendingReplies(session, inFlight, results);
+        throw e;
+      }
+    }
+
+    session.out.flush();
+    while (!inFlight.isEmpty()) {
+      readStreamReply(session, inFlight, results);
+    }
+  }
+
+  private void readStreamReply(Session session, Map<Integer, Path> inFlight, Map<Path, ScanResult> results)
+    throws IOException {
+    String reply = session.readReply();
+
+    // "<id>: stream: <result>" or "<id>: <error message> ERROR"
+    int separator = reply.indexOf(": ");
+    Path file = null;
+    if (separator > 0) {
+      try {
+        file = inFlight.remove(Integer.parseInt(reply.substring(0, separator)));
+      } catch (NumberFormatException e) {
+        // handled below
+      }
+    }
+    if (file == null) {
+      throw new IOException("Unexpected reply from clamd: " + reply);
+    }
+
+    String result = reply.substring(separator + 2);
+    if (result.startsWith("stream: ")) {
+      result = result.substring("stream: ".length());
+    }
+    if (result.startsWith(SIZE_LIMIT_EXCEEDED)) {
+      result = "File is larger than clamd StreamMaxLength, it must be increased to scan this file " + ERROR;
+    }
+    ScanResult scanResult = new ScanResult(file.toString(), result);
+    session.failed |= scanResult.isError();
+    results.put(file, scanResult);
+  }
+
+  private void readPendingReplies(Session session, Map<Integer, Path> inFlight, Map<Path, ScanResult> results) {
+    try {
+      while (!inFlight.isEmpty()) {
+        readStreamReply(session, inFlight, results);
+      }
+    } catch (IOException e) {
+      // the connection is closed, the files without a reply are sent again
+    }
+  }
+
+  private List<String> sendCommand(String command) throws IOException {
+    acquireConnection();
+    try (Session connection = connect()) {
+      connection.writeCommand(command);
+      connection.out.flush();
+
+      // some commands (e.g. MULTISCAN) reply several times before closing
+      List<String> replies = new ArrayList<>();
+      String reply;
+      while ((reply = connection.readReplyOrNull()) != null) {
+        replies.add(reply);
+      }
+      if (replies.isEmpty()) {
+        throw new EOFException("clamd at " + getAddress() + " closed the connection without replying");
+      }
+      return replies;
+    } finally {
+      connections.release();
+    }
+  }
+
+  private void acquireConnection() throws IOException {
+    if (closed) {
+      throw new IOException("clamd client is closed");
+    }
+    try {
+      if (!connections.tryAcquire(timeoutInMillis, TimeUnit.MILLISECONDS)) {
+        throw new IOException("Timeout waiting for a free connection to clamd at " + getAddress());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for a connection to clamd", e);
+    }
+  }
+
+  private Session connect() throws IOException {
+    Socket socket = new Socket();
+    try {
+      socket.connect(new InetSocketAddress(host, port), timeoutInMillis);
+      socket.setSoTimeout(timeoutInMillis);
+      return new Session(socket);
+    } catch (IOException e) {
+      try {
+        socket.close();
+      } catch (IOException e2) {
+        // ignore
+      }
+      throw e;
+    }
+  }
+
+  private Session openSession() throws IOException {
+    Session session = connect();
+    session.writeCommand("IDSESSION");
+    return session;
+  }
+
+  private Session pollIdleSession() {
+    long now = System.currentTimeMillis();
+    synchronized (idleSessions) {
+      Session session;
+      while ((session = idleSessions.pollLast()) != null) {
+        if (now - session.lastUsed < maxIdleInMillis) {
+          return session;
+        }
+        session.end();
+      }
+    }
+    return null;
+  }
+
+  private void releaseSession(Session session) {
+    session.lastUsed = System.currentTimeMillis();
+    synchronized (idleSessions) {
+      if (!closed) {
+        idleSessions.addLast(session);
+        return;
+      }
+    }
+    session.end();
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    synchronized (idleSessions) {
+      for (Session session : idleSessions) {
+        session.end();
+      }
+      idleSessions.clear();
+    }
+  }
+
+  private static class Session implements Closeable {
+    private final Socket socket;
+    private final DataOutputStream out;
+    private final InputStream in;
+    private final byte[] buffer = new byte[CHUNK_SIZE];
+    private int nextId = 1;
+    private long lastUsed;
+    private boolean failed = false;
+
+    Session(Socket socket) throws IOException {
+      this.socket = socket;
+      this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), CHUNK_SIZE + 4));
+      this.in = new BufferedInputStream(socket.getInputStream());
+    }
+
+    void writeCommand(String command) throws IOException {
+      out.write(("z" + command + DELIMITER).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the request number the reply will have within the session
+     */
+    int startCommand(String command) throws IOException {
+      writeCommand(command);
+      return nextId++;
+    }
+
+    void stream(InputStream content) throws IOException {
+      int read;
+      while ((read = content.read(buffer)) != -1) {
+        if (read > 0) {
+          out.writeInt(read);
+          out.write(buffer, 0, read);
+        }
+      }
+      out.writeInt(0);
+    }
+
+    String readReply() throws IOException {
+      String reply = readReplyOrNull();
+      if (reply == null) {
+        throw new EOFException("clamd closed the connection");
+      }
+      return reply;
+    }
+
+    String readReplyOrNull() throws IOException {
+      ByteArrayOutputStream reply = new ByteArrayOutputStream();
+      int b;
+      while ((b = in.read()) != -1 && b != DELIMITER) {
+        reply.write(b);
+      }
+      if (b == -1 && reply.size() == 0) {
+        return null;
+      }
+      return new String(reply.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    void end() {
+      try {
+        writeCommand("END");
+        out.flush();
+      } catch (IOException e) {
+        // the daemon may have already closed the session
+      }
+      closeQuietly();
+    }
+
+    void closeQuietly() {
+      try {
+        close();
+      } catch (IOException e) {
+        // ignore
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      socket.close();
+    }
+  }
+
+  /**
+   * Result of scanning a file: {@code OK}, {@code <virus name> FOUND} or
+   * {@code <message> ERROR}.
+   */
+  public static class ScanResult {
+    private final String path;
+    private final String result;
+
+    public ScanResult(String path, String result) {
+      this.path = path;
+      this.result = result;
+    }
+
+    public String getPath() {
+      return path;
+    }
+
+    public String getResult() {
+      return result;
+    }
+
+    public boolean isClean() {
+      return OK.equals(result);
+    }
+
+    public boolean isInfected() {
+      return result.endsWith(" " + FOUND);
+    }
+
+    public boolean isError() {
+      return result.endsWith(ERROR);
+    }
+
+    @Override
+    public String toString() {
+      return path + ": " + result;
+    }
+  }
+}
@@ -16,12 +16,15 @@ import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.io.IOUtils;
 import org.roda.core.common.ConsumesOutputStream;
 import org.roda.core.common.DownloadUtils;
+import org.roda.core.common.tools.ZipTools;
 import org.roda.core.data.common.RodaConstants;
 import org.roda.core.data.common.RodaConstants.ExportType;
 import org.roda.core.data.common.RodaConstants.PreservationEventType;
@@ -34,7 +37,11 @@ import org.roda.core.data.exceptions.NotFoundException;
 import org.roda.core.data.exceptions.RequestNotValidException;
 import org.roda.core.data.v2.LiteOptionalWithCause;
 import org.roda.core.data.v2.ip.AIP;
+import org.roda.core.data.v2.index.filter.Filter;
+import org.roda.core.data.v2.index.filter.OneOfManyFilterParameter;
+import org.roda.core.data.v2.index.filter.SimpleFilterParameter;
 import org.roda.core.data.v2.ip.AIPState;
+import org.roda.core.data.v2.ip.IndexedFile;
 import org.roda.core.data.v2.ip.StoragePath;
 import org.roda.core.data.v2.jobs.Job;
 import org.roda.core.data.v2.jobs.PluginParameter;
@@ -44,6 +51,7 @@ import org.roda.core.data.v2.jobs.Report;
 import org.roda.core.data.v2.jobs.Report.PluginState;
 import org.roda.core.data.v2.validation.ValidationException;
 import org.roda.core.index.IndexService;
+import org.roda.core.index.utils.IterableIndexResult;
 import org.roda.core.model.ModelService;
 import org.roda.core.model.utils.ModelUtils;
 import org.roda.core.plugins.AbstractPlugin;
@@ -249,7 +257,8 @@ public class ExportAIPPlugin extends AbstractPlugin<AIP> {
           os = Files.newOutputStream(zip, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
 
           Directory directory = storage.getDirectory(ModelUtils.getAIPStoragePath(aip.getId()));
-          ConsumesOutputStream cos = DownloadUtils.download(storage, directory);
+          ConsumesOutputStream cos = DownloadUtils.download(storage, directory, null,
+            getAlreadyCompressedFiles(index, aip.getId()));
           cos.consumeOutputStream(os);
         }
       } catch (Exception e) {
@@ -276,6 +285,38 @@ public class ExportAIPPlugin extends AbstractPlugin<AIP> {
     return report;
   }
 
+  /**
+   * @return the paths, relative to the AIP folder, of the files whose format
+   *         (according to the index) is already compressed
+   */
+  private Set<String> getAlreadyCompressedFiles(IndexService index, String aipId)
+    throws GenericException, RequestNotValidException, IOException {
+    Set<String> alreadyCompressed = new HashSet<>();
+    Set<String> formats = ZipTools.getAlreadyCompressedFormats();
+    if (formats.isEmpty()) {
+      return alreadyCompressed;
+    }
+
+    Filter filter = new Filter(new SimpleFilterParameter(RodaConstants.FILE_AIP_ID, aipId),
+      new OneOfManyFilterParameter(RodaConstants.FILE_PRONOM, new ArrayList<>(formats)));
+    List<String> fields = Arrays.asList(RodaConstants.INDEX_UUID, RodaConstants.INDEX_ID,
+      RodaConstants.FILE_REPRESENTATION_ID, RodaConstants.FILE_PATH);
+    try (IterableIndexResult<IndexedFile> files = index.findAll(IndexedFile.class, filter, false, fields)) {
+      for (IndexedFile file : files) {
+        List<String> path = new ArrayList<>();
+        path.add(RodaConstants.STORAGE_DIRECTORY_REPRESENTATIONS);
+        path.add(file.getRepresentationId());
+        path.add(RodaConstants.STORAGE_DIRECTORY_DATA);
+        if (file.getPath() != null) {
+          path.addAll(file.getPath());
+        }
+        path.add(file.getId());
+        alreadyCompressed.add(String.join("/", path));
+      }
+    }
+    return alreadyCompressed;
+  }
+
   @Override
   public Report beforeAllExecute(IndexService index, ModelService model, StorageService storage)
     throws PluginException {
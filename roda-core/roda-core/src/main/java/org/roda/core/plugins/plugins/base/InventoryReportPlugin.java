@@ -7,10 +7,7 @@
  */
 package org.roda.core.plugins.plugins.base;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -22,8 +19,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVPrinter;
 import org.apache.commons.lang3.StringUtils;
 import org.roda.core.RodaCoreFactory;
 import org.roda.core.data.common.RodaConstants;
@@ -46,14 +41,12 @@ import org.roda.core.plugins.orchestrate.JobPluginInfo;
 import org.roda.core.plugins.plugins.PluginHelper;
 import org.roda.core.storage.StorageService;
 import org.roda.core.storage.fs.FSUtils;
-import org.roda.core.util.IdUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class InventoryReportPlugin extends AbstractPlugin<AIP> {
   private static final Logger LOGGER = LoggerFactory.getLogger(InventoryReportPlugin.class);
 
-  public static final String EXPORT_CSV_TEMP_FOLDER = "CSV";
   public static final String CSV_FILE_FIELDS = "parameter.csv.file.fields";
   public static final String CSV_FILE_OUTPUT = "parameter.csv.file.output";
   public static final String CSV_FILE_HEADERS = "parameter.csv.file.headers";
@@ -67,6 +60,9 @@ public class InventoryReportPlugin extends AbstractPlugin<AIP> {
   public static final String CSV_FIELD_FILE_PATH = "filePath";
   public static final String CSV_FIELD_FILE_ID = "fileId";
   public static final String CSV_FIELD_ISDIRECTORY = "isDirectory";
+  public static final String CSV_FIELD_SIZE = "fileSize";
+  public static final String CSV_FIELD_FORMAT_PRONOM = "formatPronom";
+  public static final String CSV_FIELD_FORMAT_MIMETYPE = "formatMimetype";
 
   public static final String CSV_FIELD_CHECKSUM_SHA1 = "SHA-1";
   public static final String CSV_FIELD_CHECKSUM_SHA256 = "SHA-256";
@@ -100,7 +96,9 @@ public class InventoryReportPlugin extends AbstractPlugin<AIP> {
   static {
     pluginParameters.put(CSV_FILE_FIELDS, new PluginParameter(CSV_FILE_FIELDS, "Attributes to include in the report",
       PluginParameterType.STRING, CSV_DEFAULT_FIELDS, true, false,
-      "List of file attributes to include in the inventory export. The example includes all the possible options. Remove attributes as necessary."));
+      "List of file attributes to include in the inventory export. The example includes all the default options, "
+        + CSV_FIELD_SIZE + ", " + CSV_FIELD_FORMAT_PRONOM + " and " + CSV_FIELD_FORMAT_MIMETYPE
+        + " may also be added. Remove attributes as necessary."));
     pluginParameters.put(CSV_FILE_OUTPUT,
       new PluginParameter(CSV_FILE_OUTPUT, "Report file path", PluginParameterType.STRING, CSV_DEFAULT_OUTPUT, true,
         false, "The full path and file name on the server where the inventory report file should be created."));
@@ -204,48 +202,36 @@ public class InventoryReportPlugin extends AbstractPlugin<AIP> {
   @Override
   public Report execute(IndexService index, ModelService model, StorageService storage,
     List<LiteOptionalWithCause> liteList) throws PluginException {
-
-    Path jobCSVTempFolder = getJobCSVTempFolder();
-    Path csvTempFile = jobCSVTempFolder.resolve(IdUtils.createUUID() + ".csv");
-
-    CSVFormat csvFileFormat = CSVFormat.DEFAULT.withRecordSeparator("\n");
-    try (BufferedWriter fileWriter = Files.newBufferedWriter(csvTempFile);
-      CSVPrinter csvFilePrinter = new CSVPrinter(fileWriter, csvFileFormat)) {
-      return PluginHelper.processObjects(this, new RODAObjectProcessingLogic<AIP>() {
-        @Override
-
-        public void process(IndexService index, ModelService model, StorageService storage, Report report,
-          Job cachedJob, JobPluginInfo jobPluginInfo, Plugin<AIP> plugin, AIP object) {
-          processAIP(model, storage, jobPluginInfo, csvFilePrinter, object);
-        }
-      }, index, model, storage, liteList);
-    } catch (IOException e) {
-      throw new PluginException("Unable to create/write to CSVPrinter", e);
+    InventoryReportWriter writer = InventoryReportWriter.get(PluginHelper.getJobId(this));
+    if (writer == null) {
+      throw new PluginException("The inventory report " + output + " is not open");
     }
-  }
 
-  private void processAIP(ModelService model, StorageService storage, JobPluginInfo jobPluginInfo,
-    CSVPrinter csvFilePrinter, AIP aip) {
-    if (csvFilePrinter == null) {
-      LOGGER.warn("CSVPrinter is NULL! Skipping...");
-      return;
-    }
+    return PluginHelper.processObjects(this, new RODAObjectProcessingLogic<AIP>() {
+      @Override
+      public void process(IndexService index, ModelService model, StorageService storage, Report report,
+        Job cachedJob, JobPluginInfo jobPluginInfo, Plugin<AIP> plugin, AIP object) {
+        processAIP(index, model, storage, jobPluginInfo, writer, object);
+      }
+    }, index, model, storage, liteList);
+  }
 
+  private void processAIP(IndexService index, ModelService model, StorageService storage,
+    JobPluginInfo jobPluginInfo, InventoryReportWriter writer, AIP aip) {
     try {
       if (outputDataInformation && aip.getRepresentations() != null) {
-        List<List<String>> dataInformation = InventoryReportPluginUtils.getDataInformation(fields, aip, model, storage);
-        csvFilePrinter.printRecords(dataInformation);
+        InventoryReportPluginUtils.writeDataInformation(fields, aip, index, model, storage, writer);
       }
       if (outputDescriptiveMetadataInformation && aip.getDescriptiveMetadata() != null) {
         List<List<String>> dataInformation = InventoryReportPluginUtils.getDescriptiveMetadataInformation(fields, aip,
           model, storage);
-        csvFilePrinter.printRecords(dataInformation);
+        writer.writeAll(dataInformation);
       }
       if (otherMetadataTypes != null && !otherMetadataTypes.isEmpty()) {
         for (String otherMetadataType : otherMetadataTypes) {
           List<List<String>> otherMetadataInformation = InventoryReportPluginUtils.getOtherMetadataInformation(fields,
             otherMetadataType, aip, model, storage);
-          csvFilePrinter.printRecords(otherMetadataInformation);
+          writer.writeAll(otherMetadataInformation);
         }
       }
       jobPluginInfo.incrementObjectsProcessedWithSuccess();
@@ -258,12 +244,6 @@ public class InventoryReportPlugin extends AbstractPlugin<AIP> {
   @Override
   public Report beforeAllExecute(IndexService index, ModelService model, StorageService storage)
     throws PluginException {
-    try {
-      Path jobCSVTempFolder = getJobCSVTempFolder();
-      Files.createDirectories(jobCSVTempFolder);
-    } catch (IOException e) {
-      LOGGER.error("Error while creating plugin working dir", e);
-    }
     try {
       Path reportsFolder = RodaCoreFactory.getRodaHomePath().resolve(RodaConstants.CORE_REPORT_FOLDER);
       if (FSUtils.exists(reportsFolder)) {
@@ -272,40 +252,23 @@ public class InventoryReportPlugin extends AbstractPlugin<AIP> {
     } catch (IOException e) {
       LOGGER.error("Error while creating report dir", e);
     }
-    return new Report();
-  }
 
-  private Path getJobCSVTempFolder() {
-    Path wd = RodaCoreFactory.getWorkingDirectory();
-    Path csvExportTempFolder = wd.resolve(InventoryReportPlugin.EXPORT_CSV_TEMP_FOLDER);
-    return csvExportTempFolder.resolve(PluginHelper.getJobId(this));
+    // all blocks write to the same file, through a single writer
+    try {
+      InventoryReportWriter.open(PluginHelper.getJobId(this), output, enableHeaders ? fields : null,
+        InventoryReportWriter.DEFAULT_QUEUE_SIZE);
+    } catch (IOException e) {
+      throw new PluginException("Unable to create inventory report " + output, e);
+    }
+    return new Report();
   }
 
   @Override
   public Report afterAllExecute(IndexService index, ModelService model, StorageService storage) throws PluginException {
-    CSVFormat csvFileFormat = CSVFormat.DEFAULT.withRecordSeparator("\n");
-    Path csvTempFolder = getJobCSVTempFolder();
-
-    if (csvTempFolder != null) {
-      List<Path> partials = new ArrayList<>();
-      try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(csvTempFolder);
-        FileWriter fileWriter = new FileWriter(output.toFile());
-        CSVPrinter csvFilePrinter = new CSVPrinter(fileWriter, csvFileFormat)) {
-        if (enableHeaders) {
-          csvFilePrinter.printRecord(fields);
-        }
-        for (Path path : directoryStream) {
-          partials.add(path);
-        }
-      } catch (IOException e) {
-        LOGGER.error("Error while merging partial CSVs", e);
-      }
-      try {
-        InventoryReportPluginUtils.mergeFiles(partials, output);
-        FSUtils.deletePathQuietly(csvTempFolder);
-      } catch (IOException e) {
-        LOGGER.error("Error while merging partial CSVs", e);
-      }
+    try {
+      InventoryReportWriter.close(PluginHelper.getJobId(this));
+    } catch (IOException e) {
+      LOGGER.error("Error while writing inventory report {}", output, e);
     }
     return new Report();
   }
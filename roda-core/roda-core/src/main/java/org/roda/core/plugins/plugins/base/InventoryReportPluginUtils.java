@@ -8,30 +8,39 @@
 package org.roda.core.plugins.plugins.base;
 
 import java.io.IOException;
-import java.nio.channels.FileChannel;
-import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
+import java.io.InputStream;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.xmlbeans.XmlException;
 import org.roda.core.common.PremisV3Utils;
 import org.roda.core.common.iterables.CloseableIterable;
+import org.roda.core.data.common.RodaConstants;
 import org.roda.core.data.exceptions.AuthorizationDeniedException;
 import org.roda.core.data.exceptions.GenericException;
 import org.roda.core.data.exceptions.NotFoundException;
 import org.roda.core.data.exceptions.RequestNotValidException;
 import org.roda.core.data.v2.common.OptionalWithCause;
+import org.roda.core.data.v2.index.filter.Filter;
+import org.roda.core.data.v2.index.filter.SimpleFilterParameter;
 import org.roda.core.data.v2.ip.AIP;
 import org.roda.core.data.v2.ip.File;
+import org.roda.core.data.v2.ip.IndexedFile;
 import org.roda.core.data.v2.ip.Representation;
 import org.roda.core.data.v2.ip.StoragePath;
 import org.roda.core.data.v2.ip.metadata.DescriptiveMetadata;
-import org.roda.core.data.v2.ip.metadata.Fixity;
 import org.roda.core.data.v2.ip.metadata.OtherMetadata;
+import org.roda.core.index.IndexService;
+import org.roda.core.index.utils.IterableIndexResult;
 import org.roda.core.model.ModelService;
 import org.roda.core.model.utils.ModelUtils;
 import org.roda.core.storage.Binary;
@@ -41,24 +50,46 @@ import org.roda.core.util.FileUtility;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import gov.loc.premis.v3.FixityComplexType;
+import gov.loc.premis.v3.FormatRegistryComplexType;
+import gov.loc.premis.v3.ObjectCharacteristicsComplexType;
+
 public class InventoryReportPluginUtils {
   private static final Logger LOGGER = LoggerFactory.getLogger(InventoryReportPluginUtils.class);
 
+  private static final List<String> INDEXED_FILE_FIELDS = Arrays.asList(RodaConstants.INDEX_UUID,
+    RodaConstants.INDEX_ID, RodaConstants.FILE_AIP_ID, RodaConstants.FILE_REPRESENTATION_ID, RodaConstants.FILE_PATH,
+    RodaConstants.FILE_ISDIRECTORY, RodaConstants.FILE_HASH, RodaConstants.FILE_SIZE, RodaConstants.FILE_PRONOM,
+    RodaConstants.FILE_FORMAT_MIMETYPE);
+
   private InventoryReportPluginUtils() {
     // do nothing
   }
 
-  public static void mergeFiles(List<Path> files, Path mergedFile) throws IOException {
-    try (FileChannel out = FileChannel.open(mergedFile, StandardOpenOption.APPEND, StandardOpenOption.WRITE)) {
-      for (Path path : files) {
-        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
-          for (long p = 0, l = in.size(); p < l;) {
-            p += in.transferTo(p, l - p, out);
-          }
-        }
+  /**
+   * Writes a row for each data file of the AIP. The files, and their fixities,
+   * size and format, are read from the index (or, if the AIP files are not
+   * indexed, from the model and PREMIS).
+   */
+  public static void writeDataInformation(List<String> fields, AIP aip, IndexService index, ModelService model,
+    StorageService storage, InventoryReportWriter writer) throws IOException {
+    boolean indexed = false;
+    Filter filter = new Filter(new SimpleFilterParameter(RodaConstants.FILE_AIP_ID, aip.getId()));
+    try (IterableIndexResult<IndexedFile> files = index.findAll(IndexedFile.class, filter, false,
+      INDEXED_FILE_FIELDS)) {
+      for (IndexedFile file : files) {
+        indexed = true;
+        File modelFile = new File(file.getId(), file.getAipId(), file.getRepresentationId(), file.getPath(),
+          file.isDirectory());
+        writer.write(retrieveFileInfo(fields, modelFile, aip, FileProperties.fromIndex(file), model, storage));
       }
-    } catch (IOException e) {
-      throw e;
+    } catch (GenericException | RequestNotValidException e) {
+      LOGGER.warn("Error retrieving files of AIP '{}' from index, listing them from the model instead", aip.getId(),
+        e);
+    }
+
+    if (!indexed) {
+      writer.writeAll(getDataInformation(fields, aip, model, storage));
     }
   }
 
@@ -150,9 +181,13 @@ public class InventoryReportPluginUtils {
 
   public static List<String> retrieveFileInfo(List<String> fields, File file, AIP aip, ModelService model,
     StorageService storage) {
+    return retrieveFileInfo(fields, file, aip, null, model, storage);
+  }
 
+  private static List<String> retrieveFileInfo(List<String> fields, File file, AIP aip, FileProperties properties,
+    ModelService model, StorageService storage) {
     List<String> fileInfo = new ArrayList<>();
-    List<Fixity> fixities = null;
+    FileProperties fileProperties = properties;
 
     for (String fieldName : fields) {
       if (fieldName.equalsIgnoreCase(InventoryReportPlugin.CSV_FIELD_SIP_ID)) {
@@ -168,22 +203,30 @@ public class InventoryReportPluginUtils {
       } else if (fieldName.equalsIgnoreCase(InventoryReportPlugin.CSV_FIELD_ISDIRECTORY)) {
         fileInfo.add(String.valueOf(file.isDirectory()));
       } else if (InventoryReportPlugin.CHECKSUM_ALGORITHMS.contains(fieldName.toUpperCase())) {
-        if (!file.isDirectory()) {
-          if (fixities == null) {
-            try {
-              fixities = PremisV3Utils.extractFixities(model.retrievePreservationFile(file));
-            } catch (GenericException | RequestNotValidException | NotFoundException | AuthorizationDeniedException
-              | XmlException | IOException e) {
-              LOGGER.error("Error extracting fixities from premis file.", e);
-            }
-          }
-
-          if (fixities != null) {
-            fileInfo.add(getFixity(fieldName, fixities, file, storage));
-          } else {
-            fileInfo.add("");
+        if (file.isDirectory()) {
+          fileInfo.add("");
+        } else {
+          if (fileProperties == null) {
+            fileProperties = FileProperties.fromPremis(file, model);
           }
+          fileProperties.computeMissingFixities(fields, file, storage);
+          fileInfo.add(fileProperties.fixities.getOrDefault(fieldName.toUpperCase(), ""));
+        }
+      } else if (fieldName.equalsIgnoreCase(InventoryReportPlugin.CSV_FIELD_SIZE)) {
+        if (fileProperties == null && !file.isDirectory()) {
+          fileProperties = FileProperties.fromPremis(file, model);
+        }
+        fileInfo.add(fileProperties != null && fileProperties.size != null ? fileProperties.size.toString() : "");
+      } else if (fieldName.equalsIgnoreCase(InventoryReportPlugin.CSV_FIELD_FORMAT_PRONOM)) {
+        if (fileProperties == null && !file.isDirectory()) {
+          fileProperties = FileProperties.fromPremis(file, model);
         }
+        fileInfo.add(fileProperties != null ? StringUtils.defaultString(fileProperties.pronom) : "");
+      } else if (fieldName.equalsIgnoreCase(InventoryReportPlugin.CSV_FIELD_FORMAT_MIMETYPE)) {
+        if (fileProperties == null && !file.isDirectory()) {
+          fileProperties = FileProperties.fromPremis(file, model);
+        }
+        fileInfo.add(fileProperties != null ? StringUtils.defaultString(fileProperties.mimetype) : "");
       } else if (fieldName.equalsIgnoreCase(InventoryReportPlugin.CSV_FILE_TYPE)) {
         fileInfo.add(InventoryReportPlugin.CSV_LINE_TYPE.DATA.toString());
       } else {
@@ -194,26 +237,121 @@ public class InventoryReportPluginUtils {
     return fileInfo;
   }
 
-  private static String getFixity(String fixityAlgorithm, List<Fixity> fixities, File file, StorageService storage) {
-    String fixity = "";
-    if (fixities != null && !fixities.isEmpty()) {
-      for (Fixity f : fixities) {
-        if (f.getMessageDigestAlgorithm() != null && f.getMessageDigestAlgorithm().equalsIgnoreCase(fixityAlgorithm)) {
-          fixity = f.getMessageDigest();
-          break;
+  /**
+   * Properties of a data file that are already known (from the index or
+   * PREMIS), so that the file content is only read when a fixity is missing or
+   * no longer matches the file.
+   */
+  private static class FileProperties {
+    // e.g. "d41d8cd98f00b204e9800998ecf8427e (MD5, RODA)"
+    private static final Pattern INDEXED_HASH = Pattern.compile("^(\\S+) \\(([^,)]+)");
+
+    private final Map<String, String> fixities = new HashMap<>();
+    private Long size = null;
+    private String pronom = null;
+    private String mimetype = null;
+    private boolean verified = false;
+
+    static FileProperties fromIndex(IndexedFile file) {
+      FileProperties properties = new FileProperties();
+      if (file.getHash() != null) {
+        for (String hash : file.getHash()) {
+          Matcher matcher = INDEXED_HASH.matcher(hash);
+          if (matcher.find()) {
+            properties.fixities.put(matcher.group(2).trim().toUpperCase(), matcher.group(1));
+          }
+        }
+      }
+      // files without PREMIS are indexed with size 0
+      if (!properties.fixities.isEmpty() || file.getSize() > 0) {
+        properties.size = file.getSize();
+      }
+      if (file.getFileFormat() != null) {
+        properties.pronom = file.getFileFormat().getPronom();
+        properties.mimetype = file.getFileFormat().getMimeType();
+      }
+      return properties;
+    }
+
+    static FileProperties fromPremis(File file, ModelService model) {
+      FileProperties properties = new FileProperties();
+      try (InputStream inputStream = model.retrievePreservationFile(file).getContent().createInputStream()) {
+        gov.loc.premis.v3.File premisFile = PremisV3Utils.binaryToFile(inputStream);
+        if (premisFile.getObjectCharacteristicsArray() != null
+          && premisFile.getObjectCharacteristicsArray().length > 0) {
+          ObjectCharacteristicsComplexType characteristics = premisFile.getObjectCharacteristicsArray(0);
+          for (FixityComplexType fixity : characteristics.getFixityArray()) {
+            if (fixity.getMessageDigestAlgorithm() != null && StringUtils.isNotBlank(fixity.getMessageDigest())) {
+              properties.fixities.put(fixity.getMessageDigestAlgorithm().getStringValue().toUpperCase(),
+                fixity.getMessageDigest());
+            }
+          }
+          // as in the index, an unknown size is 0
+          if (!properties.fixities.isEmpty() || characteristics.getSize() > 0) {
+            properties.size = characteristics.getSize();
+          }
+          if (characteristics.getFormatArray() != null && characteristics.getFormatArray().length > 0) {
+            properties.pronom = getFormatRegistryKey(premisFile, RodaConstants.PRESERVATION_REGISTRY_PRONOM);
+            properties.mimetype = getFormatRegistryKey(premisFile, RodaConstants.PRESERVATION_REGISTRY_MIME);
+          }
         }
+      } catch (GenericException | RequestNotValidException | NotFoundException | AuthorizationDeniedException
+        | XmlException | IOException e) {
+        LOGGER.debug("Could not read PREMIS file of file '{}' of AIP '{}'", file.getId(), file.getAipId(), e);
       }
+      return properties;
+    }
+
+    private static String getFormatRegistryKey(gov.loc.premis.v3.File premisFile, String registryName) {
+      FormatRegistryComplexType registry = PremisV3Utils.getFormatRegistry(premisFile, registryName);
+      return registry != null && registry.getFormatRegistryKey() != null
+        ? registry.getFormatRegistryKey().getStringValue()
+        : null;
     }
-    if (StringUtils.isBlank(fixity)) {
+
+    /**
+     * Computes, reading the file once, the requested fixities that are
+     * missing or all of them if the file size changed since they were
+     * recorded.
+     */
+    void computeMissingFixities(List<String> fields, File file, StorageService storage) {
+      if (verified) {
+        return;
+      }
+      verified = true;
+
+      Set<String> missing = new HashSet<>();
+      for (String fieldName : fields) {
+        String algorithm = fieldName.toUpperCase();
+        if (InventoryReportPlugin.CHECKSUM_ALGORITHMS.contains(algorithm)
+          && StringUtils.isBlank(fixities.get(algorithm))) {
+          missing.add(algorithm);
+        }
+      }
+
       try {
         Binary binary = storage.getBinary(ModelUtils.getFileStoragePath(file));
-        fixity = FileUtility.checksum(binary.getContent().createInputStream(), fixityAlgorithm);
-      } catch (NoSuchAlgorithmException | IOException | GenericException | RequestNotValidException | NotFoundException
-        | AuthorizationDeniedException e) {
-        fixity = "";
+        if (size != null && binary.getSizeInBytes() != null && !size.equals(binary.getSizeInBytes())) {
+          LOGGER.debug("Fixities of file '{}' of AIP '{}' are stale, computing them again", file.getId(),
+            file.getAipId());
+          fixities.clear();
+          missing.clear();
+          fields.stream().map(String::toUpperCase).filter(InventoryReportPlugin.CHECKSUM_ALGORITHMS::contains)
+            .forEach(missing::add);
+        }
+        size = binary.getSizeInBytes();
+
+        if (!missing.isEmpty()) {
+          try (InputStream inputStream = binary.getContent().createInputStream()) {
+            fixities.putAll(FileUtility.checksums(inputStream, missing));
+          }
+        }
+      } catch (NoSuchAlgorithmException | IOException | GenericException | RequestNotValidException
+        | NotFoundException | AuthorizationDeniedException e) {
+        LOGGER.error("Error while calculating fixities for file '{}' of AIP '{}': {}", file.getId(), file.getAipId(),
+          e.getMessage(), e);
       }
     }
-    return fixity;
   }
 
   public static List<List<String>> getOtherMetadataInformation(List<String> fields, String otherMetadataType, AIP aip,
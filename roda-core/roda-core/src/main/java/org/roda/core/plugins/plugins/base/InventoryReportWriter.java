@@ -0,0 +1,153 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.plugins.base;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the rows of an inventory report to a single CSV file. Rows may be
+ * written by several threads (the plugin instances processing each block of
+ * AIPs) and are handed to a single writer thread through a bounded queue, so
+ * producers wait when the file cannot be written as fast as rows are created.
+ */
+public class InventoryReportWriter implements Closeable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(InventoryReportWriter.class);
+
+  public static final int DEFAULT_QUEUE_SIZE = 10000;
+
+  // marks the end of the rows, compared by reference
+  private static final List<String> END = new ArrayList<>();
+  private static final Map<String, InventoryReportWriter> WRITERS = new ConcurrentHashMap<>();
+
+  private final CSVPrinter printer;
+  private final BlockingQueue<List<String>> queue;
+  private final Thread writerThread;
+  private volatile IOException error = null;
+  private boolean closed = false;
+
+  public InventoryReportWriter(Path output, List<String> headers, int queueSize) throws IOException {
+    BufferedWriter writer = Files.newBufferedWriter(output);
+    this.printer = new CSVPrinter(writer, CSVFormat.DEFAULT.withRecordSeparator("\n"));
+    if (headers != null) {
+      printer.printRecord(headers);
+    }
+    this.queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+    this.writerThread = new Thread(this::writeRows, "inventory-report-writer-" + output.getFileName());
+    this.writerThread.setDaemon(true);
+    this.writerThread.start();
+  }
+
+  /**
+   * Opens the writer of the given job, which can then be obtained with
+   * {@link #get(String)} until it is closed with {@link #close(String)}.
+   */
+  public static InventoryReportWriter open(String jobId, Path output, List<String> headers, int queueSize)
+    throws IOException {
+    InventoryReportWriter writer = new InventoryReportWriter(output, headers, queueSize);
+    InventoryReportWriter previous = WRITERS.put(jobId, writer);
+    if (previous != null) {
+      previous.close();
+    }
+    return writer;
+  }
+
+  public static InventoryReportWriter get(String jobId) {
+    return WRITERS.get(jobId);
+  }
+
+  public static void close(String jobId) throws IOException {
+    InventoryReportWriter writer = WRITERS.remove(jobId);
+    if (writer != null) {
+      writer.close();
+    }
+  }
+
+  /**
+   * Queues a row to be written, waiting if the queue is full.
+   *
+   * @throws IOException
+   *           if writing previous rows failed
+   */
+  public void write(List<String> row) throws IOException {
+    checkError();
+    try {
+      queue.put(row);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while writing inventory report row", e);
+    }
+  }
+
+  public void writeAll(List<List<String>> rows) throws IOException {
+    for (List<String> row : rows) {
+      write(row);
+    }
+  }
+
+  private void checkError() throws IOException {
+    if (error != null) {
+      throw new IOException("Error writing inventory report", error);
+    }
+  }
+
+  private void writeRows() {
+    try {
+      List<String> row;
+      while ((row = queue.take()) != END) {
+        if (error == null) {
+          try {
+            printer.printRecord(row);
+          } catch (IOException e) {
+            LOGGER.error("Error writing inventory report", e);
+            error = e;
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Writes the queued rows and closes the file.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+
+    try {
+      queue.put(END);
+      writerThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      writerThread.interrupt();
+      throw new IOException("Interrupted while closing inventory report", e);
+    } finally {
+      printer.close();
+    }
+    checkError();
+  }
+}
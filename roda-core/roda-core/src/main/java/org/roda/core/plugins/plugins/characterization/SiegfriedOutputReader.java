@@ -0,0 +1,179 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.plugins.characterization;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.roda.core.plugins.PluginException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Reads the Siegfried JSON output one file at a time, while Siegfried is
+ * still identifying the remaining ones, so that memory use does not depend on
+ * the number of identified files.
+ */
+public class SiegfriedOutputReader implements Closeable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SiegfriedOutputReader.class);
+
+  private static final String FILES = "files";
+  private static final int MAX_ERROR_OUTPUT_LENGTH = 4096;
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private final JsonParser parser;
+  private boolean inFiles = false;
+  private boolean finished = false;
+
+  private Process process = null;
+  private Path errorOutput = null;
+  private HttpURLConnection connection = null;
+
+  public SiegfriedOutputReader(InputStream output) throws IOException {
+    this.parser = MAPPER.getFactory().createParser(output);
+    if (parser.nextToken() != JsonToken.START_OBJECT) {
+      throw new JsonParseException(parser, "Siegfried output is not a JSON object");
+    }
+  }
+
+  /**
+   * Runs Siegfried with the given command and reads its standard output.
+   */
+  public static SiegfriedOutputReader fromCommand(List<String> command) throws IOException {
+    LOGGER.debug("Executing {}", command);
+    Path errorOutput = Files.createTempFile("siegfried", ".err");
+    Process process = null;
+    try {
+      process = new ProcessBuilder(command).redirectError(errorOutput.toFile()).start();
+      SiegfriedOutputReader reader = new SiegfriedOutputReader(process.getInputStream());
+      reader.process = process;
+      reader.errorOutput = errorOutput;
+      return reader;
+    } catch (IOException e) {
+      if (process != null) {
+        process.destroy();
+      }
+      Files.deleteIfExists(errorOutput);
+      throw e;
+    }
+  }
+
+  /**
+   * Reads the output of a Siegfried server.
+   */
+  public static SiegfriedOutputReader fromURL(String url) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+    try {
+      int responseCode = connection.getResponseCode();
+      if (responseCode != HttpURLConnection.HTTP_OK) {
+        throw new IOException("Unable to connect to server, response code: " + responseCode);
+      }
+      SiegfriedOutputReader reader = new SiegfriedOutputReader(connection.getInputStream());
+      reader.connection = connection;
+      return reader;
+    } catch (IOException e) {
+      connection.disconnect();
+      throw e;
+    }
+  }
+
+  /**
+   * @return the next element of the {@code files} array or null if there are
+   *         no more files
+   */
+  public JsonNode nextFile() throws IOException {
+    while (!finished) {
+      if (inFiles) {
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.START_OBJECT) {
+          return MAPPER.readTree(parser);
+        } else if (token == JsonToken.END_ARRAY) {
+          inFiles = false;
+        } else {
+          throw new JsonParseException(parser, "Unexpected element in Siegfried files: " + token);
+        }
+      } else {
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.FIELD_NAME) {
+          String field = parser.getCurrentName();
+          if (parser.nextToken() == JsonToken.START_ARRAY && FILES.equals(field)) {
+            inFiles = true;
+          } else {
+            parser.skipChildren();
+          }
+        } else {
+          finished = true;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Waits for Siegfried to exit, after all files were read.
+   *
+   * @throws PluginException
+   *           if Siegfried terminated with an error
+   */
+  public void finish() throws PluginException {
+    if (process != null) {
+      try {
+        int exitValue = process.waitFor();
+        if (exitValue != 0) {
+          throw new PluginException("Siegfried terminated with error code " + exitValue + ": " + getErrorOutput());
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new PluginException("Interrupted while waiting for Siegfried", e);
+      }
+    }
+  }
+
+  private String getErrorOutput() {
+    try {
+      byte[] error = Files.readAllBytes(errorOutput);
+      int start = Math.max(0, error.length - MAX_ERROR_OUTPUT_LENGTH);
+      return new String(error, start, error.length - start, StandardCharsets.UTF_8).trim();
+    } catch (IOException e) {
+      return "";
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      parser.close();
+    } finally {
+      if (process != null) {
+        IOUtils.closeQuietly(process.getInputStream());
+        if (process.isAlive()) {
+          process.destroy();
+        }
+        Files.deleteIfExists(errorOutput);
+      }
+      if (connection != null) {
+        connection.disconnect();
+      }
+    }
+  }
+}
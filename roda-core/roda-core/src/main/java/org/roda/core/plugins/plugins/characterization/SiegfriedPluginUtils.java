@@ -19,12 +19,13 @@ import java.util.regex.Pattern;
 import org.apache.commons.lang3.StringUtils;
 import org.roda.core.RodaCoreFactory;
 import org.roda.core.common.PremisV3Utils;
+import org.roda.core.common.tracing.Tracing;
+import org.roda.core.common.tracing.Tracing.Stage;
 import org.roda.core.data.common.RodaConstants;
 import org.roda.core.data.exceptions.AuthorizationDeniedException;
 import org.roda.core.data.exceptions.GenericException;
 import org.roda.core.data.exceptions.NotFoundException;
 import org.roda.core.data.exceptions.RequestNotValidException;
-import org.roda.core.data.utils.JsonUtils;
 import org.roda.core.data.v2.IsRODAObject;
 import org.roda.core.data.v2.ip.File;
 import org.roda.core.data.v2.ip.Representation;
@@ -49,6 +50,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 
 public class SiegfriedPluginUtils {
   private static final Logger LOGGER = LoggerFactory.getLogger(SiegfriedPluginUtils.class);
+  private static final Tracing.Operation SIEGFRIED = Tracing.operation(Stage.TOOL, "siegfried");
 
   private SiegfriedPluginUtils() {
     // do nothing
@@ -78,13 +80,34 @@ public class SiegfriedPluginUtils {
       } else {
         LOGGER.debug("Running Siegfried on standalone mode");
         List<String> command = getBatchCommand(sourceDirectory);
-        return CommandUtility.execute(command, false);
+        try (Tracing.Span span = SIEGFRIED.start(sourceDirectory)) {
+          return CommandUtility.execute(command, false);
+        }
       }
     } catch (CommandException | GenericException e) {
       throw new PluginException("Error while executing Siegfried: " + e.getMessage());
     }
   }
 
+  /**
+   * Runs Siegfried on the path and returns its output as it is produced, one
+   * identified file at a time.
+   */
+  public static SiegfriedOutputReader openSiegfriedOutput(Path sourceDirectory) throws PluginException {
+    try {
+      String siegfriedMode = RodaCoreFactory.getRodaConfigurationAsString("core", "tools", "siegfried", "mode");
+      if ("server".equalsIgnoreCase(siegfriedMode)) {
+        LOGGER.debug("Running Siegfried on server mode");
+        return SiegfriedOutputReader.fromURL(getSiegfriedServerEndpoint(sourceDirectory));
+      } else {
+        LOGGER.debug("Running Siegfried on standalone mode");
+        return SiegfriedOutputReader.fromCommand(getBatchCommand(sourceDirectory));
+      }
+    } catch (IOException e) {
+      throw new PluginException("Error while executing Siegfried: " + e.getMessage(), e);
+    }
+  }
+
   public static String getVersion() {
     try {
       String siegfriedPath = RodaCoreFactory.getRodaConfigurationAsString("core", "tools", "siegfried", "binary");
@@ -152,55 +175,71 @@ public class SiegfriedPluginUtils {
     List<LinkingIdentifier> sources = new ArrayList<>();
 
     if (FSUtils.exists(path)) {
-      String siegfriedOutput = SiegfriedPluginUtils.runSiegfriedOnPath(path);
-      final JsonNode jsonObject = JsonUtils.parseJson(siegfriedOutput);
-      final JsonNode files = jsonObject.get("files");
-
-      for (JsonNode file : files) {
-        Path fullFsPath = Paths.get(file.get("filename").asText());
-        Path relativeFsPath = path.relativize(fullFsPath);
-        String jsonFileId = fullFsPath.getFileName().toString();
-
-        List<String> jsonFilePath = new ArrayList<>(fileDirectoryPath);
-        if (fileId != null) {
-          jsonFilePath.add(fileId);
+      try (SiegfriedOutputReader siegfriedOutput = openSiegfriedOutput(path)) {
+        JsonNode file;
+        while ((file = siegfriedOutput.nextFile()) != null) {
+          sources.add(processSiegfriedFile(model, aipId, representationId, fileDirectoryPath, fileId, path, file));
         }
+        siegfriedOutput.finish();
+      } catch (IOException e) {
+        throw new PluginException("Error while reading Siegfried output: " + e.getMessage(), e);
+      }
+    }
 
-        for (int j = 0; j < relativeFsPath.getNameCount()
-          && StringUtils.isNotBlank(relativeFsPath.getName(j).toString()); j++) {
-          jsonFilePath.add(relativeFsPath.getName(j).toString());
-        }
-
-        jsonFilePath.remove(jsonFilePath.size() - 1);
-
-        ContentPayload payload = new StringContentPayload(file.toString());
-        model.createOrUpdateOtherMetadata(aipId, representationId, jsonFilePath, jsonFileId,
-          SiegfriedPlugin.FILE_SUFFIX, RodaConstants.OTHER_METADATA_TYPE_SIEGFRIED, payload, false);
+    return sources;
+  }
 
-        sources.add(PluginHelper.getLinkingIdentifier(aipId, representationId, jsonFilePath, jsonFileId,
-          RodaConstants.PRESERVATION_LINKING_OBJECT_SOURCE));
+  private static LinkingIdentifier processSiegfriedFile(ModelService model, String aipId, String representationId,
+    List<String> fileDirectoryPath, String fileId, Path path, JsonNode file)
+    throws RequestNotValidException, GenericException, NotFoundException, AuthorizationDeniedException {
+    Path fullFsPath = Paths.get(file.get("filename").asText());
+    Path relativeFsPath = path.relativize(fullFsPath);
+    String jsonFileId = fullFsPath.getFileName().toString();
 
-        // Update PREMIS files
-        final JsonNode matches = file.get("matches");
-        for (JsonNode match : matches) {
-          String format = null;
-          String version = null;
-          String pronom = null;
-          String mime = null;
+    List<String> jsonFilePath = new ArrayList<>(fileDirectoryPath);
+    if (fileId != null) {
+      jsonFilePath.add(fileId);
+    }
 
-          if ("pronom".equalsIgnoreCase(match.get("ns").textValue())) {
-            format = match.get("format").textValue();
-            version = match.get("version").textValue();
-            pronom = match.get("id").textValue();
-            mime = match.get("mime").textValue();
-          }
+    for (int j = 0; j < relativeFsPath.getNameCount()
+      && StringUtils.isNotBlank(relativeFsPath.getName(j).toString()); j++) {
+      jsonFilePath.add(relativeFsPath.getName(j).toString());
+    }
 
-          PremisV3Utils.updateFormatPreservationMetadata(model, aipId, representationId, jsonFilePath, jsonFileId,
-            format, version, pronom, mime, true);
+    jsonFilePath.remove(jsonFilePath.size() - 1);
+
+    ContentPayload payload = new StringContentPayload(file.toString());
+    model.createOrUpdateOtherMetadata(aipId, representationId, jsonFilePath, jsonFileId, SiegfriedPlugin.FILE_SUFFIX,
+      RodaConstants.OTHER_METADATA_TYPE_SIEGFRIED, payload, false);
+
+    // Update PREMIS file once with all matches, later matches taking
+    // precedence like when they were written one by one
+    final JsonNode matches = file.get("matches");
+    if (matches != null && matches.size() > 0) {
+      String format = null;
+      String version = null;
+      String pronom = null;
+      String mime = null;
+
+      for (JsonNode match : matches) {
+        if ("pronom".equalsIgnoreCase(match.path("ns").textValue())) {
+          format = firstNotBlank(match.path("format").textValue(), format);
+          version = firstNotBlank(match.path("version").textValue(), version);
+          pronom = firstNotBlank(match.path("id").textValue(), pronom);
+          mime = firstNotBlank(match.path("mime").textValue(), mime);
         }
       }
+
+      // the index is updated afterwards, with the representation or file
+      PremisV3Utils.updateFormatPreservationMetadata(model, aipId, representationId, jsonFilePath, jsonFileId, format,
+        version, pronom, mime, false);
     }
 
-    return sources;
+    return PluginHelper.getLinkingIdentifier(aipId, representationId, jsonFilePath, jsonFileId,
+      RodaConstants.PRESERVATION_LINKING_OBJECT_SOURCE);
+  }
+
+  private static String firstNotBlank(String value, String defaultValue) {
+    return StringUtils.isNotBlank(value) ? value : defaultValue;
   }
 }
@@ -17,6 +17,7 @@ import org.roda.core.data.exceptions.InvalidParameterException;
 import org.roda.core.data.v2.IsRODAObject;
 import org.roda.core.data.v2.jobs.PluginParameter;
 import org.roda.core.data.v2.jobs.PluginParameter.PluginParameterType;
+import org.roda.core.util.CommandException;
 
 public abstract class CommandConvertPlugin<T extends IsRODAObject> extends AbstractConvertPlugin<T> {
 
@@ -58,6 +59,22 @@ public abstract class CommandConvertPlugin<T extends IsRODAObject> extends Abstr
     commandArguments = args;
   }
 
+  /**
+   * Runs the conversion tool with a worker of its pool (see
+   * {@link ToolWorkerPool}), falling back to running the given command when
+   * the tool has no workers configured or they cannot be used.
+   *
+   * <p>
+   * No converter in this repository uses it yet: converters provided as
+   * external plugins must call it instead of running their command directly
+   * for their {@code core.tools.TOOL.worker.*} settings to have any effect.
+   * </p>
+   */
+  protected String executeCommand(String toolName, List<String> workerArguments, List<String> command)
+    throws CommandException {
+    return ToolWorkerPool.execute(toolName, workerArguments, command);
+  }
+
   @Override
   public List<PluginParameter> getParameters() {
     return this.orderParameters(this.getDefaultParameters());
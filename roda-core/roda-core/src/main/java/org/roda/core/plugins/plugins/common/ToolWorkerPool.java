@@ -0,0 +1,391 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.plugins.common;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.lang3.StringUtils;
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.common.tracing.Tracing;
+import org.roda.core.common.tracing.Tracing.Stage;
+import org.roda.core.util.CommandException;
+import org.roda.core.util.CommandUtility;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of long-lived tool processes (workers), for tools whose startup takes
+ * longer than the work itself (e.g. JVM based converters).
+ *
+ * <p>
+ * Workers read one request per line from their standard input, with the
+ * arguments separated by tabs, and answer with any number of output lines,
+ * each prefixed with {@code OUT } (or just {@code OUT} if empty), followed by
+ * a line with {@code OK} or {@code ERROR <message>}. As tool output is always
+ * prefixed, it cannot be mistaken for the end of the reply; any other line is
+ * a protocol error and the worker is replaced. A {@code PING} request must be
+ * answered with {@code PONG}, which is used to check workers that were idle
+ * for a while. Standard error is not read.
+ * </p>
+ *
+ * <p>
+ * Pools are configured per tool with the
+ * {@code core.tools.TOOL.worker.*} properties and obtained with
+ * {@link #getPool(String)}.
+ * </p>
+ */
+public class ToolWorkerPool implements Closeable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ToolWorkerPool.class);
+
+  public static final String PING = "PING";
+  public static final String PONG = "PONG";
+  public static final String OUTPUT = "OUT";
+  public static final String OK = "OK";
+  public static final String ERROR = "ERROR";
+  public static final String ARGUMENT_SEPARATOR = "\t";
+
+  public static final int DEFAULT_MAX_WORKERS = 2;
+  public static final long DEFAULT_TIMEOUT_IN_MILLIS = 600000;
+  public static final long DEFAULT_HEALTH_CHECK_INTERVAL_IN_MILLIS = 60000;
+  public static final int DEFAULT_MAX_REQUESTS_PER_WORKER = 1000;
+
+  private static final String CONFIG_PREFIX = "core.tools.";
+  private static final String CONFIG_WORKER = ".worker.";
+
+  private static final Map<String, Optional<ToolWorkerPool>> POOLS = new ConcurrentHashMap<>();
+
+  private final String name;
+  private final List<String> workerCommand;
+  private final long timeoutInMillis;
+  private final long healthCheckIntervalInMillis;
+  private final int maxRequestsPerWorker;
+
+  private final Semaphore permits;
+  private final Deque<Worker> idleWorkers = new ArrayDeque<>();
+  private final ScheduledExecutorService watchdog;
+  private volatile boolean closed = false;
+
+  public ToolWorkerPool(String name, List<String> workerCommand, int maxWorkers, long timeoutInMillis,
+    long healthCheckIntervalInMillis, int maxRequestsPerWorker) {
+    this.name = name;
+    this.workerCommand = new ArrayList<>(workerCommand);
+    this.timeoutInMillis = timeoutInMillis;
+    this.healthCheckIntervalInMillis = healthCheckIntervalInMillis;
+    this.maxRequestsPerWorker = maxRequestsPerWorker;
+    this.permits = new Semaphore(Math.max(1, maxWorkers), true);
+    this.watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "tool-worker-watchdog-" + name);
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  public ToolWorkerPool(String name, List<String> workerCommand) {
+    this(name, workerCommand, DEFAULT_MAX_WORKERS, DEFAULT_TIMEOUT_IN_MILLIS, DEFAULT_HEALTH_CHECK_INTERVAL_IN_MILLIS,
+      DEFAULT_MAX_REQUESTS_PER_WORKER);
+  }
+
+  /**
+   * @return the worker pool of the given tool, if one is configured in
+   *         {@code core.tools.TOOL.worker.command}
+   */
+  public static Optional<ToolWorkerPool> getPool(String toolName) {
+    return POOLS.computeIfAbsent(toolName, ToolWorkerPool::createPool);
+  }
+
+  private static Optional<ToolWorkerPool> createPool(String toolName) {
+    Configuration configuration = RodaCoreFactory.getRodaConfiguration();
+    if (configuration == null) {
+      return Optional.empty();
+    }
+
+    String prefix = CONFIG_PREFIX + toolName + CONFIG_WORKER;
+    String command = configuration.getString(prefix + "command", "");
+    if (StringUtils.isBlank(command)) {
+      return Optional.empty();
+    }
+
+    return Optional.of(new ToolWorkerPool(toolName, Arrays.asList(command.trim().split(" ")),
+      configuration.getInt(prefix + "max_workers", DEFAULT_MAX_WORKERS),
+      configuration.getLong(prefix + "timeout", DEFAULT_TIMEOUT_IN_MILLIS),
+      configuration.getLong(prefix + "health_check_interval", DEFAULT_HEALTH_CHECK_INTERVAL_IN_MILLIS),
+      configuration.getInt(prefix + "max_requests", DEFAULT_MAX_REQUESTS_PER_WORKER)));
+  }
+
+  /**
+   * Closes the pools obtained with {@link #getPool(String)}.
+   */
+  public static void shutdownAll() {
+    for (Optional<ToolWorkerPool> pool : POOLS.values()) {
+      pool.ifPresent(ToolWorkerPool::close);
+    }
+    POOLS.clear();
+  }
+
+  /**
+   * Runs the given tool with a worker of its pool, if the tool has one,
+   * otherwise with a new process.
+   *
+   * @param toolName
+   *          the tool, see {@link #getPool(String)}
+   * @param workerArguments
+   *          the request sent to the worker
+   * @param command
+   *          the command to run when there is no worker pool or no worker can
+   *          be used
+   * @return the output of the tool
+   */
+  public static String execute(String toolName, List<String> workerArguments, List<String> command)
+    throws CommandException {
+    try (Tracing.Span span = Tracing.start(Stage.TOOL, toolName)) {
+      Optional<ToolWorkerPool> pool = getPool(toolName);
+      if (pool.isPresent()) {
+        return pool.get().execute(workerArguments, command);
+      } else {
+        return CommandUtility.execute(command);
+      }
+    }
+  }
+
+  /**
+   * Sends a request to an idle worker, starting a new one if needed and
+   * waiting if the maximum number of workers are busy.
+   *
+   * @param arguments
+   *          the request, which cannot contain tabs or line breaks
+   * @param fallbackCommand
+   *          the command to run if a worker cannot be started or stops while
+   *          handling the request, or null to fail instead
+   * @return the output lines of the worker (or fallback command)
+   * @throws CommandException
+   *           if the worker (or fallback command) answers with an error or
+   *           the request times out
+   */
+  public String execute(List<String> arguments, List<String> fallbackCommand) throws CommandException {
+    for (String argument : arguments) {
+      if (StringUtils.containsAny(argument, '\t', '\n', '\r')) {
+        throw new CommandException("Invalid argument for " + name + " worker: " + argument);
+      }
+    }
+    String request = String.join(ARGUMENT_SEPARATOR, arguments);
+
+    try {
+      permits.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CommandException("Interrupted while waiting for a " + name + " worker", e);
+    }
+
+    Worker worker = null;
+    try {
+      worker = borrowWorker();
+      String output = worker.request(request);
+      returnWorker(worker);
+      return output;
+    } catch (WorkerErrorException e) {
+      returnWorker(worker);
+      throw new CommandException("The " + name + " worker could not handle " + request + ": " + e.getMessage(), 1,
+        e.output);
+    } catch (WorkerTimeoutException e) {
+      worker.destroy();
+      throw new CommandException("The " + name + " worker did not handle " + request + " in " + timeoutInMillis
+        + " ms");
+    } catch (IOException e) {
+      if (worker != null) {
+        worker.destroy();
+      }
+      if (fallbackCommand == null) {
+        throw new CommandException("Error using " + name + " worker", e);
+      }
+      LOGGER.warn("Could not use {} worker, running {} instead", name, fallbackCommand, e);
+      return CommandUtility.execute(fallbackCommand);
+    } finally {
+      permits.release();
+    }
+  }
+
+  private Worker borrowWorker() throws IOException {
+    if (closed) {
+      throw new IOException("Worker pool " + name + " is closed");
+    }
+
+    Worker worker;
+    while ((worker = pollIdleWorker()) != null) {
+      if (worker.isHealthy()) {
+        return worker;
+      }
+      worker.destroy();
+    }
+
+    return new Worker();
+  }
+
+  private synchronized Worker pollIdleWorker() {
+    return idleWorkers.pollFirst();
+  }
+
+  private void returnWorker(Worker worker) {
+    boolean keep;
+    synchronized (this) {
+      keep = !closed && worker.requests < maxRequestsPerWorker;
+      if (keep) {
+        idleWorkers.addFirst(worker);
+      }
+    }
+    if (!keep) {
+      worker.destroy();
+    }
+  }
+
+  @Override
+  public void close() {
+    List<Worker> workers;
+    synchronized (this) {
+      closed = true;
+      workers = new ArrayList<>(idleWorkers);
+      idleWorkers.clear();
+    }
+    workers.forEach(Worker::destroy);
+    watchdog.shutdownNow();
+  }
+
+  private class Worker {
+    private final Process process;
+    private final BufferedWriter input;
+    private final BufferedReader output;
+    private int requests = 0;
+    private long lastUsed;
+    private volatile boolean timedOut = false;
+
+    Worker() throws IOException {
+      LOGGER.debug("Starting {} worker: {}", name, workerCommand);
+      process = new ProcessBuilder(workerCommand).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+      input = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+      output = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+      if (!ping()) {
+        destroy();
+        throw new IOException("The " + name + " worker did not answer to " + PING);
+      }
+    }
+
+    boolean isHealthy() {
+      if (!process.isAlive()) {
+        return false;
+      }
+      return System.currentTimeMillis() - lastUsed < healthCheckIntervalInMillis || ping();
+    }
+
+    private boolean ping() {
+      try {
+        return PONG.equals(send(PING, true));
+      } catch (IOException | WorkerErrorException | WorkerTimeoutException e) {
+        LOGGER.debug("The {} worker failed the health check", name, e);
+        return false;
+      }
+    }
+
+    String request(String request) throws IOException, WorkerErrorException, WorkerTimeoutException {
+      requests++;
+      return send(request, false);
+    }
+
+    private String send(String request, boolean ping)
+      throws IOException, WorkerErrorException, WorkerTimeoutException {
+      ScheduledFuture<?> timeout = watchdog.schedule(() -> {
+        timedOut = true;
+        process.destroyForcibly();
+      }, timeoutInMillis, TimeUnit.MILLISECONDS);
+
+      try {
+        input.write(request);
+        input.newLine();
+        input.flush();
+
+        StringBuilder lines = new StringBuilder();
+        String line;
+        while ((line = output.readLine()) != null) {
+          if (line.startsWith(OUTPUT + " ")) {
+            lines.append(line, OUTPUT.length() + 1, line.length()).append(System.lineSeparator());
+          } else if (OUTPUT.equals(line)) {
+            lines.append(System.lineSeparator());
+          } else if (ping && PONG.equals(line)) {
+            return line;
+          } else if (OK.equals(line)) {
+            return lines.toString();
+          } else if (ERROR.equals(line) || line.startsWith(ERROR + " ")) {
+            throw new WorkerErrorException(line.substring(ERROR.length()).trim(), lines.toString());
+          } else {
+            // the reply can no longer be told apart from the next one
+            throw new IOException("The " + name + " worker answered with an unexpected line: " + line);
+          }
+        }
+        throw new IOException("The " + name + " worker stopped");
+      } catch (IOException e) {
+        if (timedOut) {
+          throw new WorkerTimeoutException();
+        }
+        throw e;
+      } finally {
+        timeout.cancel(false);
+        lastUsed = System.currentTimeMillis();
+      }
+    }
+
+    void destroy() {
+      try {
+        input.close();
+      } catch (IOException e) {
+        // the process is destroyed anyway
+      }
+      process.destroy();
+      try {
+        if (!process.waitFor(5, TimeUnit.SECONDS)) {
+          process.destroyForcibly();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        process.destroyForcibly();
+      }
+    }
+  }
+
+  private static class WorkerErrorException extends Exception {
+    private static final long serialVersionUID = -2387915306546102452L;
+
+    private final String output;
+
+    WorkerErrorException(String message, String output) {
+      super(message);
+      this.output = output;
+    }
+  }
+
+  private static class WorkerTimeoutException extends Exception {
+    private static final long serialVersionUID = 6205094862745305307L;
+  }
+}
@@ -21,9 +21,12 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
 import org.roda.core.RodaCoreFactory;
+import org.roda.core.common.Pipeline;
 import org.roda.core.common.notifications.EmailNotificationProcessor;
 import org.roda.core.common.notifications.HTTPNotificationProcessor;
 import org.roda.core.data.common.RodaConstants;
@@ -104,6 +107,11 @@ public abstract class DefaultIngestPlugin extends AbstractPlugin<TransferredReso
   public static final String PLUGIN_PARAMS_DO_FULL_TEXT_EXTRACTION = "parameter.do_fulltext_extraction";
   public static final String PLUGIN_PARAMS_DO_DIGITAL_SIGNATURE_VALIDATION = "parameter.do_digital_signature_validation";
 
+  private static final String PIPELINE_PROPERTY_PREFIX = "core.ingest.pipeline.";
+  private static final String PIPELINE_ENABLED_PROPERTY = PIPELINE_PROPERTY_PREFIX + "enabled";
+  private static final int DEFAULT_PIPELINE_CONCURRENCY = 2;
+  private static final String STEP_SIP_TO_AIP = "sip_to_aip";
+
   private String successMessage;
   private String failureMessage;
   private PreservationEventType eventType;
@@ -157,7 +165,6 @@ public abstract class DefaultIngestPlugin extends AbstractPlugin<TransferredReso
     JobPluginInfo outerJobPluginInfo, Job cachedJob, List<TransferredResource> resources) {
     try {
       Date startDate = new Date();
-      Report pluginReport;
 
       final IngestJobPluginInfo jobPluginInfo = (IngestJobPluginInfo) outerJobPluginInfo;
       PluginHelper.updateJobInformationAsync(this, jobPluginInfo.setTotalSteps(getTotalSteps()));
@@ -171,133 +178,338 @@ public abstract class DefaultIngestPlugin extends AbstractPlugin<TransferredReso
       getParameterValues().put(RodaConstants.PLUGIN_PARAMS_PARENT_ID, parentId);
       getParameterValues().put(RodaConstants.PLUGIN_PARAMS_FORCE_PARENT_ID, forceParentId ? "true" : "false");
 
-      // 1) unpacking & wellformedness check (transform TransferredResource into
-      // an AIP)
-      pluginReport = transformTransferredResourceIntoAnAIP(index, model, storage, resources);
-      mergeReports(jobPluginInfo, pluginReport);
-      final List<AIP> aips = getAIPsFromReports(model, index, jobPluginInfo);
-      PluginHelper.updateJobInformationAsync(this, jobPluginInfo.incrementStepsCompletedByOne());
+      final List<AIP> aips;
+      if (RodaCoreFactory.getRodaConfiguration().getBoolean(PIPELINE_ENABLED_PROPERTY, false)) {
+        aips = processObjectsInPipeline(index, model, storage, jobPluginInfo, cachedJob, resources, startDate);
+      } else {
+        aips = processObjectsStepByStep(index, model, storage, jobPluginInfo, cachedJob, resources, startDate);
+      }
+
+      // X) move SIPs to PROCESSED folder??? (default: false)
+      if (PluginHelper.verifyIfStepShouldBePerformed(this,
+        getPluginParameter(RodaConstants.PLUGIN_PARAMS_DO_AUTO_ACCEPT))
+        && RodaCoreFactory.getRodaConfiguration()
+          .getBoolean(RodaConstants.CORE_TRANSFERRED_RESOURCES_INGEST_MOVE_WHEN_AUTOACCEPT, false)) {
+        PluginHelper.moveSIPs(this, model, index, resources, jobPluginInfo);
+      }
+
+      createIngestEndedEvent(model, index, jobPluginInfo, cachedJob);
+
+      getAfterExecute().ifPresent(e -> e.execute(jobPluginInfo, aips));
 
-      // this event can only be created after AIPs exist and that's why it is
-      // performed here, after transformTransferredResourceIntoAnAIP
-      createIngestStartedEvent(model, index, jobPluginInfo, startDate, cachedJob);
+      // X) final job info update
+      jobPluginInfo.finalizeInfo();
+      PluginHelper.updateJobInformationAsync(this, jobPluginInfo);
+    } catch (JobException e) {
+      // throw new PluginException("A job exception has occurred", e);
+    } finally {
+      // remove locks if any
+      PluginHelper.releaseObjectLock(this);
+    }
+  }
 
-      // 2) virus check
-      if (!aips.isEmpty() && PluginHelper.verifyIfStepShouldBePerformed(this,
-        getPluginParameter(RodaConstants.PLUGIN_PARAMS_DO_VIRUS_CHECK))) {
-        pluginReport = doVirusCheck(index, model, storage, aips, jobPluginInfo);
+  /**
+   * Runs each step for all the SIPs before starting the next step.
+   */
+  private List<AIP> processObjectsStepByStep(IndexService index, ModelService model, StorageService storage,
+    IngestJobPluginInfo jobPluginInfo, Job cachedJob, List<TransferredResource> resources, Date startDate)
+    throws JobException {
+    // 1) unpacking & wellformedness check (transform TransferredResource into
+    // an AIP)
+    Report pluginReport = transformTransferredResourceIntoAnAIP(index, model, storage, resources);
+    mergeReports(jobPluginInfo, pluginReport);
+    final List<AIP> aips = getAIPsFromReports(model, index, jobPluginInfo);
+    PluginHelper.updateJobInformationAsync(this, jobPluginInfo.incrementStepsCompletedByOne());
+
+    // this event can only be created after AIPs exist and that's why it is
+    // performed here, after transformTransferredResourceIntoAnAIP
+    createIngestStartedEvent(model, index, jobPluginInfo, startDate, cachedJob);
+
+    // 2) to 10)
+    for (IngestStep step : getIngestSteps(index, model, storage, jobPluginInfo)) {
+      if (!aips.isEmpty()) {
+        pluginReport = step.execute(aips);
         mergeReports(jobPluginInfo, pluginReport);
-        recalculateAIPsList(model, index, jobPluginInfo, aips, true);
+        recalculateAIPsList(model, index, jobPluginInfo, aips, step.removeAIPProcessingFailed);
         PluginHelper.updateJobInformationAsync(this, jobPluginInfo.incrementStepsCompletedByOne());
       }
+    }
 
-      // 3) descriptive metadata validation
-      if (!aips.isEmpty() && PluginHelper.verifyIfStepShouldBePerformed(this,
-        getPluginParameter(RodaConstants.PLUGIN_PARAMS_DO_DESCRIPTIVE_METADATA_VALIDATION))) {
-        pluginReport = doDescriptiveMetadataValidation(index, model, storage, aips, jobPluginInfo);
-        mergeReports(jobPluginInfo, pluginReport);
-        recalculateAIPsList(model, index, jobPluginInfo, aips, true);
-        PluginHelper.updateJobInformationAsync(this, jobPluginInfo.incrementStepsCompletedByOne());
+    if (!aips.isEmpty() && !isAutoAcceptStepPerformed()) {
+      updateAIPsToBeAppraised(model, aips, jobPluginInfo, cachedJob);
+    }
+
+    return aips;
+  }
+
+  /**
+   * Runs each SIP through the steps on its own, so a slow SIP does not hold
+   * the others back and the steps of different SIPs run at the same time. The
+   * number of SIPs in each step is bounded (see core.ingest.pipeline.*).
+   */
+  private List<AIP> processObjectsInPipeline(IndexService index, ModelService model, StorageService storage,
+    IngestJobPluginInfo jobPluginInfo, Job cachedJob, List<TransferredResource> resources, Date startDate)
+    throws JobException {
+    Pipeline<IngestedSIP> pipeline = new Pipeline<>("ingest",
+      RodaCoreFactory.getRodaConfiguration().getInt(PIPELINE_PROPERTY_PREFIX + "queue_size", 2));
+
+    // 1) unpacking & wellformedness check (transform TransferredResource into
+    // an AIP)
+    pipeline.addStage(STEP_SIP_TO_AIP, getPipelineConcurrency(STEP_SIP_TO_AIP),
+      sip -> transformTransferredResourceIntoAnAIP(index, model, storage, jobPluginInfo, sip, startDate, cachedJob));
+
+    // 2) to 10)
+    for (IngestStep step : getIngestSteps(index, model, storage, jobPluginInfo)) {
+      pipeline.addStage(step.id, getPipelineConcurrency(step.id),
+        sip -> executeIngestStep(model, index, jobPluginInfo, step, sip));
+    }
+
+    pipeline.onStageCompleted(stepId -> {
+      synchronized (jobPluginInfo) {
+        if (STEP_SIP_TO_AIP.equals(stepId)) {
+          jobPluginInfo.updateCounters();
+        }
+        try {
+          PluginHelper.updateJobInformationAsync(this, jobPluginInfo.incrementStepsCompletedByOne());
+        } catch (JobException e) {
+          LOGGER.error("Error updating job information after ingest step {}", stepId, e);
+        }
       }
+    });
 
-      // 4) create file fixity information
-      if (!aips.isEmpty() && PluginHelper.verifyIfStepShouldBePerformed(this,
-        getPluginParameter(RodaConstants.PLUGIN_PARAMS_CREATE_PREMIS_SKELETON))) {
-        pluginReport = createFileFixityInformation(index, model, storage, aips, jobPluginInfo);
-        mergeReports(jobPluginInfo, pluginReport);
-        recalculateAIPsList(model, index, jobPluginInfo, aips, true);
-        PluginHelper.updateJobInformationAsync(this, jobPluginInfo.incrementStepsCompletedByOne());
+    // the ingest start events are created as soon as each SIP is transformed
+    setPreservationEventType(START_TYPE);
+    setPreservationSuccessMessage(START_MESSAGE);
+    setPreservationFailureMessage(START_MESSAGE);
+    setPreservationEventDescription(START_MESSAGE);
+
+    List<IngestedSIP> sips = new ArrayList<>();
+    for (TransferredResource resource : resources) {
+      sips.add(new IngestedSIP(resource));
+    }
+
+    try {
+      pipeline.run(sips);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new JobException("Interrupted while ingesting SIPs", e);
+    }
+
+    List<AIP> aips = new ArrayList<>();
+    for (IngestedSIP sip : sips) {
+      if (!sip.failed) {
+        aips.addAll(sip.aips);
       }
+    }
 
-      // 5) format identification (using Siegfried)
-      if (!aips.isEmpty() && PluginHelper.verifyIfStepShouldBePerformed(this,
-        getPluginParameter(RodaConstants.PLUGIN_PARAMS_DO_FILE_FORMAT_IDENTIFICATION))) {
-        pluginReport = doFileFormatIdentification(index, model, storage, aips, jobPluginInfo);
-        mergeReports(jobPluginInfo, pluginReport);
-        recalculateAIPsList(model, index, jobPluginInfo, aips, false);
-        PluginHelper.updateJobInformationAsync(this, jobPluginInfo.incrementStepsCompletedByOne());
+    if (!aips.isEmpty() && !isAutoAcceptStepPerformed()) {
+      updateAIPsToBeAppraised(model, aips, jobPluginInfo, cachedJob);
+    }
+
+    return aips;
+  }
+
+  private int getPipelineConcurrency(String stepId) {
+    int defaultConcurrency = RodaCoreFactory.getRodaConfiguration().getInt(PIPELINE_PROPERTY_PREFIX + "concurrency",
+      DEFAULT_PIPELINE_CONCURRENCY);
+    return RodaCoreFactory.getRodaConfiguration().getInt(PIPELINE_PROPERTY_PREFIX + "concurrency." + stepId,
+      defaultConcurrency);
+  }
+
+  private boolean transformTransferredResourceIntoAnAIP(IndexService index, ModelService model,
+    StorageService storage, IngestJobPluginInfo jobPluginInfo, IngestedSIP sip, Date startDate, Job cachedJob) {
+    Report pluginReport = transformTransferredResourceIntoAnAIP(index, model, storage,
+      Collections.singletonList(sip.resource));
+
+    Map<String, List<String>> aipIdToTransferredResourceIds;
+    synchronized (jobPluginInfo) {
+      mergeReports(jobPluginInfo, pluginReport);
+      if (pluginReport != null) {
+        for (Report reportItem : pluginReport.getReports()) {
+          if (TransferredResource.class.getName().equals(reportItem.getSourceObjectClass())) {
+            sip.transferredResourceIds.add(reportItem.getSourceObjectId());
+          }
+        }
       }
 
-      // 6) Format validation - PDF/A format validator (using VeraPDF)
-      if (!aips.isEmpty() && PluginHelper.verifyIfStepShouldBePerformed(this,
-        getPluginParameter(PLUGIN_PARAMS_DO_VERAPDF_CHECK), PLUGIN_CLASS_VERAPDF)) {
-        Map<String, String> params = new HashMap<>();
-        params.put("profile", "1b");
-        pluginReport = doVeraPDFCheck(index, model, storage, aips, params, jobPluginInfo);
-        mergeReports(jobPluginInfo, pluginReport);
-        recalculateAIPsList(model, index, jobPluginInfo, aips, false);
-        PluginHelper.updateJobInformationAsync(this, jobPluginInfo.incrementStepsCompletedByOne());
+      if (sip.transferredResourceIds.isEmpty()) {
+        jobPluginInfo.incrementObjectsProcessedWithFailure();
+        sip.failed = true;
+        return false;
       }
 
-      // 7.1) feature extraction (using Apache Tika)
-      // 7.2) full-text extraction (using Apache Tika)
-      if (!aips.isEmpty() && (PluginHelper.verifyIfStepShouldBePerformed(this,
-        getPluginParameter(PLUGIN_PARAMS_DO_FEATURE_EXTRACTION), PLUGIN_CLASS_TIKA_FULLTEXT)
-        || PluginHelper.verifyIfStepShouldBePerformed(this, getPluginParameter(PLUGIN_PARAMS_DO_FULL_TEXT_EXTRACTION),
-          PLUGIN_CLASS_TIKA_FULLTEXT))) {
-        Map<String, String> params = new HashMap<>();
-        params.put(PLUGIN_PARAMS_DO_FEATURE_EXTRACTION, PluginHelper.verifyIfStepShouldBePerformed(this,
-          getPluginParameter(PLUGIN_PARAMS_DO_FEATURE_EXTRACTION), PLUGIN_CLASS_TIKA_FULLTEXT) ? "true" : "false");
-        params.put(RodaConstants.PLUGIN_PARAMS_DO_FULLTEXT_EXTRACTION, PluginHelper.verifyIfStepShouldBePerformed(this,
-          getPluginParameter(PLUGIN_PARAMS_DO_FULL_TEXT_EXTRACTION), PLUGIN_CLASS_TIKA_FULLTEXT) ? "true" : "false");
-        pluginReport = doFeatureAndFullTextExtraction(index, model, storage, aips, params, jobPluginInfo);
-        mergeReports(jobPluginInfo, pluginReport);
-        recalculateAIPsList(model, index, jobPluginInfo, aips, false);
-        PluginHelper.updateJobInformationAsync(this, jobPluginInfo.incrementStepsCompletedByOne());
+      // as in processReports, a SIP that failed here is always removed
+      if (!updateIngestedSIP(model, index, jobPluginInfo, sip, true)) {
+        return false;
       }
 
-      // 8) validation of digital signature
-      if (!aips.isEmpty() && PluginHelper.verifyIfStepShouldBePerformed(this,
-        getPluginParameter(PLUGIN_PARAMS_DO_DIGITAL_SIGNATURE_VALIDATION), PLUGIN_CLASS_DIGITAL_SIGNATURE)) {
-        pluginReport = doDigitalSignatureValidation(index, model, storage, aips, jobPluginInfo);
-        mergeReports(jobPluginInfo, pluginReport);
-        recalculateAIPsList(model, index, jobPluginInfo, aips, false);
-        PluginHelper.updateJobInformationAsync(this, jobPluginInfo.incrementStepsCompletedByOne());
+      aipIdToTransferredResourceIds = jobPluginInfo.getAipIdToTransferredResourceIds();
+      aipIdToTransferredResourceIds.keySet().retainAll(sip.aipIds);
+    }
+
+    sip.retrieveAIPs(model);
+
+    // this event can only be created after AIPs exist
+    createIngestEvent(model, index, aipIdToTransferredResourceIds, startDate, cachedJob);
+    return !sip.aips.isEmpty();
+  }
+
+  private boolean executeIngestStep(ModelService model, IndexService index, IngestJobPluginInfo jobPluginInfo,
+    IngestStep step, IngestedSIP sip) {
+    if (sip.failed) {
+      // the step is not run for a failed SIP, which is only kept until a step
+      // removes failed SIPs, as in recalculateAIPsList
+      synchronized (jobPluginInfo) {
+        if (step.removeAIPProcessingFailed) {
+          removeIngestedSIP(jobPluginInfo, sip);
+        }
       }
+      return !sip.removed;
+    }
 
-      // 9) verify producer authorization
-      if (!aips.isEmpty() && PluginHelper.verifyIfStepShouldBePerformed(this,
-        getPluginParameter(RodaConstants.PLUGIN_PARAMS_DO_PRODUCER_AUTHORIZATION_CHECK))) {
-        pluginReport = verifyProducerAuthorization(index, model, storage, aips, jobPluginInfo);
-        mergeReports(jobPluginInfo, pluginReport);
-        recalculateAIPsList(model, index, jobPluginInfo, aips, true);
-        PluginHelper.updateJobInformationAsync(this, jobPluginInfo.incrementStepsCompletedByOne());
+    Report pluginReport = step.execute(sip.aips);
+
+    synchronized (jobPluginInfo) {
+      mergeReports(jobPluginInfo, pluginReport);
+      if (!updateIngestedSIP(model, index, jobPluginInfo, sip, step.removeAIPProcessingFailed)) {
+        return !sip.removed;
       }
+    }
 
-      // 10) Auto accept
-      if (!aips.isEmpty()) {
-        if (PluginHelper.verifyIfStepShouldBePerformed(this,
-          getPluginParameter(RodaConstants.PLUGIN_PARAMS_DO_AUTO_ACCEPT))) {
-          pluginReport = doAutoAccept(index, model, storage, aips, jobPluginInfo);
-          mergeReports(jobPluginInfo, pluginReport);
-          recalculateAIPsList(model, index, jobPluginInfo, aips, true);
-          jobPluginInfo.incrementStepsCompletedByOne();
-        } else {
-          updateAIPsToBeAppraised(model, aips, jobPluginInfo, cachedJob);
-        }
+    sip.retrieveAIPs(model);
+    return !sip.aips.isEmpty();
+  }
+
+  /**
+   * Per SIP version of {@link #recalculateAIPsList}: if one of the SIP AIPs
+   * failed, the whole SIP fails and its AIPs are not processed any longer. Its
+   * reports are only removed from the ones being processed if
+   * removeAIPProcessingFailed is set. Must be called while holding the job
+   * plugin info lock.
+   *
+   * @return false if the SIP failed
+   */
+  private boolean updateIngestedSIP(ModelService model, IndexService index, IngestJobPluginInfo jobPluginInfo,
+    IngestedSIP sip, boolean removeAIPProcessingFailed) {
+    sip.aipIds.clear();
+    boolean failed = false;
+    for (String transferredResourceId : sip.transferredResourceIds) {
+      Map<String, Report> reports = jobPluginInfo.getReportsFromBeingProcessed().get(transferredResourceId);
+      if (reports != null) {
+        failed |= reports.values().stream().anyMatch(report -> report.getPluginState() == PluginState.FAILURE);
+        sip.aipIds.addAll(jobPluginInfo.getAipIds(transferredResourceId));
       }
+    }
 
-      // X) move SIPs to PROCESSED folder??? (default: false)
-      if (PluginHelper.verifyIfStepShouldBePerformed(this,
-        getPluginParameter(RodaConstants.PLUGIN_PARAMS_DO_AUTO_ACCEPT))
-        && RodaCoreFactory.getRodaConfiguration()
-          .getBoolean(RodaConstants.CORE_TRANSFERRED_RESOURCES_INGEST_MOVE_WHEN_AUTOACCEPT, false)) {
-        PluginHelper.moveSIPs(this, model, index, resources, jobPluginInfo);
+    if (failed) {
+      for (String transferredResourceId : sip.transferredResourceIds) {
+        LOGGER.info(
+          "Will not process AIPs from transferred resource '{}' any longer because at least one of them failed",
+          transferredResourceId);
+        jobPluginInfo.incrementObjectsProcessedWithFailure();
+        jobPluginInfo.failOtherTransferredResourceAIPs(model, index, transferredResourceId);
+      }
+      sip.failed = true;
+      sip.aips.clear();
+      if (removeAIPProcessingFailed) {
+        removeIngestedSIP(jobPluginInfo, sip);
       }
+    }
 
-      createIngestEndedEvent(model, index, jobPluginInfo, cachedJob);
+    return !failed;
+  }
 
-      getAfterExecute().ifPresent(e -> e.execute(jobPluginInfo, aips));
+  private static void removeIngestedSIP(IngestJobPluginInfo jobPluginInfo, IngestedSIP sip) {
+    for (String transferredResourceId : sip.transferredResourceIds) {
+      jobPluginInfo.remove(transferredResourceId);
+    }
+    sip.removed = true;
+  }
 
-      // X) final job info update
-      jobPluginInfo.finalizeInfo();
-      PluginHelper.updateJobInformationAsync(this, jobPluginInfo);
-    } catch (JobException e) {
-      // throw new PluginException("A job exception has occurred", e);
-    } finally {
-      // remove locks if any
-      PluginHelper.releaseObjectLock(this);
+  /**
+   * @return the steps after the SIP to AIP transformation that must be
+   *         performed, in order
+   */
+  private List<IngestStep> getIngestSteps(IndexService index, ModelService model, StorageService storage,
+    IngestJobPluginInfo jobPluginInfo) {
+    List<IngestStep> steps = new ArrayList<>();
+
+    // 2) virus check
+    if (PluginHelper.verifyIfStepShouldBePerformed(this,
+      getPluginParameter(RodaConstants.PLUGIN_PARAMS_DO_VIRUS_CHECK))) {
+      steps.add(new IngestStep("virus_check", true,
+        aips -> doVirusCheck(index, model, storage, aips, jobPluginInfo)));
+    }
+
+    // 3) descriptive metadata validation
+    if (PluginHelper.verifyIfStepShouldBePerformed(this,
+      getPluginParameter(RodaConstants.PLUGIN_PARAMS_DO_DESCRIPTIVE_METADATA_VALIDATION))) {
+      steps.add(new IngestStep("descriptive_metadata_validation", true,
+        aips -> doDescriptiveMetadataValidation(index, model, storage, aips, jobPluginInfo)));
+    }
+
+    // 4) create file fixity information
+    if (PluginHelper.verifyIfStepShouldBePerformed(this,
+      getPluginParameter(RodaConstants.PLUGIN_PARAMS_CREATE_PREMIS_SKELETON))) {
+      steps.add(new IngestStep("premis_skeleton", true,
+        aips -> createFileFixityInformation(index, model, storage, aips, jobPluginInfo)));
+    }
+
+    // 5) format identification (using Siegfried)
+    if (PluginHelper.verifyIfStepShouldBePerformed(this,
+      getPluginParameter(RodaConstants.PLUGIN_PARAMS_DO_FILE_FORMAT_IDENTIFICATION))) {
+      steps.add(new IngestStep("format_identification", false,
+        aips -> doFileFormatIdentification(index, model, storage, aips, jobPluginInfo)));
+    }
+
+    // 6) Format validation - PDF/A format validator (using VeraPDF)
+    if (PluginHelper.verifyIfStepShouldBePerformed(this, getPluginParameter(PLUGIN_PARAMS_DO_VERAPDF_CHECK),
+      PLUGIN_CLASS_VERAPDF)) {
+      Map<String, String> params = new HashMap<>();
+      params.put("profile", "1b");
+      steps.add(new IngestStep("verapdf", false,
+        aips -> doVeraPDFCheck(index, model, storage, aips, params, jobPluginInfo)));
+    }
+
+    // 7.1) feature extraction (using Apache Tika)
+    // 7.2) full-text extraction (using Apache Tika)
+    boolean doFeatureExtraction = PluginHelper.verifyIfStepShouldBePerformed(this,
+      getPluginParameter(PLUGIN_PARAMS_DO_FEATURE_EXTRACTION), PLUGIN_CLASS_TIKA_FULLTEXT);
+    boolean doFullTextExtraction = PluginHelper.verifyIfStepShouldBePerformed(this,
+      getPluginParameter(PLUGIN_PARAMS_DO_FULL_TEXT_EXTRACTION), PLUGIN_CLASS_TIKA_FULLTEXT);
+    if (doFeatureExtraction || doFullTextExtraction) {
+      Map<String, String> params = new HashMap<>();
+      params.put(PLUGIN_PARAMS_DO_FEATURE_EXTRACTION, doFeatureExtraction ? "true" : "false");
+      params.put(RodaConstants.PLUGIN_PARAMS_DO_FULLTEXT_EXTRACTION, doFullTextExtraction ? "true" : "false");
+      steps.add(new IngestStep("feature_extraction", false,
+        aips -> doFeatureAndFullTextExtraction(index, model, storage, aips, params, jobPluginInfo)));
+    }
+
+    // 8) validation of digital signature
+    if (PluginHelper.verifyIfStepShouldBePerformed(this,
+      getPluginParameter(PLUGIN_PARAMS_DO_DIGITAL_SIGNATURE_VALIDATION), PLUGIN_CLASS_DIGITAL_SIGNATURE)) {
+      steps.add(new IngestStep("digital_signature", false,
+        aips -> doDigitalSignatureValidation(index, model, storage, aips, jobPluginInfo)));
     }
+
+    // 9) verify producer authorization
+    if (PluginHelper.verifyIfStepShouldBePerformed(this,
+      getPluginParameter(RodaConstants.PLUGIN_PARAMS_DO_PRODUCER_AUTHORIZATION_CHECK))) {
+      steps.add(new IngestStep("producer_authorization", true,
+        aips -> verifyProducerAuthorization(index, model, storage, aips, jobPluginInfo)));
+    }
+
+    // 10) Auto accept
+    if (isAutoAcceptStepPerformed()) {
+      steps.add(new IngestStep("auto_accept", true, aips -> doAutoAccept(index, model, storage, aips, jobPluginInfo)));
+    }
+
+    return steps;
+  }
+
+  private boolean isAutoAcceptStepPerformed() {
+    return PluginHelper.verifyIfStepShouldBePerformed(this,
+      getPluginParameter(RodaConstants.PLUGIN_PARAMS_DO_AUTO_ACCEPT));
   }
 
   @Override
@@ -592,9 +804,8 @@ public abstract class DefaultIngestPlugin extends AbstractPlugin<TransferredReso
     return effectiveTotalSteps;
   }
 
-  private void createIngestEvent(ModelService model, IndexService index, IngestJobPluginInfo jobPluginInfo,
-    Date eventDate, Job cachedJob) {
-    Map<String, List<String>> aipIdToTransferredResourceId = jobPluginInfo.getAipIdToTransferredResourceIds();
+  private void createIngestEvent(ModelService model, IndexService index,
+    Map<String, List<String>> aipIdToTransferredResourceId, Date eventDate, Job cachedJob) {
     for (Map.Entry<String, List<String>> entry : aipIdToTransferredResourceId.entrySet()) {
       for (String transferredResourceId : entry.getValue()) {
         try {
@@ -616,7 +827,7 @@ public abstract class DefaultIngestPlugin extends AbstractPlugin<TransferredReso
     setPreservationSuccessMessage(START_MESSAGE);
     setPreservationFailureMessage(START_MESSAGE);
     setPreservationEventDescription(START_MESSAGE);
-    createIngestEvent(model, index, jobPluginInfo, startDate, cachedJob);
+    createIngestEvent(model, index, jobPluginInfo.getAipIdToTransferredResourceIds(), startDate, cachedJob);
   }
 
   private void createIngestEndedEvent(ModelService model, IndexService index, IngestJobPluginInfo jobPluginInfo,
@@ -625,7 +836,7 @@ public abstract class DefaultIngestPlugin extends AbstractPlugin<TransferredReso
     setPreservationSuccessMessage(END_SUCCESS);
     setPreservationFailureMessage(END_FAILURE);
     setPreservationEventDescription(END_DESCRIPTION);
-    createIngestEvent(model, index, jobPluginInfo, new Date(), cachedJob);
+    createIngestEvent(model, index, jobPluginInfo.getAipIdToTransferredResourceIds(), new Date(), cachedJob);
   }
 
   private Report createFileFixityInformation(IndexService index, ModelService model, StorageService storage,
@@ -687,9 +898,14 @@ public abstract class DefaultIngestPlugin extends AbstractPlugin<TransferredReso
       mergedParams.putAll(params);
     }
 
-    // set outcome_object_id > source_object_id relation
-    mergedParams.put(RodaConstants.PLUGIN_PARAMS_OUTCOMEOBJECTID_TO_SOURCEOBJECTID_MAP,
-      JsonUtils.getJsonFromObject(jobPluginInfo.getAipIdToTransferredResourceIds()));
+    // set outcome_object_id > source_object_id relation (only for the AIPs
+    // being processed, as other SIPs may be in other steps)
+    synchronized (jobPluginInfo) {
+      Map<String, List<String>> aipIdToTransferredResourceIds = jobPluginInfo.getAipIdToTransferredResourceIds();
+      aipIdToTransferredResourceIds.keySet().retainAll(aips.stream().map(AIP::getId).collect(Collectors.toSet()));
+      mergedParams.put(RodaConstants.PLUGIN_PARAMS_OUTCOMEOBJECTID_TO_SOURCEOBJECTID_MAP,
+        JsonUtils.getJsonFromObject(aipIdToTransferredResourceIds));
+    }
 
     try {
       plugin.setParameterValues(mergedParams);
@@ -793,6 +1009,49 @@ public abstract class DefaultIngestPlugin extends AbstractPlugin<TransferredReso
 
   public abstract Optional<? extends AfterExecute> getAfterExecute();
 
+  private static class IngestStep {
+    private final String id;
+    private final boolean removeAIPProcessingFailed;
+    private final Function<List<AIP>, Report> execution;
+
+    IngestStep(String id, boolean removeAIPProcessingFailed, Function<List<AIP>, Report> execution) {
+      this.id = id;
+      this.removeAIPProcessingFailed = removeAIPProcessingFailed;
+      this.execution = execution;
+    }
+
+    Report execute(List<AIP> aips) {
+      return execution.apply(aips);
+    }
+  }
+
+  /**
+   * A SIP going through the ingest pipeline, with the AIPs created from it.
+   */
+  private static class IngestedSIP {
+    private final TransferredResource resource;
+    private final Set<String> transferredResourceIds = new HashSet<>();
+    private final Set<String> aipIds = new HashSet<>();
+    private final List<AIP> aips = new ArrayList<>();
+    private boolean failed = false;
+    private boolean removed = false;
+
+    IngestedSIP(TransferredResource resource) {
+      this.resource = resource;
+    }
+
+    void retrieveAIPs(ModelService model) {
+      aips.clear();
+      for (String aipId : aipIds) {
+        try {
+          aips.add(model.retrieveAIP(aipId));
+        } catch (RequestNotValidException | NotFoundException | GenericException | AuthorizationDeniedException e) {
+          LOGGER.error("Error while retrieving AIP", e);
+        }
+      }
+    }
+  }
+
   @FunctionalInterface
   public interface AfterExecute {
     void execute(IngestJobPluginInfo jobPluginInfo, List<AIP> aips);
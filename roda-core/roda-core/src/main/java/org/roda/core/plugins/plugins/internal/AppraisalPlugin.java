@@ -11,10 +11,14 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.roda.core.common.PremisV3Utils;
+import org.roda.core.common.ReturnWithExceptionsWrapper;
 import org.roda.core.data.common.RodaConstants;
 import org.roda.core.data.common.RodaConstants.PreservationEventType;
 import org.roda.core.data.exceptions.AlreadyExistsException;
@@ -24,7 +28,6 @@ import org.roda.core.data.exceptions.InvalidParameterException;
 import org.roda.core.data.exceptions.NotFoundException;
 import org.roda.core.data.exceptions.RequestNotValidException;
 import org.roda.core.data.v2.LiteOptionalWithCause;
-import org.roda.core.data.v2.common.Pair;
 import org.roda.core.data.v2.ip.AIP;
 import org.roda.core.data.v2.ip.AIPState;
 import org.roda.core.data.v2.ip.IndexedAIP;
@@ -51,8 +54,12 @@ import org.roda.core.plugins.plugins.ingest.AutoAcceptSIPPlugin;
 import org.roda.core.storage.ContentPayload;
 import org.roda.core.storage.StorageService;
 import org.roda.core.util.IdUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class AppraisalPlugin extends AbstractPlugin<AIP> {
+  private static final Logger LOGGER = LoggerFactory.getLogger(AppraisalPlugin.class);
+
   private boolean accept;
   private String rejectReason = null;
 
@@ -127,8 +134,6 @@ public class AppraisalPlugin extends AbstractPlugin<AIP> {
   private void processAIP(ModelService model, IndexService index, Report report, JobPluginInfo jobPluginInfo, Job job,
     List<AIP> aips) {
     try {
-      Map<String, Pair<Integer, Integer>> jobState = new HashMap<>();
-      List<String> aipsToDelete = new ArrayList<>();
       Date now = new Date();
 
       String userAgentId;
@@ -141,122 +146,180 @@ public class AppraisalPlugin extends AbstractPlugin<AIP> {
         throw new GenericException(e);
       }
 
+      // AIPs of the same ingest job share the job and are appraised together
+      Map<String, List<AIP>> aipsByIngestJob = new LinkedHashMap<>();
       for (AIP aip : aips) {
-        Report reportItem = PluginHelper.initPluginReportItem(this, aip.getId(), AIP.class);
-        PluginHelper.updatePartialJobReport(this, model, reportItem, false, job);
-        PluginState state = PluginState.SUCCESS;
+        aipsByIngestJob.computeIfAbsent(aip.getIngestJobId(), k -> new ArrayList<>()).add(aip);
+      }
 
+      for (Map.Entry<String, List<AIP>> entry : aipsByIngestJob.entrySet()) {
         try {
-          String aipId = aip.getId();
-          String jobId = aip.getIngestJobId();
-          String ingestSIPUUID = aip.getIngestSIPUUID();
-          if (accept) {
-            // Accept AIP
-            aip.setState(AIPState.ACTIVE);
-            model.updateAIPState(aip, job.getUsername());
-
-            // create preservation event
-            String id = IdUtils.createPreservationMetadataId(PreservationMetadata.PreservationMetadataType.EVENT);
-            PreservationEventType type = PreservationEventType.ACCESSION;
-            String preservationEventDescription = AutoAcceptSIPPlugin.DESCRIPTION;
-            List<LinkingIdentifier> sources = new ArrayList<>();
-            List<LinkingIdentifier> outcomes = Arrays
-              .asList(PluginHelper.getLinkingIdentifier(aipId, RodaConstants.PRESERVATION_LINKING_OBJECT_OUTCOME));
-            PluginState outcome = PluginState.SUCCESS;
-            String outcomeDetailNote = AutoAcceptSIPPlugin.SUCCESS_MESSAGE;
-
-            try {
-              ContentPayload premisEvent = PremisV3Utils.createPremisEventBinary(id, now, type.toString(),
-                preservationEventDescription, sources, outcomes, outcome.name(), outcomeDetailNote, null,
-                Arrays.asList(userAgentId));
-
-              model.createPreservationMetadata(PreservationMetadata.PreservationMetadataType.EVENT, id, aipId, null,
-                null, null, premisEvent, true);
-            } catch (AlreadyExistsException | ValidationException e) {
-              throw new GenericException(e);
-            }
-
-          } else {
-            // Reject AIP
-            model.deleteAIP(aipId);
-            aipsToDelete.add(aipId);
-          }
-
-          // create job report
-          Job ingestJob = model.retrieveJob(jobId);
-          Report ingestReport = model.retrieveJobReport(jobId, ingestSIPUUID, aipId);
-          ingestReport.setTotalSteps(ingestReport.getTotalSteps() + 1);
-
-          Report ingestReportItem = new Report();
-          ingestReportItem.setTitle("Manual appraisal");
-          ingestReportItem.setPlugin("Manual appraisal");
-          ingestReportItem.setPluginDetails(rejectReason);
-          ingestReportItem.setPluginState(accept ? PluginState.SUCCESS : PluginState.FAILURE);
-          ingestReportItem.setOutcomeObjectState(accept ? AIPState.ACTIVE : AIPState.DELETED);
-          ingestReportItem.setDateCreated(now);
-          ingestReport.addReport(ingestReportItem);
-
-          model.createOrUpdateJobReport(ingestReport, ingestJob);
-
-          // save job state
-          Pair<Integer, Integer> pair = jobState.get(jobId);
-          if (pair == null) {
-            jobState.put(jobId, Pair.of(1, accept ? 1 : 0));
-          } else {
-            jobState.put(jobId, Pair.of(pair.getFirst() + 1, pair.getSecond() + (accept ? 1 : 0)));
-          }
-
-        } catch (GenericException | RequestNotValidException | NotFoundException | AuthorizationDeniedException e1) {
-          state = PluginState.FAILURE;
-        } finally {
-          jobPluginInfo.incrementObjectsProcessed(state);
-
-          StringBuilder outcomeText = new StringBuilder().append("The AIP '").append(aip.getId()).append("' was ");
-          if (accept) {
-            outcomeText.append("accepted into the repository.");
-          } else {
-            outcomeText.append("rejected from the repository.");
-          }
-
-          model.createUpdateAIPEvent(aip.getId(), null, null, null, PreservationEventType.APPRAISAL,
-            "The process of updating an non active object of the repository", state, outcomeText.toString(), null,
-            job.getUsername(), true);
-
-          reportItem.setPluginState(state).setPluginDetails(outcomeText.toString());
-          report.addReport(reportItem);
-          PluginHelper.updatePartialJobReport(this, model, reportItem, true, job);
+          processIngestJobAIPs(model, report, jobPluginInfo, job, entry.getKey(), entry.getValue(), userAgentId, now);
+        } catch (GenericException | RequestNotValidException | NotFoundException | AuthorizationDeniedException e) {
+          LOGGER.error("Could not update counters of ingest job {}", entry.getKey(), e);
+          report.setPluginState(PluginState.FAILURE).setPluginDetails("Failed to update job counters");
         }
       }
 
-      // update job counters
-      for (Map.Entry<String, Pair<Integer, Integer>> entry : jobState.entrySet()) {
-        String jobId = entry.getKey();
-        int total = entry.getValue().getFirst();
-        int accepted = entry.getValue().getSecond();
-        int rejected = total - accepted;
-        Job ingestJob = model.retrieveJob(jobId);
-        if (rejected > 0) {
-          // change counter to failure
-          ingestJob.getJobStats().setSourceObjectsProcessedWithSuccess(
-            ingestJob.getJobStats().getSourceObjectsProcessedWithSuccess() - rejected);
-          ingestJob.getJobStats().setSourceObjectsProcessedWithFailure(
-            ingestJob.getJobStats().getSourceObjectsProcessedWithFailure() + rejected);
-        }
+      index.commit(IndexedAIP.class, Job.class, IndexedReport.class, IndexedPreservationEvent.class);
+
+    } catch (GenericException | RequestNotValidException | NotFoundException | AuthorizationDeniedException e) {
+      report.setPluginState(PluginState.FAILURE).setPluginDetails("Failed to update job counters");
+    }
+  }
 
-        // decrement manual interaction counter
-        ingestJob.getJobStats().setOutcomeObjectsWithManualIntervention(
-          ingestJob.getJobStats().getOutcomeObjectsWithManualIntervention() - total);
+  private void processIngestJobAIPs(ModelService model, Report report, JobPluginInfo jobPluginInfo, Job job,
+    String ingestJobId, List<AIP> aips, String userAgentId, Date now)
+    throws GenericException, RequestNotValidException, NotFoundException, AuthorizationDeniedException {
+    Map<String, Report> reportItems = new LinkedHashMap<>();
+    for (AIP aip : aips) {
+      Report reportItem = PluginHelper.initPluginReportItem(this, aip.getId(), AIP.class);
+      PluginHelper.updatePartialJobReport(this, model, reportItem, false, job);
+      reportItems.put(aip.getId(), reportItem);
+    }
 
-        model.createOrUpdateJob(ingestJob);
+    List<AIP> appraised = new ArrayList<>();
+    List<PreservationMetadata> events = new ArrayList<>();
+    if (accept) {
+      // Accept AIPs
+      for (AIP aip : aips) {
+        aip.setState(AIPState.ACTIVE);
       }
+      appraised.addAll(model.updateAIPStates(aips, job.getUsername()));
 
-      index.commit(IndexedAIP.class, Job.class, IndexedReport.class, IndexedPreservationEvent.class);
+      // create preservation events, indexed together with the appraisal ones
+      for (AIP aip : appraised) {
+        PreservationMetadata event = createAccessionEvent(model, aip.getId(), userAgentId, now);
+        if (event != null) {
+          events.add(event);
+        }
+      }
+    } else {
+      // Reject AIPs
+      for (AIP aip : aips) {
+        try {
+          model.deleteAIP(aip.getId());
+          appraised.add(aip);
+        } catch (GenericException | RequestNotValidException | NotFoundException | AuthorizationDeniedException e) {
+          LOGGER.error("Could not reject AIP {}", aip.getId(), e);
+        }
+      }
+    }
+
+    // create job reports
+    Job ingestJob = null;
+    Set<String> reported = new HashSet<>();
+    try {
+      if (!appraised.isEmpty()) {
+        ingestJob = model.retrieveJob(ingestJobId);
+      }
 
+      for (AIP aip : appraised) {
+        try {
+          updateIngestReport(model, ingestJob, aip, now);
+          reported.add(aip.getId());
+        } catch (GenericException | RequestNotValidException | NotFoundException | AuthorizationDeniedException e) {
+          LOGGER.error("Could not update the ingest report of AIP {}", aip.getId(), e);
+        }
+      }
     } catch (GenericException | RequestNotValidException | NotFoundException | AuthorizationDeniedException e) {
-      report.setPluginState(PluginState.FAILURE).setPluginDetails("Failed to update job counters");
+      LOGGER.error("Could not retrieve ingest job {}", ingestJobId, e);
+    }
+
+    for (AIP aip : aips) {
+      PluginState state = reported.contains(aip.getId()) ? PluginState.SUCCESS : PluginState.FAILURE;
+      jobPluginInfo.incrementObjectsProcessed(state);
+
+      StringBuilder outcomeText = new StringBuilder().append("The AIP '").append(aip.getId()).append("' was ");
+      if (accept) {
+        outcomeText.append("accepted into the repository.");
+      } else {
+        outcomeText.append("rejected from the repository.");
+      }
+
+      PreservationMetadata event = model.createUpdateAIPEvent(aip.getId(), null, null, null,
+        PreservationEventType.APPRAISAL, "The process of updating an non active object of the repository", state,
+        outcomeText.toString(), null, job.getUsername(), false);
+      if (event != null) {
+        events.add(event);
+      }
+
+      Report reportItem = reportItems.get(aip.getId());
+      reportItem.setPluginState(state).setPluginDetails(outcomeText.toString());
+      report.addReport(reportItem);
+      PluginHelper.updatePartialJobReport(this, model, reportItem, true, job);
+    }
+
+    // update job counters
+    if (ingestJob != null && !reported.isEmpty()) {
+      int total = reported.size();
+      int rejected = accept ? 0 : total;
+      if (rejected > 0) {
+        // change counter to failure
+        ingestJob.getJobStats().setSourceObjectsProcessedWithSuccess(
+          ingestJob.getJobStats().getSourceObjectsProcessedWithSuccess() - rejected);
+        ingestJob.getJobStats().setSourceObjectsProcessedWithFailure(
+          ingestJob.getJobStats().getSourceObjectsProcessedWithFailure() + rejected);
+      }
+
+      // decrement manual interaction counter
+      ingestJob.getJobStats().setOutcomeObjectsWithManualIntervention(
+        ingestJob.getJobStats().getOutcomeObjectsWithManualIntervention() - total);
+
+      model.createOrUpdateJob(ingestJob);
+    }
+
+    // the events are already stored, an indexing failure must not fail the appraisal
+    if (!events.isEmpty()) {
+      ReturnWithExceptionsWrapper wrapper = model.notifyPreservationEventsCreated(events);
+      if (!wrapper.hasNoExceptions()) {
+        LOGGER.error("Could not index the appraisal events of ingest job {}: {}", ingestJobId,
+          wrapper.printStackTraces());
+      }
+    }
+  }
+
+  private PreservationMetadata createAccessionEvent(ModelService model, String aipId, String userAgentId, Date now) {
+    String id = IdUtils.createPreservationMetadataId(PreservationMetadata.PreservationMetadataType.EVENT);
+    PreservationEventType type = PreservationEventType.ACCESSION;
+    String preservationEventDescription = AutoAcceptSIPPlugin.DESCRIPTION;
+    List<LinkingIdentifier> sources = new ArrayList<>();
+    List<LinkingIdentifier> outcomes = Arrays
+      .asList(PluginHelper.getLinkingIdentifier(aipId, RodaConstants.PRESERVATION_LINKING_OBJECT_OUTCOME));
+    PluginState outcome = PluginState.SUCCESS;
+    String outcomeDetailNote = AutoAcceptSIPPlugin.SUCCESS_MESSAGE;
+
+    try {
+      ContentPayload premisEvent = PremisV3Utils.createPremisEventBinary(id, now, type.toString(),
+        preservationEventDescription, sources, outcomes, outcome.name(), outcomeDetailNote, null,
+        Arrays.asList(userAgentId));
+
+      return model.createPreservationMetadata(PreservationMetadata.PreservationMetadataType.EVENT, id, aipId, null,
+        null, null, premisEvent, false);
+    } catch (GenericException | NotFoundException | RequestNotValidException | AuthorizationDeniedException
+      | AlreadyExistsException | ValidationException e) {
+      LOGGER.error("Could not create accession event for AIP {}", aipId, e);
+      return null;
     }
   }
 
+  private void updateIngestReport(ModelService model, Job ingestJob, AIP aip, Date now)
+    throws GenericException, RequestNotValidException, NotFoundException, AuthorizationDeniedException {
+    Report ingestReport = model.retrieveJobReport(ingestJob.getId(), aip.getIngestSIPUUID(), aip.getId());
+    ingestReport.setTotalSteps(ingestReport.getTotalSteps() + 1);
+
+    Report ingestReportItem = new Report();
+    ingestReportItem.setTitle("Manual appraisal");
+    ingestReportItem.setPlugin("Manual appraisal");
+    ingestReportItem.setPluginDetails(rejectReason);
+    ingestReportItem.setPluginState(accept ? PluginState.SUCCESS : PluginState.FAILURE);
+    ingestReportItem.setOutcomeObjectState(accept ? AIPState.ACTIVE : AIPState.DELETED);
+    ingestReportItem.setDateCreated(now);
+    ingestReport.addReport(ingestReportItem);
+
+    model.createOrUpdateJobReport(ingestReport, ingestJob);
+  }
+
   @Override
   public Report beforeAllExecute(IndexService index, ModelService model, StorageService storage)
     throws PluginException {
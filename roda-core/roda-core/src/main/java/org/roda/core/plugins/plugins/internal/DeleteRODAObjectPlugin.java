@@ -7,11 +7,15 @@
  */
 package org.roda.core.plugins.plugins.internal;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
 import org.roda.core.data.common.RodaConstants;
@@ -24,13 +28,10 @@ import org.roda.core.data.exceptions.RequestNotValidException;
 import org.roda.core.data.utils.URNUtils;
 import org.roda.core.data.v2.IsRODAObject;
 import org.roda.core.data.v2.LiteOptionalWithCause;
-import org.roda.core.data.v2.index.IndexResult;
-import org.roda.core.data.v2.index.IndexRunnable;
 import org.roda.core.data.v2.index.IsIndexed;
 import org.roda.core.data.v2.index.filter.Filter;
+import org.roda.core.data.v2.index.filter.OneOfManyFilterParameter;
 import org.roda.core.data.v2.index.filter.SimpleFilterParameter;
-import org.roda.core.data.v2.index.sort.Sorter;
-import org.roda.core.data.v2.index.sublist.Sublist;
 import org.roda.core.data.v2.ip.AIP;
 import org.roda.core.data.v2.ip.AIPState;
 import org.roda.core.data.v2.ip.DIP;
@@ -50,6 +51,7 @@ import org.roda.core.data.v2.ri.RepresentationInformation;
 import org.roda.core.data.v2.risks.Risk;
 import org.roda.core.data.v2.risks.RiskIncidence;
 import org.roda.core.index.IndexService;
+import org.roda.core.index.utils.IterableIndexResult;
 import org.roda.core.model.ModelService;
 import org.roda.core.plugins.AbstractPlugin;
 import org.roda.core.plugins.Plugin;
@@ -61,6 +63,8 @@ import org.roda.core.storage.StorageService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.Lists;
+
 public class DeleteRODAObjectPlugin<T extends IsRODAObject> extends AbstractPlugin<T> {
   private static final Logger LOGGER = LoggerFactory.getLogger(DeleteRODAObjectPlugin.class);
   private static final String EVENT_DESCRIPTION = "The process of deleting an object of the repository";
@@ -157,55 +161,42 @@ public class DeleteRODAObjectPlugin<T extends IsRODAObject> extends AbstractPlug
     Report reportItem = PluginHelper.initPluginReportItem(this, aip.getId(), AIP.class, AIPState.ACTIVE);
     reportItem.setPluginState(PluginState.SUCCESS);
 
-    if (!dontCheckRelatives) {
+    // without the sublevels, the tree cannot be removed from the index at once
+    boolean deleteTree = !dontCheckRelatives;
+    List<IndexedAIP> descendants = new ArrayList<>();
+    if (deleteTree) {
       try {
         Filter filter = new Filter(new SimpleFilterParameter(RodaConstants.AIP_ANCESTORS, aip.getId()));
-        index.execute(
-          IndexedAIP.class, filter, Arrays.asList(RodaConstants.INDEX_UUID, RodaConstants.AIP_ID,
-            RodaConstants.AIP_LEVEL, RodaConstants.AIP_DATE_INITIAL, RodaConstants.AIP_DATE_FINAL),
-          new IndexRunnable<IndexedAIP>() {
-            @Override
-            public void run(IndexedAIP item)
-              throws GenericException, RequestNotValidException, AuthorizationDeniedException {
-              PluginState state = PluginState.SUCCESS;
-              try {
-                model.deleteAIP(item.getId());
-              } catch (NotFoundException e) {
-                state = PluginState.FAILURE;
-                reportItem.addPluginDetails("Could not delete AIP: " + e.getMessage());
-              }
-
-              String outcomeText;
-              if (state.equals(PluginState.SUCCESS)) {
-                outcomeText = PluginHelper.createOutcomeTextForAIP(item, "has been manually deleted");
-              } else {
-                outcomeText = PluginHelper.createOutcomeTextForAIP(item, "has not been manually deleted");
-              }
-
-              List<LinkingIdentifier> sources = new ArrayList<>();
-              sources
-                .add(PluginHelper.getLinkingIdentifier(item.getId(), RodaConstants.PRESERVATION_LINKING_OBJECT_SOURCE));
-
-              model.createEvent(item.getId(), null, null, null, PreservationEventType.DELETION, EVENT_DESCRIPTION,
-                sources, null, state, outcomeText, details, job.getUsername(), true);
-            }
-          }, e -> {
-            reportItem.setPluginState(PluginState.FAILURE);
-            reportItem.addPluginDetails("Could not delete sublevel AIPs: " + e.getMessage());
-          });
-      } catch (GenericException | RequestNotValidException | AuthorizationDeniedException e) {
+        try (IterableIndexResult<IndexedAIP> result = index.findAll(IndexedAIP.class, filter, false,
+          Arrays.asList(RodaConstants.INDEX_UUID, RodaConstants.AIP_ID, RodaConstants.AIP_LEVEL,
+            RodaConstants.AIP_DATE_INITIAL, RodaConstants.AIP_DATE_FINAL))) {
+          result.forEach(descendants::add);
+        }
+      } catch (GenericException | RequestNotValidException | IOException e) {
         reportItem.setPluginState(PluginState.FAILURE);
         reportItem.addPluginDetails("Could not delete sublevel AIPs: " + e.getMessage());
+        deleteTree = false;
+        descendants.clear();
       }
     }
 
-    report.addReport(reportItem);
-    PluginHelper.updatePartialJobReport(this, model, reportItem, true, job);
-    jobPluginInfo.incrementObjectsProcessed(reportItem.getPluginState());
+    List<String> aipIds = descendants.stream().map(IndexedAIP::getId).collect(Collectors.toList());
+    aipIds.add(aip.getId());
 
-    IndexedAIP item = null;
-    String outcomeText;
+    // related risk incidences are not kept inside the AIPs, so they are looked
+    // up before the AIPs are removed from the index
+    List<RiskIncidence> incidences = new ArrayList<>();
+    try {
+      for (List<String> ids : Lists.partition(aipIds, RodaConstants.DEFAULT_PAGINATION_VALUE)) {
+        Filter incidenceFilter = new Filter(new OneOfManyFilterParameter(RodaConstants.RISK_INCIDENCE_AIP_ID, ids));
+        incidences.addAll(findRelatedIncidences(index, incidenceFilter));
+      }
+    } catch (GenericException | RequestNotValidException e) {
+      reportItem.setPluginState(PluginState.FAILURE);
+      reportItem.addPluginDetails("Could not find AIP related incidences: " + e.getMessage());
+    }
 
+    IndexedAIP item = null;
     try {
       item = index.retrieve(IndexedAIP.class, aip.getId(),
         Arrays.asList(RodaConstants.INDEX_UUID, RodaConstants.AIP_TITLE));
@@ -213,17 +204,48 @@ public class DeleteRODAObjectPlugin<T extends IsRODAObject> extends AbstractPlug
       // do nothing
     }
 
+    Set<String> deleted = new HashSet<>();
+    try {
+      if (deleteTree) {
+        deleted.addAll(model.deleteAIPTree(aip.getId(), aipIds.subList(0, aipIds.size() - 1)));
+      } else {
+        model.deleteAIP(aip.getId());
+        deleted.add(aip.getId());
+      }
+    } catch (NotFoundException | GenericException | RequestNotValidException | AuthorizationDeniedException e) {
+      reportItem.addPluginDetails("Could not delete AIP: " + e.getMessage());
+    }
+
     try {
-      model.deleteAIP(aip.getId());
+      deleteIncidences(model, incidences.stream().filter(incidence -> deleted.contains(incidence.getAipId()))
+        .map(RiskIncidence::getId).collect(Collectors.toList()));
+    } catch (GenericException | AuthorizationDeniedException e) {
+      reportItem.setPluginState(PluginState.FAILURE);
+      reportItem.addPluginDetails("Could not delete AIP related incidences: " + e.getMessage());
+    }
 
+    for (IndexedAIP descendant : descendants) {
+      PluginState state = PluginState.SUCCESS;
+      String outcomeText = PluginHelper.createOutcomeTextForAIP(descendant, "has been manually deleted");
+      if (!deleted.contains(descendant.getId())) {
+        state = PluginState.FAILURE;
+        reportItem.setPluginState(PluginState.FAILURE);
+        reportItem.addPluginDetails("Could not delete sublevel AIP: " + descendant.getId());
+        outcomeText = PluginHelper.createOutcomeTextForAIP(descendant, "has not been manually deleted");
+      }
+      createDeletionEvent(model, job, descendant.getId(), state, outcomeText);
+    }
+
+    String outcomeText;
+    if (deleted.contains(aip.getId())) {
       if (item != null) {
         outcomeText = PluginHelper.createOutcomeTextForAIP(item, "has been manually deleted");
       } else {
         outcomeText = "Archival Information Package [id: " + aip.getId() + "] has been manually deleted";
       }
-    } catch (NotFoundException | GenericException | RequestNotValidException | AuthorizationDeniedException e) {
+    } else {
       reportItem.setPluginState(PluginState.FAILURE);
-      reportItem.addPluginDetails("Could not delete AIP: " + e.getMessage());
+      reportItem.addPluginDetails("Could not delete AIP: " + aip.getId());
       if (item != null) {
         outcomeText = PluginHelper.createOutcomeTextForAIP(item, "has not been manually deleted");
       } else {
@@ -231,11 +253,19 @@ public class DeleteRODAObjectPlugin<T extends IsRODAObject> extends AbstractPlug
       }
     }
 
+    report.addReport(reportItem);
+    PluginHelper.updatePartialJobReport(this, model, reportItem, true, job);
+    jobPluginInfo.incrementObjectsProcessed(reportItem.getPluginState());
+
+    createDeletionEvent(model, job, aip.getId(), reportItem.getPluginState(), outcomeText);
+  }
+
+  private void createDeletionEvent(ModelService model, Job job, String aipId, PluginState state, String outcomeText) {
     List<LinkingIdentifier> sources = new ArrayList<>();
-    sources.add(PluginHelper.getLinkingIdentifier(aip.getId(), RodaConstants.PRESERVATION_LINKING_OBJECT_SOURCE));
+    sources.add(PluginHelper.getLinkingIdentifier(aipId, RodaConstants.PRESERVATION_LINKING_OBJECT_SOURCE));
 
-    model.createEvent(aip.getId(), null, null, null, PreservationEventType.DELETION, EVENT_DESCRIPTION, sources, null,
-      reportItem.getPluginState(), outcomeText, details, job.getUsername(), true);
+    model.createEvent(aipId, null, null, null, PreservationEventType.DELETION, EVENT_DESCRIPTION, sources, null, state,
+      outcomeText, details, job.getUsername(), true);
   }
 
   private void processFile(IndexService index, ModelService model, Report report, JobPluginInfo jobPluginInfo, Job job,
@@ -259,7 +289,7 @@ public class DeleteRODAObjectPlugin<T extends IsRODAObject> extends AbstractPlug
           StringUtils.join(file.getPath(), RodaConstants.RISK_INCIDENCE_FILE_PATH_COMPUTED_SEPARATOR)),
         new SimpleFilterParameter(RodaConstants.RISK_INCIDENCE_FILE_ID, file.getId()));
       deleteRelatedIncidences(model, index, incidenceFilter);
-    } catch (NotFoundException | GenericException | RequestNotValidException | AuthorizationDeniedException e) {
+    } catch (GenericException | RequestNotValidException | AuthorizationDeniedException e) {
       state = PluginState.FAILURE;
       reportItem.addPluginDetails("Could not delete file related incidences: " + e.getMessage());
     }
@@ -311,7 +341,7 @@ public class DeleteRODAObjectPlugin<T extends IsRODAObject> extends AbstractPlug
         new SimpleFilterParameter(RodaConstants.RISK_INCIDENCE_AIP_ID, representation.getAipId()),
         new SimpleFilterParameter(RodaConstants.RISK_INCIDENCE_REPRESENTATION_ID, representation.getId()));
       deleteRelatedIncidences(model, index, incidenceFilter);
-    } catch (NotFoundException | GenericException | RequestNotValidException | AuthorizationDeniedException e) {
+    } catch (GenericException | RequestNotValidException | AuthorizationDeniedException e) {
       state = PluginState.FAILURE;
       reportItem.addPluginDetails("Could not delete representation related incidences: " + e.getMessage());
     }
@@ -353,7 +383,7 @@ public class DeleteRODAObjectPlugin<T extends IsRODAObject> extends AbstractPlug
       Filter incidenceFilter = new Filter(
         new SimpleFilterParameter(RodaConstants.RISK_INCIDENCE_RISK_ID, risk.getId()));
       deleteRelatedIncidences(model, index, incidenceFilter);
-    } catch (GenericException | RequestNotValidException | NotFoundException | AuthorizationDeniedException e) {
+    } catch (GenericException | RequestNotValidException | AuthorizationDeniedException e) {
       reportItem.addPluginDetails("Could not delete representation related incidences: " + e.getMessage());
       state = PluginState.FAILURE;
     }
@@ -386,14 +416,28 @@ public class DeleteRODAObjectPlugin<T extends IsRODAObject> extends AbstractPlug
   }
 
   private void deleteRelatedIncidences(ModelService model, IndexService index, Filter incidenceFilter)
-    throws GenericException, RequestNotValidException, NotFoundException, AuthorizationDeniedException {
-    Long incidenceCounter = index.count(RiskIncidence.class, incidenceFilter);
-    IndexResult<RiskIncidence> incidences = index.find(RiskIncidence.class, incidenceFilter, Sorter.NONE,
-      new Sublist(0, incidenceCounter.intValue()),
-      Arrays.asList(RodaConstants.INDEX_UUID, RodaConstants.RISK_INCIDENCE_ID));
-
-    for (RiskIncidence incidence : incidences.getResults()) {
-      model.deleteRiskIncidence(incidence.getId(), false);
+    throws GenericException, RequestNotValidException, AuthorizationDeniedException {
+    deleteIncidences(model, findRelatedIncidences(index, incidenceFilter).stream().map(RiskIncidence::getId)
+      .collect(Collectors.toList()));
+  }
+
+  private List<RiskIncidence> findRelatedIncidences(IndexService index, Filter incidenceFilter)
+    throws GenericException, RequestNotValidException {
+    List<RiskIncidence> ret = new ArrayList<>();
+    try (IterableIndexResult<RiskIncidence> incidences = index.findAll(RiskIncidence.class, incidenceFilter,
+      Arrays.asList(RodaConstants.INDEX_UUID, RodaConstants.RISK_INCIDENCE_ID, RodaConstants.RISK_INCIDENCE_AIP_ID))) {
+      incidences.forEach(ret::add);
+    } catch (IOException e) {
+      throw new GenericException("Could not find related incidences", e);
+    }
+    return ret;
+  }
+
+  private void deleteIncidences(ModelService model, List<String> incidenceIds)
+    throws GenericException, AuthorizationDeniedException {
+    List<String> deleted = model.deleteRiskIncidences(incidenceIds, false);
+    if (deleted.size() < incidenceIds.size()) {
+      throw new GenericException("Could not delete " + (incidenceIds.size() - deleted.size()) + " incidences");
     }
   }
 
@@ -10,9 +10,11 @@ package org.roda.core.plugins.plugins.internal;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import org.apache.commons.lang3.StringUtils;
 import org.roda.core.RodaCoreFactory;
@@ -27,18 +29,15 @@ import org.roda.core.data.exceptions.NotFoundException;
 import org.roda.core.data.exceptions.RequestNotValidException;
 import org.roda.core.data.v2.IsRODAObject;
 import org.roda.core.data.v2.LiteOptionalWithCause;
-import org.roda.core.data.v2.index.IndexResult;
+import org.roda.core.data.v2.common.Pair;
 import org.roda.core.data.v2.index.IsIndexed;
-import org.roda.core.data.v2.index.filter.Filter;
-import org.roda.core.data.v2.index.filter.SimpleFilterParameter;
-import org.roda.core.data.v2.index.sort.Sorter;
-import org.roda.core.data.v2.index.sublist.Sublist;
 import org.roda.core.data.v2.ip.AIP;
 import org.roda.core.data.v2.ip.AIPState;
 import org.roda.core.data.v2.ip.File;
 import org.roda.core.data.v2.ip.IndexedAIP;
 import org.roda.core.data.v2.ip.IndexedFile;
 import org.roda.core.data.v2.ip.TransferredResource;
+import org.roda.core.data.v2.ip.metadata.PreservationMetadata;
 import org.roda.core.data.v2.jobs.Job;
 import org.roda.core.data.v2.jobs.PluginParameter;
 import org.roda.core.data.v2.jobs.PluginParameter.PluginParameterType;
@@ -124,18 +123,15 @@ public class MovePlugin<T extends IsRODAObject> extends AbstractPlugin<T> {
     List<LiteOptionalWithCause> liteList) throws PluginException {
 
     return PluginHelper.processObjects(this, new RODAObjectsProcessingLogic<T>() {
+      @SuppressWarnings("unchecked")
       @Override
       public void process(IndexService index, ModelService model, StorageService storage, Report report, Job cachedJob,
         JobPluginInfo jobPluginInfo, Plugin<T> plugin, List<T> objects) {
         if (!objects.isEmpty()) {
           if (objects.get(0) instanceof AIP) {
-            for (T object : objects) {
-              processAIP(model, index, report, jobPluginInfo, cachedJob, (AIP) object);
-            }
+            processAIPs(model, index, report, jobPluginInfo, cachedJob, (List<AIP>) objects);
           } else if (objects.get(0) instanceof File) {
-            for (T object : objects) {
-              processFile(index, model, report, jobPluginInfo, cachedJob, (File) object);
-            }
+            processFiles(index, model, report, jobPluginInfo, cachedJob, (List<File>) objects);
           } else if (objects.get(0) instanceof TransferredResource) {
             processTransferredResource(model, report, jobPluginInfo, cachedJob, (List<TransferredResource>) objects);
           }
@@ -144,114 +140,217 @@ public class MovePlugin<T extends IsRODAObject> extends AbstractPlugin<T> {
     }, index, model, storage, liteList);
   }
 
-  private void processAIP(ModelService model, IndexService index, Report report, JobPluginInfo jobPluginInfo, Job job,
-    AIP aip) {
-    PluginState state = PluginState.SUCCESS;
-
-    if (!aip.getId().equals(destinationId)) {
-      LOGGER.debug("Moving AIP {} under {}", aip.getId(), destinationId);
+  private void processAIPs(ModelService model, IndexService index, Report report, JobPluginInfo jobPluginInfo,
+    Job job, List<AIP> aips) {
+    Map<String, String> failures = new HashMap<>();
+    List<String> toMove = new ArrayList<>();
 
+    // validate all the AIPs against the destination ancestors before moving any
+    List<String> destinationAncestors = new ArrayList<>();
+    if (destinationId != null) {
       try {
-        IndexResult<IndexedAIP> result = new IndexResult<>();
-
-        if (destinationId != null) {
-          Filter filter = new Filter();
-          filter.add(new SimpleFilterParameter(RodaConstants.INDEX_UUID, destinationId));
-          filter.add(new SimpleFilterParameter(RodaConstants.AIP_ANCESTORS, aip.getId()));
-          result = index.find(IndexedAIP.class, filter, Sorter.NONE, new Sublist(0, 1),
-            Arrays.asList(RodaConstants.INDEX_UUID));
+        IndexedAIP destination = index.retrieve(IndexedAIP.class, destinationId,
+          Arrays.asList(RodaConstants.INDEX_UUID, RodaConstants.AIP_ANCESTORS));
+        if (destination.getAncestors() != null) {
+          destinationAncestors.addAll(destination.getAncestors());
+        }
+      } catch (NotFoundException | GenericException e) {
+        for (AIP aip : aips) {
+          failures.put(aip.getId(), "Could not move AIP: " + e.getMessage());
         }
+      }
+    }
 
-        if (destinationId == null || result.getResults().isEmpty()) {
-          model.moveAIP(aip.getId(), destinationId, job.getUsername());
+    for (AIP aip : aips) {
+      if (!aip.getId().equals(destinationId) && !failures.containsKey(aip.getId())) {
+        if (destinationAncestors.contains(aip.getId())) {
+          failures.put(aip.getId(), "Could not move AIP because the destination is a sublevel");
         } else {
-          state = PluginState.FAILURE;
-          Report reportItem = PluginHelper.initPluginReportItem(this, aip.getId(), AIP.class, AIPState.ACTIVE);
-          reportItem.addPluginDetails("Could not move AIP because the destination is a sublevel").setPluginState(state);
-          report.addReport(reportItem);
-          PluginHelper.updatePartialJobReport(this, model, reportItem, true, job);
+          LOGGER.debug("Moving AIP {} under {}", aip.getId(), destinationId);
+          toMove.add(aip.getId());
         }
-      } catch (GenericException | NotFoundException | RequestNotValidException | AuthorizationDeniedException e) {
-        state = PluginState.FAILURE;
-        Report reportItem = PluginHelper.initPluginReportItem(this, aip.getId(), AIP.class, AIPState.ACTIVE);
-        reportItem.addPluginDetails("Could not move AIP: " + e.getMessage()).setPluginState(state);
-        report.addReport(reportItem);
-        PluginHelper.updatePartialJobReport(this, model, reportItem, true, job);
       }
     }
 
-    String outcomeText = "";
+    if (!toMove.isEmpty()) {
+      try {
+        List<String> moved = new ArrayList<>();
+        model.moveAIPs(toMove, destinationId, job.getUsername()).forEach(aip -> moved.add(aip.getId()));
+        for (String aipId : toMove) {
+          if (!moved.contains(aipId)) {
+            failures.put(aipId, "Could not move AIP");
+          }
+        }
+      } catch (GenericException | AuthorizationDeniedException e) {
+        for (String aipId : toMove) {
+          failures.put(aipId, "Could not move AIP: " + e.getMessage());
+        }
+      }
+    }
 
+    Map<String, IndexedAIP> items = new HashMap<>();
     try {
-      IndexedAIP item = index.retrieve(IndexedAIP.class, aip.getId(),
-        Arrays.asList(RodaConstants.INDEX_UUID, RodaConstants.AIP_TITLE));
+      List<String> aipIds = new ArrayList<>();
+      aips.forEach(aip -> aipIds.add(aip.getId()));
+      index.retrieve(IndexedAIP.class, aipIds, Arrays.asList(RodaConstants.INDEX_UUID, RodaConstants.AIP_TITLE))
+        .forEach(item -> items.put(item.getId(), item));
+    } catch (NotFoundException | GenericException e) {
+      LOGGER.debug("Could not retrieve the titles of the moved AIPs", e);
+    }
 
-      if (state.equals(PluginState.SUCCESS)) {
-        outcomeText = PluginHelper.createOutcomeTextForAIP(item, "has been manually moved");
-      } else {
-        outcomeText = PluginHelper.createOutcomeTextForAIP(item, "has not been manually moved");
+    List<PreservationMetadata> events = new ArrayList<>();
+    for (AIP aip : aips) {
+      PluginState state = PluginState.SUCCESS;
+      if (failures.containsKey(aip.getId())) {
+        state = PluginState.FAILURE;
+        Report reportItem = PluginHelper.initPluginReportItem(this, aip.getId(), AIP.class, AIPState.ACTIVE);
+        reportItem.addPluginDetails(failures.get(aip.getId())).setPluginState(state);
+        report.addReport(reportItem);
+        PluginHelper.updatePartialJobReport(this, model, reportItem, true, job);
       }
-    } catch (NotFoundException | GenericException e1) {
-      if (state.equals(PluginState.SUCCESS)) {
-        outcomeText = "Archival Information Package [id: " + aip.getId() + "] has been manually moved";
+
+      String outcomeText;
+      IndexedAIP item = items.get(aip.getId());
+      if (item != null) {
+        if (state.equals(PluginState.SUCCESS)) {
+          outcomeText = PluginHelper.createOutcomeTextForAIP(item, "has been manually moved");
+        } else {
+          outcomeText = PluginHelper.createOutcomeTextForAIP(item, "has not been manually moved");
+        }
       } else {
-        outcomeText = "Archival Information Package [id: " + aip.getId() + "] has not been manually moved";
+        if (state.equals(PluginState.SUCCESS)) {
+          outcomeText = "Archival Information Package [id: " + aip.getId() + "] has been manually moved";
+        } else {
+          outcomeText = "Archival Information Package [id: " + aip.getId() + "] has not been manually moved";
+        }
+      }
+
+      jobPluginInfo.incrementObjectsProcessed(state);
+      PreservationMetadata event = model.createUpdateAIPEvent(aip.getId(), null, null, null,
+        PreservationEventType.UPDATE, EVENT_DESCRIPTION, state, outcomeText, details, job.getUsername(), false);
+      if (event != null) {
+        events.add(event);
       }
     }
 
-    jobPluginInfo.incrementObjectsProcessed(state);
-    model.createUpdateAIPEvent(aip.getId(), null, null, null, PreservationEventType.UPDATE, EVENT_DESCRIPTION, state,
-      outcomeText, details, job.getUsername(), true);
+    notifyEventsCreated(model, events);
   }
 
-  private void processFile(IndexService index, ModelService model, Report report, JobPluginInfo jobPluginInfo, Job job,
-    File file) {
-    PluginState state = PluginState.SUCCESS;
-    StringBuilder outcomeText = new StringBuilder();
-
-    try {
-      String toAIP;
-      String toRepresentation;
-      List<String> toPath = new ArrayList<>();
+  private void processFiles(IndexService index, ModelService model, Report report, JobPluginInfo jobPluginInfo,
+    Job job, List<File> files) {
+    String toAIP = null;
+    String toRepresentation = null;
+    List<String> toPath = new ArrayList<>();
 
-      if (StringUtils.isNotBlank(destinationId)) {
+    if (StringUtils.isNotBlank(destinationId)) {
+      try {
         List<String> fileFields = Arrays.asList(RodaConstants.INDEX_UUID, RodaConstants.FILE_AIP_ID,
           RodaConstants.FILE_REPRESENTATION_ID, RodaConstants.FILE_PATH, RodaConstants.INDEX_ID);
         IndexedFile toFolder = index.retrieve(IndexedFile.class, destinationId, fileFields);
 
-        LOGGER.debug("Moving File {} under {}", file.getId(), toFolder.getId());
-
         toAIP = toFolder.getAipId();
         toRepresentation = toFolder.getRepresentationId();
         if (toFolder.getPath() != null) {
           toPath.addAll(toFolder.getPath());
         }
         toPath.add(toFolder.getId());
-      } else {
-        toAIP = file.getAipId();
-        toRepresentation = file.getRepresentationId();
+      } catch (NotFoundException | GenericException e) {
+        List<PreservationMetadata> events = new ArrayList<>();
+        for (File file : files) {
+          String outcomeText = addFailedFileReport(model, report, job, file, e);
+          addFileEvent(model, jobPluginInfo, job, file, PluginState.FAILURE, outcomeText, events);
+        }
+        notifyEventsCreated(model, events);
+        return;
       }
+    }
 
-      File movedFile = model.moveFile(file, toAIP, toRepresentation, toPath, file.getId(), true);
-      outcomeText.append("The file '").append(ModelUtils.getFileStoragePath(file).toString())
-        .append("' has been manually moved to '").append(ModelUtils.getFileStoragePath(movedFile).toString())
-        .append("'");
+    // representations are reindexed once, after all their files are moved
+    Set<Pair<String, String>> changedRepresentations = new LinkedHashSet<>();
+    List<PreservationMetadata> events = new ArrayList<>();
+    for (File file : files) {
+      PluginState state = PluginState.SUCCESS;
+      String outcomeText;
 
-    } catch (GenericException | AlreadyExistsException | NotFoundException | RequestNotValidException
-      | AuthorizationDeniedException e) {
-      state = PluginState.FAILURE;
-      Report reportItem = PluginHelper.initPluginReportItem(this, file.getId(), File.class);
-      reportItem.addPluginDetails("Could not move file: " + e.getMessage()).setPluginState(state);
-      report.addReport(reportItem);
-      PluginHelper.updatePartialJobReport(this, model, reportItem, true, job);
-
-      outcomeText.append("The file '").append(file.getId()).append("' has not been manually moved: [")
-        .append(e.getClass().getSimpleName()).append("] ").append(e.getMessage());
+      try {
+        String fileAIP = toAIP != null ? toAIP : file.getAipId();
+        String fileRepresentation = toRepresentation != null ? toRepresentation : file.getRepresentationId();
+        LOGGER.debug("Moving File {} under {}", file.getId(), destinationId);
+
+        if (isMovedUnderItself(file, fileAIP, fileRepresentation, toPath)) {
+          throw new RequestNotValidException("Cannot move a folder into itself or one of its sub-folders");
+        }
+
+        File movedFile = model.moveFile(file, fileAIP, fileRepresentation, toPath, file.getId(), false);
+        changedRepresentations.add(Pair.of(file.getAipId(), file.getRepresentationId()));
+        changedRepresentations.add(Pair.of(fileAIP, fileRepresentation));
+
+        outcomeText = "The file '" + ModelUtils.getFileStoragePath(file).toString() + "' has been manually moved to '"
+          + ModelUtils.getFileStoragePath(movedFile).toString() + "'";
+      } catch (GenericException | AlreadyExistsException | NotFoundException | RequestNotValidException
+        | AuthorizationDeniedException e) {
+        state = PluginState.FAILURE;
+        outcomeText = addFailedFileReport(model, report, job, file, e);
+      }
+
+      addFileEvent(model, jobPluginInfo, job, file, state, outcomeText, events);
+    }
+
+    for (Pair<String, String> representation : changedRepresentations) {
+      try {
+        model.notifyRepresentationUpdated(
+          model.retrieveRepresentation(representation.getFirst(), representation.getSecond())).failOnError();
+      } catch (GenericException | NotFoundException | RequestNotValidException | AuthorizationDeniedException e) {
+        LOGGER.error("Could not reindex representation {} of AIP {} after moving files", representation.getSecond(),
+          representation.getFirst(), e);
+      }
+    }
+
+    notifyEventsCreated(model, events);
+  }
+
+  private boolean isMovedUnderItself(File file, String toAIP, String toRepresentation, List<String> toPath) {
+    if (!file.isDirectory() || !file.getAipId().equals(toAIP)
+      || !file.getRepresentationId().equals(toRepresentation)) {
+      return false;
+    }
+
+    List<String> folderPath = new ArrayList<>();
+    if (file.getPath() != null) {
+      folderPath.addAll(file.getPath());
     }
+    folderPath.add(file.getId());
+    return toPath.size() >= folderPath.size() && toPath.subList(0, folderPath.size()).equals(folderPath);
+  }
+
+  private String addFailedFileReport(ModelService model, Report report, Job job, File file, Exception e) {
+    Report reportItem = PluginHelper.initPluginReportItem(this, file.getId(), File.class);
+    reportItem.addPluginDetails("Could not move file: " + e.getMessage()).setPluginState(PluginState.FAILURE);
+    report.addReport(reportItem);
+    PluginHelper.updatePartialJobReport(this, model, reportItem, true, job);
 
+    return "The file '" + file.getId() + "' has not been manually moved: [" + e.getClass().getSimpleName() + "] "
+      + e.getMessage();
+  }
+
+  private void addFileEvent(ModelService model, JobPluginInfo jobPluginInfo, Job job, File file, PluginState state,
+    String outcomeText, List<PreservationMetadata> events) {
     jobPluginInfo.incrementObjectsProcessed(state);
-    model.createUpdateAIPEvent(file.getAipId(), file.getRepresentationId(), null, null, PreservationEventType.UPDATE,
-      EVENT_DESCRIPTION, state, outcomeText.toString(), details, job.getUsername(), true);
+    PreservationMetadata event = model.createUpdateAIPEvent(file.getAipId(), file.getRepresentationId(), null, null,
+      PreservationEventType.UPDATE, EVENT_DESCRIPTION, state, outcomeText, details, job.getUsername(), false);
+    if (event != null) {
+      events.add(event);
+    }
+  }
+
+  private void notifyEventsCreated(ModelService model, List<PreservationMetadata> events) {
+    if (!events.isEmpty()) {
+      try {
+        model.notifyPreservationEventsCreated(events).failOnError();
+      } catch (GenericException e) {
+        LOGGER.error("Could not index move events", e);
+      }
+    }
   }
 
   @SuppressWarnings("unchecked")
@@ -9,10 +9,13 @@ package org.roda.core.plugins.plugins.internal;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.roda.core.data.common.RodaConstants;
 import org.roda.core.data.common.RodaConstants.PreservationEventType;
@@ -39,8 +42,12 @@ import org.roda.core.plugins.RODAObjectsProcessingLogic;
 import org.roda.core.plugins.orchestrate.JobPluginInfo;
 import org.roda.core.plugins.plugins.PluginHelper;
 import org.roda.core.storage.StorageService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class UpdateIncidencesPlugin extends AbstractPlugin<RiskIncidence> {
+  private static final Logger LOGGER = LoggerFactory.getLogger(UpdateIncidencesPlugin.class);
+
   private INCIDENCE_STATUS status;
   private SEVERITY_LEVEL severity;
   private Date mitigatedOn;
@@ -150,32 +157,42 @@ public class UpdateIncidencesPlugin extends AbstractPlugin<RiskIncidence> {
 
   private void processRiskIncidence(ModelService model, Report report, JobPluginInfo jobPluginInfo, Job job,
     List<RiskIncidence> incidences) {
+    Map<RiskIncidence, Report> reportItems = new IdentityHashMap<>();
     for (RiskIncidence incidence : incidences) {
       Report reportItem = PluginHelper.initPluginReportItem(this, incidence.getId(), RiskIncidence.class);
       PluginHelper.updatePartialJobReport(this, model, reportItem, false, job);
+      reportItems.put(incidence, reportItem);
 
-      try {
-        incidence.setStatus(status);
-        incidence.setSeverity(severity);
-        incidence.setMitigatedBy(mitigatedBy);
-        incidence.setMitigatedDescription(mitigatedDescription);
+      incidence.setStatus(status);
+      incidence.setSeverity(severity);
+      incidence.setMitigatedBy(mitigatedBy);
+      incidence.setMitigatedDescription(mitigatedDescription);
 
-        if (mitigatedOn != null) {
-          incidence.setMitigatedOn(mitigatedOn);
-        }
+      if (mitigatedOn != null) {
+        incidence.setMitigatedOn(mitigatedOn);
+      }
+    }
 
-        model.updateRiskIncidence(incidence, false);
+    // the whole block is updated at once
+    Set<RiskIncidence> updated = Collections.newSetFromMap(new IdentityHashMap<>());
+    try {
+      updated.addAll(model.updateRiskIncidences(incidences, false));
+    } catch (AuthorizationDeniedException | GenericException e) {
+      LOGGER.error("Failed to update risk incidences", e);
+    }
 
+    for (RiskIncidence incidence : incidences) {
+      Report reportItem = reportItems.get(incidence);
+      if (updated.contains(incidence)) {
         jobPluginInfo.incrementObjectsProcessedWithSuccess();
         reportItem.setPluginState(PluginState.SUCCESS);
-      } catch (AuthorizationDeniedException | GenericException e) {
+      } else {
         jobPluginInfo.incrementObjectsProcessedWithFailure();
         reportItem.setPluginState(PluginState.FAILURE)
           .setPluginDetails("Failed to update risk incidence " + incidence.getId());
-      } finally {
-        report.addReport(reportItem);
-        PluginHelper.updatePartialJobReport(this, model, reportItem, true, job);
       }
+      report.addReport(reportItem);
+      PluginHelper.updatePartialJobReport(this, model, reportItem, true, job);
     }
   }
 
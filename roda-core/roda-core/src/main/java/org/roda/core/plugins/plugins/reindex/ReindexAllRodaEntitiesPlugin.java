@@ -7,13 +7,17 @@
  */
 package org.roda.core.plugins.plugins.reindex;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
+import org.roda.core.RodaCoreFactory;
 import org.roda.core.data.common.RodaConstants;
 import org.roda.core.data.common.RodaConstants.PreservationEventType;
+import org.roda.core.data.exceptions.InvalidParameterException;
 import org.roda.core.data.exceptions.NotFoundException;
 import org.roda.core.data.exceptions.RODAException;
 import org.roda.core.data.v2.IsRODAObject;
@@ -24,12 +28,16 @@ import org.roda.core.data.v2.index.select.SelectedItemsNone;
 import org.roda.core.data.v2.ip.TransferredResource;
 import org.roda.core.data.v2.ip.metadata.IndexedPreservationAgent;
 import org.roda.core.data.v2.jobs.Job;
+import org.roda.core.data.v2.jobs.PluginParameter;
+import org.roda.core.data.v2.jobs.PluginParameter.PluginParameterType;
 import org.roda.core.data.v2.jobs.PluginType;
 import org.roda.core.data.v2.jobs.Report;
 import org.roda.core.data.v2.jobs.Report.PluginState;
 import org.roda.core.data.v2.log.LogEntry;
 import org.roda.core.data.v2.user.RODAMember;
 import org.roda.core.index.IndexService;
+import org.roda.core.index.reindex.ReindexCheckpoint;
+import org.roda.core.index.reindex.ReindexCoordinator;
 import org.roda.core.model.ModelService;
 import org.roda.core.plugins.AbstractPlugin;
 import org.roda.core.plugins.Plugin;
@@ -44,6 +52,19 @@ import org.slf4j.LoggerFactory;
 
 public class ReindexAllRodaEntitiesPlugin extends AbstractPlugin<Void> {
   private static final Logger LOGGER = LoggerFactory.getLogger(ReindexAllRodaEntitiesPlugin.class);
+  private static final String CHECKPOINT_FOLDER = "reindex";
+  private static final String CHECKPOINT_FILE = "reindex-all.checkpoint";
+
+  private boolean partitionedReindex = false;
+
+  private static Map<String, PluginParameter> pluginParameters = new HashMap<>();
+  static {
+    pluginParameters.put(RodaConstants.PLUGIN_PARAMS_PARTITIONED_REINDEX,
+      new PluginParameter(RodaConstants.PLUGIN_PARAMS_PARTITIONED_REINDEX, "Partitioned reindex",
+        PluginParameterType.BOOLEAN, "false", false, false,
+        "Reindex AIPs, DIPs, risks, incidences, notifications and representation information in parallel partitions "
+          + "without clearing the indexes first. An interrupted partitioned reindex resumes where it stopped."));
+  }
 
   @Override
   public void init() throws PluginException {
@@ -72,11 +93,36 @@ public class ReindexAllRodaEntitiesPlugin extends AbstractPlugin<Void> {
     return "1.0";
   }
 
+  @Override
+  public List<PluginParameter> getParameters() {
+    ArrayList<PluginParameter> parameters = new ArrayList<>();
+    parameters.add(pluginParameters.get(RodaConstants.PLUGIN_PARAMS_PARTITIONED_REINDEX));
+    return parameters;
+  }
+
+  @Override
+  public void setParameterValues(Map<String, String> parameters) throws InvalidParameterException {
+    super.setParameterValues(parameters);
+    if (parameters != null && parameters.containsKey(RodaConstants.PLUGIN_PARAMS_PARTITIONED_REINDEX)) {
+      partitionedReindex = Boolean.parseBoolean(parameters.get(RodaConstants.PLUGIN_PARAMS_PARTITIONED_REINDEX));
+    }
+  }
+
   @Override
   public Report execute(IndexService index, ModelService model, StorageService storage,
     List<LiteOptionalWithCause> list) throws PluginException {
     final List<Class<? extends IsRODAObject>> classes = PluginHelper.getReindexObjectClasses();
     classes.remove(Job.class);
+    if (partitionedReindex) {
+      return PluginHelper.processVoids(this, new RODAProcessingLogic<Void>() {
+        @Override
+        public void process(IndexService index, ModelService model, StorageService storage, Report report,
+          Job cachedJob, JobPluginInfo jobPluginInfo, Plugin<Void> plugin) {
+          reindexAllPartitioned(index, model, report, jobPluginInfo, cachedJob, classes);
+        }
+      }, index, model, storage, classes.size());
+    }
+
     return PluginHelper.processVoids(this, new RODAProcessingLogic<Void>() {
       @Override
       public void process(IndexService index, ModelService model, StorageService storage, Report report, Job cachedJob,
@@ -100,6 +146,70 @@ public class ReindexAllRodaEntitiesPlugin extends AbstractPlugin<Void> {
     pluginReport.setPluginState(PluginState.SUCCESS);
   }
 
+  private void reindexAllPartitioned(IndexService index, ModelService model, Report pluginReport,
+    JobPluginInfo jobPluginInfo, Job job, List<Class<? extends IsRODAObject>> classes) {
+    List<Class<? extends IsRODAObject>> partitionedClasses = classes.stream().filter(ReindexCoordinator::isSupported)
+      .collect(Collectors.toList());
+    pluginReport.setPluginState(PluginState.SUCCESS);
+
+    try {
+      ReindexCheckpoint checkpoint = new ReindexCheckpoint(
+        RodaCoreFactory.getDataPath().resolve(CHECKPOINT_FOLDER).resolve(CHECKPOINT_FILE));
+      if (!checkpoint.isEmpty()) {
+        LOGGER.info("Resuming partitioned reindex from checkpoint");
+      }
+
+      ReindexCoordinator coordinator = new ReindexCoordinator(index, model, checkpoint,
+        RodaCoreFactory.getRodaConfiguration().getInt("core.index.reindex.partitions",
+          ReindexCoordinator.DEFAULT_NUMBER_OF_PARTITIONS),
+        RodaCoreFactory.getRodaConfiguration().getInt("core.index.reindex.threads",
+          ReindexCoordinator.DEFAULT_NUMBER_OF_THREADS),
+        RodaCoreFactory.getRodaConfiguration().getInt("core.index.reindex.partitions_per_collection",
+          ReindexCoordinator.DEFAULT_PARTITIONS_PER_COLLECTION),
+        RodaCoreFactory.getRodaConfiguration().getBoolean("core.index.reindex.shadow_collections", false));
+
+      try {
+        coordinator.reindex(partitionedClasses);
+        checkpoint.clear();
+      } catch (RODAException e) {
+        LOGGER.error("Error during partitioned reindex, it can be resumed by running it again", e);
+        pluginReport.setPluginState(PluginState.PARTIAL_SUCCESS).addPluginDetails(e.getMessage() + "\n");
+      }
+
+      for (Class<? extends IsRODAObject> reindexClass : partitionedClasses) {
+        Report reportItem = PluginHelper.initPluginReportItem(this, reindexClass.getSimpleName(), Void.class);
+        long failures = coordinator.getFailureCount(reindexClass);
+        reportItem.setPluginDetails("Reindexed " + coordinator.getSuccessCount(reindexClass) + " "
+          + reindexClass.getSimpleName() + " object(s) with " + failures + " failure(s)");
+        if (failures == 0) {
+          jobPluginInfo.incrementObjectsProcessedWithSuccess();
+          reportItem.setPluginState(PluginState.SUCCESS);
+        } else {
+          jobPluginInfo.incrementObjectsProcessedWithFailure();
+          reportItem.setPluginState(PluginState.FAILURE);
+        }
+        pluginReport.addReport(reportItem);
+        PluginHelper.updatePartialJobReport(this, model, reportItem, true, job);
+      }
+    } catch (RODAException e) {
+      LOGGER.error("Could not start partitioned reindex", e);
+      pluginReport.setPluginState(PluginState.FAILURE).addPluginDetails(e.getMessage() + "\n");
+      partitionedClasses.forEach(c -> jobPluginInfo.incrementObjectsProcessedWithFailure());
+    }
+
+    // entities without a partitioned reindex are still reindexed by their own
+    // jobs
+    for (Class<? extends IsRODAObject> reindexClass : classes) {
+      if (!partitionedClasses.contains(reindexClass)) {
+        Report reportItem = reindexRODAObject(model, reindexClass, jobPluginInfo);
+        if (reportItem != null) {
+          pluginReport.addReport(reportItem);
+          PluginHelper.updatePartialJobReport(this, model, reportItem, true, job);
+        }
+      }
+    }
+  }
+
   private Report reindexRODAObject(ModelService model, Class<? extends IsRODAObject> reindexClass,
     JobPluginInfo jobPluginInfo) {
     LOGGER.debug("Creating job to reindexing all {}", reindexClass.getSimpleName());
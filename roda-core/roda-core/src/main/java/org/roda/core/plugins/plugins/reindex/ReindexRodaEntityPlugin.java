@@ -15,6 +15,7 @@ import java.util.Map;
 import java.util.stream.Collectors;
 
 import org.apache.solr.client.solrj.impl.CloudSolrClient.RouteException;
+import org.roda.core.RodaCoreFactory;
 import org.roda.core.data.common.RodaConstants;
 import org.roda.core.data.common.RodaConstants.PreservationEventType;
 import org.roda.core.data.exceptions.AuthorizationDeniedException;
@@ -38,6 +39,7 @@ import org.roda.core.data.v2.jobs.PluginType;
 import org.roda.core.data.v2.jobs.Report;
 import org.roda.core.data.v2.jobs.Report.PluginState;
 import org.roda.core.index.IndexService;
+import org.roda.core.index.schema.ShadowCollectionManager;
 import org.roda.core.index.schema.SolrCollectionRegistry;
 import org.roda.core.model.ModelObserver;
 import org.roda.core.model.ModelService;
@@ -137,7 +139,23 @@ public abstract class ReindexRodaEntityPlugin<T extends IsRODAObject> extends Ab
       LOGGER.error("Error clearing specific indexes of a RODA entity", e);
     }
 
-    // executing reindex
+    // executing reindex, when rebuilding all objects only the shadow
+    // collections (if any) are written to
+    if (clearIndexes && job.getSourceObjects() instanceof SelectedItemsAll) {
+      int[] failures = new int[1];
+      ShadowCollectionManager
+        .runAsRebuild(() -> failures[0] = reindexObjects(index, model, pluginReport, jobPluginInfo, job, list));
+      if (failures[0] > 0) {
+        recordRebuildFailure(index, job);
+      }
+    } else {
+      reindexObjects(index, model, pluginReport, jobPluginInfo, job, list);
+    }
+  }
+
+  private int reindexObjects(IndexService index, ModelService model, Report pluginReport,
+    JobPluginInfo jobPluginInfo, Job job, List<T> list) {
+    int failures = 0;
     for (T object : list) {
       if (LOGGER.isTraceEnabled()) {
         LOGGER.trace("Reindexing {} {}", object.getClass().getSimpleName(), object.getId());
@@ -150,6 +168,7 @@ public abstract class ReindexRodaEntityPlugin<T extends IsRODAObject> extends Ab
         if (exceptionList.isEmpty()) {
           jobPluginInfo.incrementObjectsProcessedWithSuccess();
         } else {
+          failures++;
           jobPluginInfo.incrementObjectsProcessedWithFailure();
 
           for (Exception e : exceptionList) {
@@ -161,12 +180,31 @@ public abstract class ReindexRodaEntityPlugin<T extends IsRODAObject> extends Ab
         }
       } catch (Exception e) {
         LOGGER.error("Error while reindexing {} {}", object.getClass(), object.getId(), e);
+        failures++;
         jobPluginInfo.incrementObjectsProcessedWithFailure();
         reportItem.addPluginDetails("Failed to reindex " + object.getClass() + " " + object.getId());
         pluginReport.addReport(reportItem.setPluginState(PluginState.FAILURE));
         PluginHelper.updatePartialJobReport(this, model, reportItem, true, job);
       }
     }
+    return failures;
+  }
+
+  private void recordRebuildFailure(IndexService index, Job job) {
+    try {
+      for (String collection : getRebuildableCollections(job)) {
+        index.getShadowCollections().recordRebuildFailure(collection);
+      }
+    } catch (GenericException | ClassNotFoundException e) {
+      LOGGER.error("Error recording the failed rebuild of the indexes", e);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<String> getRebuildableCollections(Job job) throws GenericException, ClassNotFoundException {
+    Class<? extends IsIndexed> selectedClass = (Class<? extends IsIndexed>) Class
+      .forName(job.getSourceObjects().getSelectedClass());
+    return ShadowCollectionManager.getRebuildableCollections(selectedClass);
   }
 
   @Override
@@ -179,7 +217,23 @@ public abstract class ReindexRodaEntityPlugin<T extends IsRODAObject> extends Ab
         if (job.getSourceObjects() instanceof SelectedItemsAll) {
           Class<? extends IsIndexed> selectedClass = (Class<? extends IsIndexed>) Class
             .forName(job.getSourceObjects().getSelectedClass());
-          index.clearIndexes(SolrCollectionRegistry.getCommitIndexNames(selectedClass));
+          if (useShadowCollections()) {
+            // the live collections keep serving searches until the shadows
+            // are complete; a shadow left by a reindex that did not finish is
+            // dropped so that the collection is rebuilt clean
+            for (String collection : ShadowCollectionManager.getRebuildableCollections(selectedClass)) {
+              if (index.getShadowCollections().isRebuilding(collection)) {
+                LOGGER.warn("Dropping unfinished rebuild of collection {}", collection);
+                index.getShadowCollections().abort(collection);
+              }
+              index.getShadowCollections().begin(collection);
+            }
+          } else {
+            index.clearIndexes(SolrCollectionRegistry.getCommitIndexNames(selectedClass));
+          }
+
+          // preservation events are not rebuilt into a shadow (the collection
+          // also holds repository events), so the AIP events are still cleared
           if (selectedClass.equals(AIP.class) || selectedClass.equals(IndexedAIP.class)) {
             index.clearAIPEventIndex();
           }
@@ -198,6 +252,30 @@ public abstract class ReindexRodaEntityPlugin<T extends IsRODAObject> extends Ab
 
   @Override
   public Report afterAllExecute(IndexService index, ModelService model, StorageService storage) throws PluginException {
+    if (clearIndexes && useShadowCollections()) {
+      try {
+        Job job = PluginHelper.getJob(this, index);
+        if (job.getSourceObjects() instanceof SelectedItemsAll) {
+          // a shadow is only switched in if every object was rebuilt into it,
+          // otherwise it is dropped and the live collection is kept
+          boolean jobFailed = job.getJobStats().getSourceObjectsProcessedWithFailure() > 0;
+          ShadowCollectionManager shadowCollections = index.getShadowCollections();
+          for (String collection : getRebuildableCollections(job)) {
+            if (shadowCollections.isRebuilding(collection)) {
+              if (jobFailed || shadowCollections.hasRebuildFailures(collection)) {
+                LOGGER.warn("Not switching collection {} as some objects failed to be reindexed", collection);
+                shadowCollections.abort(collection);
+              } else {
+                shadowCollections.complete(collection);
+              }
+            }
+          }
+        }
+      } catch (GenericException | NotFoundException | ClassNotFoundException | RequestNotValidException e) {
+        throw new PluginException("Error switching to rebuilt index", e);
+      }
+    }
+
     LOGGER.debug("Optimizing indexes");
     if (optimizeIndexes) {
       try {
@@ -214,6 +292,10 @@ public abstract class ReindexRodaEntityPlugin<T extends IsRODAObject> extends Ab
     return new Report();
   }
 
+  private static boolean useShadowCollections() {
+    return RodaCoreFactory.getRodaConfiguration().getBoolean("core.index.reindex.shadow_collections", false);
+  }
+
   public abstract void clearSpecificIndexes(IndexService index, List<String> ids)
     throws GenericException, RequestNotValidException, AuthorizationDeniedException;
 
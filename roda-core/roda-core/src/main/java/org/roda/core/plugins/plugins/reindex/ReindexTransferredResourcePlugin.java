@@ -126,7 +126,7 @@ public class ReindexTransferredResourcePlugin extends AbstractPlugin<Void> {
     report.setPluginState(PluginState.SUCCESS);
     jobPluginInfo.setSourceObjectsCount(resourceCounter);
     try {
-      RodaCoreFactory.getTransferredResourcesScanner().updateTransferredResources(Optional.empty(), true);
+      RodaCoreFactory.getTransferredResourcesScanner().updateTransferredResources(Optional.empty(), true, true);
       // FIXME 20170116 hsilva: it makes no sense relying on a count made
       // before the indexing start to set counters
       jobPluginInfo.incrementObjectsProcessedWithSuccess(resourceCounter);
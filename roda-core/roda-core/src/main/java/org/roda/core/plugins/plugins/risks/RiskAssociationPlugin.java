@@ -9,10 +9,14 @@ package org.roda.core.plugins.plugins.risks;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.roda.core.data.common.RodaConstants;
 import org.roda.core.data.common.RodaConstants.PreservationEventType;
@@ -192,25 +196,29 @@ public class RiskAssociationPlugin<T extends IsRODAObject> extends AbstractPlugi
   private Pair<JobPluginInfo, Report> addIncidenceToAIPList(ModelService model, IndexService index, List<AIP> list,
     List<String> risks, JobPluginInfo jobPluginInfo, Report pluginReport, Job job) throws JobException {
 
+    List<List<RiskIncidence>> incidencesByAIP = new ArrayList<>();
     for (AIP aip : list) {
-      PluginState state = PluginState.SUCCESS;
-
+      List<RiskIncidence> incidences = new ArrayList<>();
       for (String riskId : risks) {
-        try {
-          RiskIncidence incidence = new RiskIncidence();
-          incidence.setDetectedOn(new Date());
-          incidence.setDetectedBy(job.getUsername());
-          incidence.setRiskId(riskId);
-          incidence.setAipId(aip.getId());
-          incidence.setObjectClass(AIP.class.getSimpleName());
-          incidence.setStatus(INCIDENCE_STATUS.UNMITIGATED);
-          incidence.setSeverity(Risk.SEVERITY_LEVEL.valueOf(severity));
-          incidence.setDescription(incidenceDescription);
-          model.createRiskIncidence(incidence, false);
-        } catch (GenericException | AlreadyExistsException | NotFoundException | AuthorizationDeniedException e) {
-          state = PluginState.FAILURE;
-        }
+        RiskIncidence incidence = new RiskIncidence();
+        incidence.setDetectedOn(new Date());
+        incidence.setDetectedBy(job.getUsername());
+        incidence.setRiskId(riskId);
+        incidence.setAipId(aip.getId());
+        incidence.setObjectClass(AIP.class.getSimpleName());
+        incidence.setStatus(INCIDENCE_STATUS.UNMITIGATED);
+        incidence.setSeverity(Risk.SEVERITY_LEVEL.valueOf(severity));
+        incidence.setDescription(incidenceDescription);
+        incidences.add(incidence);
       }
+      incidencesByAIP.add(incidences);
+    }
+
+    Set<RiskIncidence> created = createRiskIncidences(model, incidencesByAIP);
+
+    for (int i = 0; i < list.size(); i++) {
+      AIP aip = list.get(i);
+      PluginState state = getState(incidencesByAIP.get(i), created);
 
       jobPluginInfo.incrementObjectsProcessed(state);
       Report reportItem = PluginHelper.initPluginReportItem(this, aip.getId(), AIP.class);
@@ -233,25 +241,29 @@ public class RiskAssociationPlugin<T extends IsRODAObject> extends AbstractPlugi
     List<Representation> list, List<String> risks, JobPluginInfo jobPluginInfo, Report pluginReport, Job job)
     throws JobException {
 
+    List<List<RiskIncidence>> incidencesByRepresentation = new ArrayList<>();
     for (Representation representation : list) {
-      PluginState state = PluginState.SUCCESS;
-
+      List<RiskIncidence> incidences = new ArrayList<>();
       for (String riskId : risks) {
-        try {
-          RiskIncidence incidence = new RiskIncidence();
-          incidence.setDetectedOn(new Date());
-          incidence.setDetectedBy(job.getUsername());
-          incidence.setRiskId(riskId);
-          incidence.setAipId(representation.getAipId());
-          incidence.setRepresentationId(representation.getId());
-          incidence.setObjectClass(Representation.class.getSimpleName());
-          incidence.setStatus(INCIDENCE_STATUS.UNMITIGATED);
-          incidence.setSeverity(SEVERITY_LEVEL.valueOf(severity));
-          model.createRiskIncidence(incidence, false);
-        } catch (GenericException | AlreadyExistsException | NotFoundException | AuthorizationDeniedException e) {
-          state = PluginState.FAILURE;
-        }
+        RiskIncidence incidence = new RiskIncidence();
+        incidence.setDetectedOn(new Date());
+        incidence.setDetectedBy(job.getUsername());
+        incidence.setRiskId(riskId);
+        incidence.setAipId(representation.getAipId());
+        incidence.setRepresentationId(representation.getId());
+        incidence.setObjectClass(Representation.class.getSimpleName());
+        incidence.setStatus(INCIDENCE_STATUS.UNMITIGATED);
+        incidence.setSeverity(SEVERITY_LEVEL.valueOf(severity));
+        incidences.add(incidence);
       }
+      incidencesByRepresentation.add(incidences);
+    }
+
+    Set<RiskIncidence> created = createRiskIncidences(model, incidencesByRepresentation);
+
+    for (int i = 0; i < list.size(); i++) {
+      Representation representation = list.get(i);
+      PluginState state = getState(incidencesByRepresentation.get(i), created);
 
       jobPluginInfo.incrementObjectsProcessed(state);
       Report reportItem = PluginHelper.initPluginReportItem(this, IdUtils.getRepresentationId(representation),
@@ -275,27 +287,31 @@ public class RiskAssociationPlugin<T extends IsRODAObject> extends AbstractPlugi
   private Pair<JobPluginInfo, Report> addIncidenceToFileList(ModelService model, IndexService index, List<File> list,
     List<String> risks, JobPluginInfo jobPluginInfo, Report pluginReport, Job job) throws JobException {
 
+    List<List<RiskIncidence>> incidencesByFile = new ArrayList<>();
     for (File file : list) {
-      PluginState state = PluginState.SUCCESS;
-
+      List<RiskIncidence> incidences = new ArrayList<>();
       for (String riskId : risks) {
-        try {
-          RiskIncidence incidence = new RiskIncidence();
-          incidence.setDetectedOn(new Date());
-          incidence.setDetectedBy(job.getUsername());
-          incidence.setRiskId(riskId);
-          incidence.setAipId(file.getAipId());
-          incidence.setRepresentationId(file.getRepresentationId());
-          incidence.setFilePath(file.getPath());
-          incidence.setFileId(file.getId());
-          incidence.setObjectClass(File.class.getSimpleName());
-          incidence.setStatus(INCIDENCE_STATUS.UNMITIGATED);
-          incidence.setSeverity(SEVERITY_LEVEL.valueOf(severity));
-          model.createRiskIncidence(incidence, false);
-        } catch (GenericException | AlreadyExistsException | NotFoundException | AuthorizationDeniedException e) {
-          state = PluginState.FAILURE;
-        }
+        RiskIncidence incidence = new RiskIncidence();
+        incidence.setDetectedOn(new Date());
+        incidence.setDetectedBy(job.getUsername());
+        incidence.setRiskId(riskId);
+        incidence.setAipId(file.getAipId());
+        incidence.setRepresentationId(file.getRepresentationId());
+        incidence.setFilePath(file.getPath());
+        incidence.setFileId(file.getId());
+        incidence.setObjectClass(File.class.getSimpleName());
+        incidence.setStatus(INCIDENCE_STATUS.UNMITIGATED);
+        incidence.setSeverity(SEVERITY_LEVEL.valueOf(severity));
+        incidences.add(incidence);
       }
+      incidencesByFile.add(incidences);
+    }
+
+    Set<RiskIncidence> created = createRiskIncidences(model, incidencesByFile);
+
+    for (int i = 0; i < list.size(); i++) {
+      File file = list.get(i);
+      PluginState state = getState(incidencesByFile.get(i), created);
 
       jobPluginInfo.incrementObjectsProcessed(state);
       Report reportItem = PluginHelper.initPluginReportItem(this, IdUtils.getFileId(file), File.class);
@@ -316,6 +332,26 @@ public class RiskAssociationPlugin<T extends IsRODAObject> extends AbstractPlugi
     return Pair.of(jobPluginInfo, pluginReport);
   }
 
+  /**
+   * Creates the incidences of all the objects of the block at once.
+   *
+   * @return the incidences that were created
+   */
+  private Set<RiskIncidence> createRiskIncidences(ModelService model, List<List<RiskIncidence>> incidencesByObject) {
+    List<RiskIncidence> incidences = incidencesByObject.stream().flatMap(List::stream).collect(Collectors.toList());
+    Set<RiskIncidence> created = Collections.newSetFromMap(new IdentityHashMap<>());
+    try {
+      created.addAll(model.createRiskIncidences(incidences, false));
+    } catch (GenericException | AuthorizationDeniedException e) {
+      LOGGER.error("Could not create risk incidences", e);
+    }
+    return created;
+  }
+
+  private PluginState getState(List<RiskIncidence> incidences, Set<RiskIncidence> created) {
+    return created.containsAll(incidences) ? PluginState.SUCCESS : PluginState.FAILURE;
+  }
+
   @Override
   public PluginType getType() {
     return PluginType.MISC;
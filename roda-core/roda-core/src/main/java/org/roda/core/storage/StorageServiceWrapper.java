@@ -11,6 +11,8 @@ import java.util.Map;
 
 import org.roda.core.RodaCoreFactory;
 import org.roda.core.common.iterables.CloseableIterable;
+import org.roda.core.common.tracing.Tracing;
+import org.roda.core.common.tracing.Tracing.Stage;
 import org.roda.core.data.common.RodaConstants.NodeType;
 import org.roda.core.data.exceptions.AlreadyExistsException;
 import org.roda.core.data.exceptions.AuthorizationDeniedException;
@@ -20,6 +22,15 @@ import org.roda.core.data.exceptions.RequestNotValidException;
 import org.roda.core.data.v2.ip.StoragePath;
 
 public class StorageServiceWrapper implements StorageService {
+  private static final Tracing.Operation GET_DIRECTORY = Tracing.operation(Stage.STORAGE, "getDirectory");
+  private static final Tracing.Operation CREATE_BINARY = Tracing.operation(Stage.STORAGE, "createBinary");
+  private static final Tracing.Operation GET_BINARY = Tracing.operation(Stage.STORAGE, "getBinary");
+  private static final Tracing.Operation UPDATE_BINARY_CONTENT = Tracing.operation(Stage.STORAGE,
+    "updateBinaryContent");
+  private static final Tracing.Operation DELETE_RESOURCE = Tracing.operation(Stage.STORAGE, "deleteResource");
+  private static final Tracing.Operation COPY = Tracing.operation(Stage.STORAGE, "copy");
+  private static final Tracing.Operation MOVE = Tracing.operation(Stage.STORAGE, "move");
+
   private StorageService storageService;
   private NodeType nodeType;
 
@@ -93,7 +104,9 @@ public class StorageServiceWrapper implements StorageService {
   @Override
   public Directory getDirectory(StoragePath storagePath)
     throws RequestNotValidException, NotFoundException, GenericException, AuthorizationDeniedException {
-    return storageService.getDirectory(storagePath);
+    try (Tracing.Span span = GET_DIRECTORY.start(storagePath)) {
+      return storageService.getDirectory(storagePath);
+    }
   }
 
   @Override
@@ -118,7 +131,9 @@ public class StorageServiceWrapper implements StorageService {
     throws GenericException, AlreadyExistsException, RequestNotValidException, AuthorizationDeniedException,
     NotFoundException {
     RodaCoreFactory.checkIfWriteIsAllowedAndIfFalseThrowException(nodeType);
-    return storageService.createBinary(storagePath, payload, asReference);
+    try (Tracing.Span span = CREATE_BINARY.start(storagePath)) {
+      return storageService.createBinary(storagePath, payload, asReference);
+    }
   }
 
   @Override
@@ -131,7 +146,9 @@ public class StorageServiceWrapper implements StorageService {
   @Override
   public Binary getBinary(StoragePath storagePath)
     throws GenericException, RequestNotValidException, NotFoundException, AuthorizationDeniedException {
-    return storageService.getBinary(storagePath);
+    try (Tracing.Span span = GET_BINARY.start(storagePath)) {
+      return storageService.getBinary(storagePath);
+    }
   }
 
   @Override
@@ -144,14 +161,18 @@ public class StorageServiceWrapper implements StorageService {
     boolean createIfNotExists)
     throws GenericException, NotFoundException, RequestNotValidException, AuthorizationDeniedException {
     RodaCoreFactory.checkIfWriteIsAllowedAndIfFalseThrowException(nodeType);
-    return storageService.updateBinaryContent(storagePath, payload, asReference, createIfNotExists);
+    try (Tracing.Span span = UPDATE_BINARY_CONTENT.start(storagePath)) {
+      return storageService.updateBinaryContent(storagePath, payload, asReference, createIfNotExists);
+    }
   }
 
   @Override
   public void deleteResource(StoragePath storagePath)
     throws NotFoundException, GenericException, AuthorizationDeniedException {
     RodaCoreFactory.checkIfWriteIsAllowedAndIfFalseThrowException(nodeType);
-    storageService.deleteResource(storagePath);
+    try (Tracing.Span span = DELETE_RESOURCE.start(storagePath)) {
+      storageService.deleteResource(storagePath);
+    }
   }
 
   @Override
@@ -165,7 +186,9 @@ public class StorageServiceWrapper implements StorageService {
     throws AlreadyExistsException, GenericException, RequestNotValidException, NotFoundException,
     AuthorizationDeniedException {
     RodaCoreFactory.checkIfWriteIsAllowedAndIfFalseThrowException(nodeType);
-    storageService.copy(fromService, fromStoragePath, toStoragePath);
+    try (Tracing.Span span = COPY.start(toStoragePath)) {
+      storageService.copy(fromService, fromStoragePath, toStoragePath);
+    }
   }
 
   @Override
@@ -173,7 +196,9 @@ public class StorageServiceWrapper implements StorageService {
     throws AlreadyExistsException, GenericException, RequestNotValidException, NotFoundException,
     AuthorizationDeniedException {
     RodaCoreFactory.checkIfWriteIsAllowedAndIfFalseThrowException(nodeType);
-    storageService.move(fromService, fromStoragePath, toStoragePath);
+    try (Tracing.Span span = MOVE.start(toStoragePath)) {
+      storageService.move(fromService, fromStoragePath, toStoragePath);
+    }
   }
 
   @Override